@@ -23,6 +23,7 @@ import java.util.Iterator;
 
 import org.jetel.component.aggregate.AggregateProcessor;
 import org.jetel.component.aggregate.AggregationException;
+import org.jetel.component.aggregate.AggregationMode;
 import org.jetel.data.DataField;
 import org.jetel.data.DataRecord;
 import org.jetel.data.DataRecordFactory;
@@ -80,6 +81,17 @@ import org.w3c.dom.Element;
  *  <tr><td><b>sorted</b></td><td>if input data flow is sorted (true)</td>
  *  <tr><td><b>equalNULL</b><br><i>optional</i></td><td>specifies whether two fields containing NULL values are considered equal. Default is FALSE.</td></tr>
  *  <tr><td><b>charset</b></td><td>character encoding of the input data stream for CRC32 and MD5 functions (if not specified, then value from defaultProperties DataFormatter.DEFAULT_CHARSET_ENCODER is used)</td>
+ *  <tr><td><b>memoryLimit</b><br><i>optional</i></td><td>maximum memory in MB used for aggregation of unsorted input. If the limit is exceeded,
+ *  intermediate results are spilled to disk and the output groups are not in order of their first occurrence. The limit is applied
+ *  only if all functions of the mapping are count, countnonnull, sum, avg, min or max of primitive types (these are aggregated
+ *  without per group objects). Default is 0 - no limit.</td>
+ *  <tr><td><b>aggregationMode</b><br><i>optional</i></td><td>"complete" (default) - final results of aggregation functions are produced,
+ *  "partial" - serialized intermediate results are produced into byte (cbyte) output fields instead of final results,
+ *  "merge" - input fields of aggregation functions are byte (cbyte) fields with intermediate results produced by
+ *  aggregation in "partial" mode, the intermediate results are merged and final results are produced.
+ *  Partial mode can be used to pre-aggregate records in parallel branches of a graph, so that only the intermediate results
+ *  are sent to the final aggregation. Supported functions are count, countnonnull, countunique, sum, avg, stddev, min, max,
+ *  median and modus.</td>
  *  </tr>
  *  </table>
  *
@@ -102,6 +114,8 @@ public class Aggregate extends Node {
 	// optional attributes
     private static final String XML_EQUAL_NULL_ATTRIBUTE = "equalNULL";
     private static final String XML_CHARSET_ATTRIBUTE = "charset";
+    private static final String XML_MEMORY_LIMIT_ATTRIBUTE = "memoryLimit";
+    private static final String XML_AGGREGATION_MODE_ATTRIBUTE = "aggregationMode";
 
 	// used ports
 	private final static int WRITE_TO_PORT = 0;
@@ -116,6 +130,8 @@ public class Aggregate extends Node {
 	
 	private boolean equalNULLs;
 	private String charset;
+	private int memoryLimit = 0;
+	private AggregationMode aggregationMode = AggregationMode.COMPLETE;
 
 	private AggregateProcessor processor;
 	private RecordKey recordKey;
@@ -263,10 +279,11 @@ public class Aggregate extends Node {
 		try {
 			processor = new AggregateProcessor(mapping, isOldMapping, recordKey, sorted, 
 					getInputPort(READ_FROM_PORT).getMetadata(), getOutputPort(WRITE_TO_PORT).getMetadata(),
-					charset);
+					charset, aggregationMode);
 		} catch (AggregationException e) {
 			throw new ComponentNotReadyException(e);
 		}
+		processor.setMemoryLimit((long) memoryLimit << 20);
 	}
 
 	/**
@@ -318,6 +335,17 @@ public class Aggregate extends Node {
         if (xattribs.exists(XML_CHARSET_ATTRIBUTE)){
         	aggregate.setCharset(xattribs.getString(XML_CHARSET_ATTRIBUTE));
         }
+        if (xattribs.exists(XML_MEMORY_LIMIT_ATTRIBUTE)) {
+        	aggregate.setMemoryLimit(xattribs.getInteger(XML_MEMORY_LIMIT_ATTRIBUTE));
+        }
+        if (xattribs.exists(XML_AGGREGATION_MODE_ATTRIBUTE)) {
+        	String mode = xattribs.getString(XML_AGGREGATION_MODE_ATTRIBUTE);
+        	AggregationMode aggregationMode = AggregationMode.fromString(mode);
+        	if (aggregationMode == null) {
+        		throw new XMLConfigurationException("Unknown aggregation mode: " + mode);
+        	}
+        	aggregate.setAggregationMode(aggregationMode);
+        }
         
 		return aggregate;
 	}
@@ -339,6 +367,9 @@ public class Aggregate extends Node {
         if (charset != null && !Charset.isSupported(charset)) {
         	status.addError(this, XML_CHARSET_ATTRIBUTE, "Charset " + charset + " not supported!");
         }
+        if (memoryLimit < 0) {
+        	status.addError(this, XML_MEMORY_LIMIT_ATTRIBUTE, "Memory limit must not be negative.");
+        }
         
         if (newMapping == null && oldMapping == null) {
         	status.addError(this, XML_MAPPING_ATTRIBUTE, "Mapping not specified");
@@ -352,6 +383,10 @@ public class Aggregate extends Node {
 
         try {
             init();
+            if (memoryLimit > 0 && !processor.isMemoryLimitSupported()) {
+            	status.addWarning(this, XML_MEMORY_LIMIT_ATTRIBUTE, "Memory limit is ignored, it is supported only for unsorted input"
+            			+ " and count, countnonnull, sum, avg, min and max functions of primitive types.");
+            }
         } catch (ComponentNotReadyException e) {
             status.addError(this, null, e);
         } finally {
@@ -389,4 +424,32 @@ public class Aggregate extends Node {
 		this.charset = charset;
 	}
 
+	/**
+	 * @return the memory limit in MB
+	 */
+	public int getMemoryLimit() {
+		return memoryLimit;
+	}
+
+	/**
+	 * @param memoryLimit maximum memory in MB for aggregation of unsorted input, 0 means no limit
+	 */
+	public void setMemoryLimit(int memoryLimit) {
+		this.memoryLimit = memoryLimit;
+	}
+
+	/**
+	 * @return the aggregation mode
+	 */
+	public AggregationMode getAggregationMode() {
+		return aggregationMode;
+	}
+
+	/**
+	 * @param aggregationMode the aggregation mode to set
+	 */
+	public void setAggregationMode(AggregationMode aggregationMode) {
+		this.aggregationMode = aggregationMode;
+	}
+
 }
@@ -51,6 +51,8 @@ import org.jetel.graph.Result;
 import org.jetel.graph.TransformationGraph;
 import org.jetel.graph.modelview.MVMetadata;
 import org.jetel.graph.modelview.impl.MetadataPropagationResolver;
+import org.jetel.lookup.DBLookup;
+import org.jetel.lookup.DBLookupPrefetcher;
 import org.jetel.lookup.DBLookupTable;
 import org.jetel.metadata.DataRecordMetadata;
 import org.jetel.util.file.FileUtils;
@@ -118,6 +120,10 @@ import org.w3c.dom.Element;
  *  <tr><td><b>dbConnection</b></td><td>id of the Database Connection object to be used to access the database</td>
  *  <tr><td><b>metadata</b><i>optional</i><td>metadata for data from database</td>
  *  <tr><td><b>maxCached</b><i>optional</i><td>number of sets of records with different key which will be stored in memory</td>
+ *  <tr><td><b>batchSize</b><i>optional</i><td>number of driver keys looked up by one query, records are read in windows
+ *  and the keys missing in the cache are fetched in batches. Default 0 - one query per key.</td>
+ *  <tr><td><b>batchThreads</b><i>optional</i><td>number of batch queries running concurrently over separate
+ *  connections. Default 1.</td>
  *  <tr><td><b>leftOuterJoin</b><i>optional</i><td>true/false<I> default: FALSE</I> See description.</td>
  *  <tr><td><b>errorActions </b><i>optional</i></td><td>defines if graph is to stop, when transformation returns negative value.
  *  Available actions are: STOP or CONTINUE. For CONTINUE action, error message is logged to console or file (if errorLog attribute
@@ -157,6 +163,8 @@ public class DBJoin extends Node implements MetadataProvider {
 	public static final String XML_DB_METADATA_ATTRIBUTE = "metadata"; //$NON-NLS-1$
 	public static final String XML_MAX_CACHED_ATTRIBUTE = "maxCached"; //$NON-NLS-1$
 	public static final String XML_LEFTOUTERJOIN_ATTRIBUTE = "leftOuterJoin"; //$NON-NLS-1$
+	public static final String XML_BATCH_SIZE_ATTRIBUTE = "batchSize"; //$NON-NLS-1$
+	public static final String XML_BATCH_THREADS_ATTRIBUTE = "batchThreads"; //$NON-NLS-1$
 	private static final String XML_ERROR_ACTIONS_ATTRIBUTE = "errorActions"; //$NON-NLS-1$
     private static final String XML_ERROR_LOG_ATTRIBUTE = "errorLog"; //$NON-NLS-1$
 
@@ -178,6 +186,8 @@ public class DBJoin extends Node implements MetadataProvider {
 	private String metadataName;
 	private int maxCached;
 	private boolean leftOuterJoin = false;
+	private int batchSize = 0;
+	private int batchThreads = 1;
 
 	private String errorActionsString;
 	private Map<Integer, ErrorAction> errorActions = new HashMap<Integer, ErrorAction>();
@@ -192,6 +202,7 @@ public class DBJoin extends Node implements MetadataProvider {
 	private DataRecordMetadata dbMetadata;
 	private InputPort inPort;
 	private DataRecord inRecord;
+	private DBLookupPrefetcher prefetcher;
 	
 	static Log logger = LogFactory.getLog(DBJoin.class);
 	
@@ -229,7 +240,7 @@ public class DBJoin extends Node implements MetadataProvider {
 
 		int counter = 0;
 		while (inRecord!=null && runIt) {
-				inRecord = inPort.readRecord(inRecord);
+				inRecord = prefetcher != null ? prefetcher.readRecord(inPort, inRecord) : inPort.readRecord(inRecord);
 				if (inRecord!=null) {
 					//find slave record in database
 					lookup.seek();
@@ -341,6 +352,13 @@ public class DBJoin extends Node implements MetadataProvider {
         	}
         }
         
+        if (batchSize < 0) {
+        	status.addError(this, XML_BATCH_SIZE_ATTRIBUTE, "Batch size can't be negative."); //$NON-NLS-1$
+        }
+        if (batchThreads < 1) {
+        	status.addError(this, XML_BATCH_THREADS_ATTRIBUTE, "Number of batch threads has to be positive."); //$NON-NLS-1$
+        }
+        
         if (charset != null && !Charset.isSupported(charset)) {
         	status.addError(this, XML_CHARSET_ATTRIBUTE, "Charset " + charset + " not supported!"); //$NON-NLS-1$ //$NON-NLS-2$
         }
@@ -439,6 +457,8 @@ public class DBJoin extends Node implements MetadataProvider {
 		lookupTable = new DBLookupTable("LOOKUP_TABLE_FROM_" + this.getId(), (DBConnection) conn, dbMetadata, query, maxCached); //$NON-NLS-1$
 		lookupTable.setGraph(getGraph());
 		lookupTable.setStoreNulls(true);
+		lookupTable.setBatchSize(batchSize);
+		lookupTable.setBatchThreads(batchThreads);
 		lookupTable.checkConfig(null);
 		lookupTable.init();
 
@@ -529,6 +549,7 @@ public class DBJoin extends Node implements MetadataProvider {
 		
 		inRecord = DataRecordFactory.newRecord(inPort.getMetadata());
 		lookup = lookupTable.createLookup(recordKey, inRecord);
+		prefetcher = DBLookupPrefetcher.isPrefetchSupported(lookup) ? new DBLookupPrefetcher((DBLookup) lookup, inPort) : null;
 		if (errorLogURL != null) {
 			try {
 				errorLog = new FileWriter(FileUtils.getFile(getGraph().getRuntimeContext().getContextURL(), errorLogURL));
@@ -600,6 +621,12 @@ public class DBJoin extends Node implements MetadataProvider {
 			dbjoin.setLeftOuterJoin(xattribs.getBoolean(XML_LEFTOUTERJOIN_ATTRIBUTE));
 		}
 		dbjoin.setMaxCached(xattribs.getInteger(XML_MAX_CACHED_ATTRIBUTE,100));
+		if (xattribs.exists(XML_BATCH_SIZE_ATTRIBUTE)){
+			dbjoin.setBatchSize(xattribs.getInteger(XML_BATCH_SIZE_ATTRIBUTE));
+		}
+		if (xattribs.exists(XML_BATCH_THREADS_ATTRIBUTE)){
+			dbjoin.setBatchThreads(xattribs.getInteger(XML_BATCH_THREADS_ATTRIBUTE));
+		}
 		if (xattribs.exists(XML_ERROR_ACTIONS_ATTRIBUTE)){
 			dbjoin.setErrorActions(xattribs.getString(XML_ERROR_ACTIONS_ATTRIBUTE));
 		}
@@ -639,6 +666,22 @@ public class DBJoin extends Node implements MetadataProvider {
 		this.leftOuterJoin = leftOuterJoin;
 	}
 
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public int getBatchThreads() {
+		return batchThreads;
+	}
+
+	public void setBatchThreads(int batchThreads) {
+		this.batchThreads = batchThreads;
+	}
+
 	public String getCharset() {
 		return charset;
 	}
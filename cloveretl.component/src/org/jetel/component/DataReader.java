@@ -52,7 +52,9 @@ import org.jetel.metadata.DataRecordMetadata;
 import org.jetel.util.DataRecordUtils;
 import org.jetel.util.ExceptionUtils;
 import org.jetel.util.MultiFileReader;
+import org.jetel.util.ParallelFileReader;
 import org.jetel.util.SynchronizeUtils;
+import org.jetel.util.file.FileUtils;
 import org.jetel.util.property.ComponentXMLAttributes;
 import org.jetel.util.property.RefResFlag;
 import org.jetel.util.string.QuotingDecoder;
@@ -100,6 +102,11 @@ import org.w3c.dom.Element;
  *  <tr><td><b>quotedStrings</b></td><td>string field can be quoted by '' or ""</td>
  *  <tr><td><b>treatMultipleDelimitersAsOne</b></td><td>if this option is true, then multiple delimiters are recognize as one delimiter</td>
  *  <tr><td><b>verbose</b></td><td>verbose mode provides more comprehensive error notification; default is true</td>
+ *  <tr><td><b>parallelism</b><br><i>optional</i></td><td>number of threads parsing single local file; default is 1.
+ *  The file is split into chunks parsed in parallel if records are delimited by new line, otherwise the file is read sequentially.
+ *  Quoted strings have to be enclosed in quotes as a whole.</td>
+ *  <tr><td><b>preserveOrder</b><br><i>optional</i></td><td>whether the records of file parsed in parallel are sent in the order of the file;
+ *  default is true. The order is always preserved if <i>numRecords</i> or <i>numSourceRecords</i> is set.</td>
  *  </tr>
  *  </table>
  *
@@ -138,6 +145,8 @@ public class DataReader extends Node {
 	private static final String XML_INCREMENTAL_KEY_ATTRIBUTE = "incrementalKey";
 	private static final String XML_PARSER_ATTRIBUTE = "parser";
 	private static final String XML_VERBOSE_ATTRIBUTE = "verbose";
+	private static final String XML_PARALLELISM_ATTRIBUTE = "parallelism";
+	private static final String XML_PRESERVE_ORDER_ATTRIBUTE = "preserveOrder";
 
 	private final static int OUTPUT_PORT = 0;
 	private final static int INPUT_PORT = 0;
@@ -156,6 +165,8 @@ public class DataReader extends Node {
 
 	protected TextParser parser;
     private MultiFileReader reader;
+    private TextParserConfiguration parserCfg;
+    private ParallelFileReader parallelReader;
     private String policyTypeStr;
     private PolicyType policyType = PolicyType.STRICT;
 
@@ -168,6 +179,8 @@ public class DataReader extends Node {
 	private Boolean skipTrailingBlanks;
 	private Boolean trim;
 	private boolean quotedStringsHasDefaultValue = true;
+	private int parallelism = 1;
+	private boolean preserveOrder = true;
 	
 	//is the second port attached? - logging is enabled
 	boolean logging = false;
@@ -230,6 +243,7 @@ public class DataReader extends Node {
         updateSkipSourceRowsByMetadata();
 		prepareParser();
         prepareMultiFileReader();
+        prepareParallelReader();
 	}
 
 	/* (non-Javadoc)
@@ -240,6 +254,10 @@ public class DataReader extends Node {
 		super.preExecute();
 
         try {
+        	if (parallelReader != null) {
+        		parallelReader.preExecute();
+        		return;
+        	}
             reader.preExecute();
         } catch(ComponentNotReadyException e) {
             e.setAttributeName(XML_FILE_ATTRIBUTE);
@@ -266,10 +284,18 @@ public class DataReader extends Node {
 		try {
 			while (runIt) {
 				try {
-					if ((reader.getNext(record)) == null) {
-						break;
+					if (parallelReader != null) {
+						DataRecord parsedRecord = parallelReader.getNext();
+						if (parsedRecord == null) {
+							break;
+						}
+						outPort.writeRecord(parsedRecord);
+					} else {
+						if ((reader.getNext(record)) == null) {
+							break;
+						}
+						outPort.writeRecord(record);
 					}
-					outPort.writeRecord(record);
 				} catch (BadDataFormatException bdfe) {
 					if (policyType == PolicyType.STRICT || bdfe.isFatal()) {
 						throw bdfe;
@@ -285,11 +311,11 @@ public class DataReader extends Node {
 							setCharSequenceToField(bdfe.getRawRecord(), logRecord.getField(2));
 							setCharSequenceToField(ExceptionUtils.getMessage(bdfe), logRecord.getField(3));
 							if (hasFileNameField) {
-								setCharSequenceToField(reader.getSourceName(), logRecord.getField(4));
+								setCharSequenceToField(getSourceName(), logRecord.getField(4));
 							}
 							writeRecord(LOG_PORT, logRecord);
 						} else {
-							logger.warn(ExceptionUtils.getMessage("Error in input source: " + reader.getSourceName(), bdfe));
+							logger.warn(ExceptionUtils.getMessage("Error in input source: " + getSourceName(), bdfe));
 						}
 						if (maxErrorCount != -1 && ++errorCount > maxErrorCount) {
 							throw new JetelRuntimeException("Max error count exceeded.", bdfe);
@@ -306,6 +332,10 @@ public class DataReader extends Node {
         return runIt ? Result.FINISHED_OK : Result.ABORTED;
 	}
 	
+	private String getSourceName() {
+		return parallelReader != null ? parallelReader.getSourceName() : reader.getSourceName();
+	}
+
 	private void setCharSequenceToField(CharSequence charSeq, DataField field) {
 		if (charSeq == null) {
 			field.setNull(true);
@@ -337,7 +367,11 @@ public class DataReader extends Node {
 	public void postExecute() throws ComponentNotReadyException {
 		super.postExecute();
 		
-		reader.postExecute();
+		if (parallelReader != null) {
+			parallelReader.postExecute();
+		} else {
+			reader.postExecute();
+		}
 	}
 	
 	@Override
@@ -371,7 +405,7 @@ public class DataReader extends Node {
 	
 	private void prepareParser() {
 		//create data parser
-		final TextParserConfiguration parserCfg = new TextParserConfiguration();
+		parserCfg = new TextParserConfiguration();
 		parserCfg.setMetadata(getOutputPort(OUTPUT_PORT).getMetadata());
 		parserCfg.setCharset(charset);
 		parserCfg.setVerbose(logging ? true : verbose); //verbose mode is true by default in case the logging port is used
@@ -415,6 +449,40 @@ public class DataReader extends Node {
         reader.init(getOutputPort(OUTPUT_PORT).getMetadata());
 	}
 
+	/**
+	 * Prepares parallel reading of single local file, if it is requested and possible.
+	 * Otherwise the multifile reader is used.
+	 */
+	private void prepareParallelReader() {
+		parallelReader = null;
+		if (parallelism <= 1) {
+			return;
+		}
+		String reason = null;
+		if (incrementalFile != null || incrementalKey != null) {
+			reason = "incremental reading is used";
+		} else if (fileURL.indexOf(';') >= 0 || fileURL.indexOf('*') >= 0 || fileURL.indexOf('?') >= 0) {
+			reason = "more files are read";
+		} else if (!FileUtils.isLocalFile(getContextURL(), fileURL)) {
+			reason = "the file is not local";
+		} else {
+			reason = ParallelFileReader.checkConfiguration(parserCfg);
+		}
+		if (reason != null) {
+			logger.info("Component " + getId() + " reads the input sequentially, " + reason);
+			return;
+		}
+		parallelReader = new ParallelFileReader(parserCfg, parserClassName, parserClassLoader,
+				FileUtils.getJavaFile(getContextURL(), fileURL), fileURL);
+		parallelReader.setLogger(logger);
+		parallelReader.setParallelism(parallelism);
+		parallelReader.setOrdered(preserveOrder);
+		parallelReader.setSkip(skipRows);
+		parallelReader.setSkipSourceRows(skipSourceRows > 0 ? skipSourceRows : (skipFirstLine ? 1 : 0));
+		parallelReader.setNumRecords(numRecords);
+		parallelReader.setNumSourceRecords(numSourceRecords);
+	}
+
 
 	private void updateSkipSourceRowsByMetadata() {
 		// skip source rows
@@ -502,6 +570,12 @@ public class DataReader extends Node {
 		if (xattribs.exists(XML_PARSER_ATTRIBUTE)){
 			aDataReader.setParserClassName(xattribs.getString(XML_PARSER_ATTRIBUTE));
 		}
+		if (xattribs.exists(XML_PARALLELISM_ATTRIBUTE)){
+			aDataReader.setParallelism(xattribs.getInteger(XML_PARALLELISM_ATTRIBUTE));
+		}
+		if (xattribs.exists(XML_PRESERVE_ORDER_ATTRIBUTE)){
+			aDataReader.setPreserveOrder(xattribs.getBoolean(XML_PRESERVE_ORDER_ATTRIBUTE));
+		}
 
 		return aDataReader;
 	}
@@ -566,6 +640,10 @@ public class DataReader extends Node {
         if (charset != null && !Charset.isSupported(charset)) {
         	status.addError(this, XML_CHARSET_ATTRIBUTE, "Charset " + charset + " not supported!");
         }
+
+        if (parallelism < 1) {
+        	status.addError(this, XML_PARALLELISM_ATTRIBUTE, "Parallelism has to be positive: " + parallelism);
+        }
         
         if (StringUtils.isEmpty(fileURL)) {
             status.addError(this, XML_FILE_ATTRIBUTE, "Missing file URL attribute.");
@@ -648,6 +726,9 @@ public class DataReader extends Node {
 	    	if (reader != null) {
 	    		reader.close();
 	    	}
+	    	if (parallelReader != null) {
+	    		parallelReader.close();
+	    	}
 		} catch (Exception e){
 			logger.error(e);
 		}
@@ -700,6 +781,28 @@ public class DataReader extends Node {
 		}
 	}
 
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * @param parallelism number of threads parsing single local file
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	public boolean isPreserveOrder() {
+		return preserveOrder;
+	}
+
+	/**
+	 * @param preserveOrder whether records of file parsed in parallel are sent in the order of the file
+	 */
+	public void setPreserveOrder(boolean preserveOrder) {
+		this.preserveOrder = preserveOrder;
+	}
+
 	public void setParserClass(String parserClassName, ClassLoader parserClassLoader){
 		this.parserClassName = parserClassName;
 		this.parserClassLoader = parserClassLoader;
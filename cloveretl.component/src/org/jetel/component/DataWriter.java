@@ -87,6 +87,7 @@ import org.w3c.dom.Element;
  *  <tr><td><b>recordSkip</b></td><td>number of skipped records</td>
  *  <tr><td><b>recordCount</b></td><td>number of written records</td>
  *  <tr><td><b>excludeFields</b></td><td>	 sequence of field names from incoming data flow (separated by semicolon) to exclude from writing </td>
+ *  <tr><td><b>asyncWrite</b><br><i>optional</i></td><td>output files are written by a dedicated I/O thread, so formatting overlaps with writing (values: true/false, default:false)</td>
  *  </tr>
  *  </table>  
  *
@@ -117,6 +118,7 @@ public class DataWriter extends Node {
 	private static final String XML_SORTED_INPUT_ATTRIBUTE = "sortedInput";
 	private static final String XML_CREATE_EMPTY_FILES_ATTRIBUTE = "createEmptyFiles";
 	private static final String XML_SKIP_LAST_RECORD_DELIMITER_ATTRIBUTE = "skipLastRecordDelimiter";
+	private static final String XML_ASYNC_WRITE_ATTRIBUTE = "asyncWrite";
 	
 	private String fileURL;
 	private boolean appendData;
@@ -143,6 +145,7 @@ public class DataWriter extends Node {
 	private boolean sortedInput = false;
 	private boolean createEmptyFiles = true;
 	private boolean skipLastRecordDelimiter = false;
+	private boolean asyncWrite = false;
 	
     private String excludeFields;
 
@@ -276,6 +279,7 @@ public class DataWriter extends Node {
         writer.setDictionary(graph.getDictionary());
         writer.setOutputPort(getOutputPort(OUTPUT_PORT)); //for port protocol: target file writes data
         writer.setMkDir(mkDir);
+        writer.setAsyncWrite(asyncWrite);
 		writer.setCreateEmptyFiles(createEmptyFiles);
 	}
 
@@ -397,6 +401,9 @@ public class DataWriter extends Node {
         if (xattribs.exists(XML_SKIP_LAST_RECORD_DELIMITER_ATTRIBUTE)) {
         	aDataWriter.setSkipLastRecordDelimiter(xattribs.getBoolean(XML_SKIP_LAST_RECORD_DELIMITER_ATTRIBUTE));
         }
+        if (xattribs.exists(XML_ASYNC_WRITE_ATTRIBUTE)) {
+        	aDataWriter.setAsyncWrite(xattribs.getBoolean(XML_ASYNC_WRITE_ATTRIBUTE));
+        }
 
 		return aDataWriter;
 	}
@@ -629,6 +636,14 @@ public class DataWriter extends Node {
 		this.skipLastRecordDelimiter = skipLastRecordDelimiter;
 	}
 
+	/**
+	 * Sets asynchronous writing.
+	 * @param asyncWrite - true - output files are written by a dedicated I/O thread
+	 */
+	public void setAsyncWrite(boolean asyncWrite) {
+		this.asyncWrite = asyncWrite;
+	}
+
 	@Override
 	public synchronized void free() {
 		super.free();
@@ -22,6 +22,7 @@ import org.apache.commons.logging.LogFactory;
 import org.jetel.data.DataRecord;
 import org.jetel.data.DataRecordFactory;
 import org.jetel.data.Defaults;
+import org.jetel.data.RecordBatch;
 import org.jetel.exception.ComponentNotReadyException;
 import org.jetel.exception.ConfigurationStatus;
 import org.jetel.exception.JetelException;
@@ -74,6 +75,9 @@ public abstract class ExtFilterBase extends Node {
 
 	@Override
 	public Result execute() throws Exception {
+		if (Defaults.Graph.RECORD_BATCH_SIZE > 1) {
+			return executeBatch();
+		}
 		InputPortDirect inPort = getInputPortDirect(READ_FROM_PORT);
 		OutputPortDirect outPort = getOutputPortDirect(WRITE_TO_PORT);
 		OutputPortDirect rejectedPort = getOutputPortDirect(REJECTED_PORT);
@@ -105,6 +109,55 @@ public abstract class ExtFilterBase extends Node {
 		return runIt ? Result.FINISHED_OK : Result.ABORTED;
 	}
 
+	/**
+	 * Processing loop which reads input records in batches, see {@link RecordBatch}. The filter is evaluated
+	 * for the whole batch, each run of consecutive accepted or rejected records is written by a single call.
+	 * So the records are written in the same order as in the record-by-record loop.
+	 */
+	private Result executeBatch() throws Exception {
+		InputPortDirect inPort = getInputPortDirect(READ_FROM_PORT);
+		OutputPortDirect outPort = getOutputPortDirect(WRITE_TO_PORT);
+		OutputPortDirect rejectedPort = getOutputPortDirect(REJECTED_PORT);
+		DataRecord record = DataRecordFactory.newRecord(getInputPort(READ_FROM_PORT).getMetadata());
+		RecordBatch batch = new RecordBatch();
+		boolean[] valid = new boolean[batch.capacity()];
+		int[] selection = new int[batch.capacity()];
+		RecordBatchFilter batchFilter = (filter instanceof RecordBatchFilter) ? (RecordBatchFilter) filter : null;
+
+		while (runIt && inPort.readRecordBatch(batch) > 0) {
+			try {
+				if (batchFilter != null) {
+					batchFilter.isValid(batch, record, valid);
+				} else {
+					for (int i = 0; i < batch.size(); i++) {
+						batch.deserialize(i, record);
+						valid[i] = filter.isValid(record);
+					}
+				}
+			} catch (ClassCastException ex) {
+				throw new JetelException("Invalid filter expression - does not evaluate to TRUE/FALSE !", ex);
+			}
+			int runStart = 0;
+			for (int i = 1; i <= batch.size(); i++) {
+				if (i == batch.size() || valid[i] != valid[runStart]) {
+					OutputPortDirect port = valid[runStart] ? outPort : rejectedPort;
+					if (port != null) {
+						int count = 0;
+						for (int j = runStart; j < i; j++) {
+							selection[count++] = j;
+						}
+						batch.select(selection, count);
+						port.writeRecordBatch(batch);
+					}
+					runStart = i;
+				}
+			}
+			SynchronizeUtils.cloverYield();
+		}
+		broadcastEOF();
+		return runIt ? Result.FINISHED_OK : Result.ABORTED;
+	}
+
 	@Override
 	public ConfigurationStatus checkConfig(ConfigurationStatus status) {
 		super.checkConfig(status);
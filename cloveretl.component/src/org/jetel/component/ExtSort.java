@@ -78,7 +78,8 @@ import org.w3c.dom.Element;
  *  <tr><td><b>id</b></td><td>component identification</td>
  *  <tr><td><b>sortKey</b></td><td>field names separated by :;|  {colon, semicolon, pipe}</td>
  *  <tr><td><b>sortOrder</b><br><i>optional</i></td><td>one of "Ascending|Descending" {the fist letter is sufficient, if not defined, then Ascending}</td>
- *  <tr><td><b>numberOfTapes</b><br><i>optional</i></td><td>even number greater than 2 - denotes how many tapes (temporary files) will be used when external sorting data.
+ *  <tr><td><b>numberOfTapes</b><br><i>optional</i></td><td>number greater than 1 - denotes how many tapes (temporary files) will be used when external sorting data.
+ *  More tapes means less merging passes over the data, tens of tapes are fine for large inputs.
  *  <i>Default is 6 tapes.</i></td>
  *  <!--tr><td><b>sorterInitialCapacity</b><br><i>optional</i></td><td>the initial capacity of internal sorter used for in-memory sorting records. If the
  *   system has plenty of memory, specify high number here (5000 or more). If the system is short on memory, use low number (100).<br>
@@ -102,6 +103,8 @@ import org.w3c.dom.Element;
  *  which are sorted in-memory. If number of records exceed this size, external sorting is performed.</td></tr>
  *  <tr><td><b>tmpDirs</b><br><i>optional</i></td><td>Semicolon (;) delimited list of directories which should be
  *  used for creating tape files - used when external sorting is performed. Default value is equal to Java's <code>java.io.tmpdir</code> system property.</td></tr>
+ *  <tr><td><b>sortThreads</b><br><i>optional</i></td><td>number of threads used for sorting of in-memory buffer. Order of sorted records
+ *  does not depend on the number of threads. <i>Default is 1.</i></td></tr>
  *  </table>
  *
  *  <h4>Example:</h4>
@@ -117,6 +120,7 @@ public class ExtSort extends Node {
 	private static final String XML_SORTORDER_ATTRIBUTE = "sortOrder";
 	private static final String XML_SORTKEY_ATTRIBUTE = "sortKey";
     private static final String XML_BUFFER_CAPACITY_ATTRIBUTE = "bufferCapacity";
+    private static final String XML_SORT_THREADS_ATTRIBUTE = "sortThreads";
      private static final String XML_LOCALE_ATTRIBUTE = "locale";
 	private static final String XML_CASE_SENSITIVE_ATTRIBUTE = "caseSensitive";
     
@@ -141,6 +145,7 @@ public class ExtSort extends Node {
 
 	private int internalBufferCapacity;
 	private int numberOfTapes;
+	private int sortThreads = 1;
 	private CloverBuffer recordBuffer;
 	private String localeStr;
 
@@ -261,8 +266,10 @@ public class ExtSort extends Node {
 		super.init();
 		try {
 			// create sorter
-			sorter = new ExternalSortDataRecord(getInputPort(READ_FROM_PORT).getMetadata(),
-					sortKeysNames, sortOrderings, internalBufferCapacity, DEFAULT_NUMBER_OF_TAPES, localeStr, caseSensitive);
+			ExternalSortDataRecord externalSorter = new ExternalSortDataRecord(getInputPort(READ_FROM_PORT).getMetadata(),
+					sortKeysNames, sortOrderings, internalBufferCapacity, numberOfTapes, localeStr, caseSensitive);
+			externalSorter.setSortThreads(sortThreads);
+			sorter = externalSorter;
 		} catch (Exception e) {
             throw new ComponentNotReadyException(e);
 		}
@@ -332,6 +339,9 @@ public class ExtSort extends Node {
         if (xattribs.exists(XML_BUFFER_CAPACITY_ATTRIBUTE)){
             sort.setBufferCapacity(xattribs.getInteger(XML_BUFFER_CAPACITY_ATTRIBUTE));
         }
+        if (xattribs.exists(XML_SORT_THREADS_ATTRIBUTE)){
+            sort.setSortThreads(xattribs.getInteger(XML_SORT_THREADS_ATTRIBUTE));
+        }
 
         if (xattribs.exists(XML_LOCALE_ATTRIBUTE)) {
             sort.setLocaleStr(xattribs.getString(XML_LOCALE_ATTRIBUTE));
@@ -388,6 +398,12 @@ public class ExtSort extends Node {
 				}
 			}
 		}
+		if (numberOfTapes < 2) {
+			status.addError(this, XML_NUMBEROFTAPES_ATTRIBUTE, "The number of tapes is less than 2.");
+		}
+		if (sortThreads < 1) {
+			status.addError(this, XML_SORT_THREADS_ATTRIBUTE, "The number of sort threads is less than 1.");
+		}
         
         return status;
     }
@@ -400,6 +416,15 @@ public class ExtSort extends Node {
     	this.numberOfTapes = numberOfTapes;
 	}
 
+    /**
+     * How many threads are used for sorting of in-memory buffer.
+     * 
+     * @param sortThreads number of threads
+     */
+    public void setSortThreads(int sortThreads) {
+    	this.sortThreads = sortThreads;
+    }
+
 	public String getLocaleStr() {
 		return localeStr;
 	}
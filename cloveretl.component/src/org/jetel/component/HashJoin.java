@@ -21,11 +21,15 @@ package org.jetel.component;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -35,11 +39,14 @@ import org.jetel.data.DataRecordMap;
 import org.jetel.data.DataRecordMap.DataRecordIterator;
 import org.jetel.data.DataRecordMap.DataRecordLookup;
 import org.jetel.data.Defaults;
+import org.jetel.data.FileRecordBuffer;
 import org.jetel.data.NullRecord;
+import org.jetel.data.OffHeapDataRecordMap;
 import org.jetel.data.RecordKey;
 import org.jetel.exception.AttributeNotFoundException;
 import org.jetel.exception.ComponentNotReadyException;
 import org.jetel.exception.ConfigurationStatus;
+import org.jetel.exception.JetelRuntimeException;
 import org.jetel.exception.TransformException;
 import org.jetel.exception.XMLConfigurationException;
 import org.jetel.graph.InputPort;
@@ -52,8 +59,10 @@ import org.jetel.graph.modelview.impl.MetadataPropagationResolver;
 import org.jetel.graph.runtime.CloverWorker;
 import org.jetel.metadata.DataRecordMetadata;
 import org.jetel.util.SynchronizeUtils;
+import org.jetel.util.bytes.CloverBuffer;
 import org.jetel.util.file.FileUtils;
 import org.jetel.util.joinKey.JoinKeyUtils;
+import org.jetel.util.primitive.BlockedBloomFilter;
 import org.jetel.util.property.ComponentXMLAttributes;
 import org.jetel.util.property.RefResFlag;
 import org.jetel.util.string.StringUtils;
@@ -139,6 +148,18 @@ import org.w3c.dom.Element;
  *  <tr><td><b>charset</b><i>optional</i></td><td>encoding of extern source</td></tr>
  *    <tr><td><b>joinType</b><br><i>optional</i></td><td>inner/leftOuter/fullOuter Specifies type of join operation. Default is inner.</td></tr>
  *    <tr><td><b>hashTableSize</b><br><i>optional</i></td><td>how many records are expected (roughly) to be in hashtable.</td></tr>
+ *    <tr><td><b>offHeapHashTable</b><br><i>optional</i></td><td>true/false - slave records are stored serialized in direct memory
+ *    instead of heap objects (see {@link OffHeapDataRecordMap}). Default is false.</td></tr>
+ *    <tr><td><b>memoryLimit</b><br><i>optional</i></td><td>maximum memory in MB occupied by slave records (roughly estimated).
+ *    If the limit is exceeded, slave and driver records are partitioned by hash of the join key and partitions which do not fit
+ *    into memory are spilled to temporary files and joined later (hybrid hash join). The same driver key has to be used for all slaves.
+ *    Default is 0 - no limit, all slave records are kept in memory.</td></tr>
+ *    <tr><td><b>buildThreads</b><br><i>optional</i></td><td>number of threads building the hash tables. If greater than 1, slave records
+ *    are partitioned by hash of the join key and hash table of each partition is built by separate thread. Slave records are passed
+ *    to the threads in small batches while the slave inputs are read. Ignored if <i>memoryLimit</i> is set. Default is 1.</td></tr>
+ *    <tr><td><b>bloomFilter</b><br><i>optional</i></td><td>true/false - Bloom filter of slave keys is built together with hash tables,
+ *    driver records whose keys are rejected by the filter are not looked up in the hash tables. Useful if most of driver records have
+ *    no slave. Ignored if <i>memoryLimit</i> is set. Default is false.</td></tr>
  *    <tr><td><b>slaveDuplicates</b><br><i>optional</i></td><td>true/false - allow records on slave port with duplicate keys. Default is false - multiple
  *    duplicate records are discarded - only the first one is used for join.</td></tr>
  *  <tr><td><b>errorActions </b><i>optional</i></td><td>defines if graph is to stop, when transformation returns negative value.
@@ -199,6 +220,10 @@ public class HashJoin extends Node implements MetadataProvider {
 	private static final String XML_TRANSFORMURL_ATTRIBUTE = "transformURL";
 	private static final String XML_CHARSET_ATTRIBUTE = "charset";
 	private static final String XML_ALLOW_SLAVE_DUPLICATES_ATTRIBUTE = "slaveDuplicates";
+	private static final String XML_OFF_HEAP_HASH_TABLE_ATTRIBUTE = "offHeapHashTable";
+	private static final String XML_MEMORY_LIMIT_ATTRIBUTE = "memoryLimit";
+	private static final String XML_BUILD_THREADS_ATTRIBUTE = "buildThreads";
+	private static final String XML_BLOOM_FILTER_ATTRIBUTE = "bloomFilter";
 	// legacy attributes
 	private static final String XML_LEFTOUTERJOIN_ATTRIBUTE = "leftOuterJoin";
 	private static final String XML_SLAVEOVERRIDEKEY_ATTRIBUTE = "slaveOverrideKey";
@@ -210,6 +235,17 @@ public class HashJoin extends Node implements MetadataProvider {
 
 	private final static int DEFAULT_HASH_TABLE_INITIAL_CAPACITY = 512;
 
+	/** number of partitions created by one level of hybrid hash join */
+	private final static int SPILL_PARTITION_BITS = 4;
+	private final static int NUM_SPILL_PARTITIONS = 1 << SPILL_PARTITION_BITS;
+	/** partitions of this level are not spilled anymore, they probably contain just one key */
+	private final static int MAX_SPILL_LEVEL = 8;
+
+	/** number of slave records passed to partition builder at once */
+	private final static int BUILD_BATCH_SIZE = 256;
+	/** number of batches waiting for one partition builder */
+	private final static int BUILD_QUEUE_CAPACITY = 4;
+
 	private final static int WRITE_TO_PORT = 0;
 	private final static int REJECTED_PORT = 1;
 	private final static int DRIVER_ON_PORT = 0;
@@ -235,6 +271,20 @@ public class HashJoin extends Node implements MetadataProvider {
 
 	private DataRecordMap[] hashMap;
 	private int hashTableInitialCapacity;
+	private boolean offHeapHashTable = false;
+	/** in MB, 0 means no limit */
+	private int memoryLimit = 0;
+	private int buildThreads = 1;
+	private boolean bloomFilter = false;
+
+	/** hash maps [partition][slave], hashMap contains maps of the first partition */
+	private DataRecordMap[][] partitionMaps;
+	/** Bloom filters of slave keys [partition][slave], null if not used */
+	private BlockedBloomFilter[][] bloomFilters;
+	/** builders of partition hash maps [partition], null if the build is not partitioned */
+	private PartitionBuilder[] partitionBuilders;
+	/** root of hybrid hash join, used only if the memory limit is set */
+	private SpillingJoin spillingJoin;
 
 	private Properties transformationParameters;
 
@@ -395,15 +445,27 @@ public class HashJoin extends Node implements MetadataProvider {
 		}
 
 		// allocate maps
+		int numPartitions = isPartitionedBuild() ? buildThreads : 1;
 		try {
-			hashMap = new DataRecordMap[slaveCnt];
-			for (int idx = 0; idx < slaveCnt; idx++) {
-				hashMap[idx] = new DataRecordMap(slaveKeys[idx], slaveDuplicates, hashTableInitialCapacity, false);
+			partitionMaps = new DataRecordMap[numPartitions][slaveCnt];
+			for (int partition = 0; partition < numPartitions; partition++) {
+				for (int idx = 0; idx < slaveCnt; idx++) {
+					partitionMaps[partition][idx] = createHashMap(idx, hashTableInitialCapacity / numPartitions);
+				}
 			}
+			hashMap = partitionMaps[0];
 		} catch (OutOfMemoryError ex) {
 			logger.fatal(ex);
 			throw new ComponentNotReadyException("Can't allocate HashMap of size: " + hashTableInitialCapacity);
 		}
+		if (memoryLimit > 0) {
+			// driver records are partitioned by single key
+			for (int idx = 1; idx < slaveCnt; idx++) {
+				if (!Arrays.equals(driverKeys[0].getKeyFields(), driverKeys[idx].getKeyFields())) {
+					throw new ComponentNotReadyException(this, XML_MEMORY_LIMIT_ATTRIBUTE, "Memory limit can be used only if the same driver key is used for all slaves.");
+				}
+			}
+		}
 
 		// init transformation
 		if (transformation == null) {
@@ -464,6 +526,22 @@ public class HashJoin extends Node implements MetadataProvider {
 	@Override
 	public void free() {
 		hashMap = null;
+		partitionMaps = null;
+	}
+
+	/**
+	 * @return true if slave records are partitioned before they are stored in hash maps
+	 */
+	private boolean isPartitionedBuild() {
+		return memoryLimit == 0 && (buildThreads > 1 || bloomFilter);
+	}
+
+	private DataRecordMap createHashMap(int slaveIdx, int initialCapacity) {
+		if (offHeapHashTable) {
+			return new OffHeapDataRecordMap(slaveKeys[slaveIdx], slaveDuplicates, initialCapacity, false);
+		} else {
+			return new DataRecordMap(slaveKeys[slaveIdx], slaveDuplicates, initialCapacity, false);
+		}
 	}
 
 	/**
@@ -478,29 +556,69 @@ public class HashJoin extends Node implements MetadataProvider {
 	 * read records from all slave input ports and stores them to hashtables
 	 */
 	private void loadSlaveData() {
+		if (isPartitionedBuild()) {
+			if (bloomFilter) {
+				bloomFilters = new BlockedBloomFilter[partitionMaps.length][slaveCnt];
+			}
+			// hash maps of partitions are built in separate threads while the slave ports are read
+			partitionBuilders = new PartitionBuilder[partitionMaps.length];
+			for (int partition = 0; partition < partitionMaps.length; partition++) {
+				partitionBuilders[partition] = new PartitionBuilder(partition);
+				partitionBuilders[partition].startWorker();
+			}
+		}
 		InputReader[] slaveReader = new InputReader[slaveCnt];
 		// read slave ports in separate threads
 		for (int idx = 0; idx < slaveCnt; idx++) {
 			slaveReader[idx] = new InputReader(idx);
 			slaveReader[idx].startWorker();
 		}
-		// wait for slave input threads to finish their job
+		try {
+			// wait for slave input threads to finish their job
+			waitForWorkers(slaveReader);
+		} finally {
+			if (partitionBuilders != null) {
+				for (PartitionBuilder builder : partitionBuilders) {
+					builder.finish();
+				}
+			}
+		}
+
+		if (partitionBuilders != null) {
+			try {
+				waitForWorkers(partitionBuilders);
+			} finally {
+				partitionBuilders = null;
+			}
+		}
+	}
+
+	/**
+	 * Waits for all given workers to finish. If any of the workers failed, its exception is rethrown,
+	 * so the join does not continue with incomplete slave data.
+	 */
+	private void waitForWorkers(CloverWorker[] workers) {
 		boolean killIt = false;
-		for (int idx = 0; idx < slaveCnt; idx++) {
-			while (slaveReader[idx].getThread().getState() != Thread.State.TERMINATED) {
+		for (int idx = 0; idx < workers.length; idx++) {
+			while (workers[idx].getThread().getState() != Thread.State.TERMINATED) {
 				if (killIt) {
-					slaveReader[idx].getThread().interrupt();
+					workers[idx].getThread().interrupt();
 					break;
 				}
 				killIt = !runIt;
 				try {
-					slaveReader[idx].getThread().join(1000);
+					workers[idx].getThread().join(1000);
 				} catch (InterruptedException e) {
 					logger.debug(getId() + " thread interrupted, it will interrupt child threads", e);
 					killIt = true;
 				}
 			}
 		}
+		for (CloverWorker worker : workers) {
+			if (worker.getException() != null) {
+				throw new JetelRuntimeException(getId() + ": " + worker.getName() + " failed", worker.getException());
+			}
+		}
 	}
 
 	/**
@@ -510,14 +628,14 @@ public class HashJoin extends Node implements MetadataProvider {
 	 * @throws InterruptedException
 	 * @throws IOException
 	 */
-	private void flushOrphaned() throws TransformException, IOException, InterruptedException {
+	private void flushOrphaned(DataRecordMap[] maps) throws TransformException, IOException, InterruptedException {
 		// flush slaves without driver record
 		for (int idx = 0; idx < slaveCnt + 1; idx++) {
 			inRecords[idx] = NullRecord.NULL_RECORD;
 		}
 
 		for (int slaveIdx = 0; slaveIdx < slaveCnt; slaveIdx++) {
-			Iterator<DataRecord> itor = hashMap[slaveIdx].getOrphanedIterator();
+			Iterator<DataRecord> itor = maps[slaveIdx].getOrphanedIterator();
 			while (itor.hasNext()) {
 				if (!runIt) {
 					return;
@@ -557,120 +675,161 @@ public class HashJoin extends Node implements MetadataProvider {
 	private void flush() throws TransformException, IOException, InterruptedException {
 		DataRecord driverRecord = inRecords[0];
 		masterCounter = 0;
+		int numPartitions = partitionMaps.length;
 		// move to preExecute/init?
-		DataRecordLookup[] mapLookups = new DataRecordLookup[slaveCnt];
-		for (int i = 0; i < slaveCnt; i++) {
-			mapLookups[i] = hashMap[i].createDataRecordLookup(driverKeys[i], driverRecord);
+		DataRecordLookup[][] partitionLookups = new DataRecordLookup[numPartitions][slaveCnt];
+		for (int partition = 0; partition < numPartitions; partition++) {
+			for (int i = 0; i < slaveCnt; i++) {
+				partitionLookups[partition][i] = partitionMaps[partition][i].createDataRecordLookup(driverKeys[i], driverRecord);
+			}
 		}
 		// end of move
 
-		if (slaveDuplicates)
-			flushMulti(mapLookups, driverRecord);
-		else
-			flushSingle(mapLookups, driverRecord);
+		DataRecordLookup[] mapLookups = numPartitions > 1 || bloomFilters != null ? new DataRecordLookup[slaveCnt] : partitionLookups[0];
+		DataRecordIterator[] iterators = new DataRecordIterator[slaveCnt];
+		while (runIt && driverPort.readRecord(driverRecord) != null) {
+			if (mapLookups != partitionLookups[0]) {
+				for (int i = 0; i < slaveCnt; i++) {
+					long hash = getKeyHash(driverRecord, driverKeys[i].getKeyFields(), 0);
+					int partition = getBuildPartition(hash, numPartitions);
+					if (bloomFilters != null && !bloomFilters[partition][i].mightContain(hash)) {
+						mapLookups[i] = null; // there is no slave for the key, the lookup is skipped
+					} else {
+						mapLookups[i] = partitionLookups[partition][i];
+					}
+				}
+			}
+			if (slaveDuplicates) {
+				joinMulti(mapLookups, iterators, driverRecord);
+			} else {
+				joinSingle(mapLookups, driverRecord);
+			}
+		}
 	}
 
 	/**
-	 * @param mapLookups
+	 * Performs hybrid hash join, used if the memory limit is set.
+	 * 
+	 * @see SpillingJoin
 	 */
-	private void flushSingle(DataRecordLookup[] mapLookups, DataRecord driverRecord) throws TransformException,
+	private void executeSpilling() throws IOException, InterruptedException, TransformException {
+		masterCounter = 0;
+		spillingJoin = new SpillingJoin(0);
+		try {
+			loadSlaveData();
+			spillingJoin.join(new RecordReader() {
+				@Override
+				public DataRecord read(DataRecord record) throws IOException, InterruptedException {
+					return driverPort.readRecord(record);
+				}
+			}, inRecords[0]);
+		} finally {
+			spillingJoin.free();
+			spillingJoin = null;
+		}
+	}
+
+	/**
+	 * Joins one driver record with slaves found by given lookups, slave duplicates are not allowed.
+	 * 
+	 * @param mapLookups lookups of slaves, null lookup means that there is no slave for the driver record
+	 */
+	private void joinSingle(DataRecordLookup[] mapLookups, DataRecord driverRecord) throws TransformException,
 			IOException, InterruptedException {
-		while (runIt && driverPort.readRecord(driverRecord) != null) {
-			int slaveIdx;
+		int slaveIdx;
 
-			for (slaveIdx = 0; slaveIdx < slaveCnt; slaveIdx++) {
-				inRecords[1 + slaveIdx] = mapLookups[slaveIdx].getAndMark();
-				if (inRecords[1 + slaveIdx] == null) {
-					if (join == Join.INNER) { // missing slave
-						break;
-					}
-					inRecords[1 + slaveIdx] = NullRecord.NULL_RECORD;
+		for (slaveIdx = 0; slaveIdx < slaveCnt; slaveIdx++) {
+			inRecords[1 + slaveIdx] = mapLookups[slaveIdx] != null ? mapLookups[slaveIdx].getAndMark() : null;
+			if (inRecords[1 + slaveIdx] == null) {
+				if (join == Join.INNER) { // missing slave
+					break;
 				}
+				inRecords[1 + slaveIdx] = NullRecord.NULL_RECORD;
 			}
-			if (slaveIdx < slaveCnt) { // missing slaves
-				if (rejectedPort != null) {
-					rejectedPort.writeRecord(driverRecord);
-				}
-				continue; // read next driver
+		}
+		if (slaveIdx < slaveCnt) { // missing slaves
+			if (rejectedPort != null) {
+				rejectedPort.writeRecord(driverRecord);
 			}
+			return; // read next driver
+		}
 
-			int transformResult = -1;
+		int transformResult = -1;
 
-			try {
-				transformResult = transformation.transform(inRecords, outRecords);
-			} catch (Exception exception) {
-				transformResult = transformation.transformOnError(exception, inRecords, outRecords);
-			}
+		try {
+			transformResult = transformation.transform(inRecords, outRecords);
+		} catch (Exception exception) {
+			transformResult = transformation.transformOnError(exception, inRecords, outRecords);
+		}
 
-			if (transformResult < 0) {
-				handleException(transformation, transformResult, masterCounter);
-			} else {
-				outPort.writeRecord(outRecords[0]);
-			}
+		if (transformResult < 0) {
+			handleException(transformation, transformResult, masterCounter);
+		} else {
+			outPort.writeRecord(outRecords[0]);
+		}
 
-			outRecords[0].reset();
+		outRecords[0].reset();
 
-			SynchronizeUtils.cloverYield();
-			masterCounter++;
-		}
+		SynchronizeUtils.cloverYield();
+		masterCounter++;
 	}
 
 	/**
-	 * @param mapLookups
+	 * Joins one driver record with all slaves found by given lookups.
+	 * 
+	 * @param mapLookups lookups of slaves, null lookup means that there is no slave for the driver record
+	 * @param iterators working array for slave iterators
 	 */
-	private void flushMulti(DataRecordLookup[] mapLookups, DataRecord driverRecord) throws TransformException,
+	private void joinMulti(DataRecordLookup[] mapLookups, DataRecordIterator[] iterators, DataRecord driverRecord) throws TransformException,
 			IOException, InterruptedException {
-		DataRecordIterator[] iterators = new DataRecordIterator[slaveCnt];
-		while (runIt && driverPort.readRecord(driverRecord) != null) {
-			int slaveIdx;
+		int slaveIdx;
 
-			for (slaveIdx = 0; slaveIdx < slaveCnt; slaveIdx++) {
-				iterators[slaveIdx] = mapLookups[slaveIdx].getAllAndMark();
-				if (iterators[slaveIdx] == null) {
-					if (join == Join.INNER) { // missing slave
-						break;
-					}
-					iterators[slaveIdx] = hashMap[0].getNULLIterator();
+		for (slaveIdx = 0; slaveIdx < slaveCnt; slaveIdx++) {
+			iterators[slaveIdx] = mapLookups[slaveIdx] != null ? mapLookups[slaveIdx].getAllAndMark() : null;
+			if (iterators[slaveIdx] == null) {
+				if (join == Join.INNER) { // missing slave
+					break;
 				}
+				iterators[slaveIdx] = hashMap[0].getNULLIterator();
 			}
-			if (slaveIdx < slaveCnt) { // missing slaves
-				if (rejectedPort != null) {
-					rejectedPort.writeRecord(driverRecord);
-				}
-				continue; // read next driver
+		}
+		if (slaveIdx < slaveCnt) { // missing slaves
+			if (rejectedPort != null) {
+				rejectedPort.writeRecord(driverRecord);
 			}
+			return; // read next driver
+		}
 
-			for (int i = 0; i < iterators.length; i++) {
-				inRecords[i + 1] = iterators[i].next();
-			}
-			int currentIterator = iterators.length - 1;
+		for (int i = 0; i < iterators.length; i++) {
+			inRecords[i + 1] = iterators[i].next();
+		}
+		int currentIterator = iterators.length - 1;
 
-			while (currentIterator >= 0) {
-				transform();
+		while (currentIterator >= 0) {
+			transform();
 
-				while (iterators[currentIterator].hasNext()) {
+			while (iterators[currentIterator].hasNext()) {
+				inRecords[currentIterator + 1] = iterators[currentIterator].next();
+				transform();
+			}
+			currentIterator--;
+			while (currentIterator >= 0) {
+				if (iterators[currentIterator].hasNext()) {
 					inRecords[currentIterator + 1] = iterators[currentIterator].next();
-					transform();
-				}
-				currentIterator--;
-				while (currentIterator >= 0) {
-					if (iterators[currentIterator].hasNext()) {
-						inRecords[currentIterator + 1] = iterators[currentIterator].next();
 
-						for (int i = currentIterator + 1; i < iterators.length; i++) {
-							iterators[i].reset();
-							inRecords[i + 1] = iterators[i].next();
-						}
-
-						currentIterator = iterators.length - 1;
-						break;
+					for (int i = currentIterator + 1; i < iterators.length; i++) {
+						iterators[i].reset();
+						inRecords[i + 1] = iterators[i].next();
 					}
-					currentIterator--;
+
+					currentIterator = iterators.length - 1;
+					break;
 				}
+				currentIterator--;
 			}
-			SynchronizeUtils.cloverYield();
-			masterCounter++;
 		}
+		SynchronizeUtils.cloverYield();
+		masterCounter++;
 	}
 
 	private void transform() throws TransformException, IOException, InterruptedException {
@@ -732,11 +891,17 @@ public class HashJoin extends Node implements MetadataProvider {
 
 	@Override
 	public Result execute() throws Exception {
-		loadSlaveData();
-		flush();
+		if (memoryLimit > 0) {
+			executeSpilling();
+		} else {
+			loadSlaveData();
+			flush();
 
-		if (join == Join.FULL_OUTER) {
-			flushOrphaned();
+			if (join == Join.FULL_OUTER) {
+				for (DataRecordMap[] maps : partitionMaps) {
+					flushOrphaned(maps);
+				}
+			}
 		}
 
 		if (errorLog != null) {
@@ -752,11 +917,14 @@ public class HashJoin extends Node implements MetadataProvider {
 	public void postExecute() throws ComponentNotReadyException {
 		super.postExecute();
 
-		if (hashMap != null) {
-			for (DataRecordMap mapItem : hashMap) {
-				mapItem.clear();
+		if (partitionMaps != null) {
+			for (DataRecordMap[] maps : partitionMaps) {
+				for (DataRecordMap mapItem : maps) {
+					mapItem.clear();
+				}
 			}
 		}
+		bloomFilters = null;
 
 		transformation.postExecute();
 		transformation.finished();
@@ -844,13 +1012,25 @@ public class HashJoin extends Node implements MetadataProvider {
 		if (xattribs.exists(XML_ALLOW_SLAVE_DUPLICATES_ATTRIBUTE)) {
 			join.setSlaveDuplicates(xattribs.getBoolean(XML_ALLOW_SLAVE_DUPLICATES_ATTRIBUTE));
 		}
+		if (xattribs.exists(XML_OFF_HEAP_HASH_TABLE_ATTRIBUTE)) {
+			join.setOffHeapHashTable(xattribs.getBoolean(XML_OFF_HEAP_HASH_TABLE_ATTRIBUTE));
+		}
+		if (xattribs.exists(XML_MEMORY_LIMIT_ATTRIBUTE)) {
+			join.setMemoryLimit(xattribs.getInteger(XML_MEMORY_LIMIT_ATTRIBUTE));
+		}
+		if (xattribs.exists(XML_BUILD_THREADS_ATTRIBUTE)) {
+			join.setBuildThreads(xattribs.getInteger(XML_BUILD_THREADS_ATTRIBUTE));
+		}
+		if (xattribs.exists(XML_BLOOM_FILTER_ATTRIBUTE)) {
+			join.setBloomFilter(xattribs.getBoolean(XML_BLOOM_FILTER_ATTRIBUTE));
+		}
 		if (xattribs.exists(XML_ERROR_ACTIONS_ATTRIBUTE)) {
 			join.setErrorActions(xattribs.getString(XML_ERROR_ACTIONS_ATTRIBUTE));
 		}
 		if (xattribs.exists(XML_ERROR_LOG_ATTRIBUTE)) {
 			join.setErrorLog(xattribs.getString(XML_ERROR_LOG_ATTRIBUTE));
 		}
-		join.setTransformationParameters(xattribs.attributes2Properties(new String[] { XML_ID_ATTRIBUTE, XML_JOINKEY_ATTRIBUTE, XML_TRANSFORM_ATTRIBUTE, XML_TRANSFORMCLASS_ATTRIBUTE, XML_JOINTYPE_ATTRIBUTE, XML_HASHTABLESIZE_ATTRIBUTE, XML_ALLOW_SLAVE_DUPLICATES_ATTRIBUTE }));
+		join.setTransformationParameters(xattribs.attributes2Properties(new String[] { XML_ID_ATTRIBUTE, XML_JOINKEY_ATTRIBUTE, XML_TRANSFORM_ATTRIBUTE, XML_TRANSFORMCLASS_ATTRIBUTE, XML_JOINTYPE_ATTRIBUTE, XML_HASHTABLESIZE_ATTRIBUTE, XML_ALLOW_SLAVE_DUPLICATES_ATTRIBUTE, XML_OFF_HEAP_HASH_TABLE_ATTRIBUTE, XML_MEMORY_LIMIT_ATTRIBUTE, XML_BUILD_THREADS_ATTRIBUTE, XML_BLOOM_FILTER_ATTRIBUTE }));
 		return join;
 	}
 
@@ -896,6 +1076,14 @@ public class HashJoin extends Node implements MetadataProvider {
 		if (charset != null && !Charset.isSupported(charset)) {
         	status.addError(this, XML_CHARSET_ATTRIBUTE, "Charset " + charset + " not supported!");
         }
+        if (memoryLimit < 0) {
+        	status.addError(this, XML_MEMORY_LIMIT_ATTRIBUTE, "Memory limit must not be negative.");
+        }
+        if (buildThreads < 1) {
+        	status.addError(this, XML_BUILD_THREADS_ATTRIBUTE, "Number of build threads must be positive.");
+        } else if (memoryLimit > 0 && (buildThreads > 1 || bloomFilter)) {
+        	status.addWarning(this, XML_MEMORY_LIMIT_ATTRIBUTE, "Build threads and Bloom filter are ignored if memory limit is set.");
+        }
 		
 		
 		if (joinKey == null) {
@@ -1000,6 +1188,302 @@ public class HashJoin extends Node implements MetadataProvider {
 		this.slaveDuplicates = slaveDuplicates;
 	}
 
+	public boolean isOffHeapHashTable() {
+		return offHeapHashTable;
+	}
+
+	/**
+	 * @param offHeapHashTable if true, slave records are stored in {@link OffHeapDataRecordMap}
+	 */
+	public void setOffHeapHashTable(boolean offHeapHashTable) {
+		this.offHeapHashTable = offHeapHashTable;
+	}
+
+	public int getMemoryLimit() {
+		return memoryLimit;
+	}
+
+	/**
+	 * @param memoryLimit maximum memory in MB for slave records, if exceeded, records are spilled to disk;
+	 * 0 means no limit
+	 */
+	public void setMemoryLimit(int memoryLimit) {
+		this.memoryLimit = memoryLimit;
+	}
+
+	public int getBuildThreads() {
+		return buildThreads;
+	}
+
+	/**
+	 * @param buildThreads number of threads building the hash maps, each thread builds maps of one partition of slave records
+	 */
+	public void setBuildThreads(int buildThreads) {
+		this.buildThreads = buildThreads;
+	}
+
+	public boolean isBloomFilter() {
+		return bloomFilter;
+	}
+
+	/**
+	 * @param bloomFilter if true, driver records are tested by Bloom filter of slave keys before lookup
+	 */
+	public void setBloomFilter(boolean bloomFilter) {
+		this.bloomFilter = bloomFilter;
+	}
+
+	/**
+	 * Computes 64-bit hash of the key, different seeds give independent hash functions.
+	 */
+	private static long getKeyHash(DataRecord record, int[] keyFields, int seed) {
+		long h = seed;
+		for (int field : keyFields) {
+			h = h * 0x9E3779B97F4A7C15L + record.getField(field).hashCode();
+		}
+		// finalization step of MurmurHash3
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB93FE53EC1A3L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Computes partition of the record for hybrid hash join. Each level of partitioning
+	 * uses different hash function.
+	 */
+	private static int getPartition(DataRecord record, int[] keyFields, int level) {
+		return (int) (getKeyHash(record, keyFields, level) >>> (64 - SPILL_PARTITION_BITS));
+	}
+
+	/**
+	 * Computes partition of parallel build from upper bits of the key hash,
+	 * lower bits are used by Bloom filter.
+	 */
+	private static int getBuildPartition(long keyHash, int numPartitions) {
+		return (int) (((keyHash >>> 32) * numPartitions) >>> 32);
+	}
+
+	/**
+	 * @return rough estimate of memory occupied by the record stored in hash map
+	 */
+	private long estimateMemory(DataRecord record) {
+		if (offHeapHashTable) {
+			return record.getSizeSerialized() + 32;
+		}
+		return record.getSizeSerialized() + 48L * record.getNumFields() + 96;
+	}
+
+	private interface RecordReader {
+		DataRecord read(DataRecord record) throws IOException, InterruptedException;
+	}
+
+	/**
+	 * Temporary file with serialized records.
+	 */
+	private static class SpillFile implements RecordReader {
+		private final FileRecordBuffer buffer = new FileRecordBuffer();
+		private final CloverBuffer recordBuffer = CloverBuffer.allocateDirect(Defaults.Record.RECORD_INITIAL_SIZE, Defaults.Record.RECORD_LIMIT_SIZE);
+
+		void write(DataRecord record) throws IOException {
+			recordBuffer.clear();
+			record.serialize(recordBuffer);
+			recordBuffer.flip();
+			buffer.push(recordBuffer);
+		}
+
+		@Override
+		public DataRecord read(DataRecord record) throws IOException {
+			recordBuffer.clear();
+			if (buffer.shift(recordBuffer) == null) {
+				return null;
+			}
+			recordBuffer.flip();
+			record.deserialize(recordBuffer);
+			return record;
+		}
+
+		void close() {
+			try {
+				buffer.close();
+			} catch (IOException e) {
+				logger.warn("Temporary file of hash join cannot be deleted.", e);
+			}
+		}
+	}
+
+	/**
+	 * Hybrid hash join used if the memory limit is set. Slave and driver records are divided into
+	 * partitions by hash of the join key. All partitions are kept in memory until the memory limit
+	 * is exceeded, then the largest partition is spilled to temporary files and all following records
+	 * of this partition (including driver records) are spilled as well. Each spilled partition is joined
+	 * separately afterwards by new instance of this class, which partitions the records by different hash function.
+	 */
+	private class SpillingJoin {
+		private final int level;
+		private final DataRecordMap[][] maps = new DataRecordMap[NUM_SPILL_PARTITIONS][];
+		/** not null for spilled partitions */
+		private final SpillFile[][] slaveFiles = new SpillFile[NUM_SPILL_PARTITIONS][];
+		private final SpillFile[] driverFiles = new SpillFile[NUM_SPILL_PARTITIONS];
+		private final long[] partitionMemory = new long[NUM_SPILL_PARTITIONS];
+		private long memory;
+
+		SpillingJoin(int level) {
+			this.level = level;
+			for (int partition = 0; partition < NUM_SPILL_PARTITIONS; partition++) {
+				maps[partition] = new DataRecordMap[slaveCnt];
+				for (int idx = 0; idx < slaveCnt; idx++) {
+					maps[partition][idx] = createHashMap(idx, hashTableInitialCapacity / NUM_SPILL_PARTITIONS);
+				}
+			}
+		}
+
+		/**
+		 * Stores the slave record, may be called concurrently by slave readers.
+		 */
+		synchronized void putSlave(int slaveIdx, DataRecord record) throws IOException {
+			int partition = getPartition(record, slaveKeys[slaveIdx].getKeyFields(), level);
+			if (slaveFiles[partition] != null) {
+				slaveFiles[partition][slaveIdx].write(record);
+				return;
+			}
+			maps[partition][slaveIdx].put(offHeapHashTable ? record : record.duplicate());
+			long size = estimateMemory(record);
+			partitionMemory[partition] += size;
+			memory += size;
+			if (level < MAX_SPILL_LEVEL) {
+				while (memory > ((long) memoryLimit << 20)) {
+					spillLargestPartition();
+				}
+			}
+		}
+
+		private void spillLargestPartition() throws IOException {
+			int largest = -1;
+			for (int partition = 0; partition < NUM_SPILL_PARTITIONS; partition++) {
+				if (slaveFiles[partition] == null && (largest < 0 || partitionMemory[partition] > partitionMemory[largest])) {
+					largest = partition;
+				}
+			}
+			slaveFiles[largest] = new SpillFile[slaveCnt];
+			for (int idx = 0; idx < slaveCnt; idx++) {
+				SpillFile file = slaveFiles[largest][idx] = new SpillFile();
+				for (Iterator<DataRecord> it = maps[largest][idx].valueIterator(); it.hasNext();) {
+					file.write(it.next());
+				}
+				maps[largest][idx].clear();
+			}
+			maps[largest] = null;
+			memory -= partitionMemory[largest];
+			partitionMemory[largest] = 0;
+			if (logger.isDebugEnabled()) {
+				logger.debug(getId() + ": partition " + largest + " of level " + level + " spilled to disk");
+			}
+		}
+
+		/**
+		 * Joins all driver records with slave records stored by {@link #putSlave(int, DataRecord)}.
+		 * 
+		 * @param driverReader source of driver records, null if there are no driver records
+		 * @param driverRecord record used for reading of driver records
+		 */
+		void join(RecordReader driverReader, DataRecord driverRecord) throws IOException, InterruptedException, TransformException {
+			int[] driverKeyFields = driverKeys[0].getKeyFields();
+			DataRecordLookup[][] lookups = new DataRecordLookup[NUM_SPILL_PARTITIONS][];
+			for (int partition = 0; partition < NUM_SPILL_PARTITIONS; partition++) {
+				if (slaveFiles[partition] == null) {
+					lookups[partition] = new DataRecordLookup[slaveCnt];
+					for (int idx = 0; idx < slaveCnt; idx++) {
+						lookups[partition][idx] = maps[partition][idx].createDataRecordLookup(driverKeys[idx], driverRecord);
+					}
+				}
+			}
+			DataRecordIterator[] iterators = new DataRecordIterator[slaveCnt];
+			inRecords[0] = driverRecord;
+			while (runIt && driverReader != null && driverReader.read(driverRecord) != null) {
+				int partition = getPartition(driverRecord, driverKeyFields, level);
+				if (lookups[partition] == null) {
+					if (driverFiles[partition] == null) {
+						driverFiles[partition] = new SpillFile();
+					}
+					driverFiles[partition].write(driverRecord);
+				} else if (slaveDuplicates) {
+					joinMulti(lookups[partition], iterators, driverRecord);
+				} else {
+					joinSingle(lookups[partition], driverRecord);
+				}
+			}
+			if (join == Join.FULL_OUTER) {
+				for (int partition = 0; partition < NUM_SPILL_PARTITIONS; partition++) {
+					if (slaveFiles[partition] == null) {
+						flushOrphaned(maps[partition]);
+					}
+				}
+			}
+			// release memory of processed partitions before the spilled ones are loaded
+			freeMaps();
+
+			for (int partition = 0; partition < NUM_SPILL_PARTITIONS; partition++) {
+				if (slaveFiles[partition] == null) {
+					continue;
+				}
+				// slave records are not needed without driver records, unless full outer join is performed
+				if (runIt && (driverFiles[partition] != null || join == Join.FULL_OUTER)) {
+					SpillingJoin subJoin = new SpillingJoin(level + 1);
+					try {
+						for (int idx = 0; idx < slaveCnt; idx++) {
+							DataRecord slaveRecord = DataRecordFactory.newRecord(getInputPort(FIRST_SLAVE_PORT + idx).getMetadata());
+							while (slaveFiles[partition][idx].read(slaveRecord) != null) {
+								subJoin.putSlave(idx, slaveRecord);
+							}
+							slaveFiles[partition][idx].close();
+						}
+						subJoin.join(driverFiles[partition], driverRecord);
+					} finally {
+						subJoin.free();
+					}
+				}
+				closeFiles(partition);
+			}
+		}
+
+		private void freeMaps() {
+			for (int partition = 0; partition < NUM_SPILL_PARTITIONS; partition++) {
+				if (maps[partition] != null) {
+					for (DataRecordMap map : maps[partition]) {
+						map.clear();
+					}
+					maps[partition] = null;
+				}
+			}
+			memory = 0;
+		}
+
+		private void closeFiles(int partition) {
+			if (slaveFiles[partition] != null) {
+				for (SpillFile file : slaveFiles[partition]) {
+					file.close();
+				}
+			}
+			if (driverFiles[partition] != null) {
+				driverFiles[partition].close();
+				driverFiles[partition] = null;
+			}
+		}
+
+		/**
+		 * Releases all memory and temporary files.
+		 */
+		void free() {
+			freeMaps();
+			for (int partition = 0; partition < NUM_SPILL_PARTITIONS; partition++) {
+				closeFiles(partition);
+			}
+		}
+	}
+
 	/**
 	 * Reads records from one slave input and stores them to appropriate data structures.
 	 * 
@@ -1009,14 +1493,21 @@ public class HashJoin extends Node implements MetadataProvider {
 	private class InputReader extends CloverWorker {
 		private InputPort inPort;
 		private DataRecordMap map;
+		private int slaveIdx;
 		DataRecordMetadata metadata;
+		/** records waiting for partition builders [partition], null if the build is not partitioned */
+		private BuildBatch[] batches;
 
 		public InputReader(int slaveIdx) {
 			super(HashJoin.this, "InputThread#" + slaveIdx);
 			runIt = true;
+			this.slaveIdx = slaveIdx;
 			map = hashMap[slaveIdx];
 			inPort = getInputPort(FIRST_SLAVE_PORT + slaveIdx);
 			metadata = inPort.getMetadata();
+			if (partitionBuilders != null) {
+				batches = new BuildBatch[partitionBuilders.length];
+			}
 		}
 
 		@Override
@@ -1026,18 +1517,158 @@ public class HashJoin extends Node implements MetadataProvider {
 			while (runIt) {
 				try {
 					if (inPort.readRecord(record) == null) { // no more input data
+						flushBatches();
 						return;
 					}
-					map.put(record.duplicate());
 				} catch (InterruptedException e) {
 					logger.debug(getId() + ": thread forcibly aborted", e);
 					return;
 				} catch (IOException e) {
 					logger.error(getId() + ": thread failed", e);
-					return;
+					throw e;
+				}
+				if (spillingJoin != null) {
+					// failure of spilling is rethrown to the component thread by waitForWorkers()
+					spillingJoin.putSlave(slaveIdx, record);
+				} else if (batches != null) {
+					// record is stored by partition builder
+					long hash = getKeyHash(record, slaveKeys[slaveIdx].getKeyFields(), 0);
+					int partition = getBuildPartition(hash, batches.length);
+					if (batches[partition] == null) {
+						batches[partition] = new BuildBatch(slaveIdx);
+					}
+					if (batches[partition].add(record.duplicate(), hash)) {
+						partitionBuilders[partition].add(batches[partition]);
+						batches[partition] = null;
+					}
+				} else {
+					// off-heap map serializes the record, no copy is necessary
+					map.put(offHeapHashTable ? record : record.duplicate());
 				}
 			} // while
 		}
+
+		private void flushBatches() throws InterruptedException {
+			if (batches == null) {
+				return;
+			}
+			for (int partition = 0; partition < batches.length; partition++) {
+				if (batches[partition] != null) {
+					partitionBuilders[partition].add(batches[partition]);
+					batches[partition] = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Slave records of one slave port passed from slave reader to partition builder.
+	 */
+	private static class BuildBatch {
+		final int slaveIdx;
+		final DataRecord[] records;
+		final long[] hashes;
+		int size;
+
+		BuildBatch(int slaveIdx) {
+			this(slaveIdx, BUILD_BATCH_SIZE);
+		}
+
+		private BuildBatch(int slaveIdx, int capacity) {
+			this.slaveIdx = slaveIdx;
+			records = new DataRecord[capacity];
+			hashes = new long[capacity];
+		}
+
+		/**
+		 * @return true if the batch is full
+		 */
+		boolean add(DataRecord record, long hash) {
+			records[size] = record;
+			hashes[size] = hash;
+			return ++size == records.length;
+		}
+	}
+
+	/** marks end of slave records for partition builder */
+	private static final BuildBatch END_OF_BUILD = new BuildBatch(-1, 0);
+
+	/**
+	 * Stores slave records of one partition to hash maps and Bloom filters. The records are stored
+	 * directly to the hash maps as they are passed by slave readers, so they are not buffered
+	 * until all slave inputs are read.
+	 */
+	private class PartitionBuilder extends CloverWorker {
+		private final int partition;
+		private final BlockingQueue<BuildBatch> queue = new ArrayBlockingQueue<BuildBatch>(BUILD_QUEUE_CAPACITY);
+		/** key hashes of stored records [slave], Bloom filters are created when the number of keys is known */
+		private final long[][] hashes = new long[slaveCnt][];
+		private final int[] hashCounts = new int[slaveCnt];
+
+		public PartitionBuilder(int partition) {
+			super(HashJoin.this, "BuildThread#" + partition);
+			this.partition = partition;
+		}
+
+		/**
+		 * Passes the batch of records to this builder, may be called concurrently by slave readers.
+		 * Waits while the queue of the builder is full.
+		 */
+		void add(BuildBatch batch) throws InterruptedException {
+			while (!queue.offer(batch, 1, TimeUnit.SECONDS)) {
+				if (getThread().getState() == Thread.State.TERMINATED) {
+					throw new JetelRuntimeException(getId() + ": " + getName() + " failed", getException());
+				}
+			}
+		}
+
+		/**
+		 * Signals that all slave records have been passed. Does not wait if the builder has already terminated.
+		 */
+		void finish() {
+			try {
+				while (getThread().getState() != Thread.State.TERMINATED && !queue.offer(END_OF_BUILD, 1, TimeUnit.SECONDS)) {
+					// waiting for free space in the queue
+				}
+			} catch (InterruptedException e) {
+				getThread().interrupt();
+			}
+		}
+
+		@Override
+		public void work() throws Exception, InterruptedException {
+			BuildBatch batch;
+			while (runIt && (batch = queue.take()) != END_OF_BUILD) {
+				DataRecordMap map = partitionMaps[partition][batch.slaveIdx];
+				for (int i = 0; i < batch.size; i++) {
+					map.put(batch.records[i]);
+				}
+				if (bloomFilters != null) {
+					addHashes(batch);
+				}
+			}
+			if (bloomFilters != null) {
+				for (int idx = 0; idx < slaveCnt && runIt; idx++) {
+					BlockedBloomFilter filter = bloomFilters[partition][idx] = new BlockedBloomFilter(hashCounts[idx]);
+					for (int i = 0; i < hashCounts[idx]; i++) {
+						filter.add(hashes[idx][i]);
+					}
+					hashes[idx] = null;
+				}
+			}
+		}
+
+		private void addHashes(BuildBatch batch) {
+			int idx = batch.slaveIdx;
+			int count = hashCounts[idx] + batch.size;
+			if (hashes[idx] == null) {
+				hashes[idx] = new long[Math.max(count, BUILD_BATCH_SIZE)];
+			} else if (hashes[idx].length < count) {
+				hashes[idx] = Arrays.copyOf(hashes[idx], Math.max(count, hashes[idx].length * 2));
+			}
+			System.arraycopy(batch.hashes, 0, hashes[idx], hashCounts[idx], batch.size);
+			hashCounts[idx] = count;
+		}
 	}
 
 	public String getCharset() {
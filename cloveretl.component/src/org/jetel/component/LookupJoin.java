@@ -46,6 +46,8 @@ import org.jetel.graph.Result;
 import org.jetel.graph.TransformationGraph;
 import org.jetel.graph.modelview.MVMetadata;
 import org.jetel.graph.modelview.impl.MetadataPropagationResolver;
+import org.jetel.lookup.DBLookup;
+import org.jetel.lookup.DBLookupPrefetcher;
 import org.jetel.lookup.DBLookupTable;
 import org.jetel.metadata.DataRecordMetadata;
 import org.jetel.util.file.FileUtils;
@@ -341,8 +343,11 @@ public class LookupJoin extends Node implements MetadataProvider {
 		LookupTable lookupTable = getGraph().getLookupTable(lookupTableName);
 		boolean createTransformation = runtimeMetadata(lookupTable);
 		
+		// database lookup can fetch records for a window of driver records at once
+		DBLookupPrefetcher prefetcher = DBLookupPrefetcher.isPrefetchSupported(lookup) ? new DBLookupPrefetcher((DBLookup) lookup, inPort) : null;
+		
 		while (inRecord != null && runIt) {
-			inRecord = inPort.readRecord(inRecord);
+			inRecord = prefetcher != null ? prefetcher.readRecord(inPort, inRecord) : inPort.readRecord(inRecord);
 			if (inRecord != null) {
 				// find slave record in database
 			    lookup.seek();
@@ -26,7 +26,6 @@ import org.jetel.component.partition.PartitionFunctionFactory;
 import org.jetel.component.partition.RangePartition;
 import org.jetel.data.DataRecord;
 import org.jetel.data.DataRecordFactory;
-import org.jetel.data.Defaults;
 import org.jetel.data.RecordKey;
 import org.jetel.exception.AttributeNotFoundException;
 import org.jetel.exception.ComponentNotReadyException;
@@ -246,10 +245,11 @@ public class Partition extends Node {
 	private void executeNonDirect(InputPortDirect inPort,
 			OutputPortDirect[] outPorts) throws Exception {
 		DataRecord inRecord = DataRecordFactory.newRecord(inPort.getMetadata());
-		CloverBuffer inRecordDirect = CloverBuffer.allocateDirect(Defaults.Record.RECORD_INITIAL_SIZE, Defaults.Record.RECORD_LIMIT_SIZE);
+		CloverBuffer inRecordDirect;
 
 		while (runIt) {
-			if (!inPort.readRecordDirect(inRecordDirect)) {
+			//the record is not copied from input edge, the view is valid until next reading
+			if ((inRecordDirect = inPort.readRecordView()) == null) {
 				break;
 			}
 
@@ -282,10 +282,11 @@ public class Partition extends Node {
 	}
 
 	private void executeDirect(InputPortDirect inPort, OutputPortDirect[] outPorts) throws Exception {
-		CloverBuffer inRecord = CloverBuffer.allocateDirect(Defaults.Record.RECORD_INITIAL_SIZE, Defaults.Record.RECORD_LIMIT_SIZE);
+		CloverBuffer inRecord;
 
 		while (runIt) {
-			if (!inPort.readRecordDirect(inRecord)) {
+			//the record is not copied from input edge, the view is valid until next reading
+			if ((inRecord = inPort.readRecordView()) == null) {
 				break;
 			}
 
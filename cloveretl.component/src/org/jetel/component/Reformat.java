@@ -30,13 +30,16 @@ import org.apache.commons.logging.LogFactory;
 import org.jetel.data.DataRecord;
 import org.jetel.data.DataRecordFactory;
 import org.jetel.data.Defaults;
+import org.jetel.data.RecordBatch;
 import org.jetel.exception.AttributeNotFoundException;
 import org.jetel.exception.ComponentNotReadyException;
 import org.jetel.exception.ConfigurationStatus;
 import org.jetel.exception.TransformException;
 import org.jetel.exception.XMLConfigurationException;
 import org.jetel.graph.InputPort;
+import org.jetel.graph.InputPortDirect;
 import org.jetel.graph.Node;
+import org.jetel.graph.OutputPortDirect;
 import org.jetel.graph.Result;
 import org.jetel.graph.TransformationGraph;
 import org.jetel.graph.modelview.MVMetadata;
@@ -244,6 +247,9 @@ public class Reformat extends Node implements MetadataProvider {
 	
 	@Override
 	public Result execute() throws Exception {
+		if (Defaults.Graph.RECORD_BATCH_SIZE > 1) {
+			return executeBatch();
+		}
 		InputPort inPort = getInputPort(READ_FROM_PORT);
 		DataRecord inRecord[] = {DataRecordFactory.newRecord(inPort.getMetadata())};
 		int numOutputPorts=getOutPorts().size();
@@ -261,13 +267,7 @@ public class Reformat extends Node implements MetadataProvider {
 			    outRecord[i].reset();
 			}
 
-			int transformResult = -1;
-
-			try {
-				transformResult = transformation.transform(inRecord, outRecord);
-			} catch (Exception exception) {
-				transformResult = transformation.transformOnError(exception, inRecord, outRecord);
-			}
+			int transformResult = transform(inRecord, outRecord);
 
 			if (transformResult == RecordTransform.ALL) {
 				for (int outPort = 0; outPort < numOutputPorts; outPort++) {
@@ -279,45 +279,83 @@ public class Reformat extends Node implements MetadataProvider {
 				// DO NOTHING - skip the record
 			} else {
 				// transformResult is <= RecordTransform.STOP
-				ErrorAction action = errorActions.get(transformResult);
-				if (action == null) {
-					action = errorActions.get(Integer.MIN_VALUE);
-					if (action == null) {
-						action = ErrorAction.DEFAULT_ERROR_ACTION;
+				handleError(transformResult, counter);
+            }
+			counter++;
+			SynchronizeUtils.cloverYield();
+		}
+
+		if (errorLog != null){
+			errorLog.flush();
+		}
+
+		broadcastEOF();
+
+		return (runIt ? Result.FINISHED_OK : Result.ABORTED);
+	}
+
+	/**
+	 * Processing loop which reads input records in batches, see {@link RecordBatch}. Output records
+	 * are collected into batches, see {@link OutputBatches}, which are written in the order the records
+	 * were produced. The records are transformed one by one as in the record-by-record loop, only the port
+	 * operations are performed once per batch. Records produced before a failure of the transformation
+	 * are written to the output ports before the failure is reported.
+	 */
+	private Result executeBatch() throws Exception {
+		InputPortDirect inPort = getInputPortDirect(READ_FROM_PORT);
+		DataRecord inRecord[] = {DataRecordFactory.newRecord(inPort.getMetadata())};
+		int numOutputPorts = getOutPorts().size();
+		DataRecord outRecord[] = new DataRecord[numOutputPorts];
+		OutputPortDirect outPorts[] = new OutputPortDirect[numOutputPorts];
+
+		for (int i = 0; i < numOutputPorts; i++) {
+			outRecord[i] = DataRecordFactory.newRecord(getOutputPort(i).getMetadata());
+			outPorts[i] = getOutputPortDirect(i);
+		}
+		OutputBatches outBatches = new OutputBatches(outPorts);
+		RecordBatch inBatch = new RecordBatch();
+		RecordBatchTransform batchTransformation = (transformation instanceof RecordBatchTransform) ?
+				(RecordBatchTransform) transformation : null;
+
+		int counter = 0;
+		// MAIN PROCESSING LOOP
+		while (runIt && inPort.readRecordBatch(inBatch) > 0) {
+			if (batchTransformation != null) {
+				batchTransformation.beginBatch(inRecord, outRecord);
+			}
+			try {
+				for (int index = 0; index < inBatch.size(); index++) {
+					inBatch.deserialize(index, inRecord[0]);
+					for (int i = 0; i < numOutputPorts; i++) {
+						outRecord[i].reset();
 					}
-				}
-				String message = "Transformation finished with code: " + transformResult + ". Error message: " + 
-					transformation.getMessage();
-				if (action == ErrorAction.CONTINUE) {
-					if (errorLog != null){
-						errorLog.write(String.valueOf(counter));
-						errorLog.write(Defaults.Component.KEY_FIELDS_DELIMITER);
-						errorLog.write(String.valueOf(transformResult));
-						errorLog.write(Defaults.Component.KEY_FIELDS_DELIMITER);
-						message = transformation.getMessage();
-						if (message != null) {
-							errorLog.write(message);
-						}
-						errorLog.write(Defaults.Component.KEY_FIELDS_DELIMITER);
-						Object semiResult = transformation.getSemiResult();
-						if (semiResult != null) {
-							errorLog.write(semiResult.toString());
+
+					int transformResult = transform(inRecord, outRecord);
+
+					if (transformResult == RecordTransform.ALL) {
+						for (int outPort = 0; outPort < numOutputPorts; outPort++) {
+							outBatches.add(outPort, outRecord[outPort]);
 						}
-						errorLog.write("\n");
+					} else if (transformResult >= 0) {
+						outBatches.add(transformResult, outRecord[transformResult]);
+					} else if (transformResult == RecordTransform.SKIP) {
+						// DO NOTHING - skip the record
 					} else {
-						//CL-2020
-						//if no error log is defined, the message is quietly ignored
-						//without messy logging in console
-						//only in case non empty message given from transformation, the message is printed out
-						if (!StringUtils.isEmpty(transformation.getMessage())) {
-							logger.warn(message);
-						}
+						// transformResult is <= RecordTransform.STOP
+						handleError(transformResult, counter);
 					}
-				} else {
-					throw new TransformException(message);
+					counter++;
 				}
-            }
-			counter++;
+			} catch (Exception e) {
+				// the record-by-record loop would have written these records already
+				outBatches.flush();
+				throw e;
+			} finally {
+				if (batchTransformation != null) {
+					batchTransformation.endBatch();
+				}
+			}
+			outBatches.flush();
 			SynchronizeUtils.cloverYield();
 		}
 
@@ -330,6 +368,101 @@ public class Reformat extends Node implements MetadataProvider {
 		return (runIt ? Result.FINISHED_OK : Result.ABORTED);
 	}
 
+	/**
+	 * Output batches of all output ports. Only the batch of the last written port may contain records,
+	 * a record for another port flushes it first. So the records are written in the same order as
+	 * in the record-by-record loop and records of one port are never held back while the component
+	 * waits on another port - a consumer reading several ports, e.g. a join, can't deadlock.
+	 */
+	private static class OutputBatches {
+
+		private final OutputPortDirect[] ports;
+		private final RecordBatch[] batches;
+		/** port of the batch which may contain records or -1 */
+		private int pendingPort = -1;
+
+		OutputBatches(OutputPortDirect[] ports) {
+			this.ports = ports;
+			this.batches = new RecordBatch[ports.length];
+			for (int i = 0; i < ports.length; i++) {
+				batches[i] = new RecordBatch();
+			}
+		}
+
+		void add(int port, DataRecord record) throws IOException, InterruptedException {
+			if (port != pendingPort) {
+				flush();
+				pendingPort = port;
+			}
+			if (batches[port].isFull()) {
+				flush();
+			}
+			batches[port].add(record);
+		}
+
+		void flush() throws IOException, InterruptedException {
+			if (pendingPort >= 0 && !batches[pendingPort].isEmpty()) {
+				ports[pendingPort].writeRecordBatch(batches[pendingPort]);
+				batches[pendingPort].clear();
+			}
+		}
+
+	}
+
+	private int transform(DataRecord[] inRecord, DataRecord[] outRecord) throws TransformException {
+		try {
+			return transformation.transform(inRecord, outRecord);
+		} catch (Exception exception) {
+			return transformation.transformOnError(exception, inRecord, outRecord);
+		}
+	}
+
+	/**
+	 * Performs error action for the given result of transformation.
+	 * 
+	 * @param transformResult result of transformation, lesser or equal {@link RecordTransform#STOP}
+	 * @param counter index of the input record
+	 */
+	private void handleError(int transformResult, int counter) throws IOException, TransformException {
+		ErrorAction action = errorActions.get(transformResult);
+		if (action == null) {
+			action = errorActions.get(Integer.MIN_VALUE);
+			if (action == null) {
+				action = ErrorAction.DEFAULT_ERROR_ACTION;
+			}
+		}
+		String message = "Transformation finished with code: " + transformResult + ". Error message: " + 
+			transformation.getMessage();
+		if (action == ErrorAction.CONTINUE) {
+			if (errorLog != null){
+				errorLog.write(String.valueOf(counter));
+				errorLog.write(Defaults.Component.KEY_FIELDS_DELIMITER);
+				errorLog.write(String.valueOf(transformResult));
+				errorLog.write(Defaults.Component.KEY_FIELDS_DELIMITER);
+				message = transformation.getMessage();
+				if (message != null) {
+					errorLog.write(message);
+				}
+				errorLog.write(Defaults.Component.KEY_FIELDS_DELIMITER);
+				Object semiResult = transformation.getSemiResult();
+				if (semiResult != null) {
+					errorLog.write(semiResult.toString());
+				}
+				errorLog.write("\n");
+			} else {
+				//CL-2020
+				//if no error log is defined, the message is quietly ignored
+				//without messy logging in console
+				//only in case non empty message given from transformation, the message is printed out
+				if (!StringUtils.isEmpty(transformation.getMessage())) {
+					logger.warn(message);
+				}
+			}
+		} else {
+			throw new TransformException(message);
+		}
+	}
+
     @Override
     public void postExecute() throws ComponentNotReadyException {
     	super.postExecute();
@@ -18,7 +18,6 @@
  */
 package org.jetel.component;
 
-import org.jetel.data.Defaults;
 import org.jetel.exception.AttributeNotFoundException;
 import org.jetel.exception.ComponentNotReadyException;
 import org.jetel.exception.ConfigurationStatus;
@@ -81,8 +80,6 @@ public class SimpleCopy extends Node {
 	 */
 	private final static int WRITE_TO_PORT = 0;
 
-	private CloverBuffer recordBuffer;
-
 
 	/**
 	 *Constructor for the SimpleCopy object
@@ -97,8 +94,10 @@ public class SimpleCopy extends Node {
 	@Override
 	public Result execute() throws Exception {
 		InputPortDirect inPort = (InputPortDirect) getInputPort(READ_FROM_PORT);
+		CloverBuffer recordBuffer;
 		
-		while (inPort.readRecordDirect(recordBuffer) && runIt) {
+		//the record is not copied from input edge, the view is valid until next reading
+		while ((recordBuffer = inPort.readRecordView()) != null && runIt) {
 			writeRecordBroadcastDirect(recordBuffer);
 			SynchronizeUtils.cloverYield();
 		}
@@ -117,8 +116,6 @@ public class SimpleCopy extends Node {
 	public void init() throws ComponentNotReadyException {
         if(isInitialized()) return;
 		super.init();
-		
-		recordBuffer = CloverBuffer.allocateDirect(Defaults.Record.RECORD_INITIAL_SIZE, Defaults.Record.RECORD_LIMIT_SIZE);
 	}
 
 	/**
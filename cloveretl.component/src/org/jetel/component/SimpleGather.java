@@ -20,7 +20,6 @@ package org.jetel.component;
 
 import java.io.IOException;
 
-import org.jetel.data.Defaults;
 import org.jetel.exception.AttributeNotFoundException;
 import org.jetel.exception.ConfigurationStatus;
 import org.jetel.exception.XMLConfigurationException;
@@ -157,8 +156,8 @@ public class SimpleGather extends Node {
 		}
 		InputPortDirect inputPorts[] = (InputPortDirect[]) getInPorts().toArray(new InputPortDirect[0]);
 		numActive = inputPorts.length;// counter of still active ports - those without EOF status
-		// the metadata is taken from output port definition
-		CloverBuffer recordBuffer = CloverBuffer.allocateDirect(Defaults.Record.RECORD_INITIAL_SIZE, Defaults.Record.RECORD_LIMIT_SIZE);
+		// records are not copied from input edges, each view is valid until next reading from the same port
+		CloverBuffer recordBuffer;
 		readFromPort = 0;
 		inPort = inputPorts[readFromPort];
 		int lastReadPort = -1;
@@ -167,7 +166,7 @@ public class SimpleGather extends Node {
 			if (!isEOF[readFromPort] && (inPort.hasData() || forceReading || numActive == 1)) {
 				forceReading = false;
 				emptyLoopCounter = 0;
-				if (inPort.readRecordDirect(recordBuffer)) {
+				if ((recordBuffer = inPort.readRecordView()) != null) {
 					writeRecordToOutputPorts(recordBuffer);
 					lastReadPort = readFromPort;
 				} else {
@@ -215,15 +214,15 @@ public class SimpleGather extends Node {
 		}
 		InputPortDirect inputPorts[] = (InputPortDirect[]) getInPorts().toArray(new InputPortDirect[0]);
 		numActive = inputPorts.length;// counter of still active ports - those without EOF status
-		// the metadata is taken from output port definition
-		CloverBuffer recordBuffer = CloverBuffer.allocateDirect(Defaults.Record.RECORD_INITIAL_SIZE, Defaults.Record.RECORD_LIMIT_SIZE);
+		// records are not copied from input edges, each view is valid until next reading from the same port
+		CloverBuffer recordBuffer;
 		readFromPort = 0;
 		inPort = inputPorts[readFromPort];
 		int lastReadPort = 0;
 		while (runIt && numActive > 0) {
 			if (!isEOF[readFromPort] && (inPort.hasData() || numActive == 1)) {
 				emptyLoopCounter = 0;
-				if (inPort.readRecordDirect(recordBuffer)) {
+				if ((recordBuffer = inPort.readRecordView()) != null) {
 					writeRecordToOutputPorts(recordBuffer);
 					lastReadPort = readFromPort;
 				} else {
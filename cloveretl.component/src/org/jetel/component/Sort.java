@@ -70,6 +70,8 @@ import org.w3c.dom.Element;
  *  you want sorter to follow certain locale specific rules.</td></tr>
  *  <tr><td><b>locale</b><br><i>optional</i></td><td>locale to be used when sorting using I18N rules. If not specified, then system
  *  default is used.<br><i>Example: "fr"</i></td></tr>
+ *  <tr><td><b>sortThreads</b><br><i>optional</i></td><td>number of threads used for sorting. Order of sorted records
+ *  does not depend on the number of threads. Default is 1.</td></tr>
  *  </table>
  *
  *  <h4>Example:</h4>
@@ -86,6 +88,7 @@ public class Sort extends Node {
 	private static final String XML_SORTKEY_ATTRIBUTE = "sortKey";
     private static final String XML_USE_I18N_ATTRIBUTE = "useI18N";
     private static final String XML_LOCALE_ATTRIBUTE = "locale";
+    private static final String XML_SORT_THREADS_ATTRIBUTE = "sortThreads";
     
 	/**  Description of the Field */
 	public final static String COMPONENT_TYPE = "SORT";
@@ -99,6 +102,7 @@ public class Sort extends Node {
 	private CloverBuffer recordBuffer;
     private String localeStr;
     private boolean useI18N;
+    private int sortThreads = 1;
 
 	private final static boolean DEFAULT_ASCENDING_SORT_ORDER = true; 
 
@@ -211,6 +215,7 @@ public class Sort extends Node {
         if (localeStr!=null){
             newSorter.setCollatorLocale(localeStr);
         }
+        newSorter.setSortThreads(sortThreads);
 	}
 
 	/**
@@ -234,6 +239,9 @@ public class Sort extends Node {
         }
         if (xattribs.exists(XML_LOCALE_ATTRIBUTE)){
             sort.setLocaleStr(xattribs.getString(XML_LOCALE_ATTRIBUTE));
+        }
+        if (xattribs.exists(XML_SORT_THREADS_ATTRIBUTE)){
+            sort.setSortThreads(xattribs.getInteger(XML_SORT_THREADS_ATTRIBUTE));
         }
 		return sort;
 	}
@@ -296,6 +304,14 @@ public class Sort extends Node {
     public void setUseI18N(boolean useI18N) {
         this.useI18N = useI18N;
     }
+
+
+    /**
+     * @param sortThreads number of threads used for sorting
+     */
+    public void setSortThreads(int sortThreads) {
+        this.sortThreads = sortThreads;
+    }
     
     @Override
 	public void reset() throws ComponentNotReadyException {
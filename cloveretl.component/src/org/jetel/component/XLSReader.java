@@ -33,6 +33,7 @@ import org.jetel.data.formatter.XLSFormatter.XLSType;
 import org.jetel.data.parser.JExcelXLSDataParser;
 import org.jetel.data.parser.XLSParser;
 import org.jetel.data.parser.XLSXDataParser;
+import org.jetel.data.parser.XLSXStreamDataParser;
 import org.jetel.exception.AttributeNotFoundException;
 import org.jetel.exception.BadDataFormatException;
 import org.jetel.exception.ComponentNotReadyException;
@@ -80,7 +81,8 @@ import org.w3c.dom.Element;
  *  <tr><td><b>type</b></td><td>"XLS_READER"</td></tr>
  *  <tr><td><b>id</b></td><td>component identification</td>
  *  <tr><td><b>parser</b></td><td>The type of a XLS(X) parser. Possible values: 'auto' (default) for automatic selection
- *   of a parser based on a file extension, 'XLS' for a classic XLS parser, 'XLSX' for a XLSX parser.</td>
+ *   of a parser based on a file extension, 'XLS' for a classic XLS parser, 'XLSX' for a XLSX parser,
+ *   'XLSX_STREAMING' for a XLSX parser which reads the sheets as a stream and needs constant memory.</td>
  *  <tr><td><b>fileURL</b></td><td>path to the input file</td>
  *  <tr><td><b>dataPolicy</b></td><td>specifies how to handle misformatted or
  *   incorrect data.  'Strict' (default value) aborts processing, 'Controlled'
@@ -530,7 +532,9 @@ public class XLSReader extends Node {
     }
 
     private void instantiateParser() {
-        if ((parserType == XLSType.AUTO && fileURL.matches(XLSFormatter.XLSX_FILE_PATTERN)) || parserType == XLSType.XLSX) {
+        if (parserType == XLSType.XLSX_STREAMING) {
+            parser = new XLSXStreamDataParser(getOutputPort(OUTPUT_PORT).getMetadata());
+        } else if ((parserType == XLSType.AUTO && fileURL.matches(XLSFormatter.XLSX_FILE_PATTERN)) || parserType == XLSType.XLSX) {
             parser = new XLSXDataParser(getOutputPort(OUTPUT_PORT).getMetadata());
         } else {
             parser = (charset != null) ? new JExcelXLSDataParser(getOutputPort(OUTPUT_PORT).getMetadata(),charset) : new JExcelXLSDataParser(getOutputPort(OUTPUT_PORT).getMetadata());
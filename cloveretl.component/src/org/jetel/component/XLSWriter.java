@@ -80,7 +80,8 @@ import org.w3c.dom.Element;
  *  <tr><td><b>type</b></td><td>"XLS_WRITER"</td></tr>
  *  <tr><td><b>id</b></td><td>component identification</td>
  *  <tr><td><b>formatter</b></td><td>The type of a XLS(X) formatter. Possible values: 'auto' (default) for automatic selection
- *   of a formatter based on a file extension, 'XLS' for a classic XLS formatter, 'XLSX' for a XLSX formatter.</td>
+ *   of a formatter based on a file extension, 'XLS' for a classic XLS formatter, 'XLSX' for a XLSX formatter,
+ *   'XLSX_STREAMING' for a XLSX formatter which keeps only a window of rows in memory.</td>
  *  <tr><td><b>fileURL</b></td><td>path to the output file</td>
  *  <tr><td><b>namesRow</b></td><td>index of row, where to write metadata names</td>
  *  <tr><td><b>firstDataRow</b></td><td>index of row, where to write first data record</td>
@@ -359,7 +360,8 @@ public class XLSWriter extends Node {
         this.formatterType = formatterType;
 
         formatterProvider.setUseXLSX((formatterType == XLSType.AUTO && fileURL.matches(XLSFormatter.XLSX_FILE_PATTERN))
-                || formatterType == XLSType.XLSX);
+                || formatterType.isXLSX());
+        formatterProvider.setStreamingXLSX(formatterType == XLSType.XLSX_STREAMING);
     }
 
     public void setSheetName(String sheetName) {
@@ -18,10 +18,21 @@
  */
 package org.jetel.component.aggregate;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
 import org.jetel.data.DataField;
+import org.jetel.data.DataFieldFactory;
 import org.jetel.data.DataRecord;
 import org.jetel.data.RecordKey;
+import org.jetel.data.primitive.CloverDouble;
+import org.jetel.data.primitive.CloverLong;
+import org.jetel.data.primitive.Decimal;
+import org.jetel.data.primitive.HugeDecimal;
+import org.jetel.data.primitive.Numeric;
 import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.metadata.DataFieldType;
+import org.jetel.util.bytes.CloverBuffer;
 
 /**
  * Function that can be used in aggregation.
@@ -56,6 +67,16 @@ public abstract class AggregateFunction {
 	protected RecordKey recordKey;
 	/** Charset of input. */
 	protected String charset;
+	/** Aggregation mode. */
+	protected AggregationMode mode = AggregationMode.COMPLETE;
+
+	// type tags of serialized partial numeric values
+	private static final byte PARTIAL_LONG = 0;
+	private static final byte PARTIAL_DOUBLE = 1;
+	private static final byte PARTIAL_DECIMAL = 2;
+
+	/** Metadata of values of the intermediate result in {@link AggregationMode#MERGE} mode, if they differ from the output field. */
+	private DataFieldMetadata valueFieldMetadata;
 	
 	/**
 	 * 
@@ -112,6 +133,129 @@ public abstract class AggregateFunction {
 	 */
 	public abstract void checkOutputFieldType(DataFieldMetadata outputField) throws AggregationException;
 
+	/**
+	 * 
+	 * @return <tt>true</tt> if the intermediate result of the function can be serialized by
+	 * {@link #serializePartialResult(CloverBuffer)} and merged by {@link #mergePartialResult(CloverBuffer)},
+	 * i.e. the function can be used in {@link AggregationMode#PARTIAL} and {@link AggregationMode#MERGE} modes.
+	 */
+	public boolean isMergeable() {
+		return false;
+	}
+
+	/**
+	 * Serializes the intermediate result. Used in {@link AggregationMode#PARTIAL} mode instead of
+	 * {@link #storeResult(DataField)}.
+	 * @param buffer buffer for the serialized intermediate result.
+	 */
+	public void serializePartialResult(CloverBuffer buffer) {
+		throw new UnsupportedOperationException("Function " + getName() + "() does not support partial aggregation");
+	}
+
+	/**
+	 * Merges an intermediate result serialized by {@link #serializePartialResult(CloverBuffer)}.
+	 * Used in {@link AggregationMode#MERGE} mode instead of {@link #update(DataRecord)}.
+	 * @param buffer buffer with the serialized intermediate result.
+	 */
+	public void mergePartialResult(CloverBuffer buffer) {
+		throw new UnsupportedOperationException("Function " + getName() + "() does not support partial aggregation");
+	}
+
+	/**
+	 * Creates a numeric field for the sum of values. Partial sums of integers are stored as long,
+	 * because the type of the final output is not known in {@link AggregationMode#PARTIAL} mode.
+	 */
+	protected Numeric createSumField() {
+		if (mode == AggregationMode.PARTIAL) {
+			DataFieldType type = inputFieldMetadata.getDataType() == DataFieldType.INTEGER ? DataFieldType.LONG : inputFieldMetadata.getDataType();
+			return AggregateNumericFactory.createDataField(type.getShortName(), inputFieldMetadata);
+		}
+		return AggregateNumericFactory.createDataField(outputFieldMetadata);
+	}
+
+	/**
+	 * Serializes a numeric value, so it can be read by {@link #deserializeNumeric(CloverBuffer)}.
+	 */
+	protected static void serializeNumeric(Numeric value, CloverBuffer buffer) {
+		if (value instanceof Decimal) {
+			BigDecimal decimal = value.getBigDecimal();
+			byte[] unscaled = decimal.unscaledValue().toByteArray();
+			buffer.put(PARTIAL_DECIMAL);
+			buffer.putInt(decimal.scale());
+			buffer.putInt(unscaled.length);
+			buffer.put(unscaled);
+		} else if (value instanceof CloverDouble
+				|| (value instanceof DataField && ((DataField) value).getMetadata().getDataType() == DataFieldType.NUMBER)) {
+			buffer.put(PARTIAL_DOUBLE);
+			buffer.putDouble(value.getDouble());
+		} else {
+			buffer.put(PARTIAL_LONG);
+			buffer.putLong(value.getLong());
+		}
+	}
+
+	/**
+	 * @return numeric value serialized by {@link #serializeNumeric(Numeric, CloverBuffer)}
+	 */
+	protected static Numeric deserializeNumeric(CloverBuffer buffer) {
+		switch (buffer.get()) {
+		case PARTIAL_LONG:
+			return new CloverLong(buffer.getLong());
+		case PARTIAL_DOUBLE:
+			return new CloverDouble(buffer.getDouble());
+		case PARTIAL_DECIMAL:
+			int scale = buffer.getInt();
+			byte[] unscaled = new byte[buffer.getInt()];
+			buffer.get(unscaled);
+			BigDecimal decimal = new BigDecimal(new BigInteger(unscaled), scale);
+			return new HugeDecimal(decimal, Math.max(decimal.precision(), scale + 1), scale, false);
+		default:
+			throw new IllegalArgumentException("Invalid partial aggregation result");
+		}
+	}
+
+	/**
+	 * Serializes the type of values stored in the intermediate result, see {@link #checkValueType(CloverBuffer)}.
+	 */
+	protected void serializeValueType(CloverBuffer buffer) {
+		buffer.put(inputFieldMetadata.getDataType().getByteIdentifier());
+		if (inputFieldMetadata.getDataType() == DataFieldType.DECIMAL) {
+			// serialized form of decimal values depends on length and scale of the field
+			buffer.putInt(inputFieldMetadata.getFieldProperties().getIntProperty(DataFieldMetadata.LENGTH_ATTR));
+			buffer.putInt(inputFieldMetadata.getFieldProperties().getIntProperty(DataFieldMetadata.SCALE_ATTR));
+		}
+	}
+
+	/**
+	 * Checks that values stored in the intermediate result can be deserialized into the output field.
+	 */
+	protected void checkValueType(CloverBuffer buffer) {
+		byte type = buffer.get();
+		if (type != outputFieldMetadata.getDataType().getByteIdentifier()) {
+			throw new IllegalArgumentException("Partial aggregation result of type '" + DataFieldType.fromByteIdentifier(type)
+					+ "' cannot be merged into field '" + outputFieldMetadata.getName() + "' of type '" + outputFieldMetadata.getDataType() + "'");
+		}
+		if (outputFieldMetadata.getDataType() == DataFieldType.DECIMAL) {
+			// values are deserialized with length and scale of the input field of the partial aggregation,
+			// they are converted to the output field when the result is stored, like in the complete mode
+			String length = Integer.toString(buffer.getInt());
+			String scale = Integer.toString(buffer.getInt());
+			if (valueFieldMetadata == null || !length.equals(valueFieldMetadata.getProperty(DataFieldMetadata.LENGTH_ATTR))
+					|| !scale.equals(valueFieldMetadata.getProperty(DataFieldMetadata.SCALE_ATTR))) {
+				valueFieldMetadata = outputFieldMetadata.duplicate();
+				valueFieldMetadata.setProperty(DataFieldMetadata.LENGTH_ATTR, length);
+				valueFieldMetadata.setProperty(DataFieldMetadata.SCALE_ATTR, scale);
+			}
+		}
+	}
+
+	/**
+	 * @return field for deserialization of values of the intermediate result in {@link AggregationMode#MERGE} mode
+	 */
+	protected DataField createValueField() {
+		return DataFieldFactory.createDataField(valueFieldMetadata != null ? valueFieldMetadata : outputFieldMetadata, true);
+	}
+
 	
 	public int getInputFieldIndex() {
 		return inputFieldIndex;
@@ -169,5 +313,13 @@ public abstract class AggregateFunction {
 		this.charset = charset;
 	}
 
+	public AggregationMode getMode() {
+		return mode;
+	}
+
+	public void setMode(AggregationMode mode) {
+		this.mode = mode;
+	}
+
 	
 }
@@ -31,7 +31,9 @@ import java.util.regex.Pattern;
 
 import org.jetel.data.Defaults;
 import org.jetel.data.RecordKey;
+import org.jetel.metadata.DataFieldContainerType;
 import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.metadata.DataFieldType;
 import org.jetel.metadata.DataRecordMetadata;
 import org.jetel.util.ExceptionUtils;
 import org.jetel.util.string.StringUtils;
@@ -95,6 +97,7 @@ public class AggregateMappingParser {
 	
 	private boolean paramsAllowed = false;
 	private boolean lenient = false;
+	private AggregationMode mode = AggregationMode.COMPLETE;
 	
 	// error messages generated in the lenient mode
 	private List<String> errors = new ArrayList<String>();
@@ -123,12 +126,36 @@ public class AggregateMappingParser {
 	public AggregateMappingParser(String mapping, boolean paramsAllowed, boolean lenient,
 			RecordKey recordKey, FunctionRegistry registry, 
 			DataRecordMetadata inMetadata, DataRecordMetadata outMetadata) 
+	throws AggregationException {
+		this(mapping, paramsAllowed, lenient, recordKey, registry, inMetadata, outMetadata, AggregationMode.COMPLETE);
+	}
+
+	/**
+	 * 
+	 * Allocates a new <tt>AggregateMappingParser</tt> object.
+	 *
+	 * @param mapping aggregation mapping.
+	 * @param paramsAllowed specifies whether graph parameters can be used in the mapping.
+	 * @param lenient specifies whether some errors should be treated leniently, i.e. they are
+	 * logged (so the error message is available later) and the invalid mapping is skipped.
+	 * @param recordKey aggregation key.
+	 * @param registry aggregation function registry.
+	 * @param inMetadata input metadata.
+	 * @param outMetadata output metadata.
+	 * @param mode aggregation mode; in the partial mode output fields of functions must be byte fields,
+	 * in the merge mode input fields of functions must be byte fields.
+	 * @throws AggregationException
+	 */
+	public AggregateMappingParser(String mapping, boolean paramsAllowed, boolean lenient,
+			RecordKey recordKey, FunctionRegistry registry, 
+			DataRecordMetadata inMetadata, DataRecordMetadata outMetadata, AggregationMode mode) 
 	throws AggregationException {
 		this.inMetadata = inMetadata;
 		this.outMetadata = outMetadata;
 		this.registry = registry;
 		this.paramsAllowed = paramsAllowed;
 		this.lenient = lenient;
+		this.mode = mode;
 		
 		keyFields = new HashSet<String>();
 		int[] keyFieldIndices = recordKey.getKeyFields();
@@ -336,25 +363,46 @@ public class AggregateMappingParser {
 			throw new AggregationException("Cannot instantiate aggregation function " + functionName + "()", e);
 		}
 		
-		if (!function.requiresInputField() && (inputField != null)) {
-			throw new AggregationException("Function " + function.getName() + "()"
-					+ " doesn't accept any field as a parameter");
-		}
-		if (function.requiresInputField() && (inputField == null)) {
+		if (mode != AggregationMode.COMPLETE && !function.isMergeable()) {
 			throw new AggregationException("Function " + function.getName() + "()"
-					+ " requires an input field as a parameter");
+					+ " doesn't support " + mode.getValue() + " aggregation");
 		}
-		if (inputField != null) {
-			DataFieldMetadata inputFieldMetadata = inMetadata.getField(inputField);
+		if (mode == AggregationMode.MERGE) {
+			// the input field contains the partial result of any function
+			if (inputField == null) {
+				throw new AggregationException("Function " + function.getName() + "()"
+						+ " requires an input field with the partial result as a parameter");
+			}
 			try {
-				function.checkInputFieldType(inputFieldMetadata);
+				checkPartialResultField(inMetadata.getField(inputField));
 			} catch (AggregationException e) {
 				throw new AggregationException("Input field " + inputField + " has invalid type", e);
 			}
+		} else {
+			if (!function.requiresInputField() && (inputField != null)) {
+				throw new AggregationException("Function " + function.getName() + "()"
+						+ " doesn't accept any field as a parameter");
+			}
+			if (function.requiresInputField() && (inputField == null)) {
+				throw new AggregationException("Function " + function.getName() + "()"
+						+ " requires an input field as a parameter");
+			}
+			if (inputField != null) {
+				DataFieldMetadata inputFieldMetadata = inMetadata.getField(inputField);
+				try {
+					function.checkInputFieldType(inputFieldMetadata);
+				} catch (AggregationException e) {
+					throw new AggregationException("Input field " + inputField + " has invalid type", e);
+				}
+			}
 		}
 		
 		try {
-			function.checkOutputFieldType(outMetadata.getField(outputField));
+			if (mode == AggregationMode.PARTIAL) {
+				checkPartialResultField(outMetadata.getField(outputField));
+			} else {
+				function.checkOutputFieldType(outMetadata.getField(outputField));
+			}
 		} catch (AggregationException e) {
 			throw new AggregationException("Function " + function.getName() + "()"
 					+ ": output field " + outputField + " has " +
@@ -362,6 +410,18 @@ public class AggregateMappingParser {
 		}
 	}
 	
+	/**
+	 * Checks that the field can hold a serialized partial result of an aggregation function.
+	 * @param field
+	 * @throws AggregationException
+	 */
+	private static void checkPartialResultField(DataFieldMetadata field) throws AggregationException {
+		if (field.getContainerType() != DataFieldContainerType.SINGLE
+				|| (field.getDataType() != DataFieldType.BYTE && field.getDataType() != DataFieldType.CBYTE)) {
+			throw new AggregationException(AggregateFunction.ERROR_BYTE);
+		}
+	}
+	
 	/**
 	 * Parses a field mapping.
 	 * 
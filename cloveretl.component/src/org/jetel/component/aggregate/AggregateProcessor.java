@@ -24,14 +24,17 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
+import org.jetel.data.ByteDataField;
 import org.jetel.data.DataField;
 import org.jetel.data.DataRecord;
 import org.jetel.data.Defaults;
 import org.jetel.data.HashKey;
 import org.jetel.data.RecordKey;
 import org.jetel.metadata.DataRecordMetadata;
+import org.jetel.util.bytes.CloverBuffer;
 
 /**
  * Applies aggregate functions on records.
@@ -57,6 +60,8 @@ public class AggregateProcessor {
 	private AggregationGroup sortedGroup;
 	private HashKey hashKey;
 	private Map<HashKey, AggregationGroup> unsortedGroups;
+	// aggregation of unsorted input by primitive accumulators, null if not supported by the mapping
+	private HashAggregator hashAggregator;
 	private DataRecord previousRecord;
 	
 	// aggregation key
@@ -69,6 +74,10 @@ public class AggregateProcessor {
 	private DataRecordMetadata outMetadata;
 	// input charset (for CRC32 and MD5)
 	private String charset;
+	// aggregation mode
+	private AggregationMode mode;
+	// buffer for serialization of partial results
+	private CloverBuffer partialResultBuffer;
 	
 	/**
 	 * 
@@ -85,8 +94,32 @@ public class AggregateProcessor {
 	 */
 	public AggregateProcessor(String mapping, boolean oldMapping, RecordKey recordKey, boolean sorted, 
 			DataRecordMetadata inMetadata, DataRecordMetadata outMetadata, String charset) 
+	throws AggregationException {
+		this(mapping, oldMapping, recordKey, sorted, inMetadata, outMetadata, charset, AggregationMode.COMPLETE);
+	}
+
+	/**
+	 * 
+	 * Allocates a new <tt>AggregateProcessor</tt> object.
+	 *
+	 * @param mapping aggregate function mapping.
+	 * @param oldMapping set to <tt>true</tt> is the old format of the function mapping is used.
+	 * @param recordKey aggregation key.
+	 * @param sorted set to <tt>true</tt> if the input is sorted.
+	 * @param inMetadata metadata of the input.
+	 * @param outMetadata metadata of the output.
+	 * @param charset charset of the output.
+	 * @param mode aggregation mode.
+	 * @throws AggregationException
+	 */
+	public AggregateProcessor(String mapping, boolean oldMapping, RecordKey recordKey, boolean sorted, 
+			DataRecordMetadata inMetadata, DataRecordMetadata outMetadata, String charset, AggregationMode mode) 
 	throws AggregationException {
 		this.recordKey = recordKey;
+		this.mode = mode;
+		if (mode == AggregationMode.PARTIAL) {
+			partialResultBuffer = CloverBuffer.allocate(Defaults.Record.FIELD_INITIAL_SIZE, Defaults.Record.FIELD_LIMIT_SIZE);
+		}
 		
 		this.sorted = sorted;
 		if (!sorted) {
@@ -104,6 +137,52 @@ public class AggregateProcessor {
 		}
 		
 		fieldMappingSize = fieldMapping.keySet().size();
+
+		if (!sorted && mode == AggregationMode.COMPLETE) {
+			hashAggregator = createHashAggregator();
+			if (hashAggregator != null) {
+				unsortedGroups = null;
+			}
+		}
+	}
+
+	/**
+	 * @return {@link HashAggregator} for the function mapping or null if the mapping contains a function
+	 * or a type not supported by it
+	 */
+	private HashAggregator createHashAggregator() {
+		int count = functionMapping.size();
+		String[] functions = new String[count];
+		int[] inputFields = new int[count];
+		int[] outputFields = new int[count];
+		for (int i = 0; i < count; i++) {
+			FunctionMappingItem mapping = functionMapping.get(i);
+			functions[i] = mapping.getFunction();
+			inputFields[i] = mapping.getInputField() != null ? mapping.getInputFieldIndex() : -1;
+			outputFields[i] = mapping.getOutputFieldIndex();
+		}
+		return HashAggregator.create(recordKey, inMetadata, outMetadata, functions, inputFields, outputFields);
+	}
+
+	/**
+	 * Sets the memory limit of aggregation of unsorted input. If the limit is exceeded, intermediate results
+	 * are spilled to disk and the order of the output groups is not preserved. The limit is applied only if
+	 * the aggregation is performed by primitive accumulators, see {@link #isMemoryLimitSupported()}.
+	 * 
+	 * @param memoryLimit memory limit in bytes, 0 means no limit
+	 */
+	public void setMemoryLimit(long memoryLimit) {
+		if (hashAggregator != null) {
+			hashAggregator.setMemoryLimit(memoryLimit);
+		}
+	}
+
+	/**
+	 * @return <tt>true</tt> if the input is unsorted and all functions of the mapping support
+	 * aggregation by primitive accumulators, so the memory limit can be applied
+	 */
+	public boolean isMemoryLimitSupported() {
+		return hashAggregator != null;
 	}
 
 	/**
@@ -116,6 +195,9 @@ public class AggregateProcessor {
 		if (unsortedGroups != null) {
 			unsortedGroups.clear();
 		}
+		if (hashAggregator != null) {
+			hashAggregator.reset();
+		}
 	}
 	
 	/**
@@ -146,6 +228,8 @@ public class AggregateProcessor {
 
 			sortedGroup.update(inputRecord);
 			previousRecord = inputRecord;
+		} else if (hashAggregator != null) {
+			hashAggregator.addRecord(inputRecord);
 		} else {
 			hashKey.setDataRecord(inputRecord);
 			AggregationGroup group = unsortedGroups.get(hashKey);
@@ -180,6 +264,9 @@ public class AggregateProcessor {
 	 * @return result of aggregation of unsorted data.
 	 */
 	public Iterator<DataRecord> getUnsortedAggregationOutput(DataRecord outRecord) {
+		if (hashAggregator != null) {
+			return new HashAggregatorResultsIterator(outRecord);
+		}
 		return new UnsortedResultsIterator(outRecord);
 	}
 	
@@ -245,7 +332,7 @@ public class AggregateProcessor {
 	private void processMapping(String mapping) throws AggregationException {
 		AggregateMappingParser parser = new AggregateMappingParser(mapping, false, false,
 				recordKey, functionRegistry,
-				inMetadata, outMetadata);
+				inMetadata, outMetadata, mode);
 		List<AggregateMappingParser.FunctionMapping> functionMappings = parser.getFunctionMapping();
 		List<AggregateMappingParser.FieldMapping> fieldMappings = parser.getFieldMapping();
 		List<AggregateMappingParser.ConstantMapping> constantMappings = parser.getConstantMapping();
@@ -297,6 +384,7 @@ public class AggregateProcessor {
 			result.setRecordKey(recordKey);
 			result.setSorted(sorted);
 			result.setCharset(charset);
+			result.setMode(mode);
 			result.init();
 		} catch (InstantiationException e) {
 			throw new AggregationException("Cannot instantiate aggregate function", e);
@@ -425,7 +513,11 @@ public class AggregateProcessor {
 		public void update(DataRecord inputRecord) throws Exception {
 			for (AggregateFunction function : functions) {
 				try {
-					function.update(inputRecord);
+					if (mode == AggregationMode.MERGE) {
+						mergePartialResult(function, inputRecord.getField(function.getInputFieldIndex()));
+					} else {
+						function.update(inputRecord);
+					}
 				} catch (Exception e) {
 					// report failed function and field
 					throw new RuntimeException("Exception in aggregate function '" + function.getName() +
@@ -439,7 +531,11 @@ public class AggregateProcessor {
 			applyConstantMapping(outRecord);
 			for (AggregateFunction function : functions) {
 				try {
-					function.storeResult(outRecord.getField(function.getOutputFieldIndex()));
+					if (mode == AggregationMode.PARTIAL) {
+						storePartialResult(function, outRecord.getField(function.getOutputFieldIndex()));
+					} else {
+						function.storeResult(outRecord.getField(function.getOutputFieldIndex()));
+					}
 				} catch (Exception e) {
 					// report failed function and fields
 					throw new RuntimeException("Failed to store result of aggregate function '" + function.getName() +
@@ -449,6 +545,21 @@ public class AggregateProcessor {
 			}
 		}
 		
+		private void mergePartialResult(AggregateFunction function, DataField partialResult) {
+			if (!partialResult.isNull()) {
+				function.mergePartialResult(CloverBuffer.wrap(((ByteDataField) partialResult).getByteArray()));
+			}
+		}
+
+		private void storePartialResult(AggregateFunction function, DataField outputField) {
+			partialResultBuffer.clear();
+			function.serializePartialResult(partialResultBuffer);
+			partialResultBuffer.flip();
+			byte[] partialResult = new byte[partialResultBuffer.remaining()];
+			partialResultBuffer.get(partialResult);
+			outputField.setValue(partialResult);
+		}
+
 		public void clear(DataRecord firstInput) {
 			storeKeyFields(firstInput);
 			for (AggregateFunction function : functions) {
@@ -604,4 +715,46 @@ public class AggregateProcessor {
 			throw new UnsupportedOperationException("Removal of aggregation results is not supported");
 		}
 	}
+
+	/**
+	 * Iterator over the results of {@link HashAggregator}.
+	 */
+	private class HashAggregatorResultsIterator implements Iterator<DataRecord> {
+		DataRecord outRecord;
+		Boolean hasNext;
+
+		public HashAggregatorResultsIterator(DataRecord outRecord) {
+			this.outRecord = outRecord;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (hasNext == null) {
+				hasNext = hashAggregator.nextGroup();
+			}
+			return hasNext;
+		}
+
+		@Override
+		public DataRecord next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			hasNext = null;
+			DataRecord keyRecord = hashAggregator.getKeyRecord();
+			for (Map.Entry<Integer, Integer> entry : fieldMapping.entrySet()) {
+				outRecord.getField(entry.getKey()).setValue(keyRecord.getField(entry.getValue()));
+			}
+			for (ConstantMappingItem item : constantMapping) {
+				outRecord.getField(item.getOutputField()).setValue(item.getValue());
+			}
+			hashAggregator.storeResults(outRecord);
+			return outRecord;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("Removal of aggregation results is not supported");
+		}
+	}
 }
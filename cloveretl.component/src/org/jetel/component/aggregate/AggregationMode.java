@@ -0,0 +1,60 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *  
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.component.aggregate;
+
+/**
+ * Mode of the aggregation. Partial and merge modes allow to split the aggregation of parallel
+ * data flows into two steps - each parallel branch pre-aggregates its records in partial mode
+ * and only the intermediate results are sent to the final aggregation in merge mode.
+ * 
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public enum AggregationMode {
+
+	/** records are aggregated and final results are produced */
+	COMPLETE("complete"),
+	/** records are aggregated and serialized intermediate results are produced into byte fields */
+	PARTIAL("partial"),
+	/** serialized intermediate results are read from byte fields, merged and final results are produced */
+	MERGE("merge");
+
+	private final String value;
+
+	private AggregationMode(String value) {
+		this.value = value;
+	}
+
+	public String getValue() {
+		return value;
+	}
+
+	/**
+	 * @param value mode name, case-insensitive
+	 * @return aggregation mode or null if the value is not known
+	 */
+	public static AggregationMode fromString(String value) {
+		for (AggregationMode mode : values()) {
+			if (mode.value.equalsIgnoreCase(value)) {
+				return mode;
+			}
+		}
+		return null;
+	}
+
+}
@@ -23,6 +23,7 @@ import org.jetel.data.DataRecord;
 import org.jetel.data.primitive.CloverInteger;
 import org.jetel.data.primitive.Numeric;
 import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.util.bytes.CloverBuffer;
 
 /**
  * Calculates the average value of fields.
@@ -108,7 +109,7 @@ public class Avg extends AggregateFunction {
 		if (sum == null) {
 			// Fix of CL-1509: Devise field type from output field metadata -> overflow could possibly be avoided
 			// Fix of CL-1508: Factory creates overflow checking Numerics
-			sum = (Numeric) AggregateNumericFactory.createDataField(outputFieldMetadata);
+			sum = createSumField();
 			sum.setValue(input);
 		} else {
 			sum.add(input);
@@ -132,4 +133,42 @@ public class Avg extends AggregateFunction {
 		sum = null;
 		count = 0;
 	}
+
+	/* (non-Javadoc)
+	 * @see org.jetel.component.aggregate.AggregateFunction#isMergeable()
+	 */
+	@Override
+	public boolean isMergeable() {
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.jetel.component.aggregate.AggregateFunction#serializePartialResult(org.jetel.util.bytes.CloverBuffer)
+	 */
+	@Override
+	public void serializePartialResult(CloverBuffer buffer) {
+		buffer.putInt(count);
+		if (sum != null) {
+			serializeNumeric(sum, buffer);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.jetel.component.aggregate.AggregateFunction#mergePartialResult(org.jetel.util.bytes.CloverBuffer)
+	 */
+	@Override
+	public void mergePartialResult(CloverBuffer buffer) {
+		int partialCount = buffer.getInt();
+		if (partialCount == 0) {
+			return;
+		}
+		Numeric partialSum = deserializeNumeric(buffer);
+		if (sum == null) {
+			sum = createSumField();
+			sum.setValue(partialSum);
+		} else {
+			sum.add(partialSum);
+		}
+		count += partialCount;
+	}
 }
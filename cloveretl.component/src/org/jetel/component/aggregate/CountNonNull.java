@@ -21,6 +21,7 @@ package org.jetel.component.aggregate;
 import org.jetel.data.DataField;
 import org.jetel.data.DataRecord;
 import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.util.bytes.CloverBuffer;
 
 /**
  * Calculates the count of members of an aggregate group wiuth a non-null value of a field.
@@ -105,4 +106,28 @@ public class CountNonNull extends AggregateFunction {
 			count++;
 		}
 	}
+
+	/* (non-Javadoc)
+	 * @see org.jetel.component.aggregate.AggregateFunction#isMergeable()
+	 */
+	@Override
+	public boolean isMergeable() {
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.jetel.component.aggregate.AggregateFunction#serializePartialResult(org.jetel.util.bytes.CloverBuffer)
+	 */
+	@Override
+	public void serializePartialResult(CloverBuffer buffer) {
+		buffer.putInt(count);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.jetel.component.aggregate.AggregateFunction#mergePartialResult(org.jetel.util.bytes.CloverBuffer)
+	 */
+	@Override
+	public void mergePartialResult(CloverBuffer buffer) {
+		count += buffer.getInt();
+	}
 }
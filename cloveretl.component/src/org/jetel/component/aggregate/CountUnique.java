@@ -18,12 +18,14 @@
  */
 package org.jetel.component.aggregate;
 
+import java.nio.ByteBuffer;
 import java.util.HashSet;
 import java.util.Set;
 
 import org.jetel.data.DataField;
 import org.jetel.data.DataRecord;
 import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.util.bytes.CloverBuffer;
 
 /**
  * Calculates the count of members of an aggregate group with a unique value of a field.
@@ -39,6 +41,8 @@ public class CountUnique extends AggregateFunction {
 	private static final String NAME = "countunique";
 	
 	private Set<DataField> uniqueValues = new HashSet<DataField>();
+	// serialized unique values of merged partial results
+	private Set<ByteBuffer> mergedValues = new HashSet<ByteBuffer>();
 	
 	/* (non-Javadoc)
 	 * @see org.jetel.component.aggregate.AggregateFunction#checkInputFieldType(org.jetel.metadata.DataFieldMetadata)
@@ -69,6 +73,7 @@ public class CountUnique extends AggregateFunction {
 	@Override
 	public void clear() {
 		uniqueValues.clear();
+		mergedValues.clear();
 	}
 
 	/* (non-Javadoc)
@@ -103,7 +108,7 @@ public class CountUnique extends AggregateFunction {
 
 	@Override
 	public void storeResult(DataField outputField) {
-		outputField.setValue(uniqueValues.size());
+		outputField.setValue(uniqueValues.size() + mergedValues.size());
 	}
 
 	/* (non-Javadoc)
@@ -121,4 +126,46 @@ public class CountUnique extends AggregateFunction {
 		}
 	}
 
+	/* (non-Javadoc)
+	 * @see org.jetel.component.aggregate.AggregateFunction#isMergeable()
+	 */
+	@Override
+	public boolean isMergeable() {
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.jetel.component.aggregate.AggregateFunction#serializePartialResult(org.jetel.util.bytes.CloverBuffer)
+	 */
+	@Override
+	public void serializePartialResult(CloverBuffer buffer) {
+		buffer.putInt(uniqueValues.size());
+		for (DataField value : uniqueValues) {
+			if (value == null) {
+				buffer.putInt(-1);
+			} else {
+				buffer.putInt(value.getSizeSerialized());
+				value.serialize(buffer);
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.jetel.component.aggregate.AggregateFunction#mergePartialResult(org.jetel.util.bytes.CloverBuffer)
+	 */
+	@Override
+	public void mergePartialResult(CloverBuffer buffer) {
+		int count = buffer.getInt();
+		for (int i = 0; i < count; i++) {
+			int length = buffer.getInt();
+			if (length < 0) {
+				mergedValues.add(null);
+			} else {
+				// serialized forms of two values are equal iff the values are equal
+				byte[] value = new byte[length];
+				buffer.get(value);
+				mergedValues.add(ByteBuffer.wrap(value));
+			}
+		}
+	}
 }
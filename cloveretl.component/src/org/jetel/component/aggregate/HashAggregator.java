@@ -0,0 +1,1095 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.component.aggregate;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Deque;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jetel.data.DataField;
+import org.jetel.data.DataRecord;
+import org.jetel.data.DataRecordFactory;
+import org.jetel.data.Defaults;
+import org.jetel.data.FileRecordBuffer;
+import org.jetel.data.RecordKey;
+import org.jetel.data.primitive.Numeric;
+import org.jetel.exception.JetelRuntimeException;
+import org.jetel.metadata.DataFieldContainerType;
+import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.metadata.DataFieldType;
+import org.jetel.metadata.DataRecordMetadata;
+import org.jetel.util.bytes.CloverBuffer;
+
+/**
+ * Aggregation of unsorted input for the common aggregate functions (count, countnonnull, sum, avg, min, max)
+ * of primitive types. Unlike {@link AggregateProcessor}, no objects are allocated per aggregation group:
+ * keys of the groups are serialized into large byte pages, the hash table uses open addressing with linear probing
+ * and intermediate results of the functions are stored in primitive arrays indexed by group number.
+ * Groups are returned in order of their first occurrence.<br>
+ * If the memory limit is exceeded, intermediate results of all groups are spilled to temporary files partitioned
+ * by hash of the key and the table is cleared. At the end, the partitions are merged one by one (and spilled recursively
+ * by different hash function if a partition does not fit into memory), so the output order is not preserved in this case.<br>
+ * Use {@link #create(RecordKey, DataRecordMetadata, DataRecordMetadata, String[], int[], int[])} to check whether the
+ * aggregation is supported.
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+class HashAggregator {
+
+	private static final Log logger = LogFactory.getLog(HashAggregator.class);
+
+	/** size of one page for serialized keys, larger keys get dedicated page */
+	private static final int PAGE_SIZE = 1 << 16;
+
+	private static final int INITIAL_SLOTS = 1024;
+
+	private static final int SPILL_PARTITION_BITS = 4;
+	private static final int NUM_SPILL_PARTITIONS = 1 << SPILL_PARTITION_BITS;
+	/** partitions of deeper levels are not spilled anymore */
+	private static final int MAX_SPILL_LEVEL = 8;
+
+	private final int[] keyFields;
+	private final boolean equalNULLs;
+	/** prototypes of accumulators, each table has own instances */
+	private final Accumulator[] accumulators;
+	/** record with key fields of the current output group */
+	private final DataRecord keyRecord;
+	private final CloverBuffer keyBuffer = CloverBuffer.allocate(Defaults.Record.RECORD_INITIAL_SIZE, Defaults.Record.RECORD_LIMIT_SIZE);
+	private final CloverBuffer spillBuffer = CloverBuffer.allocate(Defaults.Record.RECORD_INITIAL_SIZE, Defaults.Record.RECORD_LIMIT_SIZE);
+	private final CloverBuffer readBuffer = CloverBuffer.allocate(Defaults.Record.RECORD_INITIAL_SIZE, Defaults.Record.RECORD_LIMIT_SIZE);
+	/** memory limit in bytes, 0 means no limit */
+	private long memoryLimit;
+
+	private GroupTable table;
+	/** spilled partitions of the first level, null if nothing has been spilled */
+	private FileRecordBuffer[] spillFiles;
+
+	// output state
+	private boolean outputStarted;
+	private GroupTable outputTable;
+	private int outputGroup;
+	private final Deque<SpilledPartition> pendingPartitions = new ArrayDeque<SpilledPartition>();
+
+	private HashAggregator(RecordKey recordKey, DataRecordMetadata inMetadata, Accumulator[] accumulators) {
+		this.keyFields = recordKey.getKeyFields();
+		this.equalNULLs = recordKey.isEqualNULLs();
+		this.accumulators = accumulators;
+		this.keyRecord = DataRecordFactory.newRecord(inMetadata);
+		this.table = new GroupTable();
+	}
+
+	/**
+	 * Creates the aggregator for given functions.
+	 *
+	 * @param recordKey aggregation key
+	 * @param inMetadata input metadata
+	 * @param outMetadata output metadata
+	 * @param functions names of the aggregate functions
+	 * @param inputFields input field of each function, -1 if the function has no input field
+	 * @param outputFields output field of each function
+	 * @return new aggregator or null if some function or key field type is not supported
+	 */
+	static HashAggregator create(RecordKey recordKey, DataRecordMetadata inMetadata, DataRecordMetadata outMetadata,
+			String[] functions, int[] inputFields, int[] outputFields) {
+		for (int keyField : recordKey.getKeyFields()) {
+			if (!isSupportedKey(inMetadata.getField(keyField))) {
+				return null;
+			}
+		}
+		Accumulator[] accumulators = new Accumulator[functions.length];
+		for (int i = 0; i < functions.length; i++) {
+			DataFieldMetadata input = inputFields[i] >= 0 ? inMetadata.getField(inputFields[i]) : null;
+			accumulators[i] = createAccumulator(functions[i].toLowerCase(), input, outMetadata.getField(outputFields[i]));
+			if (accumulators[i] == null) {
+				return null;
+			}
+			accumulators[i].inputField = inputFields[i];
+			accumulators[i].outputField = outputFields[i];
+			accumulators[i].inputFieldName = input != null ? input.getName() : null;
+		}
+		return new HashAggregator(recordKey, inMetadata, accumulators);
+	}
+
+	/**
+	 * Serialized form of these types is equal iff the values are equal.
+	 */
+	private static boolean isSupportedKey(DataFieldMetadata field) {
+		if (field.getContainerType() != DataFieldContainerType.SINGLE) {
+			return false;
+		}
+		switch (field.getDataType()) {
+		case STRING:
+		case INTEGER:
+		case LONG:
+		case DATE:
+		case BOOLEAN:
+		case BYTE:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private static Accumulator createAccumulator(String function, DataFieldMetadata input, DataFieldMetadata output) {
+		if (output.getContainerType() != DataFieldContainerType.SINGLE
+				|| (input != null && input.getContainerType() != DataFieldContainerType.SINGLE)) {
+			return null;
+		}
+		DataFieldType inputType = input != null ? input.getDataType() : null;
+		DataFieldType outputType = output.getDataType();
+		boolean integralInput = inputType == DataFieldType.INTEGER || inputType == DataFieldType.LONG;
+		if (function.equals("count")) {
+			return new CountAccumulator(function, false);
+		} else if (function.equals("countnonnull")) {
+			return new CountAccumulator(function, true);
+		} else if (function.equals("sum")) {
+			if (integralInput && outputType == DataFieldType.INTEGER) {
+				return new LongSumAccumulator(function, true);
+			} else if (integralInput && outputType == DataFieldType.LONG) {
+				return new LongSumAccumulator(function, false);
+			} else if ((integralInput || inputType == DataFieldType.NUMBER) && outputType == DataFieldType.NUMBER) {
+				return new DoubleSumAccumulator(function);
+			}
+		} else if (function.equals("avg")) {
+			if ((integralInput || inputType == DataFieldType.NUMBER) && outputType == DataFieldType.NUMBER) {
+				return new AvgAccumulator(function);
+			}
+		} else if (function.equals("min") || function.equals("max")) {
+			if (inputType != outputType) {
+				return null;
+			}
+			boolean max = function.equals("max");
+			if (integralInput || inputType == DataFieldType.DATE) {
+				return new LongMinMaxAccumulator(function, max, inputType);
+			} else if (inputType == DataFieldType.NUMBER) {
+				return new DoubleMinMaxAccumulator(function, max);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param memoryLimit memory limit in bytes, 0 means no limit
+	 */
+	void setMemoryLimit(long memoryLimit) {
+		this.memoryLimit = memoryLimit;
+	}
+
+	/**
+	 * Updates the group of the record.
+	 */
+	void addRecord(DataRecord record) throws IOException {
+		keyBuffer.clear();
+		boolean hasNull = false;
+		for (int keyField : keyFields) {
+			DataField field = record.getField(keyField);
+			hasNull |= field.isNull();
+			field.serialize(keyBuffer);
+		}
+		int length = keyBuffer.position();
+		byte[] key = keyBuffer.array();
+		long hash = hash(key, length);
+
+		// NULL is not equal to anything if NULLs are not equal, so such records create separate groups
+		int group = table.getGroup(key, length, hash, hasNull && !equalNULLs);
+		for (Accumulator accumulator : table.accumulators) {
+			try {
+				accumulator.update(group, record);
+			} catch (RuntimeException e) {
+				throw new RuntimeException("Exception in aggregate function '" + accumulator.name +
+						"' on field '" + accumulator.inputFieldName + "'", e);
+			}
+		}
+
+		if (memoryLimit > 0 && table.getMemory() > memoryLimit) {
+			if (spillFiles == null) {
+				spillFiles = new FileRecordBuffer[NUM_SPILL_PARTITIONS];
+			}
+			spill(table, spillFiles, 0);
+			table = new GroupTable();
+		}
+	}
+
+	/**
+	 * Moves to the next group of the output.
+	 *
+	 * @return false if there are no more groups
+	 */
+	boolean nextGroup() {
+		try {
+			if (!outputStarted) {
+				outputStarted = true;
+				if (spillFiles != null) {
+					spill(table, spillFiles, 0);
+					addPendingPartitions(spillFiles, 1);
+					spillFiles = null;
+				} else {
+					outputTable = table;
+					outputGroup = -1;
+				}
+				table = null;
+			}
+			while (true) {
+				if (outputTable != null && ++outputGroup < outputTable.size) {
+					outputTable.loadKey(outputGroup, keyRecord, keyFields);
+					return true;
+				}
+				outputTable = null;
+				SpilledPartition partition = pendingPartitions.pollFirst();
+				if (partition == null) {
+					return false;
+				}
+				outputTable = loadPartition(partition);
+				outputGroup = -1;
+			}
+		} catch (IOException e) {
+			throw new JetelRuntimeException("Reading of spilled aggregation groups failed", e);
+		}
+	}
+
+	/**
+	 * @return record with key fields of the current output group, other fields are undefined
+	 */
+	DataRecord getKeyRecord() {
+		return keyRecord;
+	}
+
+	/**
+	 * Stores results of the aggregate functions of the current output group.
+	 */
+	void storeResults(DataRecord outRecord) {
+		for (Accumulator accumulator : outputTable.accumulators) {
+			accumulator.store(outputGroup, outRecord.getField(accumulator.outputField));
+		}
+	}
+
+	/**
+	 * Releases memory and temporary files.
+	 */
+	void reset() {
+		if (spillFiles != null) {
+			closeFiles(spillFiles);
+			spillFiles = null;
+		}
+		for (SpilledPartition partition : pendingPartitions) {
+			partition.close();
+		}
+		pendingPartitions.clear();
+		outputStarted = false;
+		outputTable = null;
+		table = new GroupTable();
+	}
+
+	private void spill(GroupTable spilledTable, FileRecordBuffer[] files, int level) throws IOException {
+		for (int group = 0; group < spilledTable.size; group++) {
+			int partition = getPartition(spilledTable.groupHashes[group], level);
+			if (files[partition] == null) {
+				files[partition] = new FileRecordBuffer();
+			}
+			spillBuffer.clear();
+			spilledTable.writeGroup(group, spillBuffer);
+			spillBuffer.flip();
+			files[partition].push(spillBuffer);
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Aggregation groups spilled to disk: " + spilledTable.size + " (level " + level + ")");
+		}
+	}
+
+	/**
+	 * Merges spilled groups of one partition in memory. Groups are spilled further if the memory limit is exceeded again.
+	 */
+	private GroupTable loadPartition(SpilledPartition partition) throws IOException {
+		GroupTable loadedTable = new GroupTable();
+		FileRecordBuffer[] subFiles = null;
+		byte[] key = new byte[64];
+		readBuffer.clear();
+		while (partition.file.shift(readBuffer) != null) {
+			readBuffer.flip();
+			boolean unique = readBuffer.get() != 0;
+			int length = readBuffer.getInt();
+			if (key.length < length) {
+				key = new byte[Math.max(length, key.length * 2)];
+			}
+			readBuffer.get(key, 0, length);
+			int group = loadedTable.getGroup(key, length, hash(key, length), unique);
+			for (Accumulator accumulator : loadedTable.accumulators) {
+				accumulator.merge(group, readBuffer);
+			}
+			readBuffer.clear();
+
+			if (memoryLimit > 0 && partition.level < MAX_SPILL_LEVEL && loadedTable.getMemory() > memoryLimit) {
+				if (subFiles == null) {
+					subFiles = new FileRecordBuffer[NUM_SPILL_PARTITIONS];
+				}
+				spill(loadedTable, subFiles, partition.level);
+				loadedTable = new GroupTable();
+			}
+		}
+		partition.close();
+		if (subFiles != null) {
+			spill(loadedTable, subFiles, partition.level);
+			addPendingPartitions(subFiles, partition.level + 1);
+			return null;
+		}
+		return loadedTable;
+	}
+
+	/**
+	 * Sub-partitions are processed before the remaining partitions of the upper level.
+	 */
+	private void addPendingPartitions(FileRecordBuffer[] files, int level) {
+		for (int i = files.length - 1; i >= 0; i--) {
+			if (files[i] != null) {
+				pendingPartitions.addFirst(new SpilledPartition(files[i], level));
+			}
+		}
+	}
+
+	private static void closeFiles(FileRecordBuffer[] files) {
+		for (FileRecordBuffer file : files) {
+			if (file != null) {
+				closeFile(file);
+			}
+		}
+	}
+
+	private static void closeFile(FileRecordBuffer file) {
+		try {
+			file.close();
+		} catch (IOException e) {
+			logger.warn("Temporary file of aggregation cannot be deleted.", e);
+		}
+	}
+
+	private static long hash(byte[] bytes, int length) {
+		// FNV-1a
+		long h = 0xCBF29CE484222325L;
+		for (int i = 0; i < length; i++) {
+			h = (h ^ bytes[i]) * 0x100000001B3L;
+		}
+		return mix(h);
+	}
+
+	private static long mix(long h) {
+		// finalization step of MurmurHash3
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB93FE53EC1A3L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Each level of partitioning uses different hash function, independent of the position in the hash table.
+	 */
+	private static int getPartition(long hash, int level) {
+		return (int) (mix(hash + (level + 1) * 0x9E3779B97F4A7C15L) >>> (64 - SPILL_PARTITION_BITS));
+	}
+
+	private static class SpilledPartition {
+		private final FileRecordBuffer file;
+		/** level of partitioning of the groups read from the file */
+		private final int level;
+
+		SpilledPartition(FileRecordBuffer file, int level) {
+			this.file = file;
+			this.level = level;
+		}
+
+		void close() {
+			closeFile(file);
+		}
+	}
+
+	/**
+	 * Hash table of aggregation groups.
+	 */
+	private class GroupTable {
+		private final Accumulator[] accumulators;
+
+		// pages with serialized keys
+		private byte[][] pages = new byte[16][];
+		private int pageCount;
+		private int pageOffset;
+		private long pagesMemory;
+
+		// groups, key address is page index in upper and offset in lower 32 bits
+		private long[] groupAddresses;
+		private int[] groupLengths;
+		private long[] groupHashes;
+		/** groups with NULL key which is not equal to other keys, allocated lazily */
+		private boolean[] uniqueGroups;
+		private int size;
+		private int capacity;
+
+		/** group index + 1, 0 for empty slot */
+		private int[] slots = new int[INITIAL_SLOTS];
+		private int mask = INITIAL_SLOTS - 1;
+		private int usedSlots;
+
+		// reused page view for deserialization of keys
+		private CloverBuffer pageView;
+		private int pageViewIndex = -1;
+
+		GroupTable() {
+			accumulators = new Accumulator[HashAggregator.this.accumulators.length];
+			for (int i = 0; i < accumulators.length; i++) {
+				accumulators[i] = HashAggregator.this.accumulators[i].newInstance();
+			}
+			allocateGroups(INITIAL_SLOTS / 2);
+		}
+
+		/**
+		 * Finds the group of the key or creates new one.
+		 *
+		 * @param unique if true, new group is always created and it is not inserted into hash table
+		 */
+		int getGroup(byte[] key, int length, long hash, boolean unique) {
+			if (unique) {
+				int group = addGroup(key, length, hash);
+				if (uniqueGroups == null) {
+					uniqueGroups = new boolean[capacity];
+				}
+				uniqueGroups[group] = true;
+				return group;
+			}
+			if (usedSlots + 1 > (slots.length >> 1)) {
+				rehash(slots.length << 1);
+			}
+			int slot = (int) hash & mask;
+			int group;
+			while ((group = slots[slot]) != 0) {
+				group--;
+				if (groupHashes[group] == hash && keyEquals(group, key, length)) {
+					return group;
+				}
+				slot = (slot + 1) & mask;
+			}
+			group = addGroup(key, length, hash);
+			slots[slot] = group + 1;
+			usedSlots++;
+			return group;
+		}
+
+		private int addGroup(byte[] key, int length, long hash) {
+			if (size == capacity) {
+				allocateGroups(capacity << 1);
+			}
+			if (pageCount == 0 || pageOffset + length > pages[pageCount - 1].length) {
+				if (pageCount == pages.length) {
+					pages = Arrays.copyOf(pages, pageCount << 1);
+				}
+				pages[pageCount++] = new byte[Math.max(PAGE_SIZE, length)];
+				pagesMemory += pages[pageCount - 1].length;
+				pageOffset = 0;
+			}
+			System.arraycopy(key, 0, pages[pageCount - 1], pageOffset, length);
+			int group = size++;
+			groupAddresses[group] = ((long) (pageCount - 1) << 32) | pageOffset;
+			groupLengths[group] = length;
+			groupHashes[group] = hash;
+			pageOffset += length;
+			for (Accumulator accumulator : accumulators) {
+				accumulator.init(group);
+			}
+			return group;
+		}
+
+		private void allocateGroups(int newCapacity) {
+			groupAddresses = Arrays.copyOf(groupAddresses != null ? groupAddresses : new long[0], newCapacity);
+			groupLengths = Arrays.copyOf(groupLengths != null ? groupLengths : new int[0], newCapacity);
+			groupHashes = Arrays.copyOf(groupHashes != null ? groupHashes : new long[0], newCapacity);
+			if (uniqueGroups != null) {
+				uniqueGroups = Arrays.copyOf(uniqueGroups, newCapacity);
+			}
+			for (Accumulator accumulator : accumulators) {
+				accumulator.ensureCapacity(newCapacity);
+			}
+			capacity = newCapacity;
+		}
+
+		private void rehash(int newSize) {
+			slots = new int[newSize];
+			mask = newSize - 1;
+			for (int group = 0; group < size; group++) {
+				if (uniqueGroups != null && uniqueGroups[group]) {
+					continue;
+				}
+				int slot = (int) groupHashes[group] & mask;
+				while (slots[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				slots[slot] = group + 1;
+			}
+		}
+
+		private boolean keyEquals(int group, byte[] key, int length) {
+			if (groupLengths[group] != length) {
+				return false;
+			}
+			long address = groupAddresses[group];
+			byte[] page = pages[(int) (address >>> 32)];
+			int offset = (int) address;
+			for (int i = 0; i < length; i++) {
+				if (page[offset + i] != key[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Deserializes key fields of the group into the given record.
+		 */
+		void loadKey(int group, DataRecord record, int[] keyFields) {
+			long address = groupAddresses[group];
+			int pageIndex = (int) (address >>> 32);
+			if (pageIndex != pageViewIndex) {
+				pageView = CloverBuffer.wrap(pages[pageIndex]);
+				pageViewIndex = pageIndex;
+			}
+			int offset = (int) address;
+			pageView.clear();
+			pageView.position(offset);
+			pageView.limit(offset + groupLengths[group]);
+			for (int keyField : keyFields) {
+				record.getField(keyField).deserialize(pageView);
+			}
+		}
+
+		/**
+		 * Writes serialized key and intermediate results of the group.
+		 */
+		void writeGroup(int group, CloverBuffer buffer) {
+			long address = groupAddresses[group];
+			buffer.put((byte) (uniqueGroups != null && uniqueGroups[group] ? 1 : 0));
+			buffer.putInt(groupLengths[group]);
+			buffer.put(pages[(int) (address >>> 32)], (int) address, groupLengths[group]);
+			for (Accumulator accumulator : accumulators) {
+				accumulator.write(group, buffer);
+			}
+		}
+
+		/**
+		 * @return estimated size of the table in bytes
+		 */
+		long getMemory() {
+			long groupMemory = 8 + 4 + 8 + (uniqueGroups != null ? 1 : 0);
+			for (Accumulator accumulator : accumulators) {
+				groupMemory += accumulator.getBytesPerGroup();
+			}
+			return pagesMemory + 4L * slots.length + groupMemory * capacity;
+		}
+	}
+
+	/**
+	 * Intermediate results of one aggregate function for all groups of one table.
+	 */
+	private static abstract class Accumulator {
+		protected final String name;
+		protected int inputField;
+		protected int outputField;
+		protected String inputFieldName;
+
+		Accumulator(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * @return new empty accumulator of the same function
+		 */
+		Accumulator newInstance() {
+			Accumulator result = createInstance();
+			result.inputField = inputField;
+			result.outputField = outputField;
+			result.inputFieldName = inputFieldName;
+			return result;
+		}
+
+		protected abstract Accumulator createInstance();
+
+		abstract void ensureCapacity(int capacity);
+
+		/** Initializes new group. */
+		abstract void init(int group);
+
+		abstract void update(int group, DataRecord record);
+
+		abstract void store(int group, DataField outputField);
+
+		/** Writes intermediate result of the group. */
+		abstract void write(int group, CloverBuffer buffer);
+
+		/** Merges intermediate result written by {@link #write(int, CloverBuffer)} into the group. */
+		abstract void merge(int group, CloverBuffer buffer);
+
+		abstract int getBytesPerGroup();
+	}
+
+	private static class CountAccumulator extends Accumulator {
+		private final boolean nonNull;
+		private int[] counts = new int[0];
+
+		CountAccumulator(String name, boolean nonNull) {
+			super(name);
+			this.nonNull = nonNull;
+		}
+
+		@Override
+		protected Accumulator createInstance() {
+			return new CountAccumulator(name, nonNull);
+		}
+
+		@Override
+		void ensureCapacity(int capacity) {
+			counts = Arrays.copyOf(counts, capacity);
+		}
+
+		@Override
+		void init(int group) {
+			counts[group] = 0;
+		}
+
+		@Override
+		void update(int group, DataRecord record) {
+			if (!nonNull || !record.getField(inputField).isNull()) {
+				counts[group]++;
+			}
+		}
+
+		@Override
+		void store(int group, DataField outputField) {
+			outputField.setValue(counts[group]);
+		}
+
+		@Override
+		void write(int group, CloverBuffer buffer) {
+			buffer.putInt(counts[group]);
+		}
+
+		@Override
+		void merge(int group, CloverBuffer buffer) {
+			counts[group] += buffer.getInt();
+		}
+
+		@Override
+		int getBytesPerGroup() {
+			return 4;
+		}
+	}
+
+	/**
+	 * Sum into integer or long field with the same overflow checks as {@link AggregateIntegerNumeric}
+	 * and {@link AggregateLongNumeric}.
+	 */
+	private static class LongSumAccumulator extends Accumulator {
+		private final boolean intRange;
+		private long[] sums = new long[0];
+		private boolean[] nonEmpty = new boolean[0];
+
+		LongSumAccumulator(String name, boolean intRange) {
+			super(name);
+			this.intRange = intRange;
+		}
+
+		@Override
+		protected Accumulator createInstance() {
+			return new LongSumAccumulator(name, intRange);
+		}
+
+		@Override
+		void ensureCapacity(int capacity) {
+			sums = Arrays.copyOf(sums, capacity);
+			nonEmpty = Arrays.copyOf(nonEmpty, capacity);
+		}
+
+		@Override
+		void init(int group) {
+			sums[group] = 0;
+			nonEmpty[group] = false;
+		}
+
+		@Override
+		void update(int group, DataRecord record) {
+			Numeric input = (Numeric) record.getField(inputField);
+			if (input.isNull()) {
+				return;
+			}
+			add(group, intRange ? input.getInt() : input.getLong());
+		}
+
+		private void add(int group, long value) {
+			if (!nonEmpty[group]) {
+				sums[group] = value;
+				nonEmpty[group] = true;
+			} else if (intRange) {
+				int current = (int) sums[group];
+				int param = (int) value;
+				int sum = current + param;
+				if ((current > 0 && param > 0 && sum < 0) || (current < 0 && param < 0 && sum > 0) || sum == Integer.MIN_VALUE) {
+					throw new ArithmeticException("Integer overflow (" + current + " + " + param + " = " + sum + ")");
+				}
+				sums[group] = sum;
+			} else {
+				long current = sums[group];
+				long sum = current + value;
+				if ((current > 0 && value > 0 && sum < 0) || (current < 0 && value < 0 && sum > 0) || sum == Long.MIN_VALUE) {
+					throw new ArithmeticException("Integer overflow (" + current + " + " + value + " = " + sum + ")");
+				}
+				sums[group] = sum;
+			}
+		}
+
+		@Override
+		void store(int group, DataField outputField) {
+			if (!nonEmpty[group]) {
+				outputField.setNull(true);
+			} else if (intRange) {
+				((Numeric) outputField).setValue((int) sums[group]);
+			} else {
+				((Numeric) outputField).setValue(sums[group]);
+			}
+		}
+
+		@Override
+		void write(int group, CloverBuffer buffer) {
+			buffer.put((byte) (nonEmpty[group] ? 1 : 0));
+			buffer.putLong(sums[group]);
+		}
+
+		@Override
+		void merge(int group, CloverBuffer buffer) {
+			boolean partialNonEmpty = buffer.get() != 0;
+			long partialSum = buffer.getLong();
+			if (partialNonEmpty) {
+				add(group, partialSum);
+			}
+		}
+
+		@Override
+		int getBytesPerGroup() {
+			return 9;
+		}
+	}
+
+	private static class DoubleSumAccumulator extends Accumulator {
+		private double[] sums = new double[0];
+		private boolean[] nonEmpty = new boolean[0];
+
+		DoubleSumAccumulator(String name) {
+			super(name);
+		}
+
+		@Override
+		protected Accumulator createInstance() {
+			return new DoubleSumAccumulator(name);
+		}
+
+		@Override
+		void ensureCapacity(int capacity) {
+			sums = Arrays.copyOf(sums, capacity);
+			nonEmpty = Arrays.copyOf(nonEmpty, capacity);
+		}
+
+		@Override
+		void init(int group) {
+			sums[group] = 0;
+			nonEmpty[group] = false;
+		}
+
+		@Override
+		void update(int group, DataRecord record) {
+			Numeric input = (Numeric) record.getField(inputField);
+			if (input.isNull()) {
+				return;
+			}
+			add(group, input.getDouble());
+		}
+
+		private void add(int group, double value) {
+			// the first value is assigned, not added to zero (-0.0 is kept)
+			if (!nonEmpty[group]) {
+				sums[group] = value;
+				nonEmpty[group] = true;
+			} else {
+				sums[group] += value;
+			}
+		}
+
+		@Override
+		void store(int group, DataField outputField) {
+			if (!nonEmpty[group]) {
+				outputField.setNull(true);
+			} else {
+				((Numeric) outputField).setValue(sums[group]);
+			}
+		}
+
+		@Override
+		void write(int group, CloverBuffer buffer) {
+			buffer.put((byte) (nonEmpty[group] ? 1 : 0));
+			buffer.putDouble(sums[group]);
+		}
+
+		@Override
+		void merge(int group, CloverBuffer buffer) {
+			boolean partialNonEmpty = buffer.get() != 0;
+			double partialSum = buffer.getDouble();
+			if (partialNonEmpty) {
+				add(group, partialSum);
+			}
+		}
+
+		@Override
+		int getBytesPerGroup() {
+			return 9;
+		}
+	}
+
+	private static class AvgAccumulator extends Accumulator {
+		private double[] sums = new double[0];
+		private int[] counts = new int[0];
+
+		AvgAccumulator(String name) {
+			super(name);
+		}
+
+		@Override
+		protected Accumulator createInstance() {
+			return new AvgAccumulator(name);
+		}
+
+		@Override
+		void ensureCapacity(int capacity) {
+			sums = Arrays.copyOf(sums, capacity);
+			counts = Arrays.copyOf(counts, capacity);
+		}
+
+		@Override
+		void init(int group) {
+			sums[group] = 0;
+			counts[group] = 0;
+		}
+
+		@Override
+		void update(int group, DataRecord record) {
+			Numeric input = (Numeric) record.getField(inputField);
+			if (input.isNull()) {
+				return;
+			}
+			sums[group] = counts[group] == 0 ? input.getDouble() : sums[group] + input.getDouble();
+			counts[group]++;
+		}
+
+		@Override
+		void store(int group, DataField outputField) {
+			if (counts[group] == 0) {
+				outputField.setNull(true);
+			} else {
+				((Numeric) outputField).setValue(sums[group] / counts[group]);
+			}
+		}
+
+		@Override
+		void write(int group, CloverBuffer buffer) {
+			buffer.putDouble(sums[group]);
+			buffer.putInt(counts[group]);
+		}
+
+		@Override
+		void merge(int group, CloverBuffer buffer) {
+			double partialSum = buffer.getDouble();
+			int partialCount = buffer.getInt();
+			if (partialCount > 0) {
+				sums[group] = counts[group] == 0 ? partialSum : sums[group] + partialSum;
+				counts[group] += partialCount;
+			}
+		}
+
+		@Override
+		int getBytesPerGroup() {
+			return 12;
+		}
+	}
+
+	/**
+	 * Min or max of integer, long or date field.
+	 */
+	private static class LongMinMaxAccumulator extends Accumulator {
+		private final boolean max;
+		private final DataFieldType type;
+		private long[] values = new long[0];
+		private boolean[] nonEmpty = new boolean[0];
+
+		LongMinMaxAccumulator(String name, boolean max, DataFieldType type) {
+			super(name);
+			this.max = max;
+			this.type = type;
+		}
+
+		@Override
+		protected Accumulator createInstance() {
+			return new LongMinMaxAccumulator(name, max, type);
+		}
+
+		@Override
+		void ensureCapacity(int capacity) {
+			values = Arrays.copyOf(values, capacity);
+			nonEmpty = Arrays.copyOf(nonEmpty, capacity);
+		}
+
+		@Override
+		void init(int group) {
+			values[group] = 0;
+			nonEmpty[group] = false;
+		}
+
+		@Override
+		void update(int group, DataRecord record) {
+			DataField input = record.getField(inputField);
+			if (input.isNull()) {
+				return;
+			}
+			add(group, type == DataFieldType.DATE ? ((Date) input.getValue()).getTime() : ((Numeric) input).getLong());
+		}
+
+		private void add(int group, long value) {
+			if (!nonEmpty[group] || (max ? value > values[group] : value < values[group])) {
+				values[group] = value;
+				nonEmpty[group] = true;
+			}
+		}
+
+		@Override
+		void store(int group, DataField outputField) {
+			if (!nonEmpty[group]) {
+				outputField.setNull(true);
+			} else if (type == DataFieldType.DATE) {
+				outputField.setValue(new Date(values[group]));
+			} else if (type == DataFieldType.INTEGER) {
+				((Numeric) outputField).setValue((int) values[group]);
+			} else {
+				((Numeric) outputField).setValue(values[group]);
+			}
+		}
+
+		@Override
+		void write(int group, CloverBuffer buffer) {
+			buffer.put((byte) (nonEmpty[group] ? 1 : 0));
+			buffer.putLong(values[group]);
+		}
+
+		@Override
+		void merge(int group, CloverBuffer buffer) {
+			boolean partialNonEmpty = buffer.get() != 0;
+			long partialValue = buffer.getLong();
+			if (partialNonEmpty) {
+				add(group, partialValue);
+			}
+		}
+
+		@Override
+		int getBytesPerGroup() {
+			return 9;
+		}
+	}
+
+	/**
+	 * Min or max of number field, values are compared by <code>Double.compare()</code> as {@link Numeric#compareTo(Numeric)} does.
+	 */
+	private static class DoubleMinMaxAccumulator extends Accumulator {
+		private final boolean max;
+		private double[] values = new double[0];
+		private boolean[] nonEmpty = new boolean[0];
+
+		DoubleMinMaxAccumulator(String name, boolean max) {
+			super(name);
+			this.max = max;
+		}
+
+		@Override
+		protected Accumulator createInstance() {
+			return new DoubleMinMaxAccumulator(name, max);
+		}
+
+		@Override
+		void ensureCapacity(int capacity) {
+			values = Arrays.copyOf(values, capacity);
+			nonEmpty = Arrays.copyOf(nonEmpty, capacity);
+		}
+
+		@Override
+		void init(int group) {
+			values[group] = 0;
+			nonEmpty[group] = false;
+		}
+
+		@Override
+		void update(int group, DataRecord record) {
+			Numeric input = (Numeric) record.getField(inputField);
+			if (input.isNull()) {
+				return;
+			}
+			add(group, input.getDouble());
+		}
+
+		private void add(int group, double value) {
+			if (!nonEmpty[group] || Double.compare(value, values[group]) == (max ? 1 : -1)) {
+				values[group] = value;
+				nonEmpty[group] = true;
+			}
+		}
+
+		@Override
+		void store(int group, DataField outputField) {
+			if (!nonEmpty[group]) {
+				outputField.setNull(true);
+			} else {
+				((Numeric) outputField).setValue(values[group]);
+			}
+		}
+
+		@Override
+		void write(int group, CloverBuffer buffer) {
+			buffer.put((byte) (nonEmpty[group] ? 1 : 0));
+			buffer.putDouble(values[group]);
+		}
+
+		@Override
+		void merge(int group, CloverBuffer buffer) {
+			boolean partialNonEmpty = buffer.get() != 0;
+			double partialValue = buffer.getDouble();
+			if (partialNonEmpty) {
+				add(group, partialValue);
+			}
+		}
+
+		@Override
+		int getBytesPerGroup() {
+			return 9;
+		}
+	}
+
+}
@@ -21,6 +21,7 @@ package org.jetel.component.aggregate;
 import org.jetel.data.DataField;
 import org.jetel.data.DataRecord;
 import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.util.bytes.CloverBuffer;
 
 /**
  * Calculates the maximum value of a field.
@@ -35,6 +36,8 @@ public class Max extends AggregateFunction {
 	private static final String NAME = "max";
 
 	private DataField max;
+	// deserialized partial result
+	private DataField partialValue;
 
 	// Is input nullable?
 	private boolean nullableInput;
@@ -124,4 +127,47 @@ public class Max extends AggregateFunction {
 	public void clear() {
 		max = null;
 	}
+
+	/* (non-Javadoc)
+	 * @see org.jetel.component.aggregate.AggregateFunction#isMergeable()
+	 */
+	@Override
+	public boolean isMergeable() {
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.jetel.component.aggregate.AggregateFunction#serializePartialResult(org.jetel.util.bytes.CloverBuffer)
+	 */
+	@Override
+	public void serializePartialResult(CloverBuffer buffer) {
+		serializeValueType(buffer);
+		buffer.put((byte) (max != null ? 1 : 0));
+		if (max != null) {
+			max.serialize(buffer);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.jetel.component.aggregate.AggregateFunction#mergePartialResult(org.jetel.util.bytes.CloverBuffer)
+	 */
+	@Override
+	public void mergePartialResult(CloverBuffer buffer) {
+		checkValueType(buffer);
+		if (buffer.get() == 0) {
+			return;
+		}
+		if (max == null) {
+			max = createValueField();
+			max.deserialize(buffer);
+		} else {
+			if (partialValue == null) {
+				partialValue = createValueField();
+			}
+			partialValue.deserialize(buffer);
+			if (partialValue.compareTo(max) == 1) {
+				max.setValue(partialValue);
+			}
+		}
+	}
 }
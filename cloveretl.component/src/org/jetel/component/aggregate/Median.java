@@ -30,6 +30,7 @@ import org.jetel.data.DataRecord;
 import org.jetel.data.primitive.CloverInteger;
 import org.jetel.data.primitive.Numeric;
 import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.util.bytes.CloverBuffer;
 
 /**
  * Finds the median. In case there in an even number of values, and the type of the values is 
@@ -168,4 +169,58 @@ public class Median extends AggregateFunction {
 			values.add(input.duplicate());
 		}
 	}
+
+	/* (non-Javadoc)
+	 * @see org.jetel.component.aggregate.AggregateFunction#isMergeable()
+	 */
+	@Override
+	public boolean isMergeable() {
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.jetel.component.aggregate.AggregateFunction#serializePartialResult(org.jetel.util.bytes.CloverBuffer)
+	 */
+	@Override
+	public void serializePartialResult(CloverBuffer buffer) {
+		serializeValueType(buffer);
+		Collections.sort(values);
+		// equal values are stored only once with the number of occurrences
+		int distinctValues = 0;
+		for (int i = 0; i < values.size(); i++) {
+			if (i == 0 || values.get(i).compareTo(values.get(i - 1)) != 0) {
+				distinctValues++;
+			}
+		}
+		buffer.putInt(distinctValues);
+		int i = 0;
+		while (i < values.size()) {
+			DataField value = values.get(i);
+			int next = i + 1;
+			while (next < values.size() && values.get(next).compareTo(value) == 0) {
+				next++;
+			}
+			value.serialize(buffer);
+			buffer.putInt(next - i);
+			i = next;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.jetel.component.aggregate.AggregateFunction#mergePartialResult(org.jetel.util.bytes.CloverBuffer)
+	 */
+	@Override
+	public void mergePartialResult(CloverBuffer buffer) {
+		checkValueType(buffer);
+		numericInput = outputFieldMetadata.isNumeric();
+		int distinctValues = buffer.getInt();
+		for (int i = 0; i < distinctValues; i++) {
+			DataField value = createValueField();
+			value.deserialize(buffer);
+			int count = buffer.getInt();
+			for (int j = 0; j < count; j++) {
+				values.add(value);
+			}
+		}
+	}
 }
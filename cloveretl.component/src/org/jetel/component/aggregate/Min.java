@@ -21,6 +21,7 @@ package org.jetel.component.aggregate;
 import org.jetel.data.DataField;
 import org.jetel.data.DataRecord;
 import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.util.bytes.CloverBuffer;
 
 /**
  * Calculates the minimum value of a field.
@@ -35,6 +36,8 @@ public class Min extends AggregateFunction {
 	private static final String NAME = "min";
 
 	private DataField min;
+	// deserialized partial result
+	private DataField partialValue;
 
 	// Is input nullable?
 	private boolean nullableInput;
@@ -125,4 +128,47 @@ public class Min extends AggregateFunction {
 	public void clear() {
 		min = null;
 	}
+
+	/* (non-Javadoc)
+	 * @see org.jetel.component.aggregate.AggregateFunction#isMergeable()
+	 */
+	@Override
+	public boolean isMergeable() {
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.jetel.component.aggregate.AggregateFunction#serializePartialResult(org.jetel.util.bytes.CloverBuffer)
+	 */
+	@Override
+	public void serializePartialResult(CloverBuffer buffer) {
+		serializeValueType(buffer);
+		buffer.put((byte) (min != null ? 1 : 0));
+		if (min != null) {
+			min.serialize(buffer);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.jetel.component.aggregate.AggregateFunction#mergePartialResult(org.jetel.util.bytes.CloverBuffer)
+	 */
+	@Override
+	public void mergePartialResult(CloverBuffer buffer) {
+		checkValueType(buffer);
+		if (buffer.get() == 0) {
+			return;
+		}
+		if (min == null) {
+			min = createValueField();
+			min.deserialize(buffer);
+		} else {
+			if (partialValue == null) {
+				partialValue = createValueField();
+			}
+			partialValue.deserialize(buffer);
+			if (partialValue.compareTo(min) == -1) {
+				min.setValue(partialValue);
+			}
+		}
+	}
 }
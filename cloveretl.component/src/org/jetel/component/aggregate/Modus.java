@@ -28,6 +28,7 @@ import java.util.Map.Entry;
 import org.jetel.data.DataField;
 import org.jetel.data.DataRecord;
 import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.util.bytes.CloverBuffer;
 
 /**
  * Finds the most most frequently occurring value.
@@ -145,6 +146,47 @@ public class Modus extends AggregateFunction {
 		}
 	}
 
+	/* (non-Javadoc)
+	 * @see org.jetel.component.aggregate.AggregateFunction#isMergeable()
+	 */
+	@Override
+	public boolean isMergeable() {
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.jetel.component.aggregate.AggregateFunction#serializePartialResult(org.jetel.util.bytes.CloverBuffer)
+	 */
+	@Override
+	public void serializePartialResult(CloverBuffer buffer) {
+		serializeValueType(buffer);
+		buffer.putInt(counts.size());
+		for (Entry<DataField, Count> countEntry : counts.entrySet()) {
+			countEntry.getKey().serialize(buffer);
+			buffer.putInt(countEntry.getValue().getValue());
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.jetel.component.aggregate.AggregateFunction#mergePartialResult(org.jetel.util.bytes.CloverBuffer)
+	 */
+	@Override
+	public void mergePartialResult(CloverBuffer buffer) {
+		checkValueType(buffer);
+		int size = buffer.getInt();
+		for (int i = 0; i < size; i++) {
+			DataField value = createValueField();
+			value.deserialize(buffer);
+			int partialCount = buffer.getInt();
+			Count count = counts.get(value);
+			if (count == null) {
+				counts.put(value, new Count(partialCount));
+			} else {
+				count.add(partialCount);
+			}
+		}
+	}
+
 	/**
 	 * Count, which can be incremented. Upon creating a new instance, the count value is
 	 * set to 1.
@@ -155,7 +197,15 @@ public class Modus extends AggregateFunction {
 	 * @since Nov 14, 2007
 	 */
 	private static class Count {
-		private int count = 1;
+		private int count;
+		
+		public Count() {
+			this(1);
+		}
+		
+		public Count(int count) {
+			this.count = count;
+		}
 		
 		/**
 		 * @return value of the count.
@@ -170,5 +220,12 @@ public class Modus extends AggregateFunction {
 		public void increment() {
 			count++;
 		}
+		
+		/**
+		 * Increments the count by the given value.
+		 */
+		public void add(int value) {
+			count += value;
+		}
 	}
 }
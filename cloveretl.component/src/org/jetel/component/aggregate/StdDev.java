@@ -23,6 +23,7 @@ import org.jetel.data.DataRecord;
 import org.jetel.data.primitive.CloverDouble;
 import org.jetel.data.primitive.Numeric;
 import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.util.bytes.CloverBuffer;
 
 /**
  * Calculates the standard deviation of an aggregation group. The standard deviation
@@ -141,4 +142,38 @@ public class StdDev extends AggregateFunction {
 		sumSquared = 0;
 		count = 0;
 	}
+
+	/* (non-Javadoc)
+	 * @see org.jetel.component.aggregate.AggregateFunction#isMergeable()
+	 */
+	@Override
+	public boolean isMergeable() {
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.jetel.component.aggregate.AggregateFunction#serializePartialResult(org.jetel.util.bytes.CloverBuffer)
+	 */
+	@Override
+	public void serializePartialResult(CloverBuffer buffer) {
+		buffer.putInt(count);
+		buffer.putDouble(mean);
+		buffer.putDouble(sumSquared);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.jetel.component.aggregate.AggregateFunction#mergePartialResult(org.jetel.util.bytes.CloverBuffer)
+	 */
+	@Override
+	public void mergePartialResult(CloverBuffer buffer) {
+		int partialCount = buffer.getInt();
+		double partialMean = buffer.getDouble();
+		double partialSumSquared = buffer.getDouble();
+		if (partialCount == 0) {
+			return;
+		}
+		count += partialCount;
+		mean += (partialMean - mean) * partialCount / count;
+		sumSquared += partialSumSquared;
+	}
 }
@@ -22,6 +22,7 @@ import org.jetel.data.DataField;
 import org.jetel.data.DataRecord;
 import org.jetel.data.primitive.Numeric;
 import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.util.bytes.CloverBuffer;
 
 /**
  * Calculates the sum of field values.
@@ -106,7 +107,7 @@ public class Sum extends AggregateFunction {
 		if (sum == null) {
 			// Fix of CL-1509: Devise field type from output field metadata -> overflow could possibly be avoided
 			// Fix of CL-1508: Factory creates overflow checking Numerics
-			sum = (Numeric) AggregateNumericFactory.createDataField(outputFieldMetadata);
+			sum = createSumField();
 			sum.setValue(input);
 		} else {
 			sum.add(input);
@@ -128,4 +129,40 @@ public class Sum extends AggregateFunction {
 	public void clear() {
 		sum = null;
 	}
+
+	/* (non-Javadoc)
+	 * @see org.jetel.component.aggregate.AggregateFunction#isMergeable()
+	 */
+	@Override
+	public boolean isMergeable() {
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.jetel.component.aggregate.AggregateFunction#serializePartialResult(org.jetel.util.bytes.CloverBuffer)
+	 */
+	@Override
+	public void serializePartialResult(CloverBuffer buffer) {
+		buffer.put((byte) (sum != null ? 1 : 0));
+		if (sum != null) {
+			serializeNumeric(sum, buffer);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.jetel.component.aggregate.AggregateFunction#mergePartialResult(org.jetel.util.bytes.CloverBuffer)
+	 */
+	@Override
+	public void mergePartialResult(CloverBuffer buffer) {
+		if (buffer.get() == 0) {
+			return;
+		}
+		Numeric partialSum = deserializeNumeric(buffer);
+		if (sum == null) {
+			sum = createSumField();
+			sum.setValue(partialSum);
+		} else {
+			sum.add(partialSum);
+		}
+	}
 }
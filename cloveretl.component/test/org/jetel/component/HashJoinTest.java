@@ -0,0 +1,273 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jetel.component.HashJoin.Join;
+import org.jetel.data.DataRecord;
+import org.jetel.data.DataRecordFactory;
+import org.jetel.enums.EdgeTypeEnum;
+import org.jetel.exception.TransformException;
+import org.jetel.graph.ContextProvider;
+import org.jetel.graph.ContextProvider.Context;
+import org.jetel.graph.Edge;
+import org.jetel.graph.Phase;
+import org.jetel.graph.Result;
+import org.jetel.graph.TransformationGraph;
+import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.metadata.DataRecordMetadata;
+import org.jetel.test.CloverTestCase;
+
+/**
+ * Compares output of HashJoin in the spilling mode (memory limit set) with output of the in-memory join.
+ * Slave records are padded, so slave data exceed the memory limit and partitions are spilled
+ * to temporary files. Output of the join with partitioned multi-threaded build of hash tables
+ * and Bloom filters is compared as well.
+ * 
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public class HashJoinTest extends CloverTestCase {
+
+	private static final int DRIVER_COUNT = 6000;
+	/** number of keys without any slave record */
+	private static final int MISSING_KEYS = 500;
+	/** 1MB, exceeded by slave data of each slave port */
+	private static final int MEMORY_LIMIT = 1;
+	private static final String PADDING;
+	
+	static {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 500; i++) {
+			sb.append((char) ('a' + i % 26));
+		}
+		PADDING = sb.toString();
+	}
+
+	private DataRecordMetadata driverMetadata;
+	private DataRecordMetadata slaveMetadata;
+	private DataRecordMetadata outMetadata;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		initEngine();
+
+		driverMetadata = new DataRecordMetadata("driver", DataRecordMetadata.DELIMITED_RECORD);
+		driverMetadata.addField(new DataFieldMetadata("key", DataFieldMetadata.INTEGER_FIELD, ";"));
+		driverMetadata.addField(new DataFieldMetadata("value", DataFieldMetadata.STRING_FIELD, ";"));
+
+		slaveMetadata = new DataRecordMetadata("slave", DataRecordMetadata.DELIMITED_RECORD);
+		slaveMetadata.addField(new DataFieldMetadata("key", DataFieldMetadata.INTEGER_FIELD, ";"));
+		slaveMetadata.addField(new DataFieldMetadata("value", DataFieldMetadata.STRING_FIELD, ";"));
+		slaveMetadata.addField(new DataFieldMetadata("padding", DataFieldMetadata.STRING_FIELD, ";"));
+
+		outMetadata = new DataRecordMetadata("out", DataRecordMetadata.DELIMITED_RECORD);
+		outMetadata.addField(new DataFieldMetadata("key", DataFieldMetadata.INTEGER_FIELD, ";"));
+		outMetadata.addField(new DataFieldMetadata("driver", DataFieldMetadata.STRING_FIELD, ";"));
+		outMetadata.addField(new DataFieldMetadata("slave1", DataFieldMetadata.STRING_FIELD, ";"));
+		outMetadata.addField(new DataFieldMetadata("slave2", DataFieldMetadata.STRING_FIELD, ";"));
+	}
+
+	public void testInnerJoin() throws Exception {
+		checkSpillingJoin(Join.INNER, false, 1);
+		checkSpillingJoin(Join.INNER, false, 2);
+	}
+
+	public void testLeftOuterJoin() throws Exception {
+		checkSpillingJoin(Join.LEFT_OUTER, false, 1);
+		checkSpillingJoin(Join.LEFT_OUTER, false, 2);
+	}
+
+	public void testInnerJoinSlaveDuplicates() throws Exception {
+		checkSpillingJoin(Join.INNER, true, 1);
+		checkSpillingJoin(Join.INNER, true, 2);
+	}
+
+	public void testLeftOuterJoinSlaveDuplicates() throws Exception {
+		checkSpillingJoin(Join.LEFT_OUTER, true, 1);
+		checkSpillingJoin(Join.LEFT_OUTER, true, 2);
+	}
+
+	public void testPartitionedBuild() throws Exception {
+		for (Join join : new Join[] { Join.INNER, Join.LEFT_OUTER }) {
+			for (boolean slaveDuplicates : new boolean[] { false, true }) {
+				List<String> expected = runJoin(join, slaveDuplicates, 2, 0);
+				assertFalse(expected.isEmpty());
+				assertEquals(expected, runJoin(join, slaveDuplicates, 2, 0, 4, false, false));
+				assertEquals(expected, runJoin(join, slaveDuplicates, 2, 0, 4, true, false));
+				assertEquals(expected, runJoin(join, slaveDuplicates, 2, 0, 4, true, true));
+				assertEquals(expected, runJoin(join, slaveDuplicates, 2, 0, 1, true, true));
+			}
+		}
+	}
+
+	private void checkSpillingJoin(Join join, boolean slaveDuplicates, int slaveCnt) throws Exception {
+		List<String> expected = runJoin(join, slaveDuplicates, slaveCnt, 0);
+		List<String> actual = runJoin(join, slaveDuplicates, slaveCnt, MEMORY_LIMIT);
+		
+		assertFalse(expected.isEmpty());
+		if (join == Join.LEFT_OUTER) {
+			assertTrue(expected.size() >= DRIVER_COUNT);
+		}
+		// order of output records differs, spilled partitions are joined after the in-memory ones
+		assertEquals(expected.size(), actual.size());
+		assertEquals(expected, actual);
+	}
+
+	/**
+	 * Runs HashJoin with generated input data.
+	 * 
+	 * @return sorted output records in string form
+	 */
+	private List<String> runJoin(Join join, boolean slaveDuplicates, int slaveCnt, int memoryLimit) throws Exception {
+		return runJoin(join, slaveDuplicates, slaveCnt, memoryLimit, 1, false, false);
+	}
+
+	private List<String> runJoin(Join join, boolean slaveDuplicates, int slaveCnt, int memoryLimit,
+			int buildThreads, boolean bloomFilter, boolean offHeapHashTable) throws Exception {
+		TransformationGraph graph = new TransformationGraph("HashJoinTestGraph");
+		Phase phase = new Phase(0);
+		graph.addPhase(phase);
+
+		String[][] keys = new String[slaveCnt][];
+		for (int i = 0; i < slaveCnt; i++) {
+			keys[i] = new String[] { "key" };
+		}
+		HashJoin hashJoin = new HashJoin("TestHashJoin", keys, keys, new JoinTransform(slaveCnt), join, false);
+		hashJoin.setSlaveDuplicates(slaveDuplicates);
+		hashJoin.setMemoryLimit(memoryLimit);
+		hashJoin.setBuildThreads(buildThreads);
+		hashJoin.setBloomFilter(bloomFilter);
+		hashJoin.setOffHeapHashTable(offHeapHashTable);
+		phase.addNode(hashJoin);
+
+		List<Edge> edges = new ArrayList<Edge>();
+		Edge driverEdge = createEdge(graph, edges, "Driver", driverMetadata);
+		hashJoin.addInputPort(0, driverEdge);
+		Edge[] slaveEdges = new Edge[slaveCnt];
+		for (int i = 0; i < slaveCnt; i++) {
+			slaveEdges[i] = createEdge(graph, edges, "Slave" + i, slaveMetadata);
+			hashJoin.addInputPort(1 + i, slaveEdges[i]);
+		}
+		Edge outEdge = createEdge(graph, edges, "Out", outMetadata);
+		hashJoin.addOutputPort(0, outEdge);
+
+		graph.init();
+		graph.preExecute();
+		hashJoin.preExecute();
+		for (Edge edge : edges) {
+			edge.preExecute();
+		}
+
+		writeDriver(driverEdge);
+		for (int i = 0; i < slaveCnt; i++) {
+			writeSlave(slaveEdges[i], i, slaveDuplicates);
+		}
+
+		Context context = ContextProvider.registerNode(hashJoin);
+		try {
+			assertEquals(Result.FINISHED_OK, hashJoin.execute());
+		} finally {
+			ContextProvider.unregister(context);
+		}
+
+		List<String> result = new ArrayList<String>();
+		DataRecord record = DataRecordFactory.newRecord(outMetadata);
+		while (outEdge.readRecord(record) != null) {
+			result.add(record.getField(0) + "|" + record.getField(1) + "|" + record.getField(2) + "|" + record.getField(3));
+		}
+		Collections.sort(result);
+		
+		hashJoin.postExecute();
+		graph.free();
+		return result;
+	}
+
+	private static Edge createEdge(TransformationGraph graph, List<Edge> edges, String id, DataRecordMetadata metadata) throws Exception {
+		Edge edge = new Edge(id, metadata);
+		edge.setEdgeType(EdgeTypeEnum.BUFFERED);
+		graph.addEdge(edge);
+		edges.add(edge);
+		return edge;
+	}
+
+	/**
+	 * Driver keys are 0 .. DRIVER_COUNT - 1, keys greater than or equal to DRIVER_COUNT - MISSING_KEYS have no slaves.
+	 */
+	private void writeDriver(Edge edge) throws Exception {
+		DataRecord record = DataRecordFactory.newRecord(driverMetadata);
+		for (int key = 0; key < DRIVER_COUNT; key++) {
+			record.getField(0).setValue(key);
+			record.getField(1).setValue("d" + key);
+			edge.writeRecord(record);
+		}
+		edge.eof();
+	}
+
+	/**
+	 * Slave with index i misses every (i + 2)-th key. If duplicates are enabled, key k has (k % 3) + 1 slave records.
+	 */
+	private void writeSlave(Edge edge, int slaveIdx, boolean duplicates) throws Exception {
+		DataRecord record = DataRecordFactory.newRecord(slaveMetadata);
+		record.getField(2).setValue(PADDING);
+		for (int key = 0; key < DRIVER_COUNT - MISSING_KEYS; key++) {
+			if (key % (slaveIdx + 2) == 0) {
+				continue;
+			}
+			int count = duplicates ? key % 3 + 1 : 1;
+			for (int i = 0; i < count; i++) {
+				record.getField(0).setValue(key);
+				record.getField(1).setValue("s" + slaveIdx + "_" + key + "_" + i);
+				edge.writeRecord(record);
+			}
+		}
+		// slave records without driver
+		for (int key = DRIVER_COUNT; key < DRIVER_COUNT + MISSING_KEYS; key++) {
+			record.getField(0).setValue(key);
+			record.getField(1).setValue("s" + slaveIdx + "_" + key);
+			edge.writeRecord(record);
+		}
+		edge.eof();
+	}
+
+	/**
+	 * Copies key, driver value and values of all slaves to the output record.
+	 */
+	private static class JoinTransform extends DataRecordTransform {
+		private final int slaveCnt;
+
+		public JoinTransform(int slaveCnt) {
+			this.slaveCnt = slaveCnt;
+		}
+
+		@Override
+		public int transform(DataRecord[] inputRecords, DataRecord[] outputRecords) throws TransformException {
+			outputRecords[0].getField(0).setValue(inputRecords[0].getField(0));
+			outputRecords[0].getField(1).setValue(inputRecords[0].getField(1));
+			for (int i = 0; i < slaveCnt; i++) {
+				outputRecords[0].getField(2 + i).setValue(inputRecords[1 + i].getField(1).getValue());
+			}
+			return ALL;
+		}
+	}
+
+}
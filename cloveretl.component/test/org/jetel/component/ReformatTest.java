@@ -0,0 +1,220 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jetel.data.DataRecord;
+import org.jetel.data.DataRecordFactory;
+import org.jetel.data.Defaults;
+import org.jetel.data.RecordBatch;
+import org.jetel.enums.EdgeTypeEnum;
+import org.jetel.exception.TransformException;
+import org.jetel.graph.ContextProvider;
+import org.jetel.graph.ContextProvider.Context;
+import org.jetel.graph.Edge;
+import org.jetel.graph.Phase;
+import org.jetel.graph.Result;
+import org.jetel.graph.TransformationGraph;
+import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.metadata.DataRecordMetadata;
+import org.jetel.test.CloverTestCase;
+
+/**
+ * Checks that Reformat with two output ports writes the records in the order they were produced,
+ * in the record-by-record mode as well as in the batch mode.
+ * 
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public class ReformatTest extends CloverTestCase {
+
+	private static final int RECORD_COUNT = 1000;
+
+	private DataRecordMetadata metadata;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		initEngine();
+
+		metadata = new DataRecordMetadata("record", DataRecordMetadata.DELIMITED_RECORD);
+		metadata.addField(new DataFieldMetadata("id", DataFieldMetadata.INTEGER_FIELD, "\n"));
+	}
+
+	public void testOutputOrder() throws Exception {
+		List<String> expected = new ArrayList<String>();
+		for (int id = 0; id < RECORD_COUNT; id++) {
+			int port = getOutputPort(id);
+			if (port == RecordTransform.ALL) {
+				expected.add("0:" + id);
+				expected.add("1:" + id);
+			} else {
+				expected.add(port + ":" + id);
+			}
+		}
+		for (int batchSize : new int[] { 1, 16, 256 }) {
+			List<String> written = new ArrayList<String>();
+			assertEquals(Result.FINISHED_OK, runReformat(batchSize, -1, written));
+			assertEquals("Batch size " + batchSize, expected, written);
+		}
+	}
+
+	public void testOutputBeforeFailure() throws Exception {
+		int failingId = 37;
+		List<String> expected = new ArrayList<String>();
+		runReformat(1, failingId, expected);
+		assertFalse(expected.isEmpty());
+		for (int batchSize : new int[] { 16, 256 }) {
+			List<String> written = new ArrayList<String>();
+			runReformat(batchSize, failingId, written);
+			assertEquals("Batch size " + batchSize, expected, written);
+		}
+	}
+
+	/**
+	 * ALL for every fifth record, port 1 for other records divisible by three, port 0 for the rest.
+	 */
+	private static int getOutputPort(int id) {
+		if (id % 5 == 0) {
+			return RecordTransform.ALL;
+		}
+		return id % 3 == 0 ? 1 : 0;
+	}
+
+	/**
+	 * Runs Reformat with two output ports.
+	 * 
+	 * @param batchSize value of {@link Defaults.Graph#RECORD_BATCH_SIZE}
+	 * @param failingId id of the record the transformation fails on, -1 for none
+	 * @param written list to which output port and id of the written records are added
+	 * @return result of the component or null if the transformation failed
+	 */
+	private Result runReformat(int batchSize, int failingId, List<String> written) throws Exception {
+		int oldBatchSize = Defaults.Graph.RECORD_BATCH_SIZE;
+		Defaults.Graph.RECORD_BATCH_SIZE = batchSize;
+		try {
+			TransformationGraph graph = new TransformationGraph("ReformatTestGraph");
+			Phase phase = new Phase(0);
+			graph.addPhase(phase);
+
+			Reformat reformat = new Reformat("TestReformat", new RoutingTransform(failingId));
+			phase.addNode(reformat);
+
+			List<Edge> edges = new ArrayList<Edge>();
+			Edge inEdge = new Edge("In", metadata);
+			edges.add(inEdge);
+			reformat.addInputPort(0, inEdge);
+			for (int i = 0; i < 2; i++) {
+				Edge outEdge = new LoggingEdge("Out" + i, metadata, i, written);
+				edges.add(outEdge);
+				reformat.addOutputPort(i, outEdge);
+			}
+			for (Edge edge : edges) {
+				edge.setEdgeType(EdgeTypeEnum.BUFFERED);
+				graph.addEdge(edge);
+			}
+
+			graph.init();
+			graph.preExecute();
+			reformat.preExecute();
+			for (Edge edge : edges) {
+				edge.preExecute();
+			}
+
+			DataRecord record = DataRecordFactory.newRecord(metadata);
+			for (int id = 0; id < RECORD_COUNT; id++) {
+				record.getField(0).setValue(id);
+				inEdge.writeRecord(record);
+			}
+			inEdge.eof();
+
+			Result result = null;
+			Context context = ContextProvider.registerNode(reformat);
+			try {
+				result = reformat.execute();
+			} catch (TransformException e) {
+				assertTrue(failingId >= 0);
+			} finally {
+				ContextProvider.unregister(context);
+			}
+
+			reformat.postExecute();
+			graph.free();
+			return result;
+		} finally {
+			Defaults.Graph.RECORD_BATCH_SIZE = oldBatchSize;
+		}
+	}
+
+	/**
+	 * Routes records according to {@link ReformatTest#getOutputPort(int)}.
+	 */
+	private static class RoutingTransform extends DataRecordTransform {
+		private final int failingId;
+
+		public RoutingTransform(int failingId) {
+			this.failingId = failingId;
+		}
+
+		@Override
+		public int transform(DataRecord[] inputRecords, DataRecord[] outputRecords) throws TransformException {
+			int id = (Integer) inputRecords[0].getField(0).getValue();
+			if (id == failingId) {
+				throw new TransformException("Failing record " + id);
+			}
+			outputRecords[0].getField(0).setValue(id);
+			outputRecords[1].getField(0).setValue(id);
+			return getOutputPort(id);
+		}
+	}
+
+	/**
+	 * Edge which adds its port and the id of each written record to a list shared by all output edges.
+	 */
+	private static class LoggingEdge extends Edge {
+		private final int port;
+		private final List<String> written;
+		private final DataRecord record;
+
+		public LoggingEdge(String id, DataRecordMetadata metadata, int port, List<String> written) {
+			super(id, metadata);
+			this.port = port;
+			this.written = written;
+			this.record = DataRecordFactory.newRecord(metadata);
+		}
+
+		@Override
+		public void writeRecord(DataRecord record) throws IOException, InterruptedException {
+			written.add(port + ":" + record.getField(0).getValue());
+			super.writeRecord(record);
+		}
+
+		@Override
+		public void writeRecordBatch(RecordBatch batch) throws IOException, InterruptedException {
+			for (int i = 0; i < batch.getSelectedCount(); i++) {
+				batch.deserialize(batch.getSelectedIndex(i), record);
+				written.add(port + ":" + record.getField(0).getValue());
+			}
+			super.writeRecordBatch(batch);
+		}
+	}
+
+}
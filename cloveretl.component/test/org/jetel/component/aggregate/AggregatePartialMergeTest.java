@@ -0,0 +1,324 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.component.aggregate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.jetel.data.DataField;
+import org.jetel.data.DataRecord;
+import org.jetel.data.DataRecordFactory;
+import org.jetel.data.RecordKey;
+import org.jetel.data.primitive.Numeric;
+import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.metadata.DataFieldType;
+import org.jetel.metadata.DataRecordMetadata;
+import org.jetel.test.CloverTestCase;
+
+/**
+ * Aggregates split input in {@link AggregationMode#PARTIAL} mode, merges the intermediate results
+ * in {@link AggregationMode#MERGE} mode and compares the results with {@link AggregationMode#COMPLETE} mode.
+ * 
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public class AggregatePartialMergeTest extends CloverTestCase {
+
+	/** output field, function, input field; all mergeable functions */
+	private static final String[][] FUNCTIONS = {
+		{ "count", "count", null },
+		{ "countNonNull", "countnonnull", "i" },
+		{ "sumI", "sum", "i" },
+		{ "sumL", "sum", "l" },
+		{ "sumN", "sum", "n" },
+		{ "sumIN", "sum", "i" },
+		{ "sumDec", "sum", "dec" },
+		{ "avgI", "avg", "i" },
+		{ "avgN", "avg", "n" },
+		{ "avgDec", "avg", "dec" },
+		{ "stdDevI", "stddev", "i" },
+		{ "stdDevN", "stddev", "n" },
+		{ "minI", "min", "i" },
+		{ "maxI", "max", "i" },
+		{ "minN", "min", "n" },
+		{ "maxN", "max", "n" },
+		{ "minS", "min", "s" },
+		{ "maxS", "max", "s" },
+		{ "minDec", "min", "dec" },
+		{ "maxDec", "max", "dec" },
+		{ "countUniqueS", "countunique", "s" },
+		{ "countUniqueI", "countunique", "i" },
+		{ "medianI", "median", "i" },
+		{ "medianN", "median", "n" },
+		{ "medianDec", "median", "dec" },
+		{ "modusM", "modus", "m" }
+	};
+
+	private static final String EMPTY_GROUP = "empty";
+	private static final String SINGLE_PART_GROUP = "single";
+
+	private DataRecordMetadata inMetadata;
+	private DataRecordMetadata partialMetadata;
+	private DataRecordMetadata outMetadata;
+	private Random random;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		initEngine();
+		random = new Random(4321);
+
+		inMetadata = new DataRecordMetadata("in", DataRecordMetadata.DELIMITED_RECORD);
+		inMetadata.addField(new DataFieldMetadata("key", DataFieldMetadata.STRING_FIELD, ";"));
+		inMetadata.addField(new DataFieldMetadata("i", DataFieldMetadata.INTEGER_FIELD, ";"));
+		inMetadata.addField(new DataFieldMetadata("l", DataFieldMetadata.LONG_FIELD, ";"));
+		inMetadata.addField(new DataFieldMetadata("n", DataFieldMetadata.NUMERIC_FIELD, ";"));
+		inMetadata.addField(createDecimalField("dec", 10, 3));
+		inMetadata.addField(new DataFieldMetadata("s", DataFieldMetadata.STRING_FIELD, ";"));
+		inMetadata.addField(new DataFieldMetadata("m", DataFieldMetadata.INTEGER_FIELD, ";"));
+
+		partialMetadata = new DataRecordMetadata("partial", DataRecordMetadata.DELIMITED_RECORD);
+		partialMetadata.addField(new DataFieldMetadata("key", DataFieldMetadata.STRING_FIELD, ";"));
+		for (int i = 0; i < FUNCTIONS.length; i++) {
+			partialMetadata.addField(new DataFieldMetadata("p" + i, DataFieldMetadata.BYTE_FIELD, ";"));
+		}
+
+		// decimal outputs have different length and scale than the decimal input
+		outMetadata = new DataRecordMetadata("out", DataRecordMetadata.DELIMITED_RECORD);
+		outMetadata.addField(new DataFieldMetadata("key", DataFieldMetadata.STRING_FIELD, ";"));
+		for (String[] function : FUNCTIONS) {
+			String name = function[0];
+			if (name.endsWith("Dec")) {
+				outMetadata.addField(createDecimalField(name, 12, 2));
+			} else if (name.endsWith("S") && !name.startsWith("count")) {
+				outMetadata.addField(new DataFieldMetadata(name, DataFieldMetadata.STRING_FIELD, ";"));
+			} else if (name.endsWith("L")) {
+				outMetadata.addField(new DataFieldMetadata(name, DataFieldMetadata.LONG_FIELD, ";"));
+			} else if (name.endsWith("N") || name.startsWith("avg") || name.startsWith("stdDev")) {
+				outMetadata.addField(new DataFieldMetadata(name, DataFieldMetadata.NUMERIC_FIELD, ";"));
+			} else {
+				outMetadata.addField(new DataFieldMetadata(name, DataFieldMetadata.INTEGER_FIELD, ";"));
+			}
+		}
+	}
+
+	public void testPartialAndMerge() throws Exception {
+		List<DataRecord> input = generateInput(3000, 30, 0.1);
+		for (DataRecord record : generateInput(50, 1, 1.0)) {
+			record.getField("key").setValue(EMPTY_GROUP);
+			input.add(record);
+		}
+		List<DataRecord> singlePartGroup = generateInput(20, 1, 0.1);
+		for (DataRecord record : singlePartGroup) {
+			record.getField("key").setValue(SINGLE_PART_GROUP);
+		}
+
+		// uneven parts, one of them is empty and one of the groups is only in a single part
+		List<List<DataRecord>> parts = new ArrayList<List<DataRecord>>();
+		parts.add(input.subList(0, 300));
+		parts.add(new ArrayList<DataRecord>());
+		List<DataRecord> part = new ArrayList<DataRecord>(input.subList(300, 1800));
+		part.addAll(singlePartGroup);
+		parts.add(part);
+		parts.add(input.subList(1800, input.size()));
+		
+		List<DataRecord> allInput = new ArrayList<DataRecord>(input);
+		allInput.addAll(singlePartGroup);
+
+		Map<String, DataRecord> expected = aggregateComplete(allInput);
+		Map<String, DataRecord> result = aggregatePartialAndMerge(parts, true);
+		assertEquals(32, expected.size());
+		assertResults(expected, result);
+
+		DataRecord emptyGroup = result.get(EMPTY_GROUP);
+		assertEquals(50, emptyGroup.getField("count").getValue());
+		assertEquals(0, emptyGroup.getField("countNonNull").getValue());
+		assertTrue(emptyGroup.getField("sumN").isNull());
+		assertTrue(emptyGroup.getField("avgDec").isNull());
+		assertTrue(emptyGroup.getField("minS").isNull());
+		assertTrue(emptyGroup.getField("medianDec").isNull());
+		assertTrue(emptyGroup.getField("modusM").isNull());
+	}
+
+	public void testDecimalScale() throws Exception {
+		List<DataRecord> input = generateInput(2, 1, 0);
+		input.get(0).getField("dec").setValue(new BigDecimal("1.25"));
+		input.get(1).getField("dec").setValue(new BigDecimal("12.5"));
+		List<List<DataRecord>> parts = new ArrayList<List<DataRecord>>();
+		parts.add(input.subList(0, 1));
+		parts.add(input.subList(1, 2));
+
+		Map<String, DataRecord> expected = aggregateComplete(input);
+		Map<String, DataRecord> result = aggregatePartialAndMerge(parts, false);
+		assertResults(expected, result);
+
+		DataRecord record = result.values().iterator().next();
+		assertEquals(0, new BigDecimal("1.25").compareTo(((Numeric) record.getField("minDec")).getBigDecimal()));
+		assertEquals(0, new BigDecimal("12.5").compareTo(((Numeric) record.getField("maxDec")).getBigDecimal()));
+		assertEquals(0, new BigDecimal("13.75").compareTo(((Numeric) record.getField("sumDec")).getBigDecimal()));
+	}
+
+	private static DataFieldMetadata createDecimalField(String name, int length, int scale) {
+		DataFieldMetadata field = new DataFieldMetadata(name, DataFieldMetadata.DECIMAL_FIELD, ";");
+		field.setProperty(DataFieldMetadata.LENGTH_ATTR, Integer.toString(length));
+		field.setProperty(DataFieldMetadata.SCALE_ATTR, Integer.toString(scale));
+		return field;
+	}
+
+	/**
+	 * NUMBER fields are compared with a tolerance, because the intermediate results of stddev() are merged
+	 * in different order than the records are aggregated.
+	 */
+	private void assertResults(Map<String, DataRecord> expected, Map<String, DataRecord> result) {
+		assertEquals(expected.keySet(), result.keySet());
+		for (Map.Entry<String, DataRecord> entry : expected.entrySet()) {
+			DataRecord expectedRecord = entry.getValue();
+			DataRecord resultRecord = result.get(entry.getKey());
+			for (int i = 0; i < expectedRecord.getNumFields(); i++) {
+				DataField expectedField = expectedRecord.getField(i);
+				DataField resultField = resultRecord.getField(i);
+				String message = entry.getKey() + "." + expectedField.getMetadata().getName();
+				if (expectedField.getMetadata().getDataType() == DataFieldType.NUMBER
+						&& !expectedField.isNull() && !resultField.isNull()) {
+					double expectedValue = ((Numeric) expectedField).getDouble();
+					assertEquals(message, expectedValue, ((Numeric) resultField).getDouble(), 1e-9 * Math.max(1, Math.abs(expectedValue)));
+				} else {
+					assertEquals(message, toString(expectedField), toString(resultField));
+				}
+			}
+		}
+	}
+
+	private Map<String, DataRecord> aggregateComplete(List<DataRecord> input) throws Exception {
+		StringBuilder mapping = new StringBuilder("$key:=$key;");
+		for (String[] function : FUNCTIONS) {
+			mapping.append('$').append(function[0]).append(":=").append(function[1]).append('(');
+			if (function[2] != null) {
+				mapping.append('$').append(function[2]);
+			}
+			mapping.append(");");
+		}
+		AggregateProcessor processor = createProcessor(mapping.toString(), inMetadata, outMetadata, AggregationMode.COMPLETE);
+		return toMap(aggregate(processor, input, outMetadata));
+	}
+
+	/**
+	 * @param nullPartialResults whether a record with NULL intermediate results is added to the input of the merge
+	 */
+	private Map<String, DataRecord> aggregatePartialAndMerge(List<List<DataRecord>> parts, boolean nullPartialResults) throws Exception {
+		StringBuilder partialMapping = new StringBuilder("$key:=$key;");
+		StringBuilder mergeMapping = new StringBuilder("$key:=$key;");
+		for (int i = 0; i < FUNCTIONS.length; i++) {
+			String[] function = FUNCTIONS[i];
+			partialMapping.append("$p").append(i).append(":=").append(function[1]).append('(');
+			if (function[2] != null) {
+				partialMapping.append('$').append(function[2]);
+			}
+			partialMapping.append(");");
+			mergeMapping.append('$').append(function[0]).append(":=").append(function[1]).append("($p").append(i).append(");");
+		}
+
+		List<DataRecord> partialResults = new ArrayList<DataRecord>();
+		for (List<DataRecord> part : parts) {
+			AggregateProcessor processor = createProcessor(partialMapping.toString(), inMetadata, partialMetadata, AggregationMode.PARTIAL);
+			partialResults.addAll(aggregate(processor, part, partialMetadata));
+		}
+		if (nullPartialResults) {
+			// NULL intermediate results are skipped
+			DataRecord record = DataRecordFactory.newRecord(partialMetadata);
+			record.getField("key").setValue(partialResults.get(0).getField("key").toString());
+			partialResults.add(record);
+		}
+
+		AggregateProcessor processor = createProcessor(mergeMapping.toString(), partialMetadata, outMetadata, AggregationMode.MERGE);
+		return toMap(aggregate(processor, partialResults, outMetadata));
+	}
+
+	private AggregateProcessor createProcessor(String mapping, DataRecordMetadata in, DataRecordMetadata out, AggregationMode mode)
+	throws Exception {
+		RecordKey recordKey = new RecordKey(new String[] { "key" }, in);
+		recordKey.init();
+		return new AggregateProcessor(mapping, false, recordKey, false, in, out, null, mode);
+	}
+
+	/**
+	 * Aggregates unsorted input.
+	 * 
+	 * @return copies of the output records
+	 */
+	private List<DataRecord> aggregate(AggregateProcessor processor, Collection<DataRecord> input, DataRecordMetadata out)
+	throws Exception {
+		for (DataRecord record : input) {
+			processor.addRecord(record);
+		}
+		List<DataRecord> result = new ArrayList<DataRecord>();
+		DataRecord outRecord = DataRecordFactory.newRecord(out);
+		for (Iterator<DataRecord> it = processor.getUnsortedAggregationOutput(outRecord); it.hasNext();) {
+			result.add(it.next().duplicate());
+			outRecord.reset();
+		}
+		return result;
+	}
+
+	private static Map<String, DataRecord> toMap(List<DataRecord> records) {
+		Map<String, DataRecord> result = new TreeMap<String, DataRecord>();
+		for (DataRecord record : records) {
+			assertNull(result.put(record.getField("key").toString(), record));
+		}
+		return result;
+	}
+
+	private static String toString(DataField field) {
+		return field.isNull() ? "null" : field.toString();
+	}
+
+	/**
+	 * Values of the number fields are multiples of 0.25, so their sums do not depend on the order of addition.
+	 * Most of the values of the field <code>m</code> are equal to the key index, so the modus is unique.
+	 * 
+	 * @param nullRatio probability of NULL value of each non-key field
+	 */
+	private List<DataRecord> generateInput(int count, int keys, double nullRatio) {
+		List<DataRecord> input = new ArrayList<DataRecord>(count);
+		for (int i = 0; i < count; i++) {
+			DataRecord record = DataRecordFactory.newRecord(inMetadata);
+			int key = random.nextInt(keys);
+			record.getField("key").setValue("k" + key);
+			record.getField("i").setValue(random.nextInt(2000) - 1000);
+			record.getField("l").setValue(random.nextLong() >> 24);
+			record.getField("n").setValue((random.nextInt(4000) - 2000) / 4.0);
+			record.getField("dec").setValue((random.nextInt(4000) - 2000) / 4.0);
+			record.getField("s").setValue("s" + random.nextInt(10));
+			record.getField("m").setValue(random.nextDouble() < 0.7 ? key : 100 + random.nextInt(100));
+			for (int field = 1; field < record.getNumFields(); field++) {
+				if (random.nextDouble() < nullRatio) {
+					record.getField(field).setNull(true);
+				}
+			}
+			input.add(record);
+		}
+		return input;
+	}
+
+}
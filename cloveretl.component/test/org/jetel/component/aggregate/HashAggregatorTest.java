@@ -0,0 +1,307 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.component.aggregate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.jetel.data.DataField;
+import org.jetel.data.DataRecord;
+import org.jetel.data.DataRecordFactory;
+import org.jetel.data.RecordKey;
+import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.metadata.DataRecordMetadata;
+import org.jetel.test.CloverTestCase;
+
+/**
+ * Compares results of {@link HashAggregator} (unsorted input) with results of the generic aggregate
+ * functions, which are used for sorted input.
+ * 
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public class HashAggregatorTest extends CloverTestCase {
+
+	private static final String MAPPING = "$key:=$key;$count:=count();$countNonNull:=countnonnull($i);"
+			+ "$sumI:=sum($i);$sumL:=sum($l);$sumN:=sum($n);$sumIN:=sum($i);$avgI:=avg($i);$avgN:=avg($n);"
+			+ "$minI:=min($i);$maxI:=max($i);$minL:=min($l);$maxL:=max($l);"
+			+ "$minN:=min($n);$maxN:=max($n);$minD:=min($d);$maxD:=max($d);";
+
+	private DataRecordMetadata inMetadata;
+	private DataRecordMetadata outMetadata;
+	private Random random;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		initEngine();
+		random = new Random(1234);
+
+		inMetadata = new DataRecordMetadata("in", DataRecordMetadata.DELIMITED_RECORD);
+		inMetadata.addField(new DataFieldMetadata("key", DataFieldMetadata.STRING_FIELD, ";"));
+		inMetadata.addField(new DataFieldMetadata("i", DataFieldMetadata.INTEGER_FIELD, ";"));
+		inMetadata.addField(new DataFieldMetadata("l", DataFieldMetadata.LONG_FIELD, ";"));
+		inMetadata.addField(new DataFieldMetadata("n", DataFieldMetadata.NUMERIC_FIELD, ";"));
+		inMetadata.addField(new DataFieldMetadata("d", DataFieldMetadata.DATE_FIELD, ";"));
+		inMetadata.addField(new DataFieldMetadata("dec", DataFieldMetadata.DECIMAL_FIELD, ";"));
+
+		outMetadata = new DataRecordMetadata("out", DataRecordMetadata.DELIMITED_RECORD);
+		outMetadata.addField(new DataFieldMetadata("key", DataFieldMetadata.STRING_FIELD, ";"));
+		outMetadata.addField(new DataFieldMetadata("count", DataFieldMetadata.INTEGER_FIELD, ";"));
+		outMetadata.addField(new DataFieldMetadata("countNonNull", DataFieldMetadata.INTEGER_FIELD, ";"));
+		outMetadata.addField(new DataFieldMetadata("sumI", DataFieldMetadata.INTEGER_FIELD, ";"));
+		outMetadata.addField(new DataFieldMetadata("sumL", DataFieldMetadata.LONG_FIELD, ";"));
+		outMetadata.addField(new DataFieldMetadata("sumN", DataFieldMetadata.NUMERIC_FIELD, ";"));
+		outMetadata.addField(new DataFieldMetadata("sumIN", DataFieldMetadata.NUMERIC_FIELD, ";"));
+		outMetadata.addField(new DataFieldMetadata("avgI", DataFieldMetadata.NUMERIC_FIELD, ";"));
+		outMetadata.addField(new DataFieldMetadata("avgN", DataFieldMetadata.NUMERIC_FIELD, ";"));
+		outMetadata.addField(new DataFieldMetadata("minI", DataFieldMetadata.INTEGER_FIELD, ";"));
+		outMetadata.addField(new DataFieldMetadata("maxI", DataFieldMetadata.INTEGER_FIELD, ";"));
+		outMetadata.addField(new DataFieldMetadata("minL", DataFieldMetadata.LONG_FIELD, ";"));
+		outMetadata.addField(new DataFieldMetadata("maxL", DataFieldMetadata.LONG_FIELD, ";"));
+		outMetadata.addField(new DataFieldMetadata("minN", DataFieldMetadata.NUMERIC_FIELD, ";"));
+		outMetadata.addField(new DataFieldMetadata("maxN", DataFieldMetadata.NUMERIC_FIELD, ";"));
+		outMetadata.addField(new DataFieldMetadata("minD", DataFieldMetadata.DATE_FIELD, ";"));
+		outMetadata.addField(new DataFieldMetadata("maxD", DataFieldMetadata.DATE_FIELD, ";"));
+		outMetadata.addField(new DataFieldMetadata("sumDec", DataFieldMetadata.DECIMAL_FIELD, ";"));
+		outMetadata.addField(new DataFieldMetadata("first", DataFieldMetadata.INTEGER_FIELD, ";"));
+	}
+
+	public void testCompareWithGenericFunctions() throws Exception {
+		List<DataRecord> input = generateInput(20000, 500, 0.1);
+		AggregateProcessor processor = createProcessor(MAPPING, false, true);
+		assertTrue(processor.isMemoryLimitSupported());
+
+		assertEquals(aggregateSorted(MAPPING, input), aggregate(processor, input));
+	}
+
+	public void testOnlyNulls() throws Exception {
+		List<DataRecord> input = generateInput(100, 10, 1.0);
+		AggregateProcessor processor = createProcessor(MAPPING, false, true);
+		assertTrue(processor.isMemoryLimitSupported());
+
+		List<String> result = aggregate(processor, input);
+		assertEquals(aggregateSorted(MAPPING, input), result);
+		assertEquals(10, result.size());
+	}
+
+	public void testSpilling() throws Exception {
+		List<DataRecord> input = generateInput(50000, 20000, 0.1);
+		List<String> expected = aggregate(createProcessor(MAPPING, false, true), input);
+
+		// empty table itself takes more than the half of the limit, so the groups are spilled many times
+		// and the partitions are spilled again when they are merged
+		AggregateProcessor processor = createProcessor(MAPPING, false, true);
+		processor.setMemoryLimit(100000);
+		assertEquals(expected, aggregate(processor, input));
+		
+		// the processor can be reused after reset
+		processor.reset();
+		assertEquals(expected, aggregate(processor, input));
+	}
+
+	public void testNullKeys() throws Exception {
+		List<DataRecord> input = generateInput(1000, 10, 0.1);
+		for (int i = 0; i < 50; i++) {
+			input.get(i * 20).getField("key").setNull(true);
+		}
+		String mapping = "$key:=$key;$count:=count();";
+
+		// NULLs are not equal, each record with NULL key is separate group
+		List<String> result = aggregate(createProcessor(mapping, false, false), input);
+		assertEquals(10 + 50, result.size());
+		int nullGroups = 0;
+		for (String group : result) {
+			if (group.startsWith("null|")) {
+				assertEquals("null|1", group);
+				nullGroups++;
+			}
+		}
+		assertEquals(50, nullGroups);
+
+		// NULLs are equal
+		result = aggregate(createProcessor(mapping, false, true), input);
+		assertEquals(10 + 1, result.size());
+		assertTrue(result.contains("null|50"));
+	}
+
+	public void testIntegerOverflow() throws Exception {
+		checkOverflow("$key:=$key;$sumI:=sum($i);", "i", Integer.MAX_VALUE);
+		checkOverflow("$key:=$key;$sumI:=sum($i);", "i", Integer.MIN_VALUE + 1);
+		checkOverflow("$key:=$key;$sumL:=sum($l);", "l", Long.MAX_VALUE);
+		checkOverflow("$key:=$key;$sumL:=sum($l);", "l", Long.MIN_VALUE + 1);
+	}
+
+	public void testUnsupportedFunctionsAndTypes() throws Exception {
+		List<DataRecord> input = generateInput(5000, 100, 0.1);
+
+		// function which is not supported by primitive accumulators
+		String mapping = "$key:=$key;$sumI:=sum($i);$first:=first($i);";
+		AggregateProcessor processor = createProcessor(mapping, false, true);
+		assertFalse(processor.isMemoryLimitSupported());
+		assertEquals(aggregateSorted(mapping, input), aggregate(processor, input));
+
+		// decimal type
+		mapping = "$key:=$key;$sumI:=sum($i);$sumDec:=sum($dec);";
+		processor = createProcessor(mapping, false, true);
+		assertFalse(processor.isMemoryLimitSupported());
+		assertEquals(aggregateSorted(mapping, input), aggregate(processor, input));
+
+		// sorted input
+		assertFalse(createProcessor(MAPPING, true, true).isMemoryLimitSupported());
+	}
+
+	/**
+	 * Sum of the given value with itself must overflow in both implementations, also if the records are spilled.
+	 */
+	private void checkOverflow(String mapping, String field, Number value) throws Exception {
+		List<DataRecord> input = generateInput(2, 1, 0);
+		for (DataRecord record : input) {
+			record.getField(field).setValue(value);
+		}
+		AggregateProcessor processor = createProcessor(mapping, false, true);
+		assertTrue(processor.isMemoryLimitSupported());
+		assertOverflow(processor, input);
+		
+		// each record is spilled separately, so the overflow happens when the partitions are merged
+		processor = createProcessor(mapping, false, true);
+		processor.setMemoryLimit(1);
+		assertOverflow(processor, input);
+
+		processor = createProcessor(mapping, true, true);
+		assertOverflow(processor, input);
+	}
+
+	private void assertOverflow(AggregateProcessor processor, List<DataRecord> input) throws Exception {
+		try {
+			if (processor.isMemoryLimitSupported()) {
+				aggregate(processor, input);
+			} else {
+				aggregateGroups(processor, Collections.singletonList(input));
+			}
+			fail("Overflow expected");
+		} catch (RuntimeException e) {
+			Throwable cause = e;
+			while (cause != null && !(cause instanceof ArithmeticException)) {
+				cause = cause.getCause();
+			}
+			assertNotNull("Overflow expected, but was " + e, cause);
+		}
+	}
+
+	private AggregateProcessor createProcessor(String mapping, boolean sorted, boolean equalNULLs) throws Exception {
+		RecordKey recordKey = new RecordKey(new String[] { "key" }, inMetadata);
+		recordKey.setEqualNULLs(equalNULLs);
+		recordKey.init();
+		return new AggregateProcessor(mapping, false, recordKey, sorted, inMetadata, outMetadata, null);
+	}
+
+	/**
+	 * Aggregates unsorted input.
+	 * 
+	 * @return sorted results in string form
+	 */
+	private List<String> aggregate(AggregateProcessor processor, List<DataRecord> input) throws Exception {
+		for (DataRecord record : input) {
+			processor.addRecord(record);
+		}
+		List<String> result = new ArrayList<String>();
+		DataRecord outRecord = DataRecordFactory.newRecord(outMetadata);
+		for (Iterator<DataRecord> it = processor.getUnsortedAggregationOutput(outRecord); it.hasNext();) {
+			result.add(toString(it.next()));
+			outRecord.reset();
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	/**
+	 * Aggregates the input sorted by the key with the generic aggregate functions, NULL keys are equal.
+	 */
+	private List<String> aggregateSorted(String mapping, List<DataRecord> input) throws Exception {
+		Map<String, List<DataRecord>> groups = new LinkedHashMap<String, List<DataRecord>>();
+		for (DataRecord record : input) {
+			String key = record.getField("key").isNull() ? null : record.getField("key").toString();
+			List<DataRecord> group = groups.get(key);
+			if (group == null) {
+				group = new ArrayList<DataRecord>();
+				groups.put(key, group);
+			}
+			group.add(record);
+		}
+		return aggregateGroups(createProcessor(mapping, true, true), groups.values());
+	}
+
+	private List<String> aggregateGroups(AggregateProcessor processor, Iterable<List<DataRecord>> groups) throws Exception {
+		List<String> result = new ArrayList<String>();
+		DataRecord outRecord = DataRecordFactory.newRecord(outMetadata);
+		for (List<DataRecord> group : groups) {
+			for (DataRecord record : group) {
+				processor.addRecord(record);
+			}
+			processor.getCurrentSortedAggregationOutput(outRecord);
+			result.add(toString(outRecord));
+			outRecord.reset();
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	private static String toString(DataRecord record) {
+		StringBuilder sb = new StringBuilder();
+		for (DataField field : record) {
+			if (sb.length() > 0) {
+				sb.append('|');
+			}
+			sb.append(field.isNull() ? "null" : field.toString());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Values of the number fields are multiples of 0.25, so their sums do not depend on the order of addition.
+	 * 
+	 * @param nullRatio probability of NULL value of each non-key field
+	 */
+	private List<DataRecord> generateInput(int count, int keys, double nullRatio) {
+		List<DataRecord> input = new ArrayList<DataRecord>(count);
+		for (int i = 0; i < count; i++) {
+			DataRecord record = DataRecordFactory.newRecord(inMetadata);
+			record.getField("key").setValue("k" + random.nextInt(keys));
+			record.getField("i").setValue(random.nextInt(2000) - 1000);
+			record.getField("l").setValue(random.nextLong() >> 24);
+			record.getField("n").setValue((random.nextInt(4000) - 2000) / 4.0);
+			record.getField("d").setValue(new Date(1400000000000L + random.nextInt(1000000000)));
+			record.getField("dec").setValue((random.nextInt(4000) - 2000) / 4.0);
+			for (int field = 1; field < record.getNumFields(); field++) {
+				if (random.nextDouble() < nullRatio) {
+					record.getField(field).setNull(true);
+				}
+			}
+			input.add(record);
+		}
+		return input;
+	}
+
+}
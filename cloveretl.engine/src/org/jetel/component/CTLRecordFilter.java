@@ -22,6 +22,7 @@ import org.jetel.ctl.CTLAbstractTransform;
 import org.jetel.ctl.CTLEntryPoint;
 import org.jetel.ctl.TransformLangExecutorRuntimeException;
 import org.jetel.data.DataRecord;
+import org.jetel.data.RecordBatch;
 import org.jetel.exception.ComponentNotReadyException;
 import org.jetel.exception.TransformException;
 
@@ -36,7 +37,7 @@ import org.jetel.exception.TransformException;
  *
  * @see RecordFilter
  */
-public abstract class CTLRecordFilter extends CTLAbstractTransform implements RecordsFilter {
+public abstract class CTLRecordFilter extends CTLAbstractTransform implements RecordsFilter, RecordBatchFilter {
 
 	/** Input data record used for filtering, or <code>null</code> if not accessible. */
 	private DataRecord[] inputRecords = null;
@@ -87,6 +88,24 @@ public abstract class CTLRecordFilter extends CTLAbstractTransform implements Re
 		return result;
 	}
 
+	@Override
+	public void isValid(RecordBatch batch, DataRecord record, boolean[] result) throws TransformException {
+		tempInputRecords[0] = record;
+		inputRecords = tempInputRecords;
+
+		try {
+			for (int i = 0; i < batch.size(); i++) {
+				batch.deserialize(i, record);
+				result[i] = isValidDelegate();
+			}
+		} catch (ComponentNotReadyException exception) {
+			// the exception may be thrown by lookups, sequences, etc.
+			throw new TransformException("Generated transform class threw an exception!", exception);
+		} finally {
+			inputRecords = null;
+		}
+	}
+
 	/**
 	 * Called by {@link #isValid(DataRecord)} to perform user-specific filtering defined in the CTL transform.
 	 * Has to be overridden by the generated transform class.
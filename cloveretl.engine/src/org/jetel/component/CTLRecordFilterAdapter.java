@@ -23,11 +23,12 @@ import org.jetel.ctl.TransformLangExecutor;
 import org.jetel.ctl.TransformLangExecutorRuntimeException;
 import org.jetel.ctl.ASTnode.CLVFFunctionDeclaration;
 import org.jetel.data.DataRecord;
+import org.jetel.data.RecordBatch;
 import org.jetel.exception.ComponentNotReadyException;
 import org.jetel.exception.TransformException;
 import org.jetel.graph.TransformationGraph;
 
-public class CTLRecordFilterAdapter implements RecordsFilter {
+public class CTLRecordFilterAdapter implements RecordsFilter, RecordBatchFilter {
 
 	public static final String ISVALID_FUNCTION_NAME = "isValid";
 	private static final Object[] EMPTY_ARGUMENTS = new Object[0];
@@ -89,6 +90,25 @@ public class CTLRecordFilterAdapter implements RecordsFilter {
 	public boolean isValid(DataRecord[] records) {
 		// pass source as function parameter, but also as a global record
 		final Object retVal = executor.executeFunction(valid, EMPTY_ARGUMENTS, records, null);
+		return toBoolean(retVal);
+	}
+
+	/**
+	 * The source record is set to the executor once per batch, the records of the batch
+	 * are deserialized into it one by one.
+	 */
+	@Override
+	public void isValid(RecordBatch batch, DataRecord record, boolean[] result) {
+		sourceRec[0] = record;
+		executor.setInputRecords(sourceRec);
+		executor.setOutputRecords(null);
+		for (int i = 0; i < batch.size(); i++) {
+			batch.deserialize(i, record);
+			result[i] = toBoolean(executor.executeFunctionOnCurrentRecords(valid, EMPTY_ARGUMENTS));
+		}
+	}
+
+	private static boolean toBoolean(Object retVal) {
 		if (retVal == null || retVal instanceof Boolean == false) {
 			throw new TransformLangExecutorRuntimeException(ISVALID_FUNCTION_NAME + "() function must return 'boolean'");
 		}
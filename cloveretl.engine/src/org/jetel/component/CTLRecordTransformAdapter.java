@@ -40,13 +40,17 @@ import org.jetel.util.ExceptionUtils;
  * @created June 25, 2006
  * @see org.jetel.component.RecordTransform
  */
-public final class CTLRecordTransformAdapter extends CTLAbstractTransformAdapter implements RecordTransform {
+public final class CTLRecordTransformAdapter extends CTLAbstractTransformAdapter implements RecordBatchTransform {
 
 	private final Object[] onErrorArguments = new Object[2];
 
 	private CLVFFunctionDeclaration transformFunction;
 	private CLVFFunctionDeclaration transformOnErrorFunction;
 
+	/** Records set to the executor by {@link #beginBatch(DataRecord[], DataRecord[])}, <code>null</code> outside of a batch */
+	private DataRecord[] batchInputRecords;
+	private DataRecord[] batchOutputRecords;
+
     /**
      * Constructs a <code>CTLRecordTransformAdapter</code> for a given CTL executor and logger.
      *
@@ -118,7 +122,12 @@ public final class CTLRecordTransformAdapter extends CTLAbstractTransformAdapter
 
 	private int transformImpl(CLVFFunctionDeclaration function, DataRecord[] inputRecords, DataRecord[] outputRecords,
 			Object[] arguments) {
-		Object result = executor.executeFunction(function, arguments, inputRecords, outputRecords);
+		Object result;
+		if (inputRecords == batchInputRecords && outputRecords == batchOutputRecords) {
+			result = executor.executeFunctionOnCurrentRecords(function, arguments);
+		} else {
+			result = executor.executeFunction(function, arguments, inputRecords, outputRecords);
+		}
 
 		if (result == null || result instanceof Integer == false) {
 			throw new TransformLangExecutorRuntimeException(function.getName() + "() function must return 'int'");
@@ -127,6 +136,20 @@ public final class CTLRecordTransformAdapter extends CTLAbstractTransformAdapter
 		return (Integer) result;
 	}
 
+	@Override
+	public void beginBatch(DataRecord[] sources, DataRecord[] target) {
+		executor.setInputRecords(sources);
+		executor.setOutputRecords(target);
+		batchInputRecords = sources;
+		batchOutputRecords = target;
+	}
+
+	@Override
+	public void endBatch() {
+		batchInputRecords = null;
+		batchOutputRecords = null;
+	}
+
 	@Override
 	public void signal(Object signalObject) {
 		// does nothing
@@ -0,0 +1,42 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.component;
+
+import org.jetel.data.DataRecord;
+import org.jetel.data.RecordBatch;
+import org.jetel.exception.TransformException;
+
+/**
+ * Extension of {@link RecordFilter} interface, where filtering is performed
+ * on all records of a {@link RecordBatch} by a single call.
+ * 
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public interface RecordBatchFilter extends RecordFilter {
+
+	/**
+	 * Evaluates the filter for each record of the batch.
+	 * 
+	 * @param batch filtered records
+	 * @param record record instance the records of the batch are deserialized into
+	 * @param result <code>result[i]</code> is set to true if the i-th record of the batch is valid
+	 */
+	void isValid(RecordBatch batch, DataRecord record, boolean[] result) throws TransformException;
+
+}
@@ -0,0 +1,48 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.component;
+
+import org.jetel.data.DataRecord;
+
+/**
+ * Extension of {@link RecordTransform} interface for transformations which can take advantage
+ * of processing records in batches, see {@link org.jetel.data.RecordBatch}.<br>
+ * The component calls {@link #beginBatch(DataRecord[], DataRecord[])} before the records of a batch
+ * are transformed. All subsequent calls of {@link #transform(DataRecord[], DataRecord[])} and
+ * {@link #transformOnError(Exception, DataRecord[], DataRecord[])} until {@link #endBatch()}
+ * get the same arrays, only the content of the records changes.
+ * 
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public interface RecordBatchTransform extends RecordTransform {
+
+	/**
+	 * Called before the records of a batch are transformed.
+	 * 
+	 * @param sources source records used for all records of the batch
+	 * @param target target records used for all records of the batch
+	 */
+	public void beginBatch(DataRecord[] sources, DataRecord[] target);
+
+	/**
+	 * Called after all records of the batch are transformed, even if the transformation failed.
+	 */
+	public void endBatch();
+
+}
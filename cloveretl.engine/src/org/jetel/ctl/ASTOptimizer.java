@@ -0,0 +1,411 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.ctl;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.jetel.ctl.ASTnode.CLVFAddNode;
+import org.jetel.ctl.ASTnode.CLVFAnd;
+import org.jetel.ctl.ASTnode.CLVFArguments;
+import org.jetel.ctl.ASTnode.CLVFBlock;
+import org.jetel.ctl.ASTnode.CLVFComparison;
+import org.jetel.ctl.ASTnode.CLVFConditionalExpression;
+import org.jetel.ctl.ASTnode.CLVFDivNode;
+import org.jetel.ctl.ASTnode.CLVFFunctionCall;
+import org.jetel.ctl.ASTnode.CLVFIIfNode;
+import org.jetel.ctl.ASTnode.CLVFIfStatement;
+import org.jetel.ctl.ASTnode.CLVFIsNullNode;
+import org.jetel.ctl.ASTnode.CLVFLiteral;
+import org.jetel.ctl.ASTnode.CLVFModNode;
+import org.jetel.ctl.ASTnode.CLVFMulNode;
+import org.jetel.ctl.ASTnode.CLVFNVL2Node;
+import org.jetel.ctl.ASTnode.CLVFNVLNode;
+import org.jetel.ctl.ASTnode.CLVFOr;
+import org.jetel.ctl.ASTnode.CLVFStart;
+import org.jetel.ctl.ASTnode.CLVFSubNode;
+import org.jetel.ctl.ASTnode.CLVFUnaryNonStatement;
+import org.jetel.ctl.ASTnode.CLVFWhileStatement;
+import org.jetel.ctl.ASTnode.CastNode;
+import org.jetel.ctl.ASTnode.Node;
+import org.jetel.ctl.ASTnode.SimpleNode;
+import org.jetel.graph.TransformationGraph;
+
+/**
+ * Rewrites validated AST before it is interpreted by {@link TransformLangExecutor}:
+ * <ul>
+ * <li>expressions with literal operands and calls of side-effect free library functions with literal arguments
+ * are evaluated and replaced by a literal (constant folding); expressions which fail are left untouched,
+ * so the error is reported at runtime as before</li>
+ * <li>boolean operators, conditional expressions and <code>iif()</code> with a literal condition are replaced
+ * by the selected operand</li>
+ * <li>statements with a literal condition which are never executed are removed (dead code elimination)</li>
+ * <li>arithmetic and comparison nodes with integer, long or number operands get a {@link TypedOperation},
+ * so the interpreter does not need to branch on the type for each evaluation</li>
+ * </ul>
+ * The optimizer is applied by {@link TLCompiler#compile(java.io.Reader, Class, String)}, see {@link Defaults.CTL#AST_OPTIMIZATION}.
+ * The tree must not be optimized for CTL debugging, the debugger expects statements to match the source code.
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public class ASTOptimizer extends NavigatingVisitor {
+
+	/** Library functions without side effects which always return the same result for the same arguments */
+	private static final Map<String, Set<String>> PURE_FUNCTIONS = new HashMap<String, Set<String>>();
+
+	static {
+		PURE_FUNCTIONS.put("Util", new HashSet<String>(Arrays.asList("getParamValue", "getRawParamValue")));
+		PURE_FUNCTIONS.put("String", new HashSet<String>(Arrays.asList("concat", "upperCase", "lowerCase", "substring",
+				"left", "right", "trim", "length", "replace", "charAt", "isBlank", "indexOf", "countChar", "chop",
+				"reverse", "removeDiacritic", "removeBlankSpace", "translate")));
+		PURE_FUNCTIONS.put("Math", new HashSet<String>(Arrays.asList("sqrt", "log", "log10", "exp", "floor", "round",
+				"ceil", "pow", "pi", "e", "abs", "bitAnd", "bitOr", "bitXor", "bitLShift", "bitRShift", "bitNegate",
+				"bitSet", "bitIsSet", "min", "max", "signum", "cos", "sin", "tan", "toDegrees", "toRadians")));
+	}
+
+	/** Evaluates the constant expressions */
+	private final TransformLangExecutor executor;
+
+	private int foldedExpressions;
+	private int removedStatements;
+	private int typedOperations;
+
+	public ASTOptimizer(TransformLangParser parser, TransformationGraph graph) {
+		this.executor = new TransformLangExecutor(parser, graph);
+	}
+
+	/**
+	 * Optimizes the tree in place.
+	 *
+	 * @param tree root of validated AST (CLVFStart or CLVFStartExpression)
+	 */
+	public void optimize(SimpleNode tree) {
+		tree.jjtAccept(this, null);
+	}
+
+	/**
+	 * @return number of expressions replaced by a literal or by one of their operands
+	 */
+	public int getFoldedExpressions() {
+		return foldedExpressions;
+	}
+
+	/**
+	 * @return number of removed statements and branches
+	 */
+	public int getRemovedStatements() {
+		return removedStatements;
+	}
+
+	/**
+	 * @return number of nodes with {@link TypedOperation}
+	 */
+	public int getTypedOperations() {
+		return typedOperations;
+	}
+
+	@Override
+	public Object visit(CLVFAddNode node, Object data) {
+		super.visit(node, data);
+		if (!foldConstant(node)) {
+			node.setTypedOperation(arithmetic(TransformLangParserConstants.PLUS, node));
+		}
+		return node;
+	}
+
+	@Override
+	public Object visit(CLVFSubNode node, Object data) {
+		super.visit(node, data);
+		if (!foldConstant(node)) {
+			node.setTypedOperation(arithmetic(TransformLangParserConstants.MINUS, node));
+		}
+		return node;
+	}
+
+	@Override
+	public Object visit(CLVFMulNode node, Object data) {
+		super.visit(node, data);
+		if (!foldConstant(node)) {
+			node.setTypedOperation(arithmetic(TransformLangParserConstants.MULTIPLY, node));
+		}
+		return node;
+	}
+
+	@Override
+	public Object visit(CLVFDivNode node, Object data) {
+		super.visit(node, data);
+		if (!foldConstant(node)) {
+			node.setTypedOperation(arithmetic(TransformLangParserConstants.DIVIDE, node));
+		}
+		return node;
+	}
+
+	@Override
+	public Object visit(CLVFModNode node, Object data) {
+		super.visit(node, data);
+		if (!foldConstant(node)) {
+			node.setTypedOperation(arithmetic(TransformLangParserConstants.MODULO, node));
+		}
+		return node;
+	}
+
+	@Override
+	public Object visit(CLVFComparison node, Object data) {
+		super.visit(node, data);
+		switch (node.getOperator()) {
+		case TransformLangParserConstants.REGEX_EQUAL:
+		case TransformLangParserConstants.REGEX_CONTAINS:
+			// evaluation requires the initialized comparison context
+			break;
+		default:
+			if (!foldConstant(node)) {
+				node.setTypedOperation(TypedOperation.comparison(node.getOperator(), node.getOperationType()));
+				if (node.getTypedOperation() != null) {
+					typedOperations++;
+				}
+			}
+		}
+		return node;
+	}
+
+	@Override
+	public Object visit(CLVFUnaryNonStatement node, Object data) {
+		super.visit(node, data);
+		foldConstant(node);
+		return node;
+	}
+
+	@Override
+	public Object visit(CastNode node, Object data) {
+		super.visit(node, data);
+		foldConstant(node);
+		return node;
+	}
+
+	@Override
+	public Object visit(CLVFIsNullNode node, Object data) {
+		super.visit(node, data);
+		foldConstant(node);
+		return node;
+	}
+
+	@Override
+	public Object visit(CLVFNVLNode node, Object data) {
+		super.visit(node, data);
+		foldConstant(node);
+		return node;
+	}
+
+	@Override
+	public Object visit(CLVFNVL2Node node, Object data) {
+		super.visit(node, data);
+		foldConstant(node);
+		return node;
+	}
+
+	@Override
+	public Object visit(CLVFIIfNode node, Object data) {
+		super.visit(node, data);
+		final SimpleNode args = (SimpleNode) node.jjtGetChild(0);
+		final Boolean condition = booleanLiteral(args.jjtGetChild(0));
+		if (condition != null) {
+			replace(node, (SimpleNode) args.jjtGetChild(condition ? 1 : 2));
+		}
+		return node;
+	}
+
+	@Override
+	public Object visit(CLVFConditionalExpression node, Object data) {
+		super.visit(node, data);
+		final Boolean condition = booleanLiteral(node.jjtGetChild(0));
+		if (condition != null) {
+			replace(node, (SimpleNode) node.jjtGetChild(condition ? 1 : 2));
+		}
+		return node;
+	}
+
+	@Override
+	public Object visit(CLVFAnd node, Object data) {
+		super.visit(node, data);
+		final Boolean lhs = booleanLiteral(node.jjtGetChild(0));
+		if (lhs != null) {
+			// false && x -> false, true && x -> x
+			replace(node, (SimpleNode) node.jjtGetChild(lhs ? 1 : 0));
+		}
+		return node;
+	}
+
+	@Override
+	public Object visit(CLVFOr node, Object data) {
+		super.visit(node, data);
+		final Boolean lhs = booleanLiteral(node.jjtGetChild(0));
+		if (lhs != null) {
+			// true || x -> true, false || x -> x
+			replace(node, (SimpleNode) node.jjtGetChild(lhs ? 0 : 1));
+		}
+		return node;
+	}
+
+	@Override
+	public Object visit(CLVFFunctionCall node, Object data) {
+		super.visit(node, data);
+		if (node.isExternal() && executor.getGraph() != null) {
+			final Set<String> functions = PURE_FUNCTIONS.get(node.getExternalFunction().getLibrary().getName());
+			if (functions != null && functions.contains(node.getExternalFunction().getName())) {
+				foldConstant(node);
+			}
+		}
+		return node;
+	}
+
+	@Override
+	public Object visit(CLVFIfStatement node, Object data) {
+		super.visit(node, data);
+		final Boolean condition = booleanLiteral(node.jjtGetChild(0));
+		if (condition != null && node.jjtGetNumChildren() > 2) {
+			// the branches keep their scopes, the statement is removed by the enclosing block if possible
+			if (!condition) {
+				node.jjtAddChild(literal((SimpleNode) node.jjtGetChild(0), Boolean.TRUE), 0);
+				node.jjtGetChild(0).jjtSetParent(node);
+				node.jjtAddChild(node.jjtGetChild(2), 1);
+				node.setThenScope(node.getElseScope());
+			}
+			node.removeChild(2);
+			node.setElseScope(null);
+			removedStatements++;
+		}
+		return node;
+	}
+
+	@Override
+	public Object visit(CLVFBlock node, Object data) {
+		super.visit(node, data);
+		removeDeadStatements(node);
+		return node;
+	}
+
+	@Override
+	public Object visit(CLVFStart node, Object data) {
+		super.visit(node, data);
+		removeDeadStatements(node);
+		return node;
+	}
+
+	private void removeDeadStatements(SimpleNode block) {
+		for (int i = block.jjtGetNumChildren() - 1; i >= 0; i--) {
+			final Node statement = block.jjtGetChild(i);
+			if ((statement instanceof CLVFIfStatement && statement.jjtGetNumChildren() == 2
+					|| statement instanceof CLVFWhileStatement)
+					&& Boolean.FALSE.equals(booleanLiteral(statement.jjtGetChild(0)))) {
+				block.removeChild(i);
+				removedStatements++;
+			}
+		}
+	}
+
+	private TypedOperation arithmetic(int operator, SimpleNode node) {
+		final TypedOperation operation = TypedOperation.arithmetic(operator, node.getType());
+		if (operation != null) {
+			typedOperations++;
+		}
+		return operation;
+	}
+
+	/**
+	 * Evaluates the node if all its operands are literals and replaces it by the result.
+	 *
+	 * @return <code>true</code> if the node has been replaced
+	 */
+	private boolean foldConstant(SimpleNode node) {
+		if (!hasLiteralOperands(node)) {
+			return false;
+		}
+		final Object value;
+		try {
+			if (node instanceof CLVFFunctionCall) {
+				executor.initInternal(node);
+			}
+			node.jjtAccept(executor, null);
+			value = executor.stack.pop();
+		} catch (RuntimeException e) {
+			// leave the failure to runtime
+			executor.stack.clear();
+			return false;
+		}
+		if (!isImmutable(value)) {
+			return false;
+		}
+		replace(node, literal(node, value));
+		return true;
+	}
+
+	private static boolean hasLiteralOperands(Node node) {
+		for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+			final Node child = node.jjtGetChild(i);
+			if (child instanceof CLVFArguments) {
+				if (!hasLiteralOperands(child)) {
+					return false;
+				}
+			} else if (!(child instanceof CLVFLiteral)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Only values which cannot be modified by the transformation may be shared by all evaluations.
+	 */
+	private static boolean isImmutable(Object value) {
+		return value instanceof Integer || value instanceof Long || value instanceof Double || value instanceof Boolean
+				|| value instanceof String || value instanceof BigDecimal;
+	}
+
+	private static Boolean booleanLiteral(Node node) {
+		if (node instanceof CLVFLiteral) {
+			final Object value = ((CLVFLiteral) node).getValue();
+			if (value instanceof Boolean) {
+				return (Boolean) value;
+			}
+		}
+		return null;
+	}
+
+	private static CLVFLiteral literal(SimpleNode original, Object value) {
+		final CLVFLiteral literal = new CLVFLiteral(original.getParser(), TransformLangParserTreeConstants.JJTLITERAL);
+		literal.setValueDirect(value);
+		literal.setType(original.getType());
+		literal.begin(original.getBegin().getLine(), original.getBegin().getColumn());
+		literal.end(original.getEnd().getLine(), original.getEnd().getColumn());
+		literal.setSourceFilename(original.getSourceFilename());
+		return literal;
+	}
+
+	private void replace(SimpleNode node, SimpleNode replacement) {
+		final SimpleNode parent = (SimpleNode) node.jjtGetParent();
+		parent.jjtAddChild(replacement, parent.indexOf(node));
+		replacement.jjtSetParent(parent);
+		foldedExpressions++;
+	}
+
+}
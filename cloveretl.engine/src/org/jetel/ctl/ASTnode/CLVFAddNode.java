@@ -21,9 +21,13 @@ package org.jetel.ctl.ASTnode;
 import org.jetel.ctl.ExpParser;
 import org.jetel.ctl.TransformLangExecutorRuntimeException;
 import org.jetel.ctl.TransformLangParserVisitor;
+import org.jetel.ctl.TypedOperation;
 
 public class CLVFAddNode extends SimpleNode {
 
+	/** Operation specialized for the type of operands, set by ASTOptimizer */
+	private TypedOperation typedOperation;
+
 	public CLVFAddNode(int id) {
 		super(id);
 	}
@@ -36,6 +40,7 @@ public class CLVFAddNode extends SimpleNode {
 
 	public CLVFAddNode(CLVFAddNode node) {
 		super(node);
+		this.typedOperation = node.typedOperation;
 	}
 
 	/** Accept the visitor. This method implementation is identical in all SimpleNode descendants. */
@@ -53,6 +58,14 @@ public class CLVFAddNode extends SimpleNode {
 		}
 	}
 
+	public void setTypedOperation(TypedOperation typedOperation) {
+		this.typedOperation = typedOperation;
+	}
+
+	public TypedOperation getTypedOperation() {
+		return typedOperation;
+	}
+
 	@Override
 	public SimpleNode duplicate() {
 		return new CLVFAddNode(this);
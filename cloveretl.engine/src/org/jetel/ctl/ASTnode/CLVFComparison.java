@@ -22,6 +22,7 @@ import org.jetel.ctl.ExpParser;
 import org.jetel.ctl.TransformLangExecutorRuntimeException;
 import org.jetel.ctl.TransformLangParserConstants;
 import org.jetel.ctl.TransformLangParserVisitor;
+import org.jetel.ctl.TypedOperation;
 import org.jetel.ctl.data.TLType;
 import org.jetel.ctl.extensions.TLFunctionCallContext;
 
@@ -30,6 +31,8 @@ public class CLVFComparison extends SimpleNode {
 	private int operator;
 	/** Type in which to perform the comparison */
 	private TLType operationType;
+	/** Operation specialized for the type of operands, set by ASTOptimizer */
+	private TypedOperation typedOperation;
 
 	//this function context is used to cache regular expressions 
 	//for matches ( ~= or .regex. ) and contains ( ?= ) operators 
@@ -47,6 +50,7 @@ public class CLVFComparison extends SimpleNode {
 	public CLVFComparison(CLVFComparison node) {
 		super(node);
 		this.operator = node.operator;
+		this.typedOperation = node.typedOperation;
 	}
 
 	
@@ -86,6 +90,14 @@ public class CLVFComparison extends SimpleNode {
 		return operationType;
 	}
 	
+	public void setTypedOperation(TypedOperation typedOperation) {
+		this.typedOperation = typedOperation;
+	}
+
+	public TypedOperation getTypedOperation() {
+		return typedOperation;
+	}
+
 	@Override
 	public SimpleNode duplicate() {
 		return new CLVFComparison(this);
@@ -21,9 +21,13 @@ package org.jetel.ctl.ASTnode;
 import org.jetel.ctl.ExpParser;
 import org.jetel.ctl.TransformLangExecutorRuntimeException;
 import org.jetel.ctl.TransformLangParserVisitor;
+import org.jetel.ctl.TypedOperation;
 
 public class CLVFDivNode extends SimpleNode {
 
+	/** Operation specialized for the type of operands, set by ASTOptimizer */
+	private TypedOperation typedOperation;
+
 	public CLVFDivNode(int id) {
 		super(id);
 	}
@@ -36,6 +40,7 @@ public class CLVFDivNode extends SimpleNode {
 
 	public CLVFDivNode(CLVFDivNode node) {
 		super(node);
+		this.typedOperation = node.typedOperation;
 	}
 
 	
@@ -54,6 +59,14 @@ public class CLVFDivNode extends SimpleNode {
 		}
 	}
 	
+	public void setTypedOperation(TypedOperation typedOperation) {
+		this.typedOperation = typedOperation;
+	}
+
+	public TypedOperation getTypedOperation() {
+		return typedOperation;
+	}
+
 	@Override
 	public SimpleNode duplicate() {
 		return new CLVFDivNode(this);
@@ -21,9 +21,13 @@ package org.jetel.ctl.ASTnode;
 import org.jetel.ctl.ExpParser;
 import org.jetel.ctl.TransformLangExecutorRuntimeException;
 import org.jetel.ctl.TransformLangParserVisitor;
+import org.jetel.ctl.TypedOperation;
 
 public class CLVFModNode extends SimpleNode {
 
+	/** Operation specialized for the type of operands, set by ASTOptimizer */
+	private TypedOperation typedOperation;
+
 
 	public CLVFModNode(int id) {
 		super(id);
@@ -35,6 +39,7 @@ public class CLVFModNode extends SimpleNode {
 
 	public CLVFModNode(CLVFModNode node) {
 		super(node);
+		this.typedOperation = node.typedOperation;
 	}
 
 	
@@ -53,6 +58,14 @@ public class CLVFModNode extends SimpleNode {
 		}
 	}
 	
+	public void setTypedOperation(TypedOperation typedOperation) {
+		this.typedOperation = typedOperation;
+	}
+
+	public TypedOperation getTypedOperation() {
+		return typedOperation;
+	}
+
 	@Override
 	public SimpleNode duplicate() {
 		return new CLVFModNode(this);
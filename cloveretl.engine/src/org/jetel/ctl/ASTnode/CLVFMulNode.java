@@ -21,9 +21,13 @@ package org.jetel.ctl.ASTnode;
 import org.jetel.ctl.ExpParser;
 import org.jetel.ctl.TransformLangExecutorRuntimeException;
 import org.jetel.ctl.TransformLangParserVisitor;
+import org.jetel.ctl.TypedOperation;
 
 public class CLVFMulNode extends SimpleNode {
 
+	/** Operation specialized for the type of operands, set by ASTOptimizer */
+	private TypedOperation typedOperation;
+
 	public CLVFMulNode(int id) {
 		super(id);
 	}
@@ -34,6 +38,7 @@ public class CLVFMulNode extends SimpleNode {
 
 	public CLVFMulNode(CLVFMulNode node) {
 		super(node);
+		this.typedOperation = node.typedOperation;
 	}
 
 	
@@ -52,6 +57,14 @@ public class CLVFMulNode extends SimpleNode {
 		}
 	}
 
+	public void setTypedOperation(TypedOperation typedOperation) {
+		this.typedOperation = typedOperation;
+	}
+
+	public TypedOperation getTypedOperation() {
+		return typedOperation;
+	}
+
 	@Override
 	public SimpleNode duplicate() {
 		return new CLVFMulNode(this);
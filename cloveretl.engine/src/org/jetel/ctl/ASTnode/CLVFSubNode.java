@@ -21,9 +21,13 @@ package org.jetel.ctl.ASTnode;
 import org.jetel.ctl.ExpParser;
 import org.jetel.ctl.TransformLangExecutorRuntimeException;
 import org.jetel.ctl.TransformLangParserVisitor;
+import org.jetel.ctl.TypedOperation;
 
 public class CLVFSubNode extends SimpleNode {
 
+	/** Operation specialized for the type of operands, set by ASTOptimizer */
+	private TypedOperation typedOperation;
+
 	public CLVFSubNode(int id) {
 		super(id);
 	}
@@ -34,6 +38,7 @@ public class CLVFSubNode extends SimpleNode {
 
 	public CLVFSubNode(CLVFSubNode node) {
 		super(node);
+		this.typedOperation = node.typedOperation;
 	}
 
 	
@@ -52,6 +57,14 @@ public class CLVFSubNode extends SimpleNode {
 		}
 	}
 	
+	public void setTypedOperation(TypedOperation typedOperation) {
+		this.typedOperation = typedOperation;
+	}
+
+	public TypedOperation getTypedOperation() {
+		return typedOperation;
+	}
+
 	@Override
 	public SimpleNode duplicate() {
 		return new CLVFSubNode(this);
@@ -0,0 +1,149 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.ctl;
+
+import java.io.Reader;
+import java.net.URL;
+import java.util.List;
+
+import org.jetel.ctl.ASTnode.CLVFStart;
+import org.jetel.ctl.TLJavaCodeGenerator.UnsupportedConstructException;
+import org.jetel.data.Defaults;
+import org.jetel.graph.TransformationGraph;
+import org.jetel.metadata.DataRecordMetadata;
+import org.jetel.util.compile.CompilationException;
+import org.jetel.util.compile.DynamicCompiler;
+
+/**
+ * CTL compiler which translates CTL transforms to JVM bytecode instead of interpreting the AST.
+ * The code is translated to Java source by {@link TLJavaCodeGenerator} and compiled
+ * in memory by {@link DynamicCompiler}.
+ * <p>
+ * Only code marked by the <code>//#CTL2:COMPILE</code> header is compiled. The interpreter
+ * is used for code in interpreted mode, for CTL expressions, in debug mode and whenever
+ * the code uses a construct which is not supported by the generator.
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public class TLBytecodeCompiler extends TLCompiler {
+
+	private Class<?> targetInterface;
+
+	public TLBytecodeCompiler(TransformationGraph graph, DataRecordMetadata[] inMetadata, DataRecordMetadata[] outMetadata, String encoding) {
+		super(graph, inMetadata, outMetadata, encoding);
+	}
+
+	@Override
+	public List<ErrorMessage> compile(Reader input, Class<?> targetInterface, String componentId) {
+		this.targetInterface = targetInterface;
+		return super.compile(input, targetInterface, componentId);
+	}
+
+	@Override
+	public String convertToJava(String ctlCode, Class<?> targetInterface, String componentId) throws ErrorMessageException {
+		final List<ErrorMessage> messages = compile(ctlCode, targetInterface, componentId);
+		if (errorCount() > 0) {
+			throw new ErrorMessageException(messages);
+		}
+		if (!(ast instanceof CLVFStart)) {
+			throw new UnsupportedOperationException("Only CTL transforms can be converted to Java");
+		}
+		try {
+			return new TLJavaCodeGenerator((CLVFStart) ast, targetInterface, getClassName()).generate();
+		} catch (UnsupportedConstructException e) {
+			throw new UnsupportedOperationException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @return instance of the compiled transform class or {@link TransformLangExecutor}
+	 *		if the code cannot be compiled
+	 */
+	@Override
+	public Object getCompiledCode() {
+		if (!isCompilable()) {
+			return super.getCompiledCode();
+		}
+		final TLJavaCodeGenerator generator = new TLJavaCodeGenerator((CLVFStart) ast, targetInterface, getClassName());
+		final String source;
+		try {
+			source = generator.generate();
+		} catch (UnsupportedConstructException e) {
+			if (logger != null) {
+				logger.debug("Component '" + getComponentId() + "' cannot be compiled: " + e.getMessage());
+			}
+			return super.getCompiledCode();
+		}
+
+		final Class<?> transformClass;
+		try {
+			final URL[] compileClassPath = graph != null ? graph.getRuntimeContext().getCompileClassPath() : null;
+			transformClass = new DynamicCompiler(targetInterface.getClassLoader(), compileClassPath != null ? compileClassPath : new URL[0])
+					.compile(source, generator.getClassName());
+		} catch (CompilationException e) {
+			if (logger != null) {
+				logger.debug("Component '" + getComponentId() + "' cannot be compiled:\n" + e.getCompilerOutput());
+				logger.trace("Source code:\n" + source);
+			}
+			return super.getCompiledCode();
+		} catch (IllegalStateException e) {
+			// no Java compiler available in the current Java platform
+			if (logger != null) {
+				logger.debug("Component '" + getComponentId() + "' cannot be compiled: " + e.getMessage());
+			}
+			return super.getCompiledCode();
+		}
+
+		// the executor initializes library functions and other runtime state of the AST nodes
+		final TransformLangExecutor executor = new TransformLangExecutor(parser, graph);
+		executor.setAst((CLVFStart) ast);
+		executor.setRuntimeLogger(logger);
+		executor.init();
+
+		final Object transform;
+		try {
+			transform = transformClass.getConstructor(TLCompiledRuntime.class).newInstance(
+					new TLCompiledRuntime(executor, generator.getNodes(), generator.getConstants()));
+		} catch (Exception e) {
+			throw new RuntimeException("Cannot instantiate compiled CTL transform " + generator.getClassName(), e);
+		}
+		if (logger != null && getComponentId() != null) {
+			logger.debug("Component '" + getComponentId() + "' runs in COMPILED mode");
+		}
+		return transform;
+	}
+
+	private boolean isCompilable() {
+		return ast instanceof CLVFStart && ((CLVFStart) ast).getCompiled()
+				&& targetInterface != null && CTLAbstractTransform.class.isAssignableFrom(targetInterface)
+				&& !(graph != null && graph.getRuntimeContext().isCtlDebug())
+				&& Defaults.USE_DYNAMIC_COMPILER;
+	}
+
+	private String getClassName() {
+		final String id = getComponentId() != null ? getComponentId() : "";
+		final StringBuilder name = new StringBuilder("CTL2_");
+		for (int i = 0; i < id.length(); i++) {
+			final char c = id.charAt(i);
+			name.append(Character.isJavaIdentifierPart(c) ? c : '_');
+		}
+		return name.toString();
+	}
+
+}
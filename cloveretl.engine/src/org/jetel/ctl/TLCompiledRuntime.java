@@ -0,0 +1,372 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.ctl;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.jetel.ctl.ASTnode.CLVFAssignment;
+import org.jetel.ctl.ASTnode.CLVFComparison;
+import org.jetel.ctl.ASTnode.CLVFFunctionCall;
+import org.jetel.ctl.ASTnode.CLVFRaiseErrorNode;
+import org.jetel.ctl.ASTnode.SimpleNode;
+import org.jetel.ctl.data.LogLevelEnum;
+import org.jetel.ctl.extensions.IntegralLib;
+import org.jetel.data.DataField;
+import org.jetel.data.DataRecord;
+import org.jetel.data.primitive.Decimal;
+import org.jetel.data.primitive.Numeric;
+import org.jetel.exception.JetelRuntimeException;
+import org.jetel.graph.Node;
+import org.jetel.util.string.StringUtils;
+
+/**
+ * Runtime support of transform classes generated by {@link TLBytecodeCompiler}.<br>
+ * Static methods implement CTL semantics of field access, conversions and comparisons
+ * which cannot be expressed by plain Java operators. Instance methods bridge the generated code
+ * to the AST nodes initialized by {@link TransformLangExecutor#init()} - library function calls,
+ * regular expression matching, copying of records by name and error reporting.
+ * The AST nodes are referenced by an index assigned during code generation.
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public final class TLCompiledRuntime {
+
+	private final TransformLangExecutor executor;
+	private final SimpleNode[] nodes;
+	private final Object[] constants;
+	private final Stack stack = new Stack();
+
+	/**
+	 * @param executor initialized interpreter of the compiled code, provides runtime logger and transformation context
+	 * @param nodes AST nodes referenced by the generated code
+	 * @param constants literal values referenced by the generated code
+	 */
+	public TLCompiledRuntime(TransformLangExecutor executor, List<SimpleNode> nodes, List<Object> constants) {
+		this.executor = executor;
+		this.nodes = nodes.toArray(new SimpleNode[nodes.size()]);
+		this.constants = constants.toArray();
+	}
+
+	public void setNode(Node node) {
+		executor.setNode(node);
+	}
+
+	public Object getConstant(int index) {
+		return constants[index];
+	}
+
+	/**
+	 * Calls CTL library function.
+	 *
+	 * @param site index of the {@link CLVFFunctionCall} node
+	 * @param args function arguments
+	 * @return function result or <code>null</code> for void functions
+	 */
+	public Object call(int site, Object... args) {
+		checkInterrupt();
+		final CLVFFunctionCall node = (CLVFFunctionCall) nodes[site];
+		for (Object arg : args) {
+			stack.push(arg);
+		}
+		node.getExecutable().execute(stack, node.getFunctionCallContext());
+		return node.getType().isVoid() ? null : stack.pop();
+	}
+
+	/**
+	 * Implements <code>~=</code> operator.
+	 */
+	public Boolean matches(int site, String input, String pattern) {
+		return IntegralLib.matches(((CLVFComparison) nodes[site]).getComparisonContext(), input, pattern);
+	}
+
+	/**
+	 * Implements <code>?=</code> operator.
+	 */
+	public Boolean containsMatch(int site, String input, String pattern) {
+		return IntegralLib.containsMatch(((CLVFComparison) nodes[site]).getComparisonContext(), input, pattern);
+	}
+
+	/**
+	 * Implements <code>$out.0.* = $in.0.*</code> assignment.
+	 */
+	public void copyRecord(int site, DataRecord to, DataRecord from) {
+		if (from == null) {
+			to.reset();
+		} else if (((CLVFAssignment) nodes[site]).getCopyByNameCallContext() == null) {
+			to.copyFieldsByPosition(from);
+		} else {
+			IntegralLib.copyByName(((CLVFAssignment) nodes[site]).getCopyByNameCallContext(), to, from);
+		}
+	}
+
+	public RaiseErrorException raiseError(int site, String message) {
+		return new RaiseErrorException((CLVFRaiseErrorNode) nodes[site], message);
+	}
+
+	public void printErr(int site, Object message, boolean printLine) {
+		final String text = message != null ? StringUtils.toOutputStringCTL(message) : "<null>";
+		if (printLine) {
+			final SimpleNode node = nodes[site];
+			printLog(site, LogLevelEnum.ERROR, text + " (on line: " + node.getBegin().getLine()
+					+ " col: " + node.getBegin().getColumn() + ")");
+		} else {
+			printLog(site, LogLevelEnum.ERROR, text);
+		}
+	}
+
+	public void printLog(int site, Object level, Object message) {
+		final Log runtimeLogger = executor.getRuntimeLogger();
+		if (runtimeLogger == null) {
+			throw new TransformLangExecutorRuntimeException(nodes[site], "No runtime logger available");
+		}
+		switch ((LogLevelEnum) level) {
+		case DEBUG:
+			runtimeLogger.debug(message);
+			break;
+		case INFO:
+			runtimeLogger.info(message);
+			break;
+		case WARN:
+			runtimeLogger.warn(message);
+			break;
+		case ERROR:
+			runtimeLogger.error(message);
+			break;
+		case FATAL:
+			runtimeLogger.fatal(message);
+			break;
+		case TRACE:
+			runtimeLogger.trace(message);
+			break;
+		default:
+			throw new TransformLangExecutorRuntimeException(nodes[site], "Unknown log level '" + level + "'");
+		}
+	}
+
+	public static void checkInterrupt() {
+		if (Thread.interrupted()) {
+			throw new JetelRuntimeException("Execution thread was interrupted", new InterruptedException());
+		}
+	}
+
+	/*
+	 * Field access, see TransformLangExecutor.fieldValue()
+	 */
+
+	public static Integer getInteger(DataField field) {
+		return field.isNull() ? null : (Integer) field.getValue();
+	}
+
+	public static Long getLong(DataField field) {
+		return field.isNull() ? null : (Long) field.getValue();
+	}
+
+	public static Double getDouble(DataField field) {
+		return field.isNull() ? null : (Double) field.getValue();
+	}
+
+	public static Boolean getBoolean(DataField field) {
+		return field.isNull() ? null : (Boolean) field.getValue();
+	}
+
+	public static BigDecimal getDecimal(DataField field) {
+		// the decimal undergoes satisfyPrecision() check, like in the interpreter
+		return field.isNull() ? null : ((Decimal) field.getValue()).getBigDecimalOutput();
+	}
+
+	public static String getString(DataField field) {
+		return field.isNull() ? null : field.getValue().toString();
+	}
+
+	public static Date getDate(DataField field) {
+		return field.isNull() ? null : (Date) field.getValueDuplicate();
+	}
+
+	public static byte[] getByteArray(DataField field) {
+		return field.isNull() ? null : (byte[]) field.getValueDuplicate();
+	}
+
+	/**
+	 * Reads value of a field used as an operand which must not be <code>null</code>.
+	 */
+	public static int getIntValue(DataField field) {
+		if (field instanceof Numeric && !field.isNull()) {
+			return ((Numeric) field).getInt();
+		}
+		return getInteger(field).intValue();
+	}
+
+	/**
+	 * @see #getIntValue(DataField)
+	 */
+	public static long getLongValue(DataField field) {
+		if (field instanceof Numeric && !field.isNull()) {
+			return ((Numeric) field).getLong();
+		}
+		return getLong(field).longValue();
+	}
+
+	/**
+	 * @see #getIntValue(DataField)
+	 */
+	public static double getDoubleValue(DataField field) {
+		if (field instanceof Numeric && !field.isNull()) {
+			return ((Numeric) field).getDouble();
+		}
+		return getDouble(field).doubleValue();
+	}
+
+	public static void setValue(DataField field, Object value) {
+		field.setValue(value);
+	}
+
+	public static void setValue(DataField field, int value) {
+		if (field instanceof Numeric) {
+			((Numeric) field).setValue(value);
+		} else {
+			field.setValue(Integer.valueOf(value));
+		}
+	}
+
+	public static void setValue(DataField field, long value) {
+		if (field instanceof Numeric) {
+			((Numeric) field).setValue(value);
+		} else {
+			field.setValue(Long.valueOf(value));
+		}
+	}
+
+	public static void setValue(DataField field, double value) {
+		if (field instanceof Numeric) {
+			((Numeric) field).setValue(value);
+		} else {
+			field.setValue(Double.valueOf(value));
+		}
+	}
+
+	public static void setValue(DataField field, boolean value) {
+		field.setValue(Boolean.valueOf(value));
+	}
+
+	/*
+	 * Conversions, see TransformLangExecutor.convertValue()
+	 */
+
+	public static Long toLong(Integer value) {
+		return value != null ? Long.valueOf(value.longValue()) : null;
+	}
+
+	public static Double toDouble(Integer value) {
+		return value != null ? Double.valueOf(value.doubleValue()) : null;
+	}
+
+	public static Double toDouble(Long value) {
+		return value != null ? Double.valueOf(value.doubleValue()) : null;
+	}
+
+	public static BigDecimal toDecimal(Integer value) {
+		return value != null ? new BigDecimal(value.intValue(), TransformLangExecutor.MAX_PRECISION) : null;
+	}
+
+	public static BigDecimal toDecimal(Long value) {
+		return value != null ? new BigDecimal(value.longValue(), TransformLangExecutor.MAX_PRECISION) : null;
+	}
+
+	public static BigDecimal toDecimal(Double value) {
+		return value != null ? new BigDecimal(value.doubleValue(), TransformLangExecutor.MAX_PRECISION) : null;
+	}
+
+	public static String toString(Object value) {
+		return value != null ? value.toString() : null;
+	}
+
+	/**
+	 * Copy of a value stored into a variable, see {@link TransformLangExecutor#getDeepCopy(Object)}.
+	 */
+	public static Date copy(Date value) {
+		return value != null ? new Date(value.getTime()) : null;
+	}
+
+	public static <T> T nvl(T value, T defaultValue) {
+		return value != null ? value : defaultValue;
+	}
+
+	/*
+	 * Comparison, see TransformLangExecutor.compare()
+	 */
+
+	/**
+	 * Implements <code>==</code> operator, <code>null</code> is equal only to <code>null</code>.
+	 */
+	public static boolean equal(Object lhs, Object rhs) {
+		if (lhs == null || rhs == null) {
+			return lhs == rhs;
+		}
+		if (lhs instanceof Double) {
+			return ((Double) lhs).doubleValue() == ((Double) rhs).doubleValue();
+		}
+		if (lhs instanceof BigDecimal) {
+			return ((BigDecimal) lhs).compareTo((BigDecimal) rhs) == 0;
+		}
+		if (lhs instanceof byte[]) {
+			return Arrays.equals((byte[]) lhs, (byte[]) rhs);
+		}
+		return lhs.equals(rhs);
+	}
+
+	/**
+	 * Returns operand of a relational operator, fails for <code>null</code>.
+	 */
+	public static int operand(Integer value) {
+		return checkOperand(value).intValue();
+	}
+
+	/**
+	 * @see #operand(Integer)
+	 */
+	public static long operand(Long value) {
+		return checkOperand(value).longValue();
+	}
+
+	/**
+	 * @see #operand(Integer)
+	 */
+	public static double operand(Double value) {
+		return checkOperand(value).doubleValue();
+	}
+
+	/**
+	 * Compares operands of a relational operator, fails for <code>null</code>.
+	 */
+	public static <T extends Comparable<T>> int compare(T lhs, T rhs) {
+		return checkOperand(lhs).compareTo(checkOperand(rhs));
+	}
+
+	private static <T> T checkOperand(T value) {
+		if (value == null) {
+			throw new TransformLangExecutorRuntimeException("compare: unsupported compare operation for null value");
+		}
+		return value;
+	}
+
+}
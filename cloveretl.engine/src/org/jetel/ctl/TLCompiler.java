@@ -355,6 +355,11 @@ public class TLCompiler implements ITLCompiler {
 	public List<ErrorMessage> compile(Reader input, Class<?> targetInterface, String componentId) {
 		setComponentId(componentId);
 		validate(input);
+		if (errorCount() == 0 && ast != null && Defaults.CTL.AST_OPTIMIZATION
+				&& !(graph != null && graph.getRuntimeContext().isCtlDebug())) {
+			// CTL debugger requires the tree to match the source code
+			new ASTOptimizer(parser, graph).optimize(ast);
+		}
 		return getDiagnosticMessages();
 	}
 	
@@ -0,0 +1,1212 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.ctl;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jetel.ctl.ASTnode.CLVFAddNode;
+import org.jetel.ctl.ASTnode.CLVFAnd;
+import org.jetel.ctl.ASTnode.CLVFAssignment;
+import org.jetel.ctl.ASTnode.CLVFBlock;
+import org.jetel.ctl.ASTnode.CLVFBreakStatement;
+import org.jetel.ctl.ASTnode.CLVFCaseStatement;
+import org.jetel.ctl.ASTnode.CLVFComparison;
+import org.jetel.ctl.ASTnode.CLVFConditionalExpression;
+import org.jetel.ctl.ASTnode.CLVFContinueStatement;
+import org.jetel.ctl.ASTnode.CLVFDateField;
+import org.jetel.ctl.ASTnode.CLVFDivNode;
+import org.jetel.ctl.ASTnode.CLVFDoStatement;
+import org.jetel.ctl.ASTnode.CLVFFieldAccessExpression;
+import org.jetel.ctl.ASTnode.CLVFForStatement;
+import org.jetel.ctl.ASTnode.CLVFFunctionCall;
+import org.jetel.ctl.ASTnode.CLVFFunctionDeclaration;
+import org.jetel.ctl.ASTnode.CLVFIIfNode;
+import org.jetel.ctl.ASTnode.CLVFIdentifier;
+import org.jetel.ctl.ASTnode.CLVFIfStatement;
+import org.jetel.ctl.ASTnode.CLVFImportSource;
+import org.jetel.ctl.ASTnode.CLVFIsNullNode;
+import org.jetel.ctl.ASTnode.CLVFLiteral;
+import org.jetel.ctl.ASTnode.CLVFLogLevel;
+import org.jetel.ctl.ASTnode.CLVFModNode;
+import org.jetel.ctl.ASTnode.CLVFMulNode;
+import org.jetel.ctl.ASTnode.CLVFNVL2Node;
+import org.jetel.ctl.ASTnode.CLVFNVLNode;
+import org.jetel.ctl.ASTnode.CLVFOr;
+import org.jetel.ctl.ASTnode.CLVFParameters;
+import org.jetel.ctl.ASTnode.CLVFPostfixExpression;
+import org.jetel.ctl.ASTnode.CLVFPrintErrNode;
+import org.jetel.ctl.ASTnode.CLVFPrintLogNode;
+import org.jetel.ctl.ASTnode.CLVFRaiseErrorNode;
+import org.jetel.ctl.ASTnode.CLVFReturnStatement;
+import org.jetel.ctl.ASTnode.CLVFStart;
+import org.jetel.ctl.ASTnode.CLVFSubNode;
+import org.jetel.ctl.ASTnode.CLVFSwitchStatement;
+import org.jetel.ctl.ASTnode.CLVFUnaryNonStatement;
+import org.jetel.ctl.ASTnode.CLVFUnaryStatement;
+import org.jetel.ctl.ASTnode.CLVFVariableDeclaration;
+import org.jetel.ctl.ASTnode.CLVFWhileStatement;
+import org.jetel.ctl.ASTnode.CastNode;
+import org.jetel.ctl.ASTnode.Node;
+import org.jetel.ctl.ASTnode.SimpleNode;
+import org.jetel.ctl.data.TLType;
+import org.jetel.ctl.data.TLTypePrimitive;
+
+/**
+ * Translates type-checked CTL AST into source code of a Java class extending given CTL transform class
+ * (a subclass of {@link CTLAbstractTransform}). CTL functions become private methods, global variables become
+ * fields and the CTL entry points (methods annotated by {@link CTLEntryPoint}) are overridden to call them.
+ * <p>
+ * Data fields are read and written directly, variables of integer, long, number and boolean type which
+ * can never hold <code>null</code> are kept in primitive Java variables. Library functions, regular expressions
+ * and other features with complex semantics are delegated to {@link TLCompiledRuntime}.
+ * <p>
+ * Only a subset of CTL is supported - containers, records, lookups, sequences, dictionary and some other
+ * constructs cause {@link UnsupportedConstructException}, such code is left for the interpreter.
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public class TLJavaCodeGenerator {
+
+	/**
+	 * Thrown when the AST contains a construct which cannot be translated to Java.
+	 */
+	public static class UnsupportedConstructException extends RuntimeException {
+
+		private static final long serialVersionUID = 4386203513092715326L;
+
+		public UnsupportedConstructException(SimpleNode node, String construct) {
+			super(construct + (node != null ? " on line " + node.getLine() : "") + " is not supported in compiled mode");
+		}
+
+	}
+
+	private static final String RUNTIME = TLCompiledRuntime.class.getName();
+	private static final String BIG_DECIMAL = "java.math.BigDecimal";
+
+	/** Java representation of an expression */
+	private static final class Expr {
+		/** Java expression, either a primary expression or a parenthesized one */
+		final String code;
+		final TLType type;
+		/** the code has primitive Java type */
+		final boolean primitive;
+		/** code evaluating to the primitive value of a non-primitive expression, may be <code>null</code> */
+		final String primitiveCode;
+
+		Expr(String code, TLType type, boolean primitive) {
+			this(code, type, primitive, null);
+		}
+
+		Expr(String code, TLType type, boolean primitive, String primitiveCode) {
+			this.code = code;
+			this.type = type;
+			this.primitive = primitive;
+			this.primitiveCode = primitiveCode;
+		}
+	}
+
+	private final CLVFStart ast;
+	private final Class<?> targetClass;
+	private final String className;
+
+	private final List<SimpleNode> nodes = new ArrayList<SimpleNode>();
+	private final List<Object> constants = new ArrayList<Object>();
+	private final List<String> constantTypes = new ArrayList<String>();
+
+	private final List<CLVFFunctionDeclaration> functions = new ArrayList<CLVFFunctionDeclaration>();
+	private final Map<CLVFFunctionDeclaration, String> functionNames = new IdentityHashMap<CLVFFunctionDeclaration, String>();
+	private final List<SimpleNode> globalStatements = new ArrayList<SimpleNode>();
+
+	private final Map<CLVFVariableDeclaration, String> variableNames = new IdentityHashMap<CLVFVariableDeclaration, String>();
+	private final Set<CLVFVariableDeclaration> fieldVariables = Collections.newSetFromMap(new IdentityHashMap<CLVFVariableDeclaration, Boolean>());
+	private final Set<CLVFVariableDeclaration> primitiveVariables = Collections.newSetFromMap(new IdentityHashMap<CLVFVariableDeclaration, Boolean>());
+	/** right hand sides assigned to the variables, <code>null</code> stands for a value which is never <code>null</code> */
+	private final Map<CLVFVariableDeclaration, List<SimpleNode>> assignedValues = new IdentityHashMap<CLVFVariableDeclaration, List<SimpleNode>>();
+
+	/** labels of enclosing switch statements, <code>null</code> for enclosing loops */
+	private final List<String> breakTargets = new ArrayList<String>();
+	private CLVFFunctionDeclaration currentFunction;
+	private int nameCounter;
+
+	/**
+	 * @param ast type-checked CTL code
+	 * @param targetClass class to extend, must be a subclass of {@link CTLAbstractTransform}
+	 * @param className simple name of the generated class
+	 */
+	public TLJavaCodeGenerator(CLVFStart ast, Class<?> targetClass, String className) {
+		this.ast = ast;
+		this.targetClass = targetClass;
+		this.className = className;
+	}
+
+	public String getClassName() {
+		return className;
+	}
+
+	/**
+	 * @return AST nodes referenced by the generated code, to be passed to {@link TLCompiledRuntime}
+	 */
+	public List<SimpleNode> getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @return literal values referenced by the generated code, to be passed to {@link TLCompiledRuntime}
+	 */
+	public List<Object> getConstants() {
+		return constants;
+	}
+
+	/**
+	 * Generates Java source code of the transform class. The class has a public constructor
+	 * with single {@link TLCompiledRuntime} parameter.
+	 *
+	 * @return Java source code
+	 * @throws UnsupportedConstructException if the CTL code cannot be translated
+	 */
+	public String generate() {
+		if (!CTLAbstractTransform.class.isAssignableFrom(targetClass)) {
+			throw new UnsupportedConstructException(null, "Target class " + targetClass.getName());
+		}
+		collectTopLevel(ast);
+		collectAssignments(ast, null);
+		analyzeNullability();
+
+		final StringBuilder methods = new StringBuilder();
+		final StringBuilder globalInit = new StringBuilder();
+		for (CLVFFunctionDeclaration function : functions) {
+			functionNames.put(function, "f" + functionNames.size() + "_" + function.getName());
+		}
+		for (SimpleNode statement : globalStatements) {
+			statement(statement, globalInit, "\t\t");
+		}
+		generateEntryPoints(methods);
+		for (CLVFFunctionDeclaration function : functions) {
+			generateFunction(function, methods);
+		}
+
+		final StringBuilder source = new StringBuilder();
+		source.append("public final class ").append(className).append(" extends ")
+				.append(targetClass.getCanonicalName()).append(" {\n\n");
+		source.append("\tprivate static final boolean CTL_TRUE = Boolean.TRUE.booleanValue();\n");
+		source.append("\tprivate static final boolean CTL_FALSE = Boolean.FALSE.booleanValue();\n");
+		source.append("\tprivate static final java.math.MathContext MAX_PRECISION = ")
+				.append(TransformLangExecutor.class.getName()).append(".MAX_PRECISION;\n\n");
+		source.append("\tprivate final ").append(RUNTIME).append(" rt;\n");
+		for (int i = 0; i < constants.size(); i++) {
+			source.append("\tprivate final ").append(constantTypes.get(i)).append(" c").append(i).append(";\n");
+		}
+		for (CLVFVariableDeclaration variable : fieldVariables) {
+			source.append("\tprivate ").append(javaType(variable.getType(), primitiveVariables.contains(variable)))
+					.append(' ').append(variableNames.get(variable)).append(";\n");
+		}
+		source.append("\n\tpublic ").append(className).append("(").append(RUNTIME).append(" rt) {\n");
+		source.append("\t\tthis.rt = rt;\n");
+		for (int i = 0; i < constants.size(); i++) {
+			source.append("\t\tc").append(i).append(" = (").append(constantTypes.get(i)).append(") rt.getConstant(").append(i).append(");\n");
+		}
+		source.append("\t}\n\n");
+		source.append("\t@Override\n\tpublic void setNode(org.jetel.graph.Node node) {\n");
+		source.append("\t\tsuper.setNode(node);\n\t\trt.setNode(node);\n\t}\n\n");
+		source.append("\t@Override\n\tpublic void globalScopeInit() {\n");
+		source.append(globalInit);
+		source.append("\t}\n\n");
+		source.append(methods);
+		source.append("}\n");
+		return source.toString();
+	}
+
+	/*
+	 * Analysis
+	 */
+
+	private void collectTopLevel(CLVFStart start) {
+		for (int i = 0; i < start.jjtGetNumChildren(); i++) {
+			final SimpleNode child = child(start, i);
+			if (child instanceof CLVFFunctionDeclaration) {
+				functions.add((CLVFFunctionDeclaration) child);
+			} else if (child instanceof CLVFImportSource) {
+				for (int j = 0; j < child.jjtGetNumChildren(); j++) {
+					if (child(child, j) instanceof CLVFStart) {
+						collectTopLevel((CLVFStart) child(child, j));
+					} else {
+						globalStatements.add(child(child, j));
+					}
+				}
+			} else {
+				globalStatements.add(child);
+			}
+		}
+	}
+
+	private void collectAssignments(SimpleNode node, CLVFFunctionDeclaration function) {
+		if (node instanceof CLVFFunctionDeclaration) {
+			function = (CLVFFunctionDeclaration) node;
+		}
+		if (node instanceof CLVFVariableDeclaration) {
+			final CLVFVariableDeclaration variable = (CLVFVariableDeclaration) node;
+			final String name = (function == null ? "g" : "v") + (nameCounter++) + "_" + variable.getName();
+			variableNames.put(variable, name);
+			if (function == null) {
+				fieldVariables.add(variable);
+			}
+			if (!(node.jjtGetParent() instanceof CLVFParameters)) {
+				addAssignedValue(variable, node.jjtGetNumChildren() > 1 ? child(node, 1) : null);
+			}
+		} else if (node instanceof CLVFAssignment) {
+			final SimpleNode lhs = child(node, 0);
+			if (lhs instanceof CLVFIdentifier && ((CLVFIdentifier) lhs).getVariable() != null) {
+				final int operator = ((CLVFAssignment) node).getOperator();
+				addAssignedValue(((CLVFIdentifier) lhs).getVariable(), CLVFAssignment.isCompound(operator) ? null : child(node, 1));
+			}
+		}
+		for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+			collectAssignments(child(node, i), function);
+		}
+	}
+
+	private void addAssignedValue(CLVFVariableDeclaration variable, SimpleNode value) {
+		List<SimpleNode> values = assignedValues.get(variable);
+		if (values == null) {
+			values = new ArrayList<SimpleNode>();
+			assignedValues.put(variable, values);
+		}
+		values.add(value);
+	}
+
+	/**
+	 * Finds variables which can be stored in primitive Java variables - all the values assigned to them
+	 * are never <code>null</code>. Starts with all the candidates and removes variables which may be
+	 * assigned <code>null</code> until a fixed point is reached.
+	 */
+	private void analyzeNullability() {
+		for (CLVFVariableDeclaration variable : assignedValues.keySet()) {
+			// parameters may be passed null
+			if (isPrimitiveType(variable.getType()) && !(variable.jjtGetParent() instanceof CLVFParameters)) {
+				primitiveVariables.add(variable);
+			}
+		}
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (CLVFVariableDeclaration variable : new ArrayList<CLVFVariableDeclaration>(primitiveVariables)) {
+				for (SimpleNode value : assignedValues.get(variable)) {
+					if (value != null && !isNonNull(value)) {
+						primitiveVariables.remove(variable);
+						changed = true;
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	private boolean isNonNull(SimpleNode node) {
+		if (node instanceof CLVFLiteral) {
+			return ((CLVFLiteral) node).getValue() != null;
+		} else if (node instanceof CLVFIdentifier) {
+			return primitiveVariables.contains(((CLVFIdentifier) node).getVariable());
+		} else if (node instanceof CLVFAddNode || node instanceof CLVFSubNode || node instanceof CLVFMulNode
+				|| node instanceof CLVFDivNode || node instanceof CLVFModNode || node instanceof CLVFComparison
+				|| node instanceof CLVFIsNullNode || node instanceof CLVFUnaryNonStatement
+				|| node instanceof CLVFUnaryStatement || node instanceof CLVFPostfixExpression) {
+			return true;
+		} else if (node instanceof CLVFAnd || node instanceof CLVFOr || node instanceof CastNode) {
+			return isNonNull(child(node, node.jjtGetNumChildren() - 1));
+		} else if (node instanceof CLVFNVLNode) {
+			return isNonNull(argument(node, 0)) || isNonNull(argument(node, 1));
+		} else if (node instanceof CLVFNVL2Node || node instanceof CLVFIIfNode) {
+			return isNonNull(argument(node, 1)) && isNonNull(argument(node, 2));
+		} else if (node instanceof CLVFConditionalExpression) {
+			return isNonNull(child(node, 1)) && isNonNull(child(node, 2));
+		}
+		return false;
+	}
+
+	/**
+	 * @return <code>true</code> if evaluation of the expression has no side effects
+	 */
+	private boolean isPure(SimpleNode node) {
+		if (node instanceof CLVFFieldAccessExpression) {
+			return !((CLVFFieldAccessExpression) node).isWildcard();
+		}
+		if (!(node instanceof CLVFLiteral || node instanceof CLVFIdentifier || node instanceof CastNode
+				|| node instanceof CLVFAddNode || node instanceof CLVFSubNode || node instanceof CLVFMulNode
+				|| node instanceof CLVFDivNode || node instanceof CLVFModNode || node instanceof CLVFComparison
+				|| node instanceof CLVFAnd || node instanceof CLVFOr || node instanceof CLVFUnaryNonStatement
+				|| node instanceof CLVFIsNullNode || node instanceof CLVFNVLNode || node instanceof CLVFNVL2Node
+				|| node instanceof CLVFIIfNode || node instanceof CLVFConditionalExpression
+				|| node instanceof CLVFDateField || node instanceof CLVFLogLevel
+				|| node.jjtGetParent() instanceof CLVFIsNullNode)) {
+			return false;
+		}
+		for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+			if (!isPure(child(node, i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Functions and entry points
+	 */
+
+	private void generateFunction(CLVFFunctionDeclaration function, StringBuilder out) {
+		currentFunction = function;
+		final TLType returnType = function.getType();
+		out.append("\tprivate ").append(returnType.isVoid() ? "void" : javaType(returnType, false)).append(' ')
+				.append(functionNames.get(function)).append('(');
+		final SimpleNode parameters = child(function, 1);
+		for (int i = 0; i < parameters.jjtGetNumChildren(); i++) {
+			final CLVFVariableDeclaration parameter = (CLVFVariableDeclaration) child(parameters, i);
+			if (i > 0) {
+				out.append(", ");
+			}
+			out.append(javaType(parameter.getType(), false)).append(' ').append(variableNames.get(parameter));
+		}
+		out.append(") {\n");
+		out.append("\t\tif (CTL_TRUE) {\n");
+		blockContent(child(function, 2), out, "\t\t\t");
+		out.append("\t\t}\n");
+		if (!returnType.isVoid()) {
+			out.append("\t\treturn null;\n");
+		}
+		out.append("\t}\n\n");
+		currentFunction = null;
+	}
+
+	private void generateEntryPoints(StringBuilder out) {
+		final Set<String> generated = new HashSet<String>();
+		for (Class<?> c = targetClass; c != null && c != Object.class; c = c.getSuperclass()) {
+			for (Method method : c.getDeclaredMethods()) {
+				final CTLEntryPoint entryPoint = method.getAnnotation(CTLEntryPoint.class);
+				if (entryPoint == null || entryPoint.name().equals("globalScopeInit")
+						|| !generated.add(entryPoint.name() + method.getParameterTypes().length)) {
+					continue;
+				}
+				final CLVFFunctionDeclaration function = findFunction(entryPoint.name(), method.getParameterTypes());
+				if (function == null) {
+					if (Modifier.isAbstract(method.getModifiers())) {
+						throw new UnsupportedConstructException(null, "Missing function " + entryPoint.name() + "()");
+					}
+					continue;
+				}
+				if (!entryPoint.deprecated().isEmpty()) {
+					throw new UnsupportedConstructException(function, "Deprecated function " + entryPoint.name() + "()");
+				}
+				final boolean isVoid = method.getReturnType() == void.class;
+				if (function.getType().isVoid() && !isVoid) {
+					throw new UnsupportedConstructException(function, "Void function " + entryPoint.name() + "()");
+				}
+				out.append("\t@Override\n\t").append(Modifier.isPublic(method.getModifiers()) ? "public " : "protected ")
+						.append(method.getReturnType().getCanonicalName()).append(' ').append(method.getName()).append('(');
+				final StringBuilder args = new StringBuilder();
+				for (int i = 0; i < method.getParameterTypes().length; i++) {
+					if (i > 0) {
+						out.append(", ");
+						args.append(", ");
+					}
+					out.append(method.getParameterTypes()[i].getCanonicalName()).append(" p").append(i);
+					args.append('p').append(i);
+				}
+				out.append(") {\n\t\t").append(isVoid ? "" : "return ").append(functionNames.get(function))
+						.append('(').append(args).append(");\n\t}\n\n");
+			}
+		}
+	}
+
+	private CLVFFunctionDeclaration findFunction(String name, Class<?>[] parameterTypes) {
+		for (CLVFFunctionDeclaration function : functions) {
+			if (function.getName().equals(name) && function.getParamCount() == parameterTypes.length) {
+				final TLType[] formal = function.getFormalParameters();
+				boolean matches = true;
+				for (int i = 0; i < formal.length; i++) {
+					try {
+						matches &= formal[i].equals(TLType.fromJavaType(parameterTypes[i]));
+					} catch (IllegalArgumentException e) {
+						matches = false;
+					}
+				}
+				if (matches) {
+					return function;
+				}
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * Statements
+	 */
+
+	private void blockContent(SimpleNode node, StringBuilder out, String indent) {
+		if (node instanceof CLVFBlock) {
+			for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+				statement(child(node, i), out, indent);
+			}
+		} else if (node != null) {
+			statement(node, out, indent);
+		}
+	}
+
+	private void statement(SimpleNode node, StringBuilder out, String indent) {
+		if (node instanceof CLVFBlock) {
+			out.append(indent).append("{\n");
+			blockContent(node, out, indent + "\t");
+			out.append(indent).append("}\n");
+		} else if (node instanceof CLVFVariableDeclaration) {
+			out.append(indent).append(variableDeclaration((CLVFVariableDeclaration) node)).append(";\n");
+		} else if (node instanceof CLVFAssignment) {
+			assignment((CLVFAssignment) node, out, indent);
+		} else if (node instanceof CLVFIfStatement) {
+			out.append(indent).append("if (").append(unboxed(expression(child(node, 0)))).append(") {\n");
+			blockContent(child(node, 1), out, indent + "\t");
+			if (node.jjtGetNumChildren() > 2) {
+				out.append(indent).append("} else {\n");
+				blockContent(child(node, 2), out, indent + "\t");
+			}
+			out.append(indent).append("}\n");
+		} else if (node instanceof CLVFWhileStatement) {
+			out.append(indent).append("while (").append(unboxed(expression(child(node, 0)))).append(") {\n");
+			loopBody(child(node, 1), out, indent + "\t");
+			out.append(indent).append("}\n");
+		} else if (node instanceof CLVFDoStatement) {
+			out.append(indent).append("do {\n");
+			loopBody(child(node, 0), out, indent + "\t");
+			out.append(indent).append("} while (").append(unboxed(expression(child(node, 1)))).append(");\n");
+		} else if (node instanceof CLVFForStatement) {
+			forStatement((CLVFForStatement) node, out, indent);
+		} else if (node instanceof CLVFSwitchStatement) {
+			switchStatement((CLVFSwitchStatement) node, out, indent);
+		} else if (node instanceof CLVFReturnStatement) {
+			if (currentFunction == null) {
+				throw new UnsupportedConstructException(node, "Return outside of function");
+			}
+			out.append(indent).append("if (CTL_TRUE) return");
+			if (node.jjtHasChildren()) {
+				out.append(' ').append(boxed(convert(expression(child(node, 0)), currentFunction.getType())));
+			} else if (!currentFunction.getType().isVoid()) {
+				out.append(" null");
+			}
+			out.append(";\n");
+		} else if (node instanceof CLVFBreakStatement) {
+			final String target = breakTargets.isEmpty() ? null : breakTargets.get(breakTargets.size() - 1);
+			out.append(indent).append("if (CTL_TRUE) break").append(target != null ? " " + target : "").append(";\n");
+		} else if (node instanceof CLVFContinueStatement) {
+			out.append(indent).append("if (CTL_TRUE) continue;\n");
+		} else if (node instanceof CLVFRaiseErrorNode) {
+			out.append(indent).append("if (CTL_TRUE) throw rt.raiseError(").append(register(node)).append(", ")
+					.append(convert(expression(child(node, 0)), TLTypePrimitive.STRING).code).append(");\n");
+		} else if (node instanceof CLVFPrintErrNode) {
+			final SimpleNode args = child(node, 0);
+			out.append(indent).append("rt.printErr(").append(register(node)).append(", ")
+					.append(boxed(expression(child(args, 0)))).append(", ")
+					.append(args.jjtGetNumChildren() > 1 ? unboxed(expression(child(args, 1))) : "false").append(");\n");
+		} else if (node instanceof CLVFPrintLogNode) {
+			final SimpleNode args = child(node, 0);
+			out.append(indent).append("rt.printLog(").append(register(node)).append(", ");
+			if (args.jjtGetNumChildren() > 1) {
+				out.append(expression(child(args, 0)).code).append(", ").append(boxed(expression(child(args, 1))));
+			} else {
+				out.append("org.jetel.ctl.data.LogLevelEnum.INFO, ").append(boxed(expression(child(args, 0))));
+			}
+			out.append(");\n");
+		} else if (node instanceof CLVFFunctionCall) {
+			out.append(indent).append(functionCall((CLVFFunctionCall) node)).append(";\n");
+		} else if (node instanceof CLVFUnaryStatement || node instanceof CLVFPostfixExpression) {
+			out.append(indent).append(increment(node)).append(";\n");
+		} else {
+			throw new UnsupportedConstructException(node, "Statement " + node.getClass().getSimpleName());
+		}
+	}
+
+	private void loopBody(SimpleNode body, StringBuilder out, String indent) {
+		out.append(indent).append(RUNTIME).append(".checkInterrupt();\n");
+		breakTargets.add(null);
+		blockContent(body, out, indent);
+		breakTargets.remove(breakTargets.size() - 1);
+	}
+
+	private void forStatement(CLVFForStatement node, StringBuilder out, String indent) {
+		final SimpleNode init = node.getForInit();
+		final SimpleNode condition = node.getForFinal();
+		final SimpleNode update = node.getForUpdate();
+		out.append(indent).append("for (");
+		if (init instanceof CLVFVariableDeclaration) {
+			out.append(variableDeclaration((CLVFVariableDeclaration) init));
+		} else if (init != null) {
+			out.append(simpleStatement(init));
+		}
+		out.append("; ").append(condition != null ? unboxed(expression(condition)) : "CTL_TRUE").append("; ");
+		if (update != null) {
+			out.append(simpleStatement(update));
+		}
+		out.append(") {\n");
+		loopBody(node.getForBody(), out, indent + "\t");
+		out.append(indent).append("}\n");
+	}
+
+	/**
+	 * Switch is translated to a labeled block, statements of the cases are guarded by index of the matching case.
+	 */
+	private void switchStatement(CLVFSwitchStatement node, StringBuilder out, String indent) {
+		final String label = "s" + (nameCounter++);
+		final SimpleNode switchExpression = child(node, 0);
+		final TLType type = switchExpression.getType();
+		out.append(indent).append(label).append(": {\n");
+		final String value = "v" + label;
+		final String entry = "e" + label;
+		out.append(indent).append("\tfinal ").append(javaType(type, false)).append(' ').append(value).append(" = ")
+				.append(boxed(expression(switchExpression))).append(";\n");
+		out.append(indent).append("\tfinal int ").append(entry).append(";\n");
+		out.append(indent).append('\t');
+		for (int caseIndex : node.getCaseIndices()) {
+			final Expr caseValue = convert(expression(child(child(node, caseIndex), 0)), type);
+			out.append("if (").append(RUNTIME).append(".equal(").append(value).append(", ").append(boxed(caseValue))
+					.append(")) ").append(entry).append(" = ").append(caseIndex).append("; else ");
+		}
+		out.append(entry).append(" = ").append(node.hasDefaultClause() ? node.getDefaultCaseIndex() : Integer.MAX_VALUE).append(";\n");
+		breakTargets.add(label);
+		for (int i = 1; i < node.jjtGetNumChildren(); i++) {
+			final SimpleNode child = child(node, i);
+			if (child instanceof CLVFCaseStatement) {
+				continue;
+			}
+			if (child instanceof CLVFVariableDeclaration && !fieldVariables.contains(child)) {
+				// declared for the rest of the switch, initialized only when the statement is reached
+				final CLVFVariableDeclaration variable = (CLVFVariableDeclaration) child;
+				final String name = variableNames.get(variable);
+				final boolean primitive = primitiveVariables.contains(variable);
+				out.append(indent).append('\t').append(javaType(variable.getType(), primitive)).append(' ').append(name)
+						.append(" = ").append(defaultValue(variable.getType(), primitive)).append(";\n");
+				out.append(indent).append("\tif (").append(entry).append(" < ").append(i).append(") ").append(name)
+						.append(" = ").append(initialValue(variable)).append(";\n");
+			} else {
+				out.append(indent).append("\tif (").append(entry).append(" < ").append(i).append(") {\n");
+				statement(child, out, indent + "\t\t");
+				out.append(indent).append("\t}\n");
+			}
+		}
+		breakTargets.remove(breakTargets.size() - 1);
+		out.append(indent).append("}\n");
+	}
+
+	private String variableDeclaration(CLVFVariableDeclaration node) {
+		final String name = variableNames.get(node);
+		if (fieldVariables.contains(node)) {
+			return name + " = " + initialValue(node);
+		}
+		return javaType(node.getType(), primitiveVariables.contains(node)) + " " + name + " = " + initialValue(node);
+	}
+
+	private String initialValue(CLVFVariableDeclaration node) {
+		final boolean primitive = primitiveVariables.contains(node);
+		if (node.jjtGetNumChildren() > 1) {
+			return storedValue(convert(expression(child(node, 1)), node.getType()), primitive);
+		}
+		return defaultValue(node.getType(), primitive);
+	}
+
+	/**
+	 * @return Java code of a value stored to a variable, makes a copy of mutable values
+	 */
+	private String storedValue(Expr value, boolean primitive) {
+		if (primitive) {
+			return unboxed(value);
+		}
+		if (value.type.isDate()) {
+			return RUNTIME + ".copy(" + value.code + ")";
+		}
+		return boxed(value);
+	}
+
+	/**
+	 * Default value of a variable, see TransformLangExecutor.getDefaultValue().
+	 */
+	private String defaultValue(TLType type, boolean primitive) {
+		if (type.isInteger()) {
+			return primitive ? "0" : "Integer.valueOf(0)";
+		} else if (type.isLong()) {
+			return primitive ? "0L" : "Long.valueOf(0L)";
+		} else if (type.isDouble()) {
+			return primitive ? "0.0" : "Double.valueOf(0.0)";
+		} else if (type.isBoolean()) {
+			return primitive ? "false" : "Boolean.FALSE";
+		} else if (type.isString()) {
+			return "\"\"";
+		} else if (type.isDate()) {
+			return "new java.util.Date(0L)";
+		} else if (type.isDecimal()) {
+			return "new " + BIG_DECIMAL + "(0)";
+		} else if (type.isByteArray()) {
+			return "((byte[]) null)";
+		}
+		throw new UnsupportedConstructException(null, "Type " + type.name());
+	}
+
+	private void assignment(CLVFAssignment node, StringBuilder out, String indent) {
+		final SimpleNode rhs = child(node, 1);
+		if (CLVFAssignment.isCompound(node.getOperator()) && !isPure(rhs)) {
+			// the right hand side must be evaluated before the left hand side is read
+			final Expr value = convert(expression(rhs), child(node, 0).getType());
+			out.append(indent).append("{\n");
+			out.append(indent).append('\t').append(javaType(value.type, value.primitive)).append(" t = ").append(value.code).append(";\n");
+			out.append(indent).append('\t').append(assignment(node, new Expr("t", value.type, value.primitive))).append(";\n");
+			out.append(indent).append("}\n");
+		} else {
+			out.append(indent).append(simpleStatement(node)).append(";\n");
+		}
+	}
+
+	/**
+	 * @return single Java statement expression without the semicolon
+	 */
+	private String simpleStatement(SimpleNode node) {
+		if (node instanceof CLVFAssignment) {
+			final SimpleNode rhs = child(node, 1);
+			if (CLVFAssignment.isCompound(((CLVFAssignment) node).getOperator()) && !isPure(rhs)) {
+				throw new UnsupportedConstructException(node, "Compound assignment with side effects");
+			}
+			return assignment((CLVFAssignment) node, null);
+		} else if (node instanceof CLVFFunctionCall) {
+			return functionCall((CLVFFunctionCall) node);
+		} else if (node instanceof CLVFUnaryStatement || node instanceof CLVFPostfixExpression) {
+			return increment(node);
+		}
+		throw new UnsupportedConstructException(node, "Expression " + node.getClass().getSimpleName());
+	}
+
+	/**
+	 * @param value evaluated right hand side or <code>null</code>
+	 */
+	private String assignment(CLVFAssignment node, Expr value) {
+		final SimpleNode lhs = child(node, 0);
+		final SimpleNode rhs = child(node, 1);
+		final int operator = node.getOperator();
+		final TLType type = lhs.getType();
+		if (lhs instanceof CLVFFieldAccessExpression && ((CLVFFieldAccessExpression) lhs).isWildcard()) {
+			if (operator != TransformLangParserConstants.ASSIGN) {
+				throw new UnsupportedConstructException(node, "Compound assignment to record");
+			}
+			final String from;
+			if (rhs instanceof CLVFFieldAccessExpression && ((CLVFFieldAccessExpression) rhs).isWildcard()) {
+				from = record((CLVFFieldAccessExpression) rhs);
+			} else if (rhs instanceof CLVFLiteral && ((CLVFLiteral) rhs).getValue() == null) {
+				from = "null";
+			} else {
+				throw new UnsupportedConstructException(node, "Record assignment");
+			}
+			return "rt.copyRecord(" + register(node) + ", getOutputRecord("
+					+ ((CLVFFieldAccessExpression) lhs).getRecordId() + "), " + from + ")";
+		}
+		if (value == null) {
+			value = convert(expression(rhs), type);
+		}
+		if (lhs instanceof CLVFIdentifier) {
+			final CLVFVariableDeclaration variable = variable((CLVFIdentifier) lhs);
+			final String name = variableNames.get(variable);
+			final boolean primitive = primitiveVariables.contains(variable);
+			if (CLVFAssignment.isCompound(operator)) {
+				final Expr current = primitive ? new Expr(name, type, true)
+						: new Expr(RUNTIME + ".nvl(" + name + ", " + defaultValue(type, false) + ")", type, false);
+				value = binary(compoundOperator(node, operator), current, value, type);
+			}
+			return name + " = " + storedValue(value, primitive);
+		} else if (lhs instanceof CLVFFieldAccessExpression) {
+			final String field = field((CLVFFieldAccessExpression) lhs);
+			if (CLVFAssignment.isCompound(operator)) {
+				final Expr current = new Expr(RUNTIME + ".nvl(" + fieldValue(field, type).code + ", " + defaultValue(type, false) + ")", type, false);
+				value = binary(compoundOperator(node, operator), current, value, type);
+			}
+			if (value.primitive) {
+				return RUNTIME + ".setValue(" + field + ", " + unboxed(value) + ")";
+			}
+			return RUNTIME + ".setValue(" + field + ", (Object) " + value.code + ")";
+		}
+		throw new UnsupportedConstructException(node, "Assignment to " + lhs.getClass().getSimpleName());
+	}
+
+	private static int compoundOperator(SimpleNode node, int operator) {
+		switch (operator) {
+		case TransformLangParserConstants.ASSIGN_PLUS:
+			return TransformLangParserConstants.PLUS;
+		case TransformLangParserConstants.ASSIGN_MINUS:
+			return TransformLangParserConstants.MINUS;
+		case TransformLangParserConstants.ASSIGN_MULTIPLY:
+			return TransformLangParserConstants.MULTIPLY;
+		case TransformLangParserConstants.ASSIGN_DIVIDE:
+			return TransformLangParserConstants.DIVIDE;
+		case TransformLangParserConstants.ASSIGN_MODULO:
+			return TransformLangParserConstants.MODULO;
+		default:
+			throw new UnsupportedConstructException(node, "Assignment operator " + operator);
+		}
+	}
+
+	/**
+	 * Translates ++ and -- used as statements.
+	 */
+	private String increment(SimpleNode node) {
+		final int operator = node instanceof CLVFUnaryStatement ? ((CLVFUnaryStatement) node).getOperator()
+				: ((CLVFPostfixExpression) node).getOperator();
+		final SimpleNode operand = child(node, 0);
+		if (!(operand instanceof CLVFIdentifier)) {
+			throw new UnsupportedConstructException(node, "Increment of " + operand.getClass().getSimpleName());
+		}
+		final CLVFVariableDeclaration variable = variable((CLVFIdentifier) operand);
+		final String name = variableNames.get(variable);
+		final TLType type = operand.getType();
+		final boolean primitive = primitiveVariables.contains(variable);
+		final String javaOperator;
+		if (operator == TransformLangParserConstants.INCR) {
+			javaOperator = "+";
+		} else if (operator == TransformLangParserConstants.DECR) {
+			javaOperator = "-";
+		} else {
+			throw new UnsupportedConstructException(node, "Operator " + operator);
+		}
+		if (primitive) {
+			return name + javaOperator + javaOperator;
+		}
+		final Expr one = type.isDecimal() ? new Expr(BIG_DECIMAL + ".ONE", type, false) : convert(new Expr("1", TLTypePrimitive.INTEGER, true), type);
+		final Expr value = binary(operator == TransformLangParserConstants.INCR ? TransformLangParserConstants.PLUS : TransformLangParserConstants.MINUS,
+				new Expr(name, type, false), one, type);
+		return name + " = " + boxed(value);
+	}
+
+	/*
+	 * Expressions
+	 */
+
+	private Expr expression(SimpleNode node) {
+		if (node instanceof CLVFLiteral) {
+			return literal((CLVFLiteral) node);
+		} else if (node instanceof CLVFIdentifier) {
+			final CLVFVariableDeclaration variable = variable((CLVFIdentifier) node);
+			return new Expr(variableNames.get(variable), variable.getType(), primitiveVariables.contains(variable));
+		} else if (node instanceof CLVFFieldAccessExpression) {
+			final CLVFFieldAccessExpression field = (CLVFFieldAccessExpression) node;
+			if (field.isWildcard()) {
+				throw new UnsupportedConstructException(node, "Record value");
+			}
+			return fieldValue(field(field), node.getType());
+		} else if (node instanceof CastNode) {
+			return convert(expression(child(node, 0)), ((CastNode) node).getToType());
+		} else if (node instanceof CLVFAddNode) {
+			return binary(TransformLangParserConstants.PLUS, node);
+		} else if (node instanceof CLVFSubNode) {
+			return binary(TransformLangParserConstants.MINUS, node);
+		} else if (node instanceof CLVFMulNode) {
+			return binary(TransformLangParserConstants.MULTIPLY, node);
+		} else if (node instanceof CLVFDivNode) {
+			return binary(TransformLangParserConstants.DIVIDE, node);
+		} else if (node instanceof CLVFModNode) {
+			return binary(TransformLangParserConstants.MODULO, node);
+		} else if (node instanceof CLVFAnd || node instanceof CLVFOr) {
+			final boolean and = node instanceof CLVFAnd;
+			final String lhs = unboxed(expression(child(node, 0)));
+			final Expr rhs = expression(child(node, 1));
+			if (rhs.primitive) {
+				return new Expr("(" + lhs + (and ? " && " : " || ") + rhs.code + ")", TLTypePrimitive.BOOLEAN, true);
+			}
+			// the result of the right hand side is not checked for null, see TransformLangExecutor
+			return new Expr("(" + lhs + (and ? " ? " + rhs.code + " : Boolean.FALSE)" : " ? Boolean.TRUE : " + rhs.code + ")"),
+					TLTypePrimitive.BOOLEAN, false);
+		} else if (node instanceof CLVFComparison) {
+			return comparison((CLVFComparison) node);
+		} else if (node instanceof CLVFUnaryNonStatement) {
+			final Expr operand = convert(expression(child(node, 0)), node.getType());
+			switch (((CLVFUnaryNonStatement) node).getOperator()) {
+			case TransformLangParserConstants.NOT:
+				return new Expr("(!" + unboxed(operand) + ")", TLTypePrimitive.BOOLEAN, true);
+			case TransformLangParserConstants.MINUS:
+				if (operand.type.isDecimal()) {
+					return new Expr(operand.code + ".negate()", operand.type, false);
+				} else if (isPrimitiveType(operand.type)) {
+					return new Expr("(-" + unboxed(operand) + ")", operand.type, true);
+				}
+			}
+			throw new UnsupportedConstructException(node, "Unary operator");
+		} else if (node instanceof CLVFIsNullNode) {
+			return new Expr("(" + boxed(expression(argument(node, 0))) + " == null)", TLTypePrimitive.BOOLEAN, true);
+		} else if (node instanceof CLVFNVLNode) {
+			final Expr value = convert(expression(argument(node, 0)), node.getType());
+			final Expr defaultValue = convert(expression(argument(node, 1)), node.getType());
+			if (value.primitive) {
+				return value;
+			} else if (isPure(argument(node, 0))) {
+				return conditional(value.code + " != null", value, defaultValue);
+			} else if (isPure(argument(node, 1))) {
+				return new Expr(RUNTIME + ".nvl(" + value.code + ", " + boxed(defaultValue) + ")", node.getType(), false);
+			}
+			throw new UnsupportedConstructException(node, "nvl() with side effects");
+		} else if (node instanceof CLVFNVL2Node) {
+			return conditional(boxed(expression(argument(node, 0))) + " != null",
+					convert(expression(argument(node, 1)), node.getType()), convert(expression(argument(node, 2)), node.getType()));
+		} else if (node instanceof CLVFIIfNode) {
+			return conditional(unboxed(expression(argument(node, 0))),
+					convert(expression(argument(node, 1)), node.getType()), convert(expression(argument(node, 2)), node.getType()));
+		} else if (node instanceof CLVFConditionalExpression && node.jjtGetNumChildren() == 3) {
+			return conditional(unboxed(expression(child(node, 0))),
+					convert(expression(child(node, 1)), node.getType()), convert(expression(child(node, 2)), node.getType()));
+		} else if (node instanceof CLVFFunctionCall) {
+			if (node.getType().isVoid()) {
+				throw new UnsupportedConstructException(node, "Void function call in expression");
+			}
+			final String call = functionCall((CLVFFunctionCall) node);
+			final CLVFFunctionCall functionCall = (CLVFFunctionCall) node;
+			if (functionCall.isExternal()) {
+				return new Expr("((" + javaType(node.getType(), false) + ") " + call + ")", node.getType(), false);
+			}
+			return new Expr(call, functionCall.getLocalFunction().getType(), false);
+		} else if (node instanceof CLVFDateField || node instanceof CLVFLogLevel) {
+			return new Expr(constant(((TLType.TLTypeSymbol) node.getType()).getSymbol(), "Object"), node.getType(), false);
+		}
+		throw new UnsupportedConstructException(node, "Expression " + node.getClass().getSimpleName());
+	}
+
+	private Expr literal(CLVFLiteral node) {
+		final Object value = node.getValue();
+		if (value == null) {
+			return new Expr("null", TLType.NULL, false);
+		} else if (value instanceof Integer) {
+			return new Expr(signed(value.toString()), TLTypePrimitive.INTEGER, true);
+		} else if (value instanceof Long) {
+			return new Expr(signed(value + "L"), TLTypePrimitive.LONG, true);
+		} else if (value instanceof Double) {
+			final double d = (Double) value;
+			if (Double.isNaN(d) || Double.isInfinite(d)) {
+				return new Expr(constant(value, "Double"), TLTypePrimitive.DOUBLE, false);
+			}
+			return new Expr(signed(value.toString()), TLTypePrimitive.DOUBLE, true);
+		} else if (value instanceof Boolean) {
+			return new Expr((Boolean) value ? "CTL_TRUE" : "CTL_FALSE", TLTypePrimitive.BOOLEAN, true);
+		} else if (value instanceof String) {
+			return new Expr(constant(value, "String"), TLTypePrimitive.STRING, false);
+		} else if (value instanceof java.math.BigDecimal) {
+			return new Expr(constant(value, BIG_DECIMAL), TLTypePrimitive.DECIMAL, false);
+		} else if (value instanceof java.util.Date) {
+			return new Expr(constant(value, "java.util.Date"), TLTypePrimitive.DATETIME, false);
+		} else if (value instanceof byte[]) {
+			return new Expr(constant(value, "byte[]"), TLType.BYTEARRAY, false);
+		}
+		throw new UnsupportedConstructException(node, "Literal " + value.getClass().getSimpleName());
+	}
+
+	private static String signed(String literal) {
+		return literal.startsWith("-") ? "(" + literal + ")" : literal;
+	}
+
+	private String constant(Object value, String javaType) {
+		constants.add(value);
+		constantTypes.add(javaType);
+		return "c" + (constants.size() - 1);
+	}
+
+	private Expr binary(int operator, SimpleNode node) {
+		final TLType type = node.getType();
+		return binary(operator, convert(expression(child(node, 0)), type), convert(expression(child(node, 1)), type), type);
+	}
+
+	/**
+	 * Arithmetic operation, see TransformLangExecutor.add() and others.
+	 */
+	private Expr binary(int operator, Expr lhs, Expr rhs, TLType type) {
+		if (isPrimitiveType(type) && !type.isBoolean()) {
+			final String javaOperator;
+			switch (operator) {
+			case TransformLangParserConstants.PLUS:
+				javaOperator = " + ";
+				break;
+			case TransformLangParserConstants.MINUS:
+				javaOperator = " - ";
+				break;
+			case TransformLangParserConstants.MULTIPLY:
+				javaOperator = " * ";
+				break;
+			case TransformLangParserConstants.DIVIDE:
+				javaOperator = " / ";
+				break;
+			default:
+				javaOperator = " % ";
+				break;
+			}
+			return new Expr("(" + unboxed(lhs) + javaOperator + unboxed(rhs) + ")", type, true);
+		} else if (type.isDecimal()) {
+			final String method;
+			switch (operator) {
+			case TransformLangParserConstants.PLUS:
+				method = ".add(";
+				break;
+			case TransformLangParserConstants.MINUS:
+				method = ".subtract(";
+				break;
+			case TransformLangParserConstants.MULTIPLY:
+				method = ".multiply(";
+				break;
+			case TransformLangParserConstants.DIVIDE:
+				method = ".divide(";
+				break;
+			default:
+				method = ".remainder(";
+				break;
+			}
+			return new Expr(lhs.code + method + rhs.code + ", MAX_PRECISION)", type, false);
+		} else if (type.isString() && operator == TransformLangParserConstants.PLUS) {
+			return new Expr("(" + lhs.code + " + " + rhs.code + ")", type, false);
+		}
+		throw new UnsupportedConstructException(null, "Operation on " + type.name());
+	}
+
+	private Expr comparison(CLVFComparison node) {
+		final int operator = node.getOperator();
+		if (operator == TransformLangParserConstants.REGEX_EQUAL || operator == TransformLangParserConstants.REGEX_CONTAINS) {
+			final Expr input = convert(expression(child(node, 0)), TLTypePrimitive.STRING);
+			final Expr pattern = convert(expression(child(node, 1)), TLTypePrimitive.STRING);
+			return new Expr("rt." + (operator == TransformLangParserConstants.REGEX_EQUAL ? "matches(" : "containsMatch(")
+					+ register(node) + ", " + input.code + ", " + pattern.code + ")", TLTypePrimitive.BOOLEAN, false);
+		}
+		final TLType type = node.getOperationType();
+		final Expr lhs = convert(expression(child(node, 0)), type);
+		final Expr rhs = convert(expression(child(node, 1)), type);
+		final String javaOperator;
+		switch (operator) {
+		case TransformLangParserConstants.EQUAL:
+			javaOperator = " == ";
+			break;
+		case TransformLangParserConstants.NON_EQUAL:
+			javaOperator = " != ";
+			break;
+		case TransformLangParserConstants.LESS_THAN:
+			javaOperator = " < ";
+			break;
+		case TransformLangParserConstants.LESS_THAN_EQUAL:
+			javaOperator = " <= ";
+			break;
+		case TransformLangParserConstants.GREATER_THAN:
+			javaOperator = " > ";
+			break;
+		case TransformLangParserConstants.GREATER_THAN_EQUAL:
+			javaOperator = " >= ";
+			break;
+		default:
+			throw new UnsupportedConstructException(node, "Comparison operator " + operator);
+		}
+		if (lhs.primitive && rhs.primitive) {
+			return new Expr("(" + lhs.code + javaOperator + rhs.code + ")", TLTypePrimitive.BOOLEAN, true);
+		} else if (operator == TransformLangParserConstants.EQUAL || operator == TransformLangParserConstants.NON_EQUAL) {
+			return new Expr("(" + (operator == TransformLangParserConstants.EQUAL ? "" : "!") + RUNTIME + ".equal("
+					+ boxed(lhs) + ", " + boxed(rhs) + "))", TLTypePrimitive.BOOLEAN, true);
+		} else if (type.isInteger() || type.isLong() || type.isDouble()) {
+			return new Expr("(" + operand(lhs) + javaOperator + operand(rhs) + ")", TLTypePrimitive.BOOLEAN, true);
+		} else if (type.isDecimal() || type.isString() || type.isDate()) {
+			return new Expr("(" + RUNTIME + ".compare(" + lhs.code + ", " + rhs.code + ")" + javaOperator + "0)", TLTypePrimitive.BOOLEAN, true);
+		}
+		throw new UnsupportedConstructException(node, "Comparison of " + type.name());
+	}
+
+	private static String operand(Expr value) {
+		return value.primitive ? value.code : RUNTIME + ".operand(" + value.code + ")";
+	}
+
+	private Expr conditional(String condition, Expr whenTrue, Expr whenFalse) {
+		if (whenTrue.primitive && whenFalse.primitive) {
+			return new Expr("(" + condition + " ? " + whenTrue.code + " : " + whenFalse.code + ")", whenTrue.type, true);
+		}
+		return new Expr("(" + condition + " ? " + boxed(whenTrue) + " : " + boxed(whenFalse) + ")", whenTrue.type, false);
+	}
+
+	/**
+	 * @return Java method call of local or library function
+	 */
+	private String functionCall(CLVFFunctionCall node) {
+		final SimpleNode args = child(node, 0);
+		final StringBuilder call = new StringBuilder();
+		if (node.isExternal()) {
+			call.append("rt.call(").append(register(node));
+			for (int i = 0; i < args.jjtGetNumChildren(); i++) {
+				final SimpleNode arg = child(args, i);
+				if (!arg.getType().isTypeSymbol() && !isSupportedType(arg.getType())) {
+					throw new UnsupportedConstructException(node, "Argument of type " + arg.getType().name());
+				}
+				final Expr value = expression(arg);
+				call.append(", ").append(value.type.isNull() ? "(Object) null" : boxed(value));
+			}
+		} else {
+			final CLVFFunctionDeclaration function = node.getLocalFunction();
+			if (!functionNames.containsKey(function)) {
+				throw new UnsupportedConstructException(node, "Call of " + node.getName() + "()");
+			}
+			call.append(functionNames.get(function)).append('(');
+			final TLType[] formal = function.getFormalParameters();
+			for (int i = 0; i < args.jjtGetNumChildren(); i++) {
+				if (i > 0) {
+					call.append(", ");
+				}
+				call.append(boxed(convert(expression(child(args, i)), formal[i])));
+			}
+		}
+		return call.append(')').toString();
+	}
+
+	private String record(CLVFFieldAccessExpression node) {
+		return (node.isOutput() ? "getOutputRecord(" : "getInputRecord(") + node.getRecordId() + ")";
+	}
+
+	private String field(CLVFFieldAccessExpression node) {
+		if (!isSupportedType(node.getType())) {
+			throw new UnsupportedConstructException(node, "Field of type " + node.getType().name());
+		}
+		return record(node) + ".getField(" + node.getFieldId() + ")";
+	}
+
+	/**
+	 * Reads value of a field, see TransformLangExecutor.fieldValue().
+	 */
+	private static Expr fieldValue(String field, TLType type) {
+		if (type.isInteger()) {
+			return new Expr(RUNTIME + ".getInteger(" + field + ")", type, false, RUNTIME + ".getIntValue(" + field + ")");
+		} else if (type.isLong()) {
+			return new Expr(RUNTIME + ".getLong(" + field + ")", type, false, RUNTIME + ".getLongValue(" + field + ")");
+		} else if (type.isDouble()) {
+			return new Expr(RUNTIME + ".getDouble(" + field + ")", type, false, RUNTIME + ".getDoubleValue(" + field + ")");
+		} else if (type.isBoolean()) {
+			return new Expr(RUNTIME + ".getBoolean(" + field + ")", type, false);
+		} else if (type.isDecimal()) {
+			return new Expr(RUNTIME + ".getDecimal(" + field + ")", type, false);
+		} else if (type.isString()) {
+			return new Expr(RUNTIME + ".getString(" + field + ")", type, false);
+		} else if (type.isDate()) {
+			return new Expr(RUNTIME + ".getDate(" + field + ")", type, false);
+		} else if (type.isByteArray()) {
+			return new Expr(RUNTIME + ".getByteArray(" + field + ")", type, false);
+		}
+		throw new UnsupportedConstructException(null, "Field of type " + type.name());
+	}
+
+	/**
+	 * Implicit and explicit type conversions, see TransformLangExecutor.convertValue()
+	 * and TransformLangExecutor.visit(CastNode, Object).
+	 */
+	private Expr convert(Expr value, TLType to) {
+		final TLType from = value.type;
+		if (from.equals(to) || to.isNull()) {
+			return value;
+		}
+		if (from.isNull()) {
+			return new Expr("((" + javaType(to, false) + ") null)", to, false);
+		}
+		if (to.isString() && isSupportedType(from)) {
+			return new Expr(value.primitive ? "String.valueOf(" + value.code + ")" : RUNTIME + ".toString(" + value.code + ")", to, false);
+		}
+		if (to.isLong() && from.isInteger()) {
+			return value.primitive ? new Expr("((long) " + value.code + ")", to, true) : new Expr(RUNTIME + ".toLong(" + value.code + ")", to, false);
+		}
+		if (to.isDouble() && (from.isInteger() || from.isLong())) {
+			return value.primitive ? new Expr("((double) " + value.code + ")", to, true) : new Expr(RUNTIME + ".toDouble(" + value.code + ")", to, false);
+		}
+		if (to.isDecimal() && (from.isInteger() || from.isLong() || from.isDouble())) {
+			return new Expr(value.primitive ? "new " + BIG_DECIMAL + "(" + value.code + ", MAX_PRECISION)" : RUNTIME + ".toDecimal(" + value.code + ")", to, false);
+		}
+		throw new UnsupportedConstructException(null, "Conversion from " + from.name() + " to " + to.name());
+	}
+
+	private static String boxed(Expr value) {
+		if (!value.primitive) {
+			return value.code;
+		}
+		return javaType(value.type, false) + ".valueOf(" + value.code + ")";
+	}
+
+	private static String unboxed(Expr value) {
+		if (value.primitive) {
+			return value.code;
+		} else if (value.primitiveCode != null) {
+			return value.primitiveCode;
+		} else if (isPrimitiveType(value.type)) {
+			return value.code + "." + javaType(value.type, true) + "Value()";
+		}
+		return value.code;
+	}
+
+	private static boolean isPrimitiveType(TLType type) {
+		return type.isInteger() || type.isLong() || type.isDouble() || type.isBoolean();
+	}
+
+	private static boolean isSupportedType(TLType type) {
+		return isPrimitiveType(type) || type.isString() || type.isDecimal() || type.isDate() || type.isByteArray();
+	}
+
+	private static String javaType(TLType type, boolean primitive) {
+		if (type.isInteger()) {
+			return primitive ? "int" : "Integer";
+		} else if (type.isLong()) {
+			return primitive ? "long" : "Long";
+		} else if (type.isDouble()) {
+			return primitive ? "double" : "Double";
+		} else if (type.isBoolean()) {
+			return primitive ? "boolean" : "Boolean";
+		} else if (type.isString()) {
+			return "String";
+		} else if (type.isDecimal()) {
+			return BIG_DECIMAL;
+		} else if (type.isDate()) {
+			return "java.util.Date";
+		} else if (type.isByteArray()) {
+			return "byte[]";
+		} else if (type.isTypeSymbol()) {
+			return "Object";
+		}
+		throw new UnsupportedConstructException(null, "Type " + type.name());
+	}
+
+	/*
+	 * Utilities
+	 */
+
+	private int register(SimpleNode node) {
+		nodes.add(node);
+		return nodes.size() - 1;
+	}
+
+	private static CLVFVariableDeclaration variable(CLVFIdentifier node) {
+		if (node.getVariable() == null) {
+			throw new UnsupportedConstructException(node, "Identifier " + node.getName());
+		}
+		return node.getVariable();
+	}
+
+	private static SimpleNode child(Node node, int index) {
+		return (SimpleNode) node.jjtGetChild(index);
+	}
+
+	private static SimpleNode argument(SimpleNode node, int index) {
+		return child(child(node, 0), index);
+	}
+
+}
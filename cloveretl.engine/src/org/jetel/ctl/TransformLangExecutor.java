@@ -658,7 +658,11 @@ public class TransformLangExecutor implements TransformLangParserVisitor, Transf
 		node.jjtGetChild(0).jjtAccept(this, data);
 		node.jjtGetChild(1).jjtAccept(this, data);
 		
-		add(node.getType());
+		if (node.getTypedOperation() != null) {
+			node.getTypedOperation().execute(stack);
+		} else {
+			add(node.getType());
+		}
 		
 		return data;
 	}
@@ -701,6 +705,12 @@ public class TransformLangExecutor implements TransformLangParserVisitor, Transf
 			stack.push(IntegralLib.containsMatch(node.getComparisonContext(), input, pattern));
 			break;
 		default:
+			if (node.getTypedOperation() != null) {
+				node.jjtGetChild(0).jjtAccept(this, data);
+				node.jjtGetChild(1).jjtAccept(this, data);
+				node.getTypedOperation().execute(stack);
+				break;
+			}
 			node.jjtGetChild(0).jjtAccept(this, data);
 			final Object lhs = stack.pop();
 			node.jjtGetChild(1).jjtAccept(this, data);
@@ -987,7 +997,11 @@ public class TransformLangExecutor implements TransformLangParserVisitor, Transf
 		node.jjtGetChild(0).jjtAccept(this, data);
 		node.jjtGetChild(1).jjtAccept(this, data);
 		
-		subtract(node.getType());
+		if (node.getTypedOperation() != null) {
+			node.getTypedOperation().execute(stack);
+		} else {
+			subtract(node.getType());
+		}
 		
 		return data;
 	}
@@ -1019,7 +1033,11 @@ public class TransformLangExecutor implements TransformLangParserVisitor, Transf
 		node.jjtGetChild(0).jjtAccept(this, data);
 		node.jjtGetChild(1).jjtAccept(this, data);
 		
-		multiply(node.getType());
+		if (node.getTypedOperation() != null) {
+			node.getTypedOperation().execute(stack);
+		} else {
+			multiply(node.getType());
+		}
 		
 		return data;
 	}
@@ -1051,7 +1069,11 @@ public class TransformLangExecutor implements TransformLangParserVisitor, Transf
 		node.jjtGetChild(0).jjtAccept(this, data);
 		node.jjtGetChild(1).jjtAccept(this, data);
 		
-		divide(node.getType());
+		if (node.getTypedOperation() != null) {
+			node.getTypedOperation().execute(stack);
+		} else {
+			divide(node.getType());
+		}
 		
 		return data;
 	}
@@ -1083,7 +1105,11 @@ public class TransformLangExecutor implements TransformLangParserVisitor, Transf
 		node.jjtGetChild(0).jjtAccept(this, data);
 		node.jjtGetChild(1).jjtAccept(this, data);
 		
-		modulus(node.getType());
+		if (node.getTypedOperation() != null) {
+			node.getTypedOperation().execute(stack);
+		} else {
+			modulus(node.getType());
+		}
 		
 		return data;
 	}
@@ -2810,24 +2836,54 @@ public class TransformLangExecutor implements TransformLangParserVisitor, Transf
 		} catch (RaiseErrorException ex) {
 			throw ex; // CLO-4084
 		} catch (TransformLangExecutorRuntimeException ex) {
-			// CLO-2104: decorate the exception with an ErrorReporter instance to provide more detailed error reporting
-			String source = parser.getSource();
-			SimpleNode nodeInError = ex.getNode();
-			if ((nodeInError != null) && (nodeInError.getSourceFilename() != null)) {
-				URL contextURL = (graph != null) ? graph.getRuntimeContext().getContextURL() : null;
-				try {
-					source = FileUtils.getStringFromURL(contextURL, nodeInError.getSourceFilename(), parser.getEncoding());
-				} catch (Exception ioe) {
-					source = null;
-				}
-			}
-			ErrorReporter errorReporter = new ErrorReporter(ex, stack, inputRecords, outputRecords, source);
-			errorReporter.setTabWidth(parser.getTabSize());
-			errorReporter.createReport();
-			ex.setErrorReporter(errorReporter);
+			reportError(ex);
 			throw ex;
 		}
 	}
+
+	/**
+	 * Executes AST node containing a function declaration with input and output records set by the last call of
+	 * {@link #executeFunction(CLVFFunctionDeclaration, Object[], DataRecord[], DataRecord[])}.
+	 * Intended for repeated execution of a function over a batch of records, which are deserialized
+	 * one by one into the same record instances, so the records are not set again for each call.
+	 * 
+	 * @param node	function declaration
+	 * @param arguments	arguments to be passed to the function
+	 * @return return value of executed function or <code>null</code> if <code>void</code>
+	 */
+	public Object executeFunctionOnCurrentRecords(CLVFFunctionDeclaration node, Object[] arguments) {
+		try {
+			this.lastReturnValue = null;
+			executeFunction(node, arguments);
+			return this.lastReturnValue;
+		} catch (RaiseErrorException ex) {
+			throw ex; // CLO-4084
+		} catch (TransformLangExecutorRuntimeException ex) {
+			reportError(ex);
+			throw ex;
+		}
+	}
+
+	/**
+	 * Decorates the exception with an {@link ErrorReporter}.
+	 */
+	private void reportError(TransformLangExecutorRuntimeException ex) {
+		// CLO-2104: decorate the exception with an ErrorReporter instance to provide more detailed error reporting
+		String source = parser.getSource();
+		SimpleNode nodeInError = ex.getNode();
+		if ((nodeInError != null) && (nodeInError.getSourceFilename() != null)) {
+			URL contextURL = (graph != null) ? graph.getRuntimeContext().getContextURL() : null;
+			try {
+				source = FileUtils.getStringFromURL(contextURL, nodeInError.getSourceFilename(), parser.getEncoding());
+			} catch (Exception ioe) {
+				source = null;
+			}
+		}
+		ErrorReporter errorReporter = new ErrorReporter(ex, stack, this.inputRecords, this.outputRecords, source);
+		errorReporter.setTabWidth(parser.getTabSize());
+		errorReporter.createReport();
+		ex.setErrorReporter(errorReporter);
+	}
 	
 	
 	/**
@@ -0,0 +1,369 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.ctl;
+
+import org.jetel.ctl.data.TLType;
+
+/**
+ * Arithmetic and comparison operations specialized for a single primitive type.
+ * {@link ASTOptimizer} stores them into the arithmetic and comparison nodes,
+ * so that {@link TransformLangExecutor} does not need to branch on the type of the operation
+ * for each evaluation.
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public enum TypedOperation {
+
+	INTEGER_ADD {
+		@Override
+		public void execute(Stack stack) {
+			final int rhs = stack.popInt();
+			stack.push(stack.popInt() + rhs);
+		}
+	},
+	INTEGER_SUBTRACT {
+		@Override
+		public void execute(Stack stack) {
+			final int rhs = stack.popInt();
+			stack.push(stack.popInt() - rhs);
+		}
+	},
+	INTEGER_MULTIPLY {
+		@Override
+		public void execute(Stack stack) {
+			final int rhs = stack.popInt();
+			stack.push(stack.popInt() * rhs);
+		}
+	},
+	INTEGER_DIVIDE {
+		@Override
+		public void execute(Stack stack) {
+			final int rhs = stack.popInt();
+			stack.push(stack.popInt() / rhs);
+		}
+	},
+	INTEGER_MODULO {
+		@Override
+		public void execute(Stack stack) {
+			final int rhs = stack.popInt();
+			stack.push(stack.popInt() % rhs);
+		}
+	},
+	LONG_ADD {
+		@Override
+		public void execute(Stack stack) {
+			final long rhs = stack.popLong();
+			stack.push(stack.popLong() + rhs);
+		}
+	},
+	LONG_SUBTRACT {
+		@Override
+		public void execute(Stack stack) {
+			final long rhs = stack.popLong();
+			stack.push(stack.popLong() - rhs);
+		}
+	},
+	LONG_MULTIPLY {
+		@Override
+		public void execute(Stack stack) {
+			final long rhs = stack.popLong();
+			stack.push(stack.popLong() * rhs);
+		}
+	},
+	LONG_DIVIDE {
+		@Override
+		public void execute(Stack stack) {
+			final long rhs = stack.popLong();
+			stack.push(stack.popLong() / rhs);
+		}
+	},
+	LONG_MODULO {
+		@Override
+		public void execute(Stack stack) {
+			final long rhs = stack.popLong();
+			stack.push(stack.popLong() % rhs);
+		}
+	},
+	DOUBLE_ADD {
+		@Override
+		public void execute(Stack stack) {
+			final double rhs = stack.popDouble();
+			stack.push(stack.popDouble() + rhs);
+		}
+	},
+	DOUBLE_SUBTRACT {
+		@Override
+		public void execute(Stack stack) {
+			final double rhs = stack.popDouble();
+			stack.push(stack.popDouble() - rhs);
+		}
+	},
+	DOUBLE_MULTIPLY {
+		@Override
+		public void execute(Stack stack) {
+			final double rhs = stack.popDouble();
+			stack.push(stack.popDouble() * rhs);
+		}
+	},
+	DOUBLE_DIVIDE {
+		@Override
+		public void execute(Stack stack) {
+			final double rhs = stack.popDouble();
+			stack.push(stack.popDouble() / rhs);
+		}
+	},
+	DOUBLE_MODULO {
+		@Override
+		public void execute(Stack stack) {
+			final double rhs = stack.popDouble();
+			stack.push(stack.popDouble() % rhs);
+		}
+	},
+
+	/*
+	 * Comparisons of primitive values. Only equality is defined for null values,
+	 * see TransformLangExecutor.compare().
+	 */
+
+	INTEGER_EQUAL {
+		@Override
+		public void execute(Stack stack) {
+			final Integer rhs = stack.popInt();
+			final Integer lhs = stack.popInt();
+			stack.push(lhs == null || rhs == null ? lhs == rhs : lhs.intValue() == rhs.intValue());
+		}
+	},
+	INTEGER_NON_EQUAL {
+		@Override
+		public void execute(Stack stack) {
+			final Integer rhs = stack.popInt();
+			final Integer lhs = stack.popInt();
+			stack.push(lhs == null || rhs == null ? lhs != rhs : lhs.intValue() != rhs.intValue());
+		}
+	},
+	INTEGER_LESS_THAN {
+		@Override
+		public void execute(Stack stack) {
+			final Integer rhs = stack.popInt();
+			stack.push(operand(stack.popInt()) < operand(rhs));
+		}
+	},
+	INTEGER_LESS_THAN_EQUAL {
+		@Override
+		public void execute(Stack stack) {
+			final Integer rhs = stack.popInt();
+			stack.push(operand(stack.popInt()) <= operand(rhs));
+		}
+	},
+	INTEGER_GREATER_THAN {
+		@Override
+		public void execute(Stack stack) {
+			final Integer rhs = stack.popInt();
+			stack.push(operand(stack.popInt()) > operand(rhs));
+		}
+	},
+	INTEGER_GREATER_THAN_EQUAL {
+		@Override
+		public void execute(Stack stack) {
+			final Integer rhs = stack.popInt();
+			stack.push(operand(stack.popInt()) >= operand(rhs));
+		}
+	},
+	LONG_EQUAL {
+		@Override
+		public void execute(Stack stack) {
+			final Long rhs = stack.popLong();
+			final Long lhs = stack.popLong();
+			stack.push(lhs == null || rhs == null ? lhs == rhs : lhs.longValue() == rhs.longValue());
+		}
+	},
+	LONG_NON_EQUAL {
+		@Override
+		public void execute(Stack stack) {
+			final Long rhs = stack.popLong();
+			final Long lhs = stack.popLong();
+			stack.push(lhs == null || rhs == null ? lhs != rhs : lhs.longValue() != rhs.longValue());
+		}
+	},
+	LONG_LESS_THAN {
+		@Override
+		public void execute(Stack stack) {
+			final Long rhs = stack.popLong();
+			stack.push(operand(stack.popLong()) < operand(rhs));
+		}
+	},
+	LONG_LESS_THAN_EQUAL {
+		@Override
+		public void execute(Stack stack) {
+			final Long rhs = stack.popLong();
+			stack.push(operand(stack.popLong()) <= operand(rhs));
+		}
+	},
+	LONG_GREATER_THAN {
+		@Override
+		public void execute(Stack stack) {
+			final Long rhs = stack.popLong();
+			stack.push(operand(stack.popLong()) > operand(rhs));
+		}
+	},
+	LONG_GREATER_THAN_EQUAL {
+		@Override
+		public void execute(Stack stack) {
+			final Long rhs = stack.popLong();
+			stack.push(operand(stack.popLong()) >= operand(rhs));
+		}
+	},
+	DOUBLE_EQUAL {
+		@Override
+		public void execute(Stack stack) {
+			final Double rhs = stack.popDouble();
+			final Double lhs = stack.popDouble();
+			stack.push(lhs == null || rhs == null ? lhs == rhs : lhs.doubleValue() == rhs.doubleValue());
+		}
+	},
+	DOUBLE_NON_EQUAL {
+		@Override
+		public void execute(Stack stack) {
+			final Double rhs = stack.popDouble();
+			final Double lhs = stack.popDouble();
+			stack.push(lhs == null || rhs == null ? lhs != rhs : lhs.doubleValue() != rhs.doubleValue());
+		}
+	},
+	DOUBLE_LESS_THAN {
+		@Override
+		public void execute(Stack stack) {
+			final Double rhs = stack.popDouble();
+			stack.push(operand(stack.popDouble()) < operand(rhs));
+		}
+	},
+	DOUBLE_LESS_THAN_EQUAL {
+		@Override
+		public void execute(Stack stack) {
+			final Double rhs = stack.popDouble();
+			stack.push(operand(stack.popDouble()) <= operand(rhs));
+		}
+	},
+	DOUBLE_GREATER_THAN {
+		@Override
+		public void execute(Stack stack) {
+			final Double rhs = stack.popDouble();
+			stack.push(operand(stack.popDouble()) > operand(rhs));
+		}
+	},
+	DOUBLE_GREATER_THAN_EQUAL {
+		@Override
+		public void execute(Stack stack) {
+			final Double rhs = stack.popDouble();
+			stack.push(operand(stack.popDouble()) >= operand(rhs));
+		}
+	};
+
+	/**
+	 * Pops the operands from the stack and pushes the result.
+	 */
+	public abstract void execute(Stack stack);
+
+	private static <T> T operand(T value) {
+		if (value == null) {
+			throw new TransformLangExecutorRuntimeException("compare: unsupported compare operation for null value");
+		}
+		return value;
+	}
+
+	/**
+	 * @param operator one of PLUS, MINUS, MULTIPLY, DIVIDE, MODULO
+	 * @param type type of the operation
+	 * @return specialized operation or <code>null</code> if there is none for the type
+	 */
+	public static TypedOperation arithmetic(int operator, TLType type) {
+		final int index;
+		switch (operator) {
+		case TransformLangParserConstants.PLUS:
+			index = 0;
+			break;
+		case TransformLangParserConstants.MINUS:
+			index = 1;
+			break;
+		case TransformLangParserConstants.MULTIPLY:
+			index = 2;
+			break;
+		case TransformLangParserConstants.DIVIDE:
+			index = 3;
+			break;
+		case TransformLangParserConstants.MODULO:
+			index = 4;
+			break;
+		default:
+			return null;
+		}
+		return select(INTEGER_ADD, 5, index, type);
+	}
+
+	/**
+	 * @param operator one of EQUAL, NON_EQUAL, LESS_THAN, LESS_THAN_EQUAL, GREATER_THAN, GREATER_THAN_EQUAL
+	 * @param type type in which the values are compared
+	 * @return specialized operation or <code>null</code> if there is none for the type
+	 */
+	public static TypedOperation comparison(int operator, TLType type) {
+		final int index;
+		switch (operator) {
+		case TransformLangParserConstants.EQUAL:
+			index = 0;
+			break;
+		case TransformLangParserConstants.NON_EQUAL:
+			index = 1;
+			break;
+		case TransformLangParserConstants.LESS_THAN:
+			index = 2;
+			break;
+		case TransformLangParserConstants.LESS_THAN_EQUAL:
+			index = 3;
+			break;
+		case TransformLangParserConstants.GREATER_THAN:
+			index = 4;
+			break;
+		case TransformLangParserConstants.GREATER_THAN_EQUAL:
+			index = 5;
+			break;
+		default:
+			return null;
+		}
+		return select(INTEGER_EQUAL, 6, index, type);
+	}
+
+	/**
+	 * Operations are declared in groups of the same size for integer, long and double.
+	 */
+	private static TypedOperation select(TypedOperation first, int groupSize, int index, TLType type) {
+		final int group;
+		if (type == null) {
+			return null;
+		} else if (type.isInteger()) {
+			group = 0;
+		} else if (type.isLong()) {
+			group = 1;
+		} else if (type.isDouble()) {
+			group = 2;
+		} else {
+			return null;
+		}
+		return values()[first.ordinal() + group * groupSize + index];
+	}
+
+}
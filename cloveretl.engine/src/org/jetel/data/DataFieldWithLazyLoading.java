@@ -88,6 +88,18 @@ public class DataFieldWithLazyLoading extends DataField {
 		}
 	}
 
+	/**
+	 * Wrapped fields don't know this class, so other lazy field is loaded and its wrapped field is returned.
+	 */
+	private static Object unwrap(Object obj) {
+		if (obj instanceof DataFieldWithLazyLoading) {
+			DataFieldWithLazyLoading lazyField = (DataFieldWithLazyLoading) obj;
+			lazyField.loadIfNeeded();
+			return lazyField.dataField;
+		}
+		return obj;
+	}
+
 	/**
 	 * Source data for lazy loading are NOT cloned! Only reference is copied!
 	 */
@@ -106,11 +118,15 @@ public class DataFieldWithLazyLoading extends DataField {
 	@Deprecated
 	@Override
 	public void copyFrom(DataField fieldFrom) {
-		dataField.copyFrom(fieldFrom);
 		if (fieldFrom instanceof DataFieldWithLazyLoading) {
-			setSourceData(((DataFieldWithLazyLoading) fieldFrom).sourceData);
-			((DataFieldWithLazyLoading) fieldFrom).needsToBeLoaded = needsToBeLoaded;
-			((DataFieldWithLazyLoading) fieldFrom).lazyLoader = lazyLoader;
+			DataFieldWithLazyLoading lazyFieldFrom = (DataFieldWithLazyLoading) fieldFrom;
+			dataField.copyFrom(lazyFieldFrom.dataField);
+			sourceData = lazyFieldFrom.sourceData;
+			needsToBeLoaded = lazyFieldFrom.needsToBeLoaded;
+			lazyLoader = lazyFieldFrom.lazyLoader;
+		} else {
+			dataField.copyFrom(fieldFrom);
+			needsToBeLoaded = false;
 		}
 	}
 
@@ -128,7 +144,7 @@ public class DataFieldWithLazyLoading extends DataField {
 	 */
 	@Override
 	public void setValue(DataField fromField) {
-		dataField.setValue(fromField);
+		dataField.setValue((DataField) unwrap(fromField));
 		needsToBeLoaded = false;
 	}
 
@@ -306,7 +322,8 @@ public class DataFieldWithLazyLoading extends DataField {
 	 */
 	@Override
 	public boolean equals(Object obj) {
-		return dataField.equals(obj);
+		loadIfNeeded();
+		return dataField.equals(unwrap(obj));
 	}
 
 	/**
@@ -314,6 +331,7 @@ public class DataFieldWithLazyLoading extends DataField {
 	 */
 	@Override
 	public int hashCode() {
+		loadIfNeeded();
 		return dataField.hashCode();
 	}
 
@@ -322,7 +340,8 @@ public class DataFieldWithLazyLoading extends DataField {
 	 */
 	@Override
 	public int compareTo(Object obj) {
-		return dataField.compareTo(obj);
+		loadIfNeeded();
+		return dataField.compareTo(unwrap(obj));
 	}
 
 	/**
@@ -330,6 +349,7 @@ public class DataFieldWithLazyLoading extends DataField {
 	 */
 	@Override
 	public int getSizeSerialized() {
+		loadIfNeeded();
 		return dataField.getSizeSerialized();
 	}
 }
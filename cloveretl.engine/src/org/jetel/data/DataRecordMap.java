@@ -27,6 +27,8 @@ import java.util.NoSuchElementException;
  * values with the same key. Duplicate values are stored as linked list. T also enables to change functionality of put
  * operation. (if map contains value with specified key, new value is not saved at all).
  * 
+ * @see OffHeapDataRecordMap
+ * 
  * @author lkrejci
  * 
  * @created May 6, 2010
@@ -398,7 +400,7 @@ public class DataRecordMap {
 		duplicates++;
 	}
 
-	private boolean equals(DataRecord record1, DataField[] key2) {
+	boolean equals(DataRecord record1, DataField[] key2) {
 		if (equalNULLs) {
 			for (int i = 0; i < putKeyFields.length; i++) {
 				DataField field1 = record1.getField(putKeyFields[i]);
@@ -507,7 +509,7 @@ public class DataRecordMap {
 	public class DataRecordLookup {
 
 		protected int[] keyFieldsIndexes;
-		private DataField[] keyFields;
+		protected DataField[] keyFields;
 
 		DataRecordLookup(RecordKey key, DataRecord record) {
 			this.keyFieldsIndexes = key.getKeyFields();
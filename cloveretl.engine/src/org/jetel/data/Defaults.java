@@ -252,6 +252,8 @@ public final class Defaults {
         USE_DIRECT_MEMORY = getBooleanProperties("USE_DIRECT_MEMORY", true);
         USE_DYNAMIC_COMPILER = getBooleanProperties("USE_DYNAMIC_COMPILER", true);
         MAX_MAPPED_FILE_TRANSFER_SIZE = getIntProperties("MAX_MAPPED_FILE_TRANSFER_SIZE", 8388608);
+        PARALLEL_COMPRESSION_THREADS = getIntProperties("PARALLEL_COMPRESSION_THREADS", 0);
+        PARALLEL_COMPRESSION_BLOCK_SIZE = getIntProperties("PARALLEL_COMPRESSION_BLOCK_SIZE", 131072);
         CLOVER_BUFFER_DIRECT_MEMORY_LIMIT_SIZE = getLongProperties("CLOVER_BUFFER_DIRECT_MEMORY_LIMIT_SIZE", MemoryUtils.getDirectMemorySize() / 2);
         
         
@@ -288,6 +290,17 @@ public final class Defaults {
 	 */
 	public static int MAX_MAPPED_FILE_TRANSFER_SIZE; // = 8 MB;
 
+	/**
+	 * Number of threads compressing gzip and zip outputs, see {@link org.jetel.util.stream.ParallelDeflaterOutputStream}.
+	 * 0 means number of available processors, 1 switches parallel compression off.
+	 */
+	public static int PARALLEL_COMPRESSION_THREADS; // = 0;
+
+	/**
+	 * Size of blocks compressed independently by parallel compression of gzip and zip outputs.
+	 */
+	public static int PARALLEL_COMPRESSION_BLOCK_SIZE; // = 128 KB;
+
 	/**
 	 * Default path to external binary files.
 	 */
@@ -498,6 +511,8 @@ public final class Defaults {
 		public static void init() {
 			FIELD_BUFFER_LENGTH = getIntProperties(FIELD_BUFFER_LENGTH_KEY, 512);
 			DEFAULT_CHARSET_DECODER = getStringProperties(DEFAULT_CHARSET_DECODER_KEY, "UTF-8");
+			XLSX_SHARED_STRINGS_IN_MEMORY = getIntProperties("DataParser.XLSX_SHARED_STRINGS_IN_MEMORY", 16 * 1048576);
+			BYTE_DELIMITED_PARSER = getBooleanProperties("DataParser.BYTE_DELIMITED_PARSER", false);
 		}
 
 		/**
@@ -512,6 +527,19 @@ public final class Defaults {
 		 * default character-decoder to be used if not specified
 		 */
 		public static String DEFAULT_CHARSET_DECODER;// = "UTF-8";
+
+		/**
+		 * Number of characters of the XLSX shared strings table kept in memory by the streaming XLSX parser.
+		 * Larger tables are spilled to a temporary file.
+		 */
+		public static int XLSX_SHARED_STRINGS_IN_MEMORY;// = 16 M;
+
+		/**
+		 * Allows {@link org.jetel.data.parser.TextParserFactory} to choose
+		 * {@link org.jetel.data.parser.ByteDelimitedDataParser} for simple delimited data.
+		 * The parser doesn't provide raw records in error reports, so it is disabled by default.
+		 */
+		public static boolean BYTE_DELIMITED_PARSER;// = false;
 	}
 
 	/**
@@ -531,6 +559,9 @@ public final class Defaults {
 			FIELD_BUFFER_LENGTH = getIntProperties(FIELD_BUFFER_LENGTH_KEY, 512);
 			DELIMITER_DELIMITERS_REGEX = getStringProperties(DELIMITER_DELIMITERS_REGEX_KEY, "\\\\\\|");
 			DELIMITER_DELIMITERS = getStringProperties(DELIMITER_DELIMITERS_KEY, "\\\\|");
+			XLSX_STREAMING_ROW_WINDOW = getIntProperties("DataFormatter.XLSX_STREAMING_ROW_WINDOW", 100);
+			XLSX_STREAMING_SHARED_STRINGS = getBooleanProperties("DataFormatter.XLSX_STREAMING_SHARED_STRINGS", false);
+			XLSX_STREAMING_COMPRESS_TEMP_FILES = getBooleanProperties("DataFormatter.XLSX_STREAMING_COMPRESS_TEMP_FILES", false);
 		}
 
 		/**
@@ -555,6 +586,23 @@ public final class Defaults {
 		 * just a string representation of delimiter of delimiters  
 		 */
 		public static String DELIMITER_DELIMITERS;// = "\\\\|";
+
+		/**
+		 * Number of rows per sheet kept in memory by the streaming XLSX formatter,
+		 * older rows are flushed to a temporary file.
+		 */
+		public static int XLSX_STREAMING_ROW_WINDOW;// = 100;
+
+		/**
+		 * If <code>true</code>, the streaming XLSX formatter writes strings to the shared strings table
+		 * which is kept in memory, otherwise strings are written inline into the sheets.
+		 */
+		public static boolean XLSX_STREAMING_SHARED_STRINGS;// = false;
+
+		/**
+		 * If <code>true</code>, temporary sheet files of the streaming XLSX formatter are compressed.
+		 */
+		public static boolean XLSX_STREAMING_COMPRESS_TEMP_FILES;// = false;
 	}
 
 	/**
@@ -722,12 +770,21 @@ public final class Defaults {
 		public static void init() {
 			DEFAULT_INTERNAL_SORT_BUFFER_CAPACITY = getIntProperties(
 					"InternalSortDataRecord.DEFAULT_INTERNAL_SORT_BUFFER_CAPACITY", 2000);
+			USE_NORMALIZED_KEYS = getBooleanProperties("InternalSortDataRecord.USE_NORMALIZED_KEYS", false);
 		}
 
 		/**
 		 * Size of internal buffer of internal record sorter. Specified in record count.
 		 */
 		public static int DEFAULT_INTERNAL_SORT_BUFFER_CAPACITY;
+
+		/**
+		 * Whether internal record sorter encodes sort keys into binary prefixes
+		 * and sorts them by radix sort, see {@link org.jetel.data.NormalizedKeySorter}.
+		 * The sorter allocates additional arrays with the size of the largest sorted collection
+		 * (about 48 bytes per record), so it is disabled by default.
+		 */
+		public static boolean USE_NORMALIZED_KEYS;
 	}
 
 	public final static class Graph {
@@ -738,6 +795,9 @@ public final class Defaults {
 					Defaults.Record.RECORD_INITIAL_SIZE * 10);
 			DIRECT_EDGE_FAST_PROPAGATE_NUM_INTERNAL_BUFFERS = getIntProperties(
 					"Graph.DIRECT_EDGE_FAST_PROPAGATE_NUM_INTERNAL_BUFFERS", 4);
+			DIRECT_RING_EDGE_BUFFER_SIZE = getIntProperties("Graph.DIRECT_RING_EDGE_BUFFER_SIZE",
+					DIRECT_EDGE_INTERNAL_BUFFER_SIZE * 2);
+			RECORD_BATCH_SIZE = getIntProperties("Graph.RECORD_BATCH_SIZE", 1);
 		    DEFAULT_EDGE_DEBUGGING_MAX_RECORDS = getIntProperties(
 					"Graph.DEFAULT_EDGE_DEBUGGING_MAX_RECORDS", 1000);
 		    DEFAULT_EDGE_DEBUGGING_MAX_BYTES = getIntProperties(
@@ -765,6 +825,19 @@ public final class Defaults {
 		 * speed but not much.
 		 */
 		public static int DIRECT_EDGE_FAST_PROPAGATE_NUM_INTERNAL_BUFFERS;
+
+		/**
+		 * Initial size of ring buffer of DirectRingEdge. The size is rounded up to the nearest power of two.
+		 * The ring is automatically enlarged if a record bigger than half of the ring is transmitted.
+		 */
+		public static int DIRECT_RING_EDGE_BUFFER_SIZE;
+
+		/**
+		 * Maximum number of records read from an input port and processed by a single call in components
+		 * supporting batch processing, see {@link RecordBatch}. Value 1 or less disables the batch processing,
+		 * which is the default.
+		 */
+		public static int RECORD_BATCH_SIZE;
 		
 	    /**
 	     * Maximal number of records persisted on an edge for default edge debugging.
@@ -813,6 +886,7 @@ public final class Defaults {
 		public static void init() {
 			VOID_METADATA_NAME = getStringProperties("TLCompiler.VOID_METADATA_NAME", "VoidMetadata");
 			DECIMAL_PRECISION = getIntProperties("CTL.DECIMAL_PRECISION", 32);
+			AST_OPTIMIZATION = getBooleanProperties("CTL.AST_OPTIMIZATION", true);
 		}
 
 		/** The name of void metadata used by Rollup transforms when no group accumulator is used. */
@@ -824,6 +898,13 @@ public final class Defaults {
 		 */
 		public static int DECIMAL_PRECISION; // = 32
 
+		/**
+		 * Interpreted CTL code is optimized after compilation - constant expressions are evaluated,
+		 * unreachable statements removed and arithmetic operations specialized for their type.
+		 * @see org.jetel.ctl.ASTOptimizer
+		 */
+		public static boolean AST_OPTIMIZATION; // = true
+
 	}
 
 	/**
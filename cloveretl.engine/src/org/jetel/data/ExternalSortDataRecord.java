@@ -20,6 +20,12 @@ package org.jetel.data;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.jetel.data.tape.DataRecordTape;
 import org.jetel.data.tape.TapeCarousel;
@@ -33,14 +39,19 @@ import org.jetel.util.bytes.CloverBuffer;
  *  Incoming data are stored in in-memory buffer(s), buffers
  *  are allocated in the fly - instance of SortDataRecordInternal 
  *  is used for this. When capacity is finished, data are flushed to 
- *  the disk (each chunk is sorted).
+ *  the disk (each chunk is sorted). Sorting and flushing of the full buffer
+ *  is performed by a background thread, meanwhile incoming records are stored
+ *  into a second in-memory buffer.
  *  
  *  When storing phase is finished, sort method must be called - it 
  *  assures to sort and flush all in-memory data, so we are ready
  *  for merging phase.
  *  
  *  Now reading can start - during this phase, data are read
- *  from the disk from tapes and merged together.
+ *  from the disk from tapes and merged together. The lowest record
+ *  is selected by a tournament tree ({@link RecordLoserTree}), so the number
+ *  of tapes can be high without slowing down the merge. Tapes are read ahead
+ *  by background threads.
  *  
  *  If size of incoming data is not bigger than defined limit,
  *  in-memory sorting occurs.
@@ -57,8 +68,17 @@ import org.jetel.util.bytes.CloverBuffer;
 
 public class ExternalSortDataRecord implements ISortDataRecord {
 
+	/** Size of a block of records which is read ahead from a tape at once */
+	private static final int READ_AHEAD_BLOCK_SIZE = Defaults.Record.RECORD_INITIAL_SIZE;
+
 	private boolean doMerge = false;
 	private InternalSortDataRecord sorter;
+	/** second in-memory buffer, flushed to a tape while the first one is being filled */
+	private InternalSortDataRecord spareSorter;
+	private int internalBufferCapacity;
+	private String localeStr;
+	private boolean caseSensitive;
+	private int sortThreads = 1;
 	private TapeCarousel tapeCarousel;
 	private boolean carouselInitialized;
 	private int numberOfTapes;
@@ -69,6 +89,11 @@ public class ExternalSortDataRecord implements ISortDataRecord {
 	private CloverBuffer recordBuffer;
 	private boolean[] sourceRecordsFlags;
 	private DataRecord[] sourceRecords;
+	private TapeReader[] tapeReaders;
+	private RecordLoserTree mergeTree;
+	private ExecutorService tapeExecutor;
+	/** flushing of the last full in-memory buffer, null if no flushing is running */
+	private Future<Void> pendingRun;
 	int prevIndex;
 	
 	public ExternalSortDataRecord() {
@@ -105,19 +130,12 @@ public class ExternalSortDataRecord implements ISortDataRecord {
 		this.sortKeysNames = keyItems;		
 		this.sortOrderings = sortOrderings;
 		this.numberOfTapes = numberOfTapes;
+		this.internalBufferCapacity = internalBufferCapacity;
+		this.localeStr = localeStr;
+		this.caseSensitive = caseSensitive;
 		this.prevIndex = -1;
 		inMetadata = metadata;
-		if (internalBufferCapacity>0){	
-            sorter = new InternalSortDataRecord(metadata, keyItems, sortOrderings, false, internalBufferCapacity);
-        } else {
-            sorter = new InternalSortDataRecord(metadata, keyItems, sortOrderings, false);
-        }
-		
-		// create collators
-		if (localeStr != null) {
-			sorter.setCollatorLocale(localeStr);
-			sorter.setCaseSensitive(caseSensitive);
-		}
+		sorter = createInternalSorter();
 		
 		recordBuffer = CloverBuffer.allocateDirect(Defaults.Record.RECORD_INITIAL_SIZE, Defaults.Record.RECORD_LIMIT_SIZE);
 		
@@ -131,15 +149,44 @@ public class ExternalSortDataRecord implements ISortDataRecord {
         sourceRecordsFlags = new boolean[numberOfTapes];
 	}
 
+	private InternalSortDataRecord createInternalSorter() {
+		InternalSortDataRecord result;
+		if (internalBufferCapacity>0){
+			result = new InternalSortDataRecord(inMetadata, sortKeysNames, sortOrderings, false, internalBufferCapacity);
+        } else {
+        	result = new InternalSortDataRecord(inMetadata, sortKeysNames, sortOrderings, false);
+        }
+
+		// create collators
+		if (localeStr != null) {
+			result.setCollatorLocale(localeStr);
+			result.setCaseSensitive(caseSensitive);
+		}
+		result.setSortThreads(sortThreads);
+		return result;
+	}
+
+	/**
+	 * Sets number of threads used for sorting of in-memory buffers.
+	 * 
+	 * @param sortThreads
+	 * @see InternalSortDataRecord#setSortThreads(int)
+	 */
+	public void setSortThreads(int sortThreads) {
+		this.sortThreads = sortThreads;
+		sorter.setSortThreads(sortThreads);
+		if (spareSorter != null) {
+			spareSorter.setSortThreads(sortThreads);
+		}
+	}
+
 	@Override
 	public boolean put(DataRecord record) throws IOException, InterruptedException {
 		if (!sorter.put(record)) {
 			// we need to sort & flush buffer on to tape and merge it
 			// later
 			doMerge = true;
-			sorter.sort();
-			flushToTapeSynchronously();			
-			sorter.reset();
+			flushToTapeAsynchronously();
 			if (!sorter.put(record)) {
 				throw new RuntimeException(
 						"Can't store record into sorter !");
@@ -152,8 +199,9 @@ public class ExternalSortDataRecord implements ISortDataRecord {
 	public void sort() throws IOException, InterruptedException {
 		if (doMerge) {
 			// sort whatever remains in sorter
+			waitForPendingRun();
 			sorter.sort();
-			flushToTapeSynchronously();		
+			flushToTape(sorter, getNextRunTape());
 			phaseMerge();
 		} else {
 			sorter.sort();
@@ -169,17 +217,14 @@ public class ExternalSortDataRecord implements ISortDataRecord {
 		if (doMerge) {
 
 			if (prevIndex > -1) {
-				if (!tapeCarousel.getTape(prevIndex).get(sourceRecords[prevIndex])) {
-	                sourceRecordsFlags[prevIndex] = false;
-	            }
+				sourceRecordsFlags[prevIndex] = tapeReaders[prevIndex].get(sourceRecords[prevIndex]);
+				index = mergeTree.next();
+			} else {
+				index = mergeTree.init();
 			}
+			prevIndex = index;
 			
-	        if (hasAnyData(sourceRecordsFlags)) {
-	        	
-	            index = getLowestIndex(sourceRecords, sourceRecordsFlags);
-
-	            prevIndex = index;
-	            
+	        if (index > -1) {
 	            SynchronizeUtils.cloverYield();
 	            return sourceRecords[index];
 	        } else {
@@ -215,8 +260,12 @@ public class ExternalSortDataRecord implements ISortDataRecord {
 
 	@Override
 	public void reset() {
+		cancelTapeOperations();
 		doMerge = false;
 		sorter.reset();
+		if (spareSorter != null) {
+			spareSorter.reset();
+		}
 		if (tapeCarousel != null) {
 			tapeCarousel.clear();
 		}
@@ -228,6 +277,11 @@ public class ExternalSortDataRecord implements ISortDataRecord {
 	
 	@Override
 	public void postExecute(){
+		cancelTapeOperations();
+		if (tapeExecutor != null) {
+			tapeExecutor.shutdownNow();
+			tapeExecutor = null;
+		}
 		if (tapeCarousel != null) {
 			try {
 				tapeCarousel.free();
@@ -238,14 +292,61 @@ public class ExternalSortDataRecord implements ISortDataRecord {
 			}
 		}
 		sorter.postExecute();
+		if (spareSorter != null) {
+			spareSorter.postExecute();
+		}
 	}
 	
 	@Override
 	public void free() {
+		if (tapeExecutor != null) {
+			tapeExecutor.shutdownNow();
+			tapeExecutor = null;
+		}
 		sorter.free();
+		if (spareSorter != null) {
+			spareSorter.free();
+		}
 	}
 	
-	private void flushToTapeSynchronously() throws IOException, InterruptedException {
+	/**
+	 * Hands the full in-memory buffer over to a background thread, which sorts it
+	 * and flushes it to a tape. The other in-memory buffer is prepared for incoming records.
+	 */
+	private void flushToTapeAsynchronously() throws IOException, InterruptedException {
+		waitForPendingRun();
+		final InternalSortDataRecord fullSorter = sorter;
+		final DataRecordTape tape = getNextRunTape();
+		if (spareSorter == null) {
+			spareSorter = createInternalSorter();
+		}
+		sorter = spareSorter;
+		sorter.reset();
+		spareSorter = fullSorter;
+		pendingRun = getTapeExecutor().submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				fullSorter.sort();
+				flushToTape(fullSorter, tape);
+				return null;
+			}
+		});
+	}
+
+	private void waitForPendingRun() throws IOException, InterruptedException {
+		if (pendingRun != null) {
+			try {
+				waitFor(pendingRun);
+			} finally {
+				pendingRun = null;
+			}
+		}
+	}
+
+	/**
+	 * @return tape where next sorted chunk of records should be stored
+	 */
+	private DataRecordTape getNextRunTape() throws IOException {
         DataRecordTape tape;
         if (!carouselInitialized) {
         	if (tapeCarousel == null) { //can be not null after #reset()
@@ -259,15 +360,18 @@ public class ExternalSortDataRecord implements ISortDataRecord {
             if (tape == null)
                 tape = tapeCarousel.getFirstTape();
         }
+        return tape;
+	}
 
+	private static void flushToTape(InternalSortDataRecord sortedRecords, DataRecordTape tape) throws IOException, InterruptedException {
         tape.addDataChunk();
 
-        sorter.rewind();
+        sortedRecords.rewind();
         
         // --- read sorted records
-        while (sorter.get(recordBuffer)) {
-            tape.put(recordBuffer);
-            recordBuffer.clear();
+        DataRecord record;
+        while ((record = sortedRecords.get()) != null) {
+            tape.put(record);
         }
         tape.flush(false);
     }
@@ -287,6 +391,7 @@ public class ExternalSortDataRecord implements ISortDataRecord {
         // initialize sort key which will be used when merging data
         sortKey = new RecordOrderedKey(sortKeysNames, sortOrderings, inMetadata, sorter.getComparator().getCollators());
         sortKey.setEqualNULLs(true);
+        mergeTree = new RecordLoserTree(sortKey, sourceRecords, sourceRecordsFlags);
 
         // initial creation & initialization of source records
         for (int i = 0; i < sourceRecords.length; i++) {
@@ -308,33 +413,27 @@ public class ExternalSortDataRecord implements ISortDataRecord {
         /* 
          * MAIN MERGING loop
          */
-        do {
-            // if we need to perform only final merging (one lewel of chunks on source tapes)
-            // skip to final merge
-            if (tapeCarousel.getFirstTape().getNumChunks()==1) break;
+        // if we need to perform only final merging (one lewel of chunks on source tapes)
+        // skip to final merge
+        while (tapeCarousel.getFirstTape().getNumChunks() > 1) {
             /*
              * semi-merging of one level of data chunks
              */
             do {
                 loadUpRecords(tapeCarousel, sourceRecords, sourceRecordsFlags);
-                if (hasAnyData(sourceRecordsFlags)) {
+                index = mergeTree.init();
+                if (index > -1) {
                     targetTape.addDataChunk();
                 } else {
                     break;
                 }
-                while (hasAnyData(sourceRecordsFlags)) {
-                    index = getLowestIndex(sourceRecords,
-                                sourceRecordsFlags);
+                while (index > -1) {
                     // write record to target tape
-                    recordBuffer.clear();
-                    sourceRecords[index].serialize(recordBuffer);
-                    recordBuffer.flip();
-                    targetTape.put(recordBuffer);
+                    targetTape.put(sourceRecords[index]);
                     // read in next record from tape from which we read last
                     // record
-                    if (!tapeCarousel.getTape(index).get(sourceRecords[index])) {
-                        sourceRecordsFlags[index] = false;
-                    }
+                    sourceRecordsFlags[index] = tapeReaders[index].get(sourceRecords[index]);
+                    index = mergeTree.next();
                     SynchronizeUtils.cloverYield();
                 }
                 targetTape.flush(false);
@@ -350,7 +449,7 @@ public class ExternalSortDataRecord implements ISortDataRecord {
             targetCarousel = tmp;
             targetTape = targetCarousel.getFirstTape();
 
-        } while (tapeCarousel.getFirstTape().getNumChunks() > 1);
+        }
 
         // we don't need target carousel - merged records will be sent to output port
         targetCarousel.free();
@@ -373,37 +472,14 @@ public class ExternalSortDataRecord implements ISortDataRecord {
          */
         tapeCarousel.rewind();
         loadUpRecords(tapeCarousel, sourceRecords, sourceRecordsFlags);
+        prevIndex = -1;
         
     }
     
-    /**
-     * Returns index of the lowest record from the specified record array
-     * 
-     * @param sourceRecords array of source records
-     * @param flags array indicating which source records contain valid data
-     * @return index of the lowest record within source records array of -1 if no such record
-     * exists - i.e. there is no valid record
-     */
-    private final int getLowestIndex(DataRecord[] sourceRecords, boolean[] flags) {
-        int lowest = -1;
-        for (int i = 0; i < flags.length; i++) {
-            if (flags[i]) {
-                lowest = i;
-                break;
-            }
-        }
-        for (int i = lowest + 1; i < sourceRecords.length; i++) {
-            if (flags[i]
-                    && sortKey.compare(sourceRecords[lowest], sourceRecords[i]) == 1) {
-                lowest = i;
-            }
-        }
-        return lowest;
-    }
-    
     /**
      * Populates source records array with records from individual tapes (included in
      * tape carousel). Sets flags in flags array for those records which contain valid data.
+     * Reading ahead of the current data chunk of each tape is started.
      * 
      * @param tapeCarousel
      * @param sourceRecords
@@ -414,13 +490,17 @@ public class ExternalSortDataRecord implements ISortDataRecord {
     private final void loadUpRecords(TapeCarousel tapeCarousel,
             DataRecord[] sourceRecords, boolean[] sourceRecordsFlags)
             throws IOException, InterruptedException {
+    	if (tapeReaders == null) {
+    		tapeReaders = new TapeReader[tapeCarousel.numTapes()];
+    		for (int i = 0; i < tapeReaders.length; i++) {
+    			tapeReaders[i] = new TapeReader(getTapeExecutor());
+    		}
+    	}
         for (int i = 0; i < tapeCarousel.numTapes(); i++) {
-            DataRecordTape tape = tapeCarousel.getTape(i);
-            if (tape.get(sourceRecords[i])) {
-                sourceRecordsFlags[i] = true;
-            } else {
-                sourceRecordsFlags[i] = false;
-            }
+            tapeReaders[i].start(tapeCarousel.getTape(i));
+        }
+        for (int i = 0; i < tapeCarousel.numTapes(); i++) {
+            sourceRecordsFlags[i] = tapeReaders[i].get(sourceRecords[i]);
         }
     }
 
@@ -443,16 +523,163 @@ public class ExternalSortDataRecord implements ISortDataRecord {
     }
     
     /**
-     * Checks that at least one valid record exists
-     * @param flags
-     * @return true if flahs indicate that at least one valid record exists
+     * Waits for all running background tape operations. Failures are ignored,
+     * this method is used only when the sorter is being reset or released.
      */
-    private final static boolean hasAnyData(boolean[] flags) {
-        for (int i = 0; i < flags.length; i++) {
-            if (flags[i] == true)
-                return true;
-        }
-        return false;
+    private void cancelTapeOperations() {
+    	if (pendingRun != null) {
+    		waitForQuietly(pendingRun);
+    		pendingRun = null;
+    	}
+    	if (tapeReaders != null) {
+    		for (TapeReader tapeReader : tapeReaders) {
+    			tapeReader.cancel();
+    		}
+    	}
+    }
+
+    private ExecutorService getTapeExecutor() {
+    	if (tapeExecutor == null) {
+    		int numThreads = Math.max(2, Math.min(numberOfTapes, Runtime.getRuntime().availableProcessors()));
+    		final String threadName = Thread.currentThread().getName() + ": tape I/O";
+    		tapeExecutor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+    			@Override
+    			public Thread newThread(Runnable r) {
+    				Thread t = new Thread(r);
+    				t.setName(threadName);
+    				t.setDaemon(true);
+    				return t;
+    			}
+    		});
+    	}
+    	return tapeExecutor;
+    }
+
+    /**
+     * Waits for the given background tape operation and re-throws its failure.
+     */
+    private static <T> T waitFor(Future<T> future) throws IOException, InterruptedException {
+    	try {
+    		return future.get();
+    	} catch (ExecutionException e) {
+    		Throwable cause = e.getCause();
+    		if (cause instanceof InterruptedException) {
+    			throw (InterruptedException) cause;
+    		} else if (cause instanceof IOException) {
+    			throw new IOException(cause.getMessage(), cause);
+    		} else {
+    			throw new JetelRuntimeException("Background tape operation failed.", cause);
+    		}
+    	}
+    }
+
+    private static void waitForQuietly(Future<?> future) {
+    	boolean interrupted = false;
+    	while (true) {
+    		try {
+    			future.get();
+    			break;
+    		} catch (InterruptedException e) {
+    			interrupted = true;
+    		} catch (Exception e) {
+    			break;
+    		}
+    	}
+    	if (interrupted) {
+    		Thread.currentThread().interrupt();
+    	}
+    }
+
+    /**
+     * Reads records of the current data chunk of a tape. Blocks of serialized records
+     * are read ahead by a background thread, so reading from disk overlaps with merging.
+     * At most one read-ahead task is running for a tape at any time, the tape
+     * is not accessed by the merging thread while the task is running.
+     */
+    private static class TapeReader {
+
+    	private final ExecutorService executor;
+    	private final CloverBuffer recordBuffer;
+    	private DataRecordTape tape;
+    	/** block of records being consumed by merging thread */
+    	private CloverBuffer currentBlock;
+    	/** block of records being populated by read-ahead task */
+    	private CloverBuffer nextBlock;
+    	private Future<Boolean> pendingBlock;
+
+    	TapeReader(ExecutorService executor) {
+    		this.executor = executor;
+    		recordBuffer = CloverBuffer.allocateDirect(Defaults.Record.RECORD_INITIAL_SIZE, Defaults.Record.RECORD_LIMIT_SIZE);
+    		currentBlock = CloverBuffer.allocateDirect(READ_AHEAD_BLOCK_SIZE, READ_AHEAD_BLOCK_SIZE + Defaults.Record.RECORD_LIMIT_SIZE);
+    		nextBlock = CloverBuffer.allocateDirect(READ_AHEAD_BLOCK_SIZE, READ_AHEAD_BLOCK_SIZE + Defaults.Record.RECORD_LIMIT_SIZE);
+    	}
+
+    	/**
+    	 * Starts reading ahead of current data chunk of the given tape.
+    	 */
+    	void start(DataRecordTape tape) {
+    		cancel();
+    		this.tape = tape;
+    		currentBlock.clear();
+    		currentBlock.flip();
+    		readAhead();
+    	}
+
+    	/**
+    	 * Reads next record of current data chunk.
+    	 * @return false if no more records are available in current data chunk
+    	 */
+    	boolean get(DataRecord record) throws IOException, InterruptedException {
+    		while (!currentBlock.hasRemaining()) {
+    			if (pendingBlock == null) {
+    				return false;
+    			}
+    			boolean hasMore;
+    			try {
+    				hasMore = waitFor(pendingBlock);
+    			} finally {
+    				pendingBlock = null;
+    			}
+    			CloverBuffer tmp = currentBlock;
+    			currentBlock = nextBlock;
+    			nextBlock = tmp;
+    			if (hasMore) {
+    				readAhead();
+    			}
+    		}
+    		record.deserialize(currentBlock);
+    		return true;
+    	}
+
+    	void cancel() {
+    		if (pendingBlock != null) {
+    			waitForQuietly(pendingBlock);
+    			pendingBlock = null;
+    		}
+    	}
+
+    	private void readAhead() {
+    		final CloverBuffer block = nextBlock;
+    		final DataRecordTape source = tape;
+    		pendingBlock = executor.submit(new Callable<Boolean>() {
+    			@Override
+    			public Boolean call() throws Exception {
+    				block.clear();
+    				try {
+    					while (block.position() < READ_AHEAD_BLOCK_SIZE) {
+    						if (!source.get(recordBuffer)) {
+    							return false;
+    						}
+    						block.put(recordBuffer);
+    					}
+    					return true;
+    				} finally {
+    					block.flip();
+    				}
+    			}
+    		});
+    	}
+
     }
 
 }
@@ -66,6 +66,12 @@ public class InternalSortDataRecord implements ISortDataRecord {
     private boolean useCollator=false;
     private RuleBasedCollator collator;
     private RecordOrderedComparator comparator;
+    private boolean useNormalizedKeys = Defaults.InternalSortDataRecord.USE_NORMALIZED_KEYS;
+    private NormalizedKeySorter normalizedKeySorter;
+    private int sortThreads = 1;
+    private ParallelRecordSorter parallelSorter;
+    /** all records of all collections, used only by multi-threaded sort */
+    private DataRecordCol mergedRecordCol;
 
 	private final static int DEFAULT_NUM_COLLECTIONS = 8;
 
@@ -110,6 +116,36 @@ public class InternalSortDataRecord implements ISortDataRecord {
 	public void setInitialBufferCapacity(int capacity){
 	    currentColSize = Math.max(10, capacity);
 	}
+
+	/**
+	 * Sets number of threads used for sorting. If more than one thread is used,
+	 * all collections are sorted at once by {@link ParallelRecordSorter}, so that no merging
+	 * is necessary when records are read. Order of sorted records is the same in both cases.
+	 * 
+	 * @param sortThreads
+	 */
+	public void setSortThreads(int sortThreads) {
+		if (this.sortThreads != sortThreads && parallelSorter != null) {
+			parallelSorter.free();
+			parallelSorter = null;
+		}
+		this.sortThreads = Math.max(1, sortThreads);
+	}
+
+	/**
+	 * Sets whether sort keys are encoded into binary prefixes which are sorted
+	 * by radix sort (see {@link NormalizedKeySorter}) instead of comparing
+	 * records by the comparator only. Order of sorted records is the same in both cases.
+	 * 
+	 * @param useNormalizedKeys
+	 */
+	public void setUseNormalizedKeys(boolean useNormalizedKeys) {
+		if (this.useNormalizedKeys != useNormalizedKeys && parallelSorter != null) {
+			parallelSorter.free();
+			parallelSorter = null;
+		}
+		this.useNormalizedKeys = useNormalizedKeys;
+	}
 	
 	/**
 	 *  Resets all counters and empties internal buffers. The sorting (feeding) can
@@ -135,11 +171,20 @@ public class InternalSortDataRecord implements ISortDataRecord {
 		for (Iterator<DataRecordCol> i = recordColList.iterator(); i.hasNext();) {
 		    ((DataRecordCol)i.next()).free();
 		}
+		if (mergedRecordCol != null) {
+			mergedRecordCol.free();
+		}
 	}
 
 	@Override
 	public void free() {
 	    recordColList.clear();
+	    normalizedKeySorter = null;
+	    mergedRecordCol = null;
+	    if (parallelSorter != null) {
+	    	parallelSorter.free();
+	    	parallelSorter = null;
+	    }
 	}
 
 	/**
@@ -150,6 +195,9 @@ public class InternalSortDataRecord implements ISortDataRecord {
 		for (Iterator<DataRecordCol> i = recordColList.iterator(); i.hasNext();) {
 		    ((DataRecordCol)i.next()).rewind();
 		}
+		if (mergedRecordCol != null) {
+			mergedRecordCol.rewind();
+		}
 	}
 
 	@Override
@@ -192,24 +240,76 @@ public class InternalSortDataRecord implements ISortDataRecord {
 	
 	@Override
 	public void sort() {
-        if (useCollator){
-            comparator=new RecordOrderedComparator(key.getKeyFields(), this.sortOrderings, collator);
-            comparator.updateCollators(metadata);
-        }else{
-            comparator=new RecordOrderedComparator(key.getKeyFields(), this.sortOrderings);
+        comparator = createComparator(collator);
+        if (sortThreads > 1) {
+        	sortInParallel();
+        	return;
         }
-        comparator.setEqualNULLs(true);
         DataRecordCol recordArray;
 	    for (Iterator<DataRecordCol> iterator = recordColList.iterator(); iterator.hasNext();) {
 	        recordArray=((DataRecordCol)iterator.next());
 	        // sort it now
-	        java.util.Arrays.sort(recordArray.getRecordArray(), 0, recordArray.noItems,comparator);
+	        if (useNormalizedKeys) {
+	        	if (normalizedKeySorter == null) {
+	        		normalizedKeySorter = new NormalizedKeySorter();
+	        	}
+	        	normalizedKeySorter.sort(recordArray.getRecordArray(), 0, recordArray.noItems, comparator);
+	        } else {
+	        	java.util.Arrays.sort(recordArray.getRecordArray(), 0, recordArray.noItems,comparator);
+	        }
 	        recordArray.rewind(); // rewind to position reader pointer properly (first/last depending on sort order)
 	    }
 	    // for faster access, convert list to array
 	    recordColArray=(DataRecordCol[])recordColList.toArray(new DataRecordCol[0]);
 	}
 
+	private RecordOrderedComparator createComparator(RuleBasedCollator collator) {
+		RecordOrderedComparator result;
+        if (useCollator){
+            result=new RecordOrderedComparator(key.getKeyFields(), this.sortOrderings, collator);
+            result.updateCollators(metadata);
+        }else{
+            result=new RecordOrderedComparator(key.getKeyFields(), this.sortOrderings);
+        }
+        result.setEqualNULLs(true);
+        return result;
+	}
+
+	/**
+	 * Sorts records of all collections at once by multiple threads. Records from the collections
+	 * are put one after another into single collection, so that stable sort gives the same
+	 * result as the merging of separately sorted collections.
+	 */
+	private void sortInParallel() {
+		DataRecordCol sortedRecordCol;
+		if (recordColList.size() == 1) {
+			sortedRecordCol = recordColList.get(0);
+		} else {
+			if (mergedRecordCol == null || mergedRecordCol.recordArray.length < recCounter) {
+				mergedRecordCol = new DataRecordCol(recCounter);
+			}
+			int position = 0;
+			for (DataRecordCol recordCol : recordColList) {
+				System.arraycopy(recordCol.recordArray, 0, mergedRecordCol.recordArray, position, recordCol.noItems);
+				position += recordCol.noItems;
+			}
+			mergedRecordCol.noItems = position;
+			sortedRecordCol = mergedRecordCol;
+		}
+		if (parallelSorter == null) {
+			parallelSorter = new ParallelRecordSorter(sortThreads, useNormalizedKeys) {
+				@Override
+				protected RecordOrderedComparator createComparator() {
+					// collators are synchronized, so each thread gets its own copy
+					return InternalSortDataRecord.this.createComparator(collator != null ? (RuleBasedCollator) collator.clone() : null);
+				}
+			};
+		}
+		parallelSorter.sort(sortedRecordCol.recordArray, 0, sortedRecordCol.noItems);
+		sortedRecordCol.rewind();
+		recordColArray = new DataRecordCol[] { sortedRecordCol };
+	}
+
 	@Override
 	public DataRecord get() {
 	    // optimization - if only 1 sorted buffer, then no merge sorting
@@ -0,0 +1,375 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.data;
+
+import java.text.RuleBasedCollator;
+import java.util.Arrays;
+
+import org.jetel.data.primitive.Decimal;
+import org.jetel.metadata.DataFieldContainerType;
+import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.metadata.DataRecordMetadata;
+
+/**
+ * Sorts data records using normalized keys.<br>
+ * Key of each record is encoded just once into a fixed-length binary prefix, which
+ * preserves the order given by {@link RecordOrderedComparator} - comparison of two
+ * prefixes as unsigned numbers gives the same result as the comparator, or a tie.
+ * The (prefix, record index) pairs are sorted by a stable LSD radix sort and only
+ * records with equal prefixes are compared by the comparator afterwards.<br>
+ * Supported key fields are integer, long, number, decimal, date, boolean and string
+ * (collation keys are used for locale sensitive comparison). Encoding stops at the first
+ * unsupported field, at the first non-null field which can be encoded only partially
+ * (string, decimal) or when the prefix is full. The result of the sort is always the same
+ * as the result of <code>Arrays.sort(records, comparator)</code>.
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public class NormalizedKeySorter {
+
+	/** length of normalized key prefix in bytes */
+	private static final int PREFIX_LENGTH = 16;
+
+	/** arrays shorter than this are sorted directly by the comparator */
+	private static final int MIN_RADIX_SORT_SIZE = 64;
+
+	private static final int RADIX_BITS = 8;
+
+	private static final int RADIX = 1 << RADIX_BITS;
+
+	private static final byte NULL_VALUE = 0;
+
+	private static final byte NOT_NULL_VALUE = 1;
+
+	private static final int TYPE_UNSUPPORTED = 0;
+	private static final int TYPE_INTEGER = 1;
+	private static final int TYPE_LONG = 2;
+	private static final int TYPE_NUMBER = 3;
+	private static final int TYPE_DECIMAL = 4;
+	private static final int TYPE_DATE = 5;
+	private static final int TYPE_BOOLEAN = 6;
+	private static final int TYPE_STRING = 7;
+
+	private long[] highKeys = new long[0];
+	private long[] lowKeys = new long[0];
+	private int[] indexes = new int[0];
+	private long[] tmpHighKeys = new long[0];
+	private long[] tmpLowKeys = new long[0];
+	private int[] tmpIndexes = new int[0];
+	private DataRecord[] tmpRecords = new DataRecord[0];
+	private final int[] counts = new int[RADIX];
+
+	/* state of encoding of the current record */
+	private long encodedHigh;
+	private long encodedLow;
+	private int encodedLength;
+
+	/**
+	 * Sorts the specified range of the given array of records.
+	 *
+	 * @param records records to be sorted
+	 * @param from index of the first record to be sorted (inclusive)
+	 * @param to index of the last record to be sorted (exclusive)
+	 * @param comparator comparator which defines the order, it has to consider two NULLs equal
+	 */
+	public void sort(DataRecord[] records, int from, int to, RecordOrderedComparator comparator) {
+		final int size = to - from;
+		if (size < MIN_RADIX_SORT_SIZE || !comparator.isEqualNULLs()) {
+			Arrays.sort(records, from, to, comparator);
+			return;
+		}
+		final int[] keyFields = comparator.getKeyFields();
+		final boolean[] keyOrderings = comparator.getKeyOrderings();
+		final RuleBasedCollator[] collators = comparator.useCollator ? comparator.getCollators() : null;
+		final int[] keyTypes = getKeyTypes(records[from].getMetadata(), keyFields, collators);
+		final boolean exact = isExact(keyTypes);
+
+		ensureCapacity(size);
+		for (int i = 0; i < size; i++) {
+			encode(records[from + i], keyFields, keyOrderings, keyTypes, collators);
+			highKeys[i] = encodedHigh;
+			lowKeys[i] = encodedLow;
+			indexes[i] = from + i;
+		}
+
+		radixSort(size);
+
+		for (int i = 0; i < size; i++) {
+			tmpRecords[i] = records[indexes[i]];
+		}
+		if (!exact) {
+			// records with equal prefix are still in the original order, the comparator decides
+			int start = 0;
+			for (int i = 1; i <= size; i++) {
+				if (i == size || highKeys[i] != highKeys[start] || lowKeys[i] != lowKeys[start]) {
+					if (i - start > 1) {
+						Arrays.sort(tmpRecords, start, i, comparator);
+					}
+					start = i;
+				}
+			}
+		}
+		System.arraycopy(tmpRecords, 0, records, from, size);
+		Arrays.fill(tmpRecords, 0, size, null);
+	}
+
+	private static int[] getKeyTypes(DataRecordMetadata metadata, int[] keyFields, RuleBasedCollator[] collators) {
+		int[] result = new int[keyFields.length];
+		for (int i = 0; i < keyFields.length; i++) {
+			DataFieldMetadata fieldMetadata = metadata.getField(keyFields[i]);
+			if (fieldMetadata.getContainerType() != DataFieldContainerType.SINGLE) {
+				result[i] = TYPE_UNSUPPORTED;
+				continue;
+			}
+			switch (fieldMetadata.getDataType()) {
+			case INTEGER:
+				result[i] = TYPE_INTEGER;
+				break;
+			case LONG:
+				result[i] = TYPE_LONG;
+				break;
+			case NUMBER:
+				result[i] = TYPE_NUMBER;
+				break;
+			case DECIMAL:
+				result[i] = TYPE_DECIMAL;
+				break;
+			case DATE:
+				result[i] = TYPE_DATE;
+				break;
+			case BOOLEAN:
+				result[i] = TYPE_BOOLEAN;
+				break;
+			case STRING:
+				result[i] = TYPE_STRING;
+				break;
+			default:
+				result[i] = TYPE_UNSUPPORTED;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return true if whole key always fits into the prefix and equal prefixes mean equal keys
+	 */
+	private static boolean isExact(int[] keyTypes) {
+		int length = 0;
+		for (int keyType : keyTypes) {
+			switch (keyType) {
+			case TYPE_INTEGER:
+				length += 1 + 4;
+				break;
+			case TYPE_LONG:
+			case TYPE_NUMBER:
+			case TYPE_DATE:
+				length += 1 + 8;
+				break;
+			case TYPE_BOOLEAN:
+				length += 1 + 1;
+				break;
+			default:
+				return false;
+			}
+		}
+		return length <= PREFIX_LENGTH;
+	}
+
+	private void ensureCapacity(int size) {
+		if (highKeys.length < size) {
+			highKeys = new long[size];
+			lowKeys = new long[size];
+			indexes = new int[size];
+			tmpHighKeys = new long[size];
+			tmpLowKeys = new long[size];
+			tmpIndexes = new int[size];
+			tmpRecords = new DataRecord[size];
+		}
+	}
+
+	/**
+	 * Encodes key of the given record into {@link #encodedHigh} and {@link #encodedLow}.
+	 */
+	private void encode(DataRecord record, int[] keyFields, boolean[] keyOrderings, int[] keyTypes, RuleBasedCollator[] collators) {
+		encodedHigh = 0;
+		encodedLow = 0;
+		encodedLength = 0;
+		for (int i = 0; i < keyFields.length && encodedLength < PREFIX_LENGTH; i++) {
+			if (keyTypes[i] == TYPE_UNSUPPORTED) {
+				return;
+			}
+			final DataField field = record.getField(keyFields[i]);
+			final boolean descending = !keyOrderings[i];
+			// NULL precedes all other values
+			if (field.isNull()) {
+				putByte(NULL_VALUE, descending);
+				continue;
+			}
+			if (keyTypes[i] == TYPE_DECIMAL && ((Decimal) field.getValue()).isNaN()) {
+				// NaN is less than any other decimal, the comparator decides the rest
+				putByte(NULL_VALUE, descending);
+				fill(descending);
+				return;
+			}
+			putByte(NOT_NULL_VALUE, descending);
+			switch (keyTypes[i]) {
+			case TYPE_INTEGER:
+				putInt(((IntegerDataField) field).getInt() ^ Integer.MIN_VALUE, descending);
+				break;
+			case TYPE_LONG:
+				putLong(((LongDataField) field).getLong() ^ Long.MIN_VALUE, descending);
+				break;
+			case TYPE_NUMBER:
+				putLong(sortableDouble(((NumericDataField) field).getDouble()), descending);
+				break;
+			case TYPE_DECIMAL:
+				// double value is only an approximation of the decimal, so no other field can follow
+				putLong(sortableDouble(((Decimal) field.getValue()).getDouble()), descending);
+				fill(descending);
+				return;
+			case TYPE_DATE:
+				putLong(((DateDataField) field).getDate().getTime() ^ Long.MIN_VALUE, descending);
+				break;
+			case TYPE_BOOLEAN:
+				putByte(((BooleanDataField) field).getBoolean() ? 1 : 0, descending);
+				break;
+			case TYPE_STRING:
+				// strings have variable length, so no other field can follow
+				if (collators != null && collators[i] != null) {
+					byte[] collationKey = collators[i].getCollationKey(((StringDataField) field).getValue().toString()).toByteArray();
+					for (int j = 0; j < collationKey.length && encodedLength < PREFIX_LENGTH; j++) {
+						putByte(collationKey[j], descending);
+					}
+				} else {
+					CharSequence value = ((StringDataField) field).getValue();
+					for (int j = 0; j < value.length() && encodedLength < PREFIX_LENGTH; j++) {
+						putChar(value.charAt(j), descending);
+					}
+				}
+				// end of the string precedes any character
+				putChar((char) 0, descending);
+				fill(descending);
+				return;
+			default:
+				throw new IllegalStateException("Unexpected key type " + keyTypes[i]);
+			}
+		}
+	}
+
+	/**
+	 * Double encoded into long, which is in the same order as {@link Double#compare(double, double)}
+	 * if compared as unsigned.
+	 */
+	private static long sortableDouble(double value) {
+		long bits = Double.doubleToLongBits(value);
+		return bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+	}
+
+	/**
+	 * Fills rest of the prefix, so that shorter value of the last encoded field
+	 * precedes longer values starting with the same bytes.
+	 */
+	private void fill(boolean descending) {
+		while (encodedLength < PREFIX_LENGTH) {
+			putByte(0, descending);
+		}
+	}
+
+	private void putLong(long value, boolean descending) {
+		putInt((int) (value >>> 32), descending);
+		putInt((int) value, descending);
+	}
+
+	private void putInt(int value, boolean descending) {
+		putChar((char) (value >>> 16), descending);
+		putChar((char) value, descending);
+	}
+
+	private void putChar(char value, boolean descending) {
+		putByte(value >>> 8, descending);
+		putByte(value, descending);
+	}
+
+	private void putByte(int value, boolean descending) {
+		if (encodedLength >= PREFIX_LENGTH) {
+			return;
+		}
+		long b = (descending ? ~value : value) & 0xFF;
+		if (encodedLength < 8) {
+			encodedHigh |= b << (56 - 8 * encodedLength);
+		} else {
+			encodedLow |= b << (56 - 8 * (encodedLength - 8));
+		}
+		encodedLength++;
+	}
+
+	/**
+	 * Stable LSD radix sort of first <code>size</code> prefixes, prefixes are compared as unsigned numbers.
+	 * Digits which are the same in all prefixes are skipped.
+	 */
+	private void radixSort(int size) {
+		long highAnd = -1, highOr = 0, lowAnd = -1, lowOr = 0;
+		for (int i = 0; i < size; i++) {
+			highAnd &= highKeys[i];
+			highOr |= highKeys[i];
+			lowAnd &= lowKeys[i];
+			lowOr |= lowKeys[i];
+		}
+		for (int shift = 0; shift < 64; shift += RADIX_BITS) {
+			if (((lowAnd ^ lowOr) >>> shift & (RADIX - 1)) != 0) {
+				radixPass(size, shift, false);
+			}
+		}
+		for (int shift = 0; shift < 64; shift += RADIX_BITS) {
+			if (((highAnd ^ highOr) >>> shift & (RADIX - 1)) != 0) {
+				radixPass(size, shift, true);
+			}
+		}
+	}
+
+	private void radixPass(int size, int shift, boolean high) {
+		final long[] digits = high ? highKeys : lowKeys;
+		Arrays.fill(counts, 0);
+		for (int i = 0; i < size; i++) {
+			counts[(int) (digits[i] >>> shift) & (RADIX - 1)]++;
+		}
+		int position = 0;
+		for (int i = 0; i < RADIX; i++) {
+			int count = counts[i];
+			counts[i] = position;
+			position += count;
+		}
+		for (int i = 0; i < size; i++) {
+			int target = counts[(int) (digits[i] >>> shift) & (RADIX - 1)]++;
+			tmpHighKeys[target] = highKeys[i];
+			tmpLowKeys[target] = lowKeys[i];
+			tmpIndexes[target] = indexes[i];
+		}
+		long[] swapKeys = highKeys;
+		highKeys = tmpHighKeys;
+		tmpHighKeys = swapKeys;
+		swapKeys = lowKeys;
+		lowKeys = tmpLowKeys;
+		tmpLowKeys = swapKeys;
+		int[] swapIndexes = indexes;
+		indexes = tmpIndexes;
+		tmpIndexes = swapIndexes;
+	}
+
+}
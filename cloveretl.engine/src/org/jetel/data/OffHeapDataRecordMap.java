@@ -0,0 +1,602 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.jetel.exception.JetelRuntimeException;
+import org.jetel.metadata.DataRecordMetadata;
+import org.jetel.util.bytes.CloverBuffer;
+
+/**
+ * Implementation of {@link DataRecordMap} which keeps the stored records in serialized form
+ * in direct (off-heap) memory pages (heap pages are used when direct memory is exhausted).
+ * Only primitive arrays are held on heap:
+ * the hash table itself uses open addressing with linear probing and stores 64-bit hash
+ * of the key for each slot, records with the same key are chained by indexes.
+ * A stored record is deserialized only if its hash matches the looked up key,
+ * so a lookup costs usually one deserialization.<br>
+ * <br>
+ * Differences to {@link DataRecordMap}:
+ * <ul>
+ * <li>records passed to {@link #put(DataRecord)} are serialized, so the caller can reuse them</li>
+ * <li>records returned by {@link DataRecordLookup} and by its iterator are reused by subsequent calls
+ * of the same lookup/iterator, the iterator returned by {@link DataRecordLookup#getAll()} is reused as well</li>
+ * <li>the same holds for {@link #get(RecordKey, DataRecord)} and {@link #getAll(RecordKey, DataRecord)}
+ * of the map itself, so these methods cannot be called concurrently - each thread should use its own
+ * {@link DataRecordLookup}</li>
+ * <li>memory of removed or overwritten records is not released until {@link #clear()} is called</li>
+ * </ul>
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public class OffHeapDataRecordMap extends DataRecordMap {
+
+	/** size of one memory page, larger records get dedicated page */
+	private static final int PAGE_SIZE = 1 << 20;
+
+	private static final int DEFAULT_INITIAL_CAPACITY = 16;
+	private static final int MAXIMUM_CAPACITY = 1 << 30;
+	private static final float LOAD_FACTOR = 0.6f;
+
+	/** value of {@link #slotFirst} for never used slot */
+	private static final int EMPTY = -1;
+	/** value of {@link #slotFirst} for slot of removed key */
+	private static final int REMOVED = -2;
+	/** end of list of records with the same key */
+	private static final int NO_ENTRY = -1;
+
+	private final DataRecordMetadata metadata;
+	private final boolean duplicate;
+	private final boolean overwrite;
+
+	// hash table slots
+	private long[] slotHashes;
+	private int[] slotFirst;
+	private int[] slotLast;
+	private boolean[] slotRetrieved;
+	/** number of not empty slots, including removed ones */
+	private int usedSlots;
+	private int threshold;
+
+	/** number of keys */
+	private int size;
+	/** number of records stored under an already existing key */
+	private int duplicates;
+
+	// stored records, address is page index in upper and offset in lower 32 bits
+	private long[] entryAddresses;
+	private int[] entryNext;
+	private int entryCount;
+
+	private final List<CloverBuffer> pages = new ArrayList<CloverBuffer>();
+	private CloverBuffer currentPage;
+	/** incremented when pages are released, readers have to drop their page views */
+	private int generation;
+
+	private final PageReader putReader;
+	private final PageReader getReader;
+	private final OffHeapDataRecordIterator getAllIterator;
+
+	public OffHeapDataRecordMap(RecordKey key, boolean duplicate) {
+		this(key, duplicate, DEFAULT_INITIAL_CAPACITY, true);
+	}
+
+	public OffHeapDataRecordMap(RecordKey key, boolean duplicate, int initialCapacity) {
+		this(key, duplicate, initialCapacity, true);
+	}
+
+	public OffHeapDataRecordMap(RecordKey key, boolean duplicate, boolean overwrite) {
+		this(key, duplicate, DEFAULT_INITIAL_CAPACITY, overwrite);
+	}
+
+	/**
+	 * @param key
+	 * 			The general key for put operation, metadata of the key has to be defined.
+	 * @param duplicate
+	 * 			If set to true, more values can be stored under one key
+	 * @param initialCapacity
+	 * 			expected number of keys
+	 * @param overwrite
+	 * 			Flag which changes behaviour of put operation
+	 * 			True (default) - existing value is overwritten by the new one
+	 * 			False - existing value remains, new is scrapped
+	 */
+	public OffHeapDataRecordMap(RecordKey key, boolean duplicate, int initialCapacity, boolean overwrite) {
+		// the heap table of the super class is not used
+		super(key, duplicate, 0, overwrite);
+		if (initialCapacity < 0) {
+			throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
+		}
+		if (key.getMetadata() == null) {
+			throw new IllegalArgumentException("Metadata of the key are not defined");
+		}
+		this.metadata = key.getMetadata();
+		this.duplicate = duplicate;
+		this.overwrite = overwrite;
+
+		int capacity = DEFAULT_INITIAL_CAPACITY;
+		while (capacity < MAXIMUM_CAPACITY && capacity * LOAD_FACTOR < initialCapacity) {
+			capacity <<= 1;
+		}
+		allocateTable(capacity);
+		entryAddresses = new long[DEFAULT_INITIAL_CAPACITY];
+		entryNext = new int[DEFAULT_INITIAL_CAPACITY];
+		putReader = new PageReader();
+		getReader = new PageReader();
+		getAllIterator = new OffHeapDataRecordIterator();
+	}
+
+	@Override
+	public void put(DataRecord record) {
+		if (record == null) {
+			throw new NullPointerException("NULL can not be inserted");
+		}
+		DataField[] key = getPutKey(record);
+		long hash = hash64(key);
+		int slot = findSlot(hash, key, putReader);
+		if (slot >= 0) {
+			if (duplicate) {
+				int entry = addEntry(record);
+				entryNext[slotLast[slot]] = entry;
+				slotLast[slot] = entry;
+				duplicates++;
+			} else if (overwrite) {
+				int entry = addEntry(record);
+				slotFirst[slot] = slotLast[slot] = entry;
+			}
+			return;
+		}
+		slot = ~slot;
+		int entry = addEntry(record);
+		slotHashes[slot] = hash;
+		slotFirst[slot] = slotLast[slot] = entry;
+		slotRetrieved[slot] = false;
+		size++;
+		if (++usedSlots >= threshold) {
+			rehash();
+		}
+	}
+
+	@Override
+	public DataRecord get(RecordKey key, DataRecord record) {
+		DataField[] keyFields = getLookupKey(key, record);
+		if (keyFields == null) {
+			return null;
+		}
+		return findSlot(hash64(keyFields), keyFields, getReader) >= 0 ? getReader.record : null;
+	}
+
+	@Override
+	public DataRecordIterator getAll(RecordKey key, DataRecord record) {
+		DataField[] keyFields = getLookupKey(key, record);
+		if (keyFields == null) {
+			return null;
+		}
+		int slot = findSlot(hash64(keyFields), keyFields, getAllIterator.reader);
+		if (slot < 0) {
+			return null;
+		}
+		getAllIterator.init(slotFirst[slot]);
+		return getAllIterator;
+	}
+
+	@Override
+	public boolean remove(DataRecord record) {
+		return removeForKey(getPutKey(record));
+	}
+
+	@Override
+	public boolean remove(RecordKey recordKey, DataRecord dataRecord) {
+		int[] removeKeys = recordKey.getKeyFields();
+		if (removeKeys.length != putKeyFields.length) {
+			return false;
+		}
+		DataField[] key = new DataField[putKeyFields.length];
+		for (int i = 0; i < key.length; i++) {
+			key[i] = dataRecord.getField(removeKeys[i]);
+		}
+		return removeForKey(key);
+	}
+
+	@Override
+	public DataRecordLookup createDataRecordLookup(RecordKey key, DataRecord record) {
+		return new OffHeapDataRecordLookup(key, record);
+	}
+
+	@Override
+	public Iterator<DataRecord> getOrphanedIterator() {
+		return new SlotIterator(true);
+	}
+
+	@Override
+	public Iterator<DataRecord> valueIterator() {
+		return new SlotIterator(false);
+	}
+
+	/**
+	 * Clears the table and releases all memory pages.
+	 */
+	@Override
+	public void clear() {
+		Arrays.fill(slotFirst, EMPTY);
+		Arrays.fill(slotLast, EMPTY);
+		usedSlots = 0;
+		size = 0;
+		duplicates = 0;
+		entryCount = 0;
+		pages.clear();
+		currentPage = null;
+		generation++;
+	}
+
+	@Override
+	public int size() {
+		if (duplicate) {
+			return size + duplicates;
+		}
+		return size;
+	}
+
+	/**
+	 * @return number of bytes occupied by serialized records
+	 */
+	public long getMemorySize() {
+		long result = 0;
+		for (CloverBuffer page : pages) {
+			result += page.capacity();
+		}
+		return result;
+	}
+
+	/**
+	 * Computes 64-bit hash of the key, lower bits of the result are used as index to the table.
+	 */
+	static long hash64(DataField[] key) {
+		long h = 1;
+		for (DataField field : key) {
+			h = h * 0x9E3779B97F4A7C15L + field.hashCode();
+		}
+		// finalization step of MurmurHash3
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB93FE53EC1A3L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private DataField[] getPutKey(DataRecord record) {
+		DataField[] ret = new DataField[putKeyFields.length];
+		for (int i = 0; i < putKeyFields.length; i++) {
+			ret[i] = record.getField(putKeyFields[i]);
+		}
+		return ret;
+	}
+
+	private DataField[] getLookupKey(RecordKey key, DataRecord record) {
+		if (key == null) {
+			throw new NullPointerException("Get key can not be NULL");
+		} else if (record == null) {
+			throw new NullPointerException("Get record can not be NULL");
+		} else if (putKeyFields.length != key.getKeyFields().length) {
+			return null;
+		}
+		int[] getKeyFieldsIndexes = key.getKeyFields();
+		DataField[] getKeyFields = new DataField[getKeyFieldsIndexes.length];
+		for (int i = 0; i < getKeyFields.length; i++) {
+			getKeyFields[i] = record.getField(getKeyFieldsIndexes[i]);
+		}
+		return getKeyFields;
+	}
+
+	/**
+	 * Finds slot of the given key. If the key is found, the first record stored
+	 * under the key is left deserialized in the given reader.
+	 *
+	 * @return index of the slot or negative value (bitwise complement of the first empty slot) if the key is not found
+	 */
+	private int findSlot(long hash, DataField[] key, PageReader reader) {
+		final int mask = slotFirst.length - 1;
+		for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+			int first = slotFirst[slot];
+			if (first == EMPTY) {
+				return ~slot;
+			}
+			if (first != REMOVED && slotHashes[slot] == hash && equals(reader.read(first), key)) {
+				return slot;
+			}
+		}
+	}
+
+	private boolean removeForKey(DataField[] key) {
+		int slot = findSlot(hash64(key), key, putReader);
+		if (slot < 0) {
+			return false;
+		}
+		for (int entry = entryNext[slotFirst[slot]]; entry != NO_ENTRY; entry = entryNext[entry]) {
+			duplicates--;
+		}
+		slotFirst[slot] = slotLast[slot] = REMOVED;
+		size--;
+		return true;
+	}
+
+	/**
+	 * Serializes the record into the current page.
+	 *
+	 * @return index of the new entry
+	 */
+	private int addEntry(DataRecord record) {
+		int length = record.getSizeSerialized();
+		if (currentPage == null || currentPage.remaining() < length) {
+			try {
+				int pageSize = Math.max(PAGE_SIZE, length);
+				currentPage = CloverBuffer.allocateDirect(pageSize, pageSize);
+			} catch (OutOfMemoryError e) {
+				throw new JetelRuntimeException("Out of memory in off-heap hash table. Please, increase maximum direct memory size via -XX:MaxDirectMemorySize=<size> JVM command line parameter.", e);
+			}
+			pages.add(currentPage);
+		}
+		long address = ((long) (pages.size() - 1) << 32) | currentPage.position();
+		record.serialize(currentPage);
+		if (entryCount == entryAddresses.length) {
+			int newLength = entryCount < (Integer.MAX_VALUE >> 1) ? entryCount << 1 : Integer.MAX_VALUE - 8;
+			if (newLength <= entryCount) {
+				throw new JetelRuntimeException("Maximum number of records in off-heap hash table exceeded.");
+			}
+			entryAddresses = Arrays.copyOf(entryAddresses, newLength);
+			entryNext = Arrays.copyOf(entryNext, newLength);
+		}
+		entryAddresses[entryCount] = address;
+		entryNext[entryCount] = NO_ENTRY;
+		return entryCount++;
+	}
+
+	private void allocateTable(int capacity) {
+		slotHashes = new long[capacity];
+		slotFirst = new int[capacity];
+		slotLast = new int[capacity];
+		slotRetrieved = new boolean[capacity];
+		Arrays.fill(slotFirst, EMPTY);
+		Arrays.fill(slotLast, EMPTY);
+		threshold = capacity == MAXIMUM_CAPACITY ? capacity - 1 : (int) (capacity * LOAD_FACTOR);
+	}
+
+	/**
+	 * Rebuilds the table, the table grows if it is filled mostly by live keys, otherwise just
+	 * removed slots are dropped. Stored records are not touched, precomputed hashes are used.
+	 */
+	private void rehash() {
+		int capacity = slotFirst.length;
+		if (size >= threshold / 2) {
+			if (capacity == MAXIMUM_CAPACITY) {
+				throw new JetelRuntimeException("Maximum number of keys in off-heap hash table exceeded.");
+			}
+			capacity <<= 1;
+		}
+		long[] oldHashes = slotHashes;
+		int[] oldFirst = slotFirst;
+		int[] oldLast = slotLast;
+		boolean[] oldRetrieved = slotRetrieved;
+		allocateTable(capacity);
+		final int mask = capacity - 1;
+		for (int i = 0; i < oldFirst.length; i++) {
+			if (oldFirst[i] >= 0) {
+				int slot = (int) oldHashes[i] & mask;
+				while (slotFirst[slot] != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				slotHashes[slot] = oldHashes[i];
+				slotFirst[slot] = oldFirst[i];
+				slotLast[slot] = oldLast[i];
+				slotRetrieved[slot] = oldRetrieved[i];
+			}
+		}
+		usedSlots = size;
+	}
+
+	/**
+	 * Deserializes stored records into its own record. Each reader has its own views
+	 * of memory pages, so more readers can be used concurrently.
+	 */
+	private class PageReader {
+		final DataRecord record = DataRecordFactory.newRecord(metadata);
+		private CloverBuffer[] views = new CloverBuffer[0];
+		private int viewsGeneration = generation;
+		private int loadedEntry = NO_ENTRY;
+
+		DataRecord read(int entry) {
+			if (viewsGeneration != generation) {
+				views = new CloverBuffer[0];
+				viewsGeneration = generation;
+				loadedEntry = NO_ENTRY;
+			}
+			if (entry == loadedEntry) {
+				return record;
+			}
+			long address = entryAddresses[entry];
+			int page = (int) (address >>> 32);
+			if (page >= views.length) {
+				views = Arrays.copyOf(views, pages.size());
+			}
+			CloverBuffer view = views[page];
+			if (view == null) {
+				view = views[page] = pages.get(page).duplicate();
+			}
+			view.position((int) address);
+			record.deserialize(view);
+			loadedEntry = entry;
+			return record;
+		}
+	}
+
+	private class OffHeapDataRecordLookup extends DataRecordLookup {
+
+		private final PageReader reader = new PageReader();
+		private final OffHeapDataRecordIterator iterator = new OffHeapDataRecordIterator();
+
+		OffHeapDataRecordLookup(RecordKey key, DataRecord record) {
+			super(key, record);
+		}
+
+		private int find(PageReader reader) {
+			if (keyFields == null)
+				throw new IllegalStateException("No key data for performing lookup");
+			return findSlot(hash64(keyFields), keyFields, reader);
+		}
+
+		@Override
+		public DataRecord get() {
+			return find(reader) >= 0 ? reader.record : null;
+		}
+
+		@Override
+		public DataRecord getAndMark() {
+			int slot = find(reader);
+			if (slot < 0) {
+				return null;
+			}
+			slotRetrieved[slot] = true;
+			return reader.record;
+		}
+
+		@Override
+		public DataRecordIterator getAll() {
+			int slot = find(iterator.reader);
+			if (slot < 0) {
+				return null;
+			}
+			iterator.init(slotFirst[slot]);
+			return iterator;
+		}
+
+		@Override
+		public DataRecordIterator getAllAndMark() {
+			int slot = find(iterator.reader);
+			if (slot < 0) {
+				return null;
+			}
+			slotRetrieved[slot] = true;
+			iterator.init(slotFirst[slot]);
+			return iterator;
+		}
+	}
+
+	private class OffHeapDataRecordIterator extends DataRecordIterator {
+
+		private final PageReader reader = new PageReader();
+		private int origin = NO_ENTRY;
+		private int current = NO_ENTRY;
+
+		OffHeapDataRecordIterator() {
+			super(null);
+		}
+
+		void init(int firstEntry) {
+			origin = current = firstEntry;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return current != NO_ENTRY;
+		}
+
+		@Override
+		public DataRecord next() {
+			if (current == NO_ENTRY)
+				throw new NoSuchElementException();
+			DataRecord ret = reader.read(current);
+			current = entryNext[current];
+			return ret;
+		}
+
+		@Override
+		public void reset() {
+			current = origin;
+		}
+
+		@Override
+		public int size() {
+			int result = 0;
+			for (int entry = origin; entry != NO_ENTRY; entry = entryNext[entry]) {
+				result++;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Iterates over all stored records or over records which were not retrieved by
+	 * {@link DataRecordLookup#getAndMark()} and {@link DataRecordLookup#getAllAndMark()}.
+	 * New record instance is returned by each call of {@link #next()}.
+	 */
+	private class SlotIterator implements Iterator<DataRecord> {
+
+		private final boolean orphanedOnly;
+		private final PageReader reader = new PageReader();
+		private int slot = -1;
+		private int next = NO_ENTRY;
+		private DataRecord current;
+
+		SlotIterator(boolean orphanedOnly) {
+			this.orphanedOnly = orphanedOnly;
+			seekSlot();
+		}
+
+		private void seekSlot() {
+			while (++slot < slotFirst.length) {
+				if (slotFirst[slot] >= 0 && !(orphanedOnly && slotRetrieved[slot])) {
+					next = slotFirst[slot];
+					return;
+				}
+			}
+			next = NO_ENTRY;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != NO_ENTRY;
+		}
+
+		@Override
+		public DataRecord next() {
+			if (next == NO_ENTRY)
+				throw new NoSuchElementException();
+			current = reader.read(next).duplicate();
+			if ((next = entryNext[next]) == NO_ENTRY) {
+				seekSlot();
+			}
+			return current;
+		}
+
+		@Override
+		public void remove() {
+			if (orphanedOnly) {
+				throw new UnsupportedOperationException();
+			}
+			OffHeapDataRecordMap.this.remove(current);
+		}
+	}
+
+}
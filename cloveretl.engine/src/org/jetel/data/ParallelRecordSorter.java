@@ -0,0 +1,283 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.data;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Stable multi-threaded sort of data records based on fork-join framework.<br>
+ * The sorted range is split into one part per thread, the parts are sorted concurrently
+ * (by {@link NormalizedKeySorter} or by <code>Arrays.sort()</code>) and then merged
+ * pairwise. Each merge is split further by binary search, so that all threads are busy
+ * also in the last merge round. Records with equal keys keep their original order,
+ * so the result is always the same as the result of single-threaded stable sort.<br>
+ * Comparators are not shared between threads (collators are synchronized), a new
+ * comparator is requested by {@link #createComparator()} for each task.
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public abstract class ParallelRecordSorter {
+
+	/** ranges shorter than this are not split anymore */
+	private static final int MIN_TASK_SIZE = 8192;
+
+	private final ForkJoinPool pool;
+
+	private final int parallelism;
+
+	private final boolean useNormalizedKeys;
+
+	private DataRecord[] tmpRecords = new DataRecord[0];
+
+	/**
+	 * @param parallelism number of threads used for sorting
+	 * @param useNormalizedKeys if true, parts are sorted by {@link NormalizedKeySorter}
+	 */
+	public ParallelRecordSorter(int parallelism, boolean useNormalizedKeys) {
+		this.parallelism = parallelism;
+		this.useNormalizedKeys = useNormalizedKeys;
+		this.pool = new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * @return new comparator which defines the order of sorted records,
+	 * two NULLs have to be considered equal
+	 */
+	protected abstract RecordOrderedComparator createComparator();
+
+	/**
+	 * Sorts the specified range of the given array of records.
+	 *
+	 * @param records records to be sorted
+	 * @param from index of the first record to be sorted (inclusive)
+	 * @param to index of the last record to be sorted (exclusive)
+	 */
+	public void sort(DataRecord[] records, int from, int to) {
+		final int size = to - from;
+		final int numParts = Math.min(parallelism, Math.max(1, size / MIN_TASK_SIZE));
+		if (numParts == 1) {
+			sortPart(records, from, to);
+			return;
+		}
+		if (tmpRecords.length < size) {
+			tmpRecords = new DataRecord[size];
+		}
+		// boundaries of sorted runs
+		int[] bounds = new int[numParts + 1];
+		for (int i = 0; i <= numParts; i++) {
+			bounds[i] = from + (int) ((long) size * i / numParts);
+		}
+		pool.invoke(new SortPartsTask(records, bounds, 0, numParts));
+
+		// merge neighbouring runs until one run remains, source and target arrays are switched in each round
+		DataRecord[] source = records;
+		int sourceOffset = 0;
+		DataRecord[] target = tmpRecords;
+		int targetOffset = -from;
+		while (bounds.length > 2) {
+			int[] mergedBounds = new int[(bounds.length - 1 + 1) / 2 + 1];
+			MergeTask[] tasks = new MergeTask[bounds.length / 2];
+			for (int i = 0, j = 0; i < bounds.length - 1; i += 2, j++) {
+				mergedBounds[j] = bounds[i];
+				int middle = bounds[i + 1];
+				int end = i + 2 < bounds.length ? bounds[i + 2] : middle;
+				tasks[j] = new MergeTask(source, sourceOffset, target, targetOffset, bounds[i], middle, middle, end, bounds[i]);
+			}
+			mergedBounds[mergedBounds.length - 1] = to;
+			pool.invoke(new InvokeAllTask(tasks));
+			bounds = mergedBounds;
+			DataRecord[] tmp = source;
+			source = target;
+			target = tmp;
+			int tmpOffset = sourceOffset;
+			sourceOffset = targetOffset;
+			targetOffset = tmpOffset;
+		}
+		if (source != records) {
+			System.arraycopy(source, from + sourceOffset, records, from, size);
+		}
+		Arrays.fill(tmpRecords, 0, size, null);
+	}
+
+	/**
+	 * Releases the threads.
+	 */
+	public void free() {
+		pool.shutdown();
+		tmpRecords = new DataRecord[0];
+	}
+
+	private void sortPart(DataRecord[] records, int from, int to) {
+		RecordOrderedComparator comparator = createComparator();
+		if (useNormalizedKeys) {
+			new NormalizedKeySorter().sort(records, from, to, comparator);
+		} else {
+			Arrays.sort(records, from, to, comparator);
+		}
+	}
+
+	private class SortPartsTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final DataRecord[] records;
+		private final int[] bounds;
+		private final int firstPart;
+		private final int lastPart;
+
+		SortPartsTask(DataRecord[] records, int[] bounds, int firstPart, int lastPart) {
+			this.records = records;
+			this.bounds = bounds;
+			this.firstPart = firstPart;
+			this.lastPart = lastPart;
+		}
+
+		@Override
+		protected void compute() {
+			if (lastPart - firstPart == 1) {
+				sortPart(records, bounds[firstPart], bounds[lastPart]);
+			} else {
+				int middle = (firstPart + lastPart) >>> 1;
+				invokeAll(new SortPartsTask(records, bounds, firstPart, middle), new SortPartsTask(records, bounds, middle, lastPart));
+			}
+		}
+	}
+
+	private static class InvokeAllTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final RecursiveAction[] tasks;
+
+		InvokeAllTask(RecursiveAction[] tasks) {
+			this.tasks = tasks;
+		}
+
+		@Override
+		protected void compute() {
+			invokeAll(tasks);
+		}
+	}
+
+	/**
+	 * Merges two neighbouring sorted runs of the source array into the target array.
+	 * Position <code>i</code> of the sorted range corresponds to <code>source[i + sourceOffset]</code>
+	 * and <code>target[i + targetOffset]</code>. Records of the left run precede equal records
+	 * of the right run.
+	 */
+	private class MergeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final DataRecord[] source;
+		private final int sourceOffset;
+		private final DataRecord[] target;
+		private final int targetOffset;
+		private final int leftFrom;
+		private final int leftTo;
+		private final int rightFrom;
+		private final int rightTo;
+		private final int targetFrom;
+
+		MergeTask(DataRecord[] source, int sourceOffset, DataRecord[] target, int targetOffset,
+				int leftFrom, int leftTo, int rightFrom, int rightTo, int targetFrom) {
+			this.source = source;
+			this.sourceOffset = sourceOffset;
+			this.target = target;
+			this.targetOffset = targetOffset;
+			this.leftFrom = leftFrom;
+			this.leftTo = leftTo;
+			this.rightFrom = rightFrom;
+			this.rightTo = rightTo;
+			this.targetFrom = targetFrom;
+		}
+
+		@Override
+		protected void compute() {
+			int leftSize = leftTo - leftFrom;
+			int rightSize = rightTo - rightFrom;
+			if (leftSize + rightSize <= MIN_TASK_SIZE || leftSize == 0 || rightSize == 0) {
+				merge();
+				return;
+			}
+			RecordOrderedComparator comparator = createComparator();
+			int leftSplit, rightSplit;
+			if (leftSize >= rightSize) {
+				leftSplit = (leftFrom + leftTo) >>> 1;
+				// right records less than the split record go first
+				rightSplit = lowerBound(comparator, source[leftSplit + sourceOffset], rightFrom, rightTo);
+			} else {
+				rightSplit = (rightFrom + rightTo) >>> 1;
+				// left records less or equal to the split record go first
+				leftSplit = upperBound(comparator, source[rightSplit + sourceOffset], leftFrom, leftTo);
+			}
+			int targetSplit = targetFrom + (leftSplit - leftFrom) + (rightSplit - rightFrom);
+			invokeAll(new MergeTask(source, sourceOffset, target, targetOffset, leftFrom, leftSplit, rightFrom, rightSplit, targetFrom),
+					new MergeTask(source, sourceOffset, target, targetOffset, leftSplit, leftTo, rightSplit, rightTo, targetSplit));
+		}
+
+		private int lowerBound(RecordOrderedComparator comparator, DataRecord record, int from, int to) {
+			while (from < to) {
+				int middle = (from + to) >>> 1;
+				if (comparator.compare(source[middle + sourceOffset], record) < 0) {
+					from = middle + 1;
+				} else {
+					to = middle;
+				}
+			}
+			return from;
+		}
+
+		private int upperBound(RecordOrderedComparator comparator, DataRecord record, int from, int to) {
+			while (from < to) {
+				int middle = (from + to) >>> 1;
+				if (comparator.compare(source[middle + sourceOffset], record) <= 0) {
+					from = middle + 1;
+				} else {
+					to = middle;
+				}
+			}
+			return from;
+		}
+
+		private void merge() {
+			int left = leftFrom + sourceOffset;
+			int leftEnd = leftTo + sourceOffset;
+			int right = rightFrom + sourceOffset;
+			int rightEnd = rightTo + sourceOffset;
+			int position = targetFrom + targetOffset;
+			if (left < leftEnd && right < rightEnd) {
+				RecordOrderedComparator comparator = createComparator();
+				while (left < leftEnd && right < rightEnd) {
+					if (comparator.compare(source[left], source[right]) <= 0) {
+						target[position++] = source[left++];
+					} else {
+						target[position++] = source[right++];
+					}
+				}
+			}
+			while (left < leftEnd) {
+				target[position++] = source[left++];
+			}
+			while (right < rightEnd) {
+				target[position++] = source[right++];
+			}
+		}
+	}
+
+}
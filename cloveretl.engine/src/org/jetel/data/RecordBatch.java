@@ -0,0 +1,228 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.data;
+
+import java.util.Arrays;
+
+import org.jetel.util.bytes.CloverBuffer;
+
+/**
+ * Batch of records in serialized form, which are passed through ports in a single call,
+ * see {@link org.jetel.graph.InputPortDirect#readRecordBatch(RecordBatch)} and
+ * {@link org.jetel.graph.OutputPortDirect#writeRecordBatch(RecordBatch)}.<br>
+ * Records are stored one after another in a single buffer. The batch is full when it contains
+ * the maximum number of records or the size of the records reaches {@link Defaults.Record#RECORDS_BUFFER_SIZE}.
+ * <p>
+ * A subset of the records can be selected by {@link #select(int[], int)}, only the selected records are written
+ * to an output port then. This way a filter can route records of a single batch to several ports
+ * without copying them.
+ * <p>
+ * The batch is not thread-safe.
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public class RecordBatch {
+
+	/** Serialized records */
+	private final CloverBuffer data;
+	/** End offsets of the records in the buffer */
+	private final int[] ends;
+	private int size;
+	private final int maxBytes;
+
+	/** Indexes of selected records or <code>null</code> if all records are selected */
+	private int[] selection;
+	private int selectedCount;
+
+	/**
+	 * Creates batch for {@link Defaults.Graph#RECORD_BATCH_SIZE} records.
+	 */
+	public RecordBatch() {
+		this(Defaults.Graph.RECORD_BATCH_SIZE);
+	}
+
+	/**
+	 * @param capacity maximum number of records in the batch
+	 */
+	public RecordBatch(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Batch capacity must be positive: " + capacity);
+		}
+		this.ends = new int[capacity];
+		this.maxBytes = Defaults.Record.RECORDS_BUFFER_SIZE;
+		// the last record may exceed the size limit of the batch
+		this.data = CloverBuffer.allocateDirect(maxBytes, maxBytes + Defaults.Record.RECORD_LIMIT_SIZE);
+	}
+
+	/**
+	 * Removes all records and the selection.
+	 */
+	public void clear() {
+		size = 0;
+		selection = null;
+		data.clear();
+	}
+
+	/**
+	 * @return number of records in the batch
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return maximum number of records in the batch
+	 */
+	public int capacity() {
+		return ends.length;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return <code>true</code> if no more records should be added
+	 */
+	public boolean isFull() {
+		return size == ends.length || getEnd(size - 1) >= maxBytes;
+	}
+
+	/**
+	 * Appends serialized record, remaining bytes of the given buffer are copied.
+	 * The position of the given buffer is moved to its limit.
+	 *
+	 * @param record serialized record
+	 */
+	public void add(CloverBuffer record) {
+		checkCapacity();
+		data.limit(data.capacity()).position(getEnd(size - 1));
+		data.put(record);
+		ends[size++] = data.position();
+	}
+
+	/**
+	 * Appends the record in serialized form.
+	 *
+	 * @param record added record
+	 */
+	public void add(DataRecord record) {
+		checkCapacity();
+		data.limit(data.capacity()).position(getEnd(size - 1));
+		record.serialize(data);
+		ends[size++] = data.position();
+	}
+
+	private void checkCapacity() {
+		if (size == ends.length) {
+			throw new IllegalStateException("Record batch is full");
+		}
+		selection = null;
+	}
+
+	/**
+	 * @param index index of a record
+	 * @return offset of the record in {@link #getData()}
+	 */
+	public int getStart(int index) {
+		return getEnd(index - 1);
+	}
+
+	/**
+	 * @param index index of a record
+	 * @return offset after the end of the record in {@link #getData()}
+	 */
+	public int getEnd(int index) {
+		return index < 0 ? 0 : ends[index];
+	}
+
+	/**
+	 * @return buffer containing all records, use {@link #getStart(int)} and {@link #getEnd(int)}
+	 * to locate a single record
+	 */
+	public CloverBuffer getData() {
+		return data;
+	}
+
+	/**
+	 * Returns the buffer of the batch with position and limit set to the given record.
+	 * The buffer is shared, its position and limit are valid only until next call of a method of this batch.
+	 *
+	 * @param index index of a record
+	 * @return buffer containing the record between its position and limit
+	 */
+	public CloverBuffer getRecord(int index) {
+		if (index >= size) {
+			throw new IndexOutOfBoundsException("Record index " + index + ", batch size " + size);
+		}
+		data.limit(ends[index]).position(getStart(index));
+		return data;
+	}
+
+	/**
+	 * Deserializes record of the batch.
+	 *
+	 * @param index index of a record
+	 * @param record record to be filled
+	 */
+	public void deserialize(int index, DataRecord record) {
+		record.deserialize(getRecord(index));
+	}
+
+	/**
+	 * Selects records which are written to output port. The selection is cleared
+	 * when a record is added.
+	 *
+	 * @param indexes indexes of selected records in ascending order, the array is not copied
+	 * @param count number of valid items of the array
+	 */
+	public void select(int[] indexes, int count) {
+		this.selection = indexes;
+		this.selectedCount = count;
+	}
+
+	/**
+	 * Selects all records of the batch.
+	 */
+	public void selectAll() {
+		selection = null;
+	}
+
+	/**
+	 * @return number of selected records
+	 */
+	public int getSelectedCount() {
+		return selection != null ? selectedCount : size;
+	}
+
+	/**
+	 * @param i index among the selected records
+	 * @return index of i-th selected record
+	 */
+	public int getSelectedIndex(int i) {
+		return selection != null ? selection[i] : i;
+	}
+
+	@Override
+	public String toString() {
+		return "RecordBatch[size=" + size + ", bytes=" + getEnd(size - 1)
+				+ (selection != null ? ", selected=" + Arrays.toString(Arrays.copyOf(selection, selectedCount)) : "") + "]";
+	}
+
+}
@@ -0,0 +1,129 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.data;
+
+/**
+ * Tournament (loser) tree used for k-way merging of sorted record streams.<br>
+ * Each source is represented by one slot of the <code>records</code> array and
+ * one flag in the <code>valid</code> array - the flag tells whether the source still
+ * provides a record. The tree keeps the loser of each match in its inner nodes,
+ * so replacing the winner costs only log2(k) comparisons instead of k-1 comparisons
+ * of a linear scan.<br>
+ * Equal records are returned in order of their source index - the merge is stable.<br><br>
+ * <i>Usage:</i><br>
+ * <code>
+ * int index = tree.init();<br>
+ * while (index != -1) {<br>
+ * &nbsp;&nbsp;..consume records[index]..<br>
+ * &nbsp;&nbsp;valid[index] = ..read next record into records[index]..;<br>
+ * &nbsp;&nbsp;index = tree.next();<br>
+ * }<br>
+ * </code>
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public class RecordLoserTree {
+
+	private final RecordOrderedKey key;
+
+	private final DataRecord[] records;
+
+	private final boolean[] valid;
+
+	/** tree[0] is the overall winner, tree[1..k-1] are losers of inner matches */
+	private final int[] tree;
+
+	/**
+	 * @param key key used to compare records
+	 * @param records current record of each source
+	 * @param valid flags whether the corresponding record is valid (the source is not exhausted)
+	 */
+	public RecordLoserTree(RecordOrderedKey key, DataRecord[] records, boolean[] valid) {
+		if (records.length == 0 || records.length != valid.length) {
+			throw new IllegalArgumentException("Invalid number of merged sources.");
+		}
+		this.key = key;
+		this.records = records;
+		this.valid = valid;
+		this.tree = new int[records.length];
+	}
+
+	/**
+	 * Builds the tree from the current content of records and valid flags.
+	 *
+	 * @return index of the lowest record or -1 if all sources are exhausted
+	 */
+	public int init() {
+		tree[0] = build(1);
+		return winner();
+	}
+
+	/**
+	 * Re-plays the matches of the last winner. The record and the valid flag
+	 * of the last winner have to be updated before.
+	 *
+	 * @return index of the lowest record or -1 if all sources are exhausted
+	 */
+	public int next() {
+		int winner = tree[0];
+		for (int node = (winner + tree.length) >> 1; node > 0; node >>= 1) {
+			if (precedes(tree[node], winner)) {
+				int loser = winner;
+				winner = tree[node];
+				tree[node] = loser;
+			}
+		}
+		tree[0] = winner;
+		return winner();
+	}
+
+	private int winner() {
+		return valid[tree[0]] ? tree[0] : -1;
+	}
+
+	private int build(int node) {
+		if (node >= tree.length) {
+			return node - tree.length;
+		}
+		int left = build(node << 1);
+		int right = build((node << 1) + 1);
+		if (precedes(right, left)) {
+			tree[node] = left;
+			return right;
+		} else {
+			tree[node] = right;
+			return left;
+		}
+	}
+
+	/**
+	 * @return true if record of source <code>a</code> has to be returned before record of source <code>b</code>
+	 */
+	private boolean precedes(int a, int b) {
+		if (!valid[a]) {
+			return false;
+		}
+		if (!valid[b]) {
+			return true;
+		}
+		int result = key.compare(records[a], records[b]);
+		return result < 0 || (result == 0 && a < b);
+	}
+
+}
@@ -74,6 +74,13 @@ public class RecordOrderedComparator extends RecordComparator {
 		this.keyOrderings = keyOrderings;
 	}
 	
+	/**
+	 * @return ordering of columns for each key (true=ascending)
+	 */
+	public boolean[] getKeyOrderings() {
+		return keyOrderings;
+	}
+
 	/**
 	 *  Compares two records (of the same layout) based on defined key-fields and returns (-1;0;1) if (< ; = ; >)
 	 *
@@ -29,14 +29,29 @@ import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.UnsupportedCharsetException;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.TimeZone;
 
+import org.jetel.data.DataField;
 import org.jetel.data.DataRecord;
+import org.jetel.data.DateDataField;
+import org.jetel.data.DecimalDataField;
 import org.jetel.data.Defaults;
+import org.jetel.data.IntegerDataField;
+import org.jetel.data.LongDataField;
+import org.jetel.data.parser.TextParserConfiguration;
+import org.jetel.data.primitive.Decimal;
+import org.jetel.data.primitive.IntegerDecimal;
+import org.jetel.metadata.DataFieldFormatType;
 import org.jetel.metadata.DataFieldMetadata;
 import org.jetel.metadata.DataFieldType;
 import org.jetel.metadata.DataRecordMetadata;
+import org.jetel.util.bytes.ByteFormatUtils;
 import org.jetel.util.bytes.CloverBuffer;
+import org.jetel.util.formatter.DateFormatter;
+import org.jetel.util.formatter.TimeZoneProvider;
 import org.jetel.util.string.QuotingDecoder;
+import org.jetel.util.string.StringUtils;
 
 /**
  * Outputs common data record. Handles encoding of characters. Uses WriteableChannel.
@@ -75,10 +90,28 @@ public class DataFormatter extends AbstractFormatter {
 	private int[] includedFieldIndices;
 
 	private QuotingDecoder quotingDecoder = new QuotingDecoder();
+
+	/** Delimited fields written directly into the data buffer, one of DIRECT_* constants for each field */
+	private int[] directFormats;
+	/** Patterns of date fields written directly, see {@link ByteFormatUtils#putDate(CloverBuffer, long, int)} */
+	private int[] directDatePatterns;
+	private TimeZone[] directTimeZones;
+	private String[] nullValues;
+	/** Maximum number of bytes per character for direct writing - UTF-8 or single byte ASCII compatible charset */
+	private int directBytesPerChar;
 	
 	// use space (' ') to fill/pad field
 	private final static char DEFAULT_FILLER_CHAR = ' ';
 
+	private final static int DIRECT_NONE = 0;
+	private final static int DIRECT_STRING = 1;
+	private final static int DIRECT_INTEGER = 2;
+	private final static int DIRECT_DECIMAL = 3;
+	private final static int DIRECT_DATE = 4;
+
+	/** Dates used to verify the date fields are formatted directly in the same way as by their date formatter */
+	private final static long[] DATE_SAMPLES = { 0L, 951782400000L, 1000000000123L, -631152000000L, 1700000000999L };
+
 	// Associations
 
 	// Operations
@@ -153,6 +186,8 @@ public class DataFormatter extends AbstractFormatter {
 			// can't happen if we have encoder
 		}
 
+		initDirectFormats();
+
 		includedFieldIndices = metadata.fieldsIndicesComplement(excludedFieldNames);
 
 		int lastFieldIndex = metadata.getNumFields() - 1;
@@ -262,6 +297,13 @@ public class DataFormatter extends AbstractFormatter {
 			for (int index : includedFieldIndices) {
 				i = index;
 				if(metadata.getField(i).isDelimited()) {
+					if (directFormats[i] != DIRECT_NONE) {
+						int directLen = writeDirect(record.getField(i), i);
+						if (directLen >= 0) {
+							encLen += directLen;
+							continue;
+						}
+					}
 					fieldBuffer.clear();
 					if (quotedFields[i]) {
 						//could it be written in better way? faster?
@@ -325,6 +367,200 @@ public class DataFormatter extends AbstractFormatter {
         return encLen;
 	}
 	
+	/**
+	 * Writes the delimited field and its delimiter directly into the data buffer, without intermediate strings
+	 * and charset encoder.
+	 * 
+	 * @return number of written bytes or -1 if the field has to be written by the standard way
+	 */
+	private int writeDirect(DataField field, int i) throws IOException {
+		int format = directFormats[i];
+		CharSequence text = null;
+		if (quotedFields[i]) {
+			String value = field.toString();
+			if (value == null) {
+				return -1;
+			}
+			text = quotingDecoder.encode(value);
+			format = DIRECT_STRING;
+		} else if (field.isNull()) {
+			text = nullValues[i];
+			if (text == null) {
+				return -1;
+			}
+			format = DIRECT_STRING;
+		} else if (format == DIRECT_STRING) {
+			Object value = field.getValue();
+			if (!(value instanceof CharSequence)) {
+				return -1;
+			}
+			text = (CharSequence) value;
+		}
+
+		int maxLength;
+		switch (format) {
+		case DIRECT_STRING:
+			maxLength = text.length() * directBytesPerChar;
+			break;
+		case DIRECT_INTEGER:
+			maxLength = ByteFormatUtils.MAX_LONG_LENGTH;
+			break;
+		case DIRECT_DECIMAL:
+			maxLength = ByteFormatUtils.MAX_DECIMAL_LENGTH;
+			break;
+		default:
+			maxLength = ByteFormatUtils.MAX_DATE_LENGTH;
+		}
+		maxLength += delimiterLength[i];
+		if (maxLength > dataBuffer.remaining()) {
+			flush();
+			if (maxLength > dataBuffer.remaining()) {
+				return -1;
+			}
+		}
+
+		int start = dataBuffer.position();
+		boolean written;
+		switch (format) {
+		case DIRECT_STRING:
+			written = directBytesPerChar == 1 ? ByteFormatUtils.putAscii(dataBuffer, text) : ByteFormatUtils.putUtf8(dataBuffer, text);
+			break;
+		case DIRECT_INTEGER:
+			if (field instanceof IntegerDataField) {
+				ByteFormatUtils.putLong(dataBuffer, ((IntegerDataField) field).getInt());
+				written = true;
+			} else if (field instanceof LongDataField) {
+				ByteFormatUtils.putLong(dataBuffer, ((LongDataField) field).getLong());
+				written = true;
+			} else {
+				written = false;
+			}
+			break;
+		case DIRECT_DECIMAL:
+			Decimal decimal = field instanceof DecimalDataField ? ((DecimalDataField) field).getDecimal() : null;
+			written = decimal instanceof IntegerDecimal && ((IntegerDecimal) decimal).toAsciiBytes(dataBuffer);
+			break;
+		default:
+			Date date = field instanceof DateDataField ? ((DateDataField) field).getDate() : null;
+			if (date != null) {
+				long millis = date.getTime();
+				written = ByteFormatUtils.putDate(dataBuffer, millis + directTimeZones[i].getOffset(millis), directDatePatterns[i]);
+			} else {
+				written = false;
+			}
+		}
+		if (!written) {
+			return -1;
+		}
+		if (delimiters[i] != null) dataBuffer.put(delimiters[i]); //for eof delimiter
+		return dataBuffer.position() - start;
+	}
+
+	/**
+	 * Decides which delimited fields can be written directly as bytes. It is possible for UTF-8 and single byte
+	 * charsets compatible with ASCII; for strings, integers, longs and decimals without format and locale
+	 * and for dates with simple numeric java format.
+	 */
+	private void initDirectFormats() {
+		int numFields = metadata.getNumFields();
+		directFormats = new int[numFields];
+		directDatePatterns = new int[numFields];
+		directTimeZones = new TimeZone[numFields];
+		nullValues = new String[numFields];
+		if (encoder.charset().name().equals("UTF-8")) {
+			directBytesPerChar = ByteFormatUtils.MAX_UTF8_BYTES_PER_CHAR;
+		} else if (TextParserConfiguration.isAsciiCompatibleCharset(encoder.charset())) {
+			directBytesPerChar = 1;
+		} else {
+			return;
+		}
+		for (int i = 0; i < numFields; i++) {
+			DataFieldMetadata field = metadata.getField(i);
+			if (!field.isDelimited() || byteBasedFields[i]) {
+				continue;
+			}
+			nullValues[i] = field.getNullValue();
+			if (quotedFields[i]) {
+				directFormats[i] = DIRECT_STRING;
+				continue;
+			}
+			switch (field.getDataType()) {
+			case STRING:
+				directFormats[i] = DIRECT_STRING;
+				break;
+			case INTEGER:
+			case LONG:
+				if (isPlainNumber(field)) {
+					directFormats[i] = DIRECT_INTEGER;
+				}
+				break;
+			case DECIMAL:
+				if (isPlainNumber(field)) {
+					directFormats[i] = DIRECT_DECIMAL;
+				}
+				break;
+			case DATE:
+				if (initDirectDate(field, i)) {
+					directFormats[i] = DIRECT_DATE;
+				}
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	/**
+	 * @return true if the numeric field is formatted by the plain formatter, see NumericFormatterFactory
+	 */
+	private static boolean isPlainNumber(DataFieldMetadata field) {
+		return StringUtils.isEmpty(field.getFormat()) && StringUtils.isEmpty(field.getLocaleStr());
+	}
+
+	private boolean initDirectDate(DataFieldMetadata field, int i) {
+		String formatStr = field.getFormatStr();
+		DataFieldFormatType formatType = DataFieldFormatType.getFormatType(formatStr);
+		String pattern;
+		if (formatType == null) {
+			pattern = Defaults.DEFAULT_DATE_FORMAT;
+		} else if (formatType == DataFieldFormatType.JAVA) {
+			pattern = DataFieldFormatType.JAVA.getFormat(formatStr);
+		} else {
+			return false;
+		}
+		if (pattern.equals("yyyy-MM-dd")) {
+			directDatePatterns[i] = ByteFormatUtils.DATE;
+		} else if (pattern.equals("yyyy-MM-dd HH:mm:ss")) {
+			directDatePatterns[i] = ByteFormatUtils.DATE_TIME;
+		} else if (pattern.equals("yyyy-MM-dd HH:mm:ss.SSS")) {
+			directDatePatterns[i] = ByteFormatUtils.DATE_TIME_MILLIS;
+		} else {
+			return false;
+		}
+		DateFormatter formatter;
+		try {
+			directTimeZones[i] = new TimeZoneProvider(field.getTimeZoneStr()).getJavaTimeZone();
+			formatter = field.createDateFormatter();
+		} catch (RuntimeException e) {
+			return false;
+		}
+		// the locale can define different calendar or digits
+		CloverBuffer sample = CloverBuffer.allocate(ByteFormatUtils.MAX_DATE_LENGTH);
+		for (long millis : DATE_SAMPLES) {
+			sample.clear();
+			ByteFormatUtils.putDate(sample, millis + directTimeZones[i].getOffset(millis), directDatePatterns[i]);
+			sample.flip();
+			StringBuilder direct = new StringBuilder();
+			while (sample.hasRemaining()) {
+				direct.append((char) sample.get());
+			}
+			if (!direct.toString().equals(formatter.format(new Date(millis)))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Writes record delimiter.
 	 * @return length of written record delimiter
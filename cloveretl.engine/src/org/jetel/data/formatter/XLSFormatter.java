@@ -66,7 +66,16 @@ public abstract class XLSFormatter extends AbstractFormatter {
         /** the classic XLS parser (JExcel) should be used */
         XLS,
         /** the XLSX parser (Apache POI) should be used */
-        XLSX;
+        XLSX,
+        /** the streaming XLSX parser or formatter (Apache POI), which does not hold the whole workbook in memory, should be used */
+        XLSX_STREAMING;
+
+        /**
+         * @return <code>true</code> for the XLSX types
+         */
+        public boolean isXLSX() {
+            return this == XLSX || this == XLSX_STREAMING;
+        }
 
         public static XLSType valueOfIgnoreCase(String string) {
             for (XLSType parserType : values()) {
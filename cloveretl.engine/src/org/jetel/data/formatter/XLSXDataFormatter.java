@@ -39,6 +39,7 @@ import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.jetel.data.DataRecord;
 import org.jetel.data.Defaults;
@@ -52,6 +53,10 @@ import org.jetel.util.string.StringUtils;
 
 /**
  * Represents a XLSX data formatter based on the Apache POI library.
+ * <p>
+ * In the streaming mode (see {@link #setStreaming(boolean)}) the workbook is written by SXSSF, only a window
+ * of the last rows of each sheet is kept in memory and older rows are flushed to temporary sheet files.
+ * Rows of an existing output file are kept in the template workbook, new rows are appended after them.
  *
  * @author Martin Janik, Javlin a.s. &lt;martin.janik@javlin.eu&gt;
  *
@@ -63,12 +68,23 @@ public class XLSXDataFormatter extends XLSFormatter {
 	/** the value specifying that no data format is used/set */
 	public static final String GENERAL_FORMAT_STRING = "General";
 
+	/** the minimum width of a date column in characters */
+	private static final int MIN_DATE_WIDTH = 10;
+	/** the maximum width of a column in characters */
+	private static final int MAX_COLUMN_WIDTH = 255;
+
 	/** the currently open workbook */
 	private Workbook workbook;
+	/** the template of the streamed workbook, contains sheets and rows of the existing output file */
+	private XSSFWorkbook templateWorkbook;
+	/** determines whether the rows are streamed to temporary files */
+	private boolean streaming;
 	/** the sheet that is being used */
 	private Sheet sheet;
 	/** the cell styles for the written cells */
 	private CellStyle[] cellStyles;
+	/** the widths of formatted dates, used to size the columns in the streaming mode */
+	private int[] dateWidths;
 
 	/** the map of sheet data used for multiple sheets writing */
 	private Map<String, SheetData> sheetData;
@@ -95,6 +111,16 @@ public class XLSXDataFormatter extends XLSFormatter {
 		super(append, removeSheets);
 	}
 
+	/**
+	 * Switches the streaming mode on or off. In the streaming mode only a window of rows of each sheet
+	 * is kept in memory (see {@link Defaults.DataFormatter#XLSX_STREAMING_ROW_WINDOW}).
+	 *
+	 * @param streaming <code>true</code> to stream the rows to temporary files
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
 	@Override
 	public void setDataTarget(Object dataTarget) {
 		if (dataTarget == null) {
@@ -149,6 +175,12 @@ public class XLSXDataFormatter extends XLSFormatter {
 			}
 		}
 
+		if (streaming) {
+			templateWorkbook = (XSSFWorkbook) workbook;
+			workbook = new SXSSFWorkbook(templateWorkbook, Defaults.DataFormatter.XLSX_STREAMING_ROW_WINDOW,
+					Defaults.DataFormatter.XLSX_STREAMING_COMPRESS_TEMP_FILES, Defaults.DataFormatter.XLSX_STREAMING_SHARED_STRINGS);
+		}
+
 		//
 		// set up the formatter for writing multiple sheets
 		//
@@ -179,7 +211,7 @@ public class XLSXDataFormatter extends XLSFormatter {
 			if (sheet == null) {
 				sheet = workbook.createSheet(tempSheetName);
 			} else if (!append) {
-				Iterator<Row> rowIterator = sheet.iterator();
+				Iterator<Row> rowIterator = getTemplateSheet(sheet).iterator();
 
 				while (rowIterator.hasNext()) {
 					rowIterator.next();
@@ -201,15 +233,18 @@ public class XLSXDataFormatter extends XLSFormatter {
 		//
 
 		cellStyles = new CellStyle[includedFieldIndices.length];
+		dateWidths = new int[includedFieldIndices.length];
 		DataFormat dataFormat = workbook.createDataFormat();
 
 		for (int i = 0; i < includedFieldIndices.length; i++) {
 			DataFieldMetadata fieldMetadata = metadata.getField(includedFieldIndices[i]);
+			String excelFormat = getExcelFormat(fieldMetadata);
 
 			CellStyle cellStyle = workbook.createCellStyle();
-			cellStyle.setDataFormat(dataFormat.getFormat(getExcelFormat(fieldMetadata)));
+			cellStyle.setDataFormat(dataFormat.getFormat(excelFormat));
 
 			cellStyles[i] = cellStyle;
+			dateWidths[i] = Math.max(MIN_DATE_WIDTH, excelFormat.length());
 		}
 
 		//
@@ -226,10 +261,11 @@ public class XLSXDataFormatter extends XLSFormatter {
 		// determine the correct row and write the names row
 		//
 
-		currentRowIndex = append ? sheet.getLastRowNum() + (sheet.getPhysicalNumberOfRows() > 0 ? 1 : 0) : 0;
+		Sheet templateSheet = getTemplateSheet(sheet);
+		currentRowIndex = append ? templateSheet.getLastRowNum() + (templateSheet.getPhysicalNumberOfRows() > 0 ? 1 : 0) : 0;
 
 		if (namesRow > -1) {
-			if (!append || sheet.getLastRowNum() < 0) {
+			if (!append || templateSheet.getLastRowNum() < 0) {
 				Row row = sheet.getRow(namesRow);
 
 				if (row == null) {
@@ -262,10 +298,22 @@ public class XLSXDataFormatter extends XLSFormatter {
 		//
 
 		if (sheetData != null) {
-			currentSheetData = new SheetData(sheet, currentRowIndex);
+			currentSheetData = new SheetData(sheet, currentRowIndex, includedFieldIndices.length);
 			sheetData.put(tempSheetName, currentSheetData);
 		}
 	}
+
+	/**
+	 * Returns the sheet which contains rows of the existing output file. In the streaming mode it is the sheet
+	 * of the template workbook, the streamed sheet provides only the rows in memory.
+	 */
+	private Sheet getTemplateSheet(Sheet sheet) {
+		if (templateWorkbook == null) {
+			return sheet;
+		}
+
+		return templateWorkbook.getSheetAt(workbook.getSheetIndex(sheet));
+	}
 
 	/**
 	 * Extract excel related format string from a clover field metadata.
@@ -361,6 +409,13 @@ public class XLSXDataFormatter extends XLSFormatter {
 			default:
 				break;
 			}
+
+			if (streaming && sheetData != null) {
+				int width = (fieldValue instanceof Date) ? dateWidths[i] : fieldValue.toString().length();
+				if (width > currentSheetData.columnWidths[i]) {
+					currentSheetData.columnWidths[i] = width;
+				}
+			}
 		}
 
 		currentRowIndex++;
@@ -385,6 +440,12 @@ public class XLSXDataFormatter extends XLSFormatter {
 				if (metadata.getParsingType() == DataRecordParsingType.DELIMITED && sheetData != null) {
 					for (SheetData aSheetData : sheetData.values()) {
 						for (int i = 0; i < includedFieldIndices.length; i++) {
+							if (streaming) {
+								// the flushed rows are not available, use the widths of the written values
+								aSheetData.sheet.setColumnWidth(firstColumn + i,
+										Math.min(MAX_COLUMN_WIDTH, aSheetData.columnWidths[i] + 1) * 256);
+								continue;
+							}
 							// https://issues.apache.org/bugzilla/show_bug.cgi?id=49940
 							// XmlValueDisconnectedException can be thrown here
 							aSheetData.sheet.autoSizeColumn(firstColumn + i);
@@ -399,6 +460,11 @@ public class XLSXDataFormatter extends XLSFormatter {
 					}
 				} catch (IOException exception) {
 					logger.error("Error closing the output stream!", exception);
+				} finally {
+					if (workbook instanceof SXSSFWorkbook) {
+						// deletes the temporary sheet files
+						((SXSSFWorkbook) workbook).dispose();
+					}
 				}
 				reset();
 			}
@@ -408,8 +474,10 @@ public class XLSXDataFormatter extends XLSFormatter {
 	@Override
 	public void reset() {
 		workbook = null;
+		templateWorkbook = null;
 		sheet = null;
 		cellStyles = null;
+		dateWidths = null;
 
 		sheetData = null;
 		currentSheetName = null;
@@ -443,10 +511,13 @@ public class XLSXDataFormatter extends XLSFormatter {
 		private Sheet sheet;
 		/** the current row within the sheet */
 		private int currentRow;
+		/** the maximum widths of the written values in characters, maintained in the streaming mode */
+		private int[] columnWidths;
 
-		public SheetData(Sheet sheet, int currentRow) {
+		public SheetData(Sheet sheet, int currentRow, int numberOfColumns) {
 			this.sheet = sheet;
 			this.currentRow = currentRow;
+			this.columnWidths = new int[numberOfColumns];
 		}
 
 	}
@@ -38,6 +38,7 @@ import org.jetel.graph.runtime.IAuthorityProxy;
 public class XLSFormatterProvider implements FormatterProvider {
 
 	private boolean useXLSX;
+	private boolean streamingXLSX;
 	private boolean append;
 	private boolean removeSheets;
 	private String sheetName;
@@ -67,7 +68,14 @@ public class XLSFormatterProvider implements FormatterProvider {
 	 */
 	@Override
 	public Formatter getNewFormatter() {
-		XLSFormatter formatter = useXLSX ? new XLSXDataFormatter(append, removeSheets) : new JExcelXLSDataFormatter(charset, append, removeSheets);
+		XLSFormatter formatter;
+		if (useXLSX) {
+			XLSXDataFormatter xlsxFormatter = new XLSXDataFormatter(append, removeSheets);
+			xlsxFormatter.setStreaming(streamingXLSX);
+			formatter = xlsxFormatter;
+		} else {
+			formatter = new JExcelXLSDataFormatter(charset, append, removeSheets);
+		}
 		formatter.setSheetName(sheetName);
 		formatter.setSheetNumber(sheetNumber);
 		formatter.setFirstColumn(firstColumnIndex);
@@ -85,6 +93,15 @@ public class XLSFormatterProvider implements FormatterProvider {
 		this.useXLSX = useXLSX;
 	}
 
+	/**
+	 * Sets the streaming mode of XLSX formatters, which keeps only a window of rows in memory.
+	 * 
+	 * @param streamingXLSX
+	 */
+	public void setStreamingXLSX(boolean streamingXLSX) {
+		this.streamingXLSX = streamingXLSX;
+	}
+
 	/**
 	 * @return sheet name, which was set by setSheetName method
 	 */
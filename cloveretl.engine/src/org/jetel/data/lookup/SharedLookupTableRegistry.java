@@ -0,0 +1,267 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.data.lookup;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jetel.exception.ComponentNotReadyException;
+import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.metadata.DataRecordMetadata;
+import org.jetel.util.file.FileUtils;
+
+/**
+ * JVM-wide registry of read-only lookup table contents, which can be shared by lookup tables
+ * of concurrently running graphs. The contents are identified by a key, which should describe everything
+ * the contents depend on - see {@link #createKey(DataRecordMetadata, String[], String, long, Object...)}.<br>
+ * The registry counts references to each content. The content is loaded by the first lookup table
+ * which acquires it (other tables acquiring the same key wait for the load) and it is dropped
+ * from the registry when the last table releases it.<br>
+ * Shared contents must not be modified after they have been loaded.
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public final class SharedLookupTableRegistry {
+
+	private static final Log logger = LogFactory.getLog(SharedLookupTableRegistry.class);
+
+	private static final SharedLookupTableRegistry INSTANCE = new SharedLookupTableRegistry();
+
+	private final Map<Object, Entry> entries = new HashMap<Object, Entry>();
+
+	private SharedLookupTableRegistry() {
+	}
+
+	public static SharedLookupTableRegistry getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Loads content of a shared lookup table.
+	 */
+	public interface Loader<T> {
+
+		/**
+		 * @return loaded content, which is not modified anymore
+		 * @throws ComponentNotReadyException
+		 */
+		T load() throws ComponentNotReadyException;
+
+	}
+
+	/**
+	 * Returns content registered under the key. If there is no such content, it is loaded by the given loader.
+	 * Each successful call has to be paired with {@link #release(Object)}.
+	 *
+	 * @param key key of the content
+	 * @param loader loader used if the content is not loaded yet
+	 * @return shared content
+	 * @throws ComponentNotReadyException if the content cannot be loaded
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T acquire(Object key, Loader<T> loader) throws ComponentNotReadyException {
+		Entry entry;
+		synchronized (entries) {
+			entry = entries.get(key);
+			if (entry == null) {
+				entry = new Entry();
+				entries.put(key, entry);
+			}
+			entry.references++;
+		}
+		boolean success = false;
+		try {
+			T content;
+			synchronized (entry) {
+				if (entry.content == null) {
+					entry.content = loader.load();
+					if (logger.isDebugEnabled()) {
+						logger.debug("Shared lookup table content loaded: " + key);
+					}
+				}
+				content = (T) entry.content;
+			}
+			success = true;
+			return content;
+		} finally {
+			if (!success) {
+				release(key, entry);
+			}
+		}
+	}
+
+	/**
+	 * Releases content acquired by {@link #acquire(Object, Loader)}. Content which is not
+	 * referenced anymore is dropped.
+	 *
+	 * @param key key of the content
+	 */
+	public void release(Object key) {
+		Entry entry;
+		synchronized (entries) {
+			entry = entries.get(key);
+		}
+		if (entry == null) {
+			throw new IllegalStateException("Shared lookup table content is not registered: " + key);
+		}
+		release(key, entry);
+	}
+
+	private void release(Object key, Entry entry) {
+		synchronized (entries) {
+			if (--entry.references == 0 && entries.get(key) == entry) {
+				entries.remove(key);
+				if (logger.isDebugEnabled()) {
+					logger.debug("Shared lookup table content released: " + key);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return number of references to the content, 0 if the content is not registered
+	 */
+	public int getReferenceCount(Object key) {
+		synchronized (entries) {
+			Entry entry = entries.get(key);
+			return entry != null ? entry.references : 0;
+		}
+	}
+
+	/**
+	 * @return number of registered contents
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Creates key of shared lookup table content.
+	 *
+	 * @param metadata metadata of the lookup table records, compared by {@link #getMetadataSignature(DataRecordMetadata)}
+	 * @param keyFields names of the key fields
+	 * @param source URL of the source of the lookup table data
+	 * @param modificationStamp modification stamp of the source
+	 * @param parameters other parameters the content depends on, such as charset
+	 * @return key usable in {@link #acquire(Object, Loader)}
+	 */
+	public static Object createKey(DataRecordMetadata metadata, String[] keyFields, String source, long modificationStamp,
+			Object... parameters) {
+		List<Object> key = new ArrayList<Object>();
+		key.add(getMetadataSignature(metadata));
+		key.add(Arrays.asList(keyFields));
+		key.add(source);
+		key.add(modificationStamp);
+		key.addAll(Arrays.asList(parameters));
+		return Collections.unmodifiableList(key);
+	}
+
+	/**
+	 * Unlike {@link DataRecordMetadata#equals(Object)}, the signature describes also names of the fields
+	 * and all properties affecting parsing of the records.
+	 *
+	 * @param metadata
+	 * @return signature of the metadata
+	 */
+	public static String getMetadataSignature(DataRecordMetadata metadata) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(metadata.getRecType()).append('|').append(metadata.getRecordDelimiter()).append('|')
+			.append(metadata.getFieldDelimiter()).append('|').append(metadata.getSkipSourceRows()).append('|')
+			.append(metadata.isQuotedStrings()).append('|').append(metadata.getQuoteChar());
+		for (DataFieldMetadata field : metadata.getFields()) {
+			sb.append('|').append(field.getName()).append(':').append(field.getTypeAsString()).append(':')
+				.append(field.getContainerType()).append(':').append(Arrays.toString(field.getDelimiters())).append(':')
+				.append(field.getSize()).append(':').append(field.getFormatStr()).append(':')
+				.append(field.getLocaleStr()).append(':').append(field.getNullValues()).append(':')
+				.append(field.isNullable()).append(':').append(field.getDefaultValueStr()).append(':')
+				.append(field.isTrim()).append(':').append(field.isEofAsDelimiter()).append(':')
+				.append(field.getShift()).append(':').append(field.getAutoFilling());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns size and last modification time of the source. The size is -1 and the time is 0 if they are not known.
+	 *
+	 * @param contextURL
+	 * @param fileURL
+	 * @return array of size and last modification time of the source
+	 * @throws MalformedURLException
+	 */
+	public static long[] getSourceStamp(URL contextURL, String fileURL) throws MalformedURLException {
+		URL url = FileUtils.getFileURL(contextURL, fileURL);
+		try {
+			File file = FileUtils.convertUrlToFile(url);
+			if (file.isFile()) {
+				return new long[] { file.length(), file.lastModified() };
+			}
+		} catch (MalformedURLException e) {
+			// not a local file
+		}
+		URLConnection connection = null;
+		try {
+			connection = url.openConnection();
+			if (connection instanceof HttpURLConnection) {
+				((HttpURLConnection) connection).setRequestMethod("HEAD");
+			}
+			return new long[] { connection.getContentLengthLong(), connection.getLastModified() };
+		} catch (IOException e) {
+			return new long[] { -1, 0 };
+		} finally {
+			close(connection);
+		}
+	}
+
+	/**
+	 * URLConnection can't be closed directly, its input stream is closed instead.
+	 */
+	private static void close(URLConnection connection) {
+		if (connection instanceof HttpURLConnection) {
+			((HttpURLConnection) connection).disconnect();
+		} else if (connection != null) {
+			try {
+				connection.getInputStream().close();
+			} catch (IOException e) {
+				// nothing to close
+			}
+		}
+	}
+
+	private static class Entry {
+
+		int references;
+		Object content;
+
+	}
+
+}
@@ -0,0 +1,801 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.data.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jetel.data.DataRecord;
+import org.jetel.data.DataRecordFactory;
+import org.jetel.data.Defaults;
+import org.jetel.exception.BadDataFormatException;
+import org.jetel.exception.ComponentNotReadyException;
+import org.jetel.exception.IParserExceptionHandler;
+import org.jetel.exception.JetelException;
+import org.jetel.exception.PolicyType;
+import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.metadata.DataRecordMetadata;
+import org.jetel.util.bytes.ByteSearchUtils;
+import org.jetel.util.string.StringUtils;
+
+/**
+ * Parser of delimited data which searches delimiters and quotes directly in the input bytes, eight bytes
+ * at a time (see {@link ByteSearchUtils}), and decodes only the bytes of the fields. Fields containing only ASCII
+ * characters are not passed to the charset decoder at all.<br>
+ * The parser is used for simple delimited data in charsets compatible with ASCII, list of limitations:
+ * <ul>
+ * <li>charset has to be UTF-8 or a single byte charset compatible with ASCII</li>
+ * <li>each field has single delimiter composed of ASCII characters, only one record delimiter can be specified</li>
+ * <li>fixed length, byte and shifted fields are not supported</li>
+ * <li>verbose mode (raw records in error messages) and treatMultipleDelimitersAsOne are not supported</li>
+ * </ul>
+ * Quoted strings are supported, quote is recognized at the beginning of a field only and doubled quote
+ * characters inside quoted field are escaped quotes.
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ * @see SimpleDataParser
+ */
+public class ByteDelimitedDataParser extends AbstractTextParser {
+
+	private final static Log logger = LogFactory.getLog(ByteDelimitedDataParser.class);
+
+	private static final int MIN_BUFFER_SIZE = 8192;
+
+	/** field has been parsed */
+	private static final int FIELD_OK = 0;
+	/** field has been terminated by the end of input */
+	private static final int FIELD_EOF = 1;
+	/** no data for the first field of a record */
+	private static final int NO_DATA = 2;
+	/** record delimiter found before delimiter of the field, the parser is at beginning of next record */
+	private static final int ERROR_SHORT_RECORD = 3;
+	/** the field is not terminated by its delimiter, the rest of the record has to be skipped */
+	private static final int ERROR_DELIMITER = 4;
+	/** unexpected end of input */
+	private static final int ERROR_EOF = 5;
+
+	private IParserExceptionHandler exceptionHandler;
+	private ReadableByteChannel reader;
+
+	/** indexes of the parsed fields, autofilled fields are not parsed */
+	private int[] parsedFields;
+	private byte[][] delimiters;
+	private long[] delimiterPatterns;
+	/** explicit record delimiter or <code>null</code> */
+	private byte[] recordDelimiter;
+	private long recordDelimiterPattern;
+	/** delimiter terminating records, used to skip the rest of invalid record */
+	private byte[] recordEnd;
+	private int maxDelimiterLength;
+	private boolean[] isSkipLeadingBlanks;
+	private boolean[] isSkipTrailingBlanks;
+	private boolean[] isEofAsDelimiter;
+	private boolean quotedStrings;
+	private byte quote;
+	private byte alternativeQuote;
+
+	private byte[] buffer;
+	private ByteBuffer words;
+	private int position;
+	private int limit;
+	/** number of bytes discarded from the buffer by the last {@link #readMore(int)} call */
+	private int shift;
+	/** position of the buffer in the input */
+	private long bufferOffset;
+	private boolean eof;
+	/** the buffer cannot hold the current field */
+	private boolean overflow;
+	private long bytesProcessed;
+
+	/** bytes of the last read field */
+	private int fieldStart;
+	private int fieldEnd;
+	/** escaped quote in the last read field or -1 */
+	private int escapedQuote;
+	private String errorMessage;
+
+	private CharsetDecoder decoder;
+	private CharBuffer charBuffer;
+	private StringBuilder fieldBuffer;
+	private int recordCounter;
+
+	public ByteDelimitedDataParser(TextParserConfiguration cfg) {
+		super(cfg);
+		exceptionHandler = cfg.getExceptionHandler();
+	}
+
+	/**
+	 * Returns parser speed for specified configuration. See {@link TextParserFactory#getParser(TextParserConfiguration)}.
+	 */
+	public static Integer getParserSpeed(TextParserConfiguration cfg) {
+		if (!Defaults.DataParser.BYTE_DELIMITED_PARSER) {
+			logger.debug("This parser can't be used because it is not enabled by DataParser.BYTE_DELIMITED_PARSER property");
+		} else if (cfg.isVerbose()) {
+			logger.debug("This parser can't be used because 'verbose' feature");
+		} else if (cfg.isTreatMultipleDelimitersAsOne()) {
+			logger.debug("This parser can't be used because of the 'treatMultipleDelimitersAsOne' feature");
+		} else if (cfg.isTryToMatchLongerDelimiter()) {
+			logger.debug("This parser can't be used because of the delimiter complexity");
+		} else if (!isAsciiCompatibleCharset(cfg.getCharset())) {
+			logger.debug("This parser can't be used because of the charset " + cfg.getCharset());
+		} else if (!isSimpleData(cfg)) {
+			logger.debug("This parser can't be used because of the data record complexity");
+		} else {
+			logger.debug("This parser may be used");
+			return 90;
+		}
+		return null;
+	}
+
+	private static boolean isAsciiCompatibleCharset(String charset) {
+		try {
+			return TextParserConfiguration.isAsciiCompatibleCharset(charset != null ? charset : Defaults.DataParser.DEFAULT_CHARSET_DECODER);
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	private static boolean isSimpleData(TextParserConfiguration cfg) {
+		DataRecordMetadata metadata = cfg.getMetadata();
+		boolean hasParsedField = false;
+		for (DataFieldMetadata field : metadata.getFields()) {
+			if (field.isAutoFilled()) {
+				continue;
+			}
+			if (field.getShift() != 0) {
+				logger.debug("Field " + field + " has non-zero shift");
+				return false;
+			}
+			if (!field.isDelimited() || field.isFixed()) {
+				logger.debug("Field " + field + " is not delimited");
+				return false;
+			}
+			if (field.isByteBased()) {
+				logger.debug("Field " + field + " is byte-based");
+				return false;
+			}
+			String[] fieldDelimiters = field.getDelimiters();
+			if (fieldDelimiters == null || fieldDelimiters.length != 1 || !isAscii(fieldDelimiters[0])) {
+				logger.debug("Field " + field + " has not single ASCII delimiter");
+				return false;
+			}
+			hasParsedField = true;
+		}
+		String[] recordDelimiters = metadata.getRecordDelimiters();
+		if (recordDelimiters != null && (recordDelimiters.length != 1 || !isAscii(recordDelimiters[0]))) {
+			logger.debug("Metadata " + metadata.getName() + " have not single ASCII record delimiter");
+			return false;
+		}
+		Character quoteChar = cfg.isQuotedStringsOverride() ? cfg.getQuoteChar() : metadata.getQuoteChar();
+		if (quoteChar != null && quoteChar.charValue() >= 0x80) {
+			logger.debug("Quote character is not ASCII character");
+			return false;
+		}
+		return hasParsedField;
+	}
+
+	private static boolean isAscii(String s) {
+		if (s.isEmpty()) {
+			return false;
+		}
+		for (int i = 0; i < s.length(); i++) {
+			if (s.charAt(i) >= 0x80) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static byte[] toBytes(String s) {
+		return s.getBytes(Charset.forName("US-ASCII"));
+	}
+
+	@Override
+	public void init() throws ComponentNotReadyException {
+		DataRecordMetadata metadata = cfg.getMetadata();
+		if (metadata == null) {
+			throw new ComponentNotReadyException("Metadata are null");
+		}
+		if (!isSimpleData(cfg)) {
+			throw new ComponentNotReadyException("Metadata " + metadata.getName() + " are not supported by " + getClass().getSimpleName());
+		}
+		List<Integer> fields = new ArrayList<Integer>();
+		for (int i = 0; i < metadata.getNumFields(); i++) {
+			if (!metadata.getField(i).isAutoFilled()) {
+				fields.add(i);
+			}
+		}
+		int numFields = fields.size();
+		parsedFields = new int[numFields];
+		delimiters = new byte[numFields][];
+		delimiterPatterns = new long[numFields];
+		isSkipLeadingBlanks = new boolean[numFields];
+		isSkipTrailingBlanks = new boolean[numFields];
+		isEofAsDelimiter = new boolean[numFields];
+		maxDelimiterLength = 1;
+		for (int i = 0; i < numFields; i++) {
+			int fieldIndex = fields.get(i);
+			DataFieldMetadata field = metadata.getField(fieldIndex);
+			parsedFields[i] = fieldIndex;
+			delimiters[i] = toBytes(field.getDelimiters()[0]);
+			delimiterPatterns[i] = ByteSearchUtils.pattern(delimiters[i][0]);
+			maxDelimiterLength = Math.max(maxDelimiterLength, delimiters[i].length);
+			isSkipLeadingBlanks[i] = isSkipFieldLeadingBlanks(fieldIndex);
+			isSkipTrailingBlanks[i] = isSkipFieldTrailingBlanks(fieldIndex);
+			isEofAsDelimiter[i] = field.isEofAsDelimiter();
+		}
+		String[] recordDelimiters = metadata.getRecordDelimiters();
+		if (recordDelimiters != null) {
+			recordDelimiter = toBytes(recordDelimiters[0]);
+			recordDelimiterPattern = ByteSearchUtils.pattern(recordDelimiter[0]);
+			maxDelimiterLength = Math.max(maxDelimiterLength, recordDelimiter.length);
+			recordEnd = recordDelimiter;
+		} else {
+			recordDelimiter = null;
+			recordEnd = delimiters[numFields - 1];
+		}
+		quotedStrings = isQuotedStrings();
+		Character quoteChar = getQuoteChar();
+		if (quoteChar == null) {
+			quote = '"';
+			alternativeQuote = '\'';
+		} else {
+			quote = alternativeQuote = (byte) quoteChar.charValue();
+		}
+
+		buffer = new byte[Math.max(Defaults.DEFAULT_INTERNAL_IO_BUFFER_SIZE, MIN_BUFFER_SIZE)];
+		words = ByteSearchUtils.wrap(buffer);
+		fieldBuffer = new StringBuilder(Defaults.Record.FIELD_INITIAL_SIZE);
+	}
+
+	@Override
+	public void setDataSource(Object inputDataSource) {
+		if (releaseDataSource) {
+			releaseDataSource();
+		}
+
+		recordCounter = 0;
+		bytesProcessed = 0;
+		bufferOffset = 0;
+		position = 0;
+		limit = 0;
+		eof = false;
+		overflow = false;
+		decoder = createCharsetDecoder();
+
+		if (inputDataSource == null) {
+			reader = null;
+			eof = true;
+		} else if (inputDataSource instanceof ReadableByteChannel) {
+			reader = (ReadableByteChannel) inputDataSource;
+		} else if (inputDataSource instanceof InputStream) {
+			reader = Channels.newChannel((InputStream) inputDataSource);
+		} else {
+			throw new UnsupportedOperationException("Unsupported data source " + inputDataSource.getClass().getName());
+		}
+	}
+
+	@Override
+	protected void releaseDataSource() {
+		if (reader == null) {
+			return;
+		}
+		try {
+			reader.close();
+		} catch (IOException e) {
+			logger.warn("Failed to release data source", e);
+		}
+		reader = null;
+	}
+
+	@Override
+	public void close() {
+		if (reader != null) {
+			try {
+				reader.close();
+			} catch (IOException ex) {
+				logger.warn("Failed to close data source", ex);
+			}
+		}
+	}
+
+	@Override
+	public DataRecord getNext() throws JetelException {
+		DataRecord record = DataRecordFactory.newRecord(cfg.getMetadata());
+
+		return getNext(record);
+	}
+
+	@Override
+	public DataRecord getNext(DataRecord record) throws JetelException {
+		record = parseNext(record);
+		if (exceptionHandler != null) { // use handler only if configured
+			while (exceptionHandler.isExceptionThrowed()) {
+				if (exceptionHandler.getRecordNumber() > -1) {
+					exceptionHandler.setRawRecord("ByteDelimitedDataParser does not provide raw record.");
+				}
+				exceptionHandler.handleException();
+				record = parseNext(record);
+			}
+		}
+		return record;
+	}
+
+	private DataRecord parseNext(DataRecord record) throws JetelException {
+		try {
+			return parseRecord(record) ? record : null;
+		} catch (CharacterCodingException e) {
+			throw new JetelException(new CharsetDecoderException("Character decoding error occurred. Set correct charset."
+					+ (!StringUtils.isEmpty(cfg.getCharset()) ? " Current charset is " + cfg.getCharset() : ""), e));
+		} catch (IOException e) {
+			throw new JetelException("Error when reading record #" + recordCounter, e);
+		}
+	}
+
+	/**
+	 * Parses next record.
+	 *
+	 * @param record record to populate or <code>null</code> if the record is skipped
+	 * @return <code>false</code> at the end of input
+	 */
+	private boolean parseRecord(DataRecord record) throws IOException {
+		if (eof && position >= limit) {
+			return false;
+		}
+		recordCounter++;
+		for (int i = 0; i < parsedFields.length; i++) {
+			int status = readField(i);
+			switch (status) {
+			case NO_DATA:
+				recordCounter--;
+				return false;
+			case FIELD_OK:
+			case FIELD_EOF:
+				if (record != null) {
+					decodeField(i);
+					populateField(record, parsedFields[i], fieldBuffer);
+					if (status == FIELD_EOF) {
+						resetMissingFields(i + 1, record);
+					}
+				}
+				if (status == FIELD_EOF) {
+					bytesProcessed = bufferOffset + position;
+					return true;
+				}
+				break;
+			default:
+				if (status == ERROR_DELIMITER) {
+					skipToRecordEnd();
+				}
+				if (record != null) {
+					parsingErrorFound(errorMessage, record, parsedFields[i]);
+					resetMissingFields(i + 1, record);
+				}
+				bytesProcessed = bufferOffset + position;
+				return true;
+			}
+		}
+		bytesProcessed = bufferOffset + position;
+		return true;
+	}
+
+	/**
+	 * Reads field at the current position, bytes of the field are stored in {@link #fieldStart}, {@link #fieldEnd}.
+	 *
+	 * @param i index of the parsed field
+	 * @return status of the field
+	 */
+	private int readField(int i) throws IOException {
+		escapedQuote = -1;
+		int start = position;
+		if (start >= limit) {
+			boolean more = readMore(start);
+			start -= shift;
+			if (!more) {
+				if (i == 0) {
+					return NO_DATA;
+				}
+				fieldStart = fieldEnd = position = limit;
+				return endOfInput(i);
+			}
+		}
+		byte first = buffer[start];
+		if (quotedStrings && (first == quote || first == alternativeQuote)) {
+			return readQuotedField(i, start, first);
+		}
+
+		byte[] delimiter = delimiters[i];
+		int from = start;
+		for (;;) {
+			int found = recordDelimiter != null
+					? ByteSearchUtils.indexOfAny(words, from, limit, delimiterPatterns[i], recordDelimiterPattern)
+					: ByteSearchUtils.indexOf(words, from, limit, delimiterPatterns[i]);
+			if (found < 0 || (found + maxDelimiterLength > limit && !eof)) {
+				// read more data, the field or the delimiter is not complete
+				from = found < 0 ? limit : found;
+				boolean more = readMore(start);
+				start -= shift;
+				from -= shift;
+				if (!more) {
+					if (overflow) {
+						return fieldTooLong(start);
+					}
+					if (found < 0) {
+						fieldStart = start;
+						fieldEnd = position = limit;
+						return endOfInput(i);
+					}
+				}
+				continue;
+			}
+			if (matches(found, delimiter)) {
+				fieldStart = start;
+				fieldEnd = found;
+				position = found + delimiter.length;
+				return FIELD_OK;
+			}
+			if (recordDelimiter != null && matches(found, recordDelimiter)) {
+				position = found + recordDelimiter.length;
+				errorMessage = "Unexpected record delimiter, probably record has too few fields";
+				return ERROR_SHORT_RECORD;
+			}
+			from = found + 1;
+		}
+	}
+
+	private int readQuotedField(int i, int start, byte quoteChar) throws IOException {
+		long quotePattern = ByteSearchUtils.pattern(quoteChar);
+		int from = start + 1;
+		int end;
+		for (;;) {
+			int found = ByteSearchUtils.indexOf(words, from, limit, quotePattern);
+			if (found < 0 || found + 1 >= limit) {
+				// the byte following the quote decides whether it is escaped quote or end of the field
+				from = found < 0 ? limit : found;
+				boolean more = readMore(start);
+				start -= shift;
+				from -= shift;
+				if (more) {
+					continue;
+				}
+				if (overflow) {
+					return fieldTooLong(start);
+				}
+				if (found < 0) {
+					position = limit;
+					errorMessage = "Unexpected end of file in quoted field";
+					return ERROR_EOF;
+				}
+				// the closing quote is the last byte of the input
+				found = from;
+			} else if (buffer[found + 1] == quoteChar) {
+				escapedQuote = quoteChar;
+				from = found + 2;
+				continue;
+			}
+			end = found;
+			break;
+		}
+		fieldStart = start + 1;
+		fieldEnd = end;
+		position = end + 1;
+
+		// delimiter has to follow the closing quote
+		while (position + maxDelimiterLength > limit && !eof) {
+			boolean more = readMore(start);
+			start -= shift;
+			fieldStart -= shift;
+			fieldEnd -= shift;
+			position -= shift;
+			if (!more && overflow) {
+				return fieldTooLong(start);
+			}
+		}
+		if (position >= limit && eof) {
+			return endOfInput(i);
+		}
+		if (matches(position, delimiters[i])) {
+			position += delimiters[i].length;
+			return FIELD_OK;
+		}
+		if (recordDelimiter != null && matches(position, recordDelimiter)) {
+			position += recordDelimiter.length;
+			errorMessage = "Unexpected record delimiter, probably record has too few fields";
+			return ERROR_SHORT_RECORD;
+		}
+		errorMessage = "Bad quote format";
+		return ERROR_DELIMITER;
+	}
+
+	private int endOfInput(int i) {
+		if (isEofAsDelimiter[i]) {
+			return FIELD_EOF;
+		}
+		errorMessage = "Unexpected end of file";
+		return ERROR_EOF;
+	}
+
+	private int fieldTooLong(int start) {
+		overflow = false;
+		position = start;
+		errorMessage = "Field delimiter was not found";
+		return ERROR_DELIMITER;
+	}
+
+	private boolean matches(int index, byte[] delimiter) {
+		if (index + delimiter.length > limit) {
+			return false;
+		}
+		for (int j = 0; j < delimiter.length; j++) {
+			if (buffer[index + j] != delimiter[j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Moves the position after the nearest record delimiter.
+	 */
+	private void skipToRecordEnd() throws IOException {
+		long pattern = ByteSearchUtils.pattern(recordEnd[0]);
+		int from = position;
+		for (;;) {
+			int found = ByteSearchUtils.indexOf(words, from, limit, pattern);
+			if (found >= 0 && (found + recordEnd.length <= limit || eof)) {
+				if (matches(found, recordEnd)) {
+					position = found + recordEnd.length;
+					return;
+				}
+				from = found + 1;
+				continue;
+			}
+			int keep = found >= 0 ? found : limit;
+			boolean more = readMore(keep);
+			from = keep - shift;
+			if (!more && !eof) {
+				// overflow, the delimiter candidate does not fit into the buffer
+				overflow = false;
+				from++;
+			} else if (!more && found < 0) {
+				position = limit;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Reads more bytes into the buffer. Bytes before the given position are discarded,
+	 * so all positions in the buffer have to be decreased by {@link #shift} after the call.
+	 *
+	 * @param keepFrom first byte which has to be kept in the buffer
+	 * @return <code>false</code> at the end of input or if the buffer cannot be enlarged ({@link #overflow})
+	 */
+	private boolean readMore(int keepFrom) throws IOException {
+		shift = 0;
+		if (eof) {
+			return false;
+		}
+		if (keepFrom > 0) {
+			System.arraycopy(buffer, keepFrom, buffer, 0, limit - keepFrom);
+			limit -= keepFrom;
+			bufferOffset += keepFrom;
+			shift = keepFrom;
+		}
+		if (limit == buffer.length) {
+			if (buffer.length >= Defaults.Record.FIELD_LIMIT_SIZE) {
+				overflow = true;
+				return false;
+			}
+			buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, Math.max(Defaults.Record.FIELD_LIMIT_SIZE, buffer.length + 1)));
+			words = ByteSearchUtils.wrap(buffer);
+		}
+		ByteBuffer target = ByteBuffer.wrap(buffer, limit, buffer.length - limit);
+		int count;
+		do {
+			count = reader.read(target);
+		} while (count == 0);
+		if (count < 0) {
+			eof = true;
+			return false;
+		}
+		limit += count;
+		return true;
+	}
+
+	/**
+	 * Decodes the last read field into the field buffer.
+	 */
+	private void decodeField(int i) throws CharacterCodingException {
+		fieldBuffer.setLength(0);
+		int length = fieldEnd - fieldStart;
+		if (ByteSearchUtils.isAscii(words, fieldStart, fieldEnd)) {
+			for (int j = fieldStart; j < fieldEnd; j++) {
+				fieldBuffer.append((char) buffer[j]);
+			}
+		} else {
+			if (charBuffer == null || charBuffer.capacity() < length) {
+				charBuffer = CharBuffer.allocate(Math.max(length, MIN_BUFFER_SIZE));
+			}
+			charBuffer.clear();
+			decoder.reset();
+			CoderResult result = decoder.decode(ByteBuffer.wrap(buffer, fieldStart, length), charBuffer, true);
+			if (result.isError()) {
+				result.throwException();
+			}
+			decoder.flush(charBuffer);
+			charBuffer.flip();
+			fieldBuffer.append(charBuffer);
+		}
+		if (escapedQuote >= 0) {
+			// remove doubled quotes
+			char quoteChar = (char) escapedQuote;
+			int length2 = fieldBuffer.length();
+			int w = 0;
+			for (int r = 0; r < length2; r++) {
+				char c = fieldBuffer.charAt(r);
+				fieldBuffer.setCharAt(w++, c);
+				if (c == quoteChar && r + 1 < length2 && fieldBuffer.charAt(r + 1) == quoteChar) {
+					r++;
+				}
+			}
+			fieldBuffer.setLength(w);
+		}
+		if (isSkipLeadingBlanks[i]) {
+			StringUtils.trimLeading(fieldBuffer);
+		}
+		if (isSkipTrailingBlanks[i]) {
+			StringUtils.trimTrailing(fieldBuffer);
+		}
+	}
+
+	private void resetMissingFields(int i, DataRecord record) {
+		for (; i < parsedFields.length; i++) {
+			record.getField(parsedFields[i]).reset();
+		}
+	}
+
+	private void parsingErrorFound(String exceptionMessage, DataRecord record, int fieldNum) {
+		if (exceptionHandler != null) {
+			exceptionHandler.populateHandler("Parsing error: " + exceptionMessage, record, recordCounter, fieldNum,
+					null, new BadDataFormatException("Parsing error: " + exceptionMessage));
+		} else {
+			BadDataFormatException bdfe = new BadDataFormatException("Parsing error: " + exceptionMessage);
+			bdfe.setRecordNumber(recordCounter);
+			bdfe.setFieldNumber(fieldNum);
+			throw bdfe;
+		}
+	}
+
+	private void populateField(DataRecord record, int fieldIndex, CharSequence data) {
+		try {
+			record.getField(fieldIndex).fromString(data);
+		} catch (BadDataFormatException bdfe) {
+			if (exceptionHandler != null) {
+				exceptionHandler.populateHandler(null, record,
+						recordCounter, fieldIndex, data.toString(), bdfe);
+			} else {
+				bdfe.setRecordNumber(recordCounter);
+				bdfe.setFieldNumber(fieldIndex);
+				bdfe.setOffendingValue(data);
+				throw bdfe;
+			}
+		} catch (Exception ex) {
+			throw new RuntimeException("Error when parsing record #" + recordCounter + " field "
+					+ cfg.getMetadata().getField(fieldIndex).getName() + " value \"" + data + "\"", ex);
+		}
+	}
+
+	@Override
+	public int skip(int nRec) throws JetelException {
+		int skipped = 0;
+		try {
+			while (skipped < nRec && parseRecord(null)) {
+				skipped++;
+			}
+		} catch (IOException e) {
+			throw new JetelException("Error when skipping records", e);
+		}
+		if (skipped < nRec) {
+			logger.warn("End of input reached while skipping records");
+		}
+		return skipped;
+	}
+
+	@Override
+	public void setExceptionHandler(IParserExceptionHandler handler) {
+		this.exceptionHandler = handler;
+	}
+
+	@Override
+	public IParserExceptionHandler getExceptionHandler() {
+		return exceptionHandler;
+	}
+
+	@Override
+	public PolicyType getPolicyType() {
+		if (exceptionHandler != null) {
+			return exceptionHandler.getType();
+		}
+		return null;
+	}
+
+	@Override
+	public void reset() {
+		if (releaseDataSource) {
+			releaseDataSource();
+		}
+		recordCounter = 0;
+		bytesProcessed = 0;
+	}
+
+	@Override
+	public Object getPosition() {
+		return bytesProcessed;
+	}
+
+	@Override
+	public void movePosition(Object position) throws IOException {
+		long pos = 0;
+		if (position instanceof Number) {
+			pos = ((Number) position).longValue();
+		} else if (position != null) {
+			pos = Long.parseLong(position.toString());
+		}
+		while (bufferOffset + this.position < pos) {
+			if (this.position >= limit) {
+				boolean more = readMore(this.position);
+				this.position -= shift;
+				if (!more) {
+					break;
+				}
+			}
+			this.position += (int) Math.min(limit - this.position, pos - bufferOffset - this.position);
+		}
+		bytesProcessed = bufferOffset + this.position;
+	}
+
+	@Override
+	public void preExecute() throws ComponentNotReadyException {
+	}
+
+	@Override
+	public void postExecute() throws ComponentNotReadyException {
+		reset();
+	}
+
+	@Override
+	public void free() {
+		close();
+	}
+
+}
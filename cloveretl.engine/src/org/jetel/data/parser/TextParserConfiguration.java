@@ -304,6 +304,28 @@ public class TextParserConfiguration implements Cloneable {
 	public boolean isSingleByteCharset() {
 		return isSingleByteCharset(charset);
 	}
+
+	/**
+	 * In UTF-8 and in single byte charsets compatible with ASCII, bytes of ASCII characters
+	 * are never a part of other characters, so ASCII delimiters and quotes can be searched in bytes.
+	 * 
+	 * @param charset
+	 * @return <code>true</code> if ASCII characters can be searched in bytes encoded by the charset
+	 */
+	public static boolean isAsciiCompatibleCharset(Charset charset) {
+		if (charset.name().equals("UTF-8")) {
+			return true;
+		}
+		if (!isSingleByteCharset(charset)) {
+			return false;
+		}
+		String ascii = "\n\r\t ;,|\"'azAZ09";
+		return new String(ascii.getBytes(charset), Charset.forName("US-ASCII")).equals(ascii);
+	}
+
+	public static boolean isAsciiCompatibleCharset(String charset) {
+		return isAsciiCompatibleCharset(Charset.forName(charset));
+	}
 	
 	/**  Indicates, whether the parser should try to find longer delimiter when a match is found. This
 	 *  applies for e.g. delimiter set \r | \r\n. When this flag is false and a \r is found, parser
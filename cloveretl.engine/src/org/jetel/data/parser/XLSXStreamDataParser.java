@@ -0,0 +1,997 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.data.parser;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.apache.xmlbeans.XmlException;
+import org.jetel.data.DataRecord;
+import org.jetel.data.formatter.XLSFormatter;
+import org.jetel.data.formatter.XLSXDataFormatter;
+import org.jetel.exception.BadDataFormatException;
+import org.jetel.exception.ComponentNotReadyException;
+import org.jetel.exception.JetelException;
+import org.jetel.exception.JetelRuntimeException;
+import org.jetel.exception.TempFileCreationException;
+import org.jetel.graph.ContextProvider;
+import org.jetel.graph.runtime.IAuthorityProxy;
+import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.metadata.DataRecordMetadata;
+import org.jetel.util.NumberIterator;
+import org.jetel.util.file.WcardPattern;
+import org.jetel.util.spreadsheet.SpreadsheetUtils;
+import org.jetel.util.spreadsheet.StreamingSharedStrings;
+import org.jetel.util.spreadsheet.XSSFSheetXMLHandler;
+import org.jetel.util.spreadsheet.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.jetel.util.stream.StreamUtils;
+import org.jetel.util.string.StringUtils;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Represents a streaming XLSX data parser. Unlike {@link XLSXDataParser} it does not build
+ * the POI object model of the workbook, so the memory needed does not depend on size of the sheets.
+ * <p>
+ * The data source is stored to a temporary file which is opened as a read-only OPC package.
+ * The shared strings table is read by {@link StreamingSharedStrings} which spills large tables
+ * to a temporary file. Sheet XML is read by a StAX reader whose events are passed
+ * to {@link XSSFSheetXMLHandler}, the events are pulled only until the next row is complete,
+ * so at most one row is held in memory. Cells of columns which are not mapped to any field are dropped.
+ * <p>
+ * Mapping of the columns, skipping and sheet selection behave like in {@link XLSXDataParser}.
+ * Rows before the current one are not available anymore, so the metadata row, the preview
+ * and the guessed metadata are read by an extra pass over the beginning of the sheet.
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public class XLSXStreamDataParser extends XLSParser {
+
+	private static final String ERROR_PREFIX = "ERROR:";
+
+	private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newFactory();
+
+	static {
+		XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+	}
+
+	/** temporary copy of the data source */
+	private File workbookFile;
+	/** the workbook package parsed by this parser */
+	private OPCPackage workbookPackage;
+	private XSSFReader workbookReader;
+	private StreamingSharedStrings sharedStrings;
+	private StylesTable styles;
+	private boolean date1904;
+	private List<String> sheetNames;
+
+	/** number format index and format string of the cell styles, filled lazily */
+	private short[] styleFormatIndexes;
+	private String[] styleFormatStrings;
+
+	/** reader of the currently parsed sheet */
+	private SheetReader sheetReader;
+	/** index of the sheet used by preview methods */
+	private int selectedSheet = -1;
+	/** columns starting from this one are not read */
+	private int columnLimit = Integer.MAX_VALUE;
+
+	public XLSXStreamDataParser(DataRecordMetadata metadata) {
+		super(metadata);
+	}
+
+	@Override
+	protected void releaseDataSource() {
+		// not used, data source is closed immediately
+	}
+
+	@Override
+	public void setDataSource(Object dataSource) throws ComponentNotReadyException {
+		if (dataSource == null) {
+			throw new NullPointerException("dataSource");
+		}
+
+		InputStream dataInputStream = null;
+
+		if (dataSource instanceof InputStream) {
+			dataInputStream = (InputStream) dataSource;
+		} else if (dataSource instanceof ReadableByteChannel) {
+			dataInputStream = Channels.newInputStream((ReadableByteChannel) dataSource);
+		} else {
+			throw new IllegalArgumentException(dataSource.getClass() + " not supported as a data source");
+		}
+
+		close();
+
+		try {
+			workbookFile = IAuthorityProxy.getAuthorityProxy(ContextProvider.getGraph()).newTempFile("cloveretl-xlsx-source", -1);
+			OutputStream workbookOutputStream = new FileOutputStream(workbookFile);
+			try {
+				StreamUtils.copy(dataInputStream, workbookOutputStream);
+			} finally {
+				workbookOutputStream.close();
+			}
+			openWorkbook();
+		} catch (TempFileCreationException exception) {
+			throw new ComponentNotReadyException("Error creating a temporary copy of the XLSX workbook!", exception);
+		} catch (IOException exception) {
+			throw new ComponentNotReadyException("Error opening the XLSX workbook!", exception);
+		} catch (OpenXML4JException exception) {
+			throw new ComponentNotReadyException("Error opening the XLSX workbook!", exception);
+		} catch (XmlException exception) {
+			throw new ComponentNotReadyException("Error opening the XLSX workbook!", exception);
+		} finally {
+			if (releaseDataSource) {
+				try {
+					dataInputStream.close();
+				} catch (IOException exception) {
+					throw new ComponentNotReadyException("Error releasing the data source!", exception);
+				}
+			}
+		}
+
+		if (sheetName == null && sheetNumber != null) {
+			sheetNumberIterator = new NumberIterator(sheetNumber, 0, Integer.MAX_VALUE);
+		}
+
+		columnLimit = Integer.MAX_VALUE;
+		sheetCounter = -1;
+		currentRow = firstRow;
+
+		if (!getNextSheet()) {
+			throw new ComponentNotReadyException("There is no sheet conforming sheet name nor sheet number pattern");
+		}
+
+		if (metadata != null) {
+			fieldNumber = new int[metadata.getNumFields()][2];
+			mapFields();
+
+			columnLimit = 0;
+			for (int i = 0; i < fieldNumber.length; i++) {
+				if (fieldNumber[i][CLOVER_NUMBER] != -1) {
+					columnLimit = Math.max(columnLimit, fieldNumber[i][XLS_NUMBER] + 1);
+				}
+			}
+			sheetReader.columnLimit = columnLimit;
+		}
+	}
+
+	private void openWorkbook() throws IOException, OpenXML4JException, XmlException {
+		workbookPackage = OPCPackage.open(workbookFile, PackageAccess.READ);
+		workbookReader = new XSSFReader(workbookPackage);
+		date1904 = SpreadsheetUtils.get1904Windowing(workbookReader);
+		styles = workbookReader.getStylesTable();
+		int numberOfStyles = (styles != null) ? styles.getNumCellStyles() : 0;
+		styleFormatIndexes = new short[numberOfStyles];
+		styleFormatStrings = new String[numberOfStyles];
+
+		sheetNames = new ArrayList<String>();
+		XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) workbookReader.getSheetsData();
+		while (sheets.hasNext()) {
+			sheets.next().close();
+			sheetNames.add(sheets.getSheetName());
+		}
+
+		sharedStrings = new StreamingSharedStrings();
+		List<PackagePart> sharedStringsParts = workbookPackage.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+		if (!sharedStringsParts.isEmpty()) {
+			InputStream sharedStringsStream = sharedStringsParts.get(0).getInputStream();
+			try {
+				sharedStrings.load(sharedStringsStream);
+			} finally {
+				sharedStringsStream.close();
+			}
+		}
+	}
+
+	/**
+	 * Opens a new reader of the given sheet.
+	 */
+	private SheetReader openSheet(int index, int columnLimit) throws IOException, OpenXML4JException, XMLStreamException {
+		XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) workbookReader.getSheetsData();
+		for (int i = 0; sheets.hasNext(); i++) {
+			InputStream sheetStream = sheets.next();
+			if (i == index) {
+				return new SheetReader(sheetStream, columnLimit);
+			}
+			sheetStream.close();
+		}
+		throw new IOException("Sheet " + index + " not found");
+	}
+
+	/**
+	 * Opens a new reader of the selected sheet positioned on the given row.
+	 *
+	 * @param rowIndex index of the row
+	 * @param following if <code>true</code>, the reader may be positioned on a row following the missing given row
+	 * @return the reader or <code>null</code> if the row does not exist
+	 */
+	private SheetReader findRow(int rowIndex, boolean following) {
+		try {
+			SheetReader reader = openSheet(selectedSheet, Integer.MAX_VALUE);
+			while (reader.nextRow()) {
+				if (reader.rowNum == rowIndex || (following && reader.rowNum > rowIndex)) {
+					return reader;
+				}
+				if (reader.rowNum > rowIndex) {
+					break;
+				}
+			}
+			reader.close();
+			return null;
+		} catch (Exception exception) {
+			throw new JetelRuntimeException("Error reading sheet " + StringUtils.quote(sheetNames.get(selectedSheet)), exception);
+		}
+	}
+
+	private SheetReader findMetadataRow() throws ComponentNotReadyException {
+		int rowIndex = (metadataRow > -1) ? metadataRow : firstRow;
+		SheetReader row = findRow(rowIndex, false);
+
+		if (row == null) {
+			throw new ComponentNotReadyException("Metadata row (" + rowIndex + ") doesn't exist in sheet "
+					+ StringUtils.quote(sheetNames.get(selectedSheet)) + "!");
+		}
+
+		return row;
+	}
+
+	@Override
+	protected boolean getNextSheet() {
+		if (useIncrementalReading && sheetReader != null) {
+			if (incremental == null) {
+				incremental = new Incremental();
+			}
+
+			incremental.setRow(sheetNames.get(sheetCounter), currentRow);
+		}
+
+		closeSheet();
+
+		if (sheetNumberIterator != null) {
+			//
+			// get the next sheet corresponding to the value of the sheetNumber attribute
+			//
+
+			if (!sheetNumberIterator.hasNext()) {
+				return false;
+			}
+
+			sheetCounter = sheetNumberIterator.next().shortValue();
+
+			if (sheetCounter >= sheetNames.size()) {
+				return false;
+			}
+		} else {
+			//
+			// get the next sheet corresponding to the value of the sheetName attribute
+			//
+
+			while (++sheetCounter < sheetNames.size()) {
+				if (WcardPattern.checkName(sheetName, sheetNames.get(sheetCounter))) {
+					break;
+				}
+			}
+
+			if (sheetCounter >= sheetNames.size()) {
+				return false;
+			}
+		}
+
+		try {
+			sheetReader = openSheet(sheetCounter, columnLimit);
+		} catch (Exception exception) {
+			throw new JetelRuntimeException("Error opening sheet " + StringUtils.quote(sheetNames.get(sheetCounter)), exception);
+		}
+		selectedSheet = sheetCounter;
+
+		currentRow = firstRow;
+
+		// set last row to read on set attribute, the last row of the sheet is not known in advance
+		lastRow = (lastRowAttribute == -1) ? Integer.MAX_VALUE : lastRowAttribute;
+
+		discardBytes(autoFillingSheetName = sheetNames.get(sheetCounter));
+		logger.info("Reading data from sheet " + sheetCounter + " (" + sheetNames.get(sheetCounter) + ").");
+
+		return true;
+	}
+
+	@Override
+	protected void cloverfieldsAndXlsNames(Map<String, Integer> fieldNames) throws ComponentNotReadyException {
+		if (fieldNames == null) {
+			throw new NullPointerException("fieldNames");
+		}
+
+		if (cloverFields.length != xlsFields.length) {
+			throw new ComponentNotReadyException("Number of clover fields and XLSX fields must be the same");
+		}
+
+		SheetReader row = findMetadataRow();
+		int numberOfFoundFields = 0;
+
+		try {
+			for (int i = 0; i < row.lastCellNum; i++) {
+				if (row.getCellType(i) != Cell.CELL_TYPE_BLANK) {
+					String cellValue = formatCell(row, i);
+					int xlsNumber = StringUtils.findString(cellValue, xlsFields);
+
+					if (xlsNumber > -1) {// string from cell found in xlsFields attribute
+						fieldNumber[numberOfFoundFields][XLS_NUMBER] = i;
+
+						Integer cloverNumber = fieldNames.get(cloverFields[xlsNumber]);
+						if (cloverNumber == null) {
+							throw new ComponentNotReadyException("Clover field \"" + cloverFields[xlsNumber] + "\" not found");
+						}
+						fieldNumber[numberOfFoundFields][CLOVER_NUMBER] = cloverNumber;
+
+						numberOfFoundFields++;
+					} else {
+						logger.warn("There is no field corresponding to \"" + cellValue + "\" in output metadata");
+					}
+				}
+			}
+		} finally {
+			row.close();
+		}
+
+		if (numberOfFoundFields < cloverFields.length) {
+			logger.warn("Not all fields found");
+		}
+	}
+
+	@Override
+	protected void mapNames(Map<String, Integer> fieldNames) throws ComponentNotReadyException {
+		if (fieldNames == null) {
+			throw new NullPointerException("fieldNames");
+		}
+
+		SheetReader row = findMetadataRow();
+		int numberOfFoundFields = 0;
+
+		try {
+			for (int i = 0; i < row.lastCellNum; i++) {
+				if (row.getCellType(i) != Cell.CELL_TYPE_BLANK) {
+					String cellValue = formatCell(row, i);
+
+					if (fieldNames.containsKey(cellValue)) {// corresponding field in metadata found
+						fieldNumber[numberOfFoundFields][XLS_NUMBER] = i;
+						fieldNumber[numberOfFoundFields][CLOVER_NUMBER] = fieldNames.get(cellValue);
+						numberOfFoundFields++;
+
+						fieldNames.remove(cellValue);
+					} else {
+						logger.warn("There is no field \"" + cellValue + "\" in output metadata");
+					}
+				}
+			}
+		} finally {
+			row.close();
+		}
+
+		if (numberOfFoundFields < metadata.getNumFields()) {
+			logger.warn("Not all fields found:");
+
+			for (String fieldName : fieldNames.keySet()) {
+				logger.warn(fieldName);
+			}
+		}
+	}
+
+	@Override
+	public String[] getNames() throws ComponentNotReadyException {
+		List<String> names = new ArrayList<String>();
+		SheetReader row = findMetadataRow();
+
+		try {
+			for (int i = 0; i < row.lastCellNum; i++) {
+				if (row.getCellType(i) != Cell.CELL_TYPE_BLANK) {
+					String cellValue = formatCell(row, i);
+					names.add(XLSFormatter.getCellCode(i) + " - " + cellValue.substring(0, Math.min(cellValue.length(), MAX_NAME_LENGTH)));
+				}
+			}
+		} finally {
+			row.close();
+		}
+
+		return names.toArray(new String[names.size()]);
+	}
+
+	@Override
+	public DataRecordMetadata createMetadata() {
+		if (workbookReader == null) {
+			return null;
+		}
+
+		DataRecordMetadata xlsMetadata = new DataRecordMetadata(DataRecordMetadata.EMPTY_NAME, DataRecordMetadata.DELIMITED_RECORD);
+		xlsMetadata.setLabel(sheetNames.get(selectedSheet));
+		xlsMetadata.setFieldDelimiter(DEFAULT_FIELD_DELIMITER);
+		xlsMetadata.setRecordDelimiter(DEFAULT_RECORD_DELIMITER);
+
+		SheetReader namesRow = findRow((metadataRow > -1) ? metadataRow : firstRow, false);
+		SheetReader dataRow = findRow(firstRow, false);
+
+		try {
+			if (dataRow == null) {
+				dataRow = findRow(0, true);
+				if (dataRow != null && dataRow.rowNum >= 100) {
+					dataRow.close();
+					dataRow = null;
+				}
+			}
+			if (namesRow == null || dataRow == null) {
+				return xlsMetadata;
+			}
+
+			int maxNumberOfColumns = Math.max(namesRow.lastCellNum, dataRow.lastCellNum);
+
+			for (int i = 0; i < maxNumberOfColumns; i++) {
+				int nameCellType = namesRow.getCellType(i);
+				int cellType = dataRow.getCellType(i);
+
+				if (namesRow.rowNum != dataRow.rowNum && nameCellType == Cell.CELL_TYPE_BLANK && cellType == Cell.CELL_TYPE_BLANK) {
+					continue;
+				}
+
+				String cellName = (metadataRow > -1 && nameCellType != Cell.CELL_TYPE_BLANK) ?
+						formatCell(namesRow, i) : XLSFormatter.getCellCode(i);
+
+				DataFieldMetadata dataField = null;
+
+				if (cellType == Cell.CELL_TYPE_BOOLEAN) {
+					dataField = new DataFieldMetadata(DataFieldMetadata.EMPTY_NAME, DataFieldMetadata.BOOLEAN_FIELD, null);
+				} else if (cellType == Cell.CELL_TYPE_NUMERIC) {
+					int style = dataRow.styles[i];
+					dataField = new DataFieldMetadata(DataFieldMetadata.EMPTY_NAME, isDateStyle(style)
+							? DataFieldMetadata.DATE_FIELD : DataFieldMetadata.NUMERIC_FIELD, null);
+					String formatString = getFormatString(style);
+
+					if (formatString != null && !formatString.equals(XLSXDataFormatter.GENERAL_FORMAT_STRING)) {
+						dataField.setFormatStr(formatString);
+					}
+				} else {
+					dataField = new DataFieldMetadata(DataFieldMetadata.EMPTY_NAME, DataFieldMetadata.STRING_FIELD, null);
+				}
+
+				dataField.setLabel(cellName);
+				xlsMetadata.addField(dataField);
+			}
+		} finally {
+			if (namesRow != null) {
+				namesRow.close();
+			}
+			if (dataRow != null) {
+				dataRow.close();
+			}
+		}
+
+		xlsMetadata.normalize();
+
+		return xlsMetadata;
+	}
+
+	@Override
+	public String[][] getPreview(int startRow, int length) {
+		if (workbookReader == null) {
+			return null;
+		}
+
+		List<String[]> result = new ArrayList<String[]>();
+		SheetReader reader = findRow(startRow, true);
+
+		if (reader == null) {
+			return new String[0][];
+		}
+
+		try {
+			for (int rowIndex = startRow; rowIndex < startRow + length; rowIndex++) {
+				if (reader.rowNum > rowIndex) {
+					// the row is missing in the sheet
+					result.add(new String[] {"", ""});
+					continue;
+				}
+
+				if (reader.lastCellNum == 0) {
+					result.add(new String[] {"", ""});
+				} else {
+					String[] row = new String[reader.lastCellNum];
+
+					for (int j = 0; j < row.length; j++) {
+						if (reader.getCellType(j) != Cell.CELL_TYPE_BLANK) {
+							String cellValue = formatCell(reader, j);
+
+							if (cellValue.length() > MAX_NAME_LENGTH) {
+								cellValue = cellValue.substring(0, MAX_NAME_LENGTH) + "...";
+							}
+
+							row[j] = cellValue;
+						}
+					}
+
+					result.add(row);
+				}
+
+				if (!reader.nextRow()) {
+					break;
+				}
+			}
+		} catch (Exception exception) {
+			throw new JetelRuntimeException("Error reading sheet " + StringUtils.quote(sheetNames.get(selectedSheet)), exception);
+		} finally {
+			reader.close();
+		}
+
+		return result.toArray(new String[result.size()][]);
+	}
+
+	@Override
+	public String[][] getPreview(int length) {
+		return getPreview(0, length);
+	}
+
+	@Override
+	public String[] getSheets() {
+		if (sheetNames == null) {
+			return null;
+		}
+
+		return sheetNames.toArray(new String[sheetNames.size()]);
+	}
+
+	@Override
+	public String getSheetName(int index) {
+		if (sheetNames == null) {
+			return null;
+		}
+
+		return sheetNames.get(index);
+	}
+
+	@Override
+	public boolean getSheet(int sheetNumber) {
+		if (sheetNumber >= sheetNames.size()) {
+			return false;
+		}
+
+		selectedSheet = sheetNumber;
+
+		return true;
+	}
+
+	@Override
+	public boolean getSheet(String sheetName) {
+		int index = sheetNames.indexOf(sheetName);
+
+		if (index < 0) {
+			return false;
+		}
+
+		selectedSheet = index;
+
+		return true;
+	}
+
+	/**
+	 * Reads rows of the current sheet until the current row or a following one is available.
+	 *
+	 * @return <code>true</code> if the current row exists, it is either buffered by the sheet reader
+	 * or it is an empty row missing in the sheet
+	 */
+	private boolean hasCurrentRow() throws JetelException {
+		if (currentRow >= lastRow || sheetReader == null) {
+			return false;
+		}
+
+		try {
+			while (sheetReader.rowNum < currentRow) {
+				if (!sheetReader.nextRow()) {
+					return false;
+				}
+			}
+		} catch (XMLStreamException exception) {
+			throw new JetelException("Error reading sheet " + StringUtils.quote(sheetNames.get(sheetCounter)), exception);
+		} catch (SAXException exception) {
+			throw new JetelException("Error reading sheet " + StringUtils.quote(sheetNames.get(sheetCounter)), exception);
+		}
+
+		return true;
+	}
+
+	@Override
+	public int skip(int nRec) {
+		int skipped = 0;
+
+		try {
+			while (skipped < nRec && hasCurrentRow()) {
+				currentRow++;
+				skipped++;
+			}
+		} catch (JetelException exception) {
+			throw new JetelRuntimeException(exception);
+		}
+
+		return skipped;
+	}
+
+	@Override
+	protected DataRecord parseNext(DataRecord record) throws JetelException {
+		if (record == null) {
+			throw new NullPointerException("record");
+		}
+
+		if (!hasCurrentRow()) {
+			return null;
+		}
+
+		if (sheetReader.rowNum == currentRow) {
+			for (short i = 0; i < fieldNumber.length; i++) {
+				int cloverFieldIndex = fieldNumber[i][CLOVER_NUMBER];
+				int xlsFieldIndex = fieldNumber[i][XLS_NUMBER];
+				// skip fields that are internally filled 
+				// skip fields with no metadata attached
+				if (cloverFieldIndex == -1 || isAutoFilling[cloverFieldIndex]) {
+					continue;
+				}
+
+				int cellType = sheetReader.getCellType(xlsFieldIndex);
+
+				if (cellType == Cell.CELL_TYPE_BLANK) {
+					try {
+						record.getField(cloverFieldIndex).setNull(true);
+						continue;
+					} catch (BadDataFormatException e) {
+						handleException(new BadDataFormatException("There is no data cell for field. Moreover, cannot set default value or null", e), record, cloverFieldIndex, null);
+						continue;
+					}
+				}
+
+				String cellValue = sheetReader.values[xlsFieldIndex];
+				char type = metadata.getField(cloverFieldIndex).getType();
+
+				try {
+					switch (type) {
+						case DataFieldMetadata.DATE_FIELD:
+						case DataFieldMetadata.DATETIME_FIELD:
+							checkCellType(cellType, Cell.CELL_TYPE_NUMERIC);
+							record.getField(cloverFieldIndex).setValue(DateUtil.getJavaDate(Double.parseDouble(cellValue), date1904));
+							break;
+						case DataFieldMetadata.BYTE_FIELD:
+						case DataFieldMetadata.STRING_FIELD:
+							record.getField(cloverFieldIndex).fromString(formatCell(sheetReader, xlsFieldIndex));
+							break;
+						case DataFieldMetadata.DECIMAL_FIELD:
+						case DataFieldMetadata.INTEGER_FIELD:
+						case DataFieldMetadata.LONG_FIELD:
+						case DataFieldMetadata.NUMERIC_FIELD:
+							checkCellType(cellType, Cell.CELL_TYPE_NUMERIC);
+							record.getField(cloverFieldIndex).setValue(Double.parseDouble(cellValue));
+							break;
+						case DataFieldMetadata.BOOLEAN_FIELD:
+							checkCellType(cellType, Cell.CELL_TYPE_BOOLEAN);
+							record.getField(cloverFieldIndex).setValue("1".equals(cellValue));
+							break;
+					}
+				} catch (RuntimeException exception) { // exception when trying get date or number from a different cell type
+					try {
+						record.getField(cloverFieldIndex).fromString(formatCell(sheetReader, xlsFieldIndex));
+					} catch (Exception ex) {
+						BadDataFormatException bdfe;
+						if (ex instanceof BadDataFormatException) {
+							bdfe = (BadDataFormatException) ex;
+						} else {
+							bdfe = new BadDataFormatException(ex);
+						}
+						handleException(bdfe, record, cloverFieldIndex, cellValue);
+					}
+				}
+			}
+		} else {
+			for (int i = 0; i < record.getNumFields(); i++) {
+				try {
+					record.getField(i).setNull(true);
+				} catch (BadDataFormatException e) {
+					handleException(new BadDataFormatException("There is no data row for field. Moreover, cannot set default value or null", e), record, i, null);
+				}
+			}
+		}
+
+		currentRow++;
+		recordCounter++;
+
+		return record;
+	}
+
+	private static void checkCellType(int cellType, int expectedCellType) {
+		if (cellType != expectedCellType) {
+			throw new IllegalStateException("Cannot get a value of type " + expectedCellType + " from a cell of type " + cellType);
+		}
+	}
+
+	private void handleException(BadDataFormatException bdfe, DataRecord record, int cloverFieldIndex, String cellValue) {
+		bdfe.setRecordNumber(currentRow + 1);
+		bdfe.setFieldNumber(cloverFieldIndex);
+
+		if (exceptionHandler != null) { // use handler only if configured
+			exceptionHandler.populateHandler(getErrorMessage(currentRow + 1,
+					cloverFieldIndex), record, currentRow + 1, cloverFieldIndex, cellValue, bdfe);
+		} else {
+			throw new RuntimeException(getErrorMessage(currentRow + 1, cloverFieldIndex), bdfe);
+		}
+	}
+
+	/**
+	 * Formats value of the cell like DataFormatter formats cells of the workbook model.
+	 */
+	private String formatCell(SheetReader row, int column) {
+		String value = row.values[column];
+
+		switch (row.types[column]) {
+			case Cell.CELL_TYPE_NUMERIC:
+				int style = row.styles[column];
+				try {
+					return dataFormatter.formatRawCellContents(Double.parseDouble(value), getFormatIndex(style), getFormatString(style), date1904);
+				} catch (NumberFormatException exception) {
+					return value;
+				}
+			case Cell.CELL_TYPE_BOOLEAN:
+				return "1".equals(value) ? "TRUE" : "FALSE";
+			case Cell.CELL_TYPE_ERROR:
+				return value.startsWith(ERROR_PREFIX) ? value.substring(ERROR_PREFIX.length()) : value;
+			default:
+				return value;
+		}
+	}
+
+	private int getFormatIndex(int style) {
+		return loadStyle(style) ? styleFormatIndexes[style] : 0;
+	}
+
+	private String getFormatString(int style) {
+		return loadStyle(style) ? styleFormatStrings[style] : BuiltinFormats.getBuiltinFormat(0);
+	}
+
+	private boolean isDateStyle(int style) {
+		return DateUtil.isADateFormat(getFormatIndex(style), getFormatString(style));
+	}
+
+	/**
+	 * @return <code>true</code> if the style exists and its number format is cached
+	 */
+	private boolean loadStyle(int style) {
+		if (style < 0 || style >= styleFormatStrings.length) {
+			return false;
+		}
+		if (styleFormatStrings[style] == null) {
+			XSSFCellStyle cellStyle = styles.getStyleAt(style);
+			styleFormatIndexes[style] = cellStyle.getDataFormat();
+			styleFormatStrings[style] = cellStyle.getDataFormatString();
+			if (styleFormatStrings[style] == null) {
+				styleFormatStrings[style] = BuiltinFormats.getBuiltinFormat(0);
+			}
+		}
+		return true;
+	}
+
+	private void closeSheet() {
+		if (sheetReader != null) {
+			sheetReader.close();
+			sheetReader = null;
+		}
+	}
+
+	@Override
+	public void reset() throws ComponentNotReadyException {
+		super.reset();
+
+		close();
+	}
+
+	@Override
+	public void close() {
+		closeSheet();
+		selectedSheet = -1;
+		sheetNames = null;
+		styles = null;
+		workbookReader = null;
+
+		try {
+			if (sharedStrings != null) {
+				sharedStrings.close();
+			}
+		} catch (IOException exception) {
+			logger.warn("Failed to release the shared strings of the XLSX workbook", exception);
+		} finally {
+			sharedStrings = null;
+		}
+
+		if (workbookPackage != null) {
+			workbookPackage.revert();
+			workbookPackage = null;
+		}
+
+		if (workbookFile != null) {
+			if (!workbookFile.delete()) {
+				logger.warn("Failed to delete the temporary file " + workbookFile);
+			}
+			workbookFile = null;
+		}
+	}
+
+	@Override
+	public void preExecute() throws ComponentNotReadyException {
+		reset();
+	}
+
+	@Override
+	public void postExecute() throws ComponentNotReadyException {
+	}
+
+	@Override
+	public void free() {
+		close();
+	}
+
+	/**
+	 * Reads a sheet row by row. Events of the StAX reader are passed to {@link XSSFSheetXMLHandler}
+	 * until it reports the end of a row, the cells of the row are buffered by this reader.
+	 */
+	private class SheetReader implements SheetContentsHandler {
+
+		private final InputStream stream;
+		private final XMLStreamReader xmlReader;
+		private final XSSFSheetXMLHandler handler;
+		private final AttributesImpl attributes = new AttributesImpl();
+		private boolean rowEnded;
+
+		/** cells of columns starting from this one are dropped */
+		int columnLimit;
+
+		/** number of the buffered row, -1 before the first row */
+		int rowNum = -1;
+		/** number of columns of the buffered row */
+		int lastCellNum;
+		String[] values = new String[16];
+		int[] types = new int[16];
+		int[] styles = new int[16];
+
+		SheetReader(InputStream stream, int columnLimit) throws XMLStreamException {
+			this.stream = stream;
+			this.columnLimit = columnLimit;
+			this.xmlReader = XML_INPUT_FACTORY.createXMLStreamReader(stream);
+			this.handler = new XSSFSheetXMLHandler(sharedStrings, this);
+			Arrays.fill(types, Cell.CELL_TYPE_BLANK);
+		}
+
+		/**
+		 * Reads the next row of the sheet.
+		 *
+		 * @return <code>false</code> if there is no other row, the last row stays buffered
+		 */
+		boolean nextRow() throws XMLStreamException, SAXException {
+			rowEnded = false;
+			while (xmlReader.hasNext()) {
+				switch (xmlReader.next()) {
+					case XMLStreamConstants.START_ELEMENT:
+						attributes.clear();
+						for (int i = 0; i < xmlReader.getAttributeCount(); i++) {
+							String name = xmlReader.getAttributeLocalName(i);
+							attributes.addAttribute(xmlReader.getAttributeNamespace(i), name, name, "CDATA", xmlReader.getAttributeValue(i));
+						}
+						handler.startElement(xmlReader.getNamespaceURI(), xmlReader.getLocalName(), xmlReader.getLocalName(), attributes);
+						break;
+					case XMLStreamConstants.END_ELEMENT:
+						handler.endElement(xmlReader.getNamespaceURI(), xmlReader.getLocalName(), xmlReader.getLocalName());
+						if (rowEnded) {
+							return true;
+						}
+						break;
+					case XMLStreamConstants.CHARACTERS:
+					case XMLStreamConstants.CDATA:
+					case XMLStreamConstants.SPACE:
+						handler.characters(xmlReader.getTextCharacters(), xmlReader.getTextStart(), xmlReader.getTextLength());
+						break;
+				}
+			}
+			return false;
+		}
+
+		int getCellType(int column) {
+			return (column < lastCellNum) ? types[column] : Cell.CELL_TYPE_BLANK;
+		}
+
+		@Override
+		public void startRow(int rowNum) {
+			Arrays.fill(types, 0, lastCellNum, Cell.CELL_TYPE_BLANK);
+			Arrays.fill(values, 0, lastCellNum, null);
+			this.rowNum = rowNum;
+			lastCellNum = 0;
+		}
+
+		@Override
+		public void endRow() {
+			rowEnded = true;
+		}
+
+		@Override
+		public void cell(String cellReference, int cellType, int formulaType, String value, int styleIndex) {
+			int column = SpreadsheetUtils.getColumnIndex(cellReference);
+			if (column < 0 || column >= columnLimit) {
+				return;
+			}
+			if (column >= values.length) {
+				int capacity = Math.max(column + 1, 2 * values.length);
+				values = Arrays.copyOf(values, capacity);
+				types = Arrays.copyOf(types, capacity);
+				styles = Arrays.copyOf(styles, capacity);
+				Arrays.fill(types, lastCellNum, capacity, Cell.CELL_TYPE_BLANK);
+			}
+			if (cellType == Cell.CELL_TYPE_FORMULA) {
+				// cached result of the formula is used
+				cellType = (formulaType >= 0) ? formulaType : Cell.CELL_TYPE_STRING;
+			}
+			values[column] = value;
+			types[column] = (value != null) ? cellType : Cell.CELL_TYPE_BLANK;
+			styles[column] = styleIndex;
+			lastCellNum = Math.max(lastCellNum, column + 1);
+		}
+
+		@Override
+		public void headerFooter(String text, boolean isHeader, String tagName) {
+		}
+
+		void close() {
+			try {
+				xmlReader.close();
+			} catch (XMLStreamException exception) {
+				// the stream is closed below
+			}
+			try {
+				stream.close();
+			} catch (IOException exception) {
+				logger.warn("Failed to close the sheet stream", exception);
+			}
+		}
+	}
+
+}
@@ -32,6 +32,7 @@ import org.jetel.data.IntegerDataField;
 import org.jetel.data.LongDataField;
 import org.jetel.data.NumericDataField;
 import org.jetel.exception.BadDataFormatException;
+import org.jetel.util.bytes.ByteFormatUtils;
 import org.jetel.util.bytes.CloverBuffer;
 import org.jetel.util.formatter.NumericFormatter;
 import org.jetel.util.formatter.NumericFormatterFactory;
@@ -481,6 +482,19 @@ public final class IntegerDecimal implements Decimal {
     	}
     }
 
+    /**
+     * Writes the same text as {@link #toString()} directly into the buffer as ASCII bytes.
+     * The buffer needs at least {@link ByteFormatUtils#MAX_DECIMAL_LENGTH} remaining bytes.
+     *
+     * @return <code>false</code> if nothing has been written and {@link #toString()} has to be used instead
+     */
+    public boolean toAsciiBytes(CloverBuffer dataBuffer) {
+        if (isNaN() || !satisfyPrecision()) {
+            return false;
+        }
+        return ByteFormatUtils.putDecimal(dataBuffer, value, scale);
+    }
+
     @Override
     public void toByteBuffer(CloverBuffer dataBuffer) {
         if(!isNaN()) {
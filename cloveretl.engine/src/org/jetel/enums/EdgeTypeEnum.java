@@ -22,6 +22,7 @@ import org.jetel.graph.BufferedEdge;
 import org.jetel.graph.BufferedFastPropagateEdge;
 import org.jetel.graph.DirectEdge;
 import org.jetel.graph.DirectEdgeFastPropagate;
+import org.jetel.graph.DirectRingEdge;
 import org.jetel.graph.Edge;
 import org.jetel.graph.EdgeBase;
 import org.jetel.graph.LRemoteEdge;
@@ -39,6 +40,8 @@ public enum EdgeTypeEnum {
 	BUFFERED_FAST_PROPAGATE("bufferedFastPropagate", BufferedFastPropagateEdge.class, true, true),
 	/** Proxy represents Edge connecting two different phases */
 	PHASE_CONNECTION("phaseConnection", PhaseConnectionEdge.class, true, false),
+	/**  Proxy represents lock-free Direct Edge based on ring buffer */
+	DIRECT_RING("directRing", DirectRingEdge.class, false, true),
 
 	/** This edge type is used by server for remote edges in clustered graphs. */
 	L_REMOTE("lRemote", LRemoteEdge.class, false, false);
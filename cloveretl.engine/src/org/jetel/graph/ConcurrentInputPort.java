@@ -22,6 +22,8 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 
 import org.jetel.data.DataRecord;
+import org.jetel.data.Defaults;
+import org.jetel.data.RecordBatch;
 import org.jetel.exception.ComponentNotReadyException;
 import org.jetel.metadata.DataRecordMetadata;
 import org.jetel.util.bytes.CloverBuffer;
@@ -36,6 +38,14 @@ public class ConcurrentInputPort implements InputPortDirect {
 
 	private InputPortDirect inputPort;
 	
+	/** Record views cannot be shared by concurrent readers, so each reading thread gets own copy of the record. */
+	private final ThreadLocal<CloverBuffer> recordViews = new ThreadLocal<CloverBuffer>() {
+		@Override
+		protected CloverBuffer initialValue() {
+			return CloverBuffer.allocateDirect(Defaults.Record.RECORD_INITIAL_SIZE, Defaults.Record.RECORD_LIMIT_SIZE);
+		}
+	};
+	
 	public ConcurrentInputPort(InputPortDirect inputPort) {
 		this.inputPort = inputPort;
 	}
@@ -129,6 +139,17 @@ public class ConcurrentInputPort implements InputPortDirect {
 		return inputPort.readRecordDirect(record);
 	}
 
+	@Override
+	public CloverBuffer readRecordView() throws IOException, InterruptedException {
+		CloverBuffer recordView = recordViews.get();
+		return readRecordDirect(recordView) ? recordView : null;
+	}
+
+	@Override
+	public synchronized int readRecordBatch(RecordBatch batch) throws IOException, InterruptedException {
+		return inputPort.readRecordBatch(batch);
+	}
+
 	@Override
 	public long getReaderWaitingTime() {
 		return inputPort.getReaderWaitingTime();
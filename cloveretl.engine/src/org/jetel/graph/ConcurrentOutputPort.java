@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 
 import org.jetel.data.DataRecord;
+import org.jetel.data.RecordBatch;
 import org.jetel.exception.ComponentNotReadyException;
 import org.jetel.metadata.DataRecordMetadata;
 import org.jetel.util.bytes.CloverBuffer;
@@ -114,6 +115,11 @@ public class ConcurrentOutputPort implements OutputPortDirect {
 	public synchronized void writeRecordDirect(CloverBuffer record) throws IOException, InterruptedException {
 		outputPort.writeRecordDirect(record);
 	}
+
+	@Override
+	public synchronized void writeRecordBatch(RecordBatch batch) throws IOException, InterruptedException {
+		outputPort.writeRecordBatch(batch);
+	}
 
 	@Override
 	@Deprecated
@@ -24,6 +24,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jetel.data.DataRecord;
 import org.jetel.data.Defaults;
+import org.jetel.data.RecordBatch;
 import org.jetel.util.bytes.ByteBufferUtils;
 import org.jetel.util.bytes.CloverBuffer;
 
@@ -229,6 +230,70 @@ public class DirectEdge extends EdgeBase {
 	    return true;
 	}
 
+	/**
+	 * Returns read-only slice of the reading buffer, which is not reused until the next read operation.
+	 */
+	@Override
+	public CloverBuffer readRecordView() throws IOException, InterruptedException {
+	    if (!readBuffer.hasRemaining()){
+	        if (!fillReadBuffer()){
+	            return null;
+	        }
+	    }
+	    CloverBuffer recordView;
+	    try{
+	        int length = ByteBufferUtils.decodeLength(readBuffer);
+	        if (length == EOF) {
+	        	close();
+	            return null;
+	        }
+	        readBuffer.limit(readBuffer.position()+length);
+	        recordView = CloverBuffer.wrap(readBuffer.buf().slice().asReadOnlyBuffer());
+	        readBuffer.position(readBuffer.limit());
+	        readBuffer.limit(readBufferLimit);
+	    }catch(BufferUnderflowException ex){
+            throw new IOException("BufferUnderflow when reading/deserializing record. It can be caused by different metadata.");
+	    }
+        bufferedRecords.decrementAndGet();
+	    inputRecordCounter++;
+	    
+	    return recordView;
+	}
+
+	/**
+	 * Copies records from the reading buffer to the batch. Counters are updated once per batch.
+	 */
+	@Override
+	public int readRecordBatch(RecordBatch batch) throws IOException, InterruptedException {
+		batch.clear();
+		int count = 0;
+		try {
+			while (!batch.isFull()) {
+				if (!readBuffer.hasRemaining()) {
+					//wait for the writer only if no record has been read yet
+					if (count > 0 || !fillReadBuffer()) {
+						break;
+					}
+				}
+				int length = ByteBufferUtils.decodeLength(readBuffer);
+				if (length == EOF) {
+					close();
+					break;
+				}
+				readBuffer.limit(readBuffer.position() + length);
+				batch.add(readBuffer);
+				readBuffer.limit(readBufferLimit);
+				count++;
+			}
+		} catch (BufferUnderflowException ex) {
+			throw new IOException("BufferUnderflow when reading/deserializing record. It can be caused by different metadata.");
+		}
+		bufferedRecords.addAndGet(-count);
+		inputRecordCounter += count;
+
+		return count;
+	}
+
 	@SuppressFBWarnings("WA_NOT_IN_LOOP")
 	private synchronized boolean fillReadBuffer() throws InterruptedException{
 	    if(isClosed) return false;
@@ -340,6 +405,49 @@ public class DirectEdge extends EdgeBase {
         }
     }
 
+	/**
+	 * Writes selected records of the batch to the writing buffer. The number of buffered records
+	 * is updated once per batch or before the writing buffer is flushed.
+	 */
+	@Override
+	public void writeRecordBatch(RecordBatch batch) throws IOException, InterruptedException {
+		CloverBuffer data = batch.getData();
+		int count = batch.getSelectedCount();
+		int pendingRecords = 0;
+		for (int i = 0; i < count; i++) {
+			int index = batch.getSelectedIndex(i);
+			int start = batch.getStart(index);
+			int end = batch.getEnd(index);
+			int dataLength = end - start;
+
+			if ((dataLength + ByteBufferUtils.SIZEOF_INT) > writeBuffer.remaining() && writeBuffer.position() > 0) {
+				//the reader must not see records which are not counted yet
+				bufferedRecords.addAndGet(pendingRecords);
+				pendingRecords = 0;
+				flushWriteBuffer();
+			}
+
+			data.limit(end).position(start);
+			try {
+				ByteBufferUtils.encodeLength(writeBuffer, dataLength);
+				writeBuffer.put(data);
+			} catch (BufferOverflowException ex) {
+				throw new IOException(
+						"WriteBuffer is not big enough to accomodate data record ! (See RECORD_LIMIT_SIZE parameter)"+
+						"\n [actual record size: "+dataLength+" bytes]");
+			}
+			byteCounter += dataLength;
+			outputRecordCounter++;
+			pendingRecords++;
+		}
+		bufferedRecords.addAndGet(pendingRecords);
+
+		if (forceBuffersSwitch && writeBuffer.position() > 0) {
+			//reading thread forces the buffers switch
+			flushWriteBuffer();
+		}
+	}
+
 	private synchronized void flushWriteBuffer() throws InterruptedException{
 	    if(readerWait) {
 	        switchBuffers();
@@ -0,0 +1,529 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.graph;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jetel.data.DataRecord;
+import org.jetel.data.Defaults;
+import org.jetel.util.bytes.CloverBuffer;
+
+/**
+ * A class that represents DirectRingEdge - data connection between two NODEs.<br>
+ * Alternative implementation of direct edge, which passes serialized records through
+ * a single-producer/single-consumer ring buffer. Writer and reader threads are synchronized
+ * only by two volatile sequence counters, no monitor is used. Waiting thread spins for a while,
+ * then yields and finally parks until the opposite thread publishes a record or releases some space.
+ * Each record is published immediately after it is written, so the edge provides fast propagation
+ * of records to reader component.<br>
+ * Initial size of the ring is determined by Defaults.Graph.DIRECT_RING_EDGE_BUFFER_SIZE constant,
+ * the ring is enlarged (when empty) if a record bigger than half of the ring is written.
+ *
+ * @see        org.jetel.graph.DirectEdge
+ * @see        org.jetel.graph.InputPort
+ * @see        org.jetel.graph.OutputPort
+ */
+public class DirectRingEdge extends EdgeBase {
+
+	/** Size of entry header - length of the serialized record. */
+	private static final int HEADER_SIZE = 4;
+
+	/** Entry header which indicates the rest of the ring (up to its end) should be skipped. */
+	private static final int PADDING = -1;
+
+	/** Entry header which indicates end of data flow. */
+	private static final int EOF = -2;
+
+	/** Number of busy-wait iterations before waiting thread starts yielding. */
+	private static final int SPIN_COUNT = 1000;
+
+	/** Number of yield iterations before waiting thread is parked. */
+	private static final int YIELD_COUNT = 100;
+
+	/** The ring buffer; replaced by writer thread only if the ring is empty. */
+	private volatile CloverBuffer ring;
+
+	/** Position of the writer in the ring - number of bytes published so far. */
+	private final AtomicLong writeSequence = new AtomicLong();
+
+	/** Position of the reader in the ring - number of bytes released so far. */
+	private final AtomicLong readSequence = new AtomicLong();
+
+	/** Thread of parked writer, null if the writer is not parked. */
+	private volatile Thread parkedWriter;
+
+	/** Thread of parked reader, null if the reader is not parked. */
+	private volatile Thread parkedReader;
+
+	// attributes owned by writer thread
+	private CloverBuffer writeView;
+	private long writeMask;
+	private long writerPosition;
+	private long cachedReadSequence;
+	private CloverBuffer tmpDataRecord;
+	private long outputRecordCounter;
+    private long byteCounter;
+
+	// attributes owned by reader thread
+	private CloverBuffer readRing;
+	private CloverBuffer readView;
+	private long readMask;
+	private long readerPosition;
+	private long cachedWriteSequence;
+	private long inputRecordCounter;
+	/** Length of the entry provided by {@link #readRecordView()}, which is released by next read operation; -1 if none. */
+	private int pendingViewLength;
+
+	private volatile boolean isClosed;
+
+	/** How long has been reader blocked on the edge (in nanoseconds). */
+	private long readerWaitingTime;
+	/** How long has been writer blocked on the edge (in nanoseconds). */
+	private long writerWaitingTime;
+
+    /**
+     * Monitor for {@link #waitForEOF()}
+     */
+	private final Object eofMonitor = new Object();
+
+	public DirectRingEdge(Edge proxy) {
+		super(proxy);
+	}
+
+	@Override
+	public long getOutputRecordCounter() {
+		return outputRecordCounter;
+	}
+
+    @Override
+	public long getInputRecordCounter() {
+        return inputRecordCounter;
+    }
+
+    @Override
+	public long getOutputByteCounter(){
+        return byteCounter;
+    }
+
+    @Override
+	public long getInputByteCounter(){
+        return byteCounter;
+    }
+
+    /**
+     * Number of buffered records is derived from record counters
+     * to avoid an atomic operation for each transmitted record.
+     */
+    @Override
+	public int getBufferedRecords(){
+        return (int) Math.max(0, outputRecordCounter - inputRecordCounter);
+    }
+
+    @Override
+    public int getUsedMemory() {
+    	return ring.capacity() + tmpDataRecord.capacity();
+    }
+
+    @Override
+    public long getReaderWaitingTime() {
+    	return readerWaitingTime / 1000000;
+    }
+
+    @Override
+    public long getWriterWaitingTime() {
+    	return writerWaitingTime / 1000000;
+    }
+
+	@Override
+	public void init() throws IOException {
+		setRing(CloverBuffer.allocateDirect(ringCapacity(Defaults.Graph.DIRECT_RING_EDGE_BUFFER_SIZE)));
+		tmpDataRecord = CloverBuffer.allocateDirect(Defaults.Record.RECORD_INITIAL_SIZE, Defaults.Record.RECORD_LIMIT_SIZE);
+		reset(true);
+	}
+
+	@Override
+	public void preExecute() {
+		super.preExecute();
+
+		reset(false);
+	}
+
+	private void reset(boolean initialization) {
+		writeSequence.set(0);
+		readSequence.set(0);
+		writerPosition = 0;
+		readerPosition = 0;
+		cachedReadSequence = 0;
+		cachedWriteSequence = 0;
+		inputRecordCounter = 0;
+		outputRecordCounter = 0;
+        byteCounter = 0;
+        readerWaitingTime = 0;
+        writerWaitingTime = 0;
+        parkedReader = null;
+        parkedWriter = null;
+        pendingViewLength = -1;
+		if (!initialization) {
+			tmpDataRecord.clear();
+		}
+		isClosed = false;
+	}
+
+	/**
+	 * @return the smallest power of two which is not less than the given size
+	 */
+	private static int ringCapacity(int size) {
+		int capacity = Integer.highestOneBit(Math.max(size, 2 * HEADER_SIZE));
+		return capacity < size ? capacity << 1 : capacity;
+	}
+
+	/**
+	 * Replaces the ring buffer. Can be invoked only by writer thread on empty ring
+	 * or before the edge is used.
+	 */
+	private void setRing(CloverBuffer newRing) {
+		writeView = newRing.duplicate();
+		writeMask = newRing.capacity() - 1;
+		if (ring == null) {
+			readRing = newRing;
+			readView = newRing.duplicate();
+			readMask = writeMask;
+		}
+		ring = newRing; //published to reader thread together with next write sequence
+	}
+
+	@Override
+	public DataRecord readRecord(DataRecord record) throws IOException, InterruptedException {
+		if (isClosed) {
+			return null;
+		}
+		releasePendingView();
+		int length = readHeader();
+		if (length == EOF) {
+			releaseEntry(0);
+			close();
+			return null;
+		}
+		try {
+			record.deserialize(entryView(length));
+		} catch (BufferUnderflowException ex) {
+			throw new IOException("BufferUnderflow when reading/deserializing record. It can be caused by different metadata.");
+		}
+		releaseEntry(length);
+		inputRecordCounter++;
+
+		return record;
+	}
+
+	@Override
+	public boolean readRecordDirect(CloverBuffer record) throws IOException, InterruptedException {
+		if (isClosed) {
+			return false;
+		}
+		releasePendingView();
+		int length = readHeader();
+		if (length == EOF) {
+			releaseEntry(0);
+			close();
+			return false;
+		}
+		record.clear();
+		record.put(entryView(length));
+		record.flip();
+		releaseEntry(length);
+		inputRecordCounter++;
+
+		return true;
+	}
+
+	/**
+	 * Returns read-only slice of the ring with the record. The ring space is released
+	 * by the next read operation.
+	 */
+	@Override
+	public CloverBuffer readRecordView() throws IOException, InterruptedException {
+		if (isClosed) {
+			return null;
+		}
+		releasePendingView();
+		int length = readHeader();
+		if (length == EOF) {
+			releaseEntry(0);
+			close();
+			return null;
+		}
+		CloverBuffer recordView = CloverBuffer.wrap(entryView(length).buf().slice().asReadOnlyBuffer());
+		pendingViewLength = length;
+		inputRecordCounter++;
+
+		return recordView;
+	}
+
+	private void releasePendingView() {
+		if (pendingViewLength >= 0) {
+			releaseEntry(pendingViewLength);
+			pendingViewLength = -1;
+		}
+	}
+
+	/**
+	 * Waits for next entry in the ring, skips paddings and returns header of the entry.
+	 * @return length of the next record or {@link #EOF}
+	 */
+	private int readHeader() throws InterruptedException {
+		while (true) {
+			if (readerPosition >= cachedWriteSequence) {
+				awaitWriteSequence(readerPosition + 1);
+			}
+			int offset = (int) (readerPosition & readMask);
+			int rest = readView.capacity() - offset;
+			if (rest < HEADER_SIZE) {
+				//implicit padding - header does not fit to the end of ring
+				readerPosition += rest;
+				continue;
+			}
+			readView.clear();
+			int header = readView.getInt(offset);
+			if (header == PADDING) {
+				readerPosition += rest;
+				continue;
+			}
+			return header;
+		}
+	}
+
+	/**
+	 * @return view of the ring with content of the current entry
+	 */
+	private CloverBuffer entryView(int length) {
+		int offset = (int) (readerPosition & readMask) + HEADER_SIZE;
+		readView.clear();
+		readView.position(offset);
+		readView.limit(offset + length);
+		return readView;
+	}
+
+	/**
+	 * Releases space of the current entry for the writer.
+	 */
+	private void releaseEntry(int length) {
+		readerPosition += HEADER_SIZE + length;
+		readSequence.set(readerPosition);
+		Thread writer = parkedWriter;
+		if (writer != null) {
+			LockSupport.unpark(writer);
+		}
+	}
+
+	/**
+	 * Waits until the writer publishes the given position.
+	 */
+	private void awaitWriteSequence(long minimum) throws InterruptedException {
+		int iteration = 0;
+		long startTime = verbose ? System.nanoTime() : 0;
+		while ((cachedWriteSequence = writeSequence.get()) < minimum) {
+			if (iteration < SPIN_COUNT) {
+				iteration++;
+			} else if (iteration < SPIN_COUNT + YIELD_COUNT) {
+				iteration++;
+				Thread.yield();
+			} else {
+				parkedReader = Thread.currentThread();
+				if (writeSequence.get() < minimum) { //the writer has to see parked reader or we see new data
+					LockSupport.park(this);
+				}
+				parkedReader = null;
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+			}
+		}
+		if (verbose) {
+			readerWaitingTime += System.nanoTime() - startTime;
+		}
+		//the ring could be replaced by writer, which is possible only if the ring was empty
+		CloverBuffer currentRing = ring;
+		if (currentRing != readRing) {
+			readRing = currentRing;
+			readView = currentRing.duplicate();
+			readMask = currentRing.capacity() - 1;
+		}
+	}
+
+	@Override
+	public void writeRecord(DataRecord record) throws IOException, InterruptedException {
+        tmpDataRecord.clear();
+        try {
+            record.serialize(tmpDataRecord);
+        } catch (BufferOverflowException ex) {
+            throw new IOException(
+                    "Internal buffer is not big enough to accomodate data record ! (See RECORD_LIMIT_SIZE parameter)"+
+                    "\n [actual record size: "+record.getSizeSerialized()+" bytes]");
+        }
+        tmpDataRecord.flip();
+
+        writeEntry(tmpDataRecord);
+	}
+
+	@Override
+	public void writeRecordDirect(CloverBuffer record) throws IOException, InterruptedException {
+		writeEntry(record);
+	}
+
+	private void writeEntry(CloverBuffer data) throws InterruptedException {
+		int length = data.remaining();
+		int offset = claimEntry(length);
+		writeView.putInt(offset, length);
+		writeView.position(offset + HEADER_SIZE);
+		writeView.limit(offset + HEADER_SIZE + length);
+		writeView.put(data);
+
+		byteCounter += length;
+		outputRecordCounter++;
+
+		publishEntry(length);
+	}
+
+	/**
+	 * Reserves space for an entry of the given length in the ring.
+	 * Padding is inserted if the entry does not fit to the end of ring.
+	 * @return offset of the reserved entry in the ring
+	 */
+	private int claimEntry(int length) throws InterruptedException {
+		int entrySize = HEADER_SIZE + length;
+		if (entrySize > writeView.capacity() / 2) {
+			enlargeRing(entrySize);
+		}
+		writeView.clear();
+		int offset = (int) (writerPosition & writeMask);
+		int rest = writeView.capacity() - offset;
+		int padding = (rest < entrySize) ? rest : 0;
+
+		long wrapPoint = writerPosition + padding + entrySize - writeView.capacity();
+		if (cachedReadSequence < wrapPoint) {
+			awaitReadSequence(wrapPoint);
+		}
+
+		if (padding > 0) {
+			if (padding >= HEADER_SIZE) {
+				writeView.putInt(offset, PADDING);
+			}
+			writerPosition += padding;
+			offset = 0;
+		}
+		return offset;
+	}
+
+	/**
+	 * Publishes the entry reserved by last {@link #claimEntry(int)} invocation to the reader.
+	 */
+	private void publishEntry(int length) {
+		writerPosition += HEADER_SIZE + length;
+		writeSequence.set(writerPosition);
+		Thread reader = parkedReader;
+		if (reader != null) {
+			LockSupport.unpark(reader);
+		}
+	}
+
+	/**
+	 * Waits until the reader releases the given position.
+	 */
+	private void awaitReadSequence(long minimum) throws InterruptedException {
+		int iteration = 0;
+		long startTime = verbose ? System.nanoTime() : 0;
+		while ((cachedReadSequence = readSequence.get()) < minimum) {
+			if (iteration < SPIN_COUNT) {
+				iteration++;
+			} else if (iteration < SPIN_COUNT + YIELD_COUNT) {
+				iteration++;
+				Thread.yield();
+			} else {
+				parkedWriter = Thread.currentThread();
+				if (readSequence.get() < minimum) { //the reader has to see parked writer or we see released space
+					LockSupport.park(this);
+				}
+				parkedWriter = null;
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+			}
+		}
+		if (verbose) {
+			writerWaitingTime += System.nanoTime() - startTime;
+		}
+	}
+
+	/**
+	 * Waits until the ring is empty and replaces it by bigger one,
+	 * which is able to accommodate an entry of the given size.
+	 */
+	private void enlargeRing(int entrySize) throws InterruptedException {
+		awaitReadSequence(writerPosition);
+		setRing(CloverBuffer.allocateDirect(ringCapacity(2 * entrySize)));
+	}
+
+	@Override
+	public void eof() throws InterruptedException {
+		int offset = claimEntry(0);
+		writeView.putInt(offset, EOF);
+        eofSent = true;
+		publishEntry(0);
+	}
+
+    @Override
+    public void free() {
+        //do nothing
+    }
+
+	@Override
+	public boolean hasData() {
+		if (isClosed) {
+			return false;
+		}
+		long position = (pendingViewLength >= 0) ? readerPosition + HEADER_SIZE + pendingViewLength : readerPosition;
+		return position < cachedWriteSequence || position < writeSequence.get();
+	}
+
+    @Override
+    public boolean isEOF() {
+        return isClosed;
+    }
+
+    private void close() {
+    	synchronized (eofMonitor) {
+    		isClosed = true;
+    		eofMonitor.notifyAll();
+    	}
+    }
+
+    @Override
+    public void waitForEOF() throws InterruptedException {
+    	synchronized (eofMonitor) {
+    		while (!isClosed) {
+    			eofMonitor.wait();
+    		}
+    	}
+    }
+
+}
@@ -25,6 +25,7 @@ import org.apache.commons.logging.LogFactory;
 import org.jetel.component.RemoteEdgeComponent;
 import org.jetel.data.DataRecord;
 import org.jetel.data.Defaults;
+import org.jetel.data.RecordBatch;
 import org.jetel.enums.EdgeDebugMode;
 import org.jetel.enums.EdgeTypeEnum;
 import org.jetel.exception.ComponentNotReadyException;
@@ -561,6 +562,16 @@ public class Edge extends GraphElement implements InputPort, OutputPort, InputPo
 		return getEdgeBaseChecked().readRecordDirect(record);
 	}
 
+	@Override
+	public CloverBuffer readRecordView() throws IOException, InterruptedException {
+		return getEdgeBaseChecked().readRecordView();
+	}
+
+	@Override
+	public int readRecordBatch(RecordBatch batch) throws IOException, InterruptedException {
+		return getEdgeBaseChecked().readRecordBatch(batch);
+	}
+
 	/**
 	 * @deprecated use {@link #readRecordDirect(CloverBuffer)}
 	 */
@@ -609,6 +620,18 @@ public class Edge extends GraphElement implements InputPort, OutputPort, InputPo
         getEdgeBaseChecked().writeRecordDirect(record);
 	}
 
+	@Override
+	public void writeRecordBatch(RecordBatch batch) throws IOException, InterruptedException {
+		if (edgeDebugWriter != null) {
+			// records are passed to the debug writer one by one
+			for (int i = 0; i < batch.getSelectedCount(); i++) {
+				writeRecordDirect(batch.getRecord(batch.getSelectedIndex(i)).slice());
+			}
+		} else {
+			getEdgeBaseChecked().writeRecordBatch(batch);
+		}
+	}
+
 	/**
 	 * @deprecated use {@link #writeRecordDirect(CloverBuffer)}
 	 */
@@ -20,6 +20,8 @@ package org.jetel.graph;
 import java.io.IOException;
 
 import org.jetel.data.DataRecord;
+import org.jetel.data.Defaults;
+import org.jetel.data.RecordBatch;
 import org.jetel.util.bytes.CloverBuffer;
 
 /**
@@ -44,6 +46,11 @@ public abstract class EdgeBase {
 	 */
 	protected volatile boolean eofSent;
 
+	/**
+	 * Buffer for default implementation of {@link #readRecordView()}, lazy initialized.
+	 */
+	private CloverBuffer recordView;
+
 	/**
 	 *  Constructor for the Edge object
 	 *
@@ -179,6 +186,38 @@ public abstract class EdgeBase {
 	 */
 	public abstract boolean readRecordDirect(CloverBuffer record) throws IOException, InterruptedException;
 
+	/**
+	 * Reads one record in serialized form without copying it, if the edge implementation allows it.
+	 * Returned buffer is a read-only view to internal buffer of this edge, position is 0 and limit
+	 * points to the end of the record. The view is valid only until next read operation on this edge.
+	 * Default implementation copies the record into a private buffer.
+	 * 
+	 * @return view to the serialized record or null if no more data are available
+	 * @see InputPortDirect#readRecordView()
+	 */
+	public CloverBuffer readRecordView() throws IOException, InterruptedException {
+		if (recordView == null) {
+			recordView = CloverBuffer.allocateDirect(Defaults.Record.RECORD_INITIAL_SIZE, Defaults.Record.RECORD_LIMIT_SIZE);
+		}
+		return readRecordDirect(recordView) ? recordView : null;
+	}
+
+	/**
+	 * Reads records available in this edge into the batch. Waits only for the first record.
+	 * Default implementation reads the records one by one by {@link #readRecordView()}.
+	 * 
+	 * @return number of read records, 0 if no more data are available
+	 * @see InputPortDirect#readRecordBatch(RecordBatch)
+	 */
+	public int readRecordBatch(RecordBatch batch) throws IOException, InterruptedException {
+		batch.clear();
+		CloverBuffer record;
+		while (!batch.isFull() && (batch.isEmpty() || hasData()) && (record = readRecordView()) != null) {
+			batch.add(record);
+		}
+		return batch.size();
+	}
+
 
 	/**
 	 *  An operation that does send one DataRecord through the Edge/PIPE
@@ -201,6 +240,19 @@ public abstract class EdgeBase {
 	 */
 	public abstract void writeRecordDirect(CloverBuffer record) throws IOException, InterruptedException;
 
+	/**
+	 * Writes selected records of the batch.
+	 * Default implementation writes the records one by one by {@link #writeRecordDirect(CloverBuffer)}.
+	 * 
+	 * @see OutputPortDirect#writeRecordBatch(RecordBatch)
+	 */
+	public void writeRecordBatch(RecordBatch batch) throws IOException, InterruptedException {
+		for (int i = 0; i < batch.getSelectedCount(); i++) {
+			// slice - the record has to start at position 0
+			writeRecordDirect(batch.getRecord(batch.getSelectedIndex(i)).slice());
+		}
+	}
+
     public abstract void eof() throws IOException, InterruptedException;
     
     public abstract boolean isEOF();
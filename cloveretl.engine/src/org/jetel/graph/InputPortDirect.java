@@ -20,6 +20,7 @@ package org.jetel.graph;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
+import org.jetel.data.RecordBatch;
 import org.jetel.util.CloverPublicAPI;
 import org.jetel.util.bytes.CloverBuffer;
 
@@ -49,6 +50,33 @@ public interface InputPortDirect extends InputPort {
 	 */
 	public boolean readRecordDirect(CloverBuffer record) throws IOException, InterruptedException;
 
+	/**
+	 * An operation that reads one record from this port - in its serialized (binary form) - without copying
+	 * the record if possible.<br>
+	 * Returned CloverBuffer is a read-only view to internal buffer of the port, position() is 0 and limit()
+	 * points to the end of the record. The view is valid only until next read operation on this port,
+	 * so the record has to be written to all output ports or otherwise processed before next record is read.
+	 * Content of the view must not be modified.
+	 *
+	 * @return                           view to the serialized record or null when no more data available
+	 * @exception  IOException           If reading failed during method call
+	 * @exception  InterruptedException  If thread waiting to be notified was interrupted
+	 */
+	public CloverBuffer readRecordView() throws IOException, InterruptedException;
+
+	/**
+	 * An operation that reads several records from this port - in their serialized (binary form) - in a single call.<br>
+	 * The passed-in batch is cleared first. The operation blocks only until the first record is available,
+	 * then it reads records which are already available in the port until the batch is full.
+	 * Per-record overhead of the port (counters, synchronization) is paid once per batch.
+	 *
+	 * @param  batch                     batch into which records should be stored
+	 * @return                           number of read records, 0 when no more data available
+	 * @exception  IOException           If reading failed during method call
+	 * @exception  InterruptedException  If thread waiting to be notified was interrupted
+	 */
+	public int readRecordBatch(RecordBatch batch) throws IOException, InterruptedException;
+
 	// Operations
 	/**
 	 * An operation that reads one record from this port - in its serialized (binary form).<br>
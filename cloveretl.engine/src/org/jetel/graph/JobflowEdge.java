@@ -22,6 +22,7 @@ import java.io.IOException;
 
 import org.jetel.data.DataRecord;
 import org.jetel.data.DataRecordFactory;
+import org.jetel.data.RecordBatch;
 import org.jetel.data.Token;
 import org.jetel.enums.EdgeDebugMode;
 import org.jetel.enums.EdgeTypeEnum;
@@ -122,6 +123,43 @@ public class JobflowEdge extends Edge {
 		return result;
 	}
 	
+	@Override
+	public CloverBuffer readRecordView() throws IOException, InterruptedException {
+		getReader().setResultCode(Result.WAITING, Result.RUNNING);
+		CloverBuffer result = super.readRecordView();
+		getReader().setResultCode(Result.RUNNING, Result.WAITING);
+		
+		if (result != null) {
+			lastReadToken.deserialize(result);
+			result.rewind();
+			getReader().getTokenTracker().readToken(getInputPortNumber(), lastReadToken);
+		} else {
+			getReader().getTokenTracker().eofInputPort(getInputPortNumber());
+		}
+
+		return result;
+	}
+	
+	/**
+	 * Tokens are tracked one by one, so the batch contains at most one token.
+	 */
+	@Override
+	public int readRecordBatch(RecordBatch batch) throws IOException, InterruptedException {
+		batch.clear();
+		CloverBuffer result = readRecordView();
+		if (result != null) {
+			batch.add(result);
+		}
+		return batch.size();
+	}
+	
+	@Override
+	public void writeRecordBatch(RecordBatch batch) throws IOException, InterruptedException {
+		for (int i = 0; i < batch.getSelectedCount(); i++) {
+			writeRecordDirect(batch.getRecord(batch.getSelectedIndex(i)).slice());
+		}
+	}
+	
 	@Override
 	public void eof() throws InterruptedException, IOException {
 		super.eof();
@@ -20,6 +20,7 @@ package org.jetel.graph;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
+import org.jetel.data.RecordBatch;
 import org.jetel.util.CloverPublicAPI;
 import org.jetel.util.bytes.CloverBuffer;
 
@@ -48,6 +49,17 @@ public interface OutputPortDirect extends OutputPort {
 	 */
 	public void writeRecordDirect(CloverBuffer record) throws IOException, InterruptedException;
 
+	/**
+	 * An operation that passes/writes several records through this port in a single call.<br>
+	 * Only the selected records of the batch are written, see {@link RecordBatch#select(int[], int)}.
+	 * The batch is not modified and can be written to other ports as well.
+	 *
+	 * @param  batch                     batch containing the records to be written/sent
+	 * @exception  IOException           If writing failed during method call
+	 * @exception  InterruptedException  If thread waiting to be notified was interrupted
+	 */
+	public void writeRecordBatch(RecordBatch batch) throws IOException, InterruptedException;
+
 	/**
 	 * An operation that passes/writes one record through this port.<br>
      * The passed-in object (ByteBuffer) must be ready to be read - i.e.
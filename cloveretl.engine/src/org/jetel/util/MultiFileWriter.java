@@ -105,6 +105,7 @@ public class MultiFileWriter {
 	private Dictionary dictionary;
 	private int compressLevel = -1;
 	private boolean mkDir;
+	private boolean asyncWrite;
 	private boolean outputClosed;
 	
 	private boolean reset;
@@ -254,6 +255,7 @@ public class MultiFileWriter {
 		targetFile.setOutputPort(outputPort);
 		targetFile.setDictionary(dictionary);
 		targetFile.setMkDir(mkDir);
+		targetFile.setAsyncWrite(asyncWrite);
 		return targetFile;
     }
     
@@ -277,6 +279,7 @@ public class MultiFileWriter {
 		targetFile.setOutputPort(outputPort);
 		targetFile.setDictionary(dictionary);
 		targetFile.setMkDir(mkDir);
+		targetFile.setAsyncWrite(asyncWrite);
 		return targetFile;
     }
 
@@ -888,6 +891,14 @@ public class MultiFileWriter {
 		this.mkDir = mkDir;
 	}
 
+	/**
+	 * Output files are written by a dedicated I/O thread per target, so formatting of records
+	 * overlaps with writing to a slow storage. See {@link org.jetel.util.stream.AsyncWritableByteChannel}.
+	 */
+	public void setAsyncWrite(boolean asyncWrite) {
+		this.asyncWrite = asyncWrite;
+	}
+
 	public void setStoreRawData(boolean storeRawData) {
 		this.storeRawData = storeRawData; 
 	}
@@ -0,0 +1,751 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jetel.data.DataRecord;
+import org.jetel.data.DataRecordFactory;
+import org.jetel.data.Defaults;
+import org.jetel.data.parser.TextParser;
+import org.jetel.data.parser.TextParserConfiguration;
+import org.jetel.data.parser.TextParserFactory;
+import org.jetel.exception.BadDataFormatException;
+import org.jetel.exception.ComponentNotReadyException;
+import org.jetel.exception.JetelException;
+import org.jetel.exception.ParserExceptionHandlerFactory;
+import org.jetel.exception.PolicyType;
+import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.metadata.DataRecordMetadata;
+
+/**
+ * Reads single large local file of delimited records by several threads.<br>
+ * The file is split into byte ranges, the ranges are adjusted to the record boundaries and each
+ * range (chunk) is parsed by its own parser. Records are returned in the order of the file, or in the order
+ * in which the chunks are parsed if the reader is not ordered.<br>
+ * <br>
+ * Record boundaries are found by a byte scan for the new line character, so only some configurations
+ * are supported - see {@link #checkConfiguration(TextParserConfiguration)}. If strings are quoted, the quote state
+ * is tracked from the beginning of the file (quote starts a field and ends by a single quote character,
+ * doubled quote characters are escaped quotes); unquoted strings allow to find the boundaries without
+ * reading the whole file.<br>
+ * <br>
+ * Skipped records ({@link #setSkipSourceRows(int)}, {@link #setSkip(int)}) are found by the same scan and they are
+ * never parsed. Limits of the records ({@link #setNumRecords(int)}, {@link #setNumSourceRecords(int)})
+ * force the ordered mode.
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ * @see MultiFileReader
+ */
+public class ParallelFileReader {
+
+	private static final Log defaultLogger = LogFactory.getLog(ParallelFileReader.class);
+
+	/** number of chunks per thread, more chunks balance the load of threads better */
+	private static final int CHUNKS_PER_THREAD = 4;
+	/** default minimal size of a chunk in bytes */
+	public static final long DEFAULT_MIN_CHUNK_SIZE = 4L * 1024 * 1024;
+	/** number of records passed from a parsing thread at once */
+	private static final int BATCH_SIZE = 256;
+	/** number of parsed batches waiting for the consumer per chunk */
+	private static final int QUEUE_CAPACITY = 4;
+	private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+	private static final byte NEW_LINE = '\n';
+
+	private Log logger = defaultLogger;
+
+	private final TextParserConfiguration cfg;
+	private final String parserClassName;
+	private final ClassLoader parserClassLoader;
+	private final File file;
+	private final String sourceName;
+
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private boolean ordered = true;
+	private long minChunkSize = DEFAULT_MIN_CHUNK_SIZE;
+	private int skip;
+	private int skipSourceRows;
+	private int numRecords = -1;
+	private int numSourceRecords = -1;
+
+	private AutoFilling autoFilling;
+	private ExecutorService executor;
+	private Chunk[] chunks;
+	private BlockingQueue<Batch> unorderedQueue;
+	private int currentChunk;
+	private int finishedChunks;
+	private Batch currentBatch;
+	private int batchPosition;
+	/** number of the last returned record in the source, including the skipped records */
+	private int recordNumber;
+	private volatile boolean cancelled;
+
+	/**
+	 * @param cfg configuration of the parsers, it is shared by all parsers
+	 * @param parserClassName class of the parsers, <code>null</code> for the fastest available parser
+	 * @param parserClassLoader class loader of the parser class, can be <code>null</code>
+	 * @param file local file to read
+	 * @param sourceName name of the source used by autofilling and in error messages
+	 */
+	public ParallelFileReader(TextParserConfiguration cfg, String parserClassName, ClassLoader parserClassLoader,
+			File file, String sourceName) {
+		this.cfg = cfg;
+		this.parserClassName = parserClassName;
+		this.parserClassLoader = parserClassLoader;
+		this.file = file;
+		this.sourceName = sourceName;
+	}
+
+	/**
+	 * Checks whether the records described by the parser configuration can be read in parallel.
+	 * Records have to be delimited, each record has to end with the new line character and the new line
+	 * character must not be a part of any other delimiter. The charset has to be a single byte charset
+	 * compatible with ASCII or UTF-8.
+	 *
+	 * @param cfg configuration of the parser
+	 * @return <code>null</code> if the configuration is supported, otherwise reason why it is not supported
+	 */
+	public static String checkConfiguration(TextParserConfiguration cfg) {
+		DataRecordMetadata metadata = cfg.getMetadata();
+		if (metadata == null) {
+			return "missing metadata";
+		}
+		if (cfg.isTreatMultipleDelimitersAsOne()) {
+			return "multiple delimiters are treated as one";
+		}
+		Charset charset;
+		try {
+			charset = getCharset(cfg);
+		} catch (IllegalArgumentException e) {
+			return "unsupported charset " + cfg.getCharset();
+		}
+		if (!TextParserConfiguration.isAsciiCompatibleCharset(charset)) {
+			return "charset " + charset.name() + " is not compatible with ASCII";
+		}
+		DataFieldMetadata lastField = null;
+		for (DataFieldMetadata field : metadata.getFields()) {
+			if (field.isAutoFilled()) {
+				continue;
+			}
+			if (!field.isDelimited() || field.isFixed()) {
+				return "field " + field.getName() + " is not delimited";
+			}
+			lastField = field;
+		}
+		if (lastField == null) {
+			return "no parsed fields";
+		}
+		for (DataFieldMetadata field : metadata.getFields()) {
+			if (field.isAutoFilled()) {
+				continue;
+			}
+			String[] delimiters = field.getDelimiters();
+			if (delimiters == null) {
+				return "field " + field.getName() + " has no delimiter";
+			}
+			for (String delimiter : delimiters) {
+				int newLine = delimiter.indexOf(NEW_LINE);
+				if (field == lastField ? newLine != delimiter.length() - 1 : newLine >= 0) {
+					return "records are not delimited by new line";
+				}
+			}
+		}
+		return null;
+	}
+
+	private static Charset getCharset(TextParserConfiguration cfg) {
+		return Charset.forName(cfg.getCharset() != null ? cfg.getCharset() : Defaults.DataParser.DEFAULT_CHARSET_DECODER);
+	}
+
+	public void setLogger(Log logger) {
+		this.logger = logger;
+	}
+
+	/**
+	 * @param parallelism number of parsing threads
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(parallelism, 1);
+	}
+
+	/**
+	 * @param ordered if <code>false</code>, records are returned as soon as they are parsed
+	 */
+	public void setOrdered(boolean ordered) {
+		this.ordered = ordered;
+	}
+
+	/**
+	 * @param minChunkSize minimal size of a part of the file parsed by single parser
+	 */
+	public void setMinChunkSize(long minChunkSize) {
+		this.minChunkSize = Math.max(minChunkSize, 1);
+	}
+
+	/**
+	 * @param skip number of records to skip, they are counted in the source counter of autofilling
+	 */
+	public void setSkip(int skip) {
+		this.skip = Math.max(skip, 0);
+	}
+
+	/**
+	 * @param skipSourceRows number of rows to skip at the beginning of the file
+	 */
+	public void setSkipSourceRows(int skipSourceRows) {
+		this.skipSourceRows = Math.max(skipSourceRows, 0);
+	}
+
+	/**
+	 * @param numRecords max number of returned records
+	 */
+	public void setNumRecords(int numRecords) {
+		this.numRecords = numRecords;
+	}
+
+	/**
+	 * @param numSourceRecords max number of records read from the source, including records skipped by {@link #setSkip(int)}
+	 */
+	public void setNumSourceRecords(int numSourceRecords) {
+		this.numSourceRecords = numSourceRecords;
+	}
+
+	public String getSourceName() {
+		return sourceName;
+	}
+
+	private boolean isOrdered() {
+		return ordered || numRecords > 0 || numSourceRecords > 0;
+	}
+
+	/**
+	 * Splits the file into chunks and starts parsing.
+	 *
+	 * @throws ComponentNotReadyException
+	 */
+	public void preExecute() throws ComponentNotReadyException {
+		autoFilling = new AutoFilling();
+		autoFilling.addAutoFillingFields(cfg.getMetadata());
+		autoFilling.setFilename(sourceName);
+		autoFilling.setFileSize(file.length());
+		long timestamp = file.lastModified();
+		autoFilling.setFileTimestamp(timestamp == 0 ? null : new Date(timestamp));
+		// skipped rows are counted as if the parser skipped them, see MultiFileReader.skip()
+		autoFilling.incL3Counter(skipSourceRows + skip);
+		autoFilling.incSourceCounter(skip);
+		recordNumber = skipSourceRows + skip;
+
+		cancelled = false;
+		currentChunk = 0;
+		finishedChunks = 0;
+		currentBatch = null;
+		try {
+			chunks = split();
+		} catch (IOException e) {
+			throw new ComponentNotReadyException("Cannot split file " + sourceName + " into chunks", e);
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("File " + sourceName + " split into " + chunks.length + " chunks, parsed by " + parallelism + " threads");
+		}
+		unorderedQueue = isOrdered() ? null : new ArrayBlockingQueue<Batch>(QUEUE_CAPACITY * parallelism);
+		executor = createExecutor();
+		// chunks are started in the order of the file, so the chunk the consumer waits for is always being parsed
+		for (Chunk chunk : chunks) {
+			chunk.output = isOrdered() ? new ArrayBlockingQueue<Batch>(QUEUE_CAPACITY) : unorderedQueue;
+			executor.execute(chunk);
+		}
+	}
+
+	private ExecutorService createExecutor() {
+		final String threadName = Thread.currentThread().getName() + ": parser";
+		return Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r);
+				t.setName(threadName);
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Finds boundaries of the chunks, the first chunk starts after the skipped records.
+	 */
+	private Chunk[] split() throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			RecordBoundaryScanner scanner = new RecordBoundaryScanner(raf.getChannel(), cfg);
+			long start = 0;
+			for (int i = skipSourceRows + skip; i > 0 && start < scanner.length; i--) {
+				start = scanner.findRecordEnd(start, start);
+			}
+			long length = scanner.length - start;
+			int count = (int) Math.max(1, Math.min((long) parallelism * CHUNKS_PER_THREAD, length / minChunkSize));
+			List<Chunk> result = new ArrayList<Chunk>(count);
+			for (int i = 1; i <= count; i++) {
+				long end = i == count ? scanner.length : scanner.findRecordEnd(start, start + length * i / count);
+				if (end > start) {
+					result.add(new Chunk(result.size(), start, end));
+					start = end;
+				}
+			}
+			if (result.isEmpty()) {
+				result.add(new Chunk(0, start, start));
+			}
+			return result.toArray(new Chunk[result.size()]);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Returns next record. The record is owned by the reader and it is valid until the next call.
+	 *
+	 * @return next record or <code>null</code> if there is no more records
+	 * @throws JetelException if the file cannot be read
+	 * @throws BadDataFormatException if the record cannot be parsed, reading can continue by the next call
+	 * @throws InterruptedException
+	 */
+	public DataRecord getNext() throws JetelException, InterruptedException {
+		if ((numRecords > 0 && numRecords <= autoFilling.getGlobalCounter())
+				|| (numSourceRecords > 0 && numSourceRecords <= autoFilling.getSourceCounter())) {
+			cancel();
+			return null;
+		}
+		while (currentBatch == null || batchPosition >= currentBatch.size) {
+			if (!nextBatch()) {
+				return null;
+			}
+		}
+		int i = batchPosition++;
+		recordNumber++;
+		BadDataFormatException error = currentBatch.errors[i];
+		if (error != null) {
+			autoFilling.incGlobalCounter();
+			autoFilling.incSourceCounter();
+			autoFilling.incL3Counter();
+			// record numbers of the parser are relative to the chunk
+			error.setRecordNumber(isOrdered() ? recordNumber : -1);
+			throw error;
+		}
+		DataRecord record = currentBatch.records[i];
+		autoFilling.setLastUsedAutoFillingFields(record);
+		return record;
+	}
+
+	/**
+	 * Returns consumed batch to its chunk and takes next batch.
+	 *
+	 * @return <code>false</code> if all chunks are read
+	 */
+	private boolean nextBatch() throws JetelException, InterruptedException {
+		if (currentBatch != null) {
+			Batch batch = currentBatch;
+			currentBatch = null;
+			if (batch.last) {
+				finishedChunks++;
+				currentChunk++;
+			} else {
+				batch.chunk.free.offer(batch);
+			}
+		}
+		if (chunks == null || finishedChunks >= chunks.length) {
+			return false;
+		}
+		Batch batch = isOrdered() ? chunks[currentChunk].output.take() : unorderedQueue.take();
+		if (batch.failure != null) {
+			cancel();
+			throw new JetelException("Parsing of " + sourceName + " failed", batch.failure);
+		}
+		currentBatch = batch;
+		batchPosition = 0;
+		return true;
+	}
+
+	/**
+	 * Stops parsing threads.
+	 */
+	private void cancel() {
+		cancelled = true;
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	public void postExecute() {
+		cancel();
+		chunks = null;
+		unorderedQueue = null;
+		currentBatch = null;
+	}
+
+	public void close() {
+		postExecute();
+	}
+
+	/**
+	 * Records parsed by a parsing thread at once.
+	 */
+	private static class Batch {
+
+		final Chunk chunk;
+		final DataRecord[] records = new DataRecord[BATCH_SIZE];
+		final BadDataFormatException[] errors = new BadDataFormatException[BATCH_SIZE];
+		int size;
+		/** last batch of the chunk */
+		boolean last;
+		Throwable failure;
+
+		Batch(Chunk chunk) {
+			this.chunk = chunk;
+		}
+
+	}
+
+	/**
+	 * Part of the file parsed by a single parser.
+	 */
+	private class Chunk implements Runnable {
+
+		final int index;
+		final long start;
+		final long end;
+		BlockingQueue<Batch> output;
+		/** consumed batches which can be reused */
+		final BlockingQueue<Batch> free = new ArrayBlockingQueue<Batch>(QUEUE_CAPACITY + 2);
+		int allocatedBatches;
+
+		Chunk(int index, long start, long end) {
+			this.index = index;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public void run() {
+			Batch batch = null;
+			try {
+				if (cancelled) {
+					return;
+				}
+				TextParser parser = TextParserFactory.getParser(cfg, parserClassName, parserClassLoader);
+				PolicyType policyType = cfg.getPolicyType() != null ? cfg.getPolicyType() : PolicyType.STRICT;
+				parser.setExceptionHandler(ParserExceptionHandlerFactory.getHandler(policyType));
+				parser.init();
+				parser.preExecute();
+				RandomAccessFile raf = new RandomAccessFile(file, "r");
+				try {
+					parser.setDataSource(new RangeChannel(raf.getChannel(), start, end));
+					boolean failed = false;
+					while (!failed) {
+						batch = getBatch();
+						while (batch.size < BATCH_SIZE) {
+							int i = batch.size;
+							batch.errors[i] = null;
+							try {
+								if (parser.getNext(batch.records[i]) == null) {
+									break;
+								}
+							} catch (BadDataFormatException e) {
+								batch.errors[i] = e;
+								// the consumer fails on the first error in strict mode
+								failed = policyType == PolicyType.STRICT || e.isFatal();
+							}
+							batch.size++;
+							if (failed) {
+								break;
+							}
+						}
+						if (batch.size < BATCH_SIZE) {
+							break;
+						}
+						output.put(batch);
+						batch = null;
+					}
+					parser.postExecute();
+				} finally {
+					parser.close();
+					raf.close();
+				}
+				if (batch == null) {
+					batch = getBatch();
+				}
+			} catch (InterruptedException e) {
+				return;
+			} catch (Throwable e) {
+				if (cancelled) {
+					return;
+				}
+				if (batch == null) {
+					batch = new Batch(this);
+				}
+				batch.failure = e;
+			}
+			batch.last = true;
+			try {
+				output.put(batch);
+			} catch (InterruptedException e) {
+				// cancelled
+			}
+		}
+
+		private Batch getBatch() throws InterruptedException {
+			Batch batch = free.poll();
+			if (batch == null) {
+				if (allocatedBatches < QUEUE_CAPACITY + 2) {
+					allocatedBatches++;
+					batch = new Batch(this);
+					for (int i = 0; i < BATCH_SIZE; i++) {
+						batch.records[i] = DataRecordFactory.newRecord(cfg.getMetadata());
+					}
+				} else {
+					batch = free.take();
+				}
+			}
+			batch.size = 0;
+			return batch;
+		}
+
+		@Override
+		public String toString() {
+			return "chunk " + index + " [" + start + ", " + end + ")";
+		}
+
+	}
+
+	/**
+	 * Channel reading a byte range of a file.
+	 */
+	private static class RangeChannel implements ReadableByteChannel {
+
+		private final FileChannel channel;
+		private long position;
+		private final long end;
+
+		RangeChannel(FileChannel channel, long start, long end) {
+			this.channel = channel;
+			this.position = start;
+			this.end = end;
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			if (position >= end) {
+				return -1;
+			}
+			int limit = dst.limit();
+			if (dst.remaining() > end - position) {
+				dst.limit(dst.position() + (int) (end - position));
+			}
+			try {
+				int count = channel.read(dst, position);
+				if (count > 0) {
+					position += count;
+				}
+				return count;
+			} finally {
+				dst.limit(limit);
+			}
+		}
+
+		@Override
+		public boolean isOpen() {
+			return channel.isOpen();
+		}
+
+		@Override
+		public void close() throws IOException {
+			// the file channel is closed by the chunk
+		}
+
+	}
+
+	/**
+	 * Finds ends of records in the file. Without quoted strings, each new line character ends a record.
+	 * With quoted strings, new line characters in quoted fields are ignored, so the scan has to start
+	 * at beginning of a record.
+	 */
+	static class RecordBoundaryScanner {
+
+		private final FileChannel channel;
+		final long length;
+		private final boolean quotedStrings;
+		private final Character quoteChar;
+		/** field delimiters in bytes, a quote may follow them */
+		private final byte[][] delimiters;
+		/** last bytes of the delimiters */
+		private final boolean[] delimiterEnds = new boolean[256];
+		private final byte[] history;
+		private final ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+
+		RecordBoundaryScanner(FileChannel channel, TextParserConfiguration cfg) throws IOException {
+			this.channel = channel;
+			this.length = channel.size();
+			DataRecordMetadata metadata = cfg.getMetadata();
+			quotedStrings = cfg.isQuotedStringsOverride() ? cfg.isQuotedStrings() : metadata.isQuotedStrings();
+			quoteChar = cfg.isQuotedStringsOverride() ? cfg.getQuoteChar() : metadata.getQuoteChar();
+			Charset charset = getCharset(cfg);
+			List<byte[]> delimiterBytes = new ArrayList<byte[]>();
+			int maxLength = 1;
+			for (DataFieldMetadata field : metadata.getFields()) {
+				String[] fieldDelimiters = field.isAutoFilled() ? null : field.getDelimiters();
+				if (fieldDelimiters != null) {
+					for (String delimiter : fieldDelimiters) {
+						byte[] bytes = delimiter.getBytes(charset);
+						if (bytes.length > 0) {
+							delimiterBytes.add(bytes);
+							delimiterEnds[bytes[bytes.length - 1] & 0xFF] = true;
+							maxLength = Math.max(maxLength, bytes.length);
+						}
+					}
+				}
+			}
+			delimiters = delimiterBytes.toArray(new byte[delimiterBytes.size()][]);
+			history = new byte[maxLength];
+		}
+
+		/**
+		 * Returns position after the end of the first record which ends at or after the given position.
+		 *
+		 * @param recordStart beginning of a record, the scan starts here if strings are quoted
+		 * @param position minimal position of the end of the record
+		 * @return position after the new line character ending the record or length of the file
+		 */
+		long findRecordEnd(long recordStart, long position) throws IOException {
+			return quotedStrings ? findQuotedRecordEnd(recordStart, Math.max(position, recordStart)) : findNewLine(Math.max(position - 1, recordStart));
+		}
+
+		private long findNewLine(long position) throws IOException {
+			while (fill(position)) {
+				for (int i = buffer.position(); i < buffer.limit(); i++) {
+					if (buffer.get(i) == NEW_LINE) {
+						return position + i - buffer.position() + 1;
+					}
+				}
+				position += buffer.remaining();
+			}
+			return length;
+		}
+
+		private long findQuotedRecordEnd(long position, long minEnd) throws IOException {
+			boolean fieldStart = true;
+			int quote = -1; // quote character of the current field
+			boolean quoteFound = false; // quote character found in quoted field, it is either escaped or end of the field
+			int historySize = 0;
+			while (fill(position)) {
+				int offset = buffer.position();
+				for (int i = offset; i < buffer.limit(); i++) {
+					byte b = buffer.get(i);
+					if (quote >= 0) {
+						if (quoteFound) {
+							quoteFound = false;
+							if (b == quote) {
+								continue; // escaped quote
+							}
+							quote = -1; // end of the quoted field
+						} else {
+							if (b == quote) {
+								quoteFound = true;
+							}
+							continue;
+						}
+					}
+					if (b == NEW_LINE) {
+						long end = position + i - offset + 1;
+						if (end > minEnd) {
+							return end;
+						}
+						fieldStart = true;
+						historySize = 0;
+						continue;
+					}
+					if (fieldStart && isQuote(b)) {
+						quote = b;
+						fieldStart = false;
+						historySize = 0;
+						continue;
+					}
+					history[historySize++ % history.length] = b;
+					fieldStart = delimiterEnds[b & 0xFF] && endsWithDelimiter(historySize);
+				}
+				position += buffer.limit() - offset;
+			}
+			return length;
+		}
+
+		private boolean isQuote(byte b) {
+			return quotedStrings && (quoteChar == null ? b == '"' || b == '\'' : b == quoteChar.charValue());
+		}
+
+		/**
+		 * @param historySize number of bytes since the last field start, the last bytes are stored in the history ring
+		 */
+		private boolean endsWithDelimiter(int historySize) {
+			delimiters: for (byte[] delimiter : delimiters) {
+				if (delimiter.length > historySize) {
+					continue;
+				}
+				for (int j = 0; j < delimiter.length; j++) {
+					if (history[(historySize - 1 - j) % history.length] != delimiter[delimiter.length - 1 - j]) {
+						continue delimiters;
+					}
+				}
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Reads the buffer from the given position.
+		 *
+		 * @return <code>false</code> at the end of the file
+		 */
+		private boolean fill(long position) throws IOException {
+			if (position >= length) {
+				return false;
+			}
+			buffer.clear();
+			while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+			}
+			buffer.flip();
+			return buffer.hasRemaining();
+		}
+
+	}
+
+}
@@ -51,6 +51,7 @@ import org.jetel.metadata.DataRecordMetadata;
 import org.jetel.util.bytes.RestrictedByteArrayOutputStream;
 import org.jetel.util.file.FileUtils;
 import org.jetel.util.file.FileUtils.PortURL;
+import org.jetel.util.stream.AsyncWritableByteChannel;
 
 
 /**
@@ -109,6 +110,7 @@ public class TargetFile {
 
 	private int compressLevel = -1;
 	private boolean mkDir;
+	private boolean asyncWrite;						// file output is written by separate thread
 
 	private boolean storeRawData = true;
 	private boolean objectDictionaryInitialized = false;
@@ -632,6 +634,9 @@ public class TargetFile {
 				try {
 					OutputStream os = FileUtils.getOutputStream(contextURL, fName, appendData, compressLevel);
 					byteChannel = Channels.newChannel(os);
+					if (asyncWrite && useChannel) {
+						byteChannel = new AsyncWritableByteChannel(byteChannel);
+					}
 
 					if (useChannel) {
 						setDataTarget(byteChannel);
@@ -747,4 +752,13 @@ public class TargetFile {
 		this.mkDir = mkDir;
 	}
 
+	/**
+	 * Sets whether output files are written by a dedicated I/O thread, see {@link AsyncWritableByteChannel}.
+	 * 
+	 * @param asyncWrite
+	 */
+	public void setAsyncWrite(boolean asyncWrite) {
+		this.asyncWrite = asyncWrite;
+	}
+
 }
@@ -0,0 +1,266 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.util.bytes;
+
+/**
+ * Formatting of numbers, dates and strings directly into a {@link CloverBuffer} as UTF-8 or ASCII bytes,
+ * without intermediate strings and charset encoders.<br>
+ * The output is the same as the output of the plain formatters, i.e. {@link Long#toString(long)},
+ * {@link java.math.BigDecimal#toString()} and {@link java.text.SimpleDateFormat} with numeric patterns.
+ * Methods write at the current position of the buffer and do not expand it, the caller has to ensure
+ * the buffer has enough remaining space (see the MAX_*_LENGTH constants).
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public final class ByteFormatUtils {
+
+	/** Maximum length of a long value, including the sign. */
+	public static final int MAX_LONG_LENGTH = 20;
+
+	/** Maximum length of a decimal value written by {@link #putDecimal(CloverBuffer, long, int)}. */
+	public static final int MAX_DECIMAL_LENGTH = 28;
+
+	/** Pattern <code>yyyy-MM-dd</code> for {@link #putDate(CloverBuffer, long, int)}. */
+	public static final int DATE = 0;
+
+	/** Pattern <code>yyyy-MM-dd HH:mm:ss</code> for {@link #putDate(CloverBuffer, long, int)}. */
+	public static final int DATE_TIME = 1;
+
+	/** Pattern <code>yyyy-MM-dd HH:mm:ss.SSS</code> for {@link #putDate(CloverBuffer, long, int)}. */
+	public static final int DATE_TIME_MILLIS = 2;
+
+	/** Maximum length of a date value written by {@link #putDate(CloverBuffer, long, int)}. */
+	public static final int MAX_DATE_LENGTH = 23;
+
+	/** Maximum number of UTF-8 bytes per UTF-16 char. */
+	public static final int MAX_UTF8_BYTES_PER_CHAR = 3;
+
+	private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+	/** 1583-01-01T00:00:00, first full year of Gregorian calendar in {@link java.util.GregorianCalendar}. */
+	private static final long MIN_DATE_MILLIS = -12212553600000L;
+
+	/** 10000-01-01T00:00:00, years with more than 4 digits are not supported. */
+	private static final long MAX_DATE_MILLIS = 253402300800000L;
+
+	private static final byte[] LONG_MIN_VALUE = Long.toString(Long.MIN_VALUE).getBytes();
+
+	private ByteFormatUtils() {
+	}
+
+	/**
+	 * @return number of decimal digits of the non-negative value
+	 */
+	private static int digits(long value) {
+		int digits = 1;
+		for (long limit = 10; digits < 19 && value >= limit; limit *= 10) {
+			digits++;
+		}
+		return digits;
+	}
+
+	/**
+	 * Writes digits of the non-negative value ending before the given absolute index.
+	 */
+	private static void putDigits(CloverBuffer buffer, long value, int end, int count) {
+		for (int i = end - 1; i >= end - count; i--) {
+			buffer.put(i, (byte) ('0' + (value % 10)));
+			value /= 10;
+		}
+	}
+
+	/**
+	 * Writes the value as {@link Long#toString(long)} does.
+	 */
+	public static void putLong(CloverBuffer buffer, long value) {
+		if (value == Long.MIN_VALUE) {
+			buffer.put(LONG_MIN_VALUE);
+			return;
+		}
+		if (value < 0) {
+			buffer.put((byte) '-');
+			value = -value;
+		}
+		int count = digits(value);
+		int end = buffer.position() + count;
+		putDigits(buffer, value, end, count);
+		buffer.position(end);
+	}
+
+	/**
+	 * Writes decimal number <code>unscaledValue * 10^-scale</code> as {@link java.math.BigDecimal#toString()} does.
+	 * Values which would be written in the exponential notation are not supported.
+	 *
+	 * @return <code>false</code> if nothing has been written because the value requires the exponential notation
+	 */
+	public static boolean putDecimal(CloverBuffer buffer, long unscaledValue, int scale) {
+		if (scale == 0) {
+			putLong(buffer, unscaledValue);
+			return true;
+		}
+		if (scale < 0 || unscaledValue == Long.MIN_VALUE) {
+			return false;
+		}
+		long value = Math.abs(unscaledValue);
+		int count = digits(value);
+		if (count - 1 - scale < -6) {
+			// exponential notation
+			return false;
+		}
+		if (unscaledValue < 0) {
+			buffer.put((byte) '-');
+		}
+		int start = buffer.position();
+		int end;
+		if (count > scale) {
+			end = start + count + 1;
+			putDigits(buffer, value, end, scale);
+			buffer.put(end - scale - 1, (byte) '.');
+			putDigits(buffer, value / pow10(scale), end - scale - 1, count - scale);
+		} else {
+			end = start + scale + 2;
+			buffer.put(start, (byte) '0');
+			buffer.put(start + 1, (byte) '.');
+			for (int i = start + 2; i < end - count; i++) {
+				buffer.put(i, (byte) '0');
+			}
+			putDigits(buffer, value, end, count);
+		}
+		buffer.position(end);
+		return true;
+	}
+
+	private static long pow10(int exponent) {
+		long result = 1;
+		for (int i = 0; i < exponent; i++) {
+			result *= 10;
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the date in the given local time.
+	 *
+	 * @param localMillis milliseconds since 1970-01-01T00:00:00 in local time (UTC time plus time zone offset)
+	 * @param pattern one of {@link #DATE}, {@link #DATE_TIME}, {@link #DATE_TIME_MILLIS}
+	 * @return <code>false</code> if nothing has been written because the year is out of range 1583-9999
+	 */
+	public static boolean putDate(CloverBuffer buffer, long localMillis, int pattern) {
+		if (localMillis < MIN_DATE_MILLIS || localMillis >= MAX_DATE_MILLIS) {
+			return false;
+		}
+		long days = localMillis / MILLIS_PER_DAY;
+		if (localMillis % MILLIS_PER_DAY < 0) {
+			days--;
+		}
+		int millisOfDay = (int) (localMillis - days * MILLIS_PER_DAY);
+
+		// civil date from days since epoch, proleptic Gregorian calendar with years starting in March,
+		// days are positive in the supported range
+		long z = days + 719468;
+		long era = z / 146097;
+		int dayOfEra = (int) (z - era * 146097);
+		int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		int mp = (5 * dayOfYear + 2) / 153;
+		int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+		int month = mp < 10 ? mp + 3 : mp - 9;
+		int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+
+		int start = buffer.position();
+		putDigits(buffer, year, start + 4, 4);
+		buffer.put(start + 4, (byte) '-');
+		putDigits(buffer, month, start + 7, 2);
+		buffer.put(start + 7, (byte) '-');
+		putDigits(buffer, day, start + 10, 2);
+		int end = start + 10;
+		if (pattern != DATE) {
+			buffer.put(end, (byte) ' ');
+			putDigits(buffer, millisOfDay / 3600000, end + 3, 2);
+			buffer.put(end + 3, (byte) ':');
+			putDigits(buffer, millisOfDay / 60000 % 60, end + 6, 2);
+			buffer.put(end + 6, (byte) ':');
+			putDigits(buffer, millisOfDay / 1000 % 60, end + 9, 2);
+			end += 9;
+			if (pattern == DATE_TIME_MILLIS) {
+				buffer.put(end, (byte) '.');
+				putDigits(buffer, millisOfDay % 1000, end + 4, 3);
+				end += 4;
+			}
+		}
+		buffer.position(end);
+		return true;
+	}
+
+	/**
+	 * Encodes the characters in UTF-8. The buffer needs {@link #MAX_UTF8_BYTES_PER_CHAR} bytes per character.
+	 *
+	 * @return <code>false</code> if the sequence contains unpaired surrogate, the position of the buffer is restored
+	 */
+	public static boolean putUtf8(CloverBuffer buffer, CharSequence seq) {
+		int start = buffer.position();
+		int length = seq.length();
+		for (int i = 0; i < length; i++) {
+			char c = seq.charAt(i);
+			if (c < 0x80) {
+				buffer.put((byte) c);
+			} else if (c < 0x800) {
+				buffer.put((byte) (0xc0 | (c >> 6)));
+				buffer.put((byte) (0x80 | (c & 0x3f)));
+			} else if (Character.isSurrogate(c)) {
+				char low;
+				if (!Character.isHighSurrogate(c) || i + 1 >= length || !Character.isLowSurrogate(low = seq.charAt(i + 1))) {
+					buffer.position(start);
+					return false;
+				}
+				i++;
+				int code = Character.toCodePoint(c, low);
+				buffer.put((byte) (0xf0 | (code >> 18)));
+				buffer.put((byte) (0x80 | ((code >> 12) & 0x3f)));
+				buffer.put((byte) (0x80 | ((code >> 6) & 0x3f)));
+				buffer.put((byte) (0x80 | (code & 0x3f)));
+			} else {
+				buffer.put((byte) (0xe0 | (c >> 12)));
+				buffer.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+				buffer.put((byte) (0x80 | (c & 0x3f)));
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the characters as ASCII bytes. The buffer needs one byte per character.
+	 *
+	 * @return <code>false</code> if the sequence contains non-ASCII characters, the position of the buffer is restored
+	 */
+	public static boolean putAscii(CloverBuffer buffer, CharSequence seq) {
+		int start = buffer.position();
+		int length = seq.length();
+		for (int i = 0; i < length; i++) {
+			char c = seq.charAt(i);
+			if (c >= 0x80) {
+				buffer.position(start);
+				return false;
+			}
+			buffer.put((byte) c);
+		}
+		return true;
+	}
+
+}
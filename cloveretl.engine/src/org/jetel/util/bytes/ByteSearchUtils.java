@@ -0,0 +1,141 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.util.bytes;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Searching of bytes eight at a time - the bytes are read as a long and compared
+ * by arithmetic on the whole long (SWAR - SIMD within a register).<br>
+ * All methods expect a little endian buffer, see {@link #wrap(byte[])}, so the lowest
+ * byte of a long is the first byte in the buffer. Positions are absolute, position and limit
+ * of the buffer are ignored.
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public final class ByteSearchUtils {
+
+	private static final long ONES = 0x0101010101010101L;
+	private static final long HIGH_BITS = 0x8080808080808080L;
+
+	private ByteSearchUtils() {
+	}
+
+	/**
+	 * @return little endian buffer backed by the array, suitable for the search methods
+	 */
+	public static ByteBuffer wrap(byte[] array) {
+		return ByteBuffer.wrap(array).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * @return pattern of the byte for {@link #indexOf(ByteBuffer, int, int, long)}
+	 */
+	public static long pattern(byte b) {
+		return (b & 0xFFL) * ONES;
+	}
+
+	/**
+	 * Marks zero bytes of the word by their highest bit. Bytes above a zero byte can be marked falsely,
+	 * so only the lowest mark is reliable.
+	 */
+	private static long zeroBytes(long word) {
+		return (word - ONES) & ~word & HIGH_BITS;
+	}
+
+	/**
+	 * Finds the first occurrence of the byte.
+	 *
+	 * @param buffer little endian buffer
+	 * @param from start of the searched range (inclusive)
+	 * @param to end of the searched range (exclusive)
+	 * @param pattern pattern of the searched byte, see {@link #pattern(byte)}
+	 * @return position of the byte or -1
+	 */
+	public static int indexOf(ByteBuffer buffer, int from, int to, long pattern) {
+		int i = from;
+		for (; i + 8 <= to; i += 8) {
+			long found = zeroBytes(buffer.getLong(i) ^ pattern);
+			if (found != 0) {
+				return i + (Long.numberOfTrailingZeros(found) >>> 3);
+			}
+		}
+		byte b = (byte) pattern;
+		for (; i < to; i++) {
+			if (buffer.get(i) == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the first occurrence of any of the two bytes.
+	 *
+	 * @param buffer little endian buffer
+	 * @param from start of the searched range (inclusive)
+	 * @param to end of the searched range (exclusive)
+	 * @param pattern1 pattern of the first searched byte, see {@link #pattern(byte)}
+	 * @param pattern2 pattern of the second searched byte
+	 * @return position of the first found byte or -1
+	 */
+	public static int indexOfAny(ByteBuffer buffer, int from, int to, long pattern1, long pattern2) {
+		int i = from;
+		for (; i + 8 <= to; i += 8) {
+			long word = buffer.getLong(i);
+			// the lowest mark of each mask is reliable, so is the lowest mark of both
+			long found = zeroBytes(word ^ pattern1) | zeroBytes(word ^ pattern2);
+			if (found != 0) {
+				return i + (Long.numberOfTrailingZeros(found) >>> 3);
+			}
+		}
+		byte b1 = (byte) pattern1;
+		byte b2 = (byte) pattern2;
+		for (; i < to; i++) {
+			byte b = buffer.get(i);
+			if (b == b1 || b == b2) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param buffer little endian buffer
+	 * @param from start of the checked range (inclusive)
+	 * @param to end of the checked range (exclusive)
+	 * @return <code>true</code> if all bytes in the range are 7-bit ASCII characters
+	 */
+	public static boolean isAscii(ByteBuffer buffer, int from, int to) {
+		int i = from;
+		for (; i + 8 <= to; i += 8) {
+			if ((buffer.getLong(i) & HIGH_BITS) != 0) {
+				return false;
+			}
+		}
+		for (; i < to; i++) {
+			if (buffer.get(i) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
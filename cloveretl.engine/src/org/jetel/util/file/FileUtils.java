@@ -96,6 +96,9 @@ import org.jetel.util.protocols.sandbox.SandboxStreamHandler;
 import org.jetel.util.protocols.sftp.SFTPConnection;
 import org.jetel.util.protocols.sftp.SFTPStreamHandler;
 import org.jetel.util.protocols.webdav.WebdavOutputStream;
+import org.jetel.util.stream.ParallelDeflaterOutputStream;
+import org.jetel.util.stream.ParallelGZIPOutputStream;
+import org.jetel.util.stream.ParallelZipOutputStream;
 import org.jetel.util.stream.StreamUtils;
 import org.jetel.util.stream.TZipOutputStream;
 import org.jetel.util.string.StringUtils;
@@ -1598,14 +1601,17 @@ public class FileUtils {
 			if (appendData) {
 				throw new IOException("Appending to remote archives is not supported");
 			}
+			String anchor = sbAnchor.toString();
+			String entryName = anchor.equals("") ? DEFAULT_ZIP_FILE : anchor;
+			if (ParallelDeflaterOutputStream.isEnabled()) {
+				return new ParallelZipOutputStream(os, entryName, compressLevel);
+			}
 			// CLO-2572: Use TZipOutputStream to prevent active deadlock on SMB and WebDAV
 			TZipOutputStream zout = new TZipOutputStream(os);
 			if (compressLevel != -1) {
 				zout.setLevel(compressLevel);
 			}
-			String anchor = sbAnchor.toString();
-			de.schlichtherle.truezip.zip.ZipEntry entry =
-				new de.schlichtherle.truezip.zip.ZipEntry(anchor.equals("") ? DEFAULT_ZIP_FILE : anchor);
+			de.schlichtherle.truezip.zip.ZipEntry entry = new de.schlichtherle.truezip.zip.ZipEntry(entryName);
 			zout.putNextEntry(entry);
 			return zout;
         } 
@@ -1615,6 +1621,9 @@ public class FileUtils {
 			if (appendData) {
 				throw new IOException("Appending to remote archives is not supported");
 			}
+			if (ParallelDeflaterOutputStream.isEnabled()) {
+				return new ParallelGZIPOutputStream(os);
+			}
             GZIPOutputStream gzos = new GZIPOutputStream(os, Defaults.DEFAULT_INTERNAL_IO_BUFFER_SIZE);
             return gzos;
         } 
@@ -0,0 +1,113 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.util.primitive;
+
+/**
+ * Blocked Bloom filter of 64-bit hash values.<br>
+ * The bit array is divided into blocks of 512 bits (one cache line), all bits of one value
+ * are set in a single block, so each test touches one cache line only. The block is selected
+ * by the lowest bits of the hash, the bits inside the block are derived from the rest of the hash.
+ * The filter is not thread-safe.
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public class BlockedBloomFilter {
+
+	/** recommended number of bits per inserted value, gives about 1% of false positives */
+	public static final int DEFAULT_BITS_PER_VALUE = 10;
+
+	/** 2^9 = 512 bits per block */
+	private static final int BLOCK_BITS_LOG = 9;
+
+	/** 2^3 = 8 longs per block */
+	private static final int BLOCK_WORDS_LOG = BLOCK_BITS_LOG - 6;
+
+	private static final int NUM_BITS_PER_VALUE = 7;
+
+	private static final int MAX_BLOCKS = 1 << 24;
+
+	private final long[] words;
+
+	private final int blockMask;
+
+	/**
+	 * @param expectedValues expected number of inserted values
+	 * @param bitsPerValue number of bits of the filter per expected value
+	 */
+	public BlockedBloomFilter(int expectedValues, int bitsPerValue) {
+		long bits = Math.max(1L, (long) expectedValues * bitsPerValue);
+		long blocks = (bits + (1 << BLOCK_BITS_LOG) - 1) >>> BLOCK_BITS_LOG;
+		int numBlocks = 1;
+		while (numBlocks < blocks && numBlocks < MAX_BLOCKS) {
+			numBlocks <<= 1;
+		}
+		words = new long[numBlocks << BLOCK_WORDS_LOG];
+		blockMask = numBlocks - 1;
+	}
+
+	/**
+	 * Creates filter with {@link #DEFAULT_BITS_PER_VALUE} bits per value.
+	 *
+	 * @param expectedValues expected number of inserted values
+	 */
+	public BlockedBloomFilter(int expectedValues) {
+		this(expectedValues, DEFAULT_BITS_PER_VALUE);
+	}
+
+	/**
+	 * Inserts the hash value.
+	 *
+	 * @param hash well distributed 64-bit hash
+	 */
+	public void add(long hash) {
+		int block = ((int) hash & blockMask) << BLOCK_WORDS_LOG;
+		// bits are taken from the top of the product, which depend on all bits of the hash
+		long bits = hash * 0x9E3779B97F4A7C15L;
+		for (int i = 0; i < NUM_BITS_PER_VALUE; i++) {
+			int bit = (int) (bits >>> (64 - BLOCK_BITS_LOG));
+			words[block + (bit >>> 6)] |= 1L << bit;
+			bits <<= BLOCK_BITS_LOG;
+		}
+	}
+
+	/**
+	 * @param hash well distributed 64-bit hash
+	 * @return false if the hash value has certainly not been inserted, true otherwise
+	 */
+	public boolean mightContain(long hash) {
+		int block = ((int) hash & blockMask) << BLOCK_WORDS_LOG;
+		long bits = hash * 0x9E3779B97F4A7C15L;
+		for (int i = 0; i < NUM_BITS_PER_VALUE; i++) {
+			int bit = (int) (bits >>> (64 - BLOCK_BITS_LOG));
+			if ((words[block + (bit >>> 6)] & (1L << bit)) == 0) {
+				return false;
+			}
+			bits <<= BLOCK_BITS_LOG;
+		}
+		return true;
+	}
+
+	/**
+	 * @return size of the filter in bits
+	 */
+	public long getSize() {
+		return (long) words.length << 6;
+	}
+
+}
@@ -0,0 +1,393 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.util.primitive;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Thread-safe bounded cache with W-TinyLFU eviction policy.<br>
+ * New entries are stored in a small LRU window (1% of the capacity). Entries leaving the window
+ * compete with the eldest entries of the main space, the entry accessed more often wins. The access
+ * frequencies are estimated by a count-min sketch of 4-bit counters, which are halved periodically,
+ * so the history ages out. The main space is segmented LRU - entries accessed again are promoted
+ * from the probation segment to the protected segment (80% of the main space).<br>
+ * Optionally the entries expire after given time since they have been stored.
+ * Numbers of hits, misses and evictions are counted.<br>
+ * All operations, including {@link #get(Object)}, are serialized by the monitor of the cache, because
+ * each access updates the frequency sketch and the segment lists. The cache is intended for lookups
+ * whose misses are much more expensive than the lock (e.g. database queries). It may become a point
+ * of contention if many threads hit the cache without doing much other work.
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public class WTinyLfuCache<K, V> {
+
+	private static final byte WINDOW = 0;
+	private static final byte PROBATION = 1;
+	private static final byte PROTECTED = 2;
+
+	private final int maxSize;
+	private final int windowMaxSize;
+	private final int protectedMaxSize;
+	private final long timeToLive;
+
+	private final Map<K, Node<K, V>> map;
+	private final Node<K, V> window = new Node<K, V>();
+	private final Node<K, V> probation = new Node<K, V>();
+	private final Node<K, V> protectedSegment = new Node<K, V>();
+	private int windowSize;
+	private int probationSize;
+	private int protectedSize;
+
+	private final FrequencySketch sketch;
+
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+
+	/**
+	 * @param maxSize maximal number of entries
+	 * @param timeToLive time in milliseconds after which stored entry expires, 0 means never
+	 */
+	public WTinyLfuCache(int maxSize, long timeToLive) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Maximal size of the cache has to be positive: " + maxSize);
+		}
+		if (timeToLive < 0) {
+			throw new IllegalArgumentException("Time to live can't be negative: " + timeToLive);
+		}
+		this.maxSize = maxSize;
+		this.windowMaxSize = Math.max(1, maxSize / 100);
+		this.protectedMaxSize = (maxSize - windowMaxSize) * 80 / 100;
+		this.timeToLive = timeToLive;
+		map = new HashMap<K, Node<K, V>>(Math.min(maxSize, 1 << 16));
+		sketch = new FrequencySketch(maxSize);
+	}
+
+	/**
+	 * Creates cache without expiration.
+	 *
+	 * @param maxSize maximal number of entries
+	 */
+	public WTinyLfuCache(int maxSize) {
+		this(maxSize, 0);
+	}
+
+	/**
+	 * @param key
+	 * @return value stored for the key or null if there is no such value or it has already expired
+	 */
+	public synchronized V get(K key) {
+		sketch.increment(key.hashCode());
+		Node<K, V> node = map.get(key);
+		if (node == null) {
+			missCount++;
+			return null;
+		}
+		if (isExpired(node)) {
+			removeNode(node);
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		onAccess(node);
+		return node.value;
+	}
+
+	/**
+	 * Stores the value, previous value of the key is replaced. If the cache is full,
+	 * the new entry or some old entry is evicted.
+	 *
+	 * @param key
+	 * @param value
+	 */
+	public synchronized void put(K key, V value) {
+		Node<K, V> node = map.get(key);
+		if (node != null) {
+			node.value = value;
+			node.writeTime = currentTime();
+			onAccess(node);
+			return;
+		}
+		node = new Node<K, V>(key, value, currentTime());
+		map.put(key, node);
+		node.queue = WINDOW;
+		node.linkBefore(window);
+		windowSize++;
+		while (windowSize > windowMaxSize) {
+			Node<K, V> candidate = window.next;
+			candidate.unlink();
+			windowSize--;
+			candidate.queue = PROBATION;
+			candidate.linkBefore(probation);
+			probationSize++;
+		}
+		while (map.size() > maxSize) {
+			evict();
+		}
+	}
+
+	/**
+	 * @param key
+	 * @return true if the entry was removed
+	 */
+	public synchronized boolean remove(K key) {
+		Node<K, V> node = map.get(key);
+		if (node == null) {
+			return false;
+		}
+		removeNode(node);
+		return true;
+	}
+
+	/**
+	 * Removes all entries. Statistics and frequency history are kept.
+	 */
+	public synchronized void clear() {
+		map.clear();
+		window.prev = window.next = window;
+		probation.prev = probation.next = probation;
+		protectedSegment.prev = protectedSegment.next = protectedSegment;
+		windowSize = probationSize = protectedSize = 0;
+	}
+
+	/**
+	 * @return number of stored entries, possibly including the expired ones
+	 */
+	public synchronized int size() {
+		return map.size();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getTimeToLive() {
+		return timeToLive;
+	}
+
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * @return ratio of hits to all {@link #get(Object)} calls, 0 if there was no call yet
+	 */
+	public synchronized double getHitRate() {
+		long requests = hitCount + missCount;
+		return requests == 0 ? 0 : (double) hitCount / requests;
+	}
+
+	private void onAccess(Node<K, V> node) {
+		switch (node.queue) {
+		case WINDOW:
+			node.unlink();
+			node.linkBefore(window);
+			break;
+		case PROBATION:
+			node.unlink();
+			probationSize--;
+			node.queue = PROTECTED;
+			node.linkBefore(protectedSegment);
+			protectedSize++;
+			while (protectedSize > protectedMaxSize) {
+				Node<K, V> demoted = protectedSegment.next;
+				demoted.unlink();
+				protectedSize--;
+				demoted.queue = PROBATION;
+				demoted.linkBefore(probation);
+				probationSize++;
+			}
+			break;
+		default:
+			node.unlink();
+			node.linkBefore(protectedSegment);
+		}
+	}
+
+	/**
+	 * Evicts one entry. The eldest entry of the probation segment (victim) is compared with
+	 * the latest entry admitted from the window (candidate), the less frequently used one is evicted.
+	 */
+	private void evict() {
+		Node<K, V> evicted;
+		if (probationSize > 0) {
+			Node<K, V> victim = probation.next;
+			Node<K, V> candidate = probation.prev;
+			if (candidate != victim && sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode())) {
+				evicted = victim;
+			} else {
+				evicted = candidate;
+			}
+		} else if (protectedSize > 0) {
+			evicted = protectedSegment.next;
+		} else {
+			evicted = window.next;
+		}
+		removeNode(evicted);
+		evictionCount++;
+	}
+
+	private void removeNode(Node<K, V> node) {
+		map.remove(node.key);
+		node.unlink();
+		switch (node.queue) {
+		case WINDOW:
+			windowSize--;
+			break;
+		case PROBATION:
+			probationSize--;
+			break;
+		default:
+			protectedSize--;
+		}
+	}
+
+	private boolean isExpired(Node<K, V> node) {
+		return timeToLive > 0 && currentTime() - node.writeTime >= timeToLive;
+	}
+
+	private long currentTime() {
+		return timeToLive > 0 ? System.currentTimeMillis() : 0;
+	}
+
+	/**
+	 * Entry of the cache and also the head of the segment lists.
+	 */
+	private static final class Node<K, V> {
+
+		K key;
+		V value;
+		long writeTime;
+		byte queue;
+		Node<K, V> prev = this;
+		Node<K, V> next = this;
+
+		Node() {
+		}
+
+		Node(K key, V value, long writeTime) {
+			this.key = key;
+			this.value = value;
+			this.writeTime = writeTime;
+		}
+
+		void linkBefore(Node<K, V> head) {
+			prev = head.prev;
+			next = head;
+			head.prev.next = this;
+			head.prev = this;
+		}
+
+		void unlink() {
+			prev.next = next;
+			next.prev = prev;
+			prev = next = this;
+		}
+
+	}
+
+	/**
+	 * Count-min sketch of 4-bit counters, 16 counters packed in a long.
+	 */
+	private static final class FrequencySketch {
+
+		private static final long[] SEEDS = { 0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L,
+			0x9AE16A3B2F90404FL, 0xCBF29CE484222325L };
+
+		private static final long RESET_MASK = 0x7777777777777777L;
+
+		private final long[] table;
+		private final int tableMask;
+		private final int sampleSize;
+		private int additions;
+
+		FrequencySketch(int maxSize) {
+			int size = 1;
+			while (size < maxSize && size < (1 << 26)) {
+				size <<= 1;
+			}
+			table = new long[size];
+			tableMask = size - 1;
+			sampleSize = (int) Math.min(10L * maxSize, Integer.MAX_VALUE);
+		}
+
+		void increment(int hashCode) {
+			int hash = spread(hashCode);
+			boolean added = false;
+			for (int i = 0; i < SEEDS.length; i++) {
+				int index = indexOf(hash, i);
+				int shift = counterShift(hash, i);
+				if (((table[index] >>> shift) & 0xFL) != 0xFL) {
+					table[index] += 1L << shift;
+					added = true;
+				}
+			}
+			if (added && ++additions >= sampleSize) {
+				reset();
+			}
+		}
+
+		int frequency(int hashCode) {
+			int hash = spread(hashCode);
+			int frequency = Integer.MAX_VALUE;
+			for (int i = 0; i < SEEDS.length; i++) {
+				int count = (int) ((table[indexOf(hash, i)] >>> counterShift(hash, i)) & 0xFL);
+				frequency = Math.min(frequency, count);
+			}
+			return frequency;
+		}
+
+		/**
+		 * Halves all counters.
+		 */
+		private void reset() {
+			for (int i = 0; i < table.length; i++) {
+				table[i] = (table[i] >>> 1) & RESET_MASK;
+			}
+			additions >>>= 1;
+		}
+
+		private int indexOf(int hash, int i) {
+			long h = (hash + SEEDS[i]) * SEEDS[i];
+			h += h >>> 32;
+			return (int) h & tableMask;
+		}
+
+		private static int counterShift(int hash, int i) {
+			return ((hash >>> (i << 3)) & 0xF) << 2;
+		}
+
+		private static int spread(int hashCode) {
+			int h = hashCode * 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+
+	}
+
+}
@@ -0,0 +1,336 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.util.spreadsheet;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.jetel.data.Defaults;
+import org.jetel.exception.TempFileCreationException;
+import org.jetel.graph.ContextProvider;
+import org.jetel.graph.runtime.IAuthorityProxy;
+import org.jetel.util.spreadsheet.XSSFSheetXMLHandler.SharedStrings;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Shared strings table of a XLSX workbook read by a SAX parser, without building the POI object model.<br>
+ * Strings are kept in memory until their total length exceeds the given limit
+ * (see {@link Defaults.DataParser#XLSX_SHARED_STRINGS_IN_MEMORY}), then all the strings are spilled
+ * to a temporary file as UTF-8 bytes together with an index of their offsets. The file is memory-mapped
+ * when it fits into a single mapping, otherwise the strings are read by positional reads.
+ * Recently read spilled strings are cached, cells of a column often share a few values.
+ * <p>
+ * The instance has to be closed to delete the temporary file.
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public class StreamingSharedStrings implements SharedStrings, Closeable {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** Number of cached spilled strings, power of two */
+	private static final int CACHE_SIZE = 4096;
+
+	private final int inMemoryLimit;
+
+	private final List<String> strings = new ArrayList<String>();
+	private long inMemoryLength;
+
+	/** Temporary file with spilled strings, <code>null</code> if all strings are in memory */
+	private File file;
+	private OutputStream fileOutput;
+	private long fileSize;
+	/** offsets[i] is start of i-th string in the file, offsets[count] is size of the file */
+	private long[] offsets;
+	private int count;
+
+	private FileChannel channel;
+	private MappedByteBuffer mappedFile;
+	private byte[] readBuffer = new byte[256];
+
+	private String[] cachedStrings;
+	private int[] cachedIndexes;
+
+	public StreamingSharedStrings() {
+		this(Defaults.DataParser.XLSX_SHARED_STRINGS_IN_MEMORY);
+	}
+
+	/**
+	 * @param inMemoryLimit number of characters kept in memory
+	 */
+	public StreamingSharedStrings(int inMemoryLimit) {
+		this.inMemoryLimit = inMemoryLimit;
+	}
+
+	/**
+	 * Reads the shared strings part (sharedStrings.xml) of a workbook.
+	 */
+	public void load(InputStream sharedStringsPart) throws IOException {
+		try {
+			SAXParserFactory factory = SAXParserFactory.newInstance();
+			factory.setNamespaceAware(true);
+			SAXParser parser = factory.newSAXParser();
+			parser.parse(sharedStringsPart, new SharedStringsHandler());
+			finishLoading();
+		} catch (ParserConfigurationException e) {
+			throw new IOException("Cannot create XML parser for shared strings", e);
+		} catch (SAXException e) {
+			throw new IOException("Cannot parse shared strings", e);
+		}
+	}
+
+	/**
+	 * Appends a string to the table.
+	 */
+	public void add(String string) throws IOException {
+		if (file == null && inMemoryLength + string.length() > inMemoryLimit) {
+			spill();
+		}
+		if (file == null) {
+			strings.add(string);
+			inMemoryLength += string.length();
+		} else {
+			write(string);
+		}
+	}
+
+	/**
+	 * @return number of strings in the table
+	 */
+	public int size() {
+		return file == null ? strings.size() : count;
+	}
+
+	/**
+	 * @return <code>true</code> if the strings were spilled to a temporary file
+	 */
+	public boolean isSpilled() {
+		return file != null;
+	}
+
+	private void spill() throws IOException {
+		try {
+			file = IAuthorityProxy.getAuthorityProxy(ContextProvider.getGraph()).newTempFile("cloveretl-xlsx-shared-strings", -1);
+		} catch (TempFileCreationException e) {
+			throw new IOException("Failed to create temp file for shared strings", e);
+		}
+		fileOutput = new BufferedOutputStream(new FileOutputStream(file));
+		offsets = new long[Math.max(1024, 2 * strings.size())];
+		for (String string : strings) {
+			write(string);
+		}
+		strings.clear();
+		inMemoryLength = 0;
+	}
+
+	private void write(String string) throws IOException {
+		byte[] bytes = string.getBytes(UTF8);
+		if (count + 1 >= offsets.length) {
+			offsets = Arrays.copyOf(offsets, offsets.length * 2);
+		}
+		offsets[count] = fileSize;
+		fileOutput.write(bytes);
+		fileSize += bytes.length;
+		offsets[++count] = fileSize;
+	}
+
+	/**
+	 * Prepares spilled strings for reading, called when all strings are added.
+	 */
+	public void finishLoading() throws IOException {
+		if (fileOutput == null) {
+			return;
+		}
+		fileOutput.close();
+		fileOutput = null;
+		channel = new RandomAccessFile(file, "r").getChannel();
+		if (fileSize <= Integer.MAX_VALUE) {
+			mappedFile = channel.map(MapMode.READ_ONLY, 0, fileSize);
+		}
+		cachedStrings = new String[CACHE_SIZE];
+		cachedIndexes = new int[CACHE_SIZE];
+		Arrays.fill(cachedIndexes, -1);
+	}
+
+	@Override
+	public String getString(int index) {
+		if (file == null) {
+			return strings.get(index);
+		}
+		if (index < 0 || index >= count) {
+			throw new IndexOutOfBoundsException("Shared string index out of range: " + index);
+		}
+		int slot = index & (CACHE_SIZE - 1);
+		if (cachedIndexes[slot] == index) {
+			return cachedStrings[slot];
+		}
+		String result = readString(index);
+		cachedIndexes[slot] = index;
+		cachedStrings[slot] = result;
+		return result;
+	}
+
+	private String readString(int index) {
+		long start = offsets[index];
+		int length = (int) (offsets[index + 1] - start);
+		if (readBuffer.length < length) {
+			readBuffer = new byte[Math.max(length, 2 * readBuffer.length)];
+		}
+		if (mappedFile != null) {
+			mappedFile.position((int) start);
+			mappedFile.get(readBuffer, 0, length);
+		} else {
+			ByteBuffer buffer = ByteBuffer.wrap(readBuffer, 0, length);
+			try {
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer, start + buffer.position()) < 0) {
+						throw new IOException("Unexpected end of shared strings file");
+					}
+				}
+			} catch (IOException e) {
+				throw new RuntimeException("Cannot read shared string " + index, e);
+			}
+		}
+		return new String(readBuffer, 0, length, UTF8);
+	}
+
+	/**
+	 * Releases the strings and deletes the temporary file.
+	 */
+	@Override
+	public void close() throws IOException {
+		strings.clear();
+		mappedFile = null;
+		cachedStrings = null;
+		try {
+			if (fileOutput != null) {
+				fileOutput.close();
+				fileOutput = null;
+			}
+			if (channel != null) {
+				channel.close();
+				channel = null;
+			}
+		} finally {
+			if (file != null && !file.delete()) {
+				// a mapped file cannot be deleted on some platforms until the mapping is garbage collected
+				file.deleteOnExit();
+			}
+			file = null;
+		}
+	}
+
+	/**
+	 * Decodes characters escaped as _xHHHH_, the same way as XSSFRichTextString does.
+	 */
+	static String decodeEscapes(String value) {
+		int escape = value.indexOf("_x");
+		if (escape < 0) {
+			return value;
+		}
+		StringBuilder result = new StringBuilder(value.length());
+		int last = 0;
+		while (escape >= 0) {
+			if (escape + 7 <= value.length() && value.charAt(escape + 6) == '_' && isHex(value, escape + 2, escape + 6)) {
+				result.append(value, last, escape);
+				result.append((char) Integer.parseInt(value.substring(escape + 2, escape + 6), 16));
+				last = escape + 7;
+				escape = value.indexOf("_x", last);
+			} else {
+				escape = value.indexOf("_x", escape + 1);
+			}
+		}
+		result.append(value, last, value.length());
+		return result.toString();
+	}
+
+	private static boolean isHex(String value, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (Character.digit(value.charAt(i), 16) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Collects texts of string items ("si" elements). Text of rich text runs is concatenated,
+	 * phonetic runs ("rPh" elements) are skipped.
+	 */
+	private class SharedStringsHandler extends DefaultHandler {
+
+		private final StringBuilder value = new StringBuilder();
+		private boolean textIsOpen;
+		private boolean phoneticIsOpen;
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+			if ("si".equals(localName)) {
+				value.setLength(0);
+			} else if ("rPh".equals(localName)) {
+				phoneticIsOpen = true;
+			} else if ("t".equals(localName) && !phoneticIsOpen) {
+				textIsOpen = true;
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			if ("si".equals(localName)) {
+				try {
+					add(decodeEscapes(value.toString()));
+				} catch (IOException e) {
+					throw new SAXException(e);
+				}
+			} else if ("rPh".equals(localName)) {
+				phoneticIsOpen = false;
+			} else if ("t".equals(localName)) {
+				textIsOpen = false;
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) throws SAXException {
+			if (textIsOpen) {
+				value.append(ch, start, length);
+			}
+		}
+	}
+
+}
@@ -48,6 +48,8 @@ import org.xml.sax.helpers.DefaultHandler;
  *  - ignores formula "f" tags. Cell with formula is treated as any other cell with value;
  *  - in {@link SheetContentsHandler#cell(String, int, String, int)}, cell value type and cell style index is available.
  *  - handles missing "r" attribute in cell element "c" and row element "row".
+ *  - shared strings are looked up through {@link SharedStrings}, so that the table does not need to be loaded
+ *    into memory as {@link SharedStringsTable}.
  *  
  * @author tkramolis
  * 
@@ -63,7 +65,7 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
 		BOOLEAN, ERROR, INLINE_STRING, SST_STRING, NUMBER, FORMULA,
 	}
 	
-	private SharedStringsTable sharedStringsTable;
+	private final SharedStrings sharedStrings;
 
 	/**
 	 * Where our text is going
@@ -105,8 +107,23 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
 	 * @param strings
 	 *            Table of shared strings
 	 */
-	public XSSFSheetXMLHandler(SharedStringsTable strings, SheetContentsHandler sheetContentsHandler) {
-		this.sharedStringsTable = strings;
+	public XSSFSheetXMLHandler(final SharedStringsTable strings, SheetContentsHandler sheetContentsHandler) {
+		this(new SharedStrings() {
+			@Override
+			public String getString(int index) {
+				return new XSSFRichTextString(strings.getEntryAt(index)).toString();
+			}
+		}, sheetContentsHandler);
+	}
+
+	/**
+	 * Accepts objects needed while parsing.
+	 * 
+	 * @param strings
+	 *            Shared strings lookup
+	 */
+	public XSSFSheetXMLHandler(SharedStrings strings, SheetContentsHandler sheetContentsHandler) {
+		this.sharedStrings = strings;
 		this.output = sheetContentsHandler;
 		this.nextDataType = XSSFDataType.NUMBER;
 	}
@@ -263,8 +280,7 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
 				String sstIndex = value.toString();
 				try {
 					int idx = Integer.parseInt(sstIndex);
-					XSSFRichTextString rtss = new XSSFRichTextString(sharedStringsTable.getEntryAt(idx));
-					thisStr = rtss.toString();
+					thisStr = sharedStrings.getString(idx);
 				} catch (NumberFormatException ex) {
 					System.err.println("Failed to parse SST index '" + sstIndex + "': " + ex.toString());
 				}
@@ -312,6 +328,14 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
 		}
 	}
 
+	/**
+	 * Source of the shared strings referenced by cells of type "s".
+	 */
+	public interface SharedStrings {
+		/** Text of the shared string with the given (zero based) index */
+		public String getString(int index);
+	}
+
 	/**
 	 * You need to implement this to handle the results of the sheet parsing.
 	 */
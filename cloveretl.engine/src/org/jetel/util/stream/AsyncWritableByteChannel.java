@@ -0,0 +1,206 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.util.stream;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.jetel.data.Defaults;
+
+/**
+ * Channel which writes to the wrapped channel on a dedicated I/O thread, so that the writing thread
+ * can prepare next data while the previous data are written to a slow storage.<br>
+ * Written bytes are copied into buffers which are passed to the I/O thread. The number of buffers is
+ * limited, the writing thread waits for a free buffer when all of them are queued (back-pressure).<br>
+ * A failure of the I/O thread is thrown by the next {@link #write(ByteBuffer)} or by {@link #close()}.
+ * {@link #close()} waits until all the data are written and closes the wrapped channel.
+ * The channel is not thread-safe, it is expected to be used by single writing thread.
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public class AsyncWritableByteChannel implements WritableByteChannel {
+
+	/** Default number of buffers filled by the writing thread and not written yet */
+	public static final int DEFAULT_QUEUE_SIZE = 4;
+
+	/** Marks end of data for the I/O thread */
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	private final WritableByteChannel channel;
+	private final int bufferSize;
+	/** Maximum number of allocated buffers - queued ones, one written and one filled */
+	private final int maxBuffers;
+	private int allocatedBuffers;
+
+	private final BlockingQueue<ByteBuffer> filledBuffers = new LinkedBlockingQueue<ByteBuffer>();
+	private final BlockingQueue<ByteBuffer> freeBuffers = new LinkedBlockingQueue<ByteBuffer>();
+	private ByteBuffer currentBuffer;
+
+	private final Thread ioThread;
+	private volatile Throwable failure;
+	private boolean open = true;
+
+	public AsyncWritableByteChannel(WritableByteChannel channel) {
+		this(channel, Defaults.Record.RECORDS_BUFFER_SIZE, DEFAULT_QUEUE_SIZE);
+	}
+
+	/**
+	 * @param channel wrapped channel
+	 * @param bufferSize size of buffers passed to the I/O thread
+	 * @param queueSize number of buffers which can wait for the I/O thread
+	 */
+	public AsyncWritableByteChannel(WritableByteChannel channel, int bufferSize, int queueSize) {
+		if (queueSize < 1) {
+			throw new IllegalArgumentException("Queue size must be positive: " + queueSize);
+		}
+		this.channel = channel;
+		this.bufferSize = bufferSize;
+		this.maxBuffers = queueSize + 2;
+		ioThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeBuffers();
+			}
+		}, Thread.currentThread().getName() + ": async write");
+		ioThread.setDaemon(true);
+		ioThread.start();
+	}
+
+	/**
+	 * Body of the I/O thread. After a failure the buffers are only recycled, so that the writing thread is never
+	 * blocked forever and can see the failure.
+	 */
+	private void writeBuffers() {
+		try {
+			while (true) {
+				ByteBuffer buffer = filledBuffers.take();
+				if (buffer == END) {
+					return;
+				}
+				if (failure == null) {
+					try {
+						while (buffer.hasRemaining()) {
+							channel.write(buffer);
+						}
+					} catch (Throwable t) {
+						failure = t;
+					}
+				}
+				buffer.clear();
+				freeBuffers.add(buffer);
+			}
+		} catch (InterruptedException e) {
+			if (failure == null) {
+				failure = e;
+			}
+		}
+	}
+
+	private void checkFailure() throws IOException {
+		Throwable t = failure;
+		if (t != null) {
+			throw new IOException("Asynchronous write failed: " + t.getMessage(), t);
+		}
+	}
+
+	private ByteBuffer getFreeBuffer() throws IOException {
+		ByteBuffer buffer = freeBuffers.poll();
+		if (buffer == null) {
+			if (allocatedBuffers < maxBuffers) {
+				allocatedBuffers++;
+				return ByteBuffer.allocate(bufferSize);
+			}
+			try {
+				buffer = freeBuffers.take();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException("Interrupted while waiting for asynchronous write");
+			}
+		}
+		return buffer;
+	}
+
+	private void submitCurrentBuffer() {
+		currentBuffer.flip();
+		filledBuffers.add(currentBuffer);
+		currentBuffer = null;
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		if (!open) {
+			throw new ClosedChannelException();
+		}
+		checkFailure();
+		int length = src.remaining();
+		while (src.hasRemaining()) {
+			if (currentBuffer == null) {
+				currentBuffer = getFreeBuffer();
+				checkFailure();
+			}
+			int count = Math.min(src.remaining(), currentBuffer.remaining());
+			int limit = src.limit();
+			src.limit(src.position() + count);
+			currentBuffer.put(src);
+			src.limit(limit);
+			if (!currentBuffer.hasRemaining()) {
+				submitCurrentBuffer();
+			}
+		}
+		return length;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	/**
+	 * Waits until all data are written by the I/O thread and closes the wrapped channel.
+	 *
+	 * @throws IOException if the I/O thread failed
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!open) {
+			return;
+		}
+		open = false;
+		try {
+			if (currentBuffer != null && currentBuffer.position() > 0) {
+				submitCurrentBuffer();
+			}
+			filledBuffers.add(END);
+			try {
+				ioThread.join();
+			} catch (InterruptedException e) {
+				ioThread.interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for asynchronous write");
+			}
+		} finally {
+			channel.close();
+		}
+		checkFailure();
+	}
+
+}
@@ -0,0 +1,321 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.util.stream;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.jetel.data.Defaults;
+
+/**
+ * Output stream which produces raw deflate data compressed by a pool of threads, like pigz does.<br>
+ * Written data are split to blocks of fixed size, the blocks are compressed independently
+ * and the results are written in the original order. Each block is compressed with the last 32 KB
+ * of the previous block as a preset dictionary and ends with a sync flush, so the concatenation
+ * is a single valid deflate stream with a compression ratio close to a sequential deflater.<br>
+ * Subclasses write the container format around the deflate data, see {@link #writeHeader()} and
+ * {@link #writeTrailer(long, long, long)}.
+ * <p>
+ * The blocks are compressed by a thread pool shared by all instances
+ * (see {@link Defaults#PARALLEL_COMPRESSION_THREADS}), the number of blocks in progress per stream
+ * is limited, so a slow target blocks the writer instead of accumulating data in memory.
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public abstract class ParallelDeflaterOutputStream extends OutputStream {
+
+	/** Size of deflate window, used as preset dictionary of the next block */
+	private static final int DICTIONARY_SIZE = 32768;
+
+	private static ExecutorService executor;
+
+	/** Compressed output of the original stream */
+	protected final OutputStream out;
+
+	private final int level;
+	private final int blockSize;
+	private final int maxPendingBlocks;
+	private final Queue<Future<byte[]>> pendingBlocks = new ArrayDeque<Future<byte[]>>();
+
+	private byte[] block;
+	private int blockLength;
+	private byte[] previousBlock;
+	private int previousBlockLength;
+
+	private final CRC32 crc = new CRC32();
+	private long uncompressedSize;
+	private long compressedSize;
+	private boolean headerWritten;
+	private volatile boolean closed;
+
+	/**
+	 * @param out target stream
+	 * @param level compression level, -1 for the default level
+	 */
+	protected ParallelDeflaterOutputStream(OutputStream out, int level) {
+		this(out, level, Defaults.PARALLEL_COMPRESSION_BLOCK_SIZE);
+	}
+
+	/**
+	 * @param out target stream
+	 * @param level compression level, -1 for the default level
+	 * @param blockSize size of independently compressed blocks
+	 */
+	protected ParallelDeflaterOutputStream(OutputStream out, int level, int blockSize) {
+		if (blockSize < DICTIONARY_SIZE) {
+			throw new IllegalArgumentException("Block size must be at least " + DICTIONARY_SIZE + ": " + blockSize);
+		}
+		this.out = out;
+		this.level = level;
+		this.blockSize = blockSize;
+		this.maxPendingBlocks = 2 * getParallelism();
+		this.block = new byte[blockSize];
+	}
+
+	/**
+	 * @return number of threads used for compression
+	 */
+	public static int getParallelism() {
+		int threads = Defaults.PARALLEL_COMPRESSION_THREADS;
+		return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * @return <code>true</code> if compressed outputs should be created by parallel streams
+	 */
+	public static boolean isEnabled() {
+		return getParallelism() > 1;
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(getParallelism(), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "ParallelCompression");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return executor;
+	}
+
+	/**
+	 * Writes the container header, called before the first compressed block.
+	 */
+	protected abstract void writeHeader() throws IOException;
+
+	/**
+	 * Writes the container trailer, called after the last compressed block.
+	 *
+	 * @param crc CRC-32 of the uncompressed data
+	 * @param uncompressedSize number of the uncompressed bytes
+	 * @param compressedSize number of the compressed bytes
+	 */
+	protected abstract void writeTrailer(long crc, long uncompressedSize, long compressedSize) throws IOException;
+
+	/**
+	 * Stores the lowest 2 bytes of the value in little-endian order.
+	 */
+	protected static void putShort(byte[] b, int offset, int value) {
+		b[offset] = (byte) value;
+		b[offset + 1] = (byte) (value >> 8);
+	}
+
+	/**
+	 * Stores the lowest 4 bytes of the value in little-endian order.
+	 */
+	protected static void putInt(byte[] b, int offset, long value) {
+		for (int i = 0; i < 4; i++) {
+			b[offset + i] = (byte) (value >> (8 * i));
+		}
+	}
+
+	/**
+	 * Stores the value in little-endian order.
+	 */
+	protected static void putLong(byte[] b, int offset, long value) {
+		for (int i = 0; i < 8; i++) {
+			b[offset + i] = (byte) (value >> (8 * i));
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed) {
+			throw new IOException("Output stream closed");
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureOpen();
+		block[blockLength++] = (byte) b;
+		if (blockLength == blockSize) {
+			submitBlock(false);
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		while (len > 0) {
+			int count = Math.min(len, blockSize - blockLength);
+			System.arraycopy(b, off, block, blockLength, count);
+			blockLength += count;
+			off += count;
+			len -= count;
+			if (blockLength == blockSize) {
+				submitBlock(false);
+			}
+		}
+	}
+
+	private void submitBlock(boolean last) throws IOException {
+		crc.update(block, 0, blockLength);
+		uncompressedSize += blockLength;
+		pendingBlocks.add(getExecutor().submit(new BlockCompressor(block, blockLength, previousBlock, previousBlockLength, last)));
+		// the block is referenced by its task and by the task of the next block, a new one is needed
+		previousBlock = block;
+		previousBlockLength = blockLength;
+		block = last ? null : new byte[blockSize];
+		blockLength = 0;
+		while (pendingBlocks.size() > maxPendingBlocks) {
+			writeCompressedBlock();
+		}
+	}
+
+	private void writeCompressedBlock() throws IOException {
+		byte[] compressed;
+		try {
+			compressed = pendingBlocks.poll().get();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted while waiting for compression");
+		} catch (ExecutionException e) {
+			throw new IOException("Compression failed", e.getCause());
+		}
+		if (!headerWritten) {
+			writeHeader();
+			headerWritten = true;
+		}
+		out.write(compressed);
+		compressedSize += compressed.length;
+	}
+
+	/**
+	 * Writes all compressed blocks and flushes the target stream. Data of the unfinished block
+	 * are not flushed, the compressed stream is not affected by flushing.
+	 */
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		while (!pendingBlocks.isEmpty()) {
+			writeCompressedBlock();
+		}
+		out.flush();
+	}
+
+	/**
+	 * Compresses the remaining data, writes the trailer and closes the target stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			submitBlock(true);
+			while (!pendingBlocks.isEmpty()) {
+				writeCompressedBlock();
+			}
+			writeTrailer(crc.getValue(), uncompressedSize, compressedSize);
+		} finally {
+			for (Future<byte[]> pendingBlock : pendingBlocks) {
+				pendingBlock.cancel(false);
+			}
+			pendingBlocks.clear();
+			out.close();
+		}
+	}
+
+	/**
+	 * Compresses single block into the raw deflate format.
+	 */
+	private class BlockCompressor implements Callable<byte[]> {
+
+		private final byte[] data;
+		private final int length;
+		private final byte[] dictionary;
+		private final int dictionaryLength;
+		private final boolean last;
+
+		public BlockCompressor(byte[] data, int length, byte[] dictionary, int dictionaryLength, boolean last) {
+			this.data = data;
+			this.length = length;
+			this.dictionary = dictionary;
+			this.dictionaryLength = dictionaryLength;
+			this.last = last;
+		}
+
+		@Override
+		public byte[] call() {
+			Deflater deflater = new Deflater(level, true);
+			try {
+				if (dictionary != null) {
+					int dictionarySize = Math.min(DICTIONARY_SIZE, dictionaryLength);
+					deflater.setDictionary(dictionary, dictionaryLength - dictionarySize, dictionarySize);
+				}
+				deflater.setInput(data, 0, length);
+				byte[] result = new byte[length / 2 + 64];
+				int resultLength = 0;
+				if (last) {
+					deflater.finish();
+				}
+				while (true) {
+					if (resultLength == result.length) {
+						result = Arrays.copyOf(result, result.length * 2);
+					}
+					resultLength += deflater.deflate(result, resultLength, result.length - resultLength,
+							last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+					// sync flush is complete when the output buffer is not filled up
+					if (last ? deflater.finished() : resultLength < result.length) {
+						break;
+					}
+				}
+				return Arrays.copyOf(result, resultLength);
+			} finally {
+				deflater.end();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.util.stream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Parallel replacement of {@link java.util.zip.GZIPOutputStream}, see {@link ParallelDeflaterOutputStream}.
+ * The output is a single gzip member readable by any gzip decompressor.
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public class ParallelGZIPOutputStream extends ParallelDeflaterOutputStream {
+
+	/** Magic, deflate method, no flags, no time, no extra flags, unknown OS */
+	private static final byte[] HEADER = { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+	public ParallelGZIPOutputStream(OutputStream out) {
+		super(out, -1);
+	}
+
+	/**
+	 * @param out target stream
+	 * @param level compression level, -1 for the default level
+	 */
+	public ParallelGZIPOutputStream(OutputStream out, int level) {
+		super(out, level);
+	}
+
+	/**
+	 * @param out target stream
+	 * @param level compression level, -1 for the default level
+	 * @param blockSize size of independently compressed blocks
+	 */
+	public ParallelGZIPOutputStream(OutputStream out, int level, int blockSize) {
+		super(out, level, blockSize);
+	}
+
+	@Override
+	protected void writeHeader() throws IOException {
+		out.write(HEADER);
+	}
+
+	@Override
+	protected void writeTrailer(long crc, long uncompressedSize, long compressedSize) throws IOException {
+		byte[] trailer = new byte[8];
+		putInt(trailer, 0, crc);
+		putInt(trailer, 4, uncompressedSize);
+		out.write(trailer);
+	}
+
+}
@@ -0,0 +1,177 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.util.stream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Calendar;
+
+/**
+ * Writes a zip archive with single deflated entry, the entry data are compressed
+ * in parallel, see {@link ParallelDeflaterOutputStream}.<br>
+ * The sizes and CRC of the entry are written in the data descriptor after the data,
+ * the Zip64 format is used for entries and archives bigger than 4 GB.
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public class ParallelZipOutputStream extends ParallelDeflaterOutputStream {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final long LOCAL_HEADER_SIGNATURE = 0x04034b50L;
+	private static final long DATA_DESCRIPTOR_SIGNATURE = 0x08074b50L;
+	private static final long CENTRAL_HEADER_SIGNATURE = 0x02014b50L;
+	private static final long ZIP64_END_SIGNATURE = 0x06064b50L;
+	private static final long ZIP64_LOCATOR_SIGNATURE = 0x07064b50L;
+	private static final long END_SIGNATURE = 0x06054b50L;
+
+	private static final int VERSION = 20;
+	private static final int VERSION_ZIP64 = 45;
+	/** Sizes in data descriptor, UTF-8 entry name */
+	private static final int FLAGS = 0x0808;
+	private static final int METHOD_DEFLATED = 8;
+	private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+	private final byte[] name;
+	private final long dosTime;
+
+	/**
+	 * @param out target stream
+	 * @param entryName name of the archive entry
+	 * @param level compression level, -1 for the default level
+	 */
+	public ParallelZipOutputStream(OutputStream out, String entryName, int level) {
+		super(out, level);
+		this.name = entryName.getBytes(UTF_8);
+		this.dosTime = toDosTime(Calendar.getInstance());
+	}
+
+	/**
+	 * @param out target stream
+	 * @param entryName name of the archive entry
+	 * @param level compression level, -1 for the default level
+	 * @param blockSize size of independently compressed blocks
+	 */
+	public ParallelZipOutputStream(OutputStream out, String entryName, int level, int blockSize) {
+		super(out, level, blockSize);
+		this.name = entryName.getBytes(UTF_8);
+		this.dosTime = toDosTime(Calendar.getInstance());
+	}
+
+	private static long toDosTime(Calendar time) {
+		int year = time.get(Calendar.YEAR);
+		if (year < 1980) {
+			return (1 << 21) | (1 << 16);
+		}
+		return ((year - 1980) << 25) | ((time.get(Calendar.MONTH) + 1) << 21) | (time.get(Calendar.DAY_OF_MONTH) << 16)
+				| (time.get(Calendar.HOUR_OF_DAY) << 11) | (time.get(Calendar.MINUTE) << 5) | (time.get(Calendar.SECOND) >> 1);
+	}
+
+	private int localHeaderLength() {
+		return 30 + name.length;
+	}
+
+	@Override
+	protected void writeHeader() throws IOException {
+		byte[] header = new byte[localHeaderLength()];
+		putInt(header, 0, LOCAL_HEADER_SIGNATURE);
+		putShort(header, 4, VERSION);
+		putShort(header, 6, FLAGS);
+		putShort(header, 8, METHOD_DEFLATED);
+		putInt(header, 10, dosTime);
+		// CRC and sizes (offsets 14-25) are in the data descriptor, no extra field
+		putShort(header, 26, name.length);
+		System.arraycopy(name, 0, header, 30, name.length);
+		out.write(header);
+	}
+
+	@Override
+	protected void writeTrailer(long crc, long uncompressedSize, long compressedSize) throws IOException {
+		boolean zip64Entry = uncompressedSize >= ZIP64_MAGIC || compressedSize >= ZIP64_MAGIC;
+
+		// data descriptor, sizes are 8 bytes long for Zip64 entries
+		byte[] descriptor = new byte[zip64Entry ? 24 : 16];
+		putInt(descriptor, 0, DATA_DESCRIPTOR_SIGNATURE);
+		putInt(descriptor, 4, crc);
+		if (zip64Entry) {
+			putLong(descriptor, 8, compressedSize);
+			putLong(descriptor, 16, uncompressedSize);
+		} else {
+			putInt(descriptor, 8, compressedSize);
+			putInt(descriptor, 12, uncompressedSize);
+		}
+		out.write(descriptor);
+
+		// central directory header
+		int extraLength = zip64Entry ? 20 : 0;
+		byte[] central = new byte[46 + name.length + extraLength];
+		putInt(central, 0, CENTRAL_HEADER_SIGNATURE);
+		putShort(central, 4, zip64Entry ? VERSION_ZIP64 : VERSION);
+		putShort(central, 6, zip64Entry ? VERSION_ZIP64 : VERSION);
+		putShort(central, 8, FLAGS);
+		putShort(central, 10, METHOD_DEFLATED);
+		putInt(central, 12, dosTime);
+		putInt(central, 16, crc);
+		putInt(central, 20, zip64Entry ? ZIP64_MAGIC : compressedSize);
+		putInt(central, 24, zip64Entry ? ZIP64_MAGIC : uncompressedSize);
+		putShort(central, 28, name.length);
+		putShort(central, 30, extraLength);
+		// comment length, disk number, attributes and offset of the local header (offsets 32-45) are zero
+		System.arraycopy(name, 0, central, 46, name.length);
+		if (zip64Entry) {
+			int extra = 46 + name.length;
+			putShort(central, extra, 1);
+			putShort(central, extra + 2, 16);
+			putLong(central, extra + 4, uncompressedSize);
+			putLong(central, extra + 12, compressedSize);
+		}
+		out.write(central);
+
+		long centralOffset = localHeaderLength() + compressedSize + descriptor.length;
+		long centralLength = central.length;
+		boolean zip64Archive = zip64Entry || centralOffset >= ZIP64_MAGIC;
+		if (zip64Archive) {
+			byte[] zip64End = new byte[56 + 20];
+			putInt(zip64End, 0, ZIP64_END_SIGNATURE);
+			putLong(zip64End, 4, 44);
+			putShort(zip64End, 12, VERSION_ZIP64);
+			putShort(zip64End, 14, VERSION_ZIP64);
+			// number of this disk and of the disk with central directory are zero
+			putLong(zip64End, 24, 1);
+			putLong(zip64End, 32, 1);
+			putLong(zip64End, 40, centralLength);
+			putLong(zip64End, 48, centralOffset);
+			// locator
+			putInt(zip64End, 56, ZIP64_LOCATOR_SIGNATURE);
+			putLong(zip64End, 64, centralOffset + centralLength);
+			putInt(zip64End, 72, 1);
+			out.write(zip64End);
+		}
+
+		byte[] end = new byte[22];
+		putInt(end, 0, END_SIGNATURE);
+		putShort(end, 8, 1);
+		putShort(end, 10, 1);
+		putInt(end, 12, centralLength);
+		putInt(end, 16, zip64Archive ? ZIP64_MAGIC : centralOffset);
+		out.write(end);
+	}
+
+}
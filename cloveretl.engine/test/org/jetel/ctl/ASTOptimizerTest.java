@@ -0,0 +1,162 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.ctl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jetel.ctl.ASTnode.CLVFAddNode;
+import org.jetel.ctl.ASTnode.CLVFComparison;
+import org.jetel.ctl.ASTnode.CLVFDivNode;
+import org.jetel.ctl.ASTnode.CLVFFunctionCall;
+import org.jetel.ctl.ASTnode.CLVFIfStatement;
+import org.jetel.ctl.ASTnode.CLVFLiteral;
+import org.jetel.ctl.ASTnode.CLVFMulNode;
+import org.jetel.ctl.ASTnode.CLVFWhileStatement;
+import org.jetel.ctl.ASTnode.Node;
+import org.jetel.graph.TransformationGraph;
+import org.jetel.test.CloverTestCase;
+
+public class ASTOptimizerTest extends CloverTestCase {
+
+	private TLCompiler compile(String code) {
+		TLCompiler compiler = new TLCompiler(new TransformationGraph(), null, null, "UTF-8");
+		List<ErrorMessage> messages = compiler.compile(code, Object.class, "ASTOptimizerTest");
+		assertEquals(String.valueOf(messages), 0, compiler.errorCount());
+		return compiler;
+	}
+
+	private static <T extends Node> List<T> find(Node node, Class<T> type) {
+		List<T> result = new ArrayList<T>();
+		collect(node, type, result);
+		return result;
+	}
+
+	private static <T extends Node> void collect(Node node, Class<T> type, List<T> result) {
+		if (type.isInstance(node)) {
+			result.add(type.cast(node));
+		}
+		for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+			collect(node.jjtGetChild(i), type, result);
+		}
+	}
+
+	private static List<Object> literalValues(Node node) {
+		List<Object> values = new ArrayList<Object>();
+		for (CLVFLiteral literal : find(node, CLVFLiteral.class)) {
+			values.add(literal.getValue());
+		}
+		return values;
+	}
+
+	public void testConstantFolding() {
+		TLCompiler compiler = compile("integer i = 2 * 3 + 4;\n"
+				+ "long l = i + 10L * 2;\n"
+				+ "boolean b = 1 < 2 && i > 0;\n"
+				+ "string s = upperCase('ab') + 'c' + sqrt(16.0);\n");
+		Node start = compiler.getStart();
+		assertTrue(find(start, CLVFMulNode.class).isEmpty());
+		assertTrue(find(start, CLVFFunctionCall.class).isEmpty());
+		List<Object> values = literalValues(start);
+		assertTrue(values.toString(), values.contains(10));
+		assertTrue(values.toString(), values.contains(20L));
+		assertTrue(values.toString(), values.contains("ABc4.0"));
+		// 1 < 2 && i > 0 -> i > 0
+		assertEquals(2, find(start, CLVFComparison.class).size() + find(start, CLVFAddNode.class).size());
+	}
+
+	public void testFailureLeftToRuntime() {
+		TLCompiler compiler = compile("integer i = 1 / 0;");
+		assertEquals(1, find(compiler.getStart(), CLVFDivNode.class).size());
+	}
+
+	public void testDeadCode() {
+		TLCompiler compiler = compile("function integer test() {\n"
+				+ "	integer i = 0;\n"
+				+ "	if (false) { i = 1; }\n"
+				+ "	while (1 > 2) { i = 2; }\n"
+				+ "	if (true) { i = 3; } else { i = 4; }\n"
+				+ "	if (2 < 1) { i = 5; } else { i = 6; }\n"
+				+ "	return i;\n"
+				+ "}\n");
+		Node start = compiler.getStart();
+		assertTrue(find(start, CLVFWhileStatement.class).isEmpty());
+		List<CLVFIfStatement> ifs = find(start, CLVFIfStatement.class);
+		assertEquals(2, ifs.size());
+		for (CLVFIfStatement statement : ifs) {
+			assertEquals(2, statement.jjtGetNumChildren());
+			assertEquals(Boolean.TRUE, ((CLVFLiteral) statement.jjtGetChild(0)).getValue());
+		}
+		List<Object> values = literalValues(start);
+		assertTrue(values.toString(), values.contains(3));
+		assertTrue(values.toString(), values.contains(6));
+		assertFalse(values.toString(), values.contains(1) || values.contains(2) || values.contains(4) || values.contains(5));
+	}
+
+	public void testTypedOperations() {
+		TLCompiler compiler = compile("function boolean test(integer i, long l, number n, decimal d) {\n"
+				+ "	return i + 1 < 5 && l * 2 == 4L && n / 2 >= 1.0 && d + 1 > 0;\n"
+				+ "}\n");
+		Node start = compiler.getStart();
+		List<CLVFAddNode> additions = find(start, CLVFAddNode.class);
+		assertEquals(2, additions.size());
+		assertEquals(TypedOperation.INTEGER_ADD, additions.get(0).getTypedOperation());
+		assertNull(additions.get(1).getTypedOperation());
+		assertEquals(TypedOperation.LONG_MULTIPLY, find(start, CLVFMulNode.class).get(0).getTypedOperation());
+		assertEquals(TypedOperation.DOUBLE_DIVIDE, find(start, CLVFDivNode.class).get(0).getTypedOperation());
+		List<CLVFComparison> comparisons = find(start, CLVFComparison.class);
+		assertEquals(TypedOperation.INTEGER_LESS_THAN, comparisons.get(0).getTypedOperation());
+		assertEquals(TypedOperation.LONG_EQUAL, comparisons.get(1).getTypedOperation());
+		assertEquals(TypedOperation.DOUBLE_GREATER_THAN_EQUAL, comparisons.get(2).getTypedOperation());
+		assertNull(comparisons.get(3).getTypedOperation());
+	}
+
+	public void testTypedOperationExecution() {
+		Stack stack = new Stack();
+		stack.push(7);
+		stack.push(2);
+		TypedOperation.INTEGER_MODULO.execute(stack);
+		assertEquals(Integer.valueOf(1), stack.pop());
+
+		stack.push(7L);
+		stack.push(2L);
+		TypedOperation.LONG_SUBTRACT.execute(stack);
+		assertEquals(Long.valueOf(5), stack.pop());
+
+		stack.push(null);
+		stack.push(1.0);
+		TypedOperation.DOUBLE_NON_EQUAL.execute(stack);
+		assertEquals(Boolean.TRUE, stack.pop());
+
+		stack.push(null);
+		stack.push(null);
+		TypedOperation.INTEGER_EQUAL.execute(stack);
+		assertEquals(Boolean.TRUE, stack.pop());
+
+		stack.push(1);
+		stack.push(null);
+		try {
+			TypedOperation.INTEGER_LESS_THAN.execute(stack);
+			fail();
+		} catch (TransformLangExecutorRuntimeException e) {
+			// expected
+		}
+	}
+
+}
@@ -0,0 +1,131 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.ctl;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Properties;
+
+import org.jetel.component.CTLRecordTransform;
+import org.jetel.component.RecordTransform;
+import org.jetel.data.DataRecord;
+import org.jetel.data.DataRecordFactory;
+import org.jetel.graph.TransformationGraph;
+import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.metadata.DataFieldType;
+import org.jetel.metadata.DataRecordMetadata;
+import org.jetel.test.CloverTestCase;
+
+public class TLBytecodeCompilerTest extends CloverTestCase {
+
+	private DataRecordMetadata metadata;
+	private DataRecord input;
+	private DataRecord output;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		metadata = new DataRecordMetadata("record");
+		metadata.addField(new DataFieldMetadata("name", DataFieldType.STRING, "|"));
+		metadata.addField(new DataFieldMetadata("count", DataFieldType.INTEGER, "|"));
+		metadata.addField(new DataFieldMetadata("total", DataFieldType.LONG, "|"));
+		metadata.addField(new DataFieldMetadata("price", DataFieldType.DECIMAL, "\n"));
+		input = DataRecordFactory.newRecord(metadata);
+		output = DataRecordFactory.newRecord(metadata);
+	}
+
+	private Object compile(String code) {
+		TransformationGraph graph = new TransformationGraph();
+		DataRecordMetadata[] recordMetadata = new DataRecordMetadata[] { metadata };
+		TLBytecodeCompiler compiler = new TLBytecodeCompiler(graph, recordMetadata, recordMetadata, "UTF-8");
+		List<ErrorMessage> messages = compiler.compile(code, CTLRecordTransform.class, "TLBytecodeCompilerTest");
+		assertEquals(String.valueOf(messages), 0, compiler.errorCount());
+		return compiler.getCompiledCode();
+	}
+
+	private int transform(Object transform) throws Exception {
+		RecordTransform recordTransform = (RecordTransform) transform;
+		recordTransform.init(new Properties(), new DataRecordMetadata[] { metadata }, new DataRecordMetadata[] { metadata });
+		return recordTransform.transform(new DataRecord[] { input }, new DataRecord[] { output });
+	}
+
+	public void testCompiledTransform() throws Exception {
+		String code = "//#CTL2:COMPILE\n"
+				+ "integer calls = 0;\n"
+				+ "function string label(string name, integer n) {\n"
+				+ "	if (isnull(name)) return 'unknown';\n"
+				+ "	return upperCase(name) + '#' + n;\n"
+				+ "}\n"
+				+ "function integer transform() {\n"
+				+ "	calls++;\n"
+				+ "	long sum = 0;\n"
+				+ "	for (integer i = 1; i <= $in.0.count; i++) {\n"
+				+ "		sum += i;\n"
+				+ "	}\n"
+				+ "	switch ($in.0.count) {\n"
+				+ "		case 0: return SKIP;\n"
+				+ "		default: sum = sum * 2;\n"
+				+ "	}\n"
+				+ "	$out.0.name = label($in.0.name, calls);\n"
+				+ "	$out.0.count = $in.0.count > 3 ? 3 : $in.0.count;\n"
+				+ "	$out.0.total = sum;\n"
+				+ "	$out.0.price = nvl($in.0.price, 0.5D) * 2;\n"
+				+ "	return ALL;\n"
+				+ "}\n";
+		Object transform = compile(code);
+		assertTrue(transform instanceof CTLRecordTransform);
+
+		input.getField("name").setValue("abc");
+		input.getField("count").setValue(4);
+		input.getField("price").setNull(true);
+		assertEquals(RecordTransform.ALL, transform(transform));
+		assertEquals("ABC#1", output.getField("name").getValue().toString());
+		assertEquals(3, output.getField("count").getValue());
+		assertEquals(20L, output.getField("total").getValue());
+		assertEquals(0, new BigDecimal("1.0").compareTo(((org.jetel.data.primitive.Decimal) output.getField("price").getValue()).getBigDecimalOutput()));
+
+		input.getField("count").setValue(0);
+		assertEquals(RecordTransform.SKIP, ((RecordTransform) transform).transform(new DataRecord[] { input }, new DataRecord[] { output }));
+	}
+
+	public void testNullSemantics() throws Exception {
+		String code = "//#CTL2:COMPILE\n"
+				+ "function integer transform() {\n"
+				+ "	integer c = $in.0.count;\n"
+				+ "	$out.0.count = c;\n"
+				+ "	$out.0.name = c == null ? 'null' : 'value';\n"
+				+ "	return OK;\n"
+				+ "}\n";
+		Object transform = compile(code);
+		assertTrue(transform instanceof CTLRecordTransform);
+
+		input.getField("count").setNull(true);
+		assertEquals(RecordTransform.OK, transform(transform));
+		assertTrue(output.getField("count").isNull());
+		assertEquals("null", output.getField("name").getValue().toString());
+	}
+
+	public void testInterpretedFallback() {
+		// interpreted mode is kept
+		assertTrue(compile("function integer transform() { return OK; }") instanceof TransformLangExecutor);
+		// lists are not supported by the compiler
+		assertTrue(compile("//#CTL2:COMPILE\nfunction integer transform() { integer[] l = [1, 2]; return l[0]; }") instanceof TransformLangExecutor);
+	}
+
+}
@@ -42,7 +42,7 @@ public class DataRecordMapTest extends CloverTestCase {
 	private static RecordKey recordKey;
 	private static RecordKey recordKeyAllFields;
 	
-	private static RecordKey getMapKey() {
+	protected static RecordKey getMapKey() {
 		if (recordKey == null) {
 			recordKey = new RecordKey(new String[] {"key1", "key2"}, getMetadata());
 			recordKey.setEqualNULLs(true);
@@ -50,7 +50,7 @@ public class DataRecordMapTest extends CloverTestCase {
 		return recordKey;
 	}
 
-	private static RecordKey getAllFieldsKey() {
+	protected static RecordKey getAllFieldsKey() {
 		if (recordKeyAllFields == null) {
 			recordKeyAllFields = new RecordKey(new String[] {"key1", "key2", "data1", "data2"}, getMetadata());
 			recordKeyAllFields.setEqualNULLs(true);
@@ -58,7 +58,7 @@ public class DataRecordMapTest extends CloverTestCase {
 		return recordKeyAllFields;
 	}
 
-	private static DataRecordMetadata getMetadata() {
+	protected static DataRecordMetadata getMetadata() {
 		if (metadata == null) {
 			metadata = new DataRecordMetadata("record");
 			metadata.addField(new DataFieldMetadata("key1", DataFieldType.STRING, "|"));
@@ -69,7 +69,7 @@ public class DataRecordMapTest extends CloverTestCase {
 		return metadata;
 	}
 
-	private static DataRecord createRecord(String key1, boolean key2, int data1, String data2) {
+	protected static DataRecord createRecord(String key1, boolean key2, int data1, String data2) {
 		DataRecord record = DataRecordFactory.newRecord(getMetadata());
 		record.getField("key1").setValue(key1);
 		record.getField("key2").setValue(key2);
@@ -78,15 +78,19 @@ public class DataRecordMapTest extends CloverTestCase {
 		return record;
 	}
 
-	private static DataRecord createKeyRecord(String key1, boolean key2) {
+	protected static DataRecord createKeyRecord(String key1, boolean key2) {
 		DataRecord record = DataRecordFactory.newRecord(getMetadata());
 		record.getField("key1").setValue(key1);
 		record.getField("key2").setValue(key2);
 		return record;
 	}
 
+	protected DataRecordMap createMap(boolean duplicate, boolean overwrite) {
+		return new DataRecordMap(getMapKey(), duplicate, overwrite);
+	}
+
 	public void testPutAndGet1() {
-		DataRecordMap map = new DataRecordMap(getMapKey(), true);
+		DataRecordMap map = createMap(true, true);
 		
 		assertEquals(0, map.size());
 		
@@ -140,7 +144,7 @@ public class DataRecordMapTest extends CloverTestCase {
 	}
 
 	public void testPutAndGet2() {
-		DataRecordMap map = new DataRecordMap(getMapKey(), false, false);
+		DataRecordMap map = createMap(false, false);
 		
 		assertEquals(0, map.size());
 
@@ -188,7 +192,7 @@ public class DataRecordMapTest extends CloverTestCase {
 	}
 
 	public void testPutAndGet3() {
-		DataRecordMap map = new DataRecordMap(getMapKey(), false, true);
+		DataRecordMap map = createMap(false, true);
 		
 		assertEquals(0, map.size());
 
@@ -236,7 +240,7 @@ public class DataRecordMapTest extends CloverTestCase {
 	}
 
 	public void testRemove() {
-		DataRecordMap map = new DataRecordMap(getMapKey(), true);
+		DataRecordMap map = createMap(true, true);
 		
 		assertFalse(map.remove(createRecord("a", true, 1, "data1")));
 		assertEquals(0, map.size());
@@ -266,7 +270,7 @@ public class DataRecordMapTest extends CloverTestCase {
 	}
 
 	public void testDataRecordLookup() {
-		DataRecordMap map = new DataRecordMap(getMapKey(), true);
+		DataRecordMap map = createMap(true, true);
 		
 		DataRecord inRecord1 = createRecord("a", true, 1, "data1");
 		map.put(inRecord1);
@@ -334,7 +338,7 @@ public class DataRecordMapTest extends CloverTestCase {
 	}
 
 	public void testClear() {
-		DataRecordMap map = new DataRecordMap(getMapKey(), true);
+		DataRecordMap map = createMap(true, true);
 		
 		DataRecord inRecord1 = createRecord("a", true, 1, "data1");
 		map.put(inRecord1);
@@ -355,7 +359,7 @@ public class DataRecordMapTest extends CloverTestCase {
 	}
 
 	public void testValueIterator() {
-		DataRecordMap map = new DataRecordMap(getMapKey(), true);
+		DataRecordMap map = createMap(true, true);
 
 		Iterator<DataRecord> iterator = map.valueIterator();
 		assertFalse(iterator.hasNext());
@@ -58,4 +58,42 @@ public class DataRecordWithLazyLoadingTest extends CloverTestCase {
 		record.getField("field2").setToDefaultValue();
 		assertEquals(123, record.getField("field2").getValue());
 	}
+
+	public void testCompareLazyFields() {
+		DataRecordWithLazyLoading record1 = DataRecordFactory.newRecordWithLazyLoading(metadata);
+		DataRecordWithLazyLoading record2 = DataRecordFactory.newRecordWithLazyLoading(metadata);
+		DataFieldWithLazyLoading field1 = record1.getField("field2");
+		DataFieldWithLazyLoading field2 = record2.getField("field2");
+		field1.setSourceData(11);
+		field2.setSourceData(11);
+		assertTrue(field1.equals(field2));
+		assertEquals(field1.hashCode(), field2.hashCode());
+		assertEquals(0, field1.compareTo(field2));
+
+		field2.setSourceData(12);
+		assertFalse(field1.equals(field2));
+		assertTrue(field1.compareTo(field2) < 0);
+		assertTrue(field2.compareTo(field1) > 0);
+	}
+
+	public void testCopyLazyField() {
+		DataRecordWithLazyLoading record1 = DataRecordFactory.newRecordWithLazyLoading(metadata);
+		DataRecordWithLazyLoading record2 = DataRecordFactory.newRecordWithLazyLoading(metadata);
+		DataFieldWithLazyLoading field1 = record1.getField("field2");
+		DataFieldWithLazyLoading field2 = record2.getField("field2");
+
+		field1.setSourceData(11);
+		field2.copyFrom(field1);
+		assertEquals(11, field2.getValue());
+		assertEquals(11, field1.getValue());
+
+		field1.setValue(12);
+		field2.setSourceData(13);
+		field2.copyFrom(field1);
+		assertEquals(12, field2.getValue());
+
+		field1.setSourceData(14);
+		field2.setValue(field1);
+		assertEquals(14, field2.getValue());
+	}
 }
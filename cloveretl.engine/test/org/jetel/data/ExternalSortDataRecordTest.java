@@ -0,0 +1,100 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.data;
+
+import java.util.Random;
+
+import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.metadata.DataFieldType;
+import org.jetel.metadata.DataRecordMetadata;
+import org.jetel.test.CloverTestCase;
+import org.jetel.util.bytes.CloverBuffer;
+
+public class ExternalSortDataRecordTest extends CloverTestCase {
+
+	private DataRecordMetadata metadata;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		metadata = new DataRecordMetadata("record");
+		metadata.addField(new DataFieldMetadata("key", DataFieldType.INTEGER, ";"));
+		metadata.addField(new DataFieldMetadata("order", DataFieldType.INTEGER, ";"));
+		metadata.addField(new DataFieldMetadata("payload", DataFieldType.STRING, "\n"));
+	}
+
+	private void checkSort(int numRecords, int bufferCapacity, int numberOfTapes) throws Exception {
+		ExternalSortDataRecord sorter = new ExternalSortDataRecord(metadata, new String[] { "key" }, new boolean[] { true }, bufferCapacity, numberOfTapes);
+		try {
+			for (int pass = 0; pass < 2; pass++) {
+				Random random = new Random(numRecords);
+				DataRecord record = DataRecordFactory.newRecord(metadata);
+				for (int i = 0; i < numRecords; i++) {
+					record.getField(0).setValue(random.nextInt(numRecords / 10 + 1));
+					record.getField(1).setValue(i);
+					record.getField(2).setValue("payload" + i);
+					sorter.put(record);
+				}
+				sorter.sort();
+
+				CloverBuffer buffer = CloverBuffer.allocate(Defaults.Record.RECORD_INITIAL_SIZE);
+				int count = 0;
+				int lastKey = Integer.MIN_VALUE;
+				int lastOrder = Integer.MIN_VALUE;
+				while (sorter.get(buffer)) {
+					record.deserialize(buffer);
+					buffer.clear();
+					int key = (Integer) record.getField(0).getValue();
+					int order = (Integer) record.getField(1).getValue();
+					assertTrue(key >= lastKey);
+					if (key == lastKey) {
+						//merging is stable
+						assertTrue(order > lastOrder);
+					}
+					assertEquals("payload" + order, record.getField(2).getValue().toString());
+					lastKey = key;
+					lastOrder = order;
+					count++;
+				}
+				assertEquals(numRecords, count);
+				sorter.reset();
+			}
+		} finally {
+			sorter.postExecute();
+			sorter.free();
+		}
+	}
+
+	public void testInMemory() throws Exception {
+		checkSort(1000, 2000, 6);
+	}
+
+	public void testFinalMergeOnly() throws Exception {
+		checkSort(10000, 1000, 10);
+	}
+
+	public void testMultipleMergePasses() throws Exception {
+		checkSort(50000, 500, 3);
+	}
+
+	public void testManyTapes() throws Exception {
+		checkSort(100000, 500, 64);
+	}
+
+}
@@ -0,0 +1,177 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.data;
+
+import java.math.BigDecimal;
+import java.text.Collator;
+import java.text.RuleBasedCollator;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+
+import org.jetel.enums.CollatorSensitivityType;
+import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.metadata.DataFieldType;
+import org.jetel.metadata.DataRecordMetadata;
+import org.jetel.test.CloverTestCase;
+
+public class NormalizedKeySorterTest extends CloverTestCase {
+
+	private static final int NUM_RECORDS = 5000;
+
+	private static final String[] WORDS = { "", "a", "A", "ab", "b", "á", "č", "c", "ch", "h", "zz", "a\u0000", "a\u0000b", "abcdefghijklmnopq", "abcdefghijklmnopr" };
+
+	private DataRecordMetadata metadata;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		metadata = new DataRecordMetadata("record");
+		metadata.addField(new DataFieldMetadata("int", DataFieldType.INTEGER, ";"));
+		metadata.addField(new DataFieldMetadata("long", DataFieldType.LONG, ";"));
+		metadata.addField(new DataFieldMetadata("number", DataFieldType.NUMBER, ";"));
+		DataFieldMetadata decimal = new DataFieldMetadata("decimal", DataFieldType.DECIMAL, ";");
+		decimal.setProperty(DataFieldMetadata.LENGTH_ATTR, "12");
+		decimal.setProperty(DataFieldMetadata.SCALE_ATTR, "3");
+		metadata.addField(decimal);
+		metadata.addField(new DataFieldMetadata("date", DataFieldType.DATE, ";"));
+		metadata.addField(new DataFieldMetadata("boolean", DataFieldType.BOOLEAN, ";"));
+		metadata.addField(new DataFieldMetadata("string", DataFieldType.STRING, ";"));
+		metadata.addField(new DataFieldMetadata("order", DataFieldType.INTEGER, "\n"));
+	}
+
+	private DataRecord[] createRecords(long seed) {
+		Random random = new Random(seed);
+		DataRecord[] records = new DataRecord[NUM_RECORDS];
+		for (int i = 0; i < records.length; i++) {
+			DataRecord record = DataRecordFactory.newRecord(metadata);
+			record.getField("int").setValue(random.nextInt(3) == 0 ? random.nextInt() : random.nextInt(10) - 5);
+			record.getField("long").setValue(random.nextInt(3) == 0 ? random.nextLong() : random.nextInt(10) - 5);
+			record.getField("number").setValue(random.nextInt(3) == 0 ? random.nextDouble() * 1000 - 500 : (double) (random.nextInt(5) - 2));
+			record.getField("decimal").setValue(BigDecimal.valueOf(random.nextInt(20000) - 10000, 3));
+			record.getField("date").setValue(new Date(random.nextInt(10) * 86400000L - 5 * 86400000L));
+			record.getField("boolean").setValue(random.nextBoolean());
+			record.getField("string").setValue(WORDS[random.nextInt(WORDS.length)]);
+			for (int j = 0; j < 7; j++) {
+				if (random.nextInt(10) == 0) {
+					record.getField(j).setNull(true);
+				}
+			}
+			record.getField("order").setValue(i);
+			records[i] = record;
+		}
+		return records;
+	}
+
+	private void checkSort(String[] keys, boolean[] orderings, RuleBasedCollator collator) {
+		for (long seed = 0; seed < 3; seed++) {
+			DataRecord[] records = createRecords(seed);
+			int[] keyFields = new int[keys.length];
+			for (int i = 0; i < keys.length; i++) {
+				keyFields[i] = metadata.getFieldPosition(keys[i]);
+			}
+			RecordOrderedComparator comparator;
+			if (collator != null) {
+				comparator = new RecordOrderedComparator(keyFields, orderings, collator);
+				comparator.updateCollators(metadata);
+			} else {
+				comparator = new RecordOrderedComparator(keyFields, orderings);
+			}
+			comparator.setEqualNULLs(true);
+
+			DataRecord[] expected = records.clone();
+			Arrays.sort(expected, comparator);
+			DataRecord[] sorted = records.clone();
+			new NormalizedKeySorter().sort(sorted, 0, sorted.length, comparator);
+
+			for (int i = 0; i < expected.length; i++) {
+				assertSame("Different record at position " + i + " for key " + Arrays.toString(keys), expected[i], sorted[i]);
+			}
+		}
+	}
+
+	public void testNumericKeys() {
+		checkSort(new String[] { "int", "long" }, new boolean[] { true, true }, null);
+		checkSort(new String[] { "int", "long" }, new boolean[] { false, true }, null);
+		checkSort(new String[] { "number", "boolean", "date" }, new boolean[] { true, false, true }, null);
+		checkSort(new String[] { "date", "int" }, new boolean[] { false, false }, null);
+	}
+
+	public void testLongKey() {
+		checkSort(new String[] { "boolean", "long", "int", "number" }, new boolean[] { true, false, true, false }, null);
+	}
+
+	public void testDecimalKey() {
+		checkSort(new String[] { "decimal", "int" }, new boolean[] { true, true }, null);
+		checkSort(new String[] { "boolean", "decimal" }, new boolean[] { true, false }, null);
+	}
+
+	public void testStringKey() {
+		checkSort(new String[] { "string" }, new boolean[] { true }, null);
+		checkSort(new String[] { "string", "int" }, new boolean[] { false, true }, null);
+		checkSort(new String[] { "int", "string", "long" }, new boolean[] { true, true, false }, null);
+		checkSort(new String[] { "boolean", "date", "string" }, new boolean[] { true, true, false }, null);
+	}
+
+	public void testCollatedStringKey() {
+		RuleBasedCollator collator = (RuleBasedCollator) Collator.getInstance(new Locale("cs", "CZ"));
+		checkSort(new String[] { "string", "int" }, new boolean[] { true, true }, collator);
+		checkSort(new String[] { "boolean", "string" }, new boolean[] { true, false }, collator);
+		collator.setStrength(Collator.SECONDARY);
+		checkSort(new String[] { "string", "int" }, new boolean[] { true, false }, collator);
+	}
+
+	public void testInternalSortDataRecord() {
+		checkInternalSort();
+	}
+
+	/**
+	 * Locale and collator sensitivity of the key field are taken from metadata.
+	 */
+	public void testInternalSortDataRecordWithLocale() {
+		metadata.getField("string").setLocaleStr("cs.CZ");
+		checkInternalSort();
+		metadata.getField("string").setCollatorSensitivity(CollatorSensitivityType.BASE_LETTER.getCollatorSensitivityName());
+		checkInternalSort();
+		metadata.getField("string").setCollatorSensitivity(null);
+		metadata.getField("string").setLocaleStr(null);
+		metadata.setLocaleStr("en.US");
+		checkInternalSort();
+	}
+
+	private void checkInternalSort() {
+		InternalSortDataRecord sorter = new InternalSortDataRecord(metadata, new String[] { "string", "int" }, new boolean[] { true, false }, false, NUM_RECORDS);
+		sorter.setUseNormalizedKeys(true);
+		InternalSortDataRecord referenceSorter = new InternalSortDataRecord(metadata, new String[] { "string", "int" }, new boolean[] { true, false }, false, NUM_RECORDS);
+		referenceSorter.setUseNormalizedKeys(false);
+		for (DataRecord record : createRecords(42)) {
+			assertTrue(sorter.put(record));
+			assertTrue(referenceSorter.put(record));
+		}
+		sorter.sort();
+		referenceSorter.sort();
+		DataRecord record;
+		while ((record = referenceSorter.get()) != null) {
+			assertEquals(record.getField("order").getValue(), sorter.get().getField("order").getValue());
+		}
+		assertNull(sorter.get());
+	}
+
+}
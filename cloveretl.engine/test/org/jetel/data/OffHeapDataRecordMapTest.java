@@ -0,0 +1,127 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.data;
+
+import java.util.Iterator;
+
+import org.jetel.data.DataRecordMap.DataRecordIterator;
+import org.jetel.data.DataRecordMap.DataRecordLookup;
+
+/**
+ * Runs all {@link DataRecordMapTest} tests against {@link OffHeapDataRecordMap}.
+ */
+public class OffHeapDataRecordMapTest extends DataRecordMapTest {
+
+	private static final int NUM_KEYS = 20000;
+
+	@Override
+	protected DataRecordMap createMap(boolean duplicate, boolean overwrite) {
+		return new OffHeapDataRecordMap(getMapKey(), duplicate, overwrite);
+	}
+
+	public void testManyRecords() {
+		DataRecordMap map = createMap(true, true);
+		DataRecord record = createRecord(null, true, 0, null);
+		int expectedSize = 0;
+		for (int i = 0; i < NUM_KEYS; i++) {
+			record.getField("key1").setValue("key" + i);
+			record.getField("key2").setValue(i % 3 == 0);
+			// the record is serialized by the map, so it can be reused
+			for (int j = 0; j <= i % 3; j++) {
+				record.getField("data1").setValue(j);
+				record.getField("data2").setValue("data" + i);
+				map.put(record);
+				expectedSize++;
+			}
+		}
+		assertEquals(expectedSize, map.size());
+
+		DataRecord keyRecord = createKeyRecord(null, true);
+		DataRecordLookup lookup = map.createDataRecordLookup(getMapKey(), keyRecord);
+		for (int i = 0; i < NUM_KEYS; i++) {
+			keyRecord.getField("key1").setValue("key" + i);
+			keyRecord.getField("key2").setValue(i % 3 == 0);
+			DataRecordIterator iterator = lookup.getAll();
+			assertNotNull(iterator);
+			assertEquals(i % 3 + 1, iterator.size());
+			for (int j = 0; j <= i % 3; j++) {
+				DataRecord found = iterator.next();
+				assertEquals(j, found.getField("data1").getValue());
+				assertEquals("data" + i, found.getField("data2").getValue().toString());
+			}
+			assertFalse(iterator.hasNext());
+
+			keyRecord.getField("key2").setValue(i % 3 != 0);
+			assertNull(lookup.get());
+		}
+	}
+
+	public void testOrphanedIterator() {
+		DataRecordMap map = createMap(true, true);
+		for (int i = 0; i < 100; i++) {
+			map.put(createRecord("key" + i, true, i, "data"));
+			map.put(createRecord("key" + i, true, -i, "data"));
+		}
+		DataRecord keyRecord = createKeyRecord(null, true);
+		DataRecordLookup lookup = map.createDataRecordLookup(getMapKey(), keyRecord);
+		for (int i = 0; i < 100; i += 2) {
+			keyRecord.getField("key1").setValue("key" + i);
+			if (i % 4 == 0) {
+				assertNotNull(lookup.getAndMark());
+			} else {
+				assertNotNull(lookup.getAllAndMark());
+			}
+		}
+		Iterator<DataRecord> orphaned = map.getOrphanedIterator();
+		int count = 0;
+		while (orphaned.hasNext()) {
+			DataRecord record = orphaned.next();
+			assertTrue(Math.abs((Integer) record.getField("data1").getValue()) % 2 == 1);
+			count++;
+		}
+		assertEquals(100, count);
+	}
+
+	public void testRemoveAndPut() {
+		DataRecordMap map = createMap(false, true);
+		for (int round = 0; round < 5; round++) {
+			for (int i = 0; i < 1000; i++) {
+				map.put(createRecord("key" + i, false, round, "data"));
+			}
+			assertEquals(1000, map.size());
+			for (int i = 0; i < 1000; i += 2) {
+				assertTrue(map.remove(createRecord("key" + i, false, -1, null)));
+			}
+			assertEquals(500, map.size());
+			for (int i = 0; i < 1000; i++) {
+				DataRecord found = map.get(getMapKey(), createKeyRecord("key" + i, false));
+				if (i % 2 == 0) {
+					assertNull(found);
+				} else {
+					assertEquals(round, found.getField("data1").getValue());
+				}
+			}
+		}
+		map.clear();
+		assertEquals(0, map.size());
+		map.put(createRecord("key", false, 1, "data"));
+		assertEquals(1, map.get(getMapKey(), createKeyRecord("key", false)).getField("data1").getValue());
+	}
+
+}
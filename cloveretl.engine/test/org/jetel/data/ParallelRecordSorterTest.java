@@ -0,0 +1,108 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.data;
+
+import java.util.Random;
+
+import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.metadata.DataFieldType;
+import org.jetel.metadata.DataRecordMetadata;
+import org.jetel.test.CloverTestCase;
+
+public class ParallelRecordSorterTest extends CloverTestCase {
+
+	private static final int NUM_RECORDS = 50000;
+
+	private static final String[] KEYS = { "string", "int" };
+
+	private static final boolean[] ORDERINGS = { true, false };
+
+	private DataRecordMetadata metadata;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		metadata = new DataRecordMetadata("record");
+		metadata.addField(new DataFieldMetadata("int", DataFieldType.INTEGER, ";"));
+		metadata.addField(new DataFieldMetadata("string", DataFieldType.STRING, ";"));
+		metadata.addField(new DataFieldMetadata("order", DataFieldType.INTEGER, "\n"));
+	}
+
+	private DataRecord[] createRecords(int count) {
+		Random random = new Random(count);
+		DataRecord[] records = new DataRecord[count];
+		for (int i = 0; i < count; i++) {
+			DataRecord record = DataRecordFactory.newRecord(metadata);
+			record.getField("int").setValue(random.nextInt(20));
+			if (random.nextInt(10) == 0) {
+				record.getField("string").setNull(true);
+			} else {
+				record.getField("string").setValue(Character.toString((char) ('a' + random.nextInt(26))) + random.nextInt(50));
+			}
+			record.getField("order").setValue(i);
+			records[i] = record;
+		}
+		return records;
+	}
+
+	private void checkSort(int numRecords, int sortThreads, boolean useNormalizedKeys, String locale) {
+		metadata.getField("string").setLocaleStr(locale);
+		// small initial capacity, so that records are stored in several collections
+		InternalSortDataRecord sorter = new InternalSortDataRecord(metadata, KEYS, ORDERINGS, true, 1000);
+		sorter.setUseNormalizedKeys(useNormalizedKeys);
+		sorter.setSortThreads(sortThreads);
+		InternalSortDataRecord referenceSorter = new InternalSortDataRecord(metadata, KEYS, ORDERINGS, true, 1000);
+		referenceSorter.setUseNormalizedKeys(false);
+		for (DataRecord record : createRecords(numRecords)) {
+			assertTrue(sorter.put(record));
+			assertTrue(referenceSorter.put(record));
+		}
+		sorter.sort();
+		referenceSorter.sort();
+		DataRecord record;
+		int count = 0;
+		while ((record = referenceSorter.get()) != null) {
+			DataRecord sorted = sorter.get();
+			assertNotNull(sorted);
+			assertEquals("Different record at position " + count, record.getField("order").getValue(), sorted.getField("order").getValue());
+			count++;
+		}
+		assertNull(sorter.get());
+		assertEquals(numRecords, count);
+		sorter.free();
+		referenceSorter.free();
+	}
+
+	public void testParallelSort() {
+		checkSort(NUM_RECORDS, 4, false, null);
+		checkSort(NUM_RECORDS, 3, true, null);
+	}
+
+	public void testCollatedParallelSort() {
+		checkSort(NUM_RECORDS, 4, true, "cs.CZ");
+		checkSort(NUM_RECORDS, 2, false, "cs.CZ");
+	}
+
+	public void testSmallInput() {
+		checkSort(0, 4, true, null);
+		checkSort(10, 4, true, null);
+		checkSort(9000, 8, false, null);
+	}
+
+}
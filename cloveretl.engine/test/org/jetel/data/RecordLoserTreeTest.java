@@ -0,0 +1,109 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.data;
+
+import java.util.Arrays;
+
+import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.metadata.DataFieldType;
+import org.jetel.metadata.DataRecordMetadata;
+import org.jetel.test.CloverTestCase;
+
+public class RecordLoserTreeTest extends CloverTestCase {
+
+	private DataRecordMetadata metadata;
+	private RecordOrderedKey key;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		metadata = new DataRecordMetadata("record");
+		metadata.addField(new DataFieldMetadata("value", DataFieldType.INTEGER, ";"));
+		key = new RecordOrderedKey(new String[] { "value" }, new boolean[] { true }, metadata);
+		key.init();
+	}
+
+	/**
+	 * Merges given sorted sequences and returns the merged values.
+	 */
+	private int[] merge(int[][] sources, int[] sourceOfValue) {
+		DataRecord[] records = new DataRecord[sources.length];
+		boolean[] valid = new boolean[sources.length];
+		int[] positions = new int[sources.length];
+		int total = 0;
+		for (int i = 0; i < sources.length; i++) {
+			records[i] = DataRecordFactory.newRecord(metadata);
+			valid[i] = sources[i].length > 0;
+			if (valid[i]) {
+				records[i].getField(0).setValue(sources[i][0]);
+			}
+			total += sources[i].length;
+		}
+		RecordLoserTree tree = new RecordLoserTree(key, records, valid);
+		int[] result = new int[total];
+		int count = 0;
+		for (int index = tree.init(); index != -1; index = tree.next()) {
+			result[count] = (Integer) records[index].getField(0).getValue();
+			if (sourceOfValue != null) {
+				sourceOfValue[count] = index;
+			}
+			count++;
+			positions[index]++;
+			valid[index] = positions[index] < sources[index].length;
+			if (valid[index]) {
+				records[index].getField(0).setValue(sources[index][positions[index]]);
+			}
+		}
+		assertEquals(total, count);
+		return result;
+	}
+
+	public void testSingleSource() {
+		assertTrue(Arrays.equals(new int[] { 1, 2, 3 }, merge(new int[][] { { 1, 2, 3 } }, null)));
+		assertTrue(Arrays.equals(new int[0], merge(new int[][] { {} }, null)));
+	}
+
+	public void testMerge() {
+		int[][] sources = new int[][] { { 1, 4, 7 }, {}, { 2, 5, 8, 9 }, { 0, 3, 6 }, { 10 } };
+		assertTrue(Arrays.equals(new int[] { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 }, merge(sources, null)));
+	}
+
+	public void testStability() {
+		int[][] sources = new int[][] { { 1, 1 }, { 0, 1 }, { 1 } };
+		int[] sourceOfValue = new int[5];
+		assertTrue(Arrays.equals(new int[] { 0, 1, 1, 1, 1 }, merge(sources, sourceOfValue)));
+		assertTrue(Arrays.equals(new int[] { 1, 0, 0, 1, 2 }, sourceOfValue));
+	}
+
+	public void testManySources() {
+		int numSources = 37;
+		int[][] sources = new int[numSources][];
+		for (int i = 0; i < numSources; i++) {
+			sources[i] = new int[i % 5];
+			for (int j = 0; j < sources[i].length; j++) {
+				sources[i][j] = j * numSources + (numSources - i);
+			}
+		}
+		int[] result = merge(sources, null);
+		for (int i = 1; i < result.length; i++) {
+			assertTrue(result[i - 1] <= result[i]);
+		}
+	}
+
+}
@@ -0,0 +1,99 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.data.formatter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+
+import org.jetel.data.DataRecord;
+import org.jetel.data.DataRecordFactory;
+import org.jetel.data.Defaults;
+import org.jetel.data.parser.XLSXDataParser;
+import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.metadata.DataFieldType;
+import org.jetel.metadata.DataRecordMetadata;
+import org.jetel.test.CloverTestCase;
+
+public class XLSXDataFormatterTest extends CloverTestCase {
+
+	private static final int RECORD_COUNT = 1007;
+
+	private DataRecordMetadata metadata;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		metadata = new DataRecordMetadata("metadata", DataRecordMetadata.DELIMITED_RECORD);
+		metadata.addField(new DataFieldMetadata("name", DataFieldType.STRING, ";"));
+		metadata.addField(new DataFieldMetadata("value", DataFieldType.INTEGER, ";"));
+	}
+
+	private byte[] write(boolean streaming) throws Exception {
+		XLSXDataFormatter formatter = new XLSXDataFormatter(false, false);
+		formatter.setStreaming(streaming);
+		formatter.setNamesRow(0);
+		formatter.init(metadata);
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		formatter.setDataTarget(Channels.newChannel(os));
+		formatter.prepareSheet();
+		formatter.writeHeader();
+
+		DataRecord record = DataRecordFactory.newRecord(metadata);
+		record.init();
+		for (int i = 0; i < RECORD_COUNT; i++) {
+			record.getField(0).setValue("name" + i);
+			record.getField(1).setValue(i);
+			formatter.write(record);
+		}
+
+		formatter.writeFooter();
+		formatter.close();
+		return os.toByteArray();
+	}
+
+	private void check(byte[] bytes) throws Exception {
+		XLSXDataParser parser = new XLSXDataParser(metadata);
+		parser.setSheetNumber("0");
+		parser.setFirstRow(1);
+		parser.init();
+		parser.setDataSource(new ByteArrayInputStream(bytes));
+
+		DataRecord record = DataRecordFactory.newRecord(metadata);
+		record.init();
+		for (int i = 0; i < RECORD_COUNT; i++) {
+			assertNotNull(parser.getNext(record));
+			assertEquals("name" + i, record.getField(0).getValue().toString());
+			assertEquals(Integer.valueOf(i), record.getField(1).getValue());
+		}
+		assertNull(parser.getNext(record));
+		parser.close();
+	}
+
+	public void testWrite() throws Exception {
+		check(write(false));
+	}
+
+	public void testStreamingWrite() throws Exception {
+		assertTrue(RECORD_COUNT > Defaults.DataFormatter.XLSX_STREAMING_ROW_WINDOW);
+		check(write(true));
+	}
+
+}
@@ -0,0 +1,170 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.data.lookup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jetel.exception.ComponentNotReadyException;
+import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.metadata.DataRecordMetadata;
+import org.jetel.test.CloverTestCase;
+
+public class SharedLookupTableRegistryTest extends CloverTestCase {
+
+	private final SharedLookupTableRegistry registry = SharedLookupTableRegistry.getInstance();
+
+	private DataRecordMetadata createMetadata(String secondFieldName) {
+		DataRecordMetadata metadata = new DataRecordMetadata("lookup", DataRecordMetadata.DELIMITED_RECORD);
+		metadata.addField(new DataFieldMetadata("id", DataFieldMetadata.INTEGER_FIELD, ";"));
+		metadata.addField(new DataFieldMetadata(secondFieldName, DataFieldMetadata.STRING_FIELD, "\n"));
+		return metadata;
+	}
+
+	public void testKey() {
+		Object key = SharedLookupTableRegistry.createKey(createMetadata("name"), new String[] { "id" }, "file:/data.txt", 1000, "UTF-8");
+		assertEquals(key, SharedLookupTableRegistry.createKey(createMetadata("name"), new String[] { "id" }, "file:/data.txt", 1000, "UTF-8"));
+		assertFalse(key.equals(SharedLookupTableRegistry.createKey(createMetadata("label"), new String[] { "id" }, "file:/data.txt", 1000, "UTF-8")));
+		assertFalse(key.equals(SharedLookupTableRegistry.createKey(createMetadata("name"), new String[] { "name" }, "file:/data.txt", 1000, "UTF-8")));
+		assertFalse(key.equals(SharedLookupTableRegistry.createKey(createMetadata("name"), new String[] { "id" }, "file:/data.txt", 1001, "UTF-8")));
+		assertFalse(key.equals(SharedLookupTableRegistry.createKey(createMetadata("name"), new String[] { "id" }, "file:/data.txt", 1000, "UTF-16")));
+	}
+
+	public void testMetadataSignature() {
+		String signature = SharedLookupTableRegistry.getMetadataSignature(createMetadata("name"));
+		assertEquals(signature, SharedLookupTableRegistry.getMetadataSignature(createMetadata("name")));
+
+		DataRecordMetadata metadata = createMetadata("name");
+		metadata.setQuotedStrings(true);
+		assertFalse(signature.equals(SharedLookupTableRegistry.getMetadataSignature(metadata)));
+		metadata.setQuoteChar('\'');
+		assertFalse(SharedLookupTableRegistry.getMetadataSignature(metadata).equals(signature));
+
+		metadata = createMetadata("name");
+		metadata.getField("name").setTrim(true);
+		assertFalse(signature.equals(SharedLookupTableRegistry.getMetadataSignature(metadata)));
+
+		metadata = createMetadata("name");
+		metadata.getField("name").setDefaultValueStr("unknown");
+		assertFalse(signature.equals(SharedLookupTableRegistry.getMetadataSignature(metadata)));
+
+		metadata = createMetadata("name");
+		metadata.getField("name").setNullable(!metadata.getField("name").isNullable());
+		assertFalse(signature.equals(SharedLookupTableRegistry.getMetadataSignature(metadata)));
+
+		metadata = createMetadata("name");
+		metadata.setEofAsDelimiter(!metadata.isEofAsDelimiter());
+		assertFalse(signature.equals(SharedLookupTableRegistry.getMetadataSignature(metadata)));
+	}
+
+	public void testReferenceCounting() throws ComponentNotReadyException {
+		final AtomicInteger loads = new AtomicInteger();
+		SharedLookupTableRegistry.Loader<List<String>> loader = new SharedLookupTableRegistry.Loader<List<String>>() {
+			@Override
+			public List<String> load() {
+				loads.incrementAndGet();
+				return new ArrayList<String>();
+			}
+		};
+		Object key = "testReferenceCounting";
+		List<String> content1 = registry.acquire(key, loader);
+		List<String> content2 = registry.acquire(key, loader);
+		assertSame(content1, content2);
+		assertEquals(1, loads.get());
+		assertEquals(2, registry.getReferenceCount(key));
+
+		registry.release(key);
+		assertEquals(1, registry.getReferenceCount(key));
+		registry.release(key);
+		assertEquals(0, registry.getReferenceCount(key));
+
+		// released content is loaded again
+		assertNotSame(content1, registry.acquire(key, loader));
+		assertEquals(2, loads.get());
+		registry.release(key);
+		try {
+			registry.release(key);
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	public void testFailedLoad() {
+		Object key = "testFailedLoad";
+		try {
+			registry.acquire(key, new SharedLookupTableRegistry.Loader<Object>() {
+				@Override
+				public Object load() throws ComponentNotReadyException {
+					throw new ComponentNotReadyException("failed");
+				}
+			});
+			fail();
+		} catch (ComponentNotReadyException e) {
+			// expected
+		}
+		assertEquals(0, registry.getReferenceCount(key));
+	}
+
+	public void testConcurrentAcquire() throws Exception {
+		final Object key = "testConcurrentAcquire";
+		final AtomicInteger loads = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Object>> futures = new ArrayList<Future<Object>>();
+			for (int i = 0; i < 16; i++) {
+				futures.add(executor.submit(new Callable<Object>() {
+					@Override
+					public Object call() throws Exception {
+						return registry.acquire(key, new SharedLookupTableRegistry.Loader<Object>() {
+							@Override
+							public Object load() throws ComponentNotReadyException {
+								loads.incrementAndGet();
+								try {
+									Thread.sleep(50);
+								} catch (InterruptedException e) {
+									throw new ComponentNotReadyException(e);
+								}
+								return new Object();
+							}
+						});
+					}
+				}));
+			}
+			Object content = futures.get(0).get();
+			for (Future<Object> future : futures) {
+				assertSame(content, future.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(1, loads.get());
+		assertEquals(16, registry.getReferenceCount(key));
+		for (int i = 0; i < 16; i++) {
+			registry.release(key);
+		}
+		assertEquals(0, registry.getReferenceCount(key));
+	}
+
+}
@@ -0,0 +1,211 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.data.parser;
+
+import java.io.ByteArrayInputStream;
+
+import org.jetel.data.DataRecord;
+import org.jetel.data.DataRecordFactory;
+import org.jetel.data.Defaults;
+import org.jetel.exception.BadDataFormatException;
+import org.jetel.exception.PolicyType;
+import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.metadata.DataFieldType;
+import org.jetel.metadata.DataRecordMetadata;
+import org.jetel.util.file.FileUtils;
+
+public class ByteDelimitedDataParserTest extends AbstractParserTestCase {
+
+	private final static String TEST_FILE_UTF8 = "data/street-names.utf8.dat";
+	private final static String TEST_FILE_CP1250 = "data/street-names.cp1250.dat";
+
+	@Override
+	protected Parser createParser() throws Exception {
+		TextParserConfiguration cfg = new TextParserConfiguration();
+		DataRecordMetadata metadata = new DataRecordMetadata("metadata");
+		metadata.addField(new DataFieldMetadata("field", DataFieldType.STRING, "|"));
+		cfg.setMetadata(metadata);
+		ByteDelimitedDataParser parser = new ByteDelimitedDataParser(cfg);
+		return parser;
+	}
+
+	private DataRecordMetadata createMetadata() {
+		DataRecordMetadata metadata = new DataRecordMetadata("meta", DataRecordMetadata.DELIMITED_RECORD);
+		metadata.setRecordDelimiter("\r\n");
+		metadata.addField(new DataFieldMetadata("id", DataFieldMetadata.INTEGER_FIELD, ";"));
+		metadata.addField(new DataFieldMetadata("name", DataFieldMetadata.STRING_FIELD, ";"));
+		metadata.addField(new DataFieldMetadata("note", DataFieldMetadata.STRING_FIELD, null));
+		return metadata;
+	}
+
+	private TextParserConfiguration createConfiguration(DataRecordMetadata metadata, String charset) {
+		TextParserConfiguration cfg = new TextParserConfiguration(metadata, charset, false);
+		cfg.setQuotedStringsOverride(true);
+		cfg.setQuotedStrings(true);
+		return cfg;
+	}
+
+	private ByteDelimitedDataParser createParser(TextParserConfiguration cfg, String data) throws Exception {
+		ByteDelimitedDataParser parser = new ByteDelimitedDataParser(cfg);
+		parser.init();
+		parser.setDataSource(new ByteArrayInputStream(data.getBytes(cfg.getCharset())));
+		return parser;
+	}
+
+	public void testParserSpeed() {
+		DataRecordMetadata metadata = createMetadata();
+		assertNull(ByteDelimitedDataParser.getParserSpeed(createConfiguration(metadata, "UTF-8")));
+		assertFalse(TextParserFactory.getParser(createConfiguration(metadata, "UTF-8")) instanceof ByteDelimitedDataParser);
+
+		boolean enabled = Defaults.DataParser.BYTE_DELIMITED_PARSER;
+		Defaults.DataParser.BYTE_DELIMITED_PARSER = true;
+		try {
+			assertEquals(Integer.valueOf(90), ByteDelimitedDataParser.getParserSpeed(createConfiguration(metadata, "UTF-8")));
+			assertEquals(Integer.valueOf(90), ByteDelimitedDataParser.getParserSpeed(createConfiguration(metadata, "windows-1250")));
+			assertTrue(TextParserFactory.getParser(createConfiguration(metadata, "UTF-8")) instanceof ByteDelimitedDataParser);
+			assertNull(ByteDelimitedDataParser.getParserSpeed(createConfiguration(metadata, "UTF-16")));
+
+			TextParserConfiguration cfg = createConfiguration(metadata, "UTF-8");
+			cfg.setVerbose(true);
+			assertNull(ByteDelimitedDataParser.getParserSpeed(cfg));
+
+			metadata.setRecordDelimiter("\n\\|\r\n");
+			assertNull(ByteDelimitedDataParser.getParserSpeed(createConfiguration(metadata, "UTF-8")));
+		} finally {
+			Defaults.DataParser.BYTE_DELIMITED_PARSER = enabled;
+		}
+	}
+
+	public void testQuotedAndNonAscii() throws Exception {
+		TextParserConfiguration cfg = createConfiguration(createMetadata(), "UTF-8");
+		ByteDelimitedDataParser parser = createParser(cfg,
+				"1;plain;text\r\n2;\"with;delimiter\r\n\";\"quote \"\" inside\"\r\n3;žluťoučký kůň;'single'\r\n4;;\r\n");
+		DataRecord record = DataRecordFactory.newRecord(cfg.getMetadata());
+
+		assertNotNull(parser.getNext(record));
+		assertEquals(1, record.getField(0).getValue());
+		assertEquals("plain", record.getField(1).toString());
+		assertEquals("text", record.getField(2).toString());
+
+		assertNotNull(parser.getNext(record));
+		assertEquals("with;delimiter\r\n", record.getField(1).toString());
+		assertEquals("quote \" inside", record.getField(2).toString());
+
+		assertNotNull(parser.getNext(record));
+		assertEquals("žluťoučký kůň", record.getField(1).toString());
+		assertEquals("single", record.getField(2).toString());
+
+		assertNotNull(parser.getNext(record));
+		assertTrue(record.getField(1).isNull());
+		assertTrue(record.getField(2).isNull());
+
+		assertNull(parser.getNext(record));
+		parser.close();
+	}
+
+	public void testSkipAndPosition() throws Exception {
+		TextParserConfiguration cfg = createConfiguration(createMetadata(), "UTF-8");
+		String data = "1;a;b\r\n2;\"c\r\n\";d\r\n3;e;f\r\n";
+		ByteDelimitedDataParser parser = createParser(cfg, data);
+		assertEquals(2, parser.skip(2));
+		DataRecord record = parser.getNext();
+		assertEquals(3, record.getField(0).getValue());
+		assertEquals(Long.valueOf(data.length()), parser.getPosition());
+
+		parser = createParser(cfg, data);
+		parser.movePosition("7");
+		assertEquals(2, parser.getNext().getField(0).getValue());
+		parser.close();
+	}
+
+	public void testErrors() throws Exception {
+		TextParserConfiguration cfg = createConfiguration(createMetadata(), "UTF-8");
+		cfg.setPolicyType(PolicyType.CONTROLLED);
+		ByteDelimitedDataParser parser = createParser(cfg, "1;a;b\r\nx;c;d\r\n2;short\r\n3;\"bad\"quote;e\r\n4;f;g\r\n");
+		int[] expectedIds = { 1, 4 };
+		int[] expectedErrors = { 2, 3, 4 };
+		int records = 0;
+		int errors = 0;
+		while (true) {
+			try {
+				DataRecord record = parser.getNext();
+				if (record == null) {
+					break;
+				}
+				assertEquals(expectedIds[records++], record.getField(0).getValue());
+			} catch (BadDataFormatException e) {
+				assertEquals(expectedErrors[errors++], e.getRecordNumber());
+			}
+		}
+		assertEquals(2, records);
+		assertEquals(3, errors);
+		parser.close();
+	}
+
+	public void testSameAsDataParser() throws Exception {
+		StringBuilder data = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			data.append(i).append(";name").append(i % 7 == 0 ? "ě" : "").append(';');
+			if (i % 3 == 0) {
+				data.append("\"note\r\n").append(i).append("\"\"\"");
+			} else {
+				data.append("note").append(i);
+			}
+			data.append("\r\n");
+		}
+		TextParserConfiguration cfg = createConfiguration(createMetadata(), "UTF-8");
+		compare(new DataParser(cfg), new ByteArrayInputStream(data.toString().getBytes("UTF-8")),
+				createParser(cfg, data.toString()), 5000);
+	}
+
+	public void testStreetNames() throws Exception {
+		DataRecordMetadata metadata = new DataRecordMetadata("meta", DataRecordMetadata.DELIMITED_RECORD);
+		metadata.setFieldDelimiter("\n");
+		metadata.setRecordDelimiter("\n");
+		metadata.addField(new DataFieldMetadata("Field1", DataFieldMetadata.STRING_FIELD, null));
+		for (String[] test : new String[][] { { TEST_FILE_UTF8, "UTF-8" }, { TEST_FILE_CP1250, "windows-1250" } }) {
+			TextParserConfiguration cfg = new TextParserConfiguration(metadata, test[1]);
+			cfg.setTrim(true);
+			ByteDelimitedDataParser parser = new ByteDelimitedDataParser(cfg);
+			parser.init();
+			parser.setDataSource(FileUtils.getInputStream(null, test[0]));
+			compare(new DataParser(cfg), FileUtils.getInputStream(null, test[0]), parser, -1);
+		}
+	}
+
+	private void compare(DataParser expectedParser, Object expectedSource, ByteDelimitedDataParser parser, int expectedCount) throws Exception {
+		expectedParser.init();
+		expectedParser.setDataSource(expectedSource);
+		DataRecord expected = DataRecordFactory.newRecord(parser.cfg.getMetadata());
+		DataRecord record = DataRecordFactory.newRecord(parser.cfg.getMetadata());
+		int count = 0;
+		while (expectedParser.getNext(expected) != null) {
+			assertNotNull(parser.getNext(record));
+			assertEquals(expected.toString(), record.toString());
+			count++;
+		}
+		assertNull(parser.getNext(record));
+		if (expectedCount >= 0) {
+			assertEquals(expectedCount, count);
+		}
+		expectedParser.close();
+		parser.close();
+	}
+
+}
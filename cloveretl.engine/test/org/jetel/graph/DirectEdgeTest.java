@@ -29,6 +29,7 @@ import java.util.concurrent.Future;
 import org.jetel.data.DataRecord;
 import org.jetel.data.DataRecordFactory;
 import org.jetel.data.IntegerDataField;
+import org.jetel.data.RecordBatch;
 import org.jetel.exception.ComponentNotReadyException;
 import org.jetel.metadata.DataFieldMetadata;
 import org.jetel.metadata.DataFieldType;
@@ -91,6 +92,70 @@ public class DirectEdgeTest extends CloverTestCase {
 		}
 	}
 	
+	public void testRecordBatch() throws InterruptedException, ExecutionException, IOException {
+		final DirectEdge edge = new DirectEdge(null);
+		edge.init();
+		final int batchSize = 100;
+		final int numRecords = 1000 * batchSize;
+
+		ExecutorService executorService = Executors.newCachedThreadPool();
+
+		Callable<Void> writer = new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				DataRecord record = DataRecordFactory.newRecord(getMetadata());
+				RecordBatch batch = new RecordBatch(batchSize);
+				int[] odd = new int[batchSize / 2];
+				for (int i = 0; i < odd.length; i++) {
+					odd[i] = 2 * i + 1;
+				}
+				for (int i = 0; i < numRecords; i++) {
+					record.getField(0).setValue(i);
+					batch.add(record);
+					if (batch.isFull()) {
+						// odd records are written as selection of the batch, even ones one by one
+						batch.select(odd, odd.length);
+						edge.writeRecordBatch(batch);
+						for (int j = 0; j < batch.size(); j += 2) {
+							edge.writeRecordDirect(batch.getRecord(j).slice());
+						}
+						batch.clear();
+					}
+				}
+				edge.eof();
+				return null;
+			}
+		};
+
+		Callable<Void> reader = new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				DataRecord record = DataRecordFactory.newRecord(getMetadata());
+				RecordBatch batch = new RecordBatch(64);
+				int count = 0;
+				while (edge.readRecordBatch(batch) > 0) {
+					for (int j = 0; j < batch.size(); j++, count++) {
+						batch.deserialize(j, record);
+						int index = count % batchSize;
+						int expected = count - index + (index < batchSize / 2 ? 2 * index + 1 : 2 * (index - batchSize / 2));
+						assertEquals("invalid record detected", Integer.valueOf(expected), ((IntegerDataField) record.getField(0)).getValue());
+					}
+				}
+				assertEquals(numRecords, count);
+				assertTrue(edge.isEOF());
+				return null;
+			}
+		};
+
+		Future<Void> writerJob = executorService.submit(writer);
+		Future<Void> readerJob = executorService.submit(reader);
+		writerJob.get();
+		readerJob.get();
+		assertEquals(numRecords, edge.getOutputRecordCounter());
+		assertEquals(numRecords, edge.getInputRecordCounter());
+		assertEquals(0, edge.getBufferedRecords());
+	}
+
 	private synchronized static DataRecordMetadata getMetadata() throws ComponentNotReadyException {
 		if (metadata == null) {
 			metadata = new DataRecordMetadata("simpleMetadata");
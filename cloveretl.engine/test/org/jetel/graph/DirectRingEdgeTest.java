@@ -0,0 +1,186 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.graph;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jetel.data.DataRecord;
+import org.jetel.data.DataRecordFactory;
+import org.jetel.data.Defaults;
+import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.metadata.DataFieldType;
+import org.jetel.metadata.DataRecordMetadata;
+import org.jetel.test.CloverTestCase;
+import org.jetel.util.DataGenerator;
+import org.jetel.util.bytes.CloverBuffer;
+import org.jetel.util.string.CloverString;
+
+public class DirectRingEdgeTest extends CloverTestCase {
+
+	private static final int NUM_REC = 100000;
+
+	private static DataRecord createRecord() {
+		DataRecordMetadata metadata = new DataRecordMetadata("name");
+		metadata.addField(new DataFieldMetadata("field1", DataFieldType.INTEGER, ""));
+		metadata.addField(new DataFieldMetadata("field2", DataFieldType.STRING, ""));
+		metadata.addField(new DataFieldMetadata("field3", DataFieldType.STRING, ""));
+
+		return DataRecordFactory.newRecord(metadata);
+	}
+
+	private static void populateRecord(DataRecord record, DataGenerator randomGenerator, int index) {
+		record.getField(0).setValue(index);
+		record.getField(1).setValue(randomGenerator.nextString(0, 100));
+		//from time to time a record bigger than the ring is written
+		record.getField(2).setValue(index % 10000 == 0 ? randomGenerator.nextString(Defaults.Graph.DIRECT_RING_EDGE_BUFFER_SIZE, Defaults.Graph.DIRECT_RING_EDGE_BUFFER_SIZE) : null);
+	}
+
+	private static void checkRecord(DataRecord record, DataGenerator randomGenerator, int index) {
+		assertEquals(Integer.valueOf(index), record.getField(0).getValue());
+		assertEquals(randomGenerator.nextString(0, 100), ((CloverString) record.getField(1).getValue()).toString());
+		if (index % 10000 == 0) {
+			assertEquals(randomGenerator.nextString(Defaults.Graph.DIRECT_RING_EDGE_BUFFER_SIZE, Defaults.Graph.DIRECT_RING_EDGE_BUFFER_SIZE), ((CloverString) record.getField(2).getValue()).toString());
+		} else {
+			assertTrue(record.getField(2).isNull());
+		}
+	}
+
+	public void testSync() throws IOException, InterruptedException {
+		DirectRingEdge edge = new DirectRingEdge(null);
+		edge.init();
+		edge.preExecute();
+
+		assertFalse(edge.hasData());
+		assertFalse(edge.isEOF());
+
+		DataRecord record = createRecord();
+		CloverBuffer cloverBuffer = CloverBuffer.allocateDirect(Defaults.Record.RECORD_INITIAL_SIZE, Defaults.Record.RECORD_LIMIT_SIZE);
+		for (int i = 0; i < 10; i++) {
+			record.getField(0).setValue(i);
+			if (i % 2 == 0) {
+				edge.writeRecord(record);
+			} else {
+				cloverBuffer.clear();
+				record.serialize(cloverBuffer);
+				cloverBuffer.flip();
+				edge.writeRecordDirect(cloverBuffer);
+			}
+		}
+		edge.eof();
+
+		assertTrue(edge.hasData());
+		assertEquals(10, edge.getBufferedRecords());
+		for (int i = 0; i < 10; i++) {
+			if (i % 2 == 0) {
+				cloverBuffer.clear();
+				assertTrue(edge.readRecordDirect(cloverBuffer));
+				record.deserialize(cloverBuffer);
+			} else {
+				assertNotNull(edge.readRecord(record));
+			}
+			assertEquals(Integer.valueOf(i), record.getField(0).getValue());
+		}
+		assertFalse(edge.isEOF());
+		assertNull(edge.readRecord(record));
+		assertTrue(edge.isEOF());
+		assertEquals(0, edge.getBufferedRecords());
+		assertEquals(10, edge.getInputRecordCounter());
+		assertEquals(10, edge.getOutputRecordCounter());
+	}
+
+	public void testReadRecordView() throws IOException, InterruptedException {
+		DirectRingEdge edge = new DirectRingEdge(null);
+		edge.init();
+		edge.preExecute();
+
+		DataRecord record = createRecord();
+		for (int i = 0; i < 3; i++) {
+			record.getField(0).setValue(i);
+			edge.writeRecord(record);
+		}
+		edge.eof();
+
+		for (int i = 0; i < 3; i++) {
+			assertTrue(edge.hasData());
+			CloverBuffer recordView = edge.readRecordView();
+			assertEquals(0, recordView.position());
+			assertTrue(recordView.isReadOnly());
+			record.deserialize(recordView);
+			assertEquals(Integer.valueOf(i), record.getField(0).getValue());
+			assertFalse(recordView.hasRemaining());
+		}
+		assertTrue(edge.hasData()); //EOF mark is still in the ring
+		assertNull(edge.readRecordView());
+		assertTrue(edge.isEOF());
+		assertFalse(edge.hasData());
+	}
+
+	public void testAsync() throws IOException, InterruptedException, ExecutionException {
+		final DirectRingEdge edge = new DirectRingEdge(null);
+		edge.init();
+		edge.preExecute();
+
+		final long seed = new DataGenerator().nextLong();
+
+		ExecutorService executorService = Executors.newFixedThreadPool(2);
+		try {
+			Future<Void> writer = executorService.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					DataGenerator randomGenerator = new DataGenerator(seed);
+					DataRecord record = createRecord();
+					for (int i = 0; i < NUM_REC; i++) {
+						populateRecord(record, randomGenerator, i);
+						edge.writeRecord(record);
+					}
+					edge.eof();
+					return null;
+				}
+			});
+			Future<Void> reader = executorService.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					DataGenerator randomGenerator = new DataGenerator(seed);
+					DataRecord record = createRecord();
+					int index = 0;
+					while (edge.readRecord(record) != null) {
+						checkRecord(record, randomGenerator, index++);
+					}
+					assertEquals(NUM_REC, index);
+					return null;
+				}
+			});
+			writer.get();
+			reader.get();
+		} finally {
+			executorService.shutdownNow();
+		}
+
+		assertTrue(edge.isEOF());
+		edge.waitForEOF();
+		assertEquals(NUM_REC, edge.getInputRecordCounter());
+		assertEquals(NUM_REC, edge.getOutputRecordCounter());
+	}
+
+}
@@ -0,0 +1,192 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jetel.data.DataRecord;
+import org.jetel.data.parser.TextParserConfiguration;
+import org.jetel.exception.BadDataFormatException;
+import org.jetel.exception.PolicyType;
+import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.metadata.DataRecordMetadata;
+import org.jetel.test.CloverTestCase;
+
+public class ParallelFileReaderTest extends CloverTestCase {
+
+	private File file;
+	private DataRecordMetadata metadata;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		initEngine();
+		file = File.createTempFile("parallelReader", ".txt");
+		metadata = new DataRecordMetadata("parallel", DataRecordMetadata.DELIMITED_RECORD);
+		metadata.addField(new DataFieldMetadata("id", DataFieldMetadata.INTEGER_FIELD, ";"));
+		metadata.addField(new DataFieldMetadata("name", DataFieldMetadata.STRING_FIELD, "\n"));
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+		super.tearDown();
+	}
+
+	private void write(String content) throws IOException {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write(content);
+		} finally {
+			writer.close();
+		}
+	}
+
+	private String createContent(int count, boolean quoted) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			if (quoted && i % 3 == 0) {
+				sb.append(i).append(";\"name\n;\"\"").append(i).append("\"\"\"\n");
+			} else {
+				sb.append(i).append(";nameá").append(i).append('\n');
+			}
+		}
+		return sb.toString();
+	}
+
+	private ParallelFileReader createReader(TextParserConfiguration cfg) {
+		ParallelFileReader reader = new ParallelFileReader(cfg, null, null, file, file.getName());
+		reader.setParallelism(4);
+		reader.setMinChunkSize(1000);
+		return reader;
+	}
+
+	private TextParserConfiguration createConfiguration(boolean quoted) {
+		TextParserConfiguration cfg = new TextParserConfiguration(metadata, "UTF-8");
+		cfg.setQuotedStringsOverride(true);
+		cfg.setQuotedStrings(quoted);
+		cfg.setPolicyType(PolicyType.STRICT);
+		return cfg;
+	}
+
+	private List<Integer> readIds(ParallelFileReader reader, boolean quoted) throws Exception {
+		List<Integer> ids = new ArrayList<Integer>();
+		reader.preExecute();
+		DataRecord record;
+		while ((record = reader.getNext()) != null) {
+			int id = (Integer) record.getField(0).getValue();
+			String expected = quoted && id % 3 == 0 ? "name\n;\"" + id + "\"" : "nameá" + id;
+			assertEquals(expected, record.getField(1).toString());
+			ids.add(id);
+		}
+		reader.postExecute();
+		return ids;
+	}
+
+	private static List<Integer> range(int from, int to) {
+		List<Integer> ids = new ArrayList<Integer>();
+		for (int i = from; i < to; i++) {
+			ids.add(i);
+		}
+		return ids;
+	}
+
+	public void testConfiguration() {
+		assertNull(ParallelFileReader.checkConfiguration(createConfiguration(true)));
+		assertNotNull(ParallelFileReader.checkConfiguration(new TextParserConfiguration(metadata, "UTF-16")));
+		DataRecordMetadata fixlen = new DataRecordMetadata("fixlen", DataRecordMetadata.FIXEDLEN_RECORD);
+		fixlen.addField(new DataFieldMetadata("id", DataFieldMetadata.INTEGER_FIELD, (short) 5));
+		assertNotNull(ParallelFileReader.checkConfiguration(new TextParserConfiguration(fixlen)));
+	}
+
+	public void testOrdered() throws Exception {
+		write(createContent(5000, false));
+		assertEquals(range(0, 5000), readIds(createReader(createConfiguration(false)), false));
+	}
+
+	public void testQuoted() throws Exception {
+		write(createContent(5000, true));
+		assertEquals(range(0, 5000), readIds(createReader(createConfiguration(true)), true));
+	}
+
+	public void testUnordered() throws Exception {
+		write(createContent(5000, true));
+		ParallelFileReader reader = createReader(createConfiguration(true));
+		reader.setOrdered(false);
+		List<Integer> ids = readIds(reader, true);
+		Collections.sort(ids);
+		assertEquals(range(0, 5000), ids);
+	}
+
+	public void testSkipAndLimit() throws Exception {
+		write("id;name\n" + createContent(5000, true));
+		ParallelFileReader reader = createReader(createConfiguration(true));
+		reader.setSkipSourceRows(1);
+		reader.setSkip(10);
+		reader.setNumRecords(3000);
+		assertEquals(range(10, 3010), readIds(reader, true));
+
+		reader = createReader(createConfiguration(true));
+		reader.setSkipSourceRows(1);
+		reader.setSkip(10);
+		reader.setNumSourceRecords(100);
+		assertEquals(range(10, 100), readIds(reader, true));
+
+		reader = createReader(createConfiguration(true));
+		reader.setSkipSourceRows(1);
+		reader.setSkip(6000);
+		assertEquals(range(0, 0), readIds(reader, true));
+	}
+
+	public void testErrors() throws Exception {
+		StringBuilder content = new StringBuilder(createContent(2000, false));
+		content.append("x;bad\n");
+		content.append(createContent(2000, false));
+		write(content.toString());
+
+		TextParserConfiguration cfg = createConfiguration(false);
+		cfg.setPolicyType(PolicyType.CONTROLLED);
+		ParallelFileReader reader = createReader(cfg);
+		reader.preExecute();
+		int count = 0;
+		int errors = 0;
+		while (true) {
+			try {
+				if (reader.getNext() == null) {
+					break;
+				}
+				count++;
+			} catch (BadDataFormatException e) {
+				errors++;
+				assertEquals(2001, e.getRecordNumber());
+			}
+		}
+		reader.postExecute();
+		assertEquals(4000, count);
+		assertEquals(1, errors);
+	}
+
+}
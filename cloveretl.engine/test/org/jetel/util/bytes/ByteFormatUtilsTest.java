@@ -0,0 +1,101 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.util.bytes;
+
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.jetel.test.CloverTestCase;
+
+public class ByteFormatUtilsTest extends CloverTestCase {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private CloverBuffer buffer = CloverBuffer.allocate(256);
+
+	private String written() {
+		buffer.flip();
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		buffer.clear();
+		return new String(bytes, UTF_8);
+	}
+
+	public void testPutLong() {
+		for (long value : new long[] { 0, 1, -1, 9, 10, 99, 100, 12345, -98765, Integer.MAX_VALUE, Integer.MIN_VALUE,
+				999999999999999999L, 1000000000000000000L, Long.MAX_VALUE, Long.MIN_VALUE }) {
+			ByteFormatUtils.putLong(buffer, value);
+			assertEquals(Long.toString(value), written());
+		}
+	}
+
+	public void testPutDecimal() {
+		long[] values = { 0, 1, -1, 5, 12345, -12345, 100, 1234567, Long.MAX_VALUE };
+		for (long value : values) {
+			for (int scale = 0; scale < 12; scale++) {
+				String expected = BigDecimal.valueOf(value, scale).toString();
+				if (ByteFormatUtils.putDecimal(buffer, value, scale)) {
+					assertEquals(expected, written());
+				} else {
+					assertTrue(expected, expected.contains("E"));
+					assertEquals(0, buffer.position());
+				}
+			}
+		}
+		assertFalse(ByteFormatUtils.putDecimal(buffer, 1, -2));
+	}
+
+	public void testPutDate() {
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		long[] samples = { 0, -1, 1, 86399999, 951782400000L, 1000000000123L, -631152000000L, -12212553600000L,
+				253402300799999L, 4102444800000L };
+		for (long millis : samples) {
+			String expected = format.format(new Date(millis));
+			assertTrue(ByteFormatUtils.putDate(buffer, millis, ByteFormatUtils.DATE_TIME_MILLIS));
+			assertEquals(expected, written());
+			assertTrue(ByteFormatUtils.putDate(buffer, millis, ByteFormatUtils.DATE_TIME));
+			assertEquals(expected.substring(0, 19), written());
+			assertTrue(ByteFormatUtils.putDate(buffer, millis, ByteFormatUtils.DATE));
+			assertEquals(expected.substring(0, 10), written());
+		}
+		assertFalse(ByteFormatUtils.putDate(buffer, -12212553600001L, ByteFormatUtils.DATE));
+		assertFalse(ByteFormatUtils.putDate(buffer, 253402300800000L, ByteFormatUtils.DATE));
+	}
+
+	public void testPutStrings() {
+		String text = "ascii, žluťoučký kůň, € and 😀";
+		assertTrue(ByteFormatUtils.putUtf8(buffer, text));
+		assertEquals(text, written());
+
+		buffer.put((byte) 'x');
+		assertFalse(ByteFormatUtils.putUtf8(buffer, "bad \uD83D surrogate"));
+		assertEquals(1, buffer.position());
+		buffer.clear();
+
+		assertTrue(ByteFormatUtils.putAscii(buffer, "plain"));
+		assertEquals("plain", written());
+		assertFalse(ByteFormatUtils.putAscii(buffer, "not áscii"));
+		assertEquals(0, buffer.position());
+	}
+
+}
@@ -0,0 +1,66 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.util.bytes;
+
+import java.nio.ByteBuffer;
+
+import org.jetel.test.CloverTestCase;
+
+public class ByteSearchUtilsTest extends CloverTestCase {
+
+	private static int naiveIndexOf(byte[] array, int from, int to, byte b1, byte b2) {
+		for (int i = from; i < to; i++) {
+			if (array[i] == b1 || array[i] == b2) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public void testIndexOf() {
+		byte[] array = new byte[50];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = (byte) ('a' + i % 20);
+		}
+		array[13] = (byte) 0x81; // byte above the searched one must not be reported
+		array[12] = 0x01;
+		ByteBuffer buffer = ByteSearchUtils.wrap(array);
+		for (byte b : new byte[] { 'a', 'c', 't', 0x01, (byte) 0x81, 'z' }) {
+			for (int from = 0; from < array.length; from++) {
+				for (int to = from; to <= array.length; to++) {
+					assertEquals(naiveIndexOf(array, from, to, b, b), ByteSearchUtils.indexOf(buffer, from, to, ByteSearchUtils.pattern(b)));
+					assertEquals(naiveIndexOf(array, from, to, b, (byte) 'k'),
+							ByteSearchUtils.indexOfAny(buffer, from, to, ByteSearchUtils.pattern(b), ByteSearchUtils.pattern((byte) 'k')));
+				}
+			}
+		}
+	}
+
+	public void testIsAscii() {
+		byte[] array = "plain ascii text".getBytes();
+		ByteBuffer buffer = ByteSearchUtils.wrap(array);
+		assertTrue(ByteSearchUtils.isAscii(buffer, 0, array.length));
+		array[10] = (byte) 0xC3;
+		assertFalse(ByteSearchUtils.isAscii(buffer, 0, array.length));
+		assertFalse(ByteSearchUtils.isAscii(buffer, 10, 11));
+		assertTrue(ByteSearchUtils.isAscii(buffer, 0, 10));
+		assertTrue(ByteSearchUtils.isAscii(buffer, 11, array.length));
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.util.primitive;
+
+import java.util.Random;
+
+import org.jetel.test.CloverTestCase;
+
+public class BlockedBloomFilterTest extends CloverTestCase {
+
+	private static final int NUM_VALUES = 100000;
+
+	private static long hash(long value) {
+		value ^= value >>> 33;
+		value *= 0xFF51AFD7ED558CCDL;
+		value ^= value >>> 33;
+		value *= 0xC4CEB93FE53EC1A3L;
+		value ^= value >>> 33;
+		return value;
+	}
+
+	public void testNoFalseNegatives() {
+		BlockedBloomFilter filter = new BlockedBloomFilter(NUM_VALUES);
+		Random random = new Random(0);
+		long[] values = new long[NUM_VALUES];
+		for (int i = 0; i < NUM_VALUES; i++) {
+			values[i] = hash(random.nextLong());
+			filter.add(values[i]);
+		}
+		for (long value : values) {
+			assertTrue(filter.mightContain(value));
+		}
+	}
+
+	public void testFalsePositiveRate() {
+		BlockedBloomFilter filter = new BlockedBloomFilter(NUM_VALUES);
+		for (int i = 0; i < NUM_VALUES; i++) {
+			filter.add(hash(i));
+		}
+		int falsePositives = 0;
+		for (int i = NUM_VALUES; i < 2 * NUM_VALUES; i++) {
+			if (filter.mightContain(hash(i))) {
+				falsePositives++;
+			}
+		}
+		assertTrue("false positives: " + falsePositives, falsePositives < NUM_VALUES * 3 / 100);
+	}
+
+	public void testSmallFilter() {
+		BlockedBloomFilter filter = new BlockedBloomFilter(0);
+		assertEquals(512, filter.getSize());
+		assertFalse(filter.mightContain(hash(1)));
+		filter.add(hash(1));
+		assertTrue(filter.mightContain(hash(1)));
+	}
+
+}
@@ -0,0 +1,89 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.util.primitive;
+
+import org.jetel.test.CloverTestCase;
+
+public class WTinyLfuCacheTest extends CloverTestCase {
+
+	public void testGetAndPut() {
+		WTinyLfuCache<String, Integer> cache = new WTinyLfuCache<String, Integer>(10);
+		assertNull(cache.get("a"));
+		cache.put("a", 1);
+		cache.put("b", 2);
+		assertEquals(Integer.valueOf(1), cache.get("a"));
+		assertEquals(Integer.valueOf(2), cache.get("b"));
+		cache.put("a", 3);
+		assertEquals(Integer.valueOf(3), cache.get("a"));
+		assertEquals(2, cache.size());
+		assertTrue(cache.remove("a"));
+		assertFalse(cache.remove("a"));
+		assertNull(cache.get("a"));
+		assertEquals(3, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertNull(cache.get("b"));
+	}
+
+	public void testMaxSize() {
+		WTinyLfuCache<Integer, Integer> cache = new WTinyLfuCache<Integer, Integer>(100);
+		for (int i = 0; i < 1000; i++) {
+			cache.get(i);
+			cache.put(i, i);
+			assertTrue(cache.size() <= 100);
+		}
+		assertEquals(100, cache.size());
+		assertEquals(900, cache.getEvictionCount());
+	}
+
+	public void testFrequentEntriesSurviveScan() {
+		WTinyLfuCache<Integer, Integer> cache = new WTinyLfuCache<Integer, Integer>(100);
+		for (int round = 0; round < 5; round++) {
+			for (int i = 0; i < 50; i++) {
+				if (cache.get(i) == null) {
+					cache.put(i, i);
+				}
+			}
+		}
+		// one-time keys should not flush the frequently used ones
+		for (int i = 1000; i < 10000; i++) {
+			if (cache.get(i) == null) {
+				cache.put(i, i);
+			}
+		}
+		int hits = 0;
+		for (int i = 0; i < 50; i++) {
+			if (cache.get(i) != null) {
+				hits++;
+			}
+		}
+		assertTrue("hits: " + hits, hits >= 45);
+	}
+
+	public void testTimeToLive() throws InterruptedException {
+		WTinyLfuCache<String, Integer> cache = new WTinyLfuCache<String, Integer>(10, 50);
+		cache.put("a", 1);
+		assertEquals(Integer.valueOf(1), cache.get("a"));
+		Thread.sleep(100);
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.size());
+	}
+
+}
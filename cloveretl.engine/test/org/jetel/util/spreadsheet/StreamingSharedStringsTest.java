@@ -0,0 +1,74 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.util.spreadsheet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.jetel.test.CloverTestCase;
+
+public class StreamingSharedStringsTest extends CloverTestCase {
+
+	private static final String SHARED_STRINGS = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+			+ "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" count=\"4\" uniqueCount=\"4\">"
+			+ "<si><t>first</t></si>"
+			+ "<si><r><t>rich </t></r><r><rPr><b/></rPr><t>text</t></r><rPh sb=\"0\" eb=\"1\"><t>phonetic</t></rPh></si>"
+			+ "<si><t>line_x000D_break</t></si>"
+			+ "<si><t>žluťoučký kůň</t></si>"
+			+ "</sst>";
+
+	private void checkStrings(StreamingSharedStrings strings) {
+		assertEquals(4, strings.size());
+		assertEquals("first", strings.getString(0));
+		assertEquals("rich text", strings.getString(1));
+		assertEquals("line\rbreak", strings.getString(2));
+		assertEquals("žluťoučký kůň", strings.getString(3));
+		// cached string
+		assertEquals("rich text", strings.getString(1));
+	}
+
+	public void testInMemory() throws IOException {
+		StreamingSharedStrings strings = new StreamingSharedStrings(1000);
+		try {
+			strings.load(new ByteArrayInputStream(SHARED_STRINGS.getBytes("UTF-8")));
+			assertFalse(strings.isSpilled());
+			checkStrings(strings);
+		} finally {
+			strings.close();
+		}
+	}
+
+	public void testSpilled() throws IOException {
+		StreamingSharedStrings strings = new StreamingSharedStrings(10);
+		try {
+			strings.load(new ByteArrayInputStream(SHARED_STRINGS.getBytes("UTF-8")));
+			assertTrue(strings.isSpilled());
+			checkStrings(strings);
+		} finally {
+			strings.close();
+		}
+	}
+
+	public void testDecodeEscapes() {
+		assertEquals("abc", StreamingSharedStrings.decodeEscapes("abc"));
+		assertEquals("\t", StreamingSharedStrings.decodeEscapes("_x0009_"));
+		assertEquals("_x00_ _xZZZZ_ a", StreamingSharedStrings.decodeEscapes("_x00_ _xZZZZ_ _x0061_"));
+	}
+
+}
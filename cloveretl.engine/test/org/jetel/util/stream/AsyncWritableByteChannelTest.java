@@ -0,0 +1,100 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.util.stream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+import org.jetel.test.CloverTestCase;
+
+public class AsyncWritableByteChannelTest extends CloverTestCase {
+
+	private static class FailingChannel implements WritableByteChannel {
+		private boolean open = true;
+
+		@Override
+		public boolean isOpen() {
+			return open;
+		}
+
+		@Override
+		public void close() throws IOException {
+			open = false;
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			throw new IOException("disk full");
+		}
+	}
+
+	public void testWrite() throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		AsyncWritableByteChannel channel = new AsyncWritableByteChannel(Channels.newChannel(os), 7, 1);
+		byte[] expected = new byte[1000];
+		for (int i = 0; i < expected.length; i++) {
+			expected[i] = (byte) i;
+		}
+		int offset = 0;
+		for (int length = 1; offset + length <= expected.length; length++) {
+			ByteBuffer src = ByteBuffer.wrap(expected, offset, length);
+			assertEquals(length, channel.write(src));
+			assertFalse(src.hasRemaining());
+			offset += length;
+		}
+		channel.write(ByteBuffer.wrap(expected, offset, expected.length - offset));
+		channel.close();
+		assertFalse(channel.isOpen());
+		assertTrue(Arrays.equals(expected, os.toByteArray()));
+
+		try {
+			channel.write(ByteBuffer.wrap(expected));
+			fail();
+		} catch (ClosedChannelException e) {
+			// expected
+		}
+		channel.close();
+	}
+
+	public void testFailure() {
+		FailingChannel failing = new FailingChannel();
+		AsyncWritableByteChannel channel = new AsyncWritableByteChannel(failing, 4, 1);
+		try {
+			for (int i = 0; i < 100; i++) {
+				channel.write(ByteBuffer.wrap(new byte[10]));
+			}
+			channel.close();
+			fail();
+		} catch (IOException e) {
+			assertEquals("disk full", e.getCause().getMessage());
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// failure may be reported by close() again
+		}
+		assertFalse(failing.isOpen());
+	}
+
+}
@@ -0,0 +1,117 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.util.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.jetel.test.CloverTestCase;
+
+public class ParallelDeflaterOutputStreamTest extends CloverTestCase {
+
+	private static final int BLOCK_SIZE = 32768;
+
+	private static final int[] SIZES = { 0, 1, 1000, BLOCK_SIZE - 1, BLOCK_SIZE, BLOCK_SIZE + 1, 3 * BLOCK_SIZE, 1000000 };
+
+	/**
+	 * Compressible data - random words from a small dictionary.
+	 */
+	private static byte[] createData(int size) {
+		String[] words = { "clover", "record", "field", "edge", "graph", "12345", "2015-03-16", ";", "\n" };
+		Random random = new Random(size);
+		ByteArrayOutputStream data = new ByteArrayOutputStream(size);
+		while (data.size() < size) {
+			byte[] word = words[random.nextInt(words.length)].getBytes();
+			data.write(word, 0, Math.min(word.length, size - data.size()));
+		}
+		return data.toByteArray();
+	}
+
+	private static void write(ParallelDeflaterOutputStream os, byte[] data) throws IOException {
+		// mix of single bytes and arrays crossing block boundaries
+		int i = 0;
+		for (int length = 1; i + length <= data.length; length = length * 3 + 1) {
+			if (length == 1) {
+				os.write(data[i]);
+			} else {
+				os.write(data, i, length);
+			}
+			i += length;
+		}
+		os.write(data, i, data.length - i);
+		os.close();
+	}
+
+	private static byte[] readFully(InputStream is) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int count;
+		while ((count = is.read(buffer)) >= 0) {
+			result.write(buffer, 0, count);
+		}
+		return result.toByteArray();
+	}
+
+	public void testGZIP() throws IOException {
+		for (int size : SIZES) {
+			byte[] data = createData(size);
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			write(new ParallelGZIPOutputStream(compressed, -1, BLOCK_SIZE), data);
+			byte[] result = readFully(new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray())));
+			assertTrue("size " + size, Arrays.equals(data, result));
+			if (size == 1000000) {
+				assertTrue(compressed.size() < size / 4);
+			}
+		}
+	}
+
+	public void testZip() throws IOException {
+		for (int size : SIZES) {
+			byte[] data = createData(size);
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			write(new ParallelZipOutputStream(compressed, "data/entry.txt", 9, BLOCK_SIZE), data);
+			ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(compressed.toByteArray()));
+			ZipEntry entry = zis.getNextEntry();
+			assertEquals("data/entry.txt", entry.getName());
+			assertTrue("size " + size, Arrays.equals(data, readFully(zis)));
+			assertNull(zis.getNextEntry());
+			zis.close();
+		}
+	}
+
+	public void testClosed() throws IOException {
+		ParallelGZIPOutputStream os = new ParallelGZIPOutputStream(new ByteArrayOutputStream(), -1, BLOCK_SIZE);
+		os.close();
+		os.close();
+		try {
+			os.write(1);
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+}
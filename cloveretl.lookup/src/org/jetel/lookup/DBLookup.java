@@ -21,10 +21,17 @@ package org.jetel.lookup;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 import org.jetel.connection.jdbc.AbstractCopySQLData;
@@ -34,21 +41,23 @@ import org.jetel.data.DataRecord;
 import org.jetel.data.DataRecordFactory;
 import org.jetel.data.Defaults;
 import org.jetel.data.HashKey;
-import org.jetel.data.NullRecord;
 import org.jetel.data.RecordKey;
 import org.jetel.data.lookup.Lookup;
 import org.jetel.database.sql.CopySQLData;
 import org.jetel.database.sql.JdbcSpecific;
+import org.jetel.database.sql.SqlConnection;
 import org.jetel.exception.ComponentNotReadyException;
 import org.jetel.exception.JetelRuntimeException;
 import org.jetel.metadata.DataFieldMetadata;
 import org.jetel.metadata.DataRecordMetadata;
 import org.jetel.metadata.DataRecordParsingType;
-import org.jetel.util.primitive.SimpleCache;
+import org.jetel.util.primitive.WTinyLfuCache;
 
 /**
  * DBLookup that performs data fetch at once in single connection-synchronized operation.
- * All fetched data is kept in memory.
+ * All fetched data is kept in memory.<br>
+ * Found records are stored in the cache shared by all lookups of the table. Records for a window
+ * of keys can be fetched in advance by batch queries, see {@link #prefetch(List)}.
  * 
  * @author jan.michalica (info@cloveretl.com)
  *         (c) Javlin, a.s. (www.cloveretl.com)
@@ -59,10 +68,9 @@ public final class DBLookup implements Lookup {
 
 	private static final Logger log = Logger.getLogger(DBLookup.class);
 	
-	private static final List<DataRecord> NEGATIVE_RESPONSE = Collections.singletonList(NullRecord.NULL_RECORD);
-	
 	private DBLookupTable lookupTable;
-	private SimpleCache<HashKey, DataRecord> recordCache;
+	private Map<HashKey, List<DataRecord>> prefetched = new HashMap<HashKey, List<DataRecord>>();
+	private DBLookupBatchQuery batchQuery;
 	private Iterator<DataRecord> currentIterator;
 	private int recordCount = -1;
 	private HashKey key;
@@ -114,37 +122,145 @@ public final class DBLookup implements Lookup {
 		return key.getRecordKey();
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public void seek() {
 		++allHits;
 		reset();
-		if (isCached()) {
-			if (recordCache != null) {
-				List<DataRecord> records = recordCache.getAll(key);
-				if (records != null) {
-					if (NEGATIVE_RESPONSE.equals(records)) {
-						recordCount = 0;
-						currentIterator = Collections.<DataRecord>emptyList().iterator();
-					} else {
-						recordCount = records.size();
-						currentIterator = records.iterator();
-					}
-					++cacheHits;
-					return;
-				}
-			} else {
-		        this.recordCache = new SimpleCache<HashKey, DataRecord>(1, lookupTable.maxCached);
+		List<DataRecord> records;
+		if (!prefetched.isEmpty()) {
+			records = prefetched.get(key);
+			if (records != null) {
+				setResult(records);
+				return;
+			}
+		}
+		WTinyLfuCache<HashKey, List<DataRecord>> recordCache = lookupTable.getRecordCache();
+		if (recordCache != null) {
+			records = recordCache.get(key);
+			if (records != null) {
+				setResult(records);
+				++cacheHits;
+				return;
 			}
 		}
-		List<DataRecord> records;
 		synchronized (lookupTable.sqlConnection) {
 			records = fetchData();
 		}
+		if (recordCache != null && (!records.isEmpty() || lookupTable.storeNulls)) {
+			recordCache.put(new HashKey(key.getRecordKey(), key.getDataRecord().duplicate()), records);
+		}
+		setResult(records);
+	}
+	
+	private void setResult(List<DataRecord> records) {
 		recordCount = records.size();
 		currentIterator = records.iterator();
 	}
 
+	/**
+	 * Fetches records for all given key records in advance. Keys which are not cached are split into batches
+	 * of {@link DBLookupTable#getBatchSize()} keys, each batch is resolved by a single query. If the table
+	 * allows more batch threads, the batches are executed concurrently over separate connections.<br>
+	 * Following {@link #seek()} calls for these keys don't access the database until the next call
+	 * of this method, so the key records can be processed in their original order.<br>
+	 * Nothing is fetched if batching is switched off, the query contains ORDER BY clause or the metadata
+	 * of the database records is not known yet - the first seek() discovers the metadata in this case.
+	 * The seek() calls query the database for each key then.
+	 * 
+	 * @param keyRecords records with the same metadata as the key record of this lookup
+	 */
+	public void prefetch(List<DataRecord> keyRecords) {
+		prefetched.clear();
+		int batchSize = lookupTable.getBatchSize();
+		if (batchSize < 2 || dbMetadata == null || !DBLookupBatchQuery.isBatchable(statement.getQuery())) {
+			return;
+		}
+		if (batchQuery == null) {
+			batchQuery = new DBLookupBatchQuery(statement.getQuery(), statement.getCloverInputFields(), dbMetadata);
+		}
+		WTinyLfuCache<HashKey, List<DataRecord>> recordCache = lookupTable.getRecordCache();
+		RecordKey recordKey = key.getRecordKey();
+		HashKey probe = new HashKey(recordKey, null);
+		List<HashKey> missing = new ArrayList<HashKey>();
+		for (DataRecord keyRecord : keyRecords) {
+			probe.setDataRecord(keyRecord);
+			if (prefetched.containsKey(probe)) {
+				continue;
+			}
+			HashKey storedKey = new HashKey(recordKey, keyRecord.duplicate());
+			List<DataRecord> records = recordCache != null ? recordCache.get(storedKey) : null;
+			if (records == null) {
+				missing.add(storedKey);
+			}
+			// keys with null value are being fetched
+			prefetched.put(storedKey, records);
+		}
+		
+		List<List<HashKey>> batches = new ArrayList<List<HashKey>>();
+		for (int i = 0; i < missing.size(); i += batchSize) {
+			batches.add(missing.subList(i, Math.min(i + batchSize, missing.size())));
+		}
+		try {
+			if (lookupTable.getBatchThreads() > 1 && batches.size() > 1) {
+				ExecutorService executor = lookupTable.getBatchExecutor();
+				final BlockingQueue<SqlConnection> connections = lookupTable.getBatchConnections();
+				List<Future<List<List<DataRecord>>>> results = new ArrayList<Future<List<List<DataRecord>>>>(batches.size());
+				for (List<HashKey> batch : batches) {
+					final List<DataRecord> batchRecords = getKeyRecords(batch);
+					results.add(executor.submit(new Callable<List<List<DataRecord>>>() {
+						@Override
+						public List<List<DataRecord>> call() throws Exception {
+							SqlConnection connection = connections.take();
+							try {
+								synchronized (connection) {
+									return batchQuery.execute(connection, batchRecords);
+								}
+							} finally {
+								connections.put(connection);
+							}
+						}
+					}));
+				}
+				for (int i = 0; i < batches.size(); i++) {
+					storeBatch(batches.get(i), results.get(i).get(), recordCache);
+				}
+			} else {
+				for (List<HashKey> batch : batches) {
+					List<List<DataRecord>> result;
+					synchronized (lookupTable.sqlConnection) {
+						result = batchQuery.execute(lookupTable.sqlConnection, getKeyRecords(batch));
+					}
+					storeBatch(batch, result, recordCache);
+				}
+			}
+		} catch (ExecutionException e) {
+			throw new JetelRuntimeException("Batch lookup failed.", e.getCause());
+		} catch (Exception e) {
+			throw new JetelRuntimeException("Batch lookup failed.", e);
+		}
+	}
+	
+	private List<DataRecord> getKeyRecords(List<HashKey> keys) {
+		List<DataRecord> records = new ArrayList<DataRecord>(keys.size());
+		for (HashKey key : keys) {
+			records.add(key.getDataRecord());
+		}
+		return records;
+	}
+	
+	private void storeBatch(List<HashKey> keys, List<List<DataRecord>> result, WTinyLfuCache<HashKey, List<DataRecord>> recordCache) {
+		for (int i = 0; i < keys.size(); i++) {
+			List<DataRecord> records = result.get(i);
+			if (records.isEmpty()) {
+				records = Collections.emptyList();
+			}
+			prefetched.put(keys.get(i), records);
+			if (recordCache != null && (!records.isEmpty() || lookupTable.storeNulls)) {
+				recordCache.put(keys.get(i), records);
+			}
+		}
+	}
+
 	@Override
 	public void seek(DataRecord keyRecord) {
 		
@@ -160,7 +276,7 @@ public final class DBLookup implements Lookup {
 	private List<DataRecord> fetchData() {
 		
 		ResultSet resultSet = null;
-		List<DataRecord> records = new LinkedList<DataRecord>();
+		List<DataRecord> records = new ArrayList<DataRecord>();
 		try {
 			resultSet = statement.executeQuery();
 			if (dbMetadata == null) {
@@ -188,11 +304,6 @@ public final class DBLookup implements Lookup {
 				}
 			}
 			DataRecord record = DataRecordFactory.newRecord(dbMetadata);
-			HashKey key = null;
-			if (isCached()) {
-				key = new HashKey(this.key.getRecordKey(), this.key.getDataRecord().duplicate());
-			}
-			boolean recordsCached = true;
 			while (resultSet.next()) {
 				CopySQLData transMap[] = AbstractCopySQLData.sql2JetelTransMap(
 						SQLUtil.getFieldTypes(dbMetadata, lookupTable.sqlConnection.getJdbcSpecific()), 
@@ -201,21 +312,9 @@ public final class DBLookup implements Lookup {
 				for (int i = 0; i < transMap.length; i++) {
 					transMap[i].sql2jetel(resultSet);
 				}
-				DataRecord storedRecord = record.duplicate();
-				if (isCached()) {
-					recordsCached &= recordCache.put(key, storedRecord);
-				}
-				records.add(storedRecord);
-			}
-			if (isCached() && !recordsCached) {
-				log.warn("Too many data records for a single key: " + toString(key) +
-    				" Enlarge the cache size to accomodate more data records.");
-				recordCache.clear();
+				records.add(record.duplicate());
 			}
 			if (records.isEmpty()) {
-				if (isCached() && lookupTable.storeNulls) {
-					recordCache.put(key, NullRecord.NULL_RECORD);
-				}
 				return Collections.emptyList();
 			}
 			return records;
@@ -232,21 +331,6 @@ public final class DBLookup implements Lookup {
 		}
 	}
 	
-	private String toString(HashKey key) {
-		
-		StringBuilder sb = new StringBuilder();
-		for (int i = 0; i < key.getKeyFields().length; ++i) {
-			sb.append(key.getRecordKey().getKeyFieldNames()[i]);
-			sb.append('=');
-			sb.append(key.getDataRecord().getField(i).getValue());
-			sb.append(',');
-		}
-		if (sb.length() > 0) {
-			sb.delete(sb.length() - 1, sb.length());
-		}
-		return sb.toString();
-	}
-	
 	@Override
 	public int getNumFound() {
 		checkDataFetched();
@@ -264,9 +348,7 @@ public final class DBLookup implements Lookup {
 	}
 	
 	public void clear() {
-		if (isCached() && recordCache != null) {
-			recordCache.clear();
-		}
+		prefetched.clear();
 	}
 	
 	public void close() throws SQLException {
@@ -279,10 +361,6 @@ public final class DBLookup implements Lookup {
 		currentIterator = null;
 	}
 	
-	private boolean isCached() {
-		return lookupTable.maxCached > 0;
-	}
-	
 	int getTotalNumber() {
 		return allHits;
 	}
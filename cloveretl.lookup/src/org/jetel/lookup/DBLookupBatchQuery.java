@@ -0,0 +1,176 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.lookup;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jetel.connection.jdbc.AbstractCopySQLData;
+import org.jetel.connection.jdbc.SQLUtil;
+import org.jetel.data.DataRecord;
+import org.jetel.data.DataRecordFactory;
+import org.jetel.database.sql.CopySQLData;
+import org.jetel.database.sql.JdbcSpecific;
+import org.jetel.database.sql.SqlConnection;
+import org.jetel.metadata.DataRecordMetadata;
+
+/**
+ * Executes the lookup query for several keys at once.<br>
+ * The lookup query is used as a derived table and its copies, one for each key, are joined by UNION ALL.
+ * Each copy adds the position of its key as the last column, so the fetched records can be assigned
+ * to their keys:
+ * <pre>
+ * SELECT t.*, 0 CLOVER_BATCH_INDEX FROM (select * from employee where last_name=?) t
+ * UNION ALL
+ * SELECT t.*, 1 CLOVER_BATCH_INDEX FROM (select * from employee where last_name=?) t
+ * ...
+ * </pre>
+ * The order of records of one key is the order returned by the database.<br>
+ * A query with ORDER BY clause can't be batched - the order wouldn't be kept by the union and some
+ * databases (e.g. MS SQL) reject ORDER BY in a derived table - see {@link #isBatchable(String)}.
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+class DBLookupBatchQuery {
+
+	private static final String BATCH_INDEX_COLUMN = "CLOVER_BATCH_INDEX";
+
+	private final String query;
+	private final String[] inputFields;
+	private final DataRecordMetadata dbMetadata;
+
+	/**
+	 * @param query lookup query with question marks
+	 * @param inputFields fields of key records bound to the question marks
+	 * @param dbMetadata metadata of the fetched records
+	 */
+	DBLookupBatchQuery(String query, String[] inputFields, DataRecordMetadata dbMetadata) {
+		this.query = query;
+		this.inputFields = inputFields;
+		this.dbMetadata = dbMetadata;
+	}
+
+	/**
+	 * @param query lookup query
+	 * @return false if the query contains ORDER BY clause outside of parentheses and string literals
+	 */
+	static boolean isBatchable(String query) {
+		String upperQuery = query.toUpperCase();
+		int depth = 0;
+		for (int i = 0; i < upperQuery.length(); i++) {
+			char c = upperQuery.charAt(i);
+			switch (c) {
+			case '(':
+				depth++;
+				break;
+			case ')':
+				depth--;
+				break;
+			case '\'':
+			case '"':
+				int end = upperQuery.indexOf(c, i + 1);
+				i = end < 0 ? upperQuery.length() : end;
+				break;
+			default:
+				if (depth == 0 && c == 'O' && upperQuery.startsWith("ORDER", i) && isKeywordBoundary(upperQuery, i - 1)) {
+					int by = i + "ORDER".length();
+					while (by < upperQuery.length() && Character.isWhitespace(upperQuery.charAt(by))) {
+						by++;
+					}
+					if (by > i + "ORDER".length() && upperQuery.startsWith("BY", by) && isKeywordBoundary(upperQuery, by + 2)) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	private static boolean isKeywordBoundary(String query, int index) {
+		return index < 0 || index >= query.length() || !Character.isJavaIdentifierPart(query.charAt(index));
+	}
+
+	/**
+	 * Fetches records for all given keys by a single query.
+	 *
+	 * @param connection connection used for the query, the caller is responsible for synchronization
+	 * @param keyRecords records containing key values
+	 * @return list of fetched records for each key record
+	 * @throws SQLException
+	 */
+	List<List<DataRecord>> execute(SqlConnection connection, List<DataRecord> keyRecords) throws SQLException {
+		JdbcSpecific jdbcSpecific = connection.getJdbcSpecific();
+		List<List<DataRecord>> result = new ArrayList<List<DataRecord>>(keyRecords.size());
+		for (int i = 0; i < keyRecords.size(); i++) {
+			result.add(new ArrayList<DataRecord>());
+		}
+		if (keyRecords.isEmpty()) {
+			return result;
+		}
+		PreparedStatement statement = connection.prepareStatement(createQuery(keyRecords.size()));
+		ResultSet resultSet = null;
+		try {
+			List<Integer> inputTypes = SQLUtil.getFieldTypes(keyRecords.get(0).getMetadata(), inputFields, jdbcSpecific);
+			for (int i = 0; i < keyRecords.size(); i++) {
+				DataRecord keyRecord = keyRecords.get(i);
+				for (int j = 0; j < inputFields.length; j++) {
+					int fieldIndex = keyRecord.getMetadata().getFieldPosition(inputFields[j]);
+					CopySQLData copy = jdbcSpecific.createCopyObject(inputTypes.get(j), keyRecord.getField(fieldIndex).getMetadata(),
+							keyRecord, i * inputFields.length + j, fieldIndex);
+					copy.jetel2sql(statement);
+				}
+			}
+			resultSet = jdbcSpecific.wrapResultSet(statement.executeQuery());
+			DataRecord record = DataRecordFactory.newRecord(dbMetadata);
+			CopySQLData[] transMap = AbstractCopySQLData.sql2JetelTransMap(
+					SQLUtil.getFieldTypes(dbMetadata, jdbcSpecific), dbMetadata, record, jdbcSpecific);
+			while (resultSet.next()) {
+				for (int i = 0; i < transMap.length; i++) {
+					transMap[i].sql2jetel(resultSet);
+				}
+				result.get(resultSet.getInt(BATCH_INDEX_COLUMN)).add(record.duplicate());
+			}
+		} finally {
+			try {
+				if (resultSet != null) {
+					resultSet.close();
+				}
+			} finally {
+				statement.close();
+			}
+		}
+		return result;
+	}
+
+	private String createQuery(int numKeys) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < numKeys; i++) {
+			if (i > 0) {
+				sb.append("\nUNION ALL\n");
+			}
+			sb.append("SELECT t.*, ").append(i).append(' ').append(BATCH_INDEX_COLUMN);
+			sb.append(" FROM (").append(query).append(") t");
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,91 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.lookup;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.jetel.data.DataRecord;
+import org.jetel.data.DataRecordFactory;
+import org.jetel.data.lookup.Lookup;
+import org.jetel.graph.InputPort;
+
+/**
+ * Reads driver records of a join component in windows and prefetches the lookup results for the whole
+ * window by {@link DBLookup#prefetch(java.util.List)}. The records are returned one by one in their
+ * original order, so the component can seek them in the lookup as usual.<br>
+ * The window holds {@link DBLookupTable#getBatchSize()} * {@link DBLookupTable#getBatchThreads()} records.
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public class DBLookupPrefetcher {
+
+	private final DBLookup lookup;
+	private final DataRecord[] window;
+	private int windowLength;
+	private int position;
+
+	/**
+	 * @param lookup lookup created with key record of the input port metadata
+	 * @param inPort port the driver records are read from
+	 */
+	public DBLookupPrefetcher(DBLookup lookup, InputPort inPort) {
+		this.lookup = lookup;
+		DBLookupTable lookupTable = lookup.getLookupTable();
+		window = new DataRecord[lookupTable.getBatchSize() * lookupTable.getBatchThreads()];
+		for (int i = 0; i < window.length; i++) {
+			window[i] = DataRecordFactory.newRecord(inPort.getMetadata());
+		}
+	}
+
+	/**
+	 * @param lookup
+	 * @return true if the lookup fetches records in batches
+	 */
+	public static boolean isPrefetchSupported(Lookup lookup) {
+		return lookup instanceof DBLookup && ((DBLookup) lookup).getLookupTable().getBatchSize() > 1;
+	}
+
+	/**
+	 * Reads next record. If all records of the current window have been returned, next window
+	 * is read from the port and its lookup results are fetched.
+	 *
+	 * @param inPort input port
+	 * @param record record to be filled
+	 * @return the record or null if there are no more records
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public DataRecord readRecord(InputPort inPort, DataRecord record) throws IOException, InterruptedException {
+		if (position == windowLength) {
+			position = 0;
+			windowLength = 0;
+			while (windowLength < window.length && inPort.readRecord(window[windowLength]) != null) {
+				windowLength++;
+			}
+			if (windowLength == 0) {
+				return null;
+			}
+			lookup.prefetch(Arrays.asList(window).subList(0, windowLength));
+		}
+		record.copyFrom(window[position++]);
+		return record;
+	}
+
+}
@@ -25,9 +25,15 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.apache.log4j.Logger;
 import org.jetel.connection.jdbc.AbstractCopySQLData;
 import org.jetel.connection.jdbc.SQLCloverStatement;
 import org.jetel.connection.jdbc.SQLUtil;
@@ -56,6 +62,7 @@ import org.jetel.metadata.DataFieldMetadata;
 import org.jetel.metadata.DataRecordMetadata;
 import org.jetel.metadata.DataRecordParsingType;
 import org.jetel.util.primitive.TypedProperties;
+import org.jetel.util.primitive.WTinyLfuCache;
 import org.jetel.util.property.ComponentXMLAttributes;
 import org.jetel.util.string.StringUtils;
 import org.w3c.dom.Element;
@@ -63,7 +70,12 @@ import org.w3c.dom.Element;
 /**
  *  Database table/SQLquery based lookup table which gets data by performing SQL
  *  query. Caching of found values can be provided - if the constructor with
- *  <code>numCached</code> parameter is used. 
+ *  <code>numCached</code> parameter is used. The cache is shared by all lookups
+ *  of the table, it keeps at most <code>maxCached</code> keys selected by W-TinyLFU
+ *  policy, cached values can expire after <code>cacheTimeToLive</code> milliseconds.<br>
+ *  If <code>batchSize</code> is greater than 1, {@link DBLookup#prefetch(List)} fetches
+ *  records for up to <code>batchSize</code> keys by one query, <code>batchThreads</code>
+ *  such queries run concurrently over separate connections.
  * 
  * The XML DTD describing the internal structure is as follows:
  * 
@@ -75,6 +87,9 @@ import org.w3c.dom.Element;
  *              dbConnection CDATA #REQUIRED
  *              maxCached CDATA #IMPLIED&gt;
  *              storeNulls CDATA #IMPLIED&gt;
+ *              cacheTimeToLive CDATA #IMPLIED&gt;
+ *              batchSize CDATA #IMPLIED&gt;
+ *              batchThreads CDATA #IMPLIED&gt;
  * 
  *
  *@author     dpavlis
@@ -82,10 +97,15 @@ import org.w3c.dom.Element;
  */
 public class DBLookupTable extends GraphElement implements LookupTable {
 
+	private static final Logger log = Logger.getLogger(DBLookupTable.class);
+
     private static final String XML_LOOKUP_TYPE_DB_LOOKUP = "DBLookup"; 
     private static final String XML_SQL_QUERY = "sqlQuery";
     private static final String XML_LOOKUP_MAX_CACHE_SIZE = "maxCached";
     private static final String XML_STORE_NULL_RESPOND = "storeNulls";
+    private static final String XML_CACHE_TIME_TO_LIVE = "cacheTimeToLive";
+    private static final String XML_BATCH_SIZE = "batchSize";
+    private static final String XML_BATCH_THREADS = "batchThreads";
     
     private final static String[] REQUESTED_ATTRIBUTE = {XML_ID_ATTRIBUTE, XML_TYPE_ATTRIBUTE, XML_DBCONNECTION,
     	XML_SQL_QUERY
@@ -104,6 +124,13 @@ public class DBLookupTable extends GraphElement implements LookupTable {
 	
 	protected int maxCached = 0;
 	protected boolean storeNulls = false;
+	protected long cacheTimeToLive = 0;
+	protected int batchSize = 0;
+	protected int batchThreads = 1;
+	
+	private WTinyLfuCache<HashKey, List<DataRecord>> recordCache;
+	private ExecutorService batchExecutor;
+	private BlockingQueue<SqlConnection> batchConnections;
 	
 	private List<DBLookup> activeLookups = Collections.synchronizedList(new ArrayList<DBLookup>());
 	
@@ -220,6 +247,8 @@ public class DBLookupTable extends GraphElement implements LookupTable {
 		} finally {
 			activeLookups.clear();
 		}
+		releaseRecordCache();
+		closeBatchConnections();
 		connection.closeConnection(getId(), OperationType.READ);
 	}
 	
@@ -251,6 +280,15 @@ public class DBLookupTable extends GraphElement implements LookupTable {
         if (properties.containsKey(XML_STORE_NULL_RESPOND)){
         	lookupTable.setStoreNulls(properties.getBooleanProperty(XML_STORE_NULL_RESPOND));
         }
+        if (properties.containsKey(XML_CACHE_TIME_TO_LIVE)) {
+        	lookupTable.setCacheTimeToLive(properties.getLongProperty(XML_CACHE_TIME_TO_LIVE));
+        }
+        if (properties.containsKey(XML_BATCH_SIZE)) {
+        	lookupTable.setBatchSize(properties.getIntProperty(XML_BATCH_SIZE));
+        }
+        if (properties.containsKey(XML_BATCH_THREADS)) {
+        	lookupTable.setBatchThreads(properties.getIntProperty(XML_BATCH_THREADS));
+        }
         
         return lookupTable;
     }
@@ -286,12 +324,24 @@ public class DBLookupTable extends GraphElement implements LookupTable {
         if (xattribs.exists(XML_STORE_NULL_RESPOND)) {
         	lookupTable.setStoreNulls(xattribs.getBoolean(XML_STORE_NULL_RESPOND));
         }
+        if (xattribs.exists(XML_CACHE_TIME_TO_LIVE)) {
+        	lookupTable.setCacheTimeToLive(xattribs.getLong(XML_CACHE_TIME_TO_LIVE));
+        }
+        if (xattribs.exists(XML_BATCH_SIZE)) {
+        	lookupTable.setBatchSize(xattribs.getInteger(XML_BATCH_SIZE));
+        }
+        if (xattribs.exists(XML_BATCH_THREADS)) {
+        	lookupTable.setBatchThreads(xattribs.getInteger(XML_BATCH_THREADS));
+        }
         
         return lookupTable;
     }
     
     @Override
     public synchronized void clear() {
+    	if (recordCache != null) {
+    		recordCache.clear();
+    	}
     	synchronized (activeLookups) {
 	    	for (DBLookup activeLookup : activeLookups) {
 	    		activeLookup.clear();
@@ -314,6 +364,7 @@ public class DBLookupTable extends GraphElement implements LookupTable {
                 throw new RuntimeException(e);
             } finally {
                 activeLookups.clear();
+                closeBatchConnections();
             }
         }
     }
@@ -323,8 +374,9 @@ public class DBLookupTable extends GraphElement implements LookupTable {
 	 * 
 	 * @param numCached
 	 */
-	public void setNumCached(int numCached){
+	public synchronized void setNumCached(int numCached){
         this.maxCached=numCached;
+        this.recordCache = null;
 	}
 
 	/**
@@ -337,6 +389,112 @@ public class DBLookupTable extends GraphElement implements LookupTable {
 		this.storeNulls = storeNulls;
 	}
 
+	/**
+	 * Sets time after which cached records expire.
+	 * 
+	 * @param cacheTimeToLive time in milliseconds, 0 means the records never expire
+	 */
+	public synchronized void setCacheTimeToLive(long cacheTimeToLive) {
+		this.cacheTimeToLive = cacheTimeToLive;
+		this.recordCache = null;
+	}
+
+	public long getCacheTimeToLive() {
+		return cacheTimeToLive;
+	}
+
+	/**
+	 * Sets max number of keys looked up by one query in {@link DBLookup#prefetch(List)}.
+	 * 
+	 * @param batchSize number of keys, 0 or 1 disables batching
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets number of batch queries which can run concurrently.
+	 * 
+	 * @param batchThreads number of threads and database connections used for batch queries
+	 */
+	public void setBatchThreads(int batchThreads) {
+		this.batchThreads = batchThreads;
+	}
+
+	public int getBatchThreads() {
+		return batchThreads;
+	}
+
+	/**
+	 * @return cache shared by all lookups of this table or null if caching is switched off
+	 */
+	synchronized WTinyLfuCache<HashKey, List<DataRecord>> getRecordCache() {
+		if (recordCache == null && maxCached > 0) {
+			recordCache = new WTinyLfuCache<HashKey, List<DataRecord>>(maxCached, cacheTimeToLive);
+		}
+		return recordCache;
+	}
+
+	/**
+	 * @return executor for concurrent batch queries, connections for the queries are taken
+	 * from {@link #getBatchConnections()}
+	 */
+	synchronized ExecutorService getBatchExecutor() throws JetelException {
+		if (batchExecutor == null) {
+			batchConnections = new ArrayBlockingQueue<SqlConnection>(batchThreads);
+			for (int i = 0; i < batchThreads; i++) {
+				batchConnections.add(connection.getConnection(getBatchConnectionId(i), OperationType.READ));
+			}
+			batchExecutor = Executors.newFixedThreadPool(batchThreads, new ThreadFactory() {
+				private int counter = 0;
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, getId() + "_batch_" + counter++);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return batchExecutor;
+	}
+
+	/**
+	 * @return pool of connections for the batch queries
+	 */
+	synchronized BlockingQueue<SqlConnection> getBatchConnections() {
+		return batchConnections;
+	}
+
+	private String getBatchConnectionId(int index) {
+		return getId() + "_batch_" + index;
+	}
+
+	private synchronized void closeBatchConnections() {
+		if (batchExecutor != null) {
+			batchExecutor.shutdownNow();
+			batchExecutor = null;
+			batchConnections = null;
+			for (int i = 0; i < batchThreads; i++) {
+				connection.closeConnection(getBatchConnectionId(i), OperationType.READ);
+			}
+		}
+	}
+
+	/**
+	 * Logs statistics of the cache and drops it, so the next run of the graph doesn't get stale records.
+	 */
+	private synchronized void releaseRecordCache() {
+		if (recordCache != null && log.isDebugEnabled()) {
+			log.debug("Cache of lookup table " + getId() + ": hits " + recordCache.getHitCount() + ", misses "
+					+ recordCache.getMissCount() + ", evictions " + recordCache.getEvictionCount());
+		}
+		recordCache = null;
+	}
+
     @Override
     public ConfigurationStatus checkConfig(ConfigurationStatus status) {
         super.checkConfig(status);
@@ -355,6 +513,17 @@ public class DBLookupTable extends GraphElement implements LookupTable {
 						" does not exist. DB metadata will be created from sql query.");
 			}
 		}
+		if (status != null) {
+			if (cacheTimeToLive < 0) {
+				status.addError(this, XML_CACHE_TIME_TO_LIVE, "Cache time to live can't be negative.");
+			}
+			if (batchSize < 0) {
+				status.addError(this, XML_BATCH_SIZE, "Batch size can't be negative.");
+			}
+			if (batchThreads < 1) {
+				status.addError(this, XML_BATCH_THREADS, "Number of batch threads has to be positive.");
+			}
+		}
         return status;
     }
 
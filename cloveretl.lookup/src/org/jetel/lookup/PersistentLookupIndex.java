@@ -0,0 +1,280 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.lookup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.jetel.data.DataField;
+import org.jetel.data.DataRecord;
+import org.jetel.data.DataRecordFactory;
+import org.jetel.metadata.DataRecordMetadata;
+import org.jetel.util.bytes.CloverBuffer;
+
+/**
+ * Read-only hash index of {@link PersistentLookupTable} stored in a file, see {@link PersistentLookupIndexBuilder}.
+ * The file is memory mapped, so it is loaded lazily by the operating system and its pages are shared
+ * by all processes using the same index. Only the records whose key hash matches the looked up key
+ * are deserialized.<br>
+ * <br>
+ * Layout of the file (big endian):
+ * <pre>
+ * header   magic, version, fingerprint, source size, source last modified, record count, key count,
+ *          records offset, records length, slots offset, capacity
+ * records  entries [next entry offset (long), record length (int), serialized record],
+ *          entries never cross boundary of a mapped segment
+ * slots    open addressing table with linear probing [key hash (long), first entry offset (long)]
+ * </pre>
+ * Records with the same key are chained by the next entry offset in the order of the source.
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+class PersistentLookupIndex {
+
+	static final long MAGIC = 0x434C564C4B505431L; // "CLVLKPT1"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 96;
+
+	/** size of mapped segment, entries and slots never cross segment boundary */
+	static final int SEGMENT_SHIFT = 30;
+	static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+	static final int SLOT_SIZE = 16;
+	/** size of the entry header - offset of the next entry and length of the record */
+	static final int ENTRY_HEADER_SIZE = 12;
+	/** value of the first entry offset of an empty slot and of the next entry offset of the last entry */
+	static final long NO_ENTRY = -1;
+
+	private final File file;
+	private final DataRecordMetadata metadata;
+	private final int[] keyFields;
+
+	private final long fingerprint;
+	private final long sourceSize;
+	private final long sourceLastModified;
+	private final long recordCount;
+	private final long keyCount;
+	private final int capacity;
+
+	private final MappedByteBuffer[] records;
+	private final MappedByteBuffer[] slots;
+
+	private PersistentLookupIndex(File file, DataRecordMetadata metadata, int[] keyFields, ByteBuffer header,
+			FileChannel channel) throws IOException {
+		this.file = file;
+		this.metadata = metadata;
+		this.keyFields = keyFields;
+		fingerprint = header.getLong(12);
+		sourceSize = header.getLong(20);
+		sourceLastModified = header.getLong(28);
+		recordCount = header.getLong(36);
+		keyCount = header.getLong(44);
+		long recordsOffset = header.getLong(52);
+		long recordsLength = header.getLong(60);
+		long slotsOffset = header.getLong(68);
+		capacity = header.getInt(76);
+		records = map(channel, recordsOffset, recordsLength);
+		slots = map(channel, slotsOffset, (long) capacity * SLOT_SIZE);
+	}
+
+	private static MappedByteBuffer[] map(FileChannel channel, long offset, long length) throws IOException {
+		MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((length + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+		for (int i = 0; i < segments.length; i++) {
+			long position = (long) i << SEGMENT_SHIFT;
+			segments[i] = channel.map(MapMode.READ_ONLY, offset + position, Math.min(length - position, SEGMENT_MASK + 1));
+		}
+		return segments;
+	}
+
+	/**
+	 * Opens existing index file.
+	 *
+	 * @param file index file
+	 * @param metadata metadata of the stored records
+	 * @param keyFields indexes of the key fields
+	 * @return opened index or null if the file does not exist or it is not a complete index file of supported version
+	 * @throws IOException
+	 */
+	static PersistentLookupIndex open(File file, DataRecordMetadata metadata, int[] keyFields) throws IOException {
+		if (!file.isFile() || file.length() < HEADER_SIZE) {
+			return null;
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			while (header.hasRemaining() && channel.read(header) >= 0) {
+			}
+			if (header.hasRemaining() || header.getLong(0) != MAGIC || header.getInt(8) != VERSION) {
+				return null;
+			}
+			// mapping stays valid after the channel is closed
+			return new PersistentLookupIndex(file, metadata, keyFields, header, channel);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * @return true if the index was built from the source of given size and modification time
+	 * with the same configuration
+	 */
+	boolean isCurrent(long fingerprint, long sourceSize, long sourceLastModified) {
+		return this.fingerprint == fingerprint && this.sourceSize == sourceSize && this.sourceLastModified == sourceLastModified;
+	}
+
+	File getFile() {
+		return file;
+	}
+
+	long getRecordCount() {
+		return recordCount;
+	}
+
+	long getKeyCount() {
+		return keyCount;
+	}
+
+	int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Computes 64-bit hash of the key. The hash is persistent, so it may depend only on values of the fields.
+	 */
+	static long hash(DataField[] key) {
+		long h = 1;
+		for (DataField field : key) {
+			h = h * 0x9E3779B97F4A7C15L + field.hashCode();
+		}
+		// finalization step of MurmurHash3
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB93FE53EC1A3L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Compares key fields of the record with the key, null values are equal.
+	 */
+	static boolean equals(DataRecord record, int[] keyFields, DataField[] key) {
+		for (int i = 0; i < keyFields.length; i++) {
+			DataField field = record.getField(keyFields[i]);
+			if (!field.equals(key[i]) && !(field.isNull() && key[i].isNull())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Creates new reader of the index. Reader is not thread-safe, but more readers can be used concurrently.
+	 */
+	Reader createReader() {
+		return new Reader();
+	}
+
+	/**
+	 * Deserializes the stored records into its own record, which is reused by subsequent reads.
+	 */
+	class Reader {
+
+		private final DataRecord record = DataRecordFactory.newRecord(metadata);
+		private final CloverBuffer[] views = new CloverBuffer[records.length];
+		private final ByteBuffer[] slotViews = new ByteBuffer[slots.length];
+		private long loadedEntry = NO_ENTRY;
+
+		/**
+		 * Finds first entry of the key, the record of the entry is left deserialized.
+		 *
+		 * @return offset of the first entry or {@link PersistentLookupIndex#NO_ENTRY}
+		 */
+		long find(DataField[] key) {
+			if (capacity == 0) {
+				return NO_ENTRY;
+			}
+			long hash = hash(key);
+			int mask = capacity - 1;
+			for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+				long position = (long) slot * SLOT_SIZE;
+				ByteBuffer segment = getSlotSegment((int) (position >>> SEGMENT_SHIFT));
+				int segmentPosition = (int) (position & SEGMENT_MASK);
+				long entry = segment.getLong(segmentPosition + 8);
+				if (entry == NO_ENTRY) {
+					return NO_ENTRY;
+				}
+				if (segment.getLong(segmentPosition) == hash && PersistentLookupIndex.equals(read(entry), keyFields, key)) {
+					return entry;
+				}
+			}
+		}
+
+		/**
+		 * @return offset of the next entry with the same key or {@link PersistentLookupIndex#NO_ENTRY}
+		 */
+		long next(long entry) {
+			return getView((int) (entry >>> SEGMENT_SHIFT)).getLong((int) (entry & SEGMENT_MASK));
+		}
+
+		/**
+		 * @return offset of the first entry stored in the slot or {@link PersistentLookupIndex#NO_ENTRY}
+		 */
+		long getSlotEntry(int slot) {
+			long position = (long) slot * SLOT_SIZE;
+			return getSlotSegment((int) (position >>> SEGMENT_SHIFT)).getLong((int) (position & SEGMENT_MASK) + 8);
+		}
+
+		/**
+		 * @return deserialized record of the entry, the record is reused by subsequent calls
+		 */
+		DataRecord read(long entry) {
+			if (entry != loadedEntry) {
+				CloverBuffer view = getView((int) (entry >>> SEGMENT_SHIFT));
+				view.position((int) (entry & SEGMENT_MASK) + ENTRY_HEADER_SIZE);
+				record.deserialize(view);
+				loadedEntry = entry;
+			}
+			return record;
+		}
+
+		private CloverBuffer getView(int segment) {
+			CloverBuffer view = views[segment];
+			if (view == null) {
+				view = views[segment] = CloverBuffer.wrap(records[segment].duplicate());
+			}
+			return view;
+		}
+
+		private ByteBuffer getSlotSegment(int segment) {
+			ByteBuffer view = slotViews[segment];
+			if (view == null) {
+				view = slotViews[segment] = slots[segment].duplicate();
+			}
+			return view;
+		}
+
+	}
+
+}
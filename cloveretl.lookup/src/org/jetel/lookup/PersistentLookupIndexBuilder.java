@@ -0,0 +1,339 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.lookup;
+
+import static org.jetel.lookup.PersistentLookupIndex.ENTRY_HEADER_SIZE;
+import static org.jetel.lookup.PersistentLookupIndex.HEADER_SIZE;
+import static org.jetel.lookup.PersistentLookupIndex.NO_ENTRY;
+import static org.jetel.lookup.PersistentLookupIndex.SEGMENT_MASK;
+import static org.jetel.lookup.PersistentLookupIndex.SEGMENT_SHIFT;
+import static org.jetel.lookup.PersistentLookupIndex.SLOT_SIZE;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import org.jetel.data.DataField;
+import org.jetel.data.DataRecord;
+import org.jetel.data.DataRecordFactory;
+import org.jetel.data.parser.Parser;
+import org.jetel.exception.JetelException;
+import org.jetel.metadata.DataRecordMetadata;
+import org.jetel.util.bytes.CloverBuffer;
+
+/**
+ * Writes file of {@link PersistentLookupIndex}. Records are serialized into the file as they are read
+ * from the parser, only the hash table (three long values per slot) is held in memory during the build.
+ * The index is written to a temporary file in the target directory, which is moved to the target
+ * when it is complete, so the target file is never seen incomplete by other graphs.
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+class PersistentLookupIndexBuilder {
+
+	private static final int WRITE_BUFFER_SIZE = 1 << 20;
+	private static final int INITIAL_CAPACITY = 1 << 10;
+	private static final int MAXIMUM_CAPACITY = 1 << 30;
+	private static final float LOAD_FACTOR = 0.6f;
+
+	private final DataRecordMetadata metadata;
+	private final int[] keyFields;
+	private final boolean keyDuplicates;
+
+	private FileChannel channel;
+	private CloverBuffer writeBuffer;
+	/** offset of the write buffer start in the records region */
+	private long bufferStart;
+	/** offset of the next entry in the records region */
+	private long recordsLength;
+	private DataRecord readRecord;
+
+	private long[] slotHashes;
+	private long[] slotFirst;
+	private long[] slotLast;
+	private int threshold;
+	private long keyCount;
+	private long recordCount;
+
+	/**
+	 * @param metadata metadata of the stored records
+	 * @param keyFields indexes of the key fields
+	 * @param keyDuplicates if false, only the last record of each key is kept
+	 */
+	PersistentLookupIndexBuilder(DataRecordMetadata metadata, int[] keyFields, boolean keyDuplicates) {
+		this.metadata = metadata;
+		this.keyFields = keyFields;
+		this.keyDuplicates = keyDuplicates;
+	}
+
+	/**
+	 * Builds the index from all records of the parser.
+	 *
+	 * @param parser parser with prepared data source
+	 * @param target index file, existing file is replaced
+	 * @param fingerprint fingerprint of the table configuration
+	 * @param sourceSize size of the source stored in the index
+	 * @param sourceLastModified last modification time of the source stored in the index
+	 * @throws IOException
+	 * @throws JetelException
+	 */
+	void build(Parser parser, File target, long fingerprint, long sourceSize, long sourceLastModified)
+			throws IOException, JetelException {
+		File directory = target.getAbsoluteFile().getParentFile();
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create directory " + directory);
+		}
+		File tmpFile = File.createTempFile(target.getName(), ".tmp", directory);
+		boolean success = false;
+		RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw");
+		try {
+			channel = raf.getChannel();
+			raf.setLength(0);
+			writeBuffer = CloverBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+			readRecord = DataRecordFactory.newRecord(metadata);
+			bufferStart = recordsLength = 0;
+			keyCount = recordCount = 0;
+			allocateTable(INITIAL_CAPACITY);
+
+			DataRecord record = DataRecordFactory.newRecord(metadata);
+			while (parser.getNext(record) != null) {
+				add(record);
+			}
+			flush();
+			long slotsOffset = HEADER_SIZE + ((recordsLength + 7) & ~7L);
+			writeSlots(slotsOffset);
+			writeHeader(fingerprint, sourceSize, sourceLastModified, slotsOffset);
+			channel.force(false);
+			raf.close();
+			try {
+				Files.move(tmpFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmpFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			success = true;
+		} finally {
+			raf.close();
+			if (!success) {
+				tmpFile.delete();
+			}
+			channel = null;
+			writeBuffer = null;
+			slotHashes = slotFirst = slotLast = null;
+		}
+	}
+
+	long getRecordCount() {
+		return recordCount;
+	}
+
+	long getKeyCount() {
+		return keyCount;
+	}
+
+	private void add(DataRecord record) throws IOException, JetelException {
+		DataField[] key = new DataField[keyFields.length];
+		for (int i = 0; i < keyFields.length; i++) {
+			key[i] = record.getField(keyFields[i]);
+		}
+		long hash = PersistentLookupIndex.hash(key);
+		int mask = slotFirst.length - 1;
+		int slot = (int) hash & mask;
+		while (slotFirst[slot] != NO_ENTRY) {
+			if (slotHashes[slot] == hash && PersistentLookupIndex.equals(read(slotFirst[slot]), keyFields, key)) {
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
+		long entry = write(record);
+		recordCount++;
+		if (slotFirst[slot] == NO_ENTRY) {
+			slotHashes[slot] = hash;
+			slotFirst[slot] = entry;
+			if (slotLast != null) {
+				slotLast[slot] = entry;
+			}
+			if (++keyCount > threshold) {
+				rehash();
+			}
+		} else if (keyDuplicates) {
+			patchNext(slotLast[slot], entry);
+			slotLast[slot] = entry;
+		} else {
+			// the record replaces the previous record of the key, which stays unreachable in the file
+			slotFirst[slot] = entry;
+			recordCount--;
+		}
+	}
+
+	/**
+	 * Appends the record to the records region.
+	 *
+	 * @return offset of the new entry
+	 */
+	private long write(DataRecord record) throws IOException, JetelException {
+		int recordSize = record.getSizeSerialized();
+		int entrySize = ENTRY_HEADER_SIZE + recordSize;
+		if (entrySize > SEGMENT_MASK) {
+			throw new JetelException("Record is too large for persistent lookup table: " + recordSize + " bytes");
+		}
+		if ((recordsLength & SEGMENT_MASK) + entrySize > SEGMENT_MASK + 1) {
+			// entries never cross segment boundary, skip the rest of the segment
+			flush();
+			recordsLength = bufferStart = (recordsLength | SEGMENT_MASK) + 1;
+		}
+		if (writeBuffer.remaining() < entrySize) {
+			flush();
+		}
+		long entry = recordsLength;
+		writeBuffer.putLong(NO_ENTRY);
+		writeBuffer.putInt(recordSize);
+		record.serialize(writeBuffer);
+		recordsLength += entrySize;
+		return entry;
+	}
+
+	private void flush() throws IOException {
+		writeBuffer.flip();
+		ByteBuffer buffer = writeBuffer.buf();
+		long position = HEADER_SIZE + bufferStart;
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+		writeBuffer.clear();
+		bufferStart = recordsLength;
+	}
+
+	private void patchNext(long entry, long next) throws IOException {
+		if (entry >= bufferStart) {
+			writeBuffer.putLong((int) (entry - bufferStart), next);
+		} else {
+			ByteBuffer buffer = ByteBuffer.allocate(8);
+			buffer.putLong(0, next);
+			long position = HEADER_SIZE + entry;
+			while (buffer.hasRemaining()) {
+				position += channel.write(buffer, position);
+			}
+		}
+	}
+
+	/**
+	 * Reads back already written record, used to verify keys with the same hash.
+	 */
+	private DataRecord read(long entry) throws IOException {
+		if (entry >= bufferStart) {
+			CloverBuffer view = writeBuffer.duplicate();
+			view.position((int) (entry - bufferStart) + ENTRY_HEADER_SIZE);
+			readRecord.deserialize(view);
+		} else {
+			ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+			readFully(lengthBuffer, HEADER_SIZE + entry + 8);
+			CloverBuffer recordBuffer = CloverBuffer.allocate(lengthBuffer.getInt(0));
+			readFully(recordBuffer.buf(), HEADER_SIZE + entry + ENTRY_HEADER_SIZE);
+			recordBuffer.flip();
+			readRecord.deserialize(recordBuffer);
+		}
+		return readRecord;
+	}
+
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int count = channel.read(buffer, position);
+			if (count < 0) {
+				throw new IOException("Unexpected end of index file");
+			}
+			position += count;
+		}
+	}
+
+	private void allocateTable(int capacity) {
+		slotHashes = new long[capacity];
+		slotFirst = new long[capacity];
+		Arrays.fill(slotFirst, NO_ENTRY);
+		if (keyDuplicates) {
+			slotLast = new long[capacity];
+		}
+		threshold = capacity == MAXIMUM_CAPACITY ? capacity - 1 : (int) (capacity * LOAD_FACTOR);
+	}
+
+	private void rehash() throws JetelException {
+		if (slotFirst.length == MAXIMUM_CAPACITY) {
+			throw new JetelException("Maximum number of keys in persistent lookup table exceeded.");
+		}
+		long[] oldHashes = slotHashes;
+		long[] oldFirst = slotFirst;
+		long[] oldLast = slotLast;
+		allocateTable(oldFirst.length << 1);
+		int mask = slotFirst.length - 1;
+		for (int i = 0; i < oldFirst.length; i++) {
+			if (oldFirst[i] != NO_ENTRY) {
+				int slot = (int) oldHashes[i] & mask;
+				while (slotFirst[slot] != NO_ENTRY) {
+					slot = (slot + 1) & mask;
+				}
+				slotHashes[slot] = oldHashes[i];
+				slotFirst[slot] = oldFirst[i];
+				if (oldLast != null) {
+					slotLast[slot] = oldLast[i];
+				}
+			}
+		}
+	}
+
+	private void writeSlots(long slotsOffset) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+		long position = slotsOffset;
+		for (int slot = 0; slot < slotFirst.length; slot++) {
+			buffer.putLong(slotHashes[slot]);
+			buffer.putLong(slotFirst[slot]);
+			if (!buffer.hasRemaining() || slot == slotFirst.length - 1) {
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					position += channel.write(buffer, position);
+				}
+				buffer.clear();
+			}
+		}
+	}
+
+	private void writeHeader(long fingerprint, long sourceSize, long sourceLastModified, long slotsOffset) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putLong(0, PersistentLookupIndex.MAGIC);
+		header.putInt(8, PersistentLookupIndex.VERSION);
+		header.putLong(12, fingerprint);
+		header.putLong(20, sourceSize);
+		header.putLong(28, sourceLastModified);
+		header.putLong(36, recordCount);
+		header.putLong(44, keyCount);
+		header.putLong(52, HEADER_SIZE);
+		header.putLong(60, recordsLength);
+		header.putLong(68, slotsOffset);
+		header.putInt(76, slotFirst.length);
+		long position = 0;
+		while (header.hasRemaining()) {
+			position += channel.write(header, position);
+		}
+	}
+
+}
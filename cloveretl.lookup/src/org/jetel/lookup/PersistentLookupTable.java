@@ -0,0 +1,607 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.lookup;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.log4j.Logger;
+import org.jetel.data.DataField;
+import org.jetel.data.DataRecord;
+import org.jetel.data.Defaults;
+import org.jetel.data.HashKey;
+import org.jetel.data.RecordKey;
+import org.jetel.data.lookup.Lookup;
+import org.jetel.data.lookup.LookupTable;
+import org.jetel.data.lookup.SharedLookupTableRegistry;
+import org.jetel.data.parser.Parser;
+import org.jetel.data.parser.TextParserFactory;
+import org.jetel.exception.AttributeNotFoundException;
+import org.jetel.exception.ComponentNotReadyException;
+import org.jetel.exception.ConfigurationStatus;
+import org.jetel.exception.GraphConfigurationException;
+import org.jetel.exception.JetelRuntimeException;
+import org.jetel.exception.NotInitializedException;
+import org.jetel.exception.XMLConfigurationException;
+import org.jetel.graph.GraphElement;
+import org.jetel.graph.TransformationGraph;
+import org.jetel.metadata.DataRecordMetadata;
+import org.jetel.util.file.FileUtils;
+import org.jetel.util.primitive.TypedProperties;
+import org.jetel.util.property.ComponentXMLAttributes;
+import org.jetel.util.property.RefResFlag;
+import org.jetel.util.string.StringUtils;
+import org.w3c.dom.Element;
+
+/**
+ * Read-only lookup table which reads data from flat file like {@link SimpleLookupTable}, but stores them
+ * into a persistent hash index file (see {@link PersistentLookupIndex}) instead of memory. The index is
+ * memory mapped, so the table is available immediately without parsing the source and it is shared
+ * through the operating system page cache by all graphs and phases using the same index file.<br>
+ * The index is built when it does not exist yet and rebuilt only when the source file (its size or last
+ * modification time) or the table configuration changes. If modification time of the source cannot
+ * be determined, the index is rebuilt on each run.<br>
+ * The index file has to be local. If it is not specified, a file named by the source and the configuration
+ * in the system temporary directory is used.<br>
+ * Records returned by the lookup are reused by subsequent calls of the same lookup.
+ *
+ * The XML DTD describing the internal structure is as follows:
+ *
+ *  * &lt;!ATTLIST LookupTable
+ *              id ID #REQUIRED
+ *              type NMTOKEN (persistentLookup) #REQUIRED
+ *              metadata CDATA #REQUIRED
+ *              key CDATA #REQUIRED
+ *              fileURL CDATA #REQUIRED
+ *              charset CDATA #IMPLIED
+ *              keyDuplicates (true | false) #IMPLIED
+ *              indexFileURL CDATA #IMPLIED&gt;
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+public class PersistentLookupTable extends GraphElement implements LookupTable {
+
+	private static final Logger log = Logger.getLogger(PersistentLookupTable.class);
+
+	private static final String XML_LOOKUP_TYPE_PERSISTENT_LOOKUP = "persistentLookup";
+	private static final String XML_LOOKUP_KEY = "key";
+	private static final String XML_FILE_URL = "fileURL";
+	private static final String XML_CHARSET = "charset";
+	private static final String XML_KEY_DUPLICATES_ATTRIBUTE = "keyDuplicates";
+	private static final String XML_INDEX_FILE_URL = "indexFileURL";
+
+	private final static String[] REQUESTED_ATTRIBUTE = { XML_ID_ATTRIBUTE, XML_TYPE_ATTRIBUTE, XML_METADATA_ID, XML_LOOKUP_KEY, XML_FILE_URL };
+
+	private static final String INDEX_FILE_PREFIX = "clover_lookup_";
+	private static final String INDEX_FILE_SUFFIX = ".idx";
+
+	protected String metadataName;
+	protected DataRecordMetadata metadata;
+	protected String fileURL;
+	protected String charset;
+	protected String indexFileURL;
+	protected String[] keys;
+	protected RecordKey indexKey;
+	protected boolean keyDuplicates = false;
+
+	private volatile PersistentLookupIndex index;
+
+	public PersistentLookupTable(String id, String metadataName, String[] keys, String fileURL) {
+		super(id);
+		this.metadataName = metadataName;
+		this.keys = keys;
+		this.fileURL = fileURL;
+	}
+
+	public PersistentLookupTable(String id, DataRecordMetadata metadata, String[] keys, String fileURL) {
+		super(id);
+		this.metadata = metadata;
+		this.keys = keys;
+		this.fileURL = fileURL;
+	}
+
+	@Override
+	public Lookup createLookup(RecordKey key, DataRecord keyRecord) {
+		if (!isInitialized()) {
+			throw new NotInitializedException(this);
+		}
+		return new PersistentLookup(this, key, keyRecord);
+	}
+
+	@Override
+	public Lookup createLookup(RecordKey key) {
+		return createLookup(key, null);
+	}
+
+	@Override
+	public synchronized void init() throws ComponentNotReadyException {
+		if (isInitialized()) {
+			return;
+		}
+
+		super.init();
+
+		if (metadata == null) {
+			metadata = getGraph().getDataRecordMetadata(metadataName, true);
+		}
+		if (metadata == null) {
+			throw new ComponentNotReadyException("Metadata " + StringUtils.quote(metadataName) + " does not exist!!!");
+		}
+		if (fileURL == null) {
+			throw new ComponentNotReadyException(this, XML_FILE_URL + " is not specified");
+		}
+
+		if (indexKey == null) {
+			indexKey = new RecordKey(keys, metadata);
+		}
+		indexKey.setEqualNULLs(true);
+
+		if (charset == null) {
+			charset = Defaults.DataParser.DEFAULT_CHARSET_DECODER;
+		}
+	}
+
+	/**
+	 * Opens the index, the index is built if it does not exist or if it is out of date.
+	 */
+	@Override
+	public synchronized void preExecute() throws ComponentNotReadyException {
+		super.preExecute();
+
+		try {
+			long fingerprint = getFingerprint();
+			long[] sourceStamp = getSourceStamp();
+			boolean known = sourceStamp[1] > 0;
+			if (index != null && known && index.isCurrent(fingerprint, sourceStamp[0], sourceStamp[1])) {
+				return;
+			}
+			File indexFile = getIndexFile();
+			int[] keyFields = indexKey.getKeyFields();
+			if (known) {
+				PersistentLookupIndex existing = PersistentLookupIndex.open(indexFile, metadata, keyFields);
+				if (existing != null && existing.isCurrent(fingerprint, sourceStamp[0], sourceStamp[1])) {
+					index = existing;
+					return;
+				}
+			}
+			buildIndex(indexFile, fingerprint, sourceStamp);
+			index = PersistentLookupIndex.open(indexFile, metadata, keyFields);
+			if (index == null) {
+				throw new ComponentNotReadyException(this, "Index file " + indexFile + " cannot be opened.");
+			}
+		} catch (ComponentNotReadyException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ComponentNotReadyException(this, e);
+		}
+	}
+
+	private void buildIndex(File indexFile, long fingerprint, long[] sourceStamp) throws Exception {
+		long start = System.currentTimeMillis();
+		Parser parser = TextParserFactory.getParser(metadata, charset);
+		parser.init();
+		PersistentLookupIndexBuilder builder = new PersistentLookupIndexBuilder(metadata, indexKey.getKeyFields(), keyDuplicates);
+		try {
+			parser.setDataSource(FileUtils.getReadableChannel(getContextURL(), fileURL));
+			if (metadata.getSkipSourceRows() > 0) {
+				parser.skip(metadata.getSkipSourceRows());
+			}
+			builder.build(parser, indexFile, fingerprint, sourceStamp[0], sourceStamp[1]);
+		} finally {
+			parser.close();
+		}
+		log.info(this + ": index " + indexFile + " built in " + (System.currentTimeMillis() - start) + " ms, "
+				+ builder.getRecordCount() + " records, " + builder.getKeyCount() + " keys");
+	}
+
+	/**
+	 * @return size and last modification time of the source, modification time is 0 if it is not known
+	 */
+	private long[] getSourceStamp() throws IOException {
+		return SharedLookupTableRegistry.getSourceStamp(getContextURL(), fileURL);
+	}
+
+	private File getIndexFile() {
+		if (indexFileURL != null) {
+			return FileUtils.getJavaFile(getContextURL(), indexFileURL);
+		}
+		String source;
+		try {
+			source = FileUtils.getFileURL(getContextURL(), fileURL).toString();
+		} catch (MalformedURLException e) {
+			source = fileURL;
+		}
+		long hash = getFingerprint() * 31 + hash(source);
+		return new File(System.getProperty("java.io.tmpdir"), INDEX_FILE_PREFIX + Long.toHexString(hash) + INDEX_FILE_SUFFIX);
+	}
+
+	/**
+	 * @return hash of the configuration which affects content of the index - metadata, key and parsing
+	 */
+	private long getFingerprint() {
+		StringBuilder sb = new StringBuilder(SharedLookupTableRegistry.getMetadataSignature(metadata));
+		sb.append('|').append(charset).append('|').append(keyDuplicates).append('|').append(Arrays.toString(indexKey.getKeyFields()));
+		return hash(sb);
+	}
+
+	/**
+	 * FNV-1a 64-bit hash, stable across JVM runs.
+	 */
+	private static long hash(CharSequence s) {
+		long h = 0xCBF29CE484222325L;
+		for (int i = 0; i < s.length(); i++) {
+			h ^= s.charAt(i);
+			h *= 0x100000001B3L;
+		}
+		return h;
+	}
+
+	PersistentLookupIndex getIndex() {
+		PersistentLookupIndex result = index;
+		if (result == null) {
+			throw new IllegalStateException("Index of lookup table " + this + " is not opened.");
+		}
+		return result;
+	}
+
+	public static PersistentLookupTable fromProperties(TypedProperties properties)
+			throws AttributeNotFoundException, GraphConfigurationException {
+
+		for (String property : REQUESTED_ATTRIBUTE) {
+			if (!properties.containsKey(property)) {
+				throw new AttributeNotFoundException(property);
+			}
+		}
+		String type = properties.getStringProperty(XML_TYPE_ATTRIBUTE);
+		if (!type.equalsIgnoreCase(XML_LOOKUP_TYPE_PERSISTENT_LOOKUP)) {
+			throw new GraphConfigurationException("Can't create persistent lookup table from type " + type);
+		}
+		String[] keys = properties.getStringProperty(XML_LOOKUP_KEY).split(Defaults.Component.KEY_FIELDS_DELIMITER_REGEX);
+		String metadata = properties.getStringProperty(XML_METADATA_ID);
+
+		PersistentLookupTable lookupTable = new PersistentLookupTable(properties.getStringProperty(XML_ID_ATTRIBUTE), metadata, keys,
+				properties.getStringProperty(XML_FILE_URL, null, RefResFlag.URL));
+
+		if (properties.containsKey(XML_NAME_ATTRIBUTE)) {
+			lookupTable.setName(properties.getStringProperty(XML_NAME_ATTRIBUTE));
+		}
+		if (properties.containsKey(XML_CHARSET)) {
+			lookupTable.setCharset(properties.getStringProperty(XML_CHARSET));
+		}
+		if (properties.containsKey(XML_KEY_DUPLICATES_ATTRIBUTE)) {
+			lookupTable.setKeyDuplicates(properties.getBooleanProperty(XML_KEY_DUPLICATES_ATTRIBUTE));
+		}
+		if (properties.containsKey(XML_INDEX_FILE_URL)) {
+			lookupTable.setIndexFileURL(properties.getStringProperty(XML_INDEX_FILE_URL, null, RefResFlag.URL));
+		}
+
+		return lookupTable;
+	}
+
+	public static PersistentLookupTable fromXML(TransformationGraph graph, Element nodeXML)
+			throws XMLConfigurationException, AttributeNotFoundException {
+		ComponentXMLAttributes xattribs = new ComponentXMLAttributes(nodeXML, graph);
+
+		// reading obligatory attributes
+		String id = xattribs.getString(XML_ID_ATTRIBUTE);
+		String type = xattribs.getString(XML_TYPE_ATTRIBUTE);
+
+		// check type
+		if (!type.equalsIgnoreCase(XML_LOOKUP_TYPE_PERSISTENT_LOOKUP)) {
+			throw new XMLConfigurationException("Can't create persistent lookup table from type " + type);
+		}
+
+		String[] keys = xattribs.getString(XML_LOOKUP_KEY).split(Defaults.Component.KEY_FIELDS_DELIMITER_REGEX);
+		String metadata = xattribs.getString(XML_METADATA_ID);
+
+		PersistentLookupTable lookupTable = new PersistentLookupTable(id, metadata, keys,
+				xattribs.getStringEx(XML_FILE_URL, RefResFlag.URL));
+		lookupTable.setGraph(graph);
+
+		if (xattribs.exists(XML_NAME_ATTRIBUTE)) {
+			lookupTable.setName(xattribs.getString(XML_NAME_ATTRIBUTE));
+		}
+		if (xattribs.exists(XML_CHARSET)) {
+			lookupTable.setCharset(xattribs.getString(XML_CHARSET));
+		}
+		if (xattribs.exists(XML_KEY_DUPLICATES_ATTRIBUTE)) {
+			lookupTable.setKeyDuplicates(xattribs.getBoolean(XML_KEY_DUPLICATES_ATTRIBUTE));
+		}
+		if (xattribs.exists(XML_INDEX_FILE_URL)) {
+			lookupTable.setIndexFileURL(xattribs.getStringEx(XML_INDEX_FILE_URL, RefResFlag.URL));
+		}
+
+		return lookupTable;
+	}
+
+	@Override
+	public ConfigurationStatus checkConfig(ConfigurationStatus status) {
+		super.checkConfig(status);
+
+		if (metadata == null) {
+			metadata = getGraph().getDataRecordMetadata(metadataName, false);
+		}
+
+		try {
+			if (indexKey == null) {
+				indexKey = new RecordKey(keys, metadata);
+			}
+		} catch (NullPointerException e) {
+			status.addWarning(this, XML_LOOKUP_KEY, "Key metadata are null.");
+			indexKey = null; // we have to create it once again in init method after creating metadata from stub
+		} catch (RuntimeException e) {
+			status.addError(this, XML_LOOKUP_KEY, e);
+		}
+
+		if (fileURL == null) {
+			status.addError(this, XML_FILE_URL, "File URL is not specified.");
+		} else {
+			try {
+				FileUtils.getReadableChannel(getGraph().getRuntimeContext().getContextURL(), fileURL);
+			} catch (IOException e) {
+				status.addError(this, XML_FILE_URL, e);
+			}
+		}
+
+		if (indexFileURL != null) {
+			try {
+				FileUtils.getJavaFile(getGraph().getRuntimeContext().getContextURL(), indexFileURL);
+			} catch (JetelRuntimeException e) {
+				status.addError(this, XML_INDEX_FILE_URL, "Index file has to be a local file.", e);
+			}
+		}
+
+		return status;
+	}
+
+	@Override
+	public synchronized void free() {
+		if (isInitialized()) {
+			super.free();
+			index = null;
+		}
+	}
+
+	@Override
+	public void clear() {
+		// the index is immutable
+	}
+
+	@Override
+	public DataRecordMetadata getMetadata() {
+		return metadata;
+	}
+
+	@Override
+	public DataRecordMetadata getKeyMetadata() throws ComponentNotReadyException {
+		if (!isInitialized()) {
+			throw new NotInitializedException(this);
+		}
+		return indexKey.generateKeyRecordMetadata();
+	}
+
+	@Override
+	public boolean isPutSupported() {
+		return false;
+	}
+
+	@Override
+	public boolean isRemoveSupported() {
+		return false;
+	}
+
+	@Override
+	public boolean put(DataRecord dataRecord) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean remove(DataRecord dataRecord) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean remove(HashKey key) {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Iterates over all records of the index in order of their keys' hashes.
+	 */
+	@Override
+	public Iterator<DataRecord> iterator() {
+		if (!isInitialized()) {
+			throw new NotInitializedException(this);
+		}
+		final PersistentLookupIndex currentIndex = getIndex();
+		final PersistentLookupIndex.Reader reader = currentIndex.createReader();
+		return new Iterator<DataRecord>() {
+			private int slot = -1;
+			private long entry = PersistentLookupIndex.NO_ENTRY;
+
+			@Override
+			public boolean hasNext() {
+				while (entry == PersistentLookupIndex.NO_ENTRY && slot + 1 < currentIndex.getCapacity()) {
+					entry = reader.getSlotEntry(++slot);
+				}
+				return entry != PersistentLookupIndex.NO_ENTRY;
+			}
+
+			@Override
+			public DataRecord next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				DataRecord result = reader.read(entry).duplicate();
+				entry = keyDuplicates ? reader.next(entry) : PersistentLookupIndex.NO_ENTRY;
+				return result;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@Override
+	public void setCurrentPhase(int phase) {
+		//isn't required by the lookup table
+	}
+
+	public String getFileURL() {
+		return fileURL;
+	}
+
+	public void setFileURL(String fileURL) {
+		this.fileURL = fileURL;
+	}
+
+	public String getCharset() {
+		return charset;
+	}
+
+	public void setCharset(String charset) {
+		this.charset = charset;
+	}
+
+	public boolean isKeyDuplicates() {
+		return keyDuplicates;
+	}
+
+	public void setKeyDuplicates(boolean keyDuplicates) {
+		this.keyDuplicates = keyDuplicates;
+	}
+
+	public String getIndexFileURL() {
+		return indexFileURL;
+	}
+
+	/**
+	 * @param indexFileURL local file of the index, if null a file in the system temporary directory is used
+	 */
+	public void setIndexFileURL(String indexFileURL) {
+		this.indexFileURL = indexFileURL;
+	}
+
+}
+
+class PersistentLookup implements Lookup {
+
+	private final PersistentLookupTable lookupTable;
+	private final RecordKey key;
+	private DataRecord keyRecord;
+	private DataField[] keyFields;
+
+	private PersistentLookupIndex index;
+	private PersistentLookupIndex.Reader reader;
+
+	private long[] found = new long[1];
+	private int numFound;
+	private int position;
+
+	PersistentLookup(PersistentLookupTable lookupTable, RecordKey key, DataRecord keyRecord) {
+		this.lookupTable = lookupTable;
+		this.key = key;
+		if (keyRecord != null) {
+			setKeyRecord(keyRecord);
+		}
+	}
+
+	private void setKeyRecord(DataRecord keyRecord) {
+		this.keyRecord = keyRecord;
+		int[] keyFieldIndexes = key.getKeyFields();
+		keyFields = new DataField[keyFieldIndexes.length];
+		for (int i = 0; i < keyFields.length; i++) {
+			keyFields[i] = keyRecord.getField(keyFieldIndexes[i]);
+		}
+	}
+
+	@Override
+	public RecordKey getKey() {
+		return key;
+	}
+
+	@Override
+	public LookupTable getLookupTable() {
+		return lookupTable;
+	}
+
+	@Override
+	public int getNumFound() {
+		return numFound;
+	}
+
+	@Override
+	public void seek() {
+		if (keyFields == null) {
+			throw new IllegalStateException("No key data for performing lookup");
+		}
+		PersistentLookupIndex currentIndex = lookupTable.getIndex();
+		if (currentIndex != index) {
+			// the index has been rebuilt
+			index = currentIndex;
+			reader = index.createReader();
+		}
+		numFound = 0;
+		position = 0;
+		if (keyFields.length != lookupTable.indexKey.getLength()) {
+			return;
+		}
+		long entry = reader.find(keyFields);
+		while (entry != PersistentLookupIndex.NO_ENTRY) {
+			if (numFound == found.length) {
+				found = Arrays.copyOf(found, numFound * 2);
+			}
+			found[numFound++] = entry;
+			entry = lookupTable.isKeyDuplicates() ? reader.next(entry) : PersistentLookupIndex.NO_ENTRY;
+		}
+	}
+
+	@Override
+	public void seek(DataRecord keyRecord) {
+		if (keyRecord != this.keyRecord) {
+			setKeyRecord(keyRecord);
+		}
+		seek();
+	}
+
+	@Override
+	public boolean hasNext() {
+		return position < numFound;
+	}
+
+	@Override
+	public DataRecord next() {
+		if (position >= numFound) {
+			throw new NoSuchElementException();
+		}
+		return reader.read(found[position++]);
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("Method not supported!");
+	}
+
+}
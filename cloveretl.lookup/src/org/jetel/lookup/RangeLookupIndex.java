@@ -0,0 +1,227 @@
+/*
+ * jETeL/CloverETL - Java based ETL application framework.
+ * Copyright (c) Javlin, a.s. (info@cloveretl.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jetel.lookup;
+
+import java.text.RuleBasedCollator;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+import org.jetel.data.DataField;
+import org.jetel.data.DataRecord;
+import org.jetel.data.StringDataField;
+import org.jetel.metadata.DataFieldMetadata;
+
+/**
+ * Immutable read-only index of intervals of {@link RangeLookupTable}.<br>
+ * Records are kept in a packed array in the order of the lookup table. The intervals of the first
+ * start/end field pair are sorted by their start and organized as an implicit balanced binary tree,
+ * where every node knows the maximal end of its subtree (augmented interval tree). Searching for
+ * intervals containing a value takes O(log n + k) and does not need any lock, so the index can be shared
+ * by all lookups of the table. Null start is treated as minus infinity, null end as plus infinity.<br>
+ * The index returns candidates only, the exact test of all start/end field pairs including
+ * start/end inclusion is left to the caller.
+ *
+ * @author Javlin, a.s. (info@cloveretl.com)
+ */
+class RangeLookupIndex {
+
+	/** records in the order of the lookup table */
+	private final DataRecord[] records;
+	/** indexes of the records sorted by the start of the first interval */
+	private final int[] byStart;
+	/** maxEnd[i] is index of the record with maximal end in the subtree rooted at byStart[i] */
+	private final int[] maxEnd;
+
+	private final int startField;
+	private final int endField;
+	private final RuleBasedCollator startCollator;
+	private final RuleBasedCollator endCollator;
+
+	/**
+	 * @param records records of the lookup table in the table order
+	 * @param startField index of the start field of the first interval
+	 * @param endField index of the end field of the first interval
+	 * @param collators collators of the lookup table fields, can be null
+	 */
+	RangeLookupIndex(Collection<DataRecord> records, int startField, int endField, RuleBasedCollator[] collators) {
+		this.records = records.toArray(new DataRecord[records.size()]);
+		this.startField = startField;
+		this.endField = endField;
+		this.startCollator = getCollator(collators, startField);
+		this.endCollator = getCollator(collators, endField);
+
+		Integer[] order = new Integer[this.records.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return compareStarts(RangeLookupIndex.this.records[o1].getField(RangeLookupIndex.this.startField),
+						RangeLookupIndex.this.records[o2].getField(RangeLookupIndex.this.startField));
+			}
+		});
+		byStart = new int[order.length];
+		for (int i = 0; i < order.length; i++) {
+			byStart[i] = order[i];
+		}
+		maxEnd = new int[byStart.length];
+		if (byStart.length > 0) {
+			buildMaxEnd(0, byStart.length);
+		}
+	}
+
+	private RuleBasedCollator getCollator(RuleBasedCollator[] collators, int field) {
+		if (collators == null || collators[field] == null || records.length == 0
+				|| records[0].getField(field).getMetadata().getType() != DataFieldMetadata.STRING_FIELD) {
+			return null;
+		}
+		return collators[field];
+	}
+
+	/**
+	 * Fills maxEnd for subtree of positions [from, to) and returns index of the record with maximal end.
+	 */
+	private int buildMaxEnd(int from, int to) {
+		int middle = (from + to) >>> 1;
+		int max = byStart[middle];
+		if (from < middle) {
+			max = maxOfEnds(max, buildMaxEnd(from, middle));
+		}
+		if (middle + 1 < to) {
+			max = maxOfEnds(max, buildMaxEnd(middle + 1, to));
+		}
+		maxEnd[middle] = max;
+		return max;
+	}
+
+	private int maxOfEnds(int record1, int record2) {
+		DataField end1 = records[record1].getField(endField);
+		DataField end2 = records[record2].getField(endField);
+		if (end1.isNull()) {
+			return record1;
+		}
+		if (end2.isNull()) {
+			return record2;
+		}
+		return compare(end1, end2, endCollator) >= 0 ? record1 : record2;
+	}
+
+	private int compareStarts(DataField start1, DataField start2) {
+		if (start1.isNull()) {
+			return start2.isNull() ? 0 : -1;
+		}
+		if (start2.isNull()) {
+			return 1;
+		}
+		return compare(start1, start2, startCollator);
+	}
+
+	private static int compare(DataField field1, DataField field2, RuleBasedCollator collator) {
+		if (collator != null) {
+			return ((StringDataField) field1).compareTo(field2, collator);
+		}
+		return field1.compareTo(field2);
+	}
+
+	/**
+	 * @param index index of the record in the table order
+	 * @return record of the lookup table
+	 */
+	DataRecord getRecord(int index) {
+		return records[index];
+	}
+
+	/**
+	 * Finds all records, whose first interval (with both bounds included) contains given value.
+	 *
+	 * @param startValue searched value as the start field type
+	 * @param endValue searched value as the end field type
+	 * @return indexes of found records in the table order
+	 */
+	int[] find(DataField startValue, DataField endValue) {
+		if (startValue.isNull() || endValue.isNull()) {
+			// nothing can be pruned, let the caller decide
+			int[] result = new int[records.length];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = i;
+			}
+			return result;
+		}
+		// records at positions [0, candidates) start before or at the value
+		int low = 0;
+		int high = byStart.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (compareStarts(records[byStart[middle]].getField(startField), startValue) <= 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		Finder finder = new Finder(endValue, low);
+		finder.find(0, byStart.length);
+		int[] result = Arrays.copyOf(finder.result, finder.count);
+		Arrays.sort(result);
+		return result;
+	}
+
+	private boolean endsBefore(int record, DataField value) {
+		DataField end = records[record].getField(endField);
+		return !end.isNull() && compare(end, value, endCollator) < 0;
+	}
+
+	/**
+	 * Traverses the implicit tree and collects records which do not end before the value.
+	 */
+	private class Finder {
+
+		private final DataField value;
+		private final int candidates;
+		int[] result = new int[16];
+		int count;
+
+		Finder(DataField value, int candidates) {
+			this.value = value;
+			this.candidates = candidates;
+		}
+
+		void find(int from, int to) {
+			if (from >= to || from >= candidates) {
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			if (endsBefore(maxEnd[middle], value)) {
+				// whole subtree ends before the value
+				return;
+			}
+			find(from, middle);
+			if (middle < candidates && !endsBefore(byStart[middle], value)) {
+				if (count == result.length) {
+					result = Arrays.copyOf(result, result.length * 2);
+				}
+				result[count++] = byStart[middle];
+			}
+			find(middle + 1, to);
+		}
+
+	}
+
+}
@@ -26,6 +26,7 @@ import java.text.RuleBasedCollator;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.SortedSet;
@@ -106,6 +107,7 @@ public class RangeLookupTable extends GraphElement implements LookupTable {
     protected String metadataId;
 	protected Parser dataParser;
 	protected SortedSet<DataRecord> sortedDataRecordSet;//set of intervals
+	private volatile RangeLookupIndex index;//read-only index of sortedDataRecordSet, null if it has to be rebuilt
 	protected RecordKey startKey;
 	protected String[] startFields;
 	protected int[] startField;
@@ -319,6 +321,7 @@ public class RangeLookupTable extends GraphElement implements LookupTable {
 				while (dataParser.getNext(tmpRecord) != null) {
 					sortedDataRecordSet.add(tmpRecord.duplicate());
 				}
+				index = null;
 			} catch (Exception e) {
 				throw new ComponentNotReadyException(this, e);
 			} finally {
@@ -335,6 +338,7 @@ public class RangeLookupTable extends GraphElement implements LookupTable {
 	public void postExecute() throws ComponentNotReadyException {
 		super.postExecute();
 		sortedDataRecordSet.clear();
+		index = null;
 	}
 
 	@Override
@@ -345,6 +349,7 @@ public class RangeLookupTable extends GraphElement implements LookupTable {
 	@Override
 	public synchronized void clear() {
 		sortedDataRecordSet.clear();
+		index = null;
 	}
 
     @Override
@@ -377,6 +382,7 @@ public class RangeLookupTable extends GraphElement implements LookupTable {
         }
 
 		sortedDataRecordSet.add(dataRecord.duplicate());
+		index = null;
 
 		return true;
 	}
@@ -387,7 +393,11 @@ public class RangeLookupTable extends GraphElement implements LookupTable {
             throw new NotInitializedException(this);
         }
 
-	    return sortedDataRecordSet.remove(dataRecord);
+	    boolean removed = sortedDataRecordSet.remove(dataRecord);
+	    if (removed) {
+	    	index = null;
+	    }
+	    return removed;
 	}
 
 	@Override
@@ -629,6 +639,33 @@ public class RangeLookupTable extends GraphElement implements LookupTable {
 	}
 
 
+	/**
+	 * Returns read-only index of the intervals. The index is built on the first call after the table
+	 * has been changed, so the table should be filled before the lookups are performed.
+	 * 
+	 * @return current index of the lookup table
+	 */
+	RangeLookupIndex getIndex() {
+		RangeLookupIndex result = index;
+		if (result == null) {
+			synchronized (sortedDataRecordSet) {
+				result = index;
+				if (result == null) {
+					result = new RangeLookupIndex(sortedDataRecordSet, startField[0], endField[0], collators);
+					index = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return true if the table has been modified since the index was created
+	 */
+	boolean isIndexOutdated(RangeLookupIndex index) {
+		return this.index != index;
+	}
+
 	@Override
 	public Lookup createLookup(RecordKey key) {
 		return createLookup(key, null);
@@ -669,7 +706,6 @@ public class RangeLookupTable extends GraphElement implements LookupTable {
 
 class RangeLookup implements Lookup{
 	
-	private SortedSet<DataRecord> sortedDataRecordSet;
 	private RangeLookupTable lookupTable;
 	private DataRecord tmpRecord;
 	private int[] startField;
@@ -677,8 +713,9 @@ class RangeLookup implements Lookup{
 	private RecordKey key;
 	private DataRecord inRecord;
 	private int[] keyFields;
-	private SortedSet<DataRecord> subTable;
-	private Iterator<DataRecord> subTableIterator;
+	private RangeLookupIndex index;
+	private int[] candidates;
+	private int candidateIndex;
 	private DataRecord next;
 	private RuleBasedCollator[] collators;
 	private boolean useCollator = false;
@@ -700,7 +737,6 @@ class RangeLookup implements Lookup{
 	    		break;
 	    	}
 	    }
-	    this.sortedDataRecordSet = lookupTable.sortedDataRecordSet;
 		this.key = key;
 		this.inRecord = record;
 		this.keyFields = key.getKeyFields();
@@ -719,12 +755,11 @@ class RangeLookup implements Lookup{
 	@Override
 	public synchronized int getNumFound() {
 		int alreadyFound = numFound;
+		int alreadyChecked = candidateIndex;
 		while (getNext() != null) {};
 		int tmp = numFound;
-		subTableIterator = subTable.iterator();
-		for (int i=0;i<alreadyFound;i++){
-			getNext();
-		}
+		numFound = alreadyFound;
+		candidateIndex = alreadyChecked;
 		return tmp;
 	}
 
@@ -735,10 +770,10 @@ class RangeLookup implements Lookup{
 			tmpRecord.getField(startField[i]).setValue(inRecord.getField(keyFields[i]));
 			tmpRecord.getField(endField[i]).setValue(inRecord.getField(keyFields[i]));
 		}
-		synchronized (sortedDataRecordSet) {
-			subTable = sortedDataRecordSet.tailSet(tmpRecord);
-			subTableIterator = subTable.iterator();
-		}
+		//candidates are found lock-free by the first interval, the rest is checked in getNext()
+		index = lookupTable.getIndex();
+		candidates = index.find(tmpRecord.getField(startField[0]), tmpRecord.getField(endField[0]));
+		candidateIndex = 0;
 		numFound = 0;
 		next = getNext();
 	}
@@ -750,16 +785,16 @@ class RangeLookup implements Lookup{
 	}
 
 	private DataRecord getNext(){
-		if (subTableIterator == null) {
+		if (candidates == null) {
 			return null;
 		}
 		boolean[] ok = new boolean[startField.length];
 		Arrays.fill(ok, false);
 		boolean allOK = false;
 		DataRecord result = null;
-		nextCandidate: while (!(allOK = checkAll(ok)) && subTableIterator.hasNext()){
+		nextCandidate: while (!(allOK = checkAll(ok)) && candidateIndex < candidates.length){
 			Arrays.fill(ok, false);
-			result = subTableIterator.next();
+			result = index.getRecord(candidates[candidateIndex++]);
 			for (int i = 0; i < startField.length; i++) {
 				comparison = compare(tmpRecord, result, i);
 				if ((comparison[0] < 0 || (comparison[0] == 0 && !startInclude[i])) || (comparison[1] > 0 || (comparison[1] == 0 && !endInclude[i]))) {
@@ -794,6 +829,9 @@ class RangeLookup implements Lookup{
 		if (next == null) {
 			throw new NoSuchElementException();
 		}
+		if (lookupTable.isIndexOutdated(index)) {
+			throw new ConcurrentModificationException();
+		}
 		DataRecord tmp = next.duplicate();
 		next = getNext();
 		return tmp;
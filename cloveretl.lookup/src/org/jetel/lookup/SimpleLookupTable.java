@@ -20,18 +20,22 @@ package org.jetel.lookup;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.net.MalformedURLException;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
+import org.apache.log4j.Logger;
 import org.jetel.data.DataRecord;
 import org.jetel.data.DataRecordFactory;
 import org.jetel.data.DataRecordMap;
 import org.jetel.data.DataRecordMap.DataRecordIterator;
 import org.jetel.data.Defaults;
 import org.jetel.data.HashKey;
+import org.jetel.data.OffHeapDataRecordMap;
 import org.jetel.data.RecordKey;
 import org.jetel.data.lookup.Lookup;
 import org.jetel.data.lookup.LookupTable;
+import org.jetel.data.lookup.SharedLookupTableRegistry;
 import org.jetel.data.parser.Parser;
 import org.jetel.data.parser.TextParserFactory;
 import org.jetel.exception.AttributeNotFoundException;
@@ -63,13 +67,22 @@ import org.w3c.dom.Element;
  *              dataType NMTOKEN (delimited | fixed) #REQUIRED
  *              fileURL CDATA #REQUIRED
  *              charset CDATA #IMPLIED
- *              initialSize CDATA #IMPLIED&gt;
+ *              initialSize CDATA #IMPLIED
+ *              shared (true | false) #IMPLIED
+ *              offHeap (true | false) #IMPLIED&gt;
+ *
+ * If the table is shared, its data are loaded once and shared by all shared lookup tables
+ * in the JVM with the same metadata, key and source (including its modification time),
+ * see {@link SharedLookupTableRegistry}. Shared table is read-only.<br>
+ * If the table is off-heap, records are stored serialized in direct memory (see {@link OffHeapDataRecordMap})
+ * and a record returned by a lookup is valid only until the next seek of the lookup.
  *              
  * @author     dpavlis
  * @since    May 2, 2002
  */
 public class SimpleLookupTable extends GraphElement implements LookupTable {
 
+	private static final Logger log = Logger.getLogger(SimpleLookupTable.class);
 	
 	private static final String XML_LOOKUP_TYPE_SIMPLE_LOOKUP = "simpleLookup";
 	private static final String XML_LOOKUP_INITIAL_SIZE = "initialSize";
@@ -78,6 +91,8 @@ public class SimpleLookupTable extends GraphElement implements LookupTable {
 	private static final String XML_CHARSET = "charset";
 	private static final String XML_DATA_ATTRIBUTE = "data";
 	private static final String XML_KEY_DUPLICATES_ATTRIBUTE = "keyDuplicates";
+	private static final String XML_SHARED_ATTRIBUTE = "shared";
+	private static final String XML_OFF_HEAP_ATTRIBUTE = "offHeap";
 
 	private final static String[] REQUESTED_ATTRIBUTE = { XML_ID_ATTRIBUTE, XML_TYPE_ATTRIBUTE, XML_METADATA_ID, XML_LOOKUP_KEY };
 
@@ -91,6 +106,11 @@ public class SimpleLookupTable extends GraphElement implements LookupTable {
 	protected RecordKey indexKey;
 	protected int tableInitialSize = DEFAULT_INITIAL_CAPACITY;
 	protected boolean keyDuplicates = false;
+	protected boolean shared = false;
+	protected boolean offHeap = false;
+
+	/** key of the data acquired from {@link SharedLookupTableRegistry}, null if the data are not shared */
+	private Object sharedKey;
 
 	// data of the lookup table, can be used instead of an input file
 	protected String data;
@@ -197,7 +217,7 @@ public class SimpleLookupTable extends GraphElement implements LookupTable {
 		indexKey.setEqualNULLs(true);
 
 		if (lookupTable == null) {
-			lookupTable = new DataRecordMap(indexKey, keyDuplicates, tableInitialSize);
+			lookupTable = createDataRecordMap();
 		}
 
 		if (charset == null) {
@@ -216,7 +236,9 @@ public class SimpleLookupTable extends GraphElement implements LookupTable {
 	@Override
 	public void postExecute() throws ComponentNotReadyException {
 		super.postExecute();
-		if (lookupTable != null) {
+		if (sharedKey != null) {
+			releaseSharedData();
+		} else if (lookupTable != null) {
 			lookupTable.clear();
 		}
 	}
@@ -238,29 +260,90 @@ public class SimpleLookupTable extends GraphElement implements LookupTable {
 			 * populate the lookupTable (Map) with data if provided dataParser is not null, otherwise it is assumed that
 			 * the lookup table will be populated later by calling put() method
 			 */
-			DataRecord record = DataRecordFactory.newRecord(metadata);
+			Object key = shared ? createSharedKey() : null;
+			if (key != null) {
+				lookupTable = SharedLookupTableRegistry.getInstance().acquire(key, new SharedLookupTableRegistry.Loader<DataRecordMap>() {
+					@Override
+					public DataRecordMap load() throws ComponentNotReadyException {
+						DataRecordMap map = createDataRecordMap();
+						loadData(map);
+						return map;
+					}
+				});
+				sharedKey = key;
+			} else {
+				loadData(lookupTable);
+			}
+		}
+	}
+
+	private void loadData(DataRecordMap map) throws ComponentNotReadyException {
+		DataRecord record = DataRecordFactory.newRecord(metadata);
+		try {
+			if (fileURL != null) {
+				dataParser.setDataSource(FileUtils.getReadableChannel(getContextURL(), fileURL));
+			} else if (data != null) {
+				dataParser.setDataSource(new ByteArrayInputStream(data.getBytes(charset)));
+			}
+			if (metadata.getSkipSourceRows() > 0) {
+				dataParser.skip(metadata.getSkipSourceRows());
+			}
+			while (dataParser.getNext(record) != null) {
+				// off-heap map serializes the record, so it can be reused
+				map.put(offHeap ? record : record.duplicate());
+			}
+		} catch (Exception e) {
+			throw new ComponentNotReadyException(this, e);
+		} finally {
+			try {
+				dataParser.close();
+			} catch (IOException e) {
+				throw new ComponentNotReadyException(this, "Data parser cannot be closed.", e);
+			}
+		}
+	}
+
+	/**
+	 * @return key of the data in {@link SharedLookupTableRegistry} or null if the data cannot be shared
+	 * since modification time of the source is not known
+	 */
+	private Object createSharedKey() throws ComponentNotReadyException {
+		String source;
+		long[] stamp;
+		if (fileURL != null) {
 			try {
-				if (fileURL != null) {
-					dataParser.setDataSource(FileUtils.getReadableChannel(getContextURL(), fileURL));
-				} else if (data != null) {
-					dataParser.setDataSource(new ByteArrayInputStream(data.getBytes(charset)));
-				}
-				if (metadata.getSkipSourceRows() > 0) {
-					dataParser.skip(metadata.getSkipSourceRows());
-				}
-				while (dataParser.getNext(record) != null) {
-					lookupTable.put(record.duplicate());
-				}
-			} catch (Exception e) {
+				source = FileUtils.getFileURL(getContextURL(), fileURL).toString();
+				stamp = SharedLookupTableRegistry.getSourceStamp(getContextURL(), fileURL);
+			} catch (MalformedURLException e) {
 				throw new ComponentNotReadyException(this, e);
-			} finally {
-				try {
-					dataParser.close();
-				} catch (IOException e) {
-					throw new ComponentNotReadyException(this, "Data parser cannot be closed.", e);
-				}
 			}
+			if (stamp[1] <= 0) {
+				log.info(this + ": modification time of " + source + " is not known, data of the lookup table are not shared.");
+				return null;
+			}
+		} else {
+			// inline data are part of the key
+			source = data;
+			stamp = new long[] { data.length(), 0 };
+		}
+		return SharedLookupTableRegistry.createKey(metadata, indexKey.getKeyFieldNames(), source, stamp[1], stamp[0],
+				charset, keyDuplicates, offHeap, dataParser.getClass().getName());
+	}
+
+	/**
+	 * Releases the shared data, the table gets its own empty data.
+	 */
+	private void releaseSharedData() {
+		SharedLookupTableRegistry.getInstance().release(sharedKey);
+		sharedKey = null;
+		lookupTable = createDataRecordMap();
+	}
+
+	private DataRecordMap createDataRecordMap() {
+		if (offHeap) {
+			return new OffHeapDataRecordMap(indexKey, keyDuplicates, tableInitialSize);
 		}
+		return new DataRecordMap(indexKey, keyDuplicates, tableInitialSize);
 	}
 
 	@Override
@@ -301,6 +384,12 @@ public class SimpleLookupTable extends GraphElement implements LookupTable {
 		if (properties.containsKey(XML_DATA_ATTRIBUTE)) {
 			lookupTable.setData(properties.getStringProperty(XML_DATA_ATTRIBUTE));
 		}
+		if (properties.containsKey(XML_SHARED_ATTRIBUTE)) {
+			lookupTable.setShared(properties.getBooleanProperty(XML_SHARED_ATTRIBUTE));
+		}
+		if (properties.containsKey(XML_OFF_HEAP_ATTRIBUTE)) {
+			lookupTable.setOffHeap(properties.getBooleanProperty(XML_OFF_HEAP_ATTRIBUTE));
+		}
 
 		return lookupTable;
 	}
@@ -344,19 +433,35 @@ public class SimpleLookupTable extends GraphElement implements LookupTable {
 		if (xattribs.exists(XML_DATA_ATTRIBUTE)) {
 			lookupTable.setData(xattribs.getString(XML_DATA_ATTRIBUTE));
 		}
+		if (xattribs.exists(XML_SHARED_ATTRIBUTE)) {
+			lookupTable.setShared(xattribs.getBoolean(XML_SHARED_ATTRIBUTE));
+		}
+		if (xattribs.exists(XML_OFF_HEAP_ATTRIBUTE)) {
+			lookupTable.setOffHeap(xattribs.getBoolean(XML_OFF_HEAP_ATTRIBUTE));
+		}
 
 		return lookupTable;
 	}
 	
 	@Override
 	public void clear() {
-		lookupTable.clear();
+		if (sharedKey != null) {
+			// shared data cannot be modified, the table just stops using them
+			releaseSharedData();
+		} else {
+			lookupTable.clear();
+		}
 	}
 
 	@Override
 	public synchronized void free() {
 		if (isInitialized()) {
 			super.free();
+			if (sharedKey != null) {
+				SharedLookupTableRegistry.getInstance().release(sharedKey);
+				sharedKey = null;
+				lookupTable = null;
+			}
 			if (lookupTable != null) {
 				lookupTable.clear();
 				lookupTable = null;
@@ -413,12 +518,12 @@ public class SimpleLookupTable extends GraphElement implements LookupTable {
 
 	@Override
 	public boolean isPutSupported() {
-		return true;
+		return !shared;
 	}
 
 	@Override
 	public boolean isRemoveSupported() {
-		return true;
+		return !shared;
 	}
 
 	@Override
@@ -426,7 +531,8 @@ public class SimpleLookupTable extends GraphElement implements LookupTable {
 		if (!isInitialized()) {
 			throw new NotInitializedException(this);
 		}
-		lookupTable.put(dataRecord.duplicate());
+		checkNotShared();
+		lookupTable.put(offHeap ? dataRecord : dataRecord.duplicate());
 
 		return true;
 	}
@@ -436,6 +542,7 @@ public class SimpleLookupTable extends GraphElement implements LookupTable {
 		if (!isInitialized()) {
 			throw new NotInitializedException(this);
 		}
+		checkNotShared();
 
 		return lookupTable.remove(dataRecord);
 	}
@@ -445,9 +552,16 @@ public class SimpleLookupTable extends GraphElement implements LookupTable {
 		if (!isInitialized()) {
 			throw new NotInitializedException(this);
 		}
+		checkNotShared();
 		return lookupTable.remove(key.getRecordKey(), key.getDataRecord());
 	}
 
+	private void checkNotShared() {
+		if (sharedKey != null) {
+			throw new UnsupportedOperationException("Shared lookup table " + this + " is read-only.");
+		}
+	}
+
 	@Override
 	public Iterator<DataRecord> iterator() {
 		if (!isInitialized()) {
@@ -488,6 +602,29 @@ public class SimpleLookupTable extends GraphElement implements LookupTable {
 		this.keyDuplicates = keyDuplicates;
 	}
 
+	public boolean isShared() {
+		return shared;
+	}
+
+	/**
+	 * @param shared if true, data of the table are shared with other tables with the same configuration
+	 * and the table is read-only
+	 */
+	public void setShared(boolean shared) {
+		this.shared = shared;
+	}
+
+	public boolean isOffHeap() {
+		return offHeap;
+	}
+
+	/**
+	 * @param offHeap if true, records are stored serialized in direct memory, see {@link OffHeapDataRecordMap}
+	 */
+	public void setOffHeap(boolean offHeap) {
+		this.offHeap = offHeap;
+	}
+
 	@Override
 	public DataRecordMetadata getKeyMetadata() throws ComponentNotReadyException {
 		if (!isInitialized()) {
@@ -509,6 +646,8 @@ class SimpleLookup implements Lookup {
 	protected DataRecord curentResult;
 	private RecordKey key;
 	private int numFound = 0;
+	private DataRecordMap data;
+	private DataRecord keyRecord;
 	private DataRecordMap.DataRecordLookup tableLookup;
 	protected SimpleLookupTable lookupTable;
 
@@ -516,6 +655,8 @@ class SimpleLookup implements Lookup {
 	private DataRecordIterator iterator;
 
 	SimpleLookup(DataRecordMap data, RecordKey key, DataRecord record, boolean duplicate) {
+		this.data = data;
+		this.keyRecord = record;
 		this.tableLookup = data.createDataRecordLookup(key, record);
 		this.key = key;
 		this.duplicate = duplicate;
@@ -546,6 +687,11 @@ class SimpleLookup implements Lookup {
 
 	@Override
 	public void seek() {
+		if (lookupTable != null && lookupTable.lookupTable != data) {
+			// data of shared table are acquired again in each phase
+			data = lookupTable.lookupTable;
+			tableLookup = data.createDataRecordLookup(key, keyRecord);
+		}
 		if (duplicate) {
 			iterator = tableLookup.getAll();
 		} else {
@@ -556,6 +702,7 @@ class SimpleLookup implements Lookup {
 
 	@Override
 	public void seek(DataRecord keyRecord) {
+		this.keyRecord = keyRecord;
 		tableLookup.setDataRecord(keyRecord);
 		seek();
 	}
@@ -1,5 +1,7 @@
 package org.jetel.lookup;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 import org.apache.log4j.Logger;
@@ -244,6 +246,56 @@ public class DBLookupTest extends CloverTestCase {
 		lookupTable.postExecute();
 	}
 
+	public void testBatch() throws Exception {
+		lookupTable.setNumCached(1000);
+		lookupTable.setBatchSize(10);
+		lookupTable.setBatchThreads(2);
+		lookupTable.preExecute();
+		lookup = lookupTable.createLookup(recordKey, customer);
+
+		DBLookupTable plainTable = new DBLookupTable("MyLookup2", lookupTable.connection, null, "select * from employee where last_name=?", 0);
+		plainTable.init();
+		plainTable.preExecute();
+		DataRecord plainKey = DataRecordFactory.newRecord(customer.getMetadata());
+		Lookup plainLookup = plainTable.createLookup(new RecordKey(recordKey.getKeyFields(), customer.getMetadata()), plainKey);
+
+		List<DataRecord> customers = new ArrayList<DataRecord>();
+		while ((parser.getNext(customer)) != null) {
+			customers.add(customer.duplicate());
+		}
+		// the first seek discovers metadata of the database records
+		customer.copyFrom(customers.get(0));
+		lookup.seek();
+		for (int i = 0; i < customers.size(); i += 25) {
+			List<DataRecord> window = customers.subList(i, Math.min(i + 25, customers.size()));
+			((DBLookup) lookup).prefetch(window);
+			for (DataRecord windowRecord : window) {
+				customer.copyFrom(windowRecord);
+				plainKey.copyFrom(windowRecord);
+				lookup.seek();
+				plainLookup.seek();
+				assertEquals(plainLookup.getNumFound(), lookup.getNumFound());
+				while (lookup.hasNext()) {
+					employee = lookup.next();
+					assertEquals(customer.getField("lname"), employee.getField("last_name"));
+				}
+			}
+		}
+		log.info("From cache found: " + ((DBLookup) lookup).getCacheNumber());
+		plainTable.postExecute();
+		plainTable.free();
+		lookupTable.postExecute();
+	}
+
+	public void testBatchable() {
+		assertTrue(DBLookupBatchQuery.isBatchable("select * from employee where last_name=?"));
+		assertTrue(DBLookupBatchQuery.isBatchable("select * from (select * from employee order by id) e where last_name=?"));
+		assertTrue(DBLookupBatchQuery.isBatchable("select * from employee where last_name=? and note <> 'order by'"));
+		assertTrue(DBLookupBatchQuery.isBatchable("select * from border_by where last_name=?"));
+		assertFalse(DBLookupBatchQuery.isBatchable("select * from employee where last_name=? order by id"));
+		assertFalse(DBLookupBatchQuery.isBatchable("SELECT * FROM employee WHERE last_name=?\nORDER\tBY id"));
+	}
+
 	private void readFirstN(long start, int readlimit) throws JetelException {
 		int record = 0;
 		while ((parser.getNext(customer)) != null) {
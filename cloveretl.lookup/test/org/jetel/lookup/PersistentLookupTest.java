@@ -0,0 +1,145 @@
+package org.jetel.lookup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.jetel.data.DataRecord;
+import org.jetel.data.DataRecordFactory;
+import org.jetel.data.RecordKey;
+import org.jetel.data.lookup.Lookup;
+import org.jetel.metadata.DataFieldMetadata;
+import org.jetel.metadata.DataRecordMetadata;
+import org.jetel.test.CloverTestCase;
+
+public class PersistentLookupTest extends CloverTestCase {
+
+	private DataRecordMetadata metadata;
+	private File sourceFile;
+	private File indexFile;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		metadata = new DataRecordMetadata("lookupTest", DataRecordMetadata.DELIMITED_RECORD);
+		metadata.addField(new DataFieldMetadata("id", DataFieldMetadata.INTEGER_FIELD, ";"));
+		metadata.addField(new DataFieldMetadata("name", DataFieldMetadata.STRING_FIELD, "\n"));
+		sourceFile = File.createTempFile("persistentLookup", ".txt");
+		indexFile = new File(sourceFile.getPath() + ".idx");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		sourceFile.delete();
+		indexFile.delete();
+		super.tearDown();
+	}
+
+	private void writeSource(int count, int duplicates) throws IOException {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(sourceFile), "UTF-8");
+		try {
+			// duplicates of a key are far from each other
+			for (int j = 0; j < duplicates; j++) {
+				for (int i = 0; i < count; i++) {
+					writer.write(i + ";name" + i + "_" + j + "\n");
+				}
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	private PersistentLookupTable createTable(boolean keyDuplicates) throws Exception {
+		PersistentLookupTable table = new PersistentLookupTable("persistentLookup", metadata, new String[] { "id" }, sourceFile.getAbsolutePath());
+		table.setKeyDuplicates(keyDuplicates);
+		table.setIndexFileURL(indexFile.getAbsolutePath());
+		table.init();
+		table.preExecute();
+		return table;
+	}
+
+	public void testLookup() throws Exception {
+		writeSource(10000, 1);
+		PersistentLookupTable table = createTable(false);
+		DataRecord keyRecord = DataRecordFactory.newRecord(metadata);
+		Lookup lookup = table.createLookup(new RecordKey(new String[] { "id" }, metadata), keyRecord);
+		for (int i = 0; i < 10000; i++) {
+			keyRecord.getField("id").setValue(i);
+			lookup.seek();
+			assertEquals(1, lookup.getNumFound());
+			assertTrue(lookup.hasNext());
+			assertEquals("name" + i + "_0", lookup.next().getField("name").toString());
+			assertFalse(lookup.hasNext());
+		}
+		keyRecord.getField("id").setValue(10000);
+		lookup.seek();
+		assertEquals(0, lookup.getNumFound());
+		assertFalse(lookup.hasNext());
+		keyRecord.getField("id").setNull(true);
+		lookup.seek();
+		assertEquals(0, lookup.getNumFound());
+
+		Set<Object> ids = new HashSet<Object>();
+		for (Iterator<DataRecord> it = table.iterator(); it.hasNext();) {
+			ids.add(it.next().getField("id").getValue());
+		}
+		assertEquals(10000, ids.size());
+		table.free();
+	}
+
+	public void testDuplicates() throws Exception {
+		writeSource(50000, 3);
+		PersistentLookupTable table = createTable(true);
+		DataRecord keyRecord = DataRecordFactory.newRecord(metadata);
+		Lookup lookup = table.createLookup(new RecordKey(new String[] { "id" }, metadata));
+		for (int i = 0; i < 50000; i++) {
+			keyRecord.getField("id").setValue(i);
+			lookup.seek(keyRecord);
+			assertEquals(3, lookup.getNumFound());
+			for (int j = 0; j < 3; j++) {
+				assertEquals("name" + i + "_" + j, lookup.next().getField("name").toString());
+			}
+			assertFalse(lookup.hasNext());
+		}
+		table.free();
+
+		// without duplicates the last record of the key is kept
+		table = createTable(false);
+		lookup = table.createLookup(new RecordKey(new String[] { "id" }, metadata), keyRecord);
+		keyRecord.getField("id").setValue(42);
+		lookup.seek();
+		assertEquals(1, lookup.getNumFound());
+		assertEquals("name42_2", lookup.next().getField("name").toString());
+		table.free();
+	}
+
+	public void testRebuild() throws Exception {
+		writeSource(100, 1);
+		PersistentLookupTable table = createTable(false);
+		table.free();
+		long built = indexFile.lastModified();
+		Thread.sleep(1100);
+
+		// unchanged source, the index is reused
+		table = createTable(false);
+		assertEquals(built, indexFile.lastModified());
+		table.free();
+
+		// changed source, the index is rebuilt
+		writeSource(200, 1);
+		table = createTable(false);
+		assertTrue(indexFile.lastModified() > built);
+		DataRecord keyRecord = DataRecordFactory.newRecord(metadata);
+		Lookup lookup = table.createLookup(new RecordKey(new String[] { "id" }, metadata), keyRecord);
+		keyRecord.getField("id").setValue(150);
+		lookup.seek();
+		assertEquals(1, lookup.getNumFound());
+		table.free();
+	}
+
+}
@@ -714,6 +714,100 @@ public class RangeLookupTest extends CloverTestCase {
 		lookup.postExecute();
 	}
 
+	public void test_randomIntervals() throws ComponentNotReadyException {
+		lookupMetadata = new DataRecordMetadata("lookupTest", DataRecordMetadata.DELIMITED_RECORD);
+		lookupMetadata.addField(new DataFieldMetadata("name", DataFieldMetadata.STRING_FIELD, ";"));
+		lookupMetadata.addField(new DataFieldMetadata("start", DataFieldMetadata.INTEGER_FIELD, ";"));
+		lookupMetadata.addField(new DataFieldMetadata("end", DataFieldMetadata.INTEGER_FIELD, ";"));
+		lookupMetadata.addField(new DataFieldMetadata("start1", DataFieldMetadata.INTEGER_FIELD, ";"));
+		lookupMetadata.addField(new DataFieldMetadata("end1", DataFieldMetadata.INTEGER_FIELD, ";"));
+		lookup = (RangeLookupTable) LookupTableFactory.createLookupTable(null, "rangeLookup", new Object[] { "RangeLookup", lookupMetadata, new String[] { "start", "start1" }, new String[] { "end", "end1" }, null, new boolean[] { true, false }, new boolean[] { false, true } }, new Class[] { String.class, DataRecordMetadata.class, String[].class, String[].class, Parser.class, boolean[].class, boolean[].class });
+		lookup.init();
+		lookup.preExecute();
+		record = DataRecordFactory.newRecord(lookupMetadata);
+		for (int i = 0; i < 2000; i++) {
+			record.getField("name").setValue("interval" + i);
+			int start = random.nextInt(1000);
+			record.getField("start").setValue(random.nextInt(50) == 0 ? null : start);
+			record.getField("end").setValue(random.nextInt(50) == 0 ? null : start + random.nextInt(100));
+			start = random.nextInt(100);
+			record.getField("start1").setValue(start);
+			record.getField("end1").setValue(start + random.nextInt(50));
+			lookup.put(record);
+		}
+
+		metadata = new DataRecordMetadata("in", DataRecordMetadata.DELIMITED_RECORD);
+		metadata.addField(new DataFieldMetadata("value", DataFieldMetadata.INTEGER_FIELD, ";"));
+		metadata.addField(new DataFieldMetadata("value1", DataFieldMetadata.INTEGER_FIELD, ";"));
+		record = DataRecordFactory.newRecord(metadata);
+		RecordKey key = new RecordKey(new int[]{0,1}, metadata);
+		lookupResult = lookup.createLookup(key, record);
+		for (int i = 0; i < 1000; i++) {
+			int value = random.nextInt(1200) - 100;
+			int value1 = random.nextInt(150);
+			record.getField(0).setValue(value);
+			record.getField(1).setValue(value1);
+			lookupResult.seek();
+			int found = 0;
+			for (Iterator<DataRecord> iter = lookup.iterator(); iter.hasNext();) {
+				DataRecord interval = iter.next();
+				Integer start = (Integer) interval.getField("start").getValue();
+				Integer end = (Integer) interval.getField("end").getValue();
+				if ((start == null || start <= value) && (end == null || value < end)
+						&& (Integer) interval.getField("start1").getValue() < value1 && value1 <= (Integer) interval.getField("end1").getValue()) {
+					assertTrue(lookupResult.hasNext());
+					assertEquals(interval.getField("name").toString(), lookupResult.next().getField("name").toString());
+					found++;
+				}
+			}
+			assertFalse(lookupResult.hasNext());
+			assertEquals(found, lookupResult.getNumFound());
+		}
+		lookup.postExecute();
+	}
+
+	public void test_emptyTable() throws ComponentNotReadyException {
+		lookupMetadata = new DataRecordMetadata("lookupTest", DataRecordMetadata.DELIMITED_RECORD);
+		lookupMetadata.addField(new DataFieldMetadata("name", DataFieldMetadata.STRING_FIELD, ";"));
+		lookupMetadata.addField(new DataFieldMetadata("start", DataFieldMetadata.INTEGER_FIELD, ";"));
+		lookupMetadata.addField(new DataFieldMetadata("end", DataFieldMetadata.INTEGER_FIELD, ";"));
+		lookup = (RangeLookupTable) LookupTableFactory.createLookupTable(null, "rangeLookup", new Object[] { "RangeLookup", lookupMetadata, new String[] { "start" }, new String[] { "end" }, null }, new Class[] { String.class, DataRecordMetadata.class, String[].class, String[].class, Parser.class });
+		lookup.init();
+		lookup.preExecute();
+
+		metadata = new DataRecordMetadata("in", DataRecordMetadata.DELIMITED_RECORD);
+		metadata.addField(new DataFieldMetadata("value", DataFieldMetadata.INTEGER_FIELD, ";"));
+		record = DataRecordFactory.newRecord(metadata);
+		RecordKey key = new RecordKey(new int[]{0}, metadata);
+		lookupResult = lookup.createLookup(key, record);
+		record.getField(0).setValue(5);
+		lookupResult.seek();
+		assertFalse(lookupResult.hasNext());
+		assertEquals(0, lookupResult.getNumFound());
+		record.getField(0).setValue(null);
+		lookupResult.seek();
+		assertFalse(lookupResult.hasNext());
+
+		// index is rebuilt after the first record is added
+		DataRecord interval = DataRecordFactory.newRecord(lookupMetadata);
+		interval.getField("name").setValue("interval");
+		interval.getField("start").setValue(0);
+		interval.getField("end").setValue(10);
+		lookup.put(interval);
+		record.getField(0).setValue(5);
+		lookupResult.seek();
+		assertTrue(lookupResult.hasNext());
+		assertEquals("interval", lookupResult.next().getField("name").toString());
+		assertFalse(lookupResult.hasNext());
+
+		// and again after the table is emptied
+		lookup.remove(interval);
+		lookupResult.seek();
+		assertFalse(lookupResult.hasNext());
+		assertEquals(0, lookupResult.getNumFound());
+		lookup.postExecute();
+	}
+
 	private boolean checkOrder(DataRecord previous, DataRecord following) {
 		int startComparison;
 		int endComparison;
@@ -11,6 +11,7 @@ import org.jetel.data.DataRecordFactory;
 import org.jetel.data.RecordKey;
 import org.jetel.data.lookup.Lookup;
 import org.jetel.data.lookup.LookupTable;
+import org.jetel.data.lookup.SharedLookupTableRegistry;
 import org.jetel.data.parser.DataParser;
 import org.jetel.data.parser.TextParserConfiguration;
 import org.jetel.metadata.DataFieldMetadata;
@@ -62,6 +63,95 @@ public class SimpleLookupTest extends CloverTestCase {
 		lookup3 = lookupTable.createLookup(key3, inRecord3);
 	}
 
+	private SimpleLookupTable createSharedTable(DataRecordMetadata metadata) throws Exception {
+		SimpleLookupTable table = new SimpleLookupTable("sharedLookup", metadata, new String[] { "id" }, null);
+		table.setData("1;one\n2;two\n");
+		table.setShared(true);
+		table.init();
+		table.preExecute();
+		return table;
+	}
+
+	public void testSharedData() throws Exception {
+		DataRecordMetadata metadata = new DataRecordMetadata("shared", DataRecordMetadata.DELIMITED_RECORD);
+		metadata.addField(new DataFieldMetadata("id", DataFieldMetadata.INTEGER_FIELD, ";"));
+		metadata.addField(new DataFieldMetadata("name", DataFieldMetadata.STRING_FIELD, "\n"));
+		SharedLookupTableRegistry registry = SharedLookupTableRegistry.getInstance();
+		int registered = registry.size();
+
+		SimpleLookupTable table1 = createSharedTable(metadata);
+		SimpleLookupTable table2 = createSharedTable(metadata);
+		assertEquals(registered + 1, registry.size());
+		assertFalse(table1.isPutSupported());
+		try {
+			table1.put(DataRecordFactory.newRecord(metadata));
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+
+		DataRecord keyRecord = DataRecordFactory.newRecord(metadata);
+		Lookup sharedLookup = table2.createLookup(new RecordKey(new String[] { "id" }, metadata), keyRecord);
+		keyRecord.getField("id").setValue(2);
+		sharedLookup.seek();
+		assertEquals(1, sharedLookup.getNumFound());
+		assertEquals("two", sharedLookup.next().getField("name").toString());
+
+		table1.postExecute();
+		table1.free();
+		assertEquals(registered + 1, registry.size());
+		sharedLookup.seek();
+		assertEquals(1, sharedLookup.getNumFound());
+
+		// the data are acquired again in the next phase
+		table2.postExecute();
+		assertEquals(registered, registry.size());
+		table2.preExecute();
+		sharedLookup.seek();
+		assertEquals(1, sharedLookup.getNumFound());
+		table2.postExecute();
+		table2.free();
+		assertEquals(registered, registry.size());
+	}
+
+	public void testOffHeap() throws Exception {
+		DataRecordMetadata metadata = new DataRecordMetadata("offHeap", DataRecordMetadata.DELIMITED_RECORD);
+		metadata.addField(new DataFieldMetadata("id", DataFieldMetadata.INTEGER_FIELD, ";"));
+		metadata.addField(new DataFieldMetadata("name", DataFieldMetadata.STRING_FIELD, "\n"));
+		SimpleLookupTable table = new SimpleLookupTable("offHeapLookup", metadata, new String[] { "id" }, null);
+		table.setData("1;one\n2;two\n2;second two\n");
+		table.setKeyDuplicates(true);
+		table.setOffHeap(true);
+		table.init();
+		table.preExecute();
+
+		DataRecord keyRecord = DataRecordFactory.newRecord(metadata);
+		Lookup offHeapLookup = table.createLookup(new RecordKey(new String[] { "id" }, metadata), keyRecord);
+		keyRecord.getField("id").setValue(2);
+		offHeapLookup.seek();
+		assertEquals(2, offHeapLookup.getNumFound());
+		assertEquals("two", offHeapLookup.next().getField("name").toString());
+		assertEquals("second two", offHeapLookup.next().getField("name").toString());
+
+		// the record is serialized by the table, so it can be modified after put
+		DataRecord record = DataRecordFactory.newRecord(metadata);
+		record.getField("id").setValue(3);
+		record.getField("name").setValue("three");
+		assertTrue(table.put(record));
+		record.getField("name").setValue("changed");
+		keyRecord.getField("id").setValue(3);
+		offHeapLookup.seek();
+		assertEquals(1, offHeapLookup.getNumFound());
+		assertEquals("three", offHeapLookup.next().getField("name").toString());
+
+		assertTrue(table.remove(record));
+		offHeapLookup.seek();
+		assertEquals(0, offHeapLookup.getNumFound());
+
+		table.postExecute();
+		table.free();
+	}
+
 	public void testLookup() throws Exception {
 		LookingUp l1 = new LookingUp(lookup, inRecord);
 		LookingUp l2 = new LookingUp(lookup2, inRecord2);